@@ -0,0 +1,121 @@
+package bdv.fx.viewer.project;
+
+import net.imglib2.RandomAccessible;
+import net.imglib2.converter.Converters;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.IntArray;
+import net.imglib2.img.basictypeaccess.array.LongArray;
+import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.type.numeric.integer.UnsignedLongType;
+import net.imglib2.type.volatiles.VolatileUnsignedLongType;
+import net.imglib2.view.Views;
+import org.janelia.saalfeldlab.paintera.benchmark.SyntheticData;
+import org.janelia.saalfeldlab.paintera.stream.HighlightingStreamConverter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Projection of a label source with two resolution levels into an ARGB screen image with
+ * {@link VolatileHierarchyProjector#map()}. A quarter of the tiles of the finest level is not yet loaded and has to be
+ * filled from the coarser level, as it happens while navigating.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VolatileHierarchyProjectorBenchmark {
+
+  private static final int TILE_SIZE = 32;
+
+  @Param({"1024"})
+  public int screenSize;
+
+  @Param({"1", "4"})
+  public int numThreads;
+
+  private ExecutorService executorService;
+
+  private VolatileHierarchyProjector<VolatileUnsignedLongType, ARGBType> projector;
+
+  @Setup
+  public void setup() {
+
+	final long[] dims = {screenSize, screenSize};
+	final Random rng = new Random(42);
+
+	final ArrayImg<UnsignedLongType, LongArray> finest = ArrayImgs.unsignedLongs(dims);
+	final ArrayImg<UnsignedLongType, LongArray> coarsest = ArrayImgs.unsignedLongs(dims);
+	final long[] pos = new long[2];
+	final var finestCursor = finest.localizingCursor();
+	final var coarsestCursor = coarsest.cursor();
+	while (finestCursor.hasNext()) {
+	  finestCursor.next();
+	  finestCursor.localize(pos);
+	  final long tileX = pos[0] / TILE_SIZE;
+	  final long tileY = pos[1] / TILE_SIZE;
+	  final long id = 1 + (tileX * 31 + tileY * 17 + rng.nextInt(4)) % 1000;
+	  /* 0 is not loaded yet */
+	  finestCursor.get().set(tileX % 2 == 0 && tileY % 2 == 0 ? 0 : id);
+	  coarsestCursor.next().set(id);
+	}
+
+	final List<RandomAccessible<VolatileUnsignedLongType>> sources = Arrays.asList(asVolatile(finest), asVolatile(coarsest));
+	final ArrayImg<ARGBType, IntArray> target = ArrayImgs.argbs(dims);
+	final HighlightingStreamConverter<VolatileUnsignedLongType> converter = HighlightingStreamConverter.forType(
+			SyntheticData.highlightingStream(1, 2, 3),
+			new VolatileUnsignedLongType());
+
+	executorService = Executors.newFixedThreadPool(numThreads);
+	projector = new VolatileHierarchyProjector<>(sources, converter, target, numThreads, executorService);
+  }
+
+  @Setup(Level.Invocation)
+  public void clearMask() {
+
+	projector.clearMask();
+  }
+
+  @TearDown
+  public void tearDown() {
+
+	executorService.shutdown();
+  }
+
+  @Benchmark
+  public boolean map() {
+
+	return projector.map();
+  }
+
+  private static RandomAccessible<VolatileUnsignedLongType> asVolatile(final ArrayImg<UnsignedLongType, LongArray> img) {
+
+	return Converters.convert(
+			(RandomAccessible<UnsignedLongType>)Views.extendZero(img),
+			(s, t) -> {
+			  t.get().set(s);
+			  t.setValid(s.getIntegerLong() != 0);
+			},
+			new VolatileUnsignedLongType());
+  }
+}
@@ -0,0 +1,204 @@
+package org.janelia.saalfeldlab.paintera.benchmark;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compare a JMH result file (json) against a checked-in baseline and report benchmarks that got slower by more than a
+ * relative threshold. Benchmarks are matched by name and parameters. Exits with status {@code 1} if any regression
+ * was found, and with status {@code 3} if the baseline is empty, a result has no baseline, or a baseline has no result,
+ * so that an outdated baseline does not pass silently. Until a baseline has been recorded, i.e. as long as the
+ * baseline file does not exist, the check is skipped.
+ * <p>
+ * Usage: {@code BenchmarkRegressionCheck <result.json> <baseline.json> [threshold] [partial]}
+ * <p>
+ * Pass {@code true} for {@code partial} if only a subset of the benchmarks was run, then baselines without result are
+ * reported but do not fail the check.
+ * <p>
+ * To update the baseline, run the benchmarks on the reference machine and record the result file as the new baseline
+ * with {@code BenchmarkRegressionCheck --record <result.json> <baseline.json>}.
+ */
+public class BenchmarkRegressionCheck {
+
+  private static final double DEFAULT_THRESHOLD = 0.1;
+
+  private static final String THROUGHPUT_MODE = "thrpt";
+
+  private static final String RECORD_FLAG = "--record";
+
+  private static final int EXIT_REGRESSION = 1;
+
+  private static final int EXIT_USAGE = 2;
+
+  private static final int EXIT_BASELINE_OUT_OF_DATE = 3;
+
+  private static class Score {
+
+	private final String mode;
+
+	private final double score;
+
+	private final double error;
+
+	private final String unit;
+
+	private Score(final String mode, final double score, final double error, final String unit) {
+
+	  this.mode = mode;
+	  this.score = score;
+	  this.error = error;
+	  this.unit = unit;
+	}
+
+	/**
+	 * @return relative slow down compared to {@code baseline}, positive if this is slower.
+	 */
+	private double slowDownComparedTo(final Score baseline) {
+
+	  final double ratio = score / baseline.score;
+	  return THROUGHPUT_MODE.equals(mode) ? 1.0 / ratio - 1.0 : ratio - 1.0;
+	}
+
+	@Override
+	public String toString() {
+
+	  return String.format("%.3f ± %.3f %s", score, error, unit);
+	}
+  }
+
+  public static void main(final String[] args) throws IOException {
+
+	if (args.length == 3 && RECORD_FLAG.equals(args[0])) {
+	  record(Paths.get(args[1]), Paths.get(args[2]));
+	  return;
+	}
+	if (args.length < 2) {
+	  System.err.println("Usage: BenchmarkRegressionCheck <result.json> <baseline.json> [threshold] [partial]");
+	  System.err.println("       BenchmarkRegressionCheck " + RECORD_FLAG + " <result.json> <baseline.json>");
+	  System.exit(EXIT_USAGE);
+	}
+
+	final Path baselinePath = Paths.get(args[1]);
+	if (!Files.exists(baselinePath)) {
+	  System.out.printf("No baseline %s recorded yet, skipping check. Record one on the reference machine with %s%n", baselinePath, RECORD_FLAG);
+	  return;
+	}
+
+	final Map<String, Score> results = read(Paths.get(args[0]));
+	final Map<String, Score> baseline = read(baselinePath);
+	final double threshold = args.length > 2 ? Double.parseDouble(args[2]) : DEFAULT_THRESHOLD;
+
+	if (baseline.isEmpty()) {
+	  System.out.printf("Baseline %s is empty, record one on the reference machine with %s%n", args[1], RECORD_FLAG);
+	  System.exit(EXIT_BASELINE_OUT_OF_DATE);
+	}
+
+	int numRegressions = 0;
+	int numWithoutBaseline = 0;
+	for (final Map.Entry<String, Score> result : results.entrySet()) {
+	  final Score reference = baseline.get(result.getKey());
+	  if (reference == null) {
+		++numWithoutBaseline;
+		System.out.printf("NEW        %s: %s (no baseline)%n", result.getKey(), result.getValue());
+		continue;
+	  }
+	  if (!reference.mode.equals(result.getValue().mode) || !reference.unit.equals(result.getValue().unit)) {
+		++numWithoutBaseline;
+		System.out.printf("MISMATCH   %s: %s vs baseline %s%n", result.getKey(), result.getValue(), reference);
+		continue;
+	  }
+	  final double slowDown = result.getValue().slowDownComparedTo(reference);
+	  final boolean isRegression = slowDown > threshold;
+	  if (isRegression)
+		++numRegressions;
+	  System.out.printf(
+			  "%-10s %s: %s vs baseline %s (%+.1f%%)%n",
+			  isRegression ? "REGRESSION" : "OK",
+			  result.getKey(),
+			  result.getValue(),
+			  reference,
+			  100.0 * slowDown);
+	}
+	final boolean isFullRun = args.length <= 3 || !Boolean.parseBoolean(args[3]);
+	int numMissing = 0;
+	for (final String key : baseline.keySet()) {
+	  if (!results.containsKey(key)) {
+		++numMissing;
+		System.out.printf("MISSING    %s: in baseline but not in results%n", key);
+	  }
+	}
+
+	if (numRegressions > 0) {
+	  System.out.printf("%d benchmark(s) regressed by more than %.0f%%%n", numRegressions, 100.0 * threshold);
+	  System.exit(EXIT_REGRESSION);
+	}
+	if (numWithoutBaseline > 0 || isFullRun && numMissing > 0) {
+	  System.out.printf(
+			  "%d result(s) without matching baseline and %d baseline(s) without result, record a new baseline with %s%n",
+			  numWithoutBaseline,
+			  numMissing,
+			  RECORD_FLAG);
+	  System.exit(EXIT_BASELINE_OUT_OF_DATE);
+	}
+  }
+
+  /**
+   * Replace the baseline with a result file, after checking that the result file can be read and is not empty.
+   */
+  private static void record(final Path result, final Path baseline) throws IOException {
+
+	final Map<String, Score> scores = read(result);
+	if (scores.isEmpty()) {
+	  System.err.printf("Result %s is empty, not recording it as baseline%n", result);
+	  System.exit(EXIT_USAGE);
+	}
+	final Path baselineDirectory = baseline.toAbsolutePath().getParent();
+	if (baselineDirectory != null)
+	  Files.createDirectories(baselineDirectory);
+	Files.copy(result, baseline, StandardCopyOption.REPLACE_EXISTING);
+	System.out.printf("Recorded %d benchmark(s) from %s as baseline %s%n", scores.size(), result, baseline);
+  }
+
+  private static Map<String, Score> read(final Path path) throws IOException {
+
+	final Map<String, Score> scores = new LinkedHashMap<>();
+	try (final Reader reader = Files.newBufferedReader(path)) {
+	  final JsonArray runs = new JsonParser().parse(reader).getAsJsonArray();
+	  for (final JsonElement element : runs) {
+		final JsonObject run = element.getAsJsonObject();
+		final JsonObject metric = run.getAsJsonObject("primaryMetric");
+		final double error = metric.get("scoreError").isJsonPrimitive() && metric.get("scoreError").getAsJsonPrimitive().isNumber()
+				? metric.get("scoreError").getAsDouble()
+				: Double.NaN;
+		scores.put(key(run), new Score(
+				run.get("mode").getAsString(),
+				metric.get("score").getAsDouble(),
+				error,
+				metric.get("scoreUnit").getAsString()));
+	  }
+	}
+	return scores;
+  }
+
+  private static String key(final JsonObject run) {
+
+	final String benchmark = run.get("benchmark").getAsString();
+	if (!run.has("params"))
+	  return benchmark;
+	final Map<String, String> params = new TreeMap<>();
+	run.getAsJsonObject("params").entrySet().forEach(e -> params.put(e.getKey(), e.getValue().getAsString()));
+	return benchmark + params;
+  }
+}
@@ -0,0 +1,98 @@
+package org.janelia.saalfeldlab.paintera.benchmark;
+
+import com.pivovarit.function.ThrowingRunnable;
+import net.imglib2.Cursor;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.LongArray;
+import net.imglib2.type.numeric.integer.UnsignedLongType;
+import org.apache.commons.io.FileUtils;
+import org.janelia.saalfeldlab.n5.N5FSWriter;
+import org.janelia.saalfeldlab.paintera.control.assignment.FragmentSegmentAssignmentOnlyLocal;
+import org.janelia.saalfeldlab.paintera.control.lock.LockedSegmentsOnlyLocal;
+import org.janelia.saalfeldlab.paintera.control.selection.SelectedIds;
+import org.janelia.saalfeldlab.paintera.control.selection.SelectedSegments;
+import org.janelia.saalfeldlab.paintera.stream.AbstractHighlightingARGBStream;
+import org.janelia.saalfeldlab.paintera.stream.GoldenAngleSaturatedHighlightingARGBStream;
+import org.janelia.saalfeldlab.util.n5.universe.N5Factory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * Deterministic synthetic label data for benchmarks.
+ */
+public class SyntheticData {
+
+  private SyntheticData() {
+
+  }
+
+  /**
+   * Fill a volume with {@code numLabels} overlapping balls of random center and radius. Later balls overwrite earlier
+   * ones, voxels outside of all balls are {@code 0}. Labels are {@code 1..numLabels}.
+   *
+   * @param dims      dimensions of the volume
+   * @param numLabels number of balls
+   * @param seed      seed for the random number generator, same seed produces same data
+   * @return label volume
+   */
+  public static ArrayImg<UnsignedLongType, LongArray> labelBalls(final long[] dims, final int numLabels, final long seed) {
+
+	final ArrayImg<UnsignedLongType, LongArray> img = ArrayImgs.unsignedLongs(dims);
+	final Random rng = new Random(seed);
+	final double maxRadius = 0.25 * Math.min(dims[0], Math.min(dims[1], dims[2]));
+	final double[][] centers = new double[numLabels][3];
+	final double[] squaredRadii = new double[numLabels];
+	for (int label = 0; label < numLabels; ++label) {
+	  for (int d = 0; d < 3; ++d)
+		centers[label][d] = rng.nextDouble() * dims[d];
+	  final double radius = (0.25 + 0.75 * rng.nextDouble()) * maxRadius;
+	  squaredRadii[label] = radius * radius;
+	}
+
+	final Cursor<UnsignedLongType> cursor = img.localizingCursor();
+	while (cursor.hasNext()) {
+	  final UnsignedLongType px = cursor.next();
+	  for (int label = numLabels - 1; label >= 0; --label) {
+		final double dx = cursor.getDoublePosition(0) - centers[label][0];
+		final double dy = cursor.getDoublePosition(1) - centers[label][1];
+		final double dz = cursor.getDoublePosition(2) - centers[label][2];
+		if (dx * dx + dy * dy + dz * dz <= squaredRadii[label]) {
+		  px.set(label + 1);
+		  break;
+		}
+	  }
+	}
+	return img;
+  }
+
+  /**
+   * @param selectedIds ids that are highlighted as selected
+   * @return stream as used for label sources, with a local assignment and no locked segments
+   */
+  public static AbstractHighlightingARGBStream highlightingStream(final long... selectedIds) {
+
+	final SelectedIds selected = new SelectedIds();
+	selected.activate(selectedIds);
+	final FragmentSegmentAssignmentOnlyLocal assignment = new FragmentSegmentAssignmentOnlyLocal(new FragmentSegmentAssignmentOnlyLocal.DoesNotPersist());
+	final LockedSegmentsOnlyLocal lockedSegments = new LockedSegmentsOnlyLocal(locked -> {
+	});
+	return new GoldenAngleSaturatedHighlightingARGBStream(new SelectedSegments(selected, assignment), lockedSegments);
+  }
+
+  /**
+   * @return {@link N5FSWriter} in a new temporary directory that is deleted when the JVM exits.
+   * @throws IOException if the temporary directory cannot be created
+   */
+  public static N5FSWriter n5AtTmpDir() throws IOException {
+
+	final Path tmp = Files.createTempDirectory("paintera-benchmark-");
+	final File dir = tmp.toFile();
+	Runtime.getRuntime().addShutdownHook(new Thread(ThrowingRunnable.unchecked(() -> FileUtils.deleteDirectory(dir))));
+	return new N5Factory().openFSWriter(tmp.toAbsolutePath().toString());
+  }
+}
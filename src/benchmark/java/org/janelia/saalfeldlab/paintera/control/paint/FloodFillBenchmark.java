@@ -0,0 +1,139 @@
+package org.janelia.saalfeldlab.paintera.control.paint;
+
+import net.imglib2.Point;
+import net.imglib2.RandomAccessible;
+import net.imglib2.RealPoint;
+import net.imglib2.algorithm.neighborhood.DiamondShape;
+import net.imglib2.converter.Converters;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.LongArray;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.type.logic.BoolType;
+import net.imglib2.type.numeric.integer.UnsignedLongType;
+import net.imglib2.view.Views;
+import org.janelia.saalfeldlab.paintera.benchmark.SyntheticData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The flood fill variants used by the paint tools, seeded in the center of a synthetic label volume:
+ * <ul>
+ *   <li>3D fill of a label as done by {@link FloodFill}</li>
+ *   <li>2D fill within an axis aligned section as done by {@link FloodFill2D}</li>
+ *   <li>fill within an arbitrarily oriented section as done by {@link FloodFill2D} for rotated viewers</li>
+ *   <li>brush stroke of {@link FloodFillTransformedCylinder3D}</li>
+ * </ul>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FloodFillBenchmark {
+
+  private static final long[] DIMENSIONS = {128, 128, 128};
+
+  private static final long FILL_LABEL = 1L << 40;
+
+  private ArrayImg<UnsignedLongType, LongArray> labels;
+
+  private ArrayImg<UnsignedLongType, LongArray> mask;
+
+  private RandomAccessible<BoolType> isSeedLabel;
+
+  private Point seed;
+
+  private long seedLabel;
+
+  private AffineTransform3D rotatedLocalToWorld;
+
+  private RealPoint rotatedSeedWorld;
+
+  @Setup
+  public void setup() {
+
+	labels = SyntheticData.labelBalls(DIMENSIONS, 32, 42);
+	mask = ArrayImgs.unsignedLongs(DIMENSIONS);
+	seed = new Point(DIMENSIONS[0] / 2, DIMENSIONS[1] / 2, DIMENSIONS[2] / 2);
+	final var access = labels.randomAccess();
+	access.setPosition(seed);
+	seedLabel = access.get().getIntegerLong();
+	isSeedLabel = Converters.convert(
+			(RandomAccessible<UnsignedLongType>)Views.extendZero(labels),
+			(s, t) -> t.set(s.getIntegerLong() == seedLabel),
+			new BoolType());
+
+	rotatedLocalToWorld = new AffineTransform3D();
+	rotatedLocalToWorld.rotate(0, Math.toRadians(30));
+	rotatedLocalToWorld.rotate(1, Math.toRadians(15));
+	rotatedSeedWorld = new RealPoint(3);
+	rotatedLocalToWorld.apply(seed, rotatedSeedWorld);
+  }
+
+  @Setup(Level.Invocation)
+  public void clearMask() {
+
+	Arrays.fill(mask.update(null).getCurrentStorageArray(), 0L);
+  }
+
+  @Benchmark
+  public ArrayImg<UnsignedLongType, LongArray> fill3D() {
+
+	FloodFill.fillPrimitiveType(labels, mask, seed, seedLabel, null);
+	return mask;
+  }
+
+  @Benchmark
+  public ArrayImg<UnsignedLongType, LongArray> fill2DAxisAligned() {
+
+	final long z = seed.getLongPosition(2);
+	net.imglib2.algorithm.fill.FloodFill.fill(
+			Views.hyperSlice(isSeedLabel, 2, z),
+			Views.hyperSlice(mask, 2, z),
+			new Point(seed.getLongPosition(0), seed.getLongPosition(1)),
+			new UnsignedLongType(FILL_LABEL),
+			new DiamondShape(1));
+	return mask;
+  }
+
+  @Benchmark
+  public ArrayImg<UnsignedLongType, LongArray> fill2DTransformedPlane() {
+
+	FloodFillTransformedPlane.fill(
+			rotatedLocalToWorld,
+			0.5,
+			isSeedLabel.randomAccess(),
+			Views.extendZero(mask).randomAccess(),
+			rotatedSeedWorld,
+			FILL_LABEL);
+	return mask;
+  }
+
+  @Benchmark
+  public ArrayImg<UnsignedLongType, LongArray> fillBrushCylinder() {
+
+	FloodFillTransformedCylinder3D.fill(
+			rotatedLocalToWorld,
+			20.0,
+			20.0,
+			5.0,
+			Views.extendZero(mask).randomAccess(),
+			rotatedSeedWorld,
+			FILL_LABEL);
+	return mask;
+  }
+}
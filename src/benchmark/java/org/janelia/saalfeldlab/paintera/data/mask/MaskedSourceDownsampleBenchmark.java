@@ -0,0 +1,60 @@
+package org.janelia.saalfeldlab.paintera.data.mask;
+
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.LongArray;
+import net.imglib2.type.numeric.integer.UnsignedLongType;
+import org.janelia.saalfeldlab.paintera.benchmark.SyntheticData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Winner-takes-all downsampling of a painted canvas block with {@link MaskedSource#downsample}, as done for every lower
+ * resolution level when a mask is applied.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MaskedSourceDownsampleBenchmark {
+
+  @Param({"64"})
+  public int blockSize;
+
+  @Param({"2", "4"})
+  public int factor;
+
+  private ArrayImg<UnsignedLongType, LongArray> source;
+
+  private ArrayImg<UnsignedLongType, LongArray> target;
+
+  private int[] steps;
+
+  @Setup
+  public void setup() {
+
+	source = SyntheticData.labelBalls(new long[]{blockSize, blockSize, blockSize}, 32, 42);
+	target = ArrayImgs.unsignedLongs(blockSize / factor, blockSize / factor, blockSize / factor);
+	steps = new int[]{factor, factor, factor};
+  }
+
+  @Benchmark
+  public ArrayImg<UnsignedLongType, LongArray> downsample() {
+
+	MaskedSource.downsample(source, target, steps);
+	return target;
+  }
+}
@@ -0,0 +1,197 @@
+package org.janelia.saalfeldlab.paintera.data.n5;
+
+import javafx.application.Platform;
+import net.imglib2.cache.img.CachedCellImg;
+import net.imglib2.cache.img.ReadOnlyCachedCellImgFactory;
+import net.imglib2.cache.img.ReadOnlyCachedCellImgOptions;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.basictypeaccess.array.LongArray;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.type.label.Label;
+import net.imglib2.type.numeric.integer.UnsignedLongType;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+import org.janelia.saalfeldlab.n5.DataType;
+import org.janelia.saalfeldlab.n5.DatasetAttributes;
+import org.janelia.saalfeldlab.n5.GzipCompression;
+import org.janelia.saalfeldlab.n5.N5FSWriter;
+import org.janelia.saalfeldlab.n5.N5Reader;
+import org.janelia.saalfeldlab.n5.N5Writer;
+import org.janelia.saalfeldlab.n5.metadata.N5Metadata;
+import org.janelia.saalfeldlab.paintera.benchmark.SyntheticData;
+import org.janelia.saalfeldlab.paintera.data.mask.persist.UnableToPersistCanvas;
+import org.janelia.saalfeldlab.paintera.state.metadata.MetadataState;
+import org.janelia.saalfeldlab.paintera.state.metadata.N5ContainerState;
+import org.janelia.saalfeldlab.util.n5.N5Helpers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Commit of a fully painted canvas into a single scale dataset in a temporary N5 container on the local file system
+ * with {@link CommitCanvasN5#persistCanvas(CachedCellImg, long[])}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class CommitCanvasN5Benchmark {
+
+  private static final long[] DIMENSIONS = {128, 128, 128};
+
+  private static final int[] BLOCK_SIZE = {64, 64, 64};
+
+  private static final String DATASET = "labels";
+
+  @Param({"UINT64", "LABEL_MULTISET"})
+  public String dataType;
+
+  private CachedCellImg<UnsignedLongType, ?> canvas;
+
+  private long[] blocks;
+
+  private CommitCanvasN5 commitCanvas;
+
+  @Setup
+  public void setup() throws IOException {
+
+	/* persistCanvas reports progress on the application thread */
+	try {
+	  Platform.startup(() -> {
+	  });
+	} catch (final IllegalStateException e) {
+	  // already started
+	}
+
+	final ArrayImg<UnsignedLongType, LongArray> labels = SyntheticData.labelBalls(DIMENSIONS, 64, 42);
+	final ReadOnlyCachedCellImgFactory factory = new ReadOnlyCachedCellImgFactory(ReadOnlyCachedCellImgOptions.options().cellDimensions(BLOCK_SIZE));
+	canvas = factory.create(DIMENSIONS, new UnsignedLongType(), cell -> {
+	  final var source = Views.flatIterable(Views.interval(labels, cell)).cursor();
+	  final var target = Views.flatIterable(cell).cursor();
+	  while (target.hasNext()) {
+		final long id = source.next().getIntegerLong();
+		target.next().set(id == 0 ? Label.INVALID : id);
+	  }
+	});
+	blocks = new long[(int)Intervals.numElements(canvas.getCellGrid().getGridDimensions())];
+	Arrays.setAll(blocks, i -> i);
+
+	final N5FSWriter writer = SyntheticData.n5AtTmpDir();
+	final boolean isLabelMultiset = "LABEL_MULTISET".equals(dataType);
+	writer.createDataset(DATASET, new DatasetAttributes(DIMENSIONS, BLOCK_SIZE, isLabelMultiset ? DataType.UINT8 : DataType.UINT64, new GzipCompression()));
+	if (isLabelMultiset)
+	  writer.setAttribute(DATASET, N5Helpers.LABEL_MULTISETTYPE_KEY, true);
+	commitCanvas = new CommitCanvasN5(metadataState(writer, DATASET, isLabelMultiset));
+  }
+
+  @Benchmark
+  public Object persistCanvas() throws UnableToPersistCanvas {
+
+	return commitCanvas.persistCanvas(canvas, blocks);
+  }
+
+  private static MetadataState metadataState(final N5Writer writer, final String dataset, final boolean isLabelMultiset) {
+
+	return new MetadataState() {
+
+	  @Override public String getDataset() {
+
+		return dataset;
+	  }
+
+	  @Override public void updateTransform(double[] resolution, double[] offset) {
+
+	  }
+
+	  @Override public void updateTransform(AffineTransform3D newTransform) {
+
+	  }
+
+	  @Override public String getGroup() {
+
+		return dataset;
+	  }
+
+	  @Override public Optional<N5Writer> getWriter() {
+
+		return Optional.of(writer);
+	  }
+
+	  @Override public N5Reader getReader() {
+
+		return writer;
+	  }
+
+	  @Override public double[] getOffset() {
+
+		return new double[3];
+	  }
+
+	  @Override public double[] getPixelResolution() {
+
+		return new double[]{1.0, 1.0, 1.0};
+	  }
+
+	  @Override public double getMaxIntensity() {
+
+		return 0;
+	  }
+
+	  @Override public double getMinIntensity() {
+
+		return 0;
+	  }
+
+	  @Override public boolean isLabelMultiset() {
+
+		return isLabelMultiset;
+	  }
+
+	  @Override public boolean isLabel() {
+
+		return true;
+	  }
+
+	  @Override public AffineTransform3D getTransform() {
+
+		return new AffineTransform3D();
+	  }
+
+	  @Override public DatasetAttributes getDatasetAttributes() {
+
+		return null;
+	  }
+
+	  @Override public N5Metadata getMetadata() {
+
+		return new N5Metadata() {
+
+		  @Override public String getPath() {
+
+			return dataset;
+		  }
+		};
+	  }
+
+	  @Override public N5ContainerState getN5ContainerState() {
+
+		return null;
+	  }
+	};
+  }
+}
@@ -0,0 +1,76 @@
+package org.janelia.saalfeldlab.paintera.meshes;
+
+import net.imglib2.RandomAccessible;
+import net.imglib2.converter.Converters;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.basictypeaccess.array.LongArray;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.type.logic.BoolType;
+import net.imglib2.type.numeric.integer.UnsignedLongType;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+import org.janelia.saalfeldlab.paintera.benchmark.SyntheticData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mesh generation for a single block as done by the mesh workers: {@link MarchingCubes#generateMesh()} followed by
+ * {@link Smooth#smooth(float[], double, int)}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MeshGenerationBenchmark {
+
+  @Param({"32", "64"})
+  public int blockSize;
+
+  @Param({"5"})
+  public int smoothingIterations;
+
+  private RandomAccessible<BoolType> mask;
+
+  private AffineTransform3D transform;
+
+  private float[] vertices;
+
+  @Setup
+  public void setup() {
+
+	final long[] dims = {blockSize, blockSize, blockSize};
+	final ArrayImg<UnsignedLongType, LongArray> labels = SyntheticData.labelBalls(dims, 8, 42);
+	final long id = 1;
+	mask = Converters.convert(
+			(RandomAccessible<UnsignedLongType>)Views.extendZero(labels),
+			(s, t) -> t.set(s.getIntegerLong() == id),
+			new BoolType());
+	transform = new AffineTransform3D();
+	vertices = generateMesh();
+  }
+
+  @Benchmark
+  public float[] generateMesh() {
+
+	return new MarchingCubes<>(mask, Intervals.createMinSize(0, 0, 0, blockSize, blockSize, blockSize), transform).generateMesh();
+  }
+
+  @Benchmark
+  public float[] smooth() {
+
+	return Smooth.smooth(vertices, Smooth.DEFAULT_LAMBDA, smoothingIterations);
+  }
+}
@@ -0,0 +1,96 @@
+package org.janelia.saalfeldlab.paintera.stream;
+
+import net.imglib2.type.label.FromIntegerTypeConverter;
+import net.imglib2.type.label.VolatileLabelMultisetType;
+import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.type.numeric.integer.UnsignedLongType;
+import net.imglib2.type.volatiles.VolatileUnsignedLongType;
+import org.janelia.saalfeldlab.paintera.benchmark.SyntheticData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Label to ARGB conversion of a 256x256 tile with {@link HighlightingStreamConverterIntegerType} and
+ * {@link HighlightingStreamConverterLabelMultisetType}. The number of distinct labels controls how often the ARGB cache
+ * of the stream is hit.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HighlightingStreamConverterBenchmark {
+
+  private static final int NUM_PIXELS = 256 * 256;
+
+  @Param({"64", "65536"})
+  public int numLabels;
+
+  private HighlightingStreamConverter<VolatileUnsignedLongType> integerTypeConverter;
+
+  private HighlightingStreamConverter<VolatileLabelMultisetType> labelMultisetTypeConverter;
+
+  private VolatileUnsignedLongType[] integerTypeInput;
+
+  private VolatileLabelMultisetType[] labelMultisetTypeInput;
+
+  private final ARGBType output = new ARGBType();
+
+  @Setup
+  public void setup() {
+
+	final AbstractHighlightingARGBStream stream = SyntheticData.highlightingStream(1, 2, 3);
+	integerTypeConverter = HighlightingStreamConverter.forType(stream, new VolatileUnsignedLongType());
+	labelMultisetTypeConverter = HighlightingStreamConverter.forType(stream, FromIntegerTypeConverter.getAppropriateVolatileType());
+
+	final FromIntegerTypeConverter<UnsignedLongType> toLabelMultiset = new FromIntegerTypeConverter<>();
+	final UnsignedLongType id = new UnsignedLongType();
+	final Random rng = new Random(42);
+	integerTypeInput = new VolatileUnsignedLongType[NUM_PIXELS];
+	labelMultisetTypeInput = new VolatileLabelMultisetType[NUM_PIXELS];
+	for (int i = 0; i < NUM_PIXELS; ++i) {
+	  id.set(1 + rng.nextInt(numLabels));
+	  integerTypeInput[i] = new VolatileUnsignedLongType();
+	  integerTypeInput[i].get().set(id);
+	  integerTypeInput[i].setValid(true);
+	  labelMultisetTypeInput[i] = FromIntegerTypeConverter.getAppropriateVolatileType();
+	  toLabelMultiset.convert(id, labelMultisetTypeInput[i].get());
+	  labelMultisetTypeInput[i].setValid(true);
+	}
+  }
+
+  @Benchmark
+  public int integerType() {
+
+	int hash = 0;
+	for (final VolatileUnsignedLongType input : integerTypeInput) {
+	  integerTypeConverter.convert(input, output);
+	  hash += output.get();
+	}
+	return hash;
+  }
+
+  @Benchmark
+  public int labelMultisetType() {
+
+	int hash = 0;
+	for (final VolatileLabelMultisetType input : labelMultisetTypeInput) {
+	  labelMultisetTypeConverter.convert(input, output);
+	  hash += output.get();
+	}
+	return hash;
+  }
+}
@@ -0,0 +1,94 @@
+package org.janelia.saalfeldlab.util.concurrent;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Many threads concurrently submit, re-prioritize, and remove tasks of a {@link HashPriorityQueueBasedTaskExecutor} or
+ * a {@link ConcurrentPriorityTaskExecutor}, the way mesh managers update block priorities while the camera moves,
+ * while the workers keep polling and executing tasks. The score is the number of priority updates per second.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@Threads(8)
+public class PriorityTaskExecutorContentionBenchmark {
+
+  private static final int NUM_WORKERS = Math.max(1, Math.min(10, Runtime.getRuntime().availableProcessors() - 1));
+
+  private static final int BATCH_SIZE = 64;
+
+  @Param({"hash-priority-queue", "concurrent-skip-list"})
+  public String executorType;
+
+  @Param({"10000"})
+  public int numTasks;
+
+  private PriorityTaskExecutor<Double> executor;
+
+  private Runnable[] tasks;
+
+  @Setup(Level.Iteration)
+  public void setup() {
+
+	executor = "hash-priority-queue".equals(executorType)
+			? new HashPriorityQueueBasedTaskExecutor<>(Comparator.<Double>naturalOrder(), NUM_WORKERS, r -> daemon(r, "benchmark-hash-worker"))
+			: new ConcurrentPriorityTaskExecutor<>(Comparator.<Double>naturalOrder(), NUM_WORKERS, r -> daemon(r, "benchmark-concurrent-worker"));
+	tasks = new Runnable[numTasks];
+	// a little busy work, mesh blocks are much more expensive
+	for (int i = 0; i < numTasks; ++i)
+	  tasks[i] = () -> Blackhole.consumeCPU(64);
+  }
+
+  @TearDown(Level.Iteration)
+  public void tearDown() {
+
+	executor.shutdown();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BATCH_SIZE)
+  public void updatePriorities(final Blackhole blackhole) {
+
+	final ThreadLocalRandom random = ThreadLocalRandom.current();
+	final Map<Runnable, Double> batch = new HashMap<>();
+	for (int i = 0; i < BATCH_SIZE; ++i)
+	  batch.put(tasks[random.nextInt(numTasks)], random.nextDouble());
+	executor.addOrUpdateTasks(batch);
+	if (random.nextInt(8) == 0)
+	  executor.removeTasks(Set.of(tasks[random.nextInt(numTasks)]));
+	for (int i = 0; i < BATCH_SIZE; ++i)
+	  blackhole.consume(executor.containsTask(tasks[random.nextInt(numTasks)]));
+  }
+
+  private static Thread daemon(final Runnable runnable, final String name) {
+
+	final Thread thread = new Thread(runnable, name);
+	thread.setDaemon(true);
+	return thread;
+  }
+}
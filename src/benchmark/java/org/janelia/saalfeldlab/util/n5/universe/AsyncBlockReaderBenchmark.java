@@ -0,0 +1,131 @@
+package org.janelia.saalfeldlab.util.n5.universe;
+
+import org.janelia.saalfeldlab.n5.ByteArrayDataBlock;
+import org.janelia.saalfeldlab.n5.DataType;
+import org.janelia.saalfeldlab.n5.DatasetAttributes;
+import org.janelia.saalfeldlab.n5.GzipCompression;
+import org.janelia.saalfeldlab.n5.N5FSWriter;
+import org.janelia.saalfeldlab.n5.N5Reader;
+import org.janelia.saalfeldlab.util.n5.N5TestUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads all blocks of a dataset from a {@link LatencyN5Reader} with a fixed number of fetcher threads, like the fetcher
+ * threads of a {@code SharedQueue}, when fetchers read directly, through an {@link AsyncBlockReader}, and through an
+ * {@link AsyncBlockReader} that prefetches all blocks when they are enqueued, the way the volatile caches do. The score
+ * is the number of blocks read per second.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class AsyncBlockReaderBenchmark {
+
+  private static final String DATASET = "data";
+
+  private static final int[] BLOCK_SIZE = {32, 32, 32};
+
+  private static final int NUM_BLOCKS = 256;
+
+  @Param({"direct", "async", "async-prefetch"})
+  public String mode;
+
+  @Param({"50"})
+  public long latencyMillis;
+
+  @Param({"4"})
+  public int numFetchers;
+
+  private N5FSWriter writer;
+
+  private DatasetAttributes attributes;
+
+  private List<long[]> gridPositions;
+
+  private N5Reader reader;
+
+  @Setup(Level.Trial)
+  public void writeBlocks() throws IOException {
+
+	writer = N5TestUtil.fileSystemWriterAtTmpDir();
+	attributes = new DatasetAttributes(
+			new long[]{(long)NUM_BLOCKS * BLOCK_SIZE[0], BLOCK_SIZE[1], BLOCK_SIZE[2]},
+			BLOCK_SIZE,
+			DataType.UINT8,
+			new GzipCompression());
+	writer.createDataset(DATASET, attributes);
+	final Random rng = new Random(1);
+	gridPositions = new ArrayList<>();
+	for (long x = 0; x < NUM_BLOCKS; ++x) {
+	  final byte[] data = new byte[BLOCK_SIZE[0] * BLOCK_SIZE[1] * BLOCK_SIZE[2]];
+	  rng.nextBytes(data);
+	  writer.writeBlock(DATASET, attributes, new ByteArrayDataBlock(BLOCK_SIZE, new long[]{x, 0, 0}, data));
+	  gridPositions.add(new long[]{x, 0, 0});
+	}
+  }
+
+  /**
+   * A fresh reader for every invocation, so that no blocks are shared between invocations.
+   */
+  @Setup(Level.Invocation)
+  public void createReader() {
+
+	final LatencyN5Reader latencyReader = new LatencyN5Reader(writer, latencyMillis);
+	reader = "direct".equals(mode) ? latencyReader : new AsyncBlockReader(latencyReader);
+  }
+
+  @TearDown(Level.Invocation)
+  public void closeReader() {
+
+	if (reader instanceof AsyncBlockReader)
+	  ((AsyncBlockReader)reader).close();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(NUM_BLOCKS)
+  public void readAllBlocks() throws InterruptedException {
+
+	final ConcurrentLinkedQueue<long[]> queue = new ConcurrentLinkedQueue<>(gridPositions);
+	final CountDownLatch done = new CountDownLatch(numFetchers);
+	if ("async-prefetch".equals(mode))
+	  gridPositions.forEach(gridPosition -> ((AsyncBlockReader)reader).prefetch(DATASET, attributes, gridPosition));
+	for (int f = 0; f < numFetchers; ++f) {
+	  final Thread fetcher = new Thread(() -> {
+		try {
+		  for (long[] gridPosition = queue.poll(); gridPosition != null; gridPosition = queue.poll())
+			reader.readBlock(DATASET, attributes, gridPosition);
+		} catch (final IOException e) {
+		  throw new RuntimeException(e);
+		} finally {
+		  done.countDown();
+		}
+	  }, "benchmark-fetcher-" + f);
+	  fetcher.setDaemon(true);
+	  fetcher.start();
+	}
+	done.await();
+  }
+}
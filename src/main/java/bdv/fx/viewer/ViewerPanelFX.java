@@ -186,6 +186,7 @@ public class ViewerPanelFX
 
 	// TODO why is this necessary?
 	transformListeners.add(tf -> getDisplay().drawOverlays());
+	transformListeners.add(renderUnit.getMotionPredictor());
 
 	this.state = new ViewerState(numTimepoints);
 	state.addListener(obs -> requestRepaint());
@@ -482,6 +483,27 @@ public class ViewerPanelFX
 	this.renderUnit.setScreenScales(screenScales.clone());
   }
 
+  /**
+   * Configure prefetching of cells for extrapolated viewer transforms when scrolling or panning.
+   *
+   * @param lookaheadSteps    number of extrapolated viewer transforms. Set to 0 to disable predictive prefetching.
+   * @param maxCellsPerSource maximum number of predicted cells requested per source and frame
+   */
+  public void setPredictivePrefetch(final int lookaheadSteps, final int maxCellsPerSource) {
+
+	LOG.debug("Setting predictive prefetch to lookaheadSteps={} maxCellsPerSource={}", lookaheadSteps, maxCellsPerSource);
+	this.renderUnit.setPredictivePrefetch(lookaheadSteps, maxCellsPerSource);
+  }
+
+  /**
+   * @param name identifies this viewer in the {@link org.janelia.saalfeldlab.paintera.metrics.MetricsRegistry metrics},
+   *             e.g. the viewer axis. Nothing is recorded if {@code null}.
+   */
+  public void setMetricsName(final String name) {
+
+	this.renderUnit.setMetricsName(name);
+  }
+
   /**
    * @return {@link OverlayPane} used for drawing overlays without re-rendering 2D cross-sections
    */
@@ -76,6 +76,31 @@ public class BufferExposingWritableImage extends WritableImage {
 	this.callPixelsDirty.run();
   }
 
+  /**
+   * @return backing buffer of this image, premultiplied ARGB in row-major order
+   */
+  public int[] getBuffer() {
+
+	return store;
+  }
+
+  /**
+   * Copy the rectangle {@code [x, x + w) x [y, y + h)} of {@code source} into the same rectangle of this image with one
+   * bulk copy per row, or a single bulk copy if the rectangle spans entire rows. Both images must have the same width.
+   * Call {@link #setPixelsDirty()} to make the change visible.
+   */
+  public void copyFrom(final BufferExposingWritableImage source, final int x, final int y, final int w, final int h) {
+
+	final int width = (int)getWidth();
+	if ((int)source.getWidth() != width)
+	  throw new IllegalArgumentException("Image widths do not match: " + (int)source.getWidth() + " != " + width);
+	if (x == 0 && w == width)
+	  System.arraycopy(source.store, y * width, store, y * width, w * h);
+	else
+	  for (int row = y, offset = y * width + x; row < y + h; ++row, offset += width)
+		System.arraycopy(source.store, offset, store, offset, w);
+  }
+
   public ArrayImg<ARGBType, IntAccess> asArrayImg() {
 
 	return ArrayImgs.argbs(new IntArray(store), (long)getWidth(), (long)getHeight());
@@ -68,8 +68,10 @@ import net.imglib2.realtransform.AffineTransform3D;
 import net.imglib2.realtransform.RealViews;
 import net.imglib2.type.numeric.ARGBType;
 import net.imglib2.type.numeric.integer.ByteType;
+import net.imglib2.util.IntervalIndexer;
 import net.imglib2.util.Intervals;
 import net.imglib2.view.Views;
+import org.janelia.saalfeldlab.paintera.metrics.MetricsRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -80,8 +82,10 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.function.Function;
 import java.util.function.ToIntFunction;
@@ -258,6 +262,40 @@ public class MultiResolutionRendererGeneric<T> {
 
   private boolean prefetchCells = true;
 
+  /**
+   * Extrapolates the viewer transform for {@link #prefetchPredictedCells predictive prefetching}. Predictive
+   * prefetching is disabled if {@code null}.
+   */
+  private TransformMotionPredictor motionPredictor = null;
+
+  /**
+   * Number of extrapolated viewer transforms for which cells are prefetched.
+   */
+  private int predictivePrefetchSteps = 0;
+
+  /**
+   * Maximum number of cells per source that are requested for extrapolated viewer transforms in each new frame.
+   */
+  private int predictivePrefetchMaxCells = 0;
+
+  /**
+   * Whether the projector that is currently being created belongs to a new frame, i.e. the fetcher queue was just cleared.
+   */
+  private boolean isNewFrame = false;
+
+  /**
+   * Prefix of the metrics recorded by this renderer in the {@link MetricsRegistry#getGlobal() global registry}.
+   * Nothing is recorded if {@code null}.
+   */
+  private String metricsName = null;
+
+  /**
+   * Frame times for each {@link #screenScales screen scale}, recorded if {@link #metricsName} is set.
+   */
+  private MetricsRegistry.Timer[] frameTimers = new MetricsRegistry.Timer[0];
+
+  private MetricsRegistry.Timer frameIoTimer = null;
+
   private final Function<T, ArrayImg<ARGBType, ? extends IntAccess>> wrapAsArrayImg;
 
   private final ToIntFunction<T> width;
@@ -482,6 +520,7 @@ public class MultiResolutionRendererGeneric<T> {
 	  clearQueue = newFrameRequest;
 	  if (clearQueue)
 		cacheControl.prepareNextFrame();
+	  isNewFrame = clearQueue;
 	  createProjector = newFrameRequest || resized || requestedScreenScaleIndex != currentScreenScaleIndex || !sameAsLastRenderedInterval;
 	  newFrameRequest = false;
 
@@ -550,12 +589,14 @@ public class MultiResolutionRendererGeneric<T> {
 	}
 
 	// try rendering
+	final long renderStartNanos = System.nanoTime();
 	final boolean success = p.map(createProjector);
 	//		final long rendertime = p.getLastFrameRenderNanoTime();
 
 	synchronized (this) {
 	  // if rendering was not cancelled...
 	  if (success) {
+		recordFrameTime(p, currentScreenScaleIndex, System.nanoTime() - renderStartNanos);
 		if (createProjector) {
 		  final T bi = display.setBufferedImageAndTransform(bufferedImage, currentProjectorTransform);
 		  if (doubleBuffered) {
@@ -891,6 +932,10 @@ public class MultiResolutionRendererGeneric<T> {
 	}
 
 	Collections.sort(levels, MipmapOrdering.renderOrderComparator);
+
+	if (prefetchCells && isNewFrame && !levels.isEmpty())
+	  prefetchPredictedCells(spimSource, t, viewerTransform, levels, interpolation);
+
 	for (final Level l : levels) {
 	  renderList.add(getTransformedSource(
 			  spimSource,
@@ -1040,12 +1085,213 @@ public class MultiResolutionRendererGeneric<T> {
 	}
   }
 
+  /**
+   * Prefetch the cells that will be visible at full screen resolution if the current motion of the viewer continues.
+   * The cells are enqueued with the lowest priority used by the regular prefetching, i.e. after the cells of the current
+   * frame. At most {@link #predictivePrefetchMaxCells} cells are requested per source and frame.
+   */
+  private <T> void prefetchPredictedCells(
+		  final Source<T> source,
+		  final int timepoint,
+		  final AffineTransform3D viewerTransform,
+		  final List<Level> levels,
+		  final Interpolation interpolation) {
+
+	if (motionPredictor == null || predictivePrefetchSteps <= 0 || predictivePrefetchMaxCells <= 0)
+	  return;
+
+	final List<AffineTransform3D> predictedTransforms = motionPredictor.predict(predictivePrefetchSteps);
+	if (predictedTransforms.isEmpty())
+	  return;
+
+	final AffineTransform3D screenScaleTransform = screenScaleTransforms[0];
+	final AffineTransform3D screenTransform = viewerTransform.copy();
+	screenTransform.preConcatenate(screenScaleTransform);
+	final int mipmapIndex = MipmapTransforms.getBestMipMapLevel(screenTransform, source, timepoint);
+	final RandomAccessibleInterval<T> img = source.getSource(timepoint, mipmapIndex);
+	if (!VolatileCachedCellImg.class.isInstance(img))
+	  return;
+	final VolatileCachedCellImg<?, ?> cellImg = (VolatileCachedCellImg<?, ?>)img;
+
+	int lowestPriority = cellImg.getDefaultCacheHints().getQueuePriority();
+	for (final Level l : levels) {
+	  final CacheHints levelHints = l.getPrefetchCacheHints();
+	  if (levelHints != null)
+		lowestPriority = Math.max(lowestPriority, levelHints.getQueuePriority());
+	}
+	cellImg.setCacheHints(new CacheHints(LoadingStrategy.VOLATILE, lowestPriority, false));
+
+	final int[] cellDimensions = new int[3];
+	cellImg.getCellGrid().cellDimensions(cellDimensions);
+	final long[] gridDimensions = cellImg.getCellGrid().getGridDimensions();
+	final RandomAccess<?> cellsRandomAccess = cellImg.getCells().randomAccess();
+	final int[] screenSize = getImageSize(this.screenImages.get(0).get(0));
+	final double padding = interpolation == Interpolation.NEARESTNEIGHBOR ? 0.5 : 1.0;
+
+	final AffineTransform3D sourceTransform = new AffineTransform3D();
+	source.getSourceTransform(timepoint, mipmapIndex, sourceTransform);
+
+	// cells of the current frame have already been requested by the regular prefetching
+	final Set<Long> visitedCells = new HashSet<>();
+	final long[] cellMin = new long[3], cellMax = new long[3];
+	final AffineTransform3D currentSourceToScreen = screenTransform.copy();
+	currentSourceToScreen.concatenate(sourceTransform);
+	if (visibleCellRange(currentSourceToScreen, screenSize, padding, cellDimensions, gridDimensions, cellMin, cellMax))
+	  forEachCell(cellMin, cellMax, gridDimensions, index -> {
+		visitedCells.add(index);
+		return true;
+	  });
+
+	final int[] numRequested = {0};
+	for (final AffineTransform3D predictedTransform : predictedTransforms) {
+	  final AffineTransform3D sourceToScreen = predictedTransform.copy();
+	  sourceToScreen.concatenate(sourceTransform);
+	  sourceToScreen.preConcatenate(screenScaleTransform);
+	  if (!visibleCellRange(sourceToScreen, screenSize, padding, cellDimensions, gridDimensions, cellMin, cellMax))
+		continue;
+	  final boolean withinBudget = forEachCell(cellMin, cellMax, gridDimensions, index -> {
+		if (visitedCells.add(index)) {
+		  IntervalIndexer.indexToPosition(index, gridDimensions, cellsRandomAccess);
+		  cellsRandomAccess.get();
+		  ++numRequested[0];
+		}
+		return numRequested[0] < predictivePrefetchMaxCells;
+	  });
+	  if (!withinBudget)
+		break;
+	}
+	LOG.trace("Requested {} predicted cells at level {} for source {}", numRequested[0], mipmapIndex, source.getName());
+  }
+
+  /**
+   * Find the range of cells in a cell grid that intersects with the screen.
+   *
+   * @return {@code false} if no cell of the grid is visible
+   */
+  private static boolean visibleCellRange(
+		  final AffineTransform3D sourceToScreen,
+		  final int[] screenSize,
+		  final double padding,
+		  final int[] cellDimensions,
+		  final long[] gridDimensions,
+		  final long[] cellMin,
+		  final long[] cellMax) {
+
+	final double[] sourceMin = {Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY};
+	final double[] sourceMax = {Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY};
+	final double[] corner = new double[3];
+	for (int cornerIndex = 0; cornerIndex < 4; ++cornerIndex) {
+	  corner[0] = (cornerIndex & 1) == 0 ? 0 : screenSize[0] - 1;
+	  corner[1] = (cornerIndex & 2) == 0 ? 0 : screenSize[1] - 1;
+	  corner[2] = 0;
+	  sourceToScreen.applyInverse(corner, corner);
+	  for (int d = 0; d < 3; ++d) {
+		sourceMin[d] = Math.min(sourceMin[d], corner[d]);
+		sourceMax[d] = Math.max(sourceMax[d], corner[d]);
+	  }
+	}
+
+	for (int d = 0; d < 3; ++d) {
+	  cellMin[d] = Math.max((long)Math.floor((sourceMin[d] - padding) / cellDimensions[d]), 0);
+	  cellMax[d] = Math.min((long)Math.floor((sourceMax[d] + padding) / cellDimensions[d]), gridDimensions[d] - 1);
+	  if (cellMin[d] > cellMax[d])
+		return false;
+	}
+	return true;
+  }
+
+  private interface CellIndexVisitor {
+
+	/**
+	 * @return {@code false} to stop visiting cells
+	 */
+	boolean visit(long flatCellIndex);
+  }
+
+  /**
+   * @return {@code false} if the iteration was stopped by the visitor
+   */
+  private static boolean forEachCell(
+		  final long[] cellMin,
+		  final long[] cellMax,
+		  final long[] gridDimensions,
+		  final CellIndexVisitor visitor) {
+
+	final long[] position = new long[3];
+	for (position[2] = cellMin[2]; position[2] <= cellMax[2]; ++position[2])
+	  for (position[1] = cellMin[1]; position[1] <= cellMax[1]; ++position[1])
+		for (position[0] = cellMin[0]; position[0] <= cellMax[0]; ++position[0])
+		  if (!visitor.visit(IntervalIndexer.positionToIndex(position, gridDimensions)))
+			return false;
+	return true;
+  }
+
+  /**
+   * Enable predictive prefetching: in addition to the cells of the current frame, request the cells for the next
+   * {@code lookaheadSteps} viewer transforms as extrapolated by {@code motionPredictor}.
+   *
+   * @param motionPredictor   extrapolates the viewer transform. Predictive prefetching is disabled if {@code null}.
+   * @param lookaheadSteps    number of extrapolated viewer transforms
+   * @param maxCellsPerSource I/O budget: maximum number of predicted cells requested per source and frame
+   */
+  public synchronized void setPredictivePrefetch(
+		  final TransformMotionPredictor motionPredictor,
+		  final int lookaheadSteps,
+		  final int maxCellsPerSource) {
+
+	this.motionPredictor = motionPredictor;
+	this.predictivePrefetchSteps = lookaheadSteps;
+	this.predictivePrefetchMaxCells = maxCellsPerSource;
+  }
+
+  /**
+   * Record frame times for each screen scale and the time spent waiting for I/O as
+   * {@code render.<name>.scale<index>} and {@code render.<name>.io} in the {@link MetricsRegistry#getGlobal() global
+   * metrics registry}.
+   *
+   * @param name identifies this renderer, e.g. the viewer axis. Nothing is recorded if {@code null}.
+   */
+  public synchronized void setMetricsName(final String name) {
+
+	this.metricsName = name;
+	createFrameTimers();
+  }
+
   public synchronized void setScreenScales(final double[] screenScales) {
 
 	this.screenScales = screenScales.clone();
 	createVariables();
   }
 
+  private synchronized void createFrameTimers() {
+
+	final MetricsRegistry registry = MetricsRegistry.getGlobal();
+	if (metricsName == null) {
+	  frameTimers = new MetricsRegistry.Timer[0];
+	  frameIoTimer = null;
+	} else {
+	  frameTimers = new MetricsRegistry.Timer[screenScales.length];
+	  Arrays.setAll(frameTimers, i -> registry.timer(String.format("render.%s.scale%d", metricsName, i)));
+	  frameIoTimer = registry.timer(String.format("render.%s.io", metricsName));
+	}
+  }
+
+  private void recordFrameTime(final VolatileProjector projector, final int screenScaleIndex, final long nanos) {
+
+	if (screenScaleIndex < 0 || screenScaleIndex >= frameTimers.length)
+	  return;
+	frameTimers[screenScaleIndex].record(nanos);
+	final long ioNanos;
+	if (projector instanceof VolatileHierarchyProjector<?, ?>)
+	  ioNanos = ((VolatileHierarchyProjector<?, ?>)projector).getLastFrameIoNanoTime();
+	else if (projector instanceof VolatileHierarchyProjectorPreMultiply<?>)
+	  ioNanos = ((VolatileHierarchyProjectorPreMultiply<?>)projector).getLastFrameIoNanoTime();
+	else
+	  return;
+	if (ioNanos >= 0)
+	  frameIoTimer.record(ioNanos);
+  }
+
   /**
    * Set {@code screenScaleTransform} to a screen scale transform at a given {@code screenScaleIndex}.
    *
@@ -1075,6 +1321,7 @@ public class MultiResolutionRendererGeneric<T> {
 	pendingRepaintRequests = new Interval[screenScales.length];
 	maxScreenScaleIndex = screenScales.length - 1;
 	requestedScreenScaleIndex = maxScreenScaleIndex;
+	createFrameTimers();
   }
 
 }
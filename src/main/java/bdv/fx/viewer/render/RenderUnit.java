@@ -64,6 +64,14 @@ public class RenderUnit implements PainterThread.Paintable {
 
   private final List<Runnable> updateListeners = new ArrayList<>();
 
+  private final TransformMotionPredictor motionPredictor = new TransformMotionPredictor();
+
+  private int predictivePrefetchSteps = 0;
+
+  private int predictivePrefetchMaxCells = 0;
+
+  private String metricsName = null;
+
   public RenderUnit(
 		  final ThreadGroup threadGroup,
 		  final Supplier<ViewerState> viewerState,
@@ -158,6 +166,39 @@ public class RenderUnit implements PainterThread.Paintable {
 	  renderer.setScreenScales(screenScales);
   }
 
+  /**
+   * Configure prefetching of cells for extrapolated viewer transforms.
+   *
+   * @param lookaheadSteps    number of extrapolated viewer transforms. Set to 0 to disable predictive prefetching.
+   * @param maxCellsPerSource maximum number of predicted cells requested per source and frame
+   */
+  public synchronized void setPredictivePrefetch(final int lookaheadSteps, final int maxCellsPerSource) {
+
+	this.predictivePrefetchSteps = lookaheadSteps;
+	this.predictivePrefetchMaxCells = maxCellsPerSource;
+	if (renderer != null)
+	  renderer.setPredictivePrefetch(motionPredictor, lookaheadSteps, maxCellsPerSource);
+  }
+
+  /**
+   * @param name identifies the renderer in the {@link org.janelia.saalfeldlab.paintera.metrics.MetricsRegistry metrics}.
+   *             Nothing is recorded if {@code null}.
+   */
+  public synchronized void setMetricsName(final String name) {
+
+	this.metricsName = name;
+	if (renderer != null)
+	  renderer.setMetricsName(name);
+  }
+
+  /**
+   * @return tracks the viewer transform for predictive prefetching. Needs to be notified about all viewer transform changes.
+   */
+  public TransformMotionPredictor getMotionPredictor() {
+
+	return motionPredictor;
+  }
+
   private synchronized void update() {
 
 	LOG.debug("Updating render unit");
@@ -186,6 +227,8 @@ public class RenderUnit implements PainterThread.Paintable {
 			accumulateProjectorFactory,
 			cacheControl
 	);
+	renderer.setPredictivePrefetch(motionPredictor, predictivePrefetchSteps, predictivePrefetchMaxCells);
+	renderer.setMetricsName(metricsName);
 
 	notifyUpdated();
   }
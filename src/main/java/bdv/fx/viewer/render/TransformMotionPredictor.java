@@ -0,0 +1,133 @@
+package bdv.fx.viewer.render;
+
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.ui.TransformListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks the recent changes of a viewer transform and extrapolates where the viewer is going to be next.
+ * <p>
+ * Only translations in viewer space are extrapolated, i.e. scrolling through sections and panning within the plane.
+ * Any change of the linear part of the transform (rotation or zoom) resets the prediction, as does a pause in navigation
+ * that is longer than {@code maxIdleNanos}.
+ */
+public class TransformMotionPredictor implements TransformListener<AffineTransform3D> {
+
+  private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  private static final long DEFAULT_MAX_IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(1000);
+
+  private static final double LINEAR_PART_EPSILON = 1e-9;
+
+  private final long maxIdleNanos;
+
+  private final AffineTransform3D lastTransform = new AffineTransform3D();
+
+  private final double[] delta = new double[3];
+
+  private boolean hasLastTransform = false;
+
+  private boolean hasDelta = false;
+
+  private long lastUpdateNanos;
+
+  public TransformMotionPredictor() {
+
+	this(DEFAULT_MAX_IDLE_NANOS);
+  }
+
+  /**
+   * @param maxIdleNanos no prediction is made if the transform has not changed for longer than this.
+   */
+  public TransformMotionPredictor(final long maxIdleNanos) {
+
+	this.maxIdleNanos = maxIdleNanos;
+  }
+
+  @Override
+  public void transformChanged(final AffineTransform3D transform) {
+
+	update(transform, System.nanoTime());
+  }
+
+  synchronized void update(final AffineTransform3D transform, final long nanoTime) {
+
+	if (hasLastTransform && hasSameLinearPart(lastTransform, transform)) {
+	  final double[] currentDelta = new double[3];
+	  Arrays.setAll(currentDelta, d -> transform.get(d, 3) - lastTransform.get(d, 3));
+	  if (currentDelta[0] == 0.0 && currentDelta[1] == 0.0 && currentDelta[2] == 0.0)
+		return;
+
+	  final boolean continuesMotion = hasDelta
+			  && nanoTime - lastUpdateNanos <= maxIdleNanos
+			  && dot(currentDelta, delta) > 0.0;
+	  if (continuesMotion)
+		Arrays.setAll(delta, d -> 0.5 * (delta[d] + currentDelta[d]));
+	  else
+		System.arraycopy(currentDelta, 0, delta, 0, 3);
+	  hasDelta = true;
+	} else
+	  hasDelta = false;
+
+	lastTransform.set(transform);
+	hasLastTransform = true;
+	lastUpdateNanos = nanoTime;
+	LOG.trace("Updated motion prediction: hasDelta={} delta=({}, {}, {})", hasDelta, delta[0], delta[1], delta[2]);
+  }
+
+  /**
+   * @param numSteps number of extrapolated transforms
+   * @return the next {@code numSteps} viewer transforms if the current motion continues, closest first. Empty if no
+   * motion was detected recently.
+   */
+  public List<AffineTransform3D> predict(final int numSteps) {
+
+	return predict(numSteps, System.nanoTime());
+  }
+
+  synchronized List<AffineTransform3D> predict(final int numSteps, final long nanoTime) {
+
+	if (!hasDelta || numSteps <= 0 || nanoTime - lastUpdateNanos > maxIdleNanos)
+	  return Collections.emptyList();
+
+	final List<AffineTransform3D> predicted = new ArrayList<>(numSteps);
+	for (int step = 1; step <= numSteps; ++step) {
+	  final AffineTransform3D transform = lastTransform.copy();
+	  for (int d = 0; d < 3; ++d)
+		transform.set(lastTransform.get(d, 3) + step * delta[d], d, 3);
+	  predicted.add(transform);
+	}
+	return predicted;
+  }
+
+  /**
+   * Forget about any previous motion.
+   */
+  public synchronized void reset() {
+
+	hasLastTransform = false;
+	hasDelta = false;
+  }
+
+  private static boolean hasSameLinearPart(final AffineTransform3D t1, final AffineTransform3D t2) {
+
+	for (int r = 0; r < 3; ++r)
+	  for (int c = 0; c < 3; ++c)
+		if (Math.abs(t1.get(r, c) - t2.get(r, c)) > LINEAR_PART_EPSILON)
+		  return false;
+	return true;
+  }
+
+  private static double dot(final double[] a, final double[] b) {
+
+	return a[0] * b[0] + a[1] * b[1] + a[2] * b[2];
+  }
+}
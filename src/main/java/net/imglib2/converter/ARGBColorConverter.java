@@ -7,6 +7,12 @@ import javafx.beans.property.SimpleObjectProperty;
 import net.imglib2.display.ColorConverter;
 import net.imglib2.type.numeric.ARGBType;
 import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.volatiles.VolatileUnsignedByteType;
+import net.imglib2.type.volatiles.VolatileUnsignedShortType;
+
+import java.util.function.ToIntFunction;
 
 public abstract class ARGBColorConverter<R extends RealType<R>> implements ColorConverter, Converter<R, ARGBType> {
 
@@ -113,7 +119,25 @@ public abstract class ARGBColorConverter<R extends RealType<R>> implements Color
 	this.min.set(min);
   }
 
-  private void update() {
+  /**
+   * Create a converter that behaves like {@link InvertingImp0}, using a lookup table for {@code uint8} and {@code uint16}
+   * types, including their volatile counterparts.
+   */
+  @SuppressWarnings("unchecked")
+  public static <R extends RealType<R>> InvertingImp0<R> createInvertingConverter(final R type) {
+
+	if (type instanceof UnsignedByteType)
+	  return (InvertingImp0<R>)new InvertingLookupTable<UnsignedByteType>(256, UnsignedByteType::get);
+	if (type instanceof VolatileUnsignedByteType)
+	  return (InvertingImp0<R>)new InvertingLookupTable<VolatileUnsignedByteType>(256, v -> v.get().get());
+	if (type instanceof UnsignedShortType)
+	  return (InvertingImp0<R>)new InvertingLookupTable<UnsignedShortType>(65536, UnsignedShortType::get);
+	if (type instanceof VolatileUnsignedShortType)
+	  return (InvertingImp0<R>)new InvertingLookupTable<VolatileUnsignedShortType>(65536, v -> v.get().get());
+	return new InvertingImp0<>();
+  }
+
+  protected void update() {
 
 	final double scale = 1.0 / (max.get() - min.get());
 	final int value = color.get().get();
@@ -124,6 +148,21 @@ public abstract class ARGBColorConverter<R extends RealType<R>> implements Color
 	black = ARGBType.rgba(0, 0, 0, A);
   }
 
+  /**
+   * @return color of {@code value}, clamped to the range of the color channels
+   */
+  protected int clampedColor(final double value) {
+
+	final double v = value - min.get();
+	final int r0 = (int)(scaleR * v + 0.5);
+	final int g0 = (int)(scaleG * v + 0.5);
+	final int b0 = (int)(scaleB * v + 0.5);
+	final int r = Math.min(255, Math.max(r0, 0));
+	final int g = Math.min(255, Math.max(g0, 0));
+	final int b = Math.min(255, Math.max(b0, 0));
+	return ARGBType.rgba(r, g, b, A);
+  }
+
   public static class Imp0<R extends RealType<R>> extends ARGBColorConverter<R> {
 
 	public Imp0() {
@@ -237,4 +276,45 @@ public abstract class ARGBColorConverter<R extends RealType<R>> implements Color
 	}
 
   }
+
+  /**
+   * {@link InvertingImp0} for integer types with values in {@code [0, numValues)}, e.g. {@code uint8} or {@code uint16}.
+   * The colors of all values are stored in a lookup table that is rebuilt whenever min, max, color, or alpha change, so
+   * converting a value is a single array access.
+   */
+  public static class InvertingLookupTable<R extends RealType<R>> extends InvertingImp0<R> {
+
+	private final int numValues;
+
+	private final ToIntFunction<R> getValue;
+
+	private volatile int[] lookupTable;
+
+	public InvertingLookupTable(final int numValues, final ToIntFunction<R> getValue) {
+
+	  super();
+	  this.numValues = numValues;
+	  this.getValue = getValue;
+	  update();
+	}
+
+	@Override
+	protected void update() {
+
+	  super.update();
+	  // called from the super constructor before the number of values is known
+	  if (numValues == 0)
+		return;
+	  final int[] lookupTable = new int[numValues];
+	  for (int value = 0; value < numValues; ++value)
+		lookupTable[value] = clampedColor(value);
+	  this.lookupTable = lookupTable;
+	}
+
+	@Override
+	public void convert(final R input, final ARGBType output) {
+
+	  output.set(lookupTable[getValue.applyAsInt(input)]);
+	}
+  }
 }
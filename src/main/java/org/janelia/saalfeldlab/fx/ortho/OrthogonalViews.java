@@ -255,6 +255,18 @@ public class OrthogonalViews<BR extends Node> {
 	  requestRepaint();
   }
 
+  /**
+   * {@link ViewerPanelFX#setPredictivePrefetch(int, int)} for all {@link ViewerPanelFX viewer children} (top left, top right, bottom left)
+   *
+   * @param lookaheadSteps    number of extrapolated viewer transforms. Set to 0 to disable predictive prefetching.
+   * @param maxCellsPerSource maximum number of predicted cells requested per source and frame
+   */
+  public void setPredictivePrefetch(final int lookaheadSteps, final int maxCellsPerSource) {
+
+	LOG.debug("Setting predictive prefetch to lookaheadSteps={} maxCellsPerSource={} for all panels.", lookaheadSteps, maxCellsPerSource);
+	applyToAll(vp -> vp.setPredictivePrefetch(lookaheadSteps, maxCellsPerSource));
+  }
+
   /**
    * Swap the node at {@code cellIndex} with the node currently in the bottom left of the underlying {@link OrthogonalViews#grid}.
    *
@@ -307,6 +319,7 @@ public class OrthogonalViews<BR extends Node> {
 			optional,
 			interpolation
 	);
+	viewer.setMetricsName(axis.name().toLowerCase());
 	final AffineTransformWithListeners displayTransform = new AffineTransformWithListeners();
 	final AffineTransformWithListeners globalToViewerTransform = new AffineTransformWithListeners(globalToViewer);
 
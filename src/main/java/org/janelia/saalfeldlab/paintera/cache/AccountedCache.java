@@ -0,0 +1,251 @@
+package org.janelia.saalfeldlab.paintera.cache;
+
+import net.imglib2.cache.Cache;
+import org.janelia.saalfeldlab.paintera.metrics.MetricsRegistry;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+
+/**
+ * {@link Cache} that forwards to a delegate and keeps track of the size and last access of all values loaded through
+ * it, so that the delegate can be included in the global memory accounting of {@link CacheBudget}.
+ * <p>
+ * Values are only referenced weakly: if the delegate drops a value on its own (e.g. a
+ * {@link net.imglib2.cache.ref.SoftRefLoaderCache} under memory pressure), its accounting entry is removed with the
+ * next scan.
+ * <p>
+ * Hits, misses, and the number of loaded bytes are recorded as {@code cache.<name>.hit}, {@code cache.<name>.miss},
+ * and {@code cache.<name>.bytes} in the {@link MetricsRegistry#getGlobal() global metrics registry}.
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+public class AccountedCache<K, V> implements Cache<K, V>, BudgetedCache {
+
+  private final class Entry implements EvictionCandidate {
+
+	private final K key;
+
+	private final WeakReference<V> value;
+
+	private final long bytes;
+
+	private volatile long lastAccessTick;
+
+	private Entry(final K key, final V value, final long bytes) {
+
+	  this.key = key;
+	  this.value = new WeakReference<>(value);
+	  this.bytes = bytes;
+	  this.lastAccessTick = budget.currentTick();
+	}
+
+	@Override
+	public long getLastAccessTick() {
+
+	  return lastAccessTick;
+	}
+
+	@Override
+	public long getEstimatedBytes() {
+
+	  return bytes;
+	}
+
+	@Override
+	public long evict() {
+
+	  delegate.invalidate(key);
+	  return remove(key, this) ? bytes : 0;
+	}
+  }
+
+  private final String name;
+
+  private final Cache<K, V> delegate;
+
+  private final ToLongFunction<? super V> sizeEstimator;
+
+  private final double reloadCost;
+
+  private final CacheBudget budget;
+
+  private final Map<K, Entry> entries = new ConcurrentHashMap<>();
+
+  private final AtomicLong estimatedBytes = new AtomicLong();
+
+  private final MetricsRegistry.Counter hits;
+
+  private final MetricsRegistry.Counter misses;
+
+  private final MetricsRegistry.Counter loadedBytes;
+
+  /**
+   * @param name          shown in the UI
+   * @param delegate      actual cache
+   * @param sizeEstimator estimate of the number of bytes held by a value
+   * @param reloadCost    relative cost of restoring an evicted byte, see {@link BudgetedCache#getReloadCost()}
+   * @param budget        budget that keeps track of this cache
+   */
+  public AccountedCache(
+		  final String name,
+		  final Cache<K, V> delegate,
+		  final ToLongFunction<? super V> sizeEstimator,
+		  final double reloadCost,
+		  final CacheBudget budget) {
+
+	this.name = name;
+	this.delegate = delegate;
+	this.sizeEstimator = sizeEstimator;
+	this.reloadCost = reloadCost;
+	this.budget = budget;
+
+	final String metricsName = "cache." + name.toLowerCase().replaceAll("[^a-z0-9/_-]+", "-");
+	final MetricsRegistry registry = MetricsRegistry.getGlobal();
+	this.hits = registry.counter(metricsName + ".hit");
+	this.misses = registry.counter(metricsName + ".miss");
+	this.loadedBytes = registry.counter(metricsName + ".bytes");
+  }
+
+  /**
+   * Wrap {@code delegate} and register the result with {@code budget}.
+   */
+  public static <K, V> AccountedCache<K, V> register(
+		  final String name,
+		  final Cache<K, V> delegate,
+		  final ToLongFunction<? super V> sizeEstimator,
+		  final double reloadCost,
+		  final CacheBudget budget) {
+
+	final AccountedCache<K, V> cache = new AccountedCache<>(name, delegate, sizeEstimator, reloadCost, budget);
+	budget.register(cache);
+	return cache;
+  }
+
+  @Override
+  public V getIfPresent(final K key) {
+
+	final V value = delegate.getIfPresent(key);
+	if (value != null)
+	  touch(key, value);
+	return value;
+  }
+
+  @Override
+  public V get(final K key) throws ExecutionException {
+
+	final V value = delegate.get(key);
+	if (value != null)
+	  touch(key, value);
+	return value;
+  }
+
+  @Override
+  public void persist(final K key) {
+
+	delegate.persist(key);
+  }
+
+  @Override
+  public void persistIf(final Predicate<K> condition) {
+
+	delegate.persistIf(condition);
+  }
+
+  @Override
+  public void persistAll() {
+
+	delegate.persistAll();
+  }
+
+  @Override
+  public void invalidate(final K key) {
+
+	delegate.invalidate(key);
+	final Entry entry = entries.get(key);
+	if (entry != null)
+	  remove(key, entry);
+  }
+
+  @Override
+  public void invalidateIf(final long parallelismThreshold, final Predicate<K> condition) {
+
+	delegate.invalidateIf(parallelismThreshold, condition);
+	entries.forEach((key, entry) -> {
+	  if (condition.test(key))
+		remove(key, entry);
+	});
+  }
+
+  @Override
+  public void invalidateAll(final long parallelismThreshold) {
+
+	delegate.invalidateAll(parallelismThreshold);
+	entries.forEach(this::remove);
+  }
+
+  @Override
+  public String getName() {
+
+	return name;
+  }
+
+  @Override
+  public long getEstimatedBytes() {
+
+	return estimatedBytes.get();
+  }
+
+  @Override
+  public long getNumEntries() {
+
+	return entries.size();
+  }
+
+  @Override
+  public double getReloadCost() {
+
+	return reloadCost;
+  }
+
+  @Override
+  public void collectEvictionCandidates(final Consumer<EvictionCandidate> candidates) {
+
+	entries.forEach((key, entry) -> {
+	  if (entry.value.get() == null)
+		remove(key, entry);
+	  else
+		candidates.accept(entry);
+	});
+  }
+
+  private void touch(final K key, final V value) {
+
+	final Entry entry = entries.get(key);
+	if (entry != null && entry.value.get() == value) {
+	  entry.lastAccessTick = budget.currentTick();
+	  hits.increment();
+	  return;
+	}
+	final Entry newEntry = new Entry(key, value, sizeEstimator.applyAsLong(value));
+	misses.increment();
+	loadedBytes.add(newEntry.bytes);
+	final Entry previous = entries.put(key, newEntry);
+	estimatedBytes.addAndGet(newEntry.bytes - (previous == null ? 0 : previous.bytes));
+  }
+
+  private boolean remove(final K key, final Entry entry) {
+
+	if (entries.remove(key, entry)) {
+	  estimatedBytes.addAndGet(-entry.bytes);
+	  return true;
+	}
+	return false;
+  }
+}
@@ -0,0 +1,62 @@
+package org.janelia.saalfeldlab.paintera.cache;
+
+import java.util.function.Consumer;
+
+/**
+ * A cache that participates in the global memory accounting of {@link CacheBudget}.
+ * <p>
+ * Implementations report an estimate of the memory they hold on to and offer entries for eviction. Caches that hold
+ * data that cannot be restored, e.g. unsaved annotations, report their size but do not offer any entries for eviction.
+ */
+public interface BudgetedCache {
+
+  /**
+   * @return human readable name, shown in the UI
+   */
+  String getName();
+
+  /**
+   * @return estimate of the number of bytes currently held by this cache
+   */
+  long getEstimatedBytes();
+
+  /**
+   * @return number of entries currently held by this cache
+   */
+  long getNumEntries();
+
+  /**
+   * Relative cost of restoring an evicted entry of one byte. Entries of expensive caches are kept longer than entries of
+   * cheap caches that were accessed equally recently.
+   *
+   * @return relative cost of restoring an evicted byte, {@code > 0}
+   */
+  double getReloadCost();
+
+  /**
+   * Pass all entries that may be evicted to {@code candidates}.
+   *
+   * @param candidates consumer of eviction candidates
+   */
+  void collectEvictionCandidates(Consumer<EvictionCandidate> candidates);
+
+  interface EvictionCandidate {
+
+	/**
+	 * @return value of {@link CacheBudget#currentTick()} at the last access of this entry
+	 */
+	long getLastAccessTick();
+
+	/**
+	 * @return estimated number of bytes that is freed by evicting this entry
+	 */
+	long getEstimatedBytes();
+
+	/**
+	 * Remove this entry from its cache.
+	 *
+	 * @return number of bytes actually freed
+	 */
+	long evict();
+  }
+}
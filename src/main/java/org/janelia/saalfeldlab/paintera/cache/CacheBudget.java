@@ -0,0 +1,273 @@
+package org.janelia.saalfeldlab.paintera.cache;
+
+import org.janelia.saalfeldlab.util.NamedThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Single memory budget shared by all {@link BudgetedCache caches}, e.g. label data, meshes, and color lookups.
+ * <p>
+ * The budget is a fraction of the maximum heap size. Whenever the estimated total size of all registered caches exceeds
+ * the budget, entries are evicted until the total drops below {@link #LOW_WATERMARK} of the budget. Entries that have
+ * not been accessed for a long time, are large, and are cheap to restore are evicted first.
+ * <p>
+ * Time is measured in coarse ticks that are advanced by the maintenance thread (see {@link #startMaintenance(long)}),
+ * which keeps the cost of recording an access to a single volatile write.
+ */
+public class CacheBudget {
+
+  private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  public static final double DEFAULT_HEAP_FRACTION = 0.5;
+
+  public static final double LOW_WATERMARK = 0.9;
+
+  public static final long DEFAULT_MAINTENANCE_PERIOD_MSEC = 250;
+
+  private static final CacheBudget GLOBAL = new CacheBudget(Runtime.getRuntime().maxMemory(), DEFAULT_HEAP_FRACTION);
+
+  static {
+	GLOBAL.startMaintenance(DEFAULT_MAINTENANCE_PERIOD_MSEC);
+  }
+
+  /**
+   * Snapshot of the memory held by a single cache.
+   */
+  public static class Usage {
+
+	private final String name;
+
+	private final long estimatedBytes;
+
+	private final long numEntries;
+
+	private Usage(final String name, final long estimatedBytes, final long numEntries) {
+
+	  this.name = name;
+	  this.estimatedBytes = estimatedBytes;
+	  this.numEntries = numEntries;
+	}
+
+	public String getName() {
+
+	  return name;
+	}
+
+	public long getEstimatedBytes() {
+
+	  return estimatedBytes;
+	}
+
+	public long getNumEntries() {
+
+	  return numEntries;
+	}
+  }
+
+  private static class ScoredCandidate {
+
+	private final BudgetedCache.EvictionCandidate candidate;
+
+	private final double score;
+
+	private ScoredCandidate(final BudgetedCache.EvictionCandidate candidate, final double score) {
+
+	  this.candidate = candidate;
+	  this.score = score;
+	}
+  }
+
+  private final long maxMemory;
+
+  private volatile double heapFraction;
+
+  private final AtomicLong tick = new AtomicLong();
+
+  private final List<WeakReference<BudgetedCache>> caches = new CopyOnWriteArrayList<>();
+
+  private ScheduledExecutorService maintenanceExecutor = null;
+
+  private ScheduledFuture<?> maintenanceTask = null;
+
+  /**
+   * @param maxMemory    reference memory size, usually {@link Runtime#maxMemory()}
+   * @param heapFraction fraction of {@code maxMemory} that all registered caches may use
+   */
+  public CacheBudget(final long maxMemory, final double heapFraction) {
+
+	this.maxMemory = maxMemory;
+	setHeapFraction(heapFraction);
+  }
+
+  /**
+   * @return budget shared by all caches in this JVM
+   */
+  public static CacheBudget getGlobal() {
+
+	return GLOBAL;
+  }
+
+  public double getHeapFraction() {
+
+	return heapFraction;
+  }
+
+  /**
+   * @param heapFraction fraction of the maximum heap size that all registered caches may use, clamped to {@code [0, 1]}
+   */
+  public void setHeapFraction(final double heapFraction) {
+
+	this.heapFraction = Math.min(Math.max(heapFraction, 0.0), 1.0);
+  }
+
+  public long getBudgetBytes() {
+
+	return (long)(maxMemory * heapFraction);
+  }
+
+  public long currentTick() {
+
+	return tick.get();
+  }
+
+  /**
+   * Advance the clock that is used to determine the least recently used entries.
+   */
+  public void tick() {
+
+	tick.incrementAndGet();
+  }
+
+  /**
+   * Register {@code cache} with this budget. Caches are referenced weakly and do not need to be removed explicitly.
+   */
+  public void register(final BudgetedCache cache) {
+
+	LOG.debug("Registering cache {}", cache.getName());
+	caches.add(new WeakReference<>(cache));
+  }
+
+  public void unregister(final BudgetedCache cache) {
+
+	caches.removeIf(ref -> {
+	  final BudgetedCache c = ref.get();
+	  return c == null || c == cache;
+	});
+  }
+
+  /**
+   * @return estimated number of bytes held by all registered caches
+   */
+  public long getEstimatedBytes() {
+
+	long bytes = 0;
+	for (final BudgetedCache cache : getCaches())
+	  bytes += cache.getEstimatedBytes();
+	return bytes;
+  }
+
+  /**
+   * @return memory held by each registered cache
+   */
+  public List<Usage> getUsage() {
+
+	final List<Usage> usage = new ArrayList<>();
+	for (final BudgetedCache cache : getCaches())
+	  usage.add(new Usage(cache.getName(), cache.getEstimatedBytes(), cache.getNumEntries()));
+	return usage;
+  }
+
+  /**
+   * Evict entries until the estimated total size of all caches is below {@link #LOW_WATERMARK} of the budget. Does
+   * nothing if the budget is not exceeded.
+   *
+   * @return estimated number of bytes that were freed
+   */
+  public synchronized long enforce() {
+
+	final List<BudgetedCache> caches = getCaches();
+	long total = 0;
+	for (final BudgetedCache cache : caches)
+	  total += cache.getEstimatedBytes();
+
+	final long budget = getBudgetBytes();
+	if (total <= budget)
+	  return 0;
+
+	final long target = (long)(budget * LOW_WATERMARK);
+	final long now = currentTick();
+	final List<ScoredCandidate> candidates = new ArrayList<>();
+	for (final BudgetedCache cache : caches) {
+	  final double cost = Math.max(cache.getReloadCost(), Double.MIN_NORMAL);
+	  cache.collectEvictionCandidates(candidate -> {
+		final long age = Math.max(now - candidate.getLastAccessTick(), 0) + 1;
+		candidates.add(new ScoredCandidate(candidate, age * (double)candidate.getEstimatedBytes() / cost));
+	  });
+	}
+	candidates.sort(Comparator.comparingDouble((ScoredCandidate c) -> c.score).reversed());
+
+	long freed = 0;
+	for (final ScoredCandidate candidate : candidates) {
+	  if (total - freed <= target)
+		break;
+	  freed += candidate.candidate.evict();
+	}
+	LOG.debug("Evicted {} bytes to bring estimated cache size {} below {} (budget={})", freed, total, target, budget);
+	return freed;
+  }
+
+  /**
+   * Periodically advance the clock and {@link #enforce() enforce} the budget on a daemon thread.
+   *
+   * @param periodMsec length of a tick in milliseconds
+   */
+  public synchronized void startMaintenance(final long periodMsec) {
+
+	stopMaintenance();
+	if (maintenanceExecutor == null)
+	  maintenanceExecutor = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("cache-budget-%d", true));
+	maintenanceTask = maintenanceExecutor.scheduleAtFixedRate(() -> {
+	  try {
+		tick();
+		enforce();
+	  } catch (final Exception e) {
+		LOG.warn("Unable to enforce cache budget", e);
+	  }
+	}, periodMsec, periodMsec, TimeUnit.MILLISECONDS);
+  }
+
+  public synchronized void stopMaintenance() {
+
+	if (maintenanceTask != null)
+	  maintenanceTask.cancel(false);
+	maintenanceTask = null;
+  }
+
+  private List<BudgetedCache> getCaches() {
+
+	final List<BudgetedCache> alive = new ArrayList<>();
+	boolean hasCollected = false;
+	for (final WeakReference<BudgetedCache> ref : caches) {
+	  final BudgetedCache cache = ref.get();
+	  if (cache == null)
+		hasCollected = true;
+	  else
+		alive.add(cache);
+	}
+	if (hasCollected)
+	  caches.removeIf(ref -> ref.get() == null);
+	return alive;
+  }
+}
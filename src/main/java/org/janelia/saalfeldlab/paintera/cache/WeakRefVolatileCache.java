@@ -9,20 +9,36 @@ import net.imglib2.cache.queue.FetcherThreads;
 import net.imglib2.cache.volatiles.CacheHints;
 import net.imglib2.cache.volatiles.CreateInvalid;
 import net.imglib2.cache.volatiles.VolatileCache;
+import org.janelia.saalfeldlab.paintera.metrics.MetricsRegistry;
 
 import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.WeakHashMap;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 public class WeakRefVolatileCache<K, V> implements VolatileCache<K, V> {
 
+  private static final MetricsRegistry.Counter HITS = MetricsRegistry.getGlobal().counter("cache.volatile.hit");
+
+  private static final MetricsRegistry.Counter MISSES = MetricsRegistry.getGlobal().counter("cache.volatile.miss");
+
+  private static final MetricsRegistry.Timer LOADS = MetricsRegistry.getGlobal().timer("fetch.load");
+
+  private static final Set<WeakRefVolatileCache<?, ?>> INSTANCES = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+
+  static {
+	MetricsRegistry.getGlobal().gauge("fetch.pending", WeakRefVolatileCache::getNumPendingFetchesForAllCaches);
+  }
+
   final ConcurrentHashMap<K, Entry> map = new ConcurrentHashMap<>();
 
   final ReferenceQueue<V> queue = new ReferenceQueue<>();
@@ -35,6 +51,9 @@ public class WeakRefVolatileCache<K, V> implements VolatileCache<K, V> {
 
   final CreateInvalid<? super K, ? extends V> createInvalid;
 
+  /* called for each key that is enqueued for loading, e.g. to start reading it before a fetcher thread gets to it */
+  final Consumer<? super K> prefetch;
+
   /*
    * Possible states of CacheWeakReference.loaded
    */
@@ -121,12 +140,15 @@ public class WeakRefVolatileCache<K, V> implements VolatileCache<K, V> {
 		  final Cache<K, V> backingCache,
 		  final net.imglib2.cache.Invalidate<K> backingInvalidate,
 		  final BlockingFetchQueues<Callable<?>> fetchQueue,
-		  final CreateInvalid<? super K, ? extends V> createInvalid) {
+		  final CreateInvalid<? super K, ? extends V> createInvalid,
+		  final Consumer<? super K> prefetch) {
 
 	this.backingCache = backingCache;
 	this.backingInvalidate = backingInvalidate;
 	this.fetchQueue = fetchQueue;
 	this.createInvalid = createInvalid;
+	this.prefetch = prefetch;
+	INSTANCES.add(this);
   }
 
   public static <K, V> WeakRefVolatileCache<K, V> fromCacheAndInvalidate(
@@ -135,7 +157,8 @@ public class WeakRefVolatileCache<K, V> implements VolatileCache<K, V> {
 		  final BlockingFetchQueues<Callable<?>> fetchQueue,
 		  final CreateInvalid<? super K, ? extends V> createInvalid) {
 
-	return new WeakRefVolatileCache<>(backingCache, backingInvalidate, fetchQueue, createInvalid);
+	return new WeakRefVolatileCache<>(backingCache, backingInvalidate, fetchQueue, createInvalid, key -> {
+	});
   }
 
   public static <K, V> WeakRefVolatileCache<K, V> fromCache(
@@ -146,6 +169,18 @@ public class WeakRefVolatileCache<K, V> implements VolatileCache<K, V> {
 	return fromCacheAndInvalidate(cacheWithInvalidate, cacheWithInvalidate, fetchQueue, createInvalid);
   }
 
+  /**
+   * @param prefetch called for each key that is enqueued for loading
+   */
+  public static <K, V> WeakRefVolatileCache<K, V> fromCache(
+		  final Cache<K, V> cacheWithInvalidate,
+		  final BlockingFetchQueues<Callable<?>> fetchQueue,
+		  final CreateInvalid<? super K, ? extends V> createInvalid,
+		  final Consumer<? super K> prefetch) {
+
+	return new WeakRefVolatileCache<>(cacheWithInvalidate, cacheWithInvalidate, fetchQueue, createInvalid, prefetch);
+  }
+
   @Override
   public V getIfPresent(final Object key, final CacheHints hints) throws ExecutionException {
 
@@ -182,9 +217,12 @@ public class WeakRefVolatileCache<K, V> implements VolatileCache<K, V> {
 
 	final CacheWeakReference ref = entry.ref;
 	V v = ref.get();
-	if (v != null && ref.loaded == VALID)
+	if (v != null && ref.loaded == VALID) {
+	  HITS.increment();
 	  return v;
+	}
 
+	MISSES.increment();
 	cleanUp();
 	switch (hints.getLoadingStrategy()) {
 	case BLOCKING:
@@ -220,6 +258,22 @@ public class WeakRefVolatileCache<K, V> implements VolatileCache<K, V> {
 	}
   }
 
+  /**
+   * @return number of entries that were requested for the current frame of the fetch queue but are not loaded yet.
+   */
+  public long getNumPendingFetches() {
+
+	final long currentQueueFrame = fetchQueue.getCurrentFrame();
+	return map.values().stream().filter(e -> e.enqueueFrame == currentQueueFrame && e.ref.loaded != VALID).count();
+  }
+
+  private static long getNumPendingFetchesForAllCaches() {
+
+	synchronized (INSTANCES) {
+	  return INSTANCES.stream().mapToLong(WeakRefVolatileCache::getNumPendingFetches).sum();
+	}
+  }
+
   @Override
   public void invalidateAll(final long parallelismThreshold) {
 
@@ -377,7 +431,9 @@ public class WeakRefVolatileCache<K, V> implements VolatileCache<K, V> {
 	  if (ref.loaded == VALID) // v.isValid()
 		return v;
 	}
+	final long loadStartNanos = System.nanoTime();
 	final V vl = backingCache.get(entry.key);
+	LOADS.recordSince(loadStartNanos);
 	synchronized (entry) {
 	  final CacheWeakReference ref = entry.ref;
 	  final V v = ref.get();
@@ -435,6 +491,7 @@ public class WeakRefVolatileCache<K, V> implements VolatileCache<K, V> {
 	if (entry.enqueueFrame < currentQueueFrame) {
 	  entry.enqueueFrame = currentQueueFrame;
 	  fetchQueue.put(new FetchEntry(entry.key), hints.getQueuePriority(), hints.isEnqueuToFront());
+	  prefetch.accept(entry.key);
 	}
   }
 
@@ -29,6 +29,10 @@ public class Viewer3DConfig {
   public static final long FRAME_DELAY_MSEC_MAX_VALUE = 100;
   public static final long FRAME_DELAY_MSEC_DEFAULT_VALUE = 20;
 
+  public static final long TARGET_FRAME_TIME_MSEC_MIN_VALUE = 0;
+  public static final long TARGET_FRAME_TIME_MSEC_MAX_VALUE = 50;
+  public static final long TARGET_FRAME_TIME_MSEC_DEFAULT_VALUE = 8;
+
   public static final long SCENE_UPDATE_DELAY_MSEC_MIN_VALUE = 100;
   public static final long SCENE_UPDATE_DELAY_MSEC_MAX_VALUE = 1000;
   public static final long SCENE_UPDATE_DELAY_MSEC_DEFAULT_VALUE = 250;
@@ -47,6 +51,8 @@ public class Viewer3DConfig {
 
   private final SimpleLongProperty frameDelayMsec = new SimpleLongProperty(FRAME_DELAY_MSEC_DEFAULT_VALUE);
 
+  private final SimpleLongProperty targetFrameTimeMsec = new SimpleLongProperty(TARGET_FRAME_TIME_MSEC_DEFAULT_VALUE);
+
   private final SimpleLongProperty sceneUpdateDelayMsec = new SimpleLongProperty(SCENE_UPDATE_DELAY_MSEC_DEFAULT_VALUE);
 
   private final SimpleObjectProperty<Color> backgroundColor = new SimpleObjectProperty<>(Color.BLACK);
@@ -81,6 +87,11 @@ public class Viewer3DConfig {
 	return this.frameDelayMsec;
   }
 
+  public LongProperty targetFrameTimeMsecProperty() {
+
+	return this.targetFrameTimeMsec;
+  }
+
   public LongProperty sceneUpdateDelayMsecProperty() {
 
 	return this.sceneUpdateDelayMsec;
@@ -98,6 +109,7 @@ public class Viewer3DConfig {
 	viewer.rendererBlockSizeProperty().bind(this.rendererBlockSize);
 	viewer.numElementsPerFrameProperty().bind(this.numElementsPerFrame);
 	viewer.frameDelayMsecProperty().bind(this.frameDelayMsec);
+	viewer.targetFrameTimeMsecProperty().bind(this.targetFrameTimeMsec);
 	viewer.sceneUpdateDelayMsecProperty().bind(this.sceneUpdateDelayMsec);
 
 	final Affine affineCopy = this.affine.clone();
@@ -122,6 +134,7 @@ public class Viewer3DConfig {
 	this.rendererBlockSize.set(that.rendererBlockSize.get());
 	this.numElementsPerFrame.set(that.numElementsPerFrame.get());
 	this.frameDelayMsec.set(that.frameDelayMsec.get());
+	this.targetFrameTimeMsec.set(that.targetFrameTimeMsec.get());
 	this.sceneUpdateDelayMsec.set(that.sceneUpdateDelayMsec.get());
 	this.backgroundColor.set(that.backgroundColor.get());
 	if (that.wasAffineSet)
@@ -32,6 +32,8 @@ public class Viewer3DConfigNode {
 
   private final NumericSliderWithField frameDelayMsecSlider;
 
+  private final NumericSliderWithField targetFrameTimeMsecSlider;
+
   private final NumericSliderWithField sceneUpdateDelayMsecSlider;
 
   private final ColorPicker backgroundColorPicker = new ColorPicker(Color.BLACK);
@@ -114,6 +116,25 @@ public class Viewer3DConfigNode {
 	GridPane.setHgrow(frameDelayMsecSlider.getSlider(), Priority.ALWAYS);
 	++row;
 
+	targetFrameTimeMsecSlider = new NumericSliderWithField(
+			Viewer3DConfig.TARGET_FRAME_TIME_MSEC_MIN_VALUE,
+			Viewer3DConfig.TARGET_FRAME_TIME_MSEC_MAX_VALUE,
+			Viewer3DConfig.TARGET_FRAME_TIME_MSEC_DEFAULT_VALUE
+	);
+	grid.add(Labels.withTooltip("Target frame time (ms)"), 0, row);
+	grid.add(targetFrameTimeMsecSlider.getSlider(), 1, row);
+	GridPane.setColumnSpan(targetFrameTimeMsecSlider.getSlider(), 2);
+	grid.add(targetFrameTimeMsecSlider.getTextField(), 3, row);
+	targetFrameTimeMsecSlider.getSlider().setShowTickLabels(false);
+	targetFrameTimeMsecSlider.getSlider().setShowTickMarks(true);
+	targetFrameTimeMsecSlider.getSlider().setMajorTickUnit((targetFrameTimeMsecSlider.getSlider().getMax() - targetFrameTimeMsecSlider.getSlider().getMin() + 1) / 4);
+	targetFrameTimeMsecSlider.getSlider().setMinorTickCount(0);
+	targetFrameTimeMsecSlider.getSlider().setTooltip(new Tooltip("Adapt elements per frame to keep mesh uploads within this time. Set to 0 to use a fixed number of elements per frame."));
+	targetFrameTimeMsecSlider.getTextField().setPrefWidth(PREF_CELL_WIDTH);
+	targetFrameTimeMsecSlider.getTextField().setMaxWidth(Control.USE_PREF_SIZE);
+	GridPane.setHgrow(targetFrameTimeMsecSlider.getSlider(), Priority.ALWAYS);
+	++row;
+
 	sceneUpdateDelayMsecSlider = new NumericSliderWithField(
 			Viewer3DConfig.SCENE_UPDATE_DELAY_MSEC_MIN_VALUE,
 			Viewer3DConfig.SCENE_UPDATE_DELAY_MSEC_MAX_VALUE,
@@ -161,6 +182,7 @@ public class Viewer3DConfigNode {
 	rendererBlockSizeSlider.getSlider().valueProperty().bindBidirectional(config.rendererBlockSizeProperty());
 	numElementsPerFrameSlider.getSlider().valueProperty().bindBidirectional(config.numElementsPerFrameProperty());
 	frameDelayMsecSlider.getSlider().valueProperty().bindBidirectional(config.frameDelayMsecProperty());
+	targetFrameTimeMsecSlider.getSlider().valueProperty().bindBidirectional(config.targetFrameTimeMsecProperty());
 	sceneUpdateDelayMsecSlider.getSlider().valueProperty().bindBidirectional(config.sceneUpdateDelayMsecProperty());
 	backgroundColorPicker.valueProperty().bindBidirectional(config.backgroundColorProperty());
   }
@@ -264,7 +264,7 @@ public class FloodFill<T extends IntegerType<T>> {
 	);
   }
 
-  private static <T extends IntegerType<T>> void fillPrimitiveType(
+  static <T extends IntegerType<T>> void fillPrimitiveType(
 		  final RandomAccessibleInterval<T> input,
 		  final RandomAccessible<UnsignedLongType> output,
 		  final Localizable seed,
@@ -1,21 +1,28 @@
 package org.janelia.saalfeldlab.paintera.control.selection;
 
+import gnu.trove.list.array.TLongArrayList;
 import org.janelia.saalfeldlab.fx.ObservableWithListenersList;
-
-import gnu.trove.set.hash.TLongHashSet;
+import org.janelia.saalfeldlab.paintera.control.assignment.FragmentSegmentAssignmentState;
 
 public class FragmentsInSelectedSegments extends ObservableWithListenersList {
 
   private final SelectedSegments activeSegments;
 
-  private TLongHashSet selectedFragments = new TLongHashSet();
+  /* immutable, replaced on every change, shares the fragments of unchanged segments with the previous snapshot */
+  private volatile SelectionSnapshot selectedFragments = SelectionSnapshot.EMPTY;
+
+  /* snapshot of the selected segments that selectedFragments was derived from, guarded by this */
+  private SelectionSnapshot lastSelectedSegments = null;
 
   public FragmentsInSelectedSegments(final SelectedSegments activeSegments) {
 
 	super();
 	this.activeSegments = activeSegments;
-	this.activeSegments.addListener(a -> update());
-	this.activeSegments.getAssignment().addListener(a -> update());
+	this.activeSegments.addListener(a -> selectionChanged());
+	this.activeSegments.getAssignment().addListener(a -> assignmentChanged());
+	synchronized (this) {
+	  regenerate(activeSegments.getSnapshot());
+	}
   }
 
   public long[] getFragments() {
@@ -28,22 +35,63 @@ public class FragmentsInSelectedSegments extends ObservableWithListenersList {
 	return this.activeSegments;
   }
 
-  private void update() {
+  private void selectionChanged() {
+
+	synchronized (this) {
+	  final SelectionSnapshot segments = activeSegments.getSnapshot();
+	  if (segments != lastSelectedSegments) {
+		if (segments.isIncrementalUpdateOf(lastSelectedSegments))
+		  updateIncrementally(segments);
+		else
+		  regenerate(segments);
+	  }
+	}
+	stateChanged();
+  }
+
+  private void assignmentChanged() {
 
-	final TLongHashSet newSelectedFragments = new TLongHashSet();
-	synchronized (activeSegments.getSet()) {
-	  activeSegments.getSet().forEach(id -> {
-		newSelectedFragments.addAll(activeSegments.getAssignment().getFragments(id));
-		return true;
-	  });
+	synchronized (this) {
+	  regenerate(activeSegments.getSnapshot());
 	}
-	this.selectedFragments = newSelectedFragments;
 	stateChanged();
   }
 
+  private void updateIncrementally(final SelectionSnapshot segments) {
+
+	final FragmentSegmentAssignmentState assignment = activeSegments.getAssignment();
+	final TLongArrayList removed = new TLongArrayList();
+	for (final long id : segments.getRemoved())
+	  removed.addAll(assignment.getFragments(id));
+	final TLongArrayList added = new TLongArrayList();
+	for (final long id : segments.getAdded())
+	  added.addAll(assignment.getFragments(id));
+	lastSelectedSegments = segments;
+	this.selectedFragments = this.selectedFragments.update(added.toArray(), removed.toArray());
+  }
+
+  private void regenerate(final SelectionSnapshot segments) {
+
+	final TLongArrayList fragments = new TLongArrayList();
+	for (final long id : segments.toArray())
+	  fragments.addAll(activeSegments.getAssignment().getFragments(id));
+	lastSelectedSegments = segments;
+	this.selectedFragments = this.selectedFragments.replace(fragments.toArray());
+  }
+
   public boolean contains(final long id) {
 
 	return this.selectedFragments.contains(id);
   }
 
+  /**
+   * Package protected for tests.
+   *
+   * @return current snapshot of the selected fragments
+   */
+  SelectionSnapshot getSnapshot() {
+
+	return selectedFragments;
+  }
+
 }
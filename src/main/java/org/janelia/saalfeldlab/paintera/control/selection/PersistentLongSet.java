@@ -0,0 +1,311 @@
+package org.janelia.saalfeldlab.paintera.control.selection;
+
+import java.util.Arrays;
+
+/**
+ * Immutable set of primitive longs, stored as a compressed hash trie. Adding or removing a single id copies only the
+ * nodes on the path to that id, and the new set shares every other node with the previous one. A path has at most 13
+ * nodes of at most 32 entries each, so the cost of a change does not depend on the size of the set.
+ * <p>
+ * Ids are spread over the trie by a bijective hash, so two distinct ids never have the same hash, and no collision
+ * nodes are needed. Each node stores its ids inline and its children in separate arrays, indexed by bitmaps. A child is
+ * never reduced to a single id; that id is moved into the parent instead, so every set has exactly one representation.
+ */
+final class PersistentLongSet {
+
+  private static final int BITS_PER_LEVEL = 5;
+
+  private static final int MASK = (1 << BITS_PER_LEVEL) - 1;
+
+  private static final long[] NO_KEYS = new long[0];
+
+  private static final Node[] NO_NODES = new Node[0];
+
+  static final PersistentLongSet EMPTY = new PersistentLongSet(Node.EMPTY, 0);
+
+  /* package-private for tests that check which nodes are shared between sets */
+  final Node root;
+
+  private final int size;
+
+  private PersistentLongSet(final Node root, final int size) {
+
+	this.root = root;
+	this.size = size;
+  }
+
+  /**
+   * @param ids distinct ids
+   */
+  static PersistentLongSet of(final long[] ids) {
+
+	if (ids.length == 0)
+	  return EMPTY;
+	final long[] keys = ids.clone();
+	final long[] hashes = new long[keys.length];
+	for (int i = 0; i < keys.length; ++i)
+	  hashes[i] = hash(keys[i]);
+	return new PersistentLongSet(build(keys, hashes, new long[keys.length], new long[keys.length], 0, keys.length, 0), keys.length);
+  }
+
+  boolean contains(final long id) {
+
+	final long hash = hash(id);
+	Node node = root;
+	for (int shift = 0; ; shift += BITS_PER_LEVEL) {
+	  final int bit = bit(hash, shift);
+	  if ((node.dataMap & bit) != 0)
+		return node.keys[index(node.dataMap, bit)] == id;
+	  if ((node.nodeMap & bit) == 0)
+		return false;
+	  node = node.nodes[index(node.nodeMap, bit)];
+	}
+  }
+
+  /**
+   * @return set that also contains {@code id}, or this set if it already contains {@code id}
+   */
+  PersistentLongSet add(final long id) {
+
+	final Node newRoot = add(root, id, hash(id), 0);
+	return newRoot == root ? this : new PersistentLongSet(newRoot, size + 1);
+  }
+
+  /**
+   * @return set that does not contain {@code id}, or this set if it does not contain {@code id}
+   */
+  PersistentLongSet remove(final long id) {
+
+	final Node newRoot = remove(root, id, hash(id), 0);
+	return newRoot == root ? this : new PersistentLongSet(newRoot, size - 1);
+  }
+
+  int size() {
+
+	return size;
+  }
+
+  boolean isEmpty() {
+
+	return size == 0;
+  }
+
+  long[] toArray() {
+
+	final long[] ids = new long[size];
+	collect(root, ids, 0);
+	return ids;
+  }
+
+  @Override
+  public String toString() {
+
+	return Arrays.toString(toArray());
+  }
+
+  private static Node add(final Node node, final long id, final long hash, final int shift) {
+
+	final int bit = bit(hash, shift);
+	if ((node.dataMap & bit) != 0) {
+	  final int index = index(node.dataMap, bit);
+	  final long existing = node.keys[index];
+	  if (existing == id)
+		return node;
+	  final Node child = pair(existing, hash(existing), id, hash, shift + BITS_PER_LEVEL);
+	  final int nodeMap = node.nodeMap | bit;
+	  return new Node(node.dataMap ^ bit, nodeMap, removeAt(node.keys, index), insertAt(node.nodes, index(nodeMap, bit), child));
+	}
+	if ((node.nodeMap & bit) != 0) {
+	  final int index = index(node.nodeMap, bit);
+	  final Node child = node.nodes[index];
+	  final Node newChild = add(child, id, hash, shift + BITS_PER_LEVEL);
+	  return newChild == child ? node : new Node(node.dataMap, node.nodeMap, node.keys, replaceAt(node.nodes, index, newChild));
+	}
+	final int dataMap = node.dataMap | bit;
+	return new Node(dataMap, node.nodeMap, insertAt(node.keys, index(dataMap, bit), id), node.nodes);
+  }
+
+  private static Node remove(final Node node, final long id, final long hash, final int shift) {
+
+	final int bit = bit(hash, shift);
+	if ((node.dataMap & bit) != 0) {
+	  final int index = index(node.dataMap, bit);
+	  if (node.keys[index] != id)
+		return node;
+	  return new Node(node.dataMap ^ bit, node.nodeMap, removeAt(node.keys, index), node.nodes);
+	}
+	if ((node.nodeMap & bit) != 0) {
+	  final int index = index(node.nodeMap, bit);
+	  final Node child = node.nodes[index];
+	  final Node newChild = remove(child, id, hash, shift + BITS_PER_LEVEL);
+	  if (newChild == child)
+		return node;
+	  if (newChild.nodeMap == 0 && newChild.keys.length == 1) {
+		/* move the last id of the child into this node */
+		final int dataMap = node.dataMap | bit;
+		return new Node(dataMap, node.nodeMap ^ bit, insertAt(node.keys, index(dataMap, bit), newChild.keys[0]), removeAt(node.nodes, index));
+	  }
+	  return new Node(node.dataMap, node.nodeMap, node.keys, replaceAt(node.nodes, index, newChild));
+	}
+	return node;
+  }
+
+  private static Node pair(final long id1, final long hash1, final long id2, final long hash2, final int shift) {
+
+	final int bit1 = bit(hash1, shift);
+	final int bit2 = bit(hash2, shift);
+	if (bit1 == bit2)
+	  return new Node(0, bit1, NO_KEYS, new Node[]{pair(id1, hash1, id2, hash2, shift + BITS_PER_LEVEL)});
+	final long[] keys = Integer.compareUnsigned(bit1, bit2) < 0 ? new long[]{id1, id2} : new long[]{id2, id1};
+	return new Node(bit1 | bit2, 0, keys, NO_NODES);
+  }
+
+  /**
+   * Build the node for {@code keys[from, to)}, partitioning them by the fragment of their hash at {@code shift}.
+   */
+  private static Node build(
+		  final long[] keys,
+		  final long[] hashes,
+		  final long[] tmpKeys,
+		  final long[] tmpHashes,
+		  final int from,
+		  final int to,
+		  final int shift) {
+
+	final int[] offsets = new int[MASK + 2];
+	for (int i = from; i < to; ++i)
+	  ++offsets[fragment(hashes[i], shift) + 1];
+	int dataMap = 0;
+	int nodeMap = 0;
+	for (int fragment = 0; fragment <= MASK; ++fragment) {
+	  final int count = offsets[fragment + 1];
+	  if (count == 1)
+		dataMap |= 1 << fragment;
+	  else if (count > 1)
+		nodeMap |= 1 << fragment;
+	  offsets[fragment + 1] += offsets[fragment];
+	}
+	final int[] starts = offsets.clone();
+	for (int i = from; i < to; ++i) {
+	  final int target = from + offsets[fragment(hashes[i], shift)]++;
+	  tmpKeys[target] = keys[i];
+	  tmpHashes[target] = hashes[i];
+	}
+	System.arraycopy(tmpKeys, from, keys, from, to - from);
+	System.arraycopy(tmpHashes, from, hashes, from, to - from);
+
+	final long[] nodeKeys = new long[Integer.bitCount(dataMap)];
+	final Node[] nodes = new Node[Integer.bitCount(nodeMap)];
+	for (int fragment = 0, keyIndex = 0, nodeIndex = 0; fragment <= MASK; ++fragment) {
+	  final int start = from + starts[fragment];
+	  final int stop = from + starts[fragment + 1];
+	  if ((dataMap & 1 << fragment) != 0)
+		nodeKeys[keyIndex++] = keys[start];
+	  else if ((nodeMap & 1 << fragment) != 0)
+		nodes[nodeIndex++] = build(keys, hashes, tmpKeys, tmpHashes, start, stop, shift + BITS_PER_LEVEL);
+	}
+	return new Node(dataMap, nodeMap, nodeKeys, nodes);
+  }
+
+  private static int collect(final Node node, final long[] ids, int offset) {
+
+	System.arraycopy(node.keys, 0, ids, offset, node.keys.length);
+	offset += node.keys.length;
+	for (final Node child : node.nodes)
+	  offset = collect(child, ids, offset);
+	return offset;
+  }
+
+  /**
+   * Bijective mix of all bits of {@code id} (the finalizer of MurmurHash3), so that distinct ids have distinct hashes.
+   */
+  private static long hash(final long id) {
+
+	long h = id;
+	h ^= h >>> 33;
+	h *= 0xff51afd7ed558ccdL;
+	h ^= h >>> 33;
+	h *= 0xc4ceb9fe1a85ec53L;
+	h ^= h >>> 33;
+	return h;
+  }
+
+  private static int fragment(final long hash, final int shift) {
+
+	return (int)(hash >>> shift) & MASK;
+  }
+
+  private static int bit(final long hash, final int shift) {
+
+	return 1 << fragment(hash, shift);
+  }
+
+  private static int index(final int map, final int bit) {
+
+	return Integer.bitCount(map & bit - 1);
+  }
+
+  private static long[] insertAt(final long[] array, final int index, final long value) {
+
+	final long[] copy = new long[array.length + 1];
+	System.arraycopy(array, 0, copy, 0, index);
+	copy[index] = value;
+	System.arraycopy(array, index, copy, index + 1, array.length - index);
+	return copy;
+  }
+
+  private static long[] removeAt(final long[] array, final int index) {
+
+	final long[] copy = new long[array.length - 1];
+	System.arraycopy(array, 0, copy, 0, index);
+	System.arraycopy(array, index + 1, copy, index, copy.length - index);
+	return copy;
+  }
+
+  private static Node[] insertAt(final Node[] array, final int index, final Node value) {
+
+	final Node[] copy = new Node[array.length + 1];
+	System.arraycopy(array, 0, copy, 0, index);
+	copy[index] = value;
+	System.arraycopy(array, index, copy, index + 1, array.length - index);
+	return copy;
+  }
+
+  private static Node[] removeAt(final Node[] array, final int index) {
+
+	final Node[] copy = new Node[array.length - 1];
+	System.arraycopy(array, 0, copy, 0, index);
+	System.arraycopy(array, index + 1, copy, index, copy.length - index);
+	return copy;
+  }
+
+  private static Node[] replaceAt(final Node[] array, final int index, final Node value) {
+
+	final Node[] copy = array.clone();
+	copy[index] = value;
+	return copy;
+  }
+
+  static final class Node {
+
+	private static final Node EMPTY = new Node(0, 0, NO_KEYS, NO_NODES);
+
+	/* fragments of the ids that are stored in this node */
+	final int dataMap;
+
+	/* fragments of the children */
+	final int nodeMap;
+
+	final long[] keys;
+
+	final Node[] nodes;
+
+	private Node(final int dataMap, final int nodeMap, final long[] keys, final Node[] nodes) {
+
+	  this.dataMap = dataMap;
+	  this.nodeMap = nodeMap;
+	  this.keys = keys;
+	  this.nodes = nodes;
+	}
+  }
+}
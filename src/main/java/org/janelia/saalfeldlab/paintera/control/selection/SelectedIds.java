@@ -3,7 +3,6 @@ package org.janelia.saalfeldlab.paintera.control.selection;
 import java.lang.invoke.MethodHandles;
 import java.util.Arrays;
 
-import gnu.trove.TCollections;
 import gnu.trove.set.TLongSet;
 import org.janelia.saalfeldlab.fx.ObservableWithListenersList;
 import org.slf4j.Logger;
@@ -16,9 +15,13 @@ public class SelectedIds extends ObservableWithListenersList {
 
   private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
-  private final TLongHashSet selectedIds;
+  /**
+   * Immutable, replaced on every change so that {@link #isActive(long)} never blocks. Adding or removing single ids
+   * shares all unchanged ids with the previous snapshot.
+   */
+  private volatile SelectionSnapshot selectedIds;
 
-  private long lastSelection = Label.INVALID;
+  private volatile long lastSelection = Label.INVALID;
 
   public SelectedIds() {
 
@@ -28,7 +31,7 @@ public class SelectedIds extends ObservableWithListenersList {
   public SelectedIds(final TLongHashSet selectedIds) {
 
 	super();
-	this.selectedIds = selectedIds;
+	this.selectedIds = SelectionSnapshot.EMPTY.replace(selectedIds.toArray());
 	updateLastSelection();
   }
 
@@ -39,40 +42,41 @@ public class SelectedIds extends ObservableWithListenersList {
 
   public void activate(final long... ids) {
 
-	deactivateAll(false);
-	activateAlso(ids);
-	LOG.debug("Activated " + Arrays.toString(ids) + " " + selectedIds);
+	synchronized (this) {
+	  selectedIds = selectedIds.replace(ids);
+	  lastSelection = ids.length > 0 ? ids[0] : Label.INVALID;
+	}
+	LOG.debug("Activated {}, {}", Arrays.toString(ids), selectedIds);
+	stateChanged();
   }
 
   public void activateAlso(final long... ids) {
 
-	for (final long id : ids) {
-	  selectedIds.add(id);
+	synchronized (this) {
+	  selectedIds = selectedIds.add(ids);
+	  if (ids.length > 0)
+		this.lastSelection = ids[0];
 	}
-	if (ids.length > 0)
-	  this.lastSelection = ids[0];
 	stateChanged();
   }
 
   public void deactivateAll() {
 
-	deactivateAll(true);
-  }
-
-  private void deactivateAll(final boolean notify) {
-
-	selectedIds.clear();
-	lastSelection = Label.INVALID;
-	if (notify)
-	  stateChanged();
+	synchronized (this) {
+	  selectedIds = selectedIds.replace(new long[0]);
+	  lastSelection = Label.INVALID;
+	}
+	stateChanged();
   }
 
   public void deactivate(final long... ids) {
 
-	for (final long id : ids) {
-	  selectedIds.remove(id);
-	  if (id == lastSelection)
-		lastSelection = Label.INVALID;
+	synchronized (this) {
+	  selectedIds = selectedIds.remove(ids);
+	  for (final long id : ids) {
+		if (id == lastSelection)
+		  lastSelection = Label.INVALID;
+	  }
 	}
 	LOG.debug("Deactivated {}, {}", Arrays.toString(ids), selectedIds);
 	stateChanged();
@@ -80,12 +84,16 @@ public class SelectedIds extends ObservableWithListenersList {
 
   public boolean isOnlyActiveId(final long id) {
 
-	return selectedIds.size() == 1 && isActive(id);
+	final SelectionSnapshot selectedIds = this.selectedIds;
+	return selectedIds.size() == 1 && selectedIds.contains(id);
   }
 
+  /**
+   * @return unmodifiable snapshot of the active ids that does not reflect later changes
+   */
   public TLongSet getActiveIds() {
 
-	return TCollections.unmodifiableSet(this.selectedIds);
+	return this.selectedIds.asSet();
   }
 
   public long[] getActiveIdsCopyAsArray() {
@@ -121,17 +129,18 @@ public class SelectedIds extends ObservableWithListenersList {
 
   private void updateLastSelection() {
 
-	if (selectedIds.size() > 0) {
-	  lastSelection = selectedIds.iterator().next();
+	final long[] ids = selectedIds.toArray();
+	if (ids.length > 0) {
+	  lastSelection = ids[0];
 	}
   }
 
   /**
    * Package protected for {@link SelectedSegments} internal use.
    *
-   * @return
+   * @return current snapshot of the selected ids
    */
-  TLongHashSet getSet() {
+  SelectionSnapshot getSnapshot() {
 
 	return selectedIds;
   }
@@ -1,22 +1,22 @@
 package org.janelia.saalfeldlab.paintera.control.selection;
 
-import gnu.trove.TCollections;
+import gnu.trove.list.array.TLongArrayList;
+import gnu.trove.map.hash.TLongIntHashMap;
+import gnu.trove.map.hash.TLongLongHashMap;
 import gnu.trove.set.TLongSet;
+import net.imglib2.type.label.Label;
 import org.janelia.saalfeldlab.fx.ObservableWithListenersList;
 import org.janelia.saalfeldlab.paintera.control.assignment.FragmentSegmentAssignmentState;
 
 import gnu.trove.set.hash.TLongHashSet;
 
 /**
- * TODO
+ * Segments of the {@link SelectedIds selected ids}.
  * <p>
- * The update mechanism for this class regenerates the entire segment set
- * for each update which is inefficient for small edits on large selections.
- * Eventually, this should be unified with SelectedIds such that
- * small updates can be implemented as small updates.
- * <p>
- * Alternatively, SelectedIds can pass both the old state and the new state
- * to its listeners and then a diff can be easily generated from that.
+ * The set of selected segments is an immutable snapshot that is replaced on every change, so queries never block.
+ * If single ids are added to or removed from the selection, only the segments of these ids are updated, and the new
+ * snapshot shares all other segments with the previous one. Changes of the assignment or replacing the entire selection
+ * regenerate the entire segment set.
  */
 public class SelectedSegments extends ObservableWithListenersList {
 
@@ -24,7 +24,16 @@ public class SelectedSegments extends ObservableWithListenersList {
 
   private final FragmentSegmentAssignmentState assignment;
 
-  private final TLongHashSet selectedSegments = new TLongHashSet();
+  private volatile SelectionSnapshot selectedSegments = SelectionSnapshot.EMPTY;
+
+  /* segment of each selected id at the time it was selected, guarded by this */
+  private final TLongLongHashMap segmentOfSelectedId = new TLongLongHashMap(10, 0.5f, Label.INVALID, Label.INVALID);
+
+  /* number of selected ids per selected segment, guarded by this */
+  private final TLongIntHashMap numSelectedIdsPerSegment = new TLongIntHashMap();
+
+  /* snapshot of the selected ids that selectedSegments was derived from, guarded by this */
+  private SelectionSnapshot lastSelectedIds = null;
 
   public SelectedSegments(final SelectedIds selectedIds, final FragmentSegmentAssignmentState assignment) {
 
@@ -32,21 +41,24 @@ public class SelectedSegments extends ObservableWithListenersList {
 	this.selectedIds = selectedIds;
 	this.assignment = assignment;
 
-	/* TODO the following updates the set twice which is unnecessary */
-	this.selectedIds.addListener(a -> update());
-	this.assignment.addListener(a -> update());
+	this.selectedIds.addListener(a -> selectionChanged());
+	this.assignment.addListener(a -> assignmentChanged());
+	synchronized (this) {
+	  regenerate(selectedIds.getSnapshot());
+	}
   }
 
+  /**
+   * @return unmodifiable snapshot of the selected segments that does not reflect later changes
+   */
   public TLongSet getSelectedSegments() {
 
-	return TCollections.unmodifiableSet(this.selectedSegments);
+	return this.selectedSegments.asSet();
   }
 
   public long[] getSelectedSegmentsCopyAsArray() {
 
-	synchronized (selectedSegments) {
-	  return selectedSegments.toArray();
-	}
+	return selectedSegments.toArray();
   }
 
   public boolean isSegmentSelected(final long id) {
@@ -54,20 +66,64 @@ public class SelectedSegments extends ObservableWithListenersList {
 	return selectedSegments.contains(id);
   }
 
-  private void update() {
+  private void selectionChanged() {
 
-	synchronized (selectedSegments) {
-	  selectedSegments.clear();
-	  synchronized (selectedIds.getSet()) {
-		selectedIds.getSet().forEach(id -> {
-		  selectedSegments.add(assignment.getSegment(id));
-		  return true;
-		});
+	synchronized (this) {
+	  final SelectionSnapshot ids = selectedIds.getSnapshot();
+	  if (ids != lastSelectedIds) {
+		if (ids.isIncrementalUpdateOf(lastSelectedIds))
+		  updateIncrementally(ids);
+		else
+		  regenerate(ids);
 	  }
 	}
 	stateChanged();
   }
 
+  private void assignmentChanged() {
+
+	synchronized (this) {
+	  regenerate(selectedIds.getSnapshot());
+	}
+	stateChanged();
+  }
+
+  private void updateIncrementally(final SelectionSnapshot ids) {
+
+	final TLongArrayList added = new TLongArrayList();
+	final TLongArrayList removed = new TLongArrayList();
+	for (final long id : ids.getRemoved()) {
+	  final long segment = segmentOfSelectedId.remove(id);
+	  if (segment != Label.INVALID && numSelectedIdsPerSegment.adjustOrPutValue(segment, -1, 0) <= 0) {
+		numSelectedIdsPerSegment.remove(segment);
+		removed.add(segment);
+	  }
+	}
+	for (final long id : ids.getAdded()) {
+	  final long segment = assignment.getSegment(id);
+	  segmentOfSelectedId.put(id, segment);
+	  if (numSelectedIdsPerSegment.adjustOrPutValue(segment, 1, 1) == 1)
+		added.add(segment);
+	}
+	lastSelectedIds = ids;
+	selectedSegments = selectedSegments.update(added.toArray(), removed.toArray());
+  }
+
+  private void regenerate(final SelectionSnapshot ids) {
+
+	segmentOfSelectedId.clear();
+	numSelectedIdsPerSegment.clear();
+	final TLongHashSet segments = new TLongHashSet();
+	for (final long id : ids.toArray()) {
+	  final long segment = assignment.getSegment(id);
+	  segmentOfSelectedId.put(id, segment);
+	  numSelectedIdsPerSegment.adjustOrPutValue(segment, 1, 1);
+	  segments.add(segment);
+	}
+	lastSelectedIds = ids;
+	selectedSegments = selectedSegments.replace(segments.toArray());
+  }
+
   public SelectedIds getSelectedIds() {
 
 	return selectedIds;
@@ -79,11 +135,11 @@ public class SelectedSegments extends ObservableWithListenersList {
   }
 
   /**
-   * Package protected for {@link SelectedSegments} internal use.
+   * Package protected for {@link FragmentsInSelectedSegments} internal use.
    *
-   * @return
+   * @return current snapshot of the selected segments
    */
-  TLongHashSet getSet() {
+  SelectionSnapshot getSnapshot() {
 
 	return selectedSegments;
   }
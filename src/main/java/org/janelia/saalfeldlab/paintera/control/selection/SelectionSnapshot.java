@@ -0,0 +1,153 @@
+package org.janelia.saalfeldlab.paintera.control.selection;
+
+import gnu.trove.TCollections;
+import gnu.trove.list.array.TLongArrayList;
+import gnu.trove.set.TLongSet;
+import gnu.trove.set.hash.TLongHashSet;
+
+/**
+ * Immutable set of selected ids. Snapshots are published through volatile references so that rendering threads can
+ * query them without locking while a new snapshot is being created. A snapshot shares all but the changed parts of its
+ * {@link PersistentLongSet set} with the previous snapshot, so adding or removing a few ids does not copy the selection.
+ * <p>
+ * Each snapshot records how it differs from the snapshot with the previous version: first all {@link #getRemoved()
+ * removed} ids are removed, then all {@link #getAdded() added} ids are added. This allows derived sets to be updated
+ * incrementally. If the change is not known, e.g. if the whole selection was replaced, both are {@code null}.
+ */
+final class SelectionSnapshot {
+
+  private static final long[] NO_IDS = new long[0];
+
+  static final SelectionSnapshot EMPTY = new SelectionSnapshot(PersistentLongSet.EMPTY, 0, null, null);
+
+  private final PersistentLongSet ids;
+
+  private final long version;
+
+  private final long[] added;
+
+  private final long[] removed;
+
+  /* created on first use, only for callers that need a TLongSet */
+  private volatile TLongSet asSet = null;
+
+  private SelectionSnapshot(final PersistentLongSet ids, final long version, final long[] added, final long[] removed) {
+
+	this.ids = ids;
+	this.version = version;
+	this.added = added;
+	this.removed = removed;
+  }
+
+  /**
+   * @param ids the new selection, may contain duplicates
+   */
+  SelectionSnapshot replace(final long[] ids) {
+
+	return new SelectionSnapshot(PersistentLongSet.of(new TLongHashSet(ids).toArray()), version + 1, null, null);
+  }
+
+  /**
+   * Remove {@code remove} and then add {@code add}. Only ids whose membership changed are recorded as
+   * {@link #getRemoved() removed} or {@link #getAdded() added}.
+   *
+   * @return the next snapshot, or this snapshot if nothing changed
+   */
+  SelectionSnapshot update(final long[] add, final long[] remove) {
+
+	PersistentLongSet next = ids;
+	final TLongArrayList actuallyRemoved = new TLongArrayList();
+	for (final long id : remove) {
+	  final PersistentLongSet without = next.remove(id);
+	  if (without != next)
+		actuallyRemoved.add(id);
+	  next = without;
+	}
+	final TLongArrayList actuallyAdded = new TLongArrayList();
+	for (final long id : add) {
+	  final PersistentLongSet with = next.add(id);
+	  if (with != next)
+		actuallyAdded.add(id);
+	  next = with;
+	}
+	if (actuallyAdded.isEmpty() && actuallyRemoved.isEmpty())
+	  return this;
+	return new SelectionSnapshot(next, version + 1, actuallyAdded.toArray(), actuallyRemoved.toArray());
+  }
+
+  SelectionSnapshot add(final long... ids) {
+
+	return update(ids, NO_IDS);
+  }
+
+  SelectionSnapshot remove(final long... ids) {
+
+	return update(NO_IDS, ids);
+  }
+
+  /**
+   * @return {@code true} if this snapshot can be derived from {@code previous} through {@link #getAdded()} and
+   * {@link #getRemoved()}
+   */
+  boolean isIncrementalUpdateOf(final SelectionSnapshot previous) {
+
+	return previous != null && added != null && version == previous.version + 1;
+  }
+
+  boolean contains(final long id) {
+
+	return ids.contains(id);
+  }
+
+  int size() {
+
+	return ids.size();
+  }
+
+  boolean isEmpty() {
+
+	return ids.isEmpty();
+  }
+
+  long[] toArray() {
+
+	return ids.toArray();
+  }
+
+  long[] getAdded() {
+
+	return added;
+  }
+
+  long[] getRemoved() {
+
+	return removed;
+  }
+
+  /**
+   * Package protected for tests.
+   *
+   * @return the set of this snapshot
+   */
+  PersistentLongSet getIds() {
+
+	return ids;
+  }
+
+  /**
+   * Copies the ids into a hash set on first use.
+   */
+  TLongSet asSet() {
+
+	TLongSet set = asSet;
+	if (set == null)
+	  asSet = set = TCollections.unmodifiableSet(new TLongHashSet(ids.toArray()));
+	return set;
+  }
+
+  @Override
+  public String toString() {
+
+	return ids.toString();
+  }
+}
@@ -0,0 +1,227 @@
+package org.janelia.saalfeldlab.paintera.data.mask;
+
+import gnu.trove.set.TLongSet;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessible;
+import net.imglib2.RealInterval;
+import net.imglib2.RealPoint;
+import net.imglib2.RealRandomAccess;
+import net.imglib2.RealRandomAccessible;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.type.label.Label;
+import net.imglib2.type.numeric.integer.UnsignedLongType;
+import net.imglib2.type.volatiles.VolatileUnsignedLongType;
+import org.janelia.saalfeldlab.paintera.data.mask.PickOne.PickAndConvertPrimitive;
+
+/**
+ * Composition of background, canvas, and mask of a {@link MaskedSource} at a single level. This replaces
+ * {@link net.imglib2.view.RealRandomAccessibleTriple} and {@link PickOne} for {@link PickAndConvertPrimitive}:
+ * <ul>
+ *   <li>Canvas cells that were never painted, as tracked by {@link CanvasOccupancy}, are not read at all and the background
+ *   value is returned as is if no mask is active.</li>
+ *   <li>Otherwise, canvas and mask are read as primitive labels and passed to
+ *   {@link PickAndConvertPrimitive#apply(Object, long, long, boolean)}.</li>
+ * </ul>
+ * Nearest-neighbor interpolation is used for the canvas, like for the background.
+ *
+ * @param <A> background and composite type
+ * @param <C> canvas and mask type
+ */
+class CanvasComposite<A, C> implements RealRandomAccessible<A> {
+
+  interface CanvasLabel<C> {
+
+	long label(C c);
+
+	boolean isValid(C c);
+  }
+
+  static final CanvasLabel<UnsignedLongType> UNSIGNED_LONG = new CanvasLabel<UnsignedLongType>() {
+
+	@Override
+	public long label(final UnsignedLongType c) {
+
+	  return c.getIntegerLong();
+	}
+
+	@Override
+	public boolean isValid(final UnsignedLongType c) {
+
+	  return true;
+	}
+  };
+
+  static final CanvasLabel<VolatileUnsignedLongType> VOLATILE_UNSIGNED_LONG = new CanvasLabel<VolatileUnsignedLongType>() {
+
+	@Override
+	public long label(final VolatileUnsignedLongType c) {
+
+	  return c.get().getIntegerLong();
+	}
+
+	@Override
+	public boolean isValid(final VolatileUnsignedLongType c) {
+
+	  return c.isValid();
+	}
+  };
+
+  private final RealRandomAccessible<A> background;
+
+  private final RandomAccessible<C> canvas;
+
+  private final RealRandomAccessible<C> mask;
+
+  private final CanvasLabel<C> canvasLabel;
+
+  private final CellGrid grid;
+
+  private final TLongSet touchedCells;
+
+  private final PickAndConvertPrimitive<A, C, C, A> pac;
+
+  /**
+   * @param background   background, interpolated
+   * @param canvas       canvas, extended with {@link Label#INVALID}
+   * @param mask         current mask or {@code null} if there is none
+   * @param canvasLabel  read label from canvas and mask
+   * @param grid         cell grid of {@code canvas}
+   * @param touchedCells flat indices of cells in {@code grid} that may hold painted labels. Must not be modified.
+   * @param pac          pick between background, canvas, and mask
+   */
+  CanvasComposite(
+		  final RealRandomAccessible<A> background,
+		  final RandomAccessible<C> canvas,
+		  final RealRandomAccessible<C> mask,
+		  final CanvasLabel<C> canvasLabel,
+		  final CellGrid grid,
+		  final TLongSet touchedCells,
+		  final PickAndConvertPrimitive<A, C, C, A> pac) {
+
+	this.background = background;
+	this.canvas = canvas;
+	this.mask = mask;
+	this.canvasLabel = canvasLabel;
+	this.grid = grid;
+	this.touchedCells = touchedCells;
+	this.pac = pac;
+  }
+
+  @Override
+  public CompositeAccess realRandomAccess() {
+
+	return new CompositeAccess();
+  }
+
+  @Override
+  public CompositeAccess realRandomAccess(final RealInterval interval) {
+
+	return realRandomAccess();
+  }
+
+  @Override
+  public int numDimensions() {
+
+	return background.numDimensions();
+  }
+
+  class CompositeAccess extends RealPoint implements RealRandomAccess<A> {
+
+	private final RealRandomAccess<A> backgroundAccess;
+
+	private final RandomAccess<C> canvasAccess;
+
+	private final RealRandomAccess<C> maskAccess;
+
+	private final PickAndConvertPrimitive<A, C, C, A> pac;
+
+	private final long[] voxel;
+
+	private final long[] dimensions;
+
+	private final int[] cellDimensions;
+
+	private final long[] gridDimensions;
+
+	private long lastCell = -1;
+
+	private boolean lastCellIsTouched = false;
+
+	private CompositeAccess() {
+
+	  super(CanvasComposite.this.numDimensions());
+	  this.backgroundAccess = background.realRandomAccess();
+	  this.canvasAccess = canvas.randomAccess();
+	  this.maskAccess = mask == null ? null : mask.realRandomAccess();
+	  this.pac = CanvasComposite.this.pac.copy();
+	  this.voxel = new long[n];
+	  this.dimensions = grid.getImgDimensions();
+	  this.cellDimensions = new int[n];
+	  grid.cellDimensions(this.cellDimensions);
+	  this.gridDimensions = grid.getGridDimensions();
+	}
+
+	@Override
+	public A get() {
+
+	  backgroundAccess.setPosition(this);
+	  final A a = backgroundAccess.get();
+	  final boolean isTouched = isTouched();
+	  if (!isTouched && maskAccess == null)
+		return a;
+
+	  boolean isValid = true;
+	  long canvasValue = Label.INVALID;
+	  if (isTouched) {
+		canvasAccess.setPosition(voxel);
+		final C c = canvasAccess.get();
+		isValid = canvasLabel.isValid(c);
+		canvasValue = canvasLabel.label(c);
+	  }
+
+	  long maskValue = Label.INVALID;
+	  if (maskAccess != null) {
+		maskAccess.setPosition(this);
+		final C m = maskAccess.get();
+		isValid &= canvasLabel.isValid(m);
+		maskValue = canvasLabel.label(m);
+	  }
+
+	  return pac.apply(a, canvasValue, maskValue, isValid);
+	}
+
+	/**
+	 * Round to the nearest canvas voxel and check if its cell is touched. Consecutive accesses usually hit the same
+	 * cell, so the result for the last cell is reused.
+	 */
+	private boolean isTouched() {
+
+	  long cell = 0;
+	  for (int d = n - 1; d >= 0; --d) {
+		// same rounding as NearestNeighborInterpolator
+		voxel[d] = position[d] < 0 ? (long)(position[d] - 0.5) : (long)(position[d] + 0.5);
+		if (voxel[d] < 0 || voxel[d] >= dimensions[d])
+		  return false;
+		cell = cell * gridDimensions[d] + voxel[d] / cellDimensions[d];
+	  }
+	  if (cell != lastCell) {
+		lastCell = cell;
+		lastCellIsTouched = touchedCells.contains(cell);
+	  }
+	  return lastCellIsTouched;
+	}
+
+	@Override
+	public CompositeAccess copy() {
+
+	  final CompositeAccess copy = new CompositeAccess();
+	  copy.setPosition(this);
+	  return copy;
+	}
+
+	public CompositeAccess copyRealRandomAccess() {
+
+	  return copy();
+	}
+  }
+}
@@ -0,0 +1,440 @@
+package org.janelia.saalfeldlab.paintera.data.mask;
+
+import javafx.beans.property.BooleanProperty;
+import javafx.beans.property.SimpleBooleanProperty;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.util.Pair;
+import org.janelia.saalfeldlab.fx.util.InvokeOnJavaFXApplicationThread;
+import org.janelia.saalfeldlab.paintera.cache.BudgetedCache;
+import org.janelia.saalfeldlab.paintera.cache.CacheBudget;
+import org.janelia.saalfeldlab.paintera.control.undo.HasHistory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Undo history of the masks that were applied to the canvas of a {@link MaskedSource}. Each {@link Step} holds a
+ * compressed snapshot of every canvas cell that applying its mask modified, taken before the cell was written. Undoing
+ * or redoing a step swaps the snapshots with the current content of the cells, so only the cells touched by a step are
+ * restored and a single snapshot per cell is sufficient for both directions.
+ * <p>
+ * Steps are toggled through their {@link BooleanProperty} in {@link #events()}: disabling a step undoes it and all later
+ * steps, enabling a step redoes it and all earlier steps. Applying a new mask discards all undone steps. The history is
+ * bounded by a number of steps and a number of bytes and reports its size to the {@link CacheBudget}, which may drop the
+ * oldest steps under memory pressure.
+ * <p>
+ * Masks are applied and evicted off the JavaFX application thread, so the steps are kept in an internal list and
+ * {@link #events()} is only updated on the JavaFX application thread with a copy of that list after every change.
+ */
+public class CanvasHistory implements HasHistory<Pair<CanvasHistory.Step, BooleanProperty>>, BudgetedCache {
+
+  private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  public static final int DEFAULT_MAX_STEPS = 100;
+
+  public static final long DEFAULT_MAX_BYTES = 256L << 20;
+
+  /**
+   * Undo steps cannot be restored once evicted, see {@link BudgetedCache#getReloadCost()}.
+   */
+  private static final double RELOAD_COST = 16.0;
+
+  /**
+   * Swaps the snapshots of steps with the current content of the canvas.
+   */
+  public interface Restore {
+
+	/**
+	 * @param steps steps to restore, in order
+	 * @return {@code false} if the canvas is busy and the steps were not restored
+	 */
+	boolean restore(List<Step> steps);
+  }
+
+  /**
+   * Canvas cell that was modified by a step.
+   */
+  public static class Cell {
+
+	public final int level;
+
+	public final long index;
+
+	private final int numElements;
+
+	/**
+	 * Compressed content, {@code null} if the cell had never been painted.
+	 */
+	private byte[] data;
+
+	/**
+	 * @param data content of a cell that has been painted before
+	 */
+	Cell(final int level, final long index, final long[] data) {
+
+	  this.level = level;
+	  this.index = index;
+	  this.numElements = data.length;
+	  this.data = compress(data);
+	}
+
+	/**
+	 * @param numElements number of elements of a cell that has never been painted
+	 */
+	Cell(final int level, final long index, final int numElements) {
+
+	  this.level = level;
+	  this.index = index;
+	  this.numElements = numElements;
+	  this.data = null;
+	}
+
+	/**
+	 * Replace the stored content with {@code current} and return the previously stored content.
+	 *
+	 * @param current content of the cell in the canvas
+	 * @param empty   value of cells that have never been painted
+	 * @return stored content that is to be written into the canvas
+	 */
+	long[] swap(final long[] current, final long empty) {
+
+	  final long[] stored = data == null ? filled(numElements, empty) : decompress(data, numElements);
+	  data = compress(current);
+	  return stored;
+	}
+
+	long getEstimatedBytes() {
+
+	  return data == null ? 0 : data.length;
+	}
+  }
+
+  /**
+   * Cells modified by applying a single mask.
+   */
+  public static class Step {
+
+	public final long label;
+
+	public final int level;
+
+	private final List<Cell> cells;
+
+	private final long tick;
+
+	Step(final long label, final int level, final List<Cell> cells) {
+
+	  this.label = label;
+	  this.level = level;
+	  this.cells = Collections.unmodifiableList(cells);
+	  this.tick = CacheBudget.getGlobal().currentTick();
+	}
+
+	public List<Cell> getCells() {
+
+	  return cells;
+	}
+
+	long getEstimatedBytes() {
+
+	  long bytes = 0;
+	  for (final Cell cell : cells)
+		bytes += cell.getEstimatedBytes();
+	  return bytes;
+	}
+
+	@Override
+	public String toString() {
+
+	  return String.format("Paint %d at level %d (%d cells)", label, level, cells.size());
+	}
+  }
+
+  private final Supplier<String> name;
+
+  private final Restore restore;
+
+  private final Consumer<Runnable> publisher;
+
+  /**
+   * Guarded by {@code this}, {@link #events} is a copy that is only modified on the JavaFX application thread.
+   */
+  private final List<Pair<Step, BooleanProperty>> steps = new ArrayList<>();
+
+  private final ObservableList<Pair<Step, BooleanProperty>> events = FXCollections.observableArrayList();
+
+  private final ObservableList<Pair<Step, BooleanProperty>> readOnlyEvents = FXCollections.unmodifiableObservableList(events);
+
+  private int maxSteps = DEFAULT_MAX_STEPS;
+
+  private long maxBytes = DEFAULT_MAX_BYTES;
+
+  private boolean isUpdatingToggles = false;
+
+  /**
+   * @param name    name of the canvas, shown in the cache budget
+   * @param restore swaps steps with the content of the canvas
+   */
+  public CanvasHistory(final Supplier<String> name, final Restore restore) {
+
+	this(name, restore, InvokeOnJavaFXApplicationThread::invoke);
+  }
+
+  /**
+   * @param publisher runs updates of {@link #events()}, e.g. on the JavaFX application thread
+   */
+  CanvasHistory(final Supplier<String> name, final Restore restore, final Consumer<Runnable> publisher) {
+
+	this.name = name;
+	this.restore = restore;
+	this.publisher = publisher;
+	CacheBudget.getGlobal().register(this);
+  }
+
+  /**
+   * Discard all steps and stop reporting to the {@link CacheBudget}, e.g. when the source is removed.
+   */
+  public synchronized void dispose() {
+
+	CacheBudget.getGlobal().unregister(this);
+	clear();
+  }
+
+  @Override
+  public ObservableList<Pair<Step, BooleanProperty>> events() {
+
+	return readOnlyEvents;
+  }
+
+  public synchronized void setMaxSteps(final int maxSteps) {
+
+	this.maxSteps = Math.max(maxSteps, 0);
+	trim();
+	publish();
+  }
+
+  public synchronized void setMaxBytes(final long maxBytes) {
+
+	this.maxBytes = Math.max(maxBytes, 0);
+	trim();
+	publish();
+  }
+
+  /**
+   * Add {@code step} as the most recent step. Steps that are currently undone are discarded.
+   */
+  public synchronized void add(final Step step) {
+
+	steps.removeIf(event -> !event.getValue().get());
+	final Pair<Step, BooleanProperty> event = new Pair<>(step, new SimpleBooleanProperty(true));
+	event.getValue().addListener((obs, oldv, newv) -> toggled(event, newv));
+	steps.add(event);
+	trim();
+	publish();
+  }
+
+  public synchronized void clear() {
+
+	steps.clear();
+	publish();
+  }
+
+  /**
+   * Undo the most recent step that has not been undone yet.
+   *
+   * @return {@code true} if a step was undone
+   */
+  public synchronized boolean undo() {
+
+	for (int i = steps.size() - 1; i >= 0; --i) {
+	  if (steps.get(i).getValue().get()) {
+		steps.get(i).getValue().set(false);
+		return !steps.get(i).getValue().get();
+	  }
+	}
+	return false;
+  }
+
+  /**
+   * Redo the least recent step that has been undone.
+   *
+   * @return {@code true} if a step was redone
+   */
+  public synchronized boolean redo() {
+
+	for (final Pair<Step, BooleanProperty> event : steps) {
+	  if (!event.getValue().get()) {
+		event.getValue().set(true);
+		return event.getValue().get();
+	  }
+	}
+	return false;
+  }
+
+  private synchronized void toggled(final Pair<Step, BooleanProperty> event, final boolean isEnabled) {
+
+	if (isUpdatingToggles)
+	  return;
+	final int index = steps.indexOf(event);
+	if (index < 0)
+	  return;
+
+	// keep the history consistent: steps are undone from the most recent and redone from the least recent step
+	final List<Pair<Step, BooleanProperty>> toggled = new ArrayList<>();
+	if (isEnabled) {
+	  for (int i = 0; i <= index; ++i)
+		if (i == index || !steps.get(i).getValue().get())
+		  toggled.add(steps.get(i));
+	} else {
+	  for (int i = steps.size() - 1; i >= index; --i)
+		if (i == index || steps.get(i).getValue().get())
+		  toggled.add(steps.get(i));
+	}
+
+	final List<Step> toggledSteps = new ArrayList<>();
+	toggled.forEach(e -> toggledSteps.add(e.getKey()));
+	final boolean restored = restore.restore(toggledSteps);
+	LOG.debug("{} {} steps: {}", isEnabled ? "Redo" : "Undo", toggledSteps.size(), restored);
+
+	isUpdatingToggles = true;
+	try {
+	  for (final Pair<Step, BooleanProperty> e : toggled)
+		e.getValue().set(restored == isEnabled);
+	} finally {
+	  isUpdatingToggles = false;
+	}
+  }
+
+  private void trim() {
+
+	long bytes = getEstimatedBytes();
+	while (!steps.isEmpty() && (steps.size() > maxSteps || bytes > maxBytes)) {
+	  final Step oldest = steps.remove(0).getKey();
+	  bytes -= oldest.getEstimatedBytes();
+	  LOG.debug("Dropped oldest undo step {} of {}", oldest, getName());
+	}
+  }
+
+  /**
+   * Update {@link #events} with the current steps. Must be called while holding the lock, so that updates are
+   * published in the order of the changes.
+   */
+  private void publish() {
+
+	final List<Pair<Step, BooleanProperty>> snapshot = new ArrayList<>(steps);
+	publisher.accept(() -> events.setAll(snapshot));
+  }
+
+  @Override
+  public String getName() {
+
+	return "Canvas history: " + name.get();
+  }
+
+  @Override
+  public synchronized long getEstimatedBytes() {
+
+	long bytes = 0;
+	for (final Pair<Step, BooleanProperty> event : steps)
+	  bytes += event.getKey().getEstimatedBytes();
+	return bytes;
+  }
+
+  @Override
+  public synchronized long getNumEntries() {
+
+	return steps.size();
+  }
+
+  @Override
+  public double getReloadCost() {
+
+	return RELOAD_COST;
+  }
+
+  /**
+   * Only the oldest step is offered for eviction, any other step depends on the steps before it.
+   */
+  @Override
+  public synchronized void collectEvictionCandidates(final Consumer<EvictionCandidate> candidates) {
+
+	if (steps.isEmpty())
+	  return;
+	final Step oldest = steps.get(0).getKey();
+	candidates.accept(new EvictionCandidate() {
+
+	  @Override
+	  public long getLastAccessTick() {
+
+		return oldest.tick;
+	  }
+
+	  @Override
+	  public long getEstimatedBytes() {
+
+		return oldest.getEstimatedBytes();
+	  }
+
+	  @Override
+	  public long evict() {
+
+		synchronized (CanvasHistory.this) {
+		  final Predicate<Pair<Step, BooleanProperty>> isOldest = event -> event.getKey() == oldest;
+		  if (!steps.removeIf(isOldest))
+			return 0;
+		  publish();
+		  return oldest.getEstimatedBytes();
+		}
+	  }
+	});
+  }
+
+  static byte[] compress(final long[] data) {
+
+	final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+	try (final DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes, new Deflater(Deflater.BEST_SPEED)))) {
+	  for (final long value : data)
+		out.writeLong(value);
+	} catch (final IOException e) {
+	  throw new UncheckedIOException(e);
+	}
+	return bytes.toByteArray();
+  }
+
+  static long[] decompress(final byte[] compressed, final int numElements) {
+
+	final long[] data = new long[numElements];
+	try (final DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(compressed)))) {
+	  for (int i = 0; i < numElements; ++i)
+		data[i] = in.readLong();
+	} catch (final IOException e) {
+	  throw new UncheckedIOException(e);
+	}
+	return data;
+  }
+
+  private static long[] filled(final int numElements, final long value) {
+
+	final long[] data = new long[numElements];
+	Arrays.fill(data, value);
+	return data;
+  }
+}
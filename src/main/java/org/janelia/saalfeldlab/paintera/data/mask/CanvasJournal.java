@@ -0,0 +1,483 @@
+package org.janelia.saalfeldlab.paintera.data.mask;
+
+import org.janelia.saalfeldlab.util.NamedThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Append-only journal of the canvas cells of a {@link MaskedSource} that have been painted since the last commit. Each
+ * {@link Entry} holds the full content of a single canvas cell after a mask was applied, so replaying the journal in
+ * order restores the canvas. Only cells touched by a mask are written, i.e. the cost of saving is proportional to the
+ * painted delta and not to the size of the canvas.
+ * <p>
+ * Entries are deflated and written by a single background thread that drains all pending entries and forces them to
+ * disk once per batch (group commit). A batch that cannot be written is rolled back and the error is reported by
+ * {@link #flush()}. Every record carries a CRC32 checksum: on {@link #replay(Consumer) replay}, the journal is
+ * truncated at the first torn or corrupt record, e.g. after a crash during a write. Superseded entries are dropped when
+ * the journal is replayed.
+ */
+public class CanvasJournal implements AutoCloseable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  private static final long MAGIC = 0x50544e524a524e4cL; // "PTNRJRNL"
+
+  private static final int VERSION = 1;
+
+  private static final int HEADER_SIZE = Long.BYTES + Integer.BYTES;
+
+  private static final int RECORD_HEADER_SIZE = 2 * Integer.BYTES;
+
+  /**
+   * Upper bound for a single record, protects replay against allocating huge buffers for corrupt length fields.
+   */
+  private static final int MAX_RECORD_SIZE = 1 << 30;
+
+  /**
+   * Canvas cell after a mask was applied.
+   */
+  public static class Entry {
+
+	public final long label;
+
+	public final int level;
+
+	public final long cell;
+
+	public final long[] data;
+
+	/**
+	 * @param label label of the applied mask
+	 * @param level level of the canvas
+	 * @param cell  flat index of the cell in the canvas grid at {@code level}
+	 * @param data  content of the cell in flat iteration order
+	 */
+	public Entry(final long label, final int level, final long cell, final long[] data) {
+
+	  this.label = label;
+	  this.level = level;
+	  this.cell = cell;
+	  this.data = data;
+	}
+  }
+
+  private static class Key {
+
+	private final long label;
+
+	private final int level;
+
+	private final long cell;
+
+	private Key(final long label, final int level, final long cell) {
+
+	  this.label = label;
+	  this.level = level;
+	  this.cell = cell;
+	}
+
+	@Override
+	public boolean equals(final Object other) {
+
+	  if (!(other instanceof Key))
+		return false;
+	  final Key that = (Key)other;
+	  return this.label == that.label && this.level == that.level && this.cell == that.cell;
+	}
+
+	@Override
+	public int hashCode() {
+
+	  return Objects.hash(label, level, cell);
+	}
+  }
+
+  private final Path path;
+
+  /**
+   * Guards {@link #channel}.
+   */
+  private final Object lock = new Object();
+
+  private FileChannel channel;
+
+  private final LinkedBlockingQueue<Entry> pending = new LinkedBlockingQueue<>();
+
+  /**
+   * Held while entries are enqueued. {@link #reset()} holds it while it waits for pending entries and truncates the
+   * journal, so entries that are appended concurrently are not discarded with the old ones.
+   */
+  private final Object appendLock = new Object();
+
+  /**
+   * Guards {@link #numEnqueued}, {@link #numProcessed}, and {@link #failure}.
+   */
+  private final Object written = new Object();
+
+  private long numEnqueued = 0;
+
+  /**
+   * Number of entries that were either written or failed to be written.
+   */
+  private long numProcessed = 0;
+
+  /**
+   * First write error since the journal was opened or last {@link #reset() reset}. The journal is incomplete while it
+   * is set: entries of the failed batch were rolled back.
+   */
+  private IOException failure = null;
+
+  private volatile boolean isClosed = false;
+
+  private final Thread writer;
+
+  /**
+   * Open the journal at {@code path} or create it if it does not exist yet.
+   *
+   * @param path journal file
+   * @throws IOException if the journal cannot be opened or is not a canvas journal
+   */
+  public CanvasJournal(final Path path) throws IOException {
+
+	this.path = path;
+	if (path.getParent() != null)
+	  Files.createDirectories(path.getParent());
+	this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+	if (channel.size() < HEADER_SIZE)
+	  writeHeader(channel);
+	else
+	  checkHeader(channel, path);
+	channel.position(channel.size());
+	this.writer = new NamedThreadFactory("canvas-journal-%d", true).newThread(this::writeLoop);
+	this.writer.start();
+  }
+
+  public Path getPath() {
+
+	return path;
+  }
+
+  /**
+   * Enqueue {@code entries} for writing. Returns immediately, the entries are written by the background thread.
+   */
+  public void append(final List<Entry> entries) {
+
+	if (isClosed || entries.isEmpty())
+	  return;
+	synchronized (appendLock) {
+	  synchronized (written) {
+		numEnqueued += entries.size();
+		pending.addAll(entries);
+	  }
+	}
+  }
+
+  /**
+   * Block until all entries that were enqueued before this call are on disk.
+   *
+   * @throws IOException if entries could not be written since the journal was opened or last {@link #reset() reset}
+   */
+  public void flush() throws InterruptedException, IOException {
+
+	synchronized (written) {
+	  final long target = numEnqueued;
+	  while (numProcessed < target && !isClosed)
+		written.wait();
+	  if (failure != null)
+		throw new IOException("Unable to write canvas journal " + path, failure);
+	}
+  }
+
+  /**
+   * Read all entries in the order in which they were appended. Only the most recent entry for each combination of
+   * label, level, and cell is passed to {@code consumer}. The journal is truncated at the first torn or corrupt record
+   * and rewritten without superseded entries. Replay before appending new entries.
+   *
+   * @param consumer receives the entries
+   * @return number of entries passed to {@code consumer}
+   */
+  public int replay(final Consumer<Entry> consumer) throws IOException {
+
+	final Map<Key, byte[]> latest = new LinkedHashMap<>();
+	int numRecords = 0;
+	synchronized (lock) {
+	  long position = HEADER_SIZE;
+	  final long size = channel.size();
+	  final ByteBuffer recordHeader = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+	  while (position + RECORD_HEADER_SIZE <= size) {
+		recordHeader.clear();
+		readFully(channel, recordHeader, position);
+		final int length = recordHeader.getInt(0);
+		final int checksum = recordHeader.getInt(Integer.BYTES);
+		if (length <= 0 || length > MAX_RECORD_SIZE || position + RECORD_HEADER_SIZE + length > size)
+		  break;
+		final ByteBuffer payload = ByteBuffer.allocate(length);
+		readFully(channel, payload, position + RECORD_HEADER_SIZE);
+		if (checksum(payload.array()) != checksum)
+		  break;
+		final Key key = decodeKey(payload.array());
+		// re-insert to keep the entries ordered by their latest occurrence
+		latest.remove(key);
+		latest.put(key, payload.array());
+		position += RECORD_HEADER_SIZE + length;
+		++numRecords;
+	  }
+	  if (position < size) {
+		LOG.warn("Truncating canvas journal {} at {} of {} bytes: torn or corrupt record", path, position, size);
+		channel.truncate(position);
+		channel.force(true);
+	  }
+	  channel.position(position);
+	}
+
+	for (final byte[] payload : latest.values())
+	  consumer.accept(decode(payload));
+
+	if (latest.size() < numRecords) {
+	  LOG.debug("Compacting canvas journal {} from {} to {} records", path, numRecords, latest.size());
+	  compact(latest.values());
+	}
+	return latest.size();
+  }
+
+  /**
+   * Discard all entries, e.g. after the canvas was committed or cleared.
+   */
+  public void reset() throws IOException {
+
+	synchronized (appendLock) {
+	  try {
+		flush();
+	  } catch (final InterruptedException e) {
+		Thread.currentThread().interrupt();
+	  } catch (final IOException e) {
+		LOG.debug("Discarding incomplete canvas journal {}", path, e);
+	  }
+	  synchronized (lock) {
+		if (isClosed) {
+		  // e.g. the canvas was committed after its source was removed
+		  try (final FileChannel closed = FileChannel.open(path, StandardOpenOption.WRITE)) {
+			closed.truncate(HEADER_SIZE);
+			closed.force(true);
+		  }
+		} else {
+		  channel.truncate(HEADER_SIZE);
+		  channel.position(HEADER_SIZE);
+		  channel.force(true);
+		}
+	  }
+	  synchronized (written) {
+		failure = null;
+	  }
+	}
+  }
+
+  /**
+   * Write all pending entries and close the journal. The journal file is kept.
+   */
+  @Override
+  public void close() throws IOException {
+
+	if (isClosed)
+	  return;
+	try {
+	  flush();
+	} catch (final InterruptedException e) {
+	  Thread.currentThread().interrupt();
+	} catch (final IOException e) {
+	  LOG.error("Closing incomplete canvas journal {}", path, e);
+	}
+	isClosed = true;
+	writer.interrupt();
+	synchronized (written) {
+	  written.notifyAll();
+	}
+	synchronized (lock) {
+	  channel.close();
+	}
+  }
+
+  private void writeLoop() {
+
+	final List<Entry> batch = new ArrayList<>();
+	while (!isClosed) {
+	  try {
+		batch.add(pending.take());
+	  } catch (final InterruptedException e) {
+		break;
+	  }
+	  pending.drainTo(batch);
+	  final IOException error = writeBatch(batch);
+	  synchronized (written) {
+		numProcessed = Math.min(numProcessed + batch.size(), numEnqueued);
+		if (error != null && failure == null)
+		  failure = error;
+		written.notifyAll();
+	  }
+	  batch.clear();
+	}
+  }
+
+  /**
+   * Write all entries of {@code batch} or none: if a write fails, the journal is truncated to its size before the batch
+   * so that no torn record is followed by records of later batches.
+   *
+   * @return the error if the batch could not be written, {@code null} otherwise
+   */
+  private IOException writeBatch(final List<Entry> batch) {
+
+	synchronized (lock) {
+	  long position = -1;
+	  try {
+		position = channel.position();
+		for (final Entry entry : batch)
+		  writeRecord(channel, encode(entry));
+		channel.force(false);
+		return null;
+	  } catch (final IOException e) {
+		LOG.error("Unable to write {} entries to canvas journal {}", batch.size(), path, e);
+		if (position >= 0) {
+		  try {
+			channel.truncate(position);
+			channel.position(position);
+		  } catch (final IOException truncateError) {
+			e.addSuppressed(truncateError);
+		  }
+		}
+		return e;
+	  }
+	}
+  }
+
+  private void compact(final Iterable<byte[]> payloads) throws IOException {
+
+	final Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+	try (final FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+	  writeHeader(out);
+	  for (final byte[] payload : payloads)
+		writeRecord(out, payload);
+	  out.force(true);
+	}
+	synchronized (lock) {
+	  channel.close();
+	  Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	  channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+	  channel.position(channel.size());
+	}
+  }
+
+  static byte[] encode(final Entry entry) throws IOException {
+
+	final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+	try (final DataOutputStream out = new DataOutputStream(bytes)) {
+	  out.writeLong(entry.label);
+	  out.writeInt(entry.level);
+	  out.writeLong(entry.cell);
+	  out.writeInt(entry.data.length);
+	  final DeflaterOutputStream deflated = new DeflaterOutputStream(out, new Deflater(Deflater.BEST_SPEED));
+	  final DataOutputStream data = new DataOutputStream(deflated);
+	  for (final long value : entry.data)
+		data.writeLong(value);
+	  data.flush();
+	  deflated.finish();
+	}
+	return bytes.toByteArray();
+  }
+
+  static Entry decode(final byte[] payload) throws IOException {
+
+	try (final DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+	  final long label = in.readLong();
+	  final int level = in.readInt();
+	  final long cell = in.readLong();
+	  final long[] data = new long[in.readInt()];
+	  final DataInputStream inflated = new DataInputStream(new InflaterInputStream(in));
+	  for (int i = 0; i < data.length; ++i)
+		data[i] = inflated.readLong();
+	  return new Entry(label, level, cell, data);
+	}
+  }
+
+  private static Key decodeKey(final byte[] payload) {
+
+	final ByteBuffer buffer = ByteBuffer.wrap(payload);
+	return new Key(buffer.getLong(0), buffer.getInt(Long.BYTES), buffer.getLong(Long.BYTES + Integer.BYTES));
+  }
+
+  private static int checksum(final byte[] payload) {
+
+	final CRC32 crc = new CRC32();
+	crc.update(payload);
+	return (int)crc.getValue();
+  }
+
+  private static void writeRecord(final FileChannel channel, final byte[] payload) throws IOException {
+
+	final ByteBuffer buffer = ByteBuffer.allocate(RECORD_HEADER_SIZE + payload.length);
+	buffer.putInt(payload.length);
+	buffer.putInt(checksum(payload));
+	buffer.put(payload);
+	buffer.flip();
+	while (buffer.hasRemaining())
+	  channel.write(buffer);
+  }
+
+  private static void writeHeader(final FileChannel channel) throws IOException {
+
+	final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+	header.putLong(MAGIC);
+	header.putInt(VERSION);
+	header.flip();
+	channel.truncate(0);
+	channel.position(0);
+	while (header.hasRemaining())
+	  channel.write(header);
+	channel.force(true);
+  }
+
+  private static void checkHeader(final FileChannel channel, final Path path) throws IOException {
+
+	final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+	readFully(channel, header, 0);
+	if (header.getLong(0) != MAGIC)
+	  throw new IOException("Not a canvas journal: " + path);
+	if (header.getInt(Long.BYTES) != VERSION)
+	  throw new IOException("Unsupported canvas journal version " + header.getInt(Long.BYTES) + ": " + path);
+  }
+
+  private static void readFully(final FileChannel channel, final ByteBuffer buffer, final long position) throws IOException {
+
+	long p = position;
+	while (buffer.hasRemaining()) {
+	  final int n = channel.read(buffer, p);
+	  if (n < 0)
+		throw new EOFException();
+	  p += n;
+	}
+  }
+}
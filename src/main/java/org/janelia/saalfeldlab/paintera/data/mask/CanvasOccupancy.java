@@ -0,0 +1,65 @@
+package org.janelia.saalfeldlab.paintera.data.mask;
+
+import gnu.trove.TLongCollection;
+import gnu.trove.set.TLongSet;
+import gnu.trove.set.hash.TLongHashSet;
+
+import java.util.Arrays;
+
+/**
+ * Canvas cells of a {@link MaskedSource} that may hold painted labels, per level. Cells that are not contained have never
+ * been written and can be skipped during composition. Readers get an immutable snapshot for each level that is safe to
+ * query from any thread; writers replace the snapshot. Painting touches few cells compared to the number of cells in a
+ * level, so a hash set is used rather than a dense bitmap over all cells, which would be prohibitively large for big
+ * datasets.
+ */
+class CanvasOccupancy {
+
+  private final TLongSet[] touchedCells;
+
+  CanvasOccupancy(final int numLevels) {
+
+	this.touchedCells = new TLongSet[numLevels];
+	clear();
+  }
+
+  /**
+   * @param level level of the canvas
+   * @return immutable snapshot of the flat indices of all touched cells at {@code level}.
+   */
+  TLongSet touchedCells(final int level) {
+
+	synchronized (touchedCells) {
+	  return touchedCells[level];
+	}
+  }
+
+  void touch(final int level, final TLongCollection cells) {
+
+	if (cells.isEmpty())
+	  return;
+	synchronized (touchedCells) {
+	  final TLongSet updated = new TLongHashSet(touchedCells[level]);
+	  if (updated.addAll(cells))
+		touchedCells[level] = updated;
+	}
+  }
+
+  void touch(final int level, final long[] cells) {
+
+	if (cells.length == 0)
+	  return;
+	synchronized (touchedCells) {
+	  final TLongSet updated = new TLongHashSet(touchedCells[level]);
+	  if (updated.addAll(cells))
+		touchedCells[level] = updated;
+	}
+  }
+
+  void clear() {
+
+	synchronized (touchedCells) {
+	  Arrays.setAll(touchedCells, level -> new TLongHashSet());
+	}
+  }
+}
@@ -85,8 +85,11 @@ import net.imglib2.view.RealRandomAccessibleTriple;
 import net.imglib2.view.Views;
 import org.janelia.saalfeldlab.fx.Tasks;
 import org.janelia.saalfeldlab.fx.util.InvokeOnJavaFXApplicationThread;
+import org.janelia.saalfeldlab.paintera.cache.BudgetedCache;
+import org.janelia.saalfeldlab.paintera.cache.CacheBudget;
 import org.janelia.saalfeldlab.paintera.data.DataSource;
 import org.janelia.saalfeldlab.paintera.data.mask.PickOne.PickAndConvert;
+import org.janelia.saalfeldlab.paintera.data.mask.PickOne.PickAndConvertPrimitive;
 import org.janelia.saalfeldlab.paintera.data.mask.exception.CannotClearCanvas;
 import org.janelia.saalfeldlab.paintera.data.mask.exception.CannotPersist;
 import org.janelia.saalfeldlab.paintera.data.mask.exception.MaskInUse;
@@ -99,6 +102,7 @@ import org.janelia.saalfeldlab.util.TmpVolatileHelpers;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.lang.invoke.MethodHandles;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -203,10 +207,57 @@ public class MaskedSource<D extends Type<D>, T extends Type<T>> implements DataS
 
   private final Map<Long, TLongHashSet>[] affectedBlocksByLabel;
 
+  private final CanvasOccupancy canvasOccupancy;
+
+  private volatile CanvasJournal journal = null;
+
+  private final CanvasHistory history = new CanvasHistory(this::getName, this::restoreFromHistory);
+
+  private final List<Consumer<Interval[][]>> canvasModifiedListeners = new ArrayList<>();
+
+  private volatile boolean isMaskActive = false;
+
   private final List<Runnable> canvasClearedListeners = new ArrayList<>();
 
+  private final List<Consumer<List<TLongObjectMap<PersistCanvas.BlockDiff>>>> canvasCommittedListeners = new ArrayList<>();
+
   private final BooleanProperty showCanvasOverBackground = new SimpleBooleanProperty(this, "show canvas", true);
 
+  /**
+   * Painted canvas blocks are reported to the {@link CacheBudget} but never evicted: they hold unsaved annotations.
+   */
+  private final BudgetedCache canvasAccounting = new BudgetedCache() {
+
+	@Override
+	public String getName() {
+
+	  return "Canvas: " + MaskedSource.this.getName();
+	}
+
+	@Override
+	public long getEstimatedBytes() {
+
+	  return getNumEntries() * Intervals.numElements(blockSizes[0]) * Long.BYTES;
+	}
+
+	@Override
+	public long getNumEntries() {
+
+	  return affectedBlocks.size();
+	}
+
+	@Override
+	public double getReloadCost() {
+
+	  return Double.POSITIVE_INFINITY;
+	}
+
+	@Override
+	public void collectEvictionCandidates(final Consumer<EvictionCandidate> candidates) {
+
+	}
+  };
+
   public MaskedSource(
 		  final DataSource<D, T> source,
 		  final SharedQueue queue,
@@ -279,9 +330,11 @@ public class MaskedSource<D extends Type<D>, T extends Type<T>> implements DataS
 	this.cacheDirectory.set(initialCacheDirectory);
 
 	this.affectedBlocksByLabel = Stream.generate(HashMap::new).limit(this.canvases.length).toArray(Map[]::new);
+	this.canvasOccupancy = new CanvasOccupancy(this.canvases.length);
 
 	setMasksConstant();
 
+	CacheBudget.getGlobal().register(canvasAccounting);
   }
 
   public ReadOnlyBooleanProperty isApplyingMaskProperty() {
@@ -431,6 +484,8 @@ public class MaskedSource<D extends Type<D>, T extends Type<T>> implements DataS
 	  grid.cellDimensions(blockSize);
 
 	  final TLongSet affectedBlocks = affectedBlocks(mask.mask, canvas.getCellGrid(), paintedInterval);
+	  final CanvasHistory.Step undoStep = snapshotForHistory(affectedBlocks, maskInfo.level, maskInfo.value.getIntegerLong());
+	  canvasOccupancy.touch(maskInfo.level, affectedBlocks);
 
 	  paintAffectedPixels(
 			  affectedBlocks,
@@ -469,6 +524,9 @@ public class MaskedSource<D extends Type<D>, T extends Type<T>> implements DataS
 				  maskInfo.value,
 				  paintedInterval,
 				  acceptAsPainted);
+		  appendToJournal(affectedBlocks, maskInfo.level, maskInfo.value.getIntegerLong());
+		  history.add(undoStep);
+		  notifyCanvasModified(scaleBlocksToAllLevels(affectedBlocks, maskInfo.level));
 		  setMasksConstant();
 		  synchronized (this) {
 			LOG.debug("Done applying mask!");
@@ -495,8 +553,263 @@ public class MaskedSource<D extends Type<D>, T extends Type<T>> implements DataS
 
   }
 
+  /**
+   * Restore the canvas from {@code journal} and record all masks that are applied from now on. Painted cells are
+   * appended to the journal as they are applied, so the canvas can be recovered after a crash at the cost of writing
+   * only the painted cells. The journal is reset when the canvas is committed or cleared.
+   *
+   * @param journal journal of this source's canvas
+   * @throws IOException if {@code journal} cannot be read
+   */
+  public synchronized void enableJournal(final CanvasJournal journal) throws IOException {
+
+	final int numReplayed = journal.replay(this::restoreFromJournal);
+	LOG.debug("Restored {} canvas cells from journal {}", numReplayed, journal.getPath());
+	if (numReplayed > 0) {
+	  for (final TmpVolatileHelpers.RaiWithInvalidate<VolatileUnsignedLongType> canvas : canvases)
+		canvas.getInvalidate().invalidateAll();
+	}
+	this.journal = journal;
+  }
+
+  /**
+   * Write all pending entries of the journal, if any, and close it, e.g. when this source is removed or Paintera shuts
+   * down. The journal file is kept so that the canvas can be restored when the source is opened again. It is still
+   * reset if the canvas is committed or cleared afterwards.
+   */
+  public synchronized void closeJournal() {
+
+	final CanvasJournal journal = this.journal;
+	if (journal == null)
+	  return;
+	try {
+	  journal.close();
+	} catch (final IOException e) {
+	  LOG.error("Unable to close canvas journal {}", journal.getPath(), e);
+	}
+  }
+
+  private void restoreFromJournal(final CanvasJournal.Entry entry) {
+
+	if (entry.level < 0 || entry.level >= dataCanvases.length) {
+	  LOG.warn("Ignoring journal entry for level {}: source has {} levels", entry.level, dataCanvases.length);
+	  return;
+	}
+	final Interval cell = cellInterval(dataCanvases[entry.level].getCellGrid(), entry.cell);
+	if (Intervals.numElements(cell) != entry.data.length) {
+	  LOG.warn("Ignoring journal entry for cell {} at level {}: expected {} elements but got {}", entry.cell, entry.level, Intervals.numElements(cell), entry.data.length);
+	  return;
+	}
+	writeCell(entry.level, entry.cell, entry.data);
+
+	this.affectedBlocksByLabel[entry.level].computeIfAbsent(entry.label, key -> new TLongHashSet()).add(entry.cell);
+	this.canvasOccupancy.touch(entry.level, new long[]{entry.cell});
+	if (entry.level == 0)
+	  this.affectedBlocks.add(entry.cell);
+  }
+
+  private void appendToJournal(final TLongSet paintedBlocks, final int paintedLevel, final long label) {
+
+	final CanvasJournal journal = this.journal;
+	if (journal == null)
+	  return;
+	final List<CanvasJournal.Entry> entries = new ArrayList<>();
+	for (int level = 0; level < dataCanvases.length; ++level) {
+	  for (final TLongIterator it = scaleBlocksToLevel(paintedBlocks, paintedLevel, level).iterator(); it.hasNext(); ) {
+		final long cell = it.next();
+		entries.add(new CanvasJournal.Entry(label, level, cell, readCell(level, cell)));
+	  }
+	}
+	journal.append(entries);
+  }
+
+  /**
+   * @return undo history of the masks applied to the canvas since the last commit
+   */
+  public CanvasHistory getHistory() {
+
+	return history;
+  }
+
+  /**
+   * @param listener notified with the modified cells at each level when a mask was applied to the canvas or steps of the
+   *                 {@link #getHistory() history} were undone or redone
+   */
+  public void addOnCanvasModifiedListener(final Consumer<Interval[][]> listener) {
+
+	this.canvasModifiedListeners.add(listener);
+  }
+
+  /**
+   * @param listener notified with the committed blocks for each level, as returned by {@link PersistCanvas#persistCanvas},
+   *                 after the canvas was committed successfully. Called on the thread that commits the canvas.
+   */
+  public void addOnCanvasCommittedListener(final Consumer<List<TLongObjectMap<PersistCanvas.BlockDiff>>> listener) {
+
+	this.canvasCommittedListeners.add(listener);
+  }
+
+  private void notifyCanvasModified(final TLongSet[] modifiedCells) {
+
+	final Interval[][] modifiedIntervals = new Interval[modifiedCells.length][];
+	for (int level = 0; level < modifiedCells.length; ++level) {
+	  final CellGrid grid = dataCanvases[level].getCellGrid();
+	  final long[] cells = modifiedCells[level].toArray();
+	  modifiedIntervals[level] = new Interval[cells.length];
+	  for (int i = 0; i < cells.length; ++i)
+		modifiedIntervals[level][i] = cellInterval(grid, cells[i]);
+	}
+	canvasModifiedListeners.forEach(l -> l.accept(modifiedIntervals));
+  }
+
+  private TLongSet[] scaleBlocksToAllLevels(final TLongSet blocks, final int level) {
+
+	final TLongSet[] blocksAtAllLevels = new TLongSet[dataCanvases.length];
+	Arrays.setAll(blocksAtAllLevels, targetLevel -> scaleBlocksToLevel(blocks, level, targetLevel));
+	return blocksAtAllLevels;
+  }
+
+  /**
+   * Snapshot all cells at all levels that are affected by painting {@code paintedBlocks} at {@code paintedLevel}. Cells
+   * that have never been painted are not copied.
+   */
+  private CanvasHistory.Step snapshotForHistory(final TLongSet paintedBlocks, final int paintedLevel, final long label) {
+
+	final List<CanvasHistory.Cell> cells = new ArrayList<>();
+	for (int level = 0; level < dataCanvases.length; ++level) {
+	  final CellGrid grid = dataCanvases[level].getCellGrid();
+	  final TLongSet touchedCells = canvasOccupancy.touchedCells(level);
+	  for (final TLongIterator it = scaleBlocksToLevel(paintedBlocks, paintedLevel, level).iterator(); it.hasNext(); ) {
+		final long cell = it.next();
+		if (touchedCells.contains(cell))
+		  cells.add(new CanvasHistory.Cell(level, cell, readCell(level, cell)));
+		else
+		  cells.add(new CanvasHistory.Cell(level, cell, (int)Intervals.numElements(cellInterval(grid, cell))));
+	  }
+	}
+	return new CanvasHistory.Step(label, paintedLevel, cells);
+  }
+
+  private boolean restoreFromHistory(final List<CanvasHistory.Step> steps) {
+
+	synchronized (this) {
+	  if (isMaskInUse()) {
+		LOG.info("Canvas of {} is busy, cannot undo or redo", getName());
+		return false;
+	  }
+	  this.isApplyingMask.set(true);
+	  this.isBusy.set(true);
+	}
+	propagationExecutor.submit(() -> {
+	  try {
+		final TLongSet[] restoredCells = Stream.generate(TLongHashSet::new).limit(dataCanvases.length).toArray(TLongSet[]::new);
+		final List<CanvasJournal.Entry> journalEntries = new ArrayList<>();
+		for (final CanvasHistory.Step step : steps) {
+		  for (final CanvasHistory.Cell cell : step.getCells()) {
+			final long[] restored = cell.swap(readCell(cell.level, cell.index), Label.INVALID);
+			writeCell(cell.level, cell.index, restored);
+			restoredCells[cell.level].add(cell.index);
+			canvasOccupancy.touch(cell.level, new long[]{cell.index});
+			journalEntries.add(new CanvasJournal.Entry(step.label, cell.level, cell.index, restored));
+		  }
+		}
+		for (int level = 0; level < dataCanvases.length; ++level) {
+		  final Invalidate<Long> invalidate = canvases[level].getInvalidate();
+		  if (invalidate != null)
+			restoredCells[level].forEach(cell -> {
+			  invalidate.invalidate(cell);
+			  return true;
+			});
+		}
+		final CanvasJournal journal = this.journal;
+		if (journal != null)
+		  journal.append(journalEntries);
+		LOG.debug("Restored {} steps of the canvas history of {}", steps.size(), getName());
+		notifyCanvasModified(restoredCells);
+	  } finally {
+		synchronized (this) {
+		  this.isApplyingMask.set(false);
+		}
+		this.isBusy.set(false);
+	  }
+	});
+	return true;
+  }
+
+  private long[] readCell(final int level, final long cell) {
+
+	final Interval interval = cellInterval(dataCanvases[level].getCellGrid(), cell);
+	final long[] data = new long[(int)Intervals.numElements(interval)];
+	final Cursor<UnsignedLongType> cursor = Views.flatIterable(Views.interval(dataCanvases[level], interval)).cursor();
+	for (int i = 0; cursor.hasNext(); ++i)
+	  data[i] = cursor.next().getIntegerLong();
+	return data;
+  }
+
+  private void writeCell(final int level, final long cell, final long[] data) {
+
+	final Interval interval = cellInterval(dataCanvases[level].getCellGrid(), cell);
+	final Cursor<UnsignedLongType> cursor = Views.flatIterable(Views.interval(dataCanvases[level], interval)).cursor();
+	for (int i = 0; cursor.hasNext(); ++i)
+	  cursor.next().set(data[i]);
+  }
+
+  /**
+   * Invalidate only the background cells that were written when committing the canvas, instead of every cached cell of
+   * every level, and load them again right away so that the first frames after the commit do not wait for I/O.
+   * <p>
+   * Cell keys of the background are shared across mipmap levels, so a cell that was written at any level is invalidated
+   * at all levels.
+   *
+   * @param blockDiffs committed blocks for each level, as returned by {@link PersistCanvas#persistCanvas}
+   */
+  private void refreshCommittedBlocks(final List<TLongObjectMap<PersistCanvas.BlockDiff>> blockDiffs) {
+
+	final int numLevels = this.source.getNumMipmapLevels();
+	if (blockDiffs.size() < numLevels) {
+	  LOG.debug("Committed blocks not known for all {} levels, invalidating all blocks", numLevels);
+	  this.source.invalidateAll();
+	  return;
+	}
+
+	final TLongSet committedBlocks = new TLongHashSet();
+	for (int level = 0; level < numLevels; ++level)
+	  committedBlocks.addAll(blockDiffs.get(level).keySet());
+	LOG.debug("Invalidating {} committed blocks", committedBlocks.size());
+	this.source.invalidateIf(committedBlocks::contains);
+
+	try {
+	  for (int level = 0; level < numLevels; ++level) {
+		final RandomAccessibleInterval<D> data = this.source.getDataSource(0, level);
+		if (!(data instanceof AbstractCellImg<?, ?, ?, ?>))
+		  continue;
+		final CellGrid grid = ((AbstractCellImg<?, ?, ?, ?>)data).getCellGrid();
+		final RandomAccess<D> access = data.randomAccess();
+		for (final TLongIterator it = blockDiffs.get(level).keySet().iterator(); it.hasNext(); ) {
+		  // accessing any voxel loads the whole cell into the cache
+		  access.setPosition(Intervals.minAsLongArray(cellInterval(grid, it.next())));
+		  access.get();
+		}
+	  }
+	} catch (final RuntimeException e) {
+	  // the canvas is committed at this point, blocks that were not pre-loaded are loaded on demand
+	  LOG.warn("Unable to pre-load committed blocks: {}", e.getMessage());
+	}
+  }
+
+  private static Interval cellInterval(final CellGrid grid, final long cell) {
+
+	final long[] min = new long[grid.numDimensions()];
+	final int[] dimensions = new int[grid.numDimensions()];
+	grid.getCellDimensions(cell, min, dimensions);
+	final long[] max = new long[min.length];
+	Arrays.setAll(max, d -> min[d] + dimensions[d] - 1);
+	return new FinalInterval(min, max);
+  }
+
   private void setMasksConstant() {
 
+	this.isMaskActive = false;
 	for (int level = 0; level < getNumMipmapLevels(); ++level) {
 	  this.dMasks[level] = ConstantUtils.constantRealRandomAccessible(
 			  new UnsignedLongType(Label.INVALID),
@@ -668,6 +981,8 @@ public class MaskedSource<D extends Type<D>, T extends Type<T>> implements DataS
 
 		final List<TLongObjectMap<PersistCanvas.BlockDiff>> blockDiffs = this.persistCanvas.persistCanvas(canvas, affectedBlocks);
 		updateState.accept("Persisting painted labels...   Done");
+		// committed paint cannot be undone on the canvas, keep the history if the commit fails
+		this.history.clear();
 
 		InvokeOnJavaFXApplicationThread.invoke(() -> {
 		  this.persistCanvas.getProgressProperty().removeListener(animateProgressBarListener);
@@ -681,13 +996,18 @@ public class MaskedSource<D extends Type<D>, T extends Type<T>> implements DataS
 		}
 
 		if (clearCanvas) {
+		  // refresh the background before clearing the canvas so that the view never shows stale background data
+		  nextState.accept("Refreshing committed blocks...");
+		  refreshCommittedBlocks(blockDiffs);
+		  updateState.accept("Refreshing committed blocks...   Done");
 		  nextState.accept("Clearing canvases...");
 		  clearCanvases();
 		  updateState.accept("Clearing canvases...   Done");
-		  this.source.invalidateAll();
 		} else
 		  LOG.info("Not clearing canvas.");
 
+		canvasCommittedListeners.forEach(l -> l.accept(blockDiffs));
+
 	  } catch (UnableToPersistCanvas | UnableToUpdateLabelBlockLookup | InterruptedException e) {
 		throw new RuntimeException(e);
 	  } catch (RuntimeException e) {
@@ -733,6 +1053,15 @@ public class MaskedSource<D extends Type<D>, T extends Type<T>> implements DataS
 	if (!this.showCanvasOverBackground.get() || this.affectedBlocks.size() == 0 && this.currentMask == null) {
 	  LOG.trace("Hide canvas or no mask/canvas data present -- delegate to underlying source");
 	  sourceToExtend = interpolatedSource;
+	} else if (pacT instanceof PickAndConvertPrimitive<?, ?, ?, ?>) {
+	  sourceToExtend = new CanvasComposite<>(
+			  interpolatedSource,
+			  Views.extendValue(this.canvases[level].getRai(), new VolatileUnsignedLongType(Label.INVALID)),
+			  this.isMaskActive ? this.tMasks[level] : null,
+			  CanvasComposite.VOLATILE_UNSIGNED_LONG,
+			  this.dataCanvases[level].getCellGrid(),
+			  this.canvasOccupancy.touchedCells(level),
+			  (PickAndConvertPrimitive<T, VolatileUnsignedLongType, VolatileUnsignedLongType, T>)pacT.copyWithDifferentNumOccurences(numContainedVoxels(level)));
 	} else {
 	  final RealRandomAccessible<VolatileUnsignedLongType> canvas = interpolateNearestNeighbor(
 			  Views.extendValue(this.canvases[level].getRai(), new VolatileUnsignedLongType(Label.INVALID)));
@@ -800,6 +1129,15 @@ public class MaskedSource<D extends Type<D>, T extends Type<T>> implements DataS
 	if (!this.showCanvasOverBackground.get() || this.affectedBlocks.size() == 0 && this.currentMask == null) {
 	  LOG.trace("Hide canvas or no mask/canvas data present -- delegate to underlying source");
 	  dataSourceToExtend = interpolatedDataSource;
+	} else if (pacD instanceof PickAndConvertPrimitive<?, ?, ?, ?>) {
+	  dataSourceToExtend = new CanvasComposite<>(
+			  interpolatedDataSource,
+			  Views.extendValue(this.dataCanvases[level], new UnsignedLongType(Label.INVALID)),
+			  this.isMaskActive ? this.dMasks[level] : null,
+			  CanvasComposite.UNSIGNED_LONG,
+			  this.dataCanvases[level].getCellGrid(),
+			  this.canvasOccupancy.touchedCells(level),
+			  (PickAndConvertPrimitive<D, UnsignedLongType, UnsignedLongType, D>)pacD.copyWithDifferentNumOccurences(numContainedVoxels(level)));
 	} else {
 	  final RealRandomAccessible<UnsignedLongType> dataCanvas = interpolateNearestNeighbor(
 			  Views.extendValue(this.dataCanvases[level], new UnsignedLongType(Label.INVALID)));
@@ -985,6 +1323,7 @@ public class MaskedSource<D extends Type<D>, T extends Type<T>> implements DataS
 	  this.affectedBlocksByLabel[level].computeIfAbsent(label.getIntegerLong(), key -> new TLongHashSet())
 			  .addAll(
 					  affectedBlocksAtHigherLevel);
+	  canvasOccupancy.touch(level, affectedBlocksAtHigherLevel);
 
 	  LOG.debug("Interval at higher level: {} {}", Intervals.minAsLongArray(intervalAtHigherLevel), Intervals.maxAsLongArray(intervalAtHigherLevel));
 
@@ -1016,6 +1355,7 @@ public class MaskedSource<D extends Type<D>, T extends Type<T>> implements DataS
 	  this.affectedBlocksByLabel[level].computeIfAbsent(label.getIntegerLong(), key -> new TLongHashSet())
 			  .addAll(
 					  affectedBlocksAtLowerLevel);
+	  canvasOccupancy.touch(level, affectedBlocksAtLowerLevel);
 
 	  final Interval paintedIntervalAtTargetLevel = scaleIntervalToLevel(
 			  intervalAtPaintedScale,
@@ -1295,6 +1635,15 @@ public class MaskedSource<D extends Type<D>, T extends Type<T>> implements DataS
 	this.cacheDirectory.set(this.nextCacheDirectory.get());
 	this.affectedBlocks.clear();
 	Arrays.stream(this.affectedBlocksByLabel).forEach(Map::clear);
+	this.canvasOccupancy.clear();
+	this.history.clear();
+	if (this.journal != null) {
+	  try {
+		this.journal.reset();
+	  } catch (final IOException e) {
+		LOG.error("Unable to reset canvas journal {}", this.journal.getPath(), e);
+	  }
+	}
 	this.canvasClearedListeners.forEach(Runnable::run);
   }
 
@@ -1467,6 +1816,7 @@ public class MaskedSource<D extends Type<D>, T extends Type<T>> implements DataS
 
 	LOG.debug("Affected blocks: {} to add: {}", this.affectedBlocks, blocks);
 	this.affectedBlocks.addAll(blocks);
+	this.canvasOccupancy.touch(0, blocks);
 	LOG.debug("Affected blocks: {}", this.affectedBlocks);
 
 	LOG.debug("Affected blocks by id: {} to add: {}", this.affectedBlocksByLabel, blocksById);
@@ -1474,6 +1824,7 @@ public class MaskedSource<D extends Type<D>, T extends Type<T>> implements DataS
 	  final Map<Long, TLongHashSet> map = this.affectedBlocksByLabel[level];
 	  for (final Entry<Long, long[]> entry : blocksById[level].entrySet()) {
 		map.computeIfAbsent(entry.getKey(), key -> new TLongHashSet()).addAll(entry.getValue());
+		canvasOccupancy.touch(level, entry.getValue());
 	  }
 	}
 	LOG.debug("Affected blocks by id: {}", this.affectedBlocksByLabel, null);
@@ -1519,6 +1870,7 @@ public class MaskedSource<D extends Type<D>, T extends Type<T>> implements DataS
 		  final Predicate<UnsignedLongType> isPaintedForeground) {
 
 	setAtMaskLevel(store, vstore, maskLevel, value, isPaintedForeground);
+	this.isMaskActive = true;
 	LOG.debug("Created mask at scale level {}", maskLevel);
 	setMaskScaleLevels(maskLevel);
   }
@@ -1531,6 +1883,7 @@ public class MaskedSource<D extends Type<D>, T extends Type<T>> implements DataS
 		  final Predicate<UnsignedLongType> isPaintedForeground) {
 
 	setAtMaskLevel(mask, vmask, maskLevel, value, isPaintedForeground);
+	this.isMaskActive = true;
 	LOG.debug("Created mask at scale level {}", maskLevel);
 	setMaskScaleLevels(maskLevel);
   }
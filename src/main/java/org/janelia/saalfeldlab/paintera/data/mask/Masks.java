@@ -17,7 +17,9 @@ import org.janelia.saalfeldlab.paintera.data.mask.persist.PersistCanvas;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.lang.invoke.MethodHandles;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Optional;
 import java.util.concurrent.ExecutorService;
@@ -123,15 +125,15 @@ public class Masks {
 	vtype.get().setInteger(Label.OUTSIDE);
 
 	final PickOneAllIntegerTypes<I, UnsignedLongType> pacD = new PickOneAllIntegerTypes<>(
-			l -> Label.regular(l.getIntegerLong()),
-			(l1, l2) -> l2.getIntegerLong() != Label.TRANSPARENT && Label.regular(l1.getIntegerLong()),
+			Label::regular,
+			(l1, l2) -> l2 != Label.TRANSPARENT && Label.regular(l1),
 			type.createVariable()
 	);
 
 	final PickOneAllIntegerTypesVolatile<I, UnsignedLongType, V, VolatileUnsignedLongType> pacT = new
 			PickOneAllIntegerTypesVolatile<>(
-			l -> Label.regular(l.getIntegerLong()),
-			(l1, l2) -> l2.getIntegerLong() != Label.TRANSPARENT && Label.regular(l1.getIntegerLong()),
+			Label::regular,
+			(l1, l2) -> l2 != Label.TRANSPARENT && Label.regular(l1),
 			vtype.createVariable()
 	);
 
@@ -207,13 +209,13 @@ public class Masks {
 	vtype.setValid(true);
 
 	final PickOneLabelMultisetType<UnsignedLongType> pacD = new PickOneLabelMultisetType<>(
-			l -> Label.regular(l.getIntegerLong()),
-			(l1, l2) -> l2.getIntegerLong() != Label.TRANSPARENT && Label.regular(l1.getIntegerLong()));
+			Label::regular,
+			(l1, l2) -> l2 != Label.TRANSPARENT && Label.regular(l1));
 
 	final PickOneVolatileLabelMultisetType<UnsignedLongType, VolatileUnsignedLongType> pacT = new
 			PickOneVolatileLabelMultisetType<>(
-			l -> Label.regular(l.getIntegerLong()) || l.getIntegerLong() == Label.OUTSIDE,
-			(l1, l2) -> l2.getIntegerLong() != Label.TRANSPARENT && Label.regular(l1.getIntegerLong())
+			l -> Label.regular(l) || l == Label.OUTSIDE,
+			(l1, l2) -> l2 != Label.TRANSPARENT && Label.regular(l1)
 	);
 
 	final MaskedSource<LabelMultisetType, VolatileLabelMultisetType> ms = new MaskedSource<>(
@@ -238,4 +240,38 @@ public class Masks {
 	return new TmpDirectoryCreator(() -> Paths.get(root.get(), "canvases"), "canvas-");
   }
 
+  /**
+   * Restore the canvas of {@code source} from its journal in the project directory and record all painting from now on,
+   * see {@link MaskedSource#enableJournal(CanvasJournal)}. Sources that are not a {@link MaskedSource} are returned as
+   * is.
+   *
+   * @param source           masked source
+   * @param projectDirectory project directory
+   * @param container        container of the dataset of {@code source}
+   * @param dataset          dataset of {@code source}
+   * @return {@code source}
+   */
+  public static <D, T> DataSource<D, T> withCanvasJournal(
+		  final DataSource<D, T> source,
+		  final Supplier<String> projectDirectory,
+		  final String container,
+		  final String dataset) {
+
+	if (!(source instanceof MaskedSource<?, ?>))
+	  return source;
+	final Path path = canvasJournalPath(projectDirectory.get(), container, dataset);
+	try {
+	  ((MaskedSource<?, ?>)source).enableJournal(new CanvasJournal(path));
+	} catch (final IOException e) {
+	  LOG.warn("Unable to open canvas journal {} -- painting on {} will not be recoverable after a crash", path, source.getName(), e);
+	}
+	return source;
+  }
+
+  public static Path canvasJournalPath(final String projectDirectory, final String container, final String dataset) {
+
+	final String name = (container + "/" + dataset).replaceAll("[^A-Za-z0-9._-]+", "_");
+	return Paths.get(projectDirectory, "canvas-journals", name + "-" + Integer.toHexString((container + dataset).hashCode()) + ".journal");
+  }
+
 }
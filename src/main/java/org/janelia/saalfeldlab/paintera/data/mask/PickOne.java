@@ -22,6 +22,37 @@ public class PickOne<A, B, C, D> extends AbstractConvertedRealRandomAccessible<T
 
   }
 
+  /**
+   * {@link PickAndConvert} that can also pick from primitive labels for the second and third values, so that
+   * {@link CanvasComposite} can read canvas and mask as {@code long} without going through a {@link Triple}.
+   */
+  public interface PickAndConvertPrimitive<A, B, C, D> extends PickAndConvert<A, B, C, D> {
+
+	/**
+	 * @param a       first value
+	 * @param second  second value as primitive label
+	 * @param third   third value as primitive label
+	 * @param isValid {@code false} if {@code second} or {@code third} is not valid (yet), ignored for non-volatile types
+	 * @return picked value converted into {@code D}
+	 */
+	D apply(A a, long second, long third, boolean isValid);
+
+	@Override
+	PickAndConvertPrimitive<A, B, C, D> copy();
+
+	@Override
+	default PickAndConvertPrimitive<A, B, C, D> copyWithDifferentNumOccurences(final int numOccurrences) {
+
+	  return copy();
+	}
+  }
+
+  @FunctionalInterface
+  public interface LongBiPredicate {
+
+	boolean test(long first, long second);
+  }
+
   private final PickAndConvert<A, B, C, D> pac;
 
   public PickOne(final RealRandomAccessible<Triple<A, B, C>> source, final PickAndConvert<A, B, C, D> pac) {
@@ -1,22 +1,21 @@
 package org.janelia.saalfeldlab.paintera.data.mask;
 
-import java.util.function.BiPredicate;
-import java.util.function.Predicate;
+import java.util.function.LongPredicate;
 
 import net.imglib2.type.numeric.IntegerType;
 import net.imglib2.util.Triple;
-import org.janelia.saalfeldlab.paintera.data.mask.PickOne.PickAndConvert;
+import org.janelia.saalfeldlab.paintera.data.mask.PickOne.LongBiPredicate;
 
 public class PickOneAllIntegerTypes<I extends IntegerType<I>, M extends IntegerType<M>>
-		implements PickOne.PickAndConvert<I, M, M, I> {
+		implements PickOne.PickAndConvertPrimitive<I, M, M, I> {
 
-  private final Predicate<M> pickThird;
+  private final LongPredicate pickThird;
 
-  private final BiPredicate<M, M> pickSecond;
+  private final LongBiPredicate pickSecond;
 
   private final I i;
 
-  public PickOneAllIntegerTypes(final Predicate<M> pickThird, final BiPredicate<M, M> pickSecond, final I i) {
+  public PickOneAllIntegerTypes(final LongPredicate pickThird, final LongBiPredicate pickSecond, final I i) {
 
 	super();
 	this.pickThird = pickThird;
@@ -27,17 +26,20 @@ public class PickOneAllIntegerTypes<I extends IntegerType<I>, M extends IntegerT
   @Override
   public I apply(final Triple<I, M, M> t) {
 
-	final I a = t.getA();
-	final M b = t.getB();
-	final M c = t.getC();
-	i.setInteger(pickThird.test(c)
-			? c.getIntegerLong()
-			: pickSecond.test(b, c) ? b.getIntegerLong() : a.getIntegerLong());
+	return apply(t.getA(), t.getB().getIntegerLong(), t.getC().getIntegerLong(), true);
+  }
+
+  @Override
+  public I apply(final I a, final long second, final long third, final boolean isValid) {
+
+	i.setInteger(pickThird.test(third)
+			? third
+			: pickSecond.test(second, third) ? second : a.getIntegerLong());
 	return i;
   }
 
   @Override
-  public PickAndConvert<I, M, M, I> copy() {
+  public PickOneAllIntegerTypes<I, M> copy() {
 
 	return new PickOneAllIntegerTypes<>(pickThird, pickSecond, i.copy());
   }
@@ -1,25 +1,24 @@
 package org.janelia.saalfeldlab.paintera.data.mask;
 
-import java.util.function.BiPredicate;
-import java.util.function.Predicate;
+import java.util.function.LongPredicate;
 
 import net.imglib2.Volatile;
 import net.imglib2.type.Type;
 import net.imglib2.type.numeric.IntegerType;
 import net.imglib2.util.Triple;
-import org.janelia.saalfeldlab.paintera.data.mask.PickOne.PickAndConvert;
+import org.janelia.saalfeldlab.paintera.data.mask.PickOne.LongBiPredicate;
 
 public class PickOneAllIntegerTypesVolatile<I extends IntegerType<I>, M extends IntegerType<M>, VI extends
 		Volatile<I> & Type<VI>, VM extends Volatile<M>>
-		implements PickOne.PickAndConvert<VI, VM, VM, VI> {
+		implements PickOne.PickAndConvertPrimitive<VI, VM, VM, VI> {
 
-  private final Predicate<M> pickThird;
+  private final LongPredicate pickThird;
 
-  private final BiPredicate<M, M> pickSecond;
+  private final LongBiPredicate pickSecond;
 
   private final VI i;
 
-  public PickOneAllIntegerTypesVolatile(final Predicate<M> pickThird, final BiPredicate<M, M> pickSecond, final VI i) {
+  public PickOneAllIntegerTypesVolatile(final LongPredicate pickThird, final LongBiPredicate pickSecond, final VI i) {
 
 	super();
 	this.pickThird = pickThird;
@@ -30,24 +29,29 @@ public class PickOneAllIntegerTypesVolatile<I extends IntegerType<I>, M extends
   @Override
   public VI apply(final Triple<VI, VM, VM> t) {
 
-	final VI va = t.getA();
 	final VM vb = t.getB();
 	final VM vc = t.getC();
-	final boolean isValid = va.isValid() && vb.isValid() && vc.isValid();
-	i.setValid(isValid);
-	if (isValid) {
-	  final I a = va.get();
-	  final M b = vb.get();
-	  final M c = vc.get();
-	  i.get().setInteger(pickThird.test(c)
-			  ? c.getIntegerLong()
-			  : pickSecond.test(b, c) ? b.getIntegerLong() : a.getIntegerLong());
+	final boolean isValid = vb.isValid() && vc.isValid();
+	return isValid
+			? apply(t.getA(), vb.get().getIntegerLong(), vc.get().getIntegerLong(), true)
+			: apply(t.getA(), 0, 0, false);
+  }
+
+  @Override
+  public VI apply(final VI va, final long second, final long third, final boolean isValid) {
+
+	final boolean allValid = isValid && va.isValid();
+	i.setValid(allValid);
+	if (allValid) {
+	  i.get().setInteger(pickThird.test(third)
+			  ? third
+			  : pickSecond.test(second, third) ? second : va.get().getIntegerLong());
 	}
 	return i;
   }
 
   @Override
-  public PickAndConvert<VI, VM, VM, VI> copy() {
+  public PickOneAllIntegerTypesVolatile<I, M, VI, VM> copy() {
 
 	return new PickOneAllIntegerTypesVolatile<>(pickThird, pickSecond, i.copy());
   }
@@ -6,33 +6,35 @@ import net.imglib2.type.label.Label;
 import net.imglib2.type.label.LabelMultisetEntry;
 import net.imglib2.type.label.LabelMultisetType;
 import net.imglib2.type.numeric.IntegerType;
+import net.imglib2.type.numeric.integer.UnsignedLongType;
 import net.imglib2.util.Triple;
-import org.janelia.saalfeldlab.paintera.data.mask.PickOne.PickAndConvert;
+import org.janelia.saalfeldlab.paintera.data.mask.PickOne.LongBiPredicate;
 
-import java.util.function.BiPredicate;
-import java.util.function.Predicate;
+import java.util.function.LongPredicate;
 
 public class PickOneLabelMultisetType<M extends IntegerType<M>>
-		implements PickOne.PickAndConvert<LabelMultisetType, M, M, LabelMultisetType> {
+		implements PickOne.PickAndConvertPrimitive<LabelMultisetType, M, M, LabelMultisetType> {
 
-  private final Predicate<M> pickThird;
+  private final LongPredicate pickThird;
 
-  private final BiPredicate<M, M> pickSecond;
+  private final LongBiPredicate pickSecond;
 
   private final LabelMultisetType scalarValue;
 
-  private final Converter<M, LabelMultisetType> converter;
+  private final UnsignedLongType label = new UnsignedLongType();
+
+  private final Converter<UnsignedLongType, LabelMultisetType> converter;
 
   public PickOneLabelMultisetType(
-		  final Predicate<M> pickThird,
-		  final BiPredicate<M, M> pickSecond) {
+		  final LongPredicate pickThird,
+		  final LongBiPredicate pickSecond) {
 
 	this(pickThird, pickSecond, FromIntegerTypeConverter.getAppropriateType());
   }
 
   public PickOneLabelMultisetType(
-		  final Predicate<M> pickThird,
-		  final BiPredicate<M, M> pickSecond,
+		  final LongPredicate pickThird,
+		  final LongBiPredicate pickSecond,
 		  final int numOccurrences) {
 
 	this(
@@ -42,8 +44,8 @@ public class PickOneLabelMultisetType<M extends IntegerType<M>>
   }
 
   private PickOneLabelMultisetType(
-		  final Predicate<M> pickThird,
-		  final BiPredicate<M, M> pickSecond,
+		  final LongPredicate pickThird,
+		  final LongBiPredicate pickSecond,
 		  final LabelMultisetType scalarValue) {
 
 	super();
@@ -56,17 +58,21 @@ public class PickOneLabelMultisetType<M extends IntegerType<M>>
   @Override
   public LabelMultisetType apply(final Triple<LabelMultisetType, M, M> t) {
 
-	final LabelMultisetType a = t.getA();
-	final M b = t.getB();
-	final M c = t.getC();
+	return apply(t.getA(), t.getB().getIntegerLong(), t.getC().getIntegerLong(), true);
+  }
+
+  @Override
+  public LabelMultisetType apply(final LabelMultisetType a, final long second, final long third, final boolean isValid) {
 
-	if (pickThird.test(c)) {
-	  converter.convert(c, scalarValue);
+	if (pickThird.test(third)) {
+	  label.set(third);
+	  converter.convert(label, scalarValue);
 	  return scalarValue;
 	}
 
-	if (pickSecond.test(b, c)) {
-	  converter.convert(b, scalarValue);
+	if (pickSecond.test(second, third)) {
+	  label.set(second);
+	  converter.convert(label, scalarValue);
 	  return scalarValue;
 	}
 
@@ -75,13 +81,13 @@ public class PickOneLabelMultisetType<M extends IntegerType<M>>
   }
 
   @Override
-  public PickAndConvert<LabelMultisetType, M, M, LabelMultisetType> copy() {
+  public PickOneLabelMultisetType<M> copy() {
 
 	return new PickOneLabelMultisetType<>(pickThird, pickSecond, this.scalarValue.copy());
   }
 
   @Override
-  public PickAndConvert<LabelMultisetType, M, M, LabelMultisetType> copyWithDifferentNumOccurences(int numOccurrences) {
+  public PickOneLabelMultisetType<M> copyWithDifferentNumOccurences(int numOccurrences) {
 
 	return new PickOneLabelMultisetType<>(pickThird, pickSecond, numOccurrences);
   }
@@ -8,33 +8,35 @@ import net.imglib2.type.label.LabelMultisetEntry;
 import net.imglib2.type.label.LabelMultisetType;
 import net.imglib2.type.label.VolatileLabelMultisetType;
 import net.imglib2.type.numeric.IntegerType;
+import net.imglib2.type.numeric.integer.UnsignedLongType;
 import net.imglib2.util.Triple;
-import org.janelia.saalfeldlab.paintera.data.mask.PickOne.PickAndConvert;
+import org.janelia.saalfeldlab.paintera.data.mask.PickOne.LongBiPredicate;
 
-import java.util.function.BiPredicate;
-import java.util.function.Predicate;
+import java.util.function.LongPredicate;
 
 public class PickOneVolatileLabelMultisetType<M extends IntegerType<M>, VM extends Volatile<M>>
-		implements PickOne.PickAndConvert<VolatileLabelMultisetType, VM, VM, VolatileLabelMultisetType> {
+		implements PickOne.PickAndConvertPrimitive<VolatileLabelMultisetType, VM, VM, VolatileLabelMultisetType> {
 
-  private final Predicate<M> pickThird;
+  private final LongPredicate pickThird;
 
-  private final BiPredicate<M, M> pickSecond;
+  private final LongBiPredicate pickSecond;
 
   private final VolatileLabelMultisetType scalarValue;
 
-  private final Converter<M, LabelMultisetType> converter;
+  private final UnsignedLongType label = new UnsignedLongType();
+
+  private final Converter<UnsignedLongType, LabelMultisetType> converter;
 
   public PickOneVolatileLabelMultisetType(
-		  final Predicate<M> pickThird,
-		  final BiPredicate<M, M> pickSecond) {
+		  final LongPredicate pickThird,
+		  final LongBiPredicate pickSecond) {
 
 	this(pickThird, pickSecond, FromIntegerTypeConverter.getAppropriateVolatileType());
   }
 
   public PickOneVolatileLabelMultisetType(
-		  final Predicate<M> pickThird,
-		  final BiPredicate<M, M> pickSecond,
+		  final LongPredicate pickThird,
+		  final LongBiPredicate pickSecond,
 		  final int numOccurrences) {
 
 	this(
@@ -44,8 +46,8 @@ public class PickOneVolatileLabelMultisetType<M extends IntegerType<M>, VM exten
   }
 
   private PickOneVolatileLabelMultisetType(
-		  final Predicate<M> pickThird,
-		  final BiPredicate<M, M> pickSecond,
+		  final LongPredicate pickThird,
+		  final LongBiPredicate pickSecond,
 		  final VolatileLabelMultisetType scalarValue) {
 
 	super();
@@ -58,26 +60,32 @@ public class PickOneVolatileLabelMultisetType<M extends IntegerType<M>, VM exten
   @Override
   public VolatileLabelMultisetType apply(final Triple<VolatileLabelMultisetType, VM, VM> t) {
 
-	final VolatileLabelMultisetType a = t.getA();
 	final VM vb = t.getB();
 	final VM vc = t.getC();
+	final boolean isValid = vb.isValid() && vc.isValid();
+	return isValid
+			? apply(t.getA(), vb.get().getIntegerLong(), vc.get().getIntegerLong(), true)
+			: apply(t.getA(), 0, 0, false);
+  }
 
-	final boolean isValid = a.isValid() && vb.isValid() && vc.isValid();
-	scalarValue.setValid(isValid);
+  @Override
+  public VolatileLabelMultisetType apply(final VolatileLabelMultisetType a, final long second, final long third, final boolean isValid) {
 
-	if (!isValid)
-	  return scalarValue;
+	final boolean allValid = isValid && a.isValid();
+	scalarValue.setValid(allValid);
 
-	final M b = vb.get();
-	final M c = vc.get();
+	if (!allValid)
+	  return scalarValue;
 
-	if (pickThird.test(c)) {
-	  converter.convert(c, scalarValue.get());
+	if (pickThird.test(third)) {
+	  label.set(third);
+	  converter.convert(label, scalarValue.get());
 	  return scalarValue;
 	}
 
-	if (pickSecond.test(b, c)) {
-	  converter.convert(b, scalarValue.get());
+	if (pickSecond.test(second, third)) {
+	  label.set(second);
+	  converter.convert(label, scalarValue.get());
 	  return scalarValue;
 	}
 
@@ -86,13 +94,13 @@ public class PickOneVolatileLabelMultisetType<M extends IntegerType<M>, VM exten
   }
 
   @Override
-  public PickAndConvert<VolatileLabelMultisetType, VM, VM, VolatileLabelMultisetType> copy() {
+  public PickOneVolatileLabelMultisetType<M, VM> copy() {
 
 	return new PickOneVolatileLabelMultisetType<>(pickThird, pickSecond, scalarValue.copy());
   }
 
   @Override
-  public PickAndConvert<VolatileLabelMultisetType, VM, VM, VolatileLabelMultisetType> copyWithDifferentNumOccurences(int numOccurrences) {
+  public PickOneVolatileLabelMultisetType<M, VM> copyWithDifferentNumOccurences(int numOccurrences) {
 
 	return new PickOneVolatileLabelMultisetType<>(pickThird, pickSecond, numOccurrences);
   }
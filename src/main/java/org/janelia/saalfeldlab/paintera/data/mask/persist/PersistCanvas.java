@@ -5,6 +5,7 @@ import gnu.trove.map.TLongObjectMap;
 import gnu.trove.set.hash.TLongHashSet;
 import net.imglib2.cache.img.CachedCellImg;
 import net.imglib2.type.numeric.integer.UnsignedLongType;
+import org.janelia.saalfeldlab.paintera.data.statistics.LabelStatistics;
 
 import java.util.List;
 
@@ -22,6 +23,8 @@ public interface PersistCanvas extends ProgressReporter {
 
 	private final TLongHashSet wasRemoved = new TLongHashSet();
 
+	private TLongObjectMap<LabelStatistics> labelStatistics = null;
+
 	public void addToOldUniqueLabels(long id) {
 
 	  this.oldUniqueLabels.add(id);
@@ -49,6 +52,22 @@ public interface PersistCanvas extends ProgressReporter {
 	  return getIds(this.wasRemoved);
 	}
 
+	/**
+	 * @param labelStatistics statistics of all labels in the block after the commit
+	 */
+	public void setLabelStatistics(final TLongObjectMap<LabelStatistics> labelStatistics) {
+
+	  this.labelStatistics = labelStatistics;
+	}
+
+	/**
+	 * @return statistics of all labels in the block after the commit, or {@code null} if they were not computed
+	 */
+	public TLongObjectMap<LabelStatistics> getLabelStatistics() {
+
+	  return this.labelStatistics;
+	}
+
 	private void invalidate() {
 
 	  this.diffWasCalculated = false;
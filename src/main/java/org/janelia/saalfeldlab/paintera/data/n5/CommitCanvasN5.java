@@ -9,6 +9,7 @@ import gnu.trove.set.TLongSet;
 import gnu.trove.set.hash.TLongHashSet;
 import javafx.beans.property.ReadOnlyDoubleProperty;
 import javafx.beans.property.ReadOnlyDoubleWrapper;
+import net.imglib2.Cursor;
 import net.imglib2.FinalInterval;
 import net.imglib2.Interval;
 import net.imglib2.RandomAccessibleInterval;
@@ -41,6 +42,7 @@ import org.janelia.saalfeldlab.n5.ByteArrayDataBlock;
 import org.janelia.saalfeldlab.n5.DataBlock;
 import org.janelia.saalfeldlab.n5.DatasetAttributes;
 import org.janelia.saalfeldlab.n5.LongArrayDataBlock;
+import org.janelia.saalfeldlab.n5.N5FSWriter;
 import org.janelia.saalfeldlab.n5.N5Reader;
 import org.janelia.saalfeldlab.n5.N5Writer;
 import org.janelia.saalfeldlab.n5.imglib2.N5LabelMultisets;
@@ -48,9 +50,16 @@ import org.janelia.saalfeldlab.n5.imglib2.N5Utils;
 import org.janelia.saalfeldlab.paintera.data.mask.persist.PersistCanvas;
 import org.janelia.saalfeldlab.paintera.data.mask.persist.UnableToPersistCanvas;
 import org.janelia.saalfeldlab.paintera.data.mask.persist.UnableToUpdateLabelBlockLookup;
+import org.janelia.saalfeldlab.paintera.data.statistics.LabelStatistics;
+import org.janelia.saalfeldlab.paintera.data.statistics.SegmentStatisticsService;
+import org.janelia.saalfeldlab.paintera.data.statistics.SegmentStatisticsStore;
 import org.janelia.saalfeldlab.paintera.exception.PainteraException;
 import org.janelia.saalfeldlab.paintera.state.metadata.MetadataState;
+import org.janelia.saalfeldlab.util.grids.BatchedLabelBlockLookup;
+import org.janelia.saalfeldlab.util.grids.LabelBlockLookupWithBackgroundIndex;
 import org.janelia.saalfeldlab.util.math.ArrayMath;
+import org.janelia.saalfeldlab.util.n5.CompressionAutoTuner;
+import org.janelia.saalfeldlab.util.n5.CompressionDefaults;
 import org.janelia.saalfeldlab.util.n5.N5Helpers;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -68,6 +77,8 @@ public class CommitCanvasN5 implements PersistCanvas {
 
   private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
+  private static final int AUTO_TUNE_SAMPLE_SIZE = 8;
+
   private final N5Writer n5Writer;
 
   private final String dataset;
@@ -111,13 +122,19 @@ public class CommitCanvasN5 implements PersistCanvas {
   @Override
   public boolean supportsLabelBlockLookupUpdate() {
 
-	return isPainteraDataset;
+	return isPainteraDataset || backgroundIndexRoot().isPresent();
   }
 
   @Override
   public void updateLabelBlockLookup(final List<TLongObjectMap<BlockDiff>> blockDiffsByLevel) throws UnableToUpdateLabelBlockLookup {
 
 	LOG.debug("Updating label block lookup with {}", blockDiffsByLevel);
+	if (!isPainteraDataset) {
+	  final Optional<String> backgroundIndexRoot = backgroundIndexRoot();
+	  if (backgroundIndexRoot.isPresent())
+		updateBackgroundIndex(backgroundIndexRoot.get(), blockDiffsByLevel);
+	  return;
+	}
 	try {
 	  final String uniqueLabelsPath = this.dataset + "/unique-labels";
 	  LOG.debug("uniqueLabelsPath {}", uniqueLabelsPath);
@@ -152,25 +169,15 @@ public class CommitCanvasN5 implements PersistCanvas {
 						  Intervals.dimensionsAsIntArray(new FinalInterval(blockSpec.min, blockSpec.max)),
 						  blockSpec.pos,
 						  blockDiff.getNewUniqueIds()));
-
-		  final long[] removedInBlock = blockDiff.getRemovedIds();
-		  final long[] addedInBlock = blockDiff.getAddedIds();
-
-		  for (final long removed : removedInBlock) {
-			computeIfAbsent(removedById, removed, TLongHashSet::new).add(blockId);
-		  }
-
-		  for (final long added : addedInBlock) {
-			computeIfAbsent(addedById, added, TLongHashSet::new).add(blockId);
-		  }
-
 		}
+		collectChangedBlocks(blockDiffs, removedById, addedById);
 
 		final TLongSet modifiedIds = new TLongHashSet();
 		modifiedIds.addAll(removedById.keySet());
 		modifiedIds.addAll(addedById.keySet());
 		LOG.debug("Removed by id: {}", removedById);
 		LOG.debug("Added by id: {}", addedById);
+		final TLongObjectMap<Interval[]> updatedIntervalsById = new TLongObjectHashMap<>();
 		for (final long modifiedId : modifiedIds.toArray()) {
 		  final Interval[] blockList = labelBlockLoader.read(new LabelBlockLookupKey(level, modifiedId));
 		  final TLongSet blockListLinearIndices = new TLongHashSet();
@@ -200,9 +207,15 @@ public class CommitCanvasN5 implements PersistCanvas {
 			updatedIntervals[index] = interval;
 			LOG.trace("Added interval {} for linear index {} and block spec {}", interval, blockId, blockSpec);
 		  }
-		  labelBlockLoader.write(new LabelBlockLookupKey(level, modifiedId), updatedIntervals);
+		  updatedIntervalsById.put(modifiedId, updatedIntervals);
 		}
 
+		if (labelBlockLoader instanceof BatchedLabelBlockLookup)
+		  ((BatchedLabelBlockLookup)labelBlockLoader).write(level, updatedIntervalsById);
+		else
+		  for (final long modifiedId : updatedIntervalsById.keys())
+			labelBlockLoader.write(new LabelBlockLookupKey(level, modifiedId), updatedIntervalsById.get(modifiedId));
+
 	  }
 
 	} catch (final IOException e) {
@@ -211,12 +224,73 @@ public class CommitCanvasN5 implements PersistCanvas {
 	LOG.info("Finished updating label-block-lookup");
   }
 
+  /**
+   * The label block index of a dataset without a stored lookup is built in the background, see
+   * {@link LabelBlockLookupWithBackgroundIndex}. Once a build was started, commits update the index of all levels, even
+   * if they are not complete yet.
+   */
+  private Optional<String> backgroundIndexRoot() {
+
+	if (!(n5Writer instanceof N5FSWriter))
+	  return Optional.empty();
+	final String root = Paths.get(((N5FSWriter)n5Writer).getBasePath(), dataset, N5Helpers.LABEL_TO_BLOCK_MAPPING).toString();
+	return LabelBlockLookupWithBackgroundIndex.exists(root) ? Optional.of(root) : Optional.empty();
+  }
+
+  private void updateBackgroundIndex(final String root, final List<TLongObjectMap<BlockDiff>> blockDiffsByLevel) throws UnableToUpdateLabelBlockLookup {
+
+	try {
+	  final String[] levels = isMultiscale
+			  ? N5Helpers.listAndSortScaleDatasets(n5Writer, dataset)
+			  : new String[]{""};
+	  final long[][] dims = new long[levels.length][];
+	  final int[][] blockSizes = new int[levels.length][];
+	  for (int level = 0; level < levels.length; ++level) {
+		final CellGrid grid = N5Helpers.getGrid(n5Writer, Paths.get(dataset, levels[level]).toString());
+		dims[level] = grid.getImgDimensions();
+		blockSizes[level] = new int[grid.numDimensions()];
+		grid.cellDimensions(blockSizes[level]);
+	  }
+	  final LabelBlockLookupWithBackgroundIndex index = new LabelBlockLookupWithBackgroundIndex(root, dims, blockSizes);
+	  for (int level = 0; level < Math.min(levels.length, blockDiffsByLevel.size()); ++level) {
+		final TLongObjectMap<TLongHashSet> removedById = new TLongObjectHashMap<>();
+		final TLongObjectMap<TLongHashSet> addedById = new TLongObjectHashMap<>();
+		collectChangedBlocks(blockDiffsByLevel.get(level), removedById, addedById);
+		final TLongSet modifiedIds = new TLongHashSet();
+		modifiedIds.addAll(removedById.keySet());
+		modifiedIds.addAll(addedById.keySet());
+		for (final TLongIterator idIt = modifiedIds.iterator(); idIt.hasNext(); ) {
+		  final long id = idIt.next();
+		  index.updateBlocks(level, id, addedById.get(id), removedById.get(id));
+		}
+	  }
+	} catch (final IOException e) {
+	  throw new UnableToUpdateLabelBlockLookup("Unable to update label block index for " + this.dataset + " in " + root, e);
+	}
+	LOG.info("Finished updating label block index in {}", root);
+  }
+
+  private static void collectChangedBlocks(
+		  final TLongObjectMap<BlockDiff> blockDiffs,
+		  final TLongObjectMap<TLongHashSet> removedById,
+		  final TLongObjectMap<TLongHashSet> addedById) {
+
+	for (final TLongObjectIterator<BlockDiff> blockDiffIt = blockDiffs.iterator(); blockDiffIt.hasNext(); ) {
+	  blockDiffIt.advance();
+	  final long blockId = blockDiffIt.key();
+	  for (final long removed : blockDiffIt.value().getRemovedIds())
+		computeIfAbsent(removedById, removed, TLongHashSet::new).add(blockId);
+	  for (final long added : blockDiffIt.value().getAddedIds())
+		computeIfAbsent(addedById, added, TLongHashSet::new).add(blockId);
+	}
+  }
+
   @Override
   public List<TLongObjectMap<BlockDiff>> persistCanvas(final CachedCellImg<UnsignedLongType, ?> canvas, final long[] blocks) throws UnableToPersistCanvas {
 
 	LOG.info("Committing canvas: {} blocks", blocks.length);
 	LOG.debug("Affected blocks in grid {}: {}", canvas.getCellGrid(), blocks);
-	InvokeOnJavaFXApplicationThread.invoke(() -> progress.set(0.1));
+	setProgress(0.1);
 	try {
 	  final String dataset = isPainteraDataset ? this.dataset + "/data" : this.dataset;
 
@@ -237,13 +311,22 @@ public class CommitCanvasN5 implements PersistCanvas {
 	  final TLongObjectHashMap<BlockDiff> blockDiffsAtHighestLevel = new TLongObjectHashMap<>();
 	  blockDiffs.add(blockDiffsAtHighestLevel);
 
+	  // only collect statistics of committed blocks if the dataset has opted in
+	  final boolean collectStatistics = isPainteraDataset && hasSegmentStatistics();
+
 	  if (this.isLabelMultiset)
-		writeBlocksLabelMultisetType(canvas, blocks, highestResolutionDataset, highestResolutionBlockSpec, blockDiffsAtHighestLevel);
+		writeBlocksLabelMultisetType(canvas, blocks, highestResolutionDataset, highestResolutionBlockSpec, blockDiffsAtHighestLevel, collectStatistics);
 	  else {
-		writeBlocksLabelIntegerType(canvas, blocks, highestResolutionDataset, highestResolutionBlockSpec, blockDiffsAtHighestLevel);
+		writeBlocksLabelIntegerType(canvas, blocks, highestResolutionDataset, highestResolutionBlockSpec, blockDiffsAtHighestLevel, collectStatistics);
 	  }
 
-	  InvokeOnJavaFXApplicationThread.invoke(() -> progress.set(0.4));
+	  if (collectStatistics)
+		writeSegmentStatistics(highestResolutionDataset.grid, blockDiffsAtHighestLevel);
+
+	  if (CompressionDefaults.getGlobal().isAutoTune())
+		autoTuneCompression(highestResolutionDataset, blocks);
+
+	  setProgress(0.4);
 
 	  if (isMultiscale) {
 		final String[] scaleDatasets = N5Helpers.listAndSortScaleDatasets(n5Writer, dataset);
@@ -302,7 +385,7 @@ public class CommitCanvasN5 implements PersistCanvas {
 					blockDiffsAt);
 
 		}
-		InvokeOnJavaFXApplicationThread.invoke(() -> progress.set(1.0));
+		setProgress(1.0);
 
 	  }
 	  LOG.info("Finished commiting canvas");
@@ -314,6 +397,29 @@ public class CommitCanvasN5 implements PersistCanvas {
 	}
   }
 
+  /**
+   * Update the {@link CompressionDefaults#getGlobal() compression for new datasets} with the best choice for a sample of
+   * the committed blocks. Existing datasets are not re-compressed. Failure is logged but does not fail the commit.
+   */
+  private static void autoTuneCompression(final DatasetSpec datasetSpec, final long[] blocks) {
+
+	try {
+	  final BlockSpec blockSpec = new BlockSpec(datasetSpec.grid);
+	  final List<DataBlock<?>> sample = new ArrayList<>();
+	  final int stride = Math.max(blocks.length / AUTO_TUNE_SAMPLE_SIZE, 1);
+	  for (int i = 0; i < blocks.length && sample.size() < AUTO_TUNE_SAMPLE_SIZE; i += stride) {
+		blockSpec.fromLinearIndex(blocks[i]);
+		final DataBlock<?> block = datasetSpec.container.readBlock(datasetSpec.dataset, datasetSpec.attributes, blockSpec.pos.clone());
+		if (block != null)
+		  sample.add(block);
+	  }
+	  if (!sample.isEmpty())
+		CompressionAutoTuner.tune(CompressionDefaults.getGlobal(), datasetSpec.attributes, sample);
+	} catch (final IOException | RuntimeException e) {
+	  LOG.warn("Unable to auto-tune compression for new datasets.", e);
+	}
+  }
+
   private static long[] readContainedLabels(
 		  final N5Reader n5,
 		  final String uniqueLabelsDataset,
@@ -612,7 +718,8 @@ public class CommitCanvasN5 implements PersistCanvas {
 		  final long[] blocks,
 		  final DatasetSpec datasetSpec,
 		  final BlockSpec blockSpec,
-		  final TLongObjectHashMap<BlockDiff> blockDiff) throws IOException {
+		  final TLongObjectHashMap<BlockDiff> blockDiff,
+		  final boolean collectStatistics) throws IOException {
 
 	final RandomAccessibleInterval<LabelMultisetType> highestResolutionData = N5LabelMultisets.openLabelMultiset(datasetSpec.container, datasetSpec.dataset);
 	for (final long blockId : blocks) {
@@ -623,7 +730,10 @@ public class CommitCanvasN5 implements PersistCanvas {
 	  final byte[] byteData = LabelUtils.serializeLabelMultisetTypes(new BackgroundCanvasIterable(Views.flatIterable(backgroundWithCanvas)), numElements);
 	  final ByteArrayDataBlock dataBlock = new ByteArrayDataBlock(Intervals.dimensionsAsIntArray(backgroundWithCanvas), blockSpec.pos, byteData);
 	  datasetSpec.container.writeBlock(datasetSpec.dataset, datasetSpec.attributes, dataBlock);
-	  blockDiff.put(blockId, createBlockDiffFromCanvas(backgroundWithCanvas));
+	  final BlockDiff diff = createBlockDiffFromCanvas(backgroundWithCanvas);
+	  if (collectStatistics)
+		diff.setLabelStatistics(labelStatisticsFromCanvas(backgroundWithCanvas));
+	  blockDiff.put(blockId, diff);
 	}
   }
 
@@ -633,7 +743,8 @@ public class CommitCanvasN5 implements PersistCanvas {
 		  final long[] blocks,
 		  final DatasetSpec datasetSpec,
 		  final BlockSpec blockSpec,
-		  final TLongObjectHashMap<BlockDiff> blockDiff) throws IOException {
+		  final TLongObjectHashMap<BlockDiff> blockDiff,
+		  final boolean collectStatistics) throws IOException {
 
 	final RandomAccessibleInterval<I> highestResolutionData = N5Utils.open(datasetSpec.container, datasetSpec.dataset);
 	final I i = Util.getTypeFromInterval(highestResolutionData).createVariable();
@@ -644,7 +755,67 @@ public class CommitCanvasN5 implements PersistCanvas {
 	  final RandomAccessibleInterval<I> mergedData = Converters
 			  .convert(backgroundWithCanvas, (s, t) -> pickFirstIfSecondIsInvalid(s.getA(), s.getB(), t), i.createVariable());
 	  N5Utils.saveBlock(mergedData, datasetSpec.container, datasetSpec.dataset, datasetSpec.attributes, blockSpec.pos);
-	  blockDiff.put(blockId, createBlockDiffFromCanvasIntegerType(Views.iterable(backgroundWithCanvas)));
+	  final BlockDiff diff = createBlockDiffFromCanvasIntegerType(Views.iterable(backgroundWithCanvas));
+	  if (collectStatistics)
+		diff.setLabelStatistics(SegmentStatisticsService.computeBlockStatistics(mergedData));
+	  blockDiff.put(blockId, diff);
+	}
+  }
+
+  /**
+   * Statistics of the committed labels in a block, consistent with {@link SegmentStatisticsService#computeBlockStatistics}.
+   */
+  private static TLongObjectMap<LabelStatistics> labelStatisticsFromCanvas(final RandomAccessibleInterval<Pair<LabelMultisetType, UnsignedLongType>> backgroundWithCanvas) {
+
+	final TLongObjectMap<LabelStatistics> statisticsById = new TLongObjectHashMap<>();
+	final Cursor<Pair<LabelMultisetType, UnsignedLongType>> cursor = Views.flatIterable(backgroundWithCanvas).localizingCursor();
+	while (cursor.hasNext()) {
+	  final Pair<LabelMultisetType, UnsignedLongType> p = cursor.next();
+	  final long canvasLabel = p.getB().getIntegerLong();
+	  if (canvasLabel != Label.INVALID) {
+		if (canvasLabel != Label.BACKGROUND && Label.regular(canvasLabel))
+		  LabelStatistics.add(statisticsById, canvasLabel, cursor, 1);
+	  } else {
+		for (final Entry<Label> entry : p.getA().entrySet()) {
+		  final long id = entry.getElement().id();
+		  if (id != Label.BACKGROUND && Label.regular(id))
+			LabelStatistics.add(statisticsById, id, cursor, entry.getCount());
+		}
+	  }
+	}
+	return statisticsById;
+  }
+
+  /**
+   * @return {@code true} if segment statistics were collected for this dataset. If that cannot be determined, no
+   * statistics are collected, and the affected blocks are scanned again when the statistics are loaded.
+   */
+  private boolean hasSegmentStatistics() {
+
+	try {
+	  return SegmentStatisticsStore.exists(n5Writer, this.dataset);
+	} catch (final IOException | RuntimeException e) {
+	  LOG.warn("Unable to check for segment statistics in {}", this.dataset, e);
+	  return false;
+	}
+  }
+
+  /**
+   * Store the statistics of committed blocks. Failure is logged but does not fail the commit, the affected blocks are
+   * scanned again when the statistics are loaded.
+   */
+  private void writeSegmentStatistics(final CellGrid grid, final TLongObjectMap<BlockDiff> blockDiffs) {
+
+	final String statisticsDataset = this.dataset + "/" + SegmentStatisticsStore.DATASET;
+	try {
+	  final SegmentStatisticsStore store = new SegmentStatisticsStore(n5Writer, statisticsDataset, grid);
+	  for (final TLongObjectIterator<BlockDiff> it = blockDiffs.iterator(); it.hasNext(); ) {
+		it.advance();
+		if (it.value().getLabelStatistics() != null)
+		  store.write(it.key(), it.value().getLabelStatistics());
+	  }
+	} catch (final IOException | RuntimeException e) {
+	  LOG.warn("Unable to update segment statistics in {}", statisticsDataset, e);
 	}
   }
 
@@ -792,4 +963,17 @@ public class CommitCanvasN5 implements PersistCanvas {
 	return progress.getReadOnlyProperty();
   }
 
+  /**
+   * Update progress on the JavaFX application thread, or directly if the JavaFX toolkit is not running, e.g. when
+   * committing from the headless command line.
+   */
+  private void setProgress(final double value) {
+
+	try {
+	  InvokeOnJavaFXApplicationThread.invoke(() -> progress.set(value));
+	} catch (final IllegalStateException e) {
+	  progress.set(value);
+	}
+  }
+
 }
@@ -0,0 +1,438 @@
+package org.janelia.saalfeldlab.paintera.data.n5;
+
+import bdv.util.volatiles.SharedQueue;
+import net.imglib2.Cursor;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccessible;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.Volatile;
+import net.imglib2.cache.Cache;
+import net.imglib2.cache.img.CachedCellImg;
+import net.imglib2.cache.img.CellLoader;
+import net.imglib2.cache.img.LoadedCellCacheLoader;
+import net.imglib2.cache.img.SingleCellArrayImg;
+import net.imglib2.cache.ref.SoftRefLoaderCache;
+import net.imglib2.cache.volatiles.CacheHints;
+import net.imglib2.cache.volatiles.LoadingStrategy;
+import net.imglib2.img.basictypeaccess.AccessFlags;
+import net.imglib2.img.basictypeaccess.ArrayDataAccessFactory;
+import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
+import net.imglib2.img.cell.AbstractCellImg;
+import net.imglib2.img.cell.Cell;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.util.Intervals;
+import net.imglib2.util.Util;
+import net.imglib2.view.Views;
+import net.imglib2.view.composite.RealComposite;
+import org.janelia.saalfeldlab.n5.DataBlock;
+import org.janelia.saalfeldlab.n5.DatasetAttributes;
+import org.janelia.saalfeldlab.n5.N5Reader;
+import org.janelia.saalfeldlab.n5.imglib2.N5Utils;
+import org.janelia.saalfeldlab.paintera.cache.AccountedCache;
+import org.janelia.saalfeldlab.paintera.cache.CacheBudget;
+import org.janelia.saalfeldlab.util.TmpVolatileHelpers;
+import org.janelia.saalfeldlab.util.n5.ImagesWithTransform;
+import org.janelia.saalfeldlab.util.n5.universe.AsyncBlockReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Loads a block of a multi-channel dataset with all selected channels into a single cell of an interleaved image, i.e.
+ * an image with the channel as its first (fastest) dimension followed by the spatial dimensions of the dataset. Each
+ * cell holds all channels of a block in one contiguous primitive array.
+ * <p>
+ * {@link #collapseChannels(RandomAccessibleInterval, RealType)} turns the interleaved image into a
+ * {@link RealComposite} per voxel. Because all channels of a voxel live in the same cell, accessing a voxel costs a
+ * single cache lookup and a single validity check instead of one per channel, and {@link #channel(RandomAccessibleInterval, int)}
+ * views of individual channels share the same cells.
+ * <p>
+ * Datasets in N5 are read block by block straight into the storage array of the interleaved cell, without caching the
+ * blocks of the source a second time. Other sources are copied voxel by voxel once per cell. Interleaved cells are
+ * accounted for in the {@link CacheBudget#getGlobal() global cache budget}.
+ *
+ * @param <D> data type
+ */
+public class InterleavedChannelLoader<D extends NativeType<D> & RealType<D>> implements CellLoader<D> {
+
+  private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  /**
+   * Interleaved blocks are read and decompressed from N5, see {@link org.janelia.saalfeldlab.paintera.cache.BudgetedCache#getReloadCost()}
+   */
+  private static final double RELOAD_COST = 1.0;
+
+  private static final int DEFAULT_BLOCK_SIZE = 64;
+
+  /* either source, or reader, dataset, and attributes */
+  private final RandomAccessibleInterval<D> source;
+
+  private final N5Reader reader;
+
+  private final String dataset;
+
+  private final DatasetAttributes attributes;
+
+  private final int channelDimension;
+
+  private final long[] channels;
+
+  /**
+   * @param source           data with a channel dimension
+   * @param channelDimension channel dimension of {@code source}
+   * @param channels         channels of {@code source}, in the order in which they are interleaved
+   */
+  public InterleavedChannelLoader(
+		  final RandomAccessibleInterval<D> source,
+		  final int channelDimension,
+		  final long[] channels) {
+
+	this(source, null, null, null, channelDimension, channels);
+  }
+
+  /**
+   * @param reader           container
+   * @param dataset          dataset with a channel dimension
+   * @param attributes       attributes of {@code dataset}
+   * @param channelDimension channel dimension of {@code dataset}
+   * @param channels         channels of {@code dataset}, in the order in which they are interleaved
+   */
+  public InterleavedChannelLoader(
+		  final N5Reader reader,
+		  final String dataset,
+		  final DatasetAttributes attributes,
+		  final int channelDimension,
+		  final long[] channels) {
+
+	this(null, reader, dataset, attributes, channelDimension, channels);
+  }
+
+  private InterleavedChannelLoader(
+		  final RandomAccessibleInterval<D> source,
+		  final N5Reader reader,
+		  final String dataset,
+		  final DatasetAttributes attributes,
+		  final int channelDimension,
+		  final long[] channels) {
+
+	this.source = source;
+	this.reader = reader;
+	this.dataset = dataset;
+	this.attributes = attributes;
+	this.channelDimension = channelDimension;
+	this.channels = channels.clone();
+  }
+
+  @Override
+  public void load(final SingleCellArrayImg<D, ?> cell) throws IOException {
+
+	if (reader == null)
+	  copyFromSource(cell);
+	else
+	  readBlocks(cell);
+  }
+
+  private void copyFromSource(final SingleCellArrayImg<D, ?> cell) {
+
+	final long[] cellMin = Intervals.minAsLongArray(cell);
+	for (int channel = 0; channel < channels.length; ++channel) {
+	  final RandomAccessibleInterval<D> target = Views.hyperSlice(cell, 0, cellMin[0] + channel);
+	  final RandomAccessibleInterval<D> sourceChannel = Views.hyperSlice(source, channelDimension, channels[channel]);
+	  final Cursor<D> s = Views.flatIterable(Views.interval(sourceChannel, target)).cursor();
+	  final Cursor<D> t = Views.flatIterable(target).cursor();
+	  while (t.hasNext())
+		t.next().set(s.next());
+	}
+  }
+
+  /**
+   * Read the blocks of all channels at the spatial position of {@code cell} and write them into the storage array of
+   * {@code cell}, with the channel as the fastest index. Each block is read once, even if it contains several channels.
+   * Missing blocks leave their channels at zero, like {@link N5Utils#open(N5Reader, String)}.
+   */
+  private void readBlocks(final SingleCellArrayImg<D, ?> cell) throws IOException {
+
+	final int n = attributes.getNumDimensions();
+	final int[] blockSize = attributes.getBlockSize();
+	final int numChannels = channels.length;
+	final Object target = ((ArrayDataAccess<?>)cell.update(null)).getCurrentStorageArray();
+
+	/* spatial dimensions of the cell, in the order of the dataset dimensions without the channel dimension */
+	final int[] spatialDimensions = new int[n - 1];
+	final int[] cellSize = new int[n - 1];
+	final long[] gridPosition = new long[n];
+	for (int d = 0, t = 0; d < n; ++d) {
+	  if (d == channelDimension)
+		continue;
+	  spatialDimensions[t] = d;
+	  cellSize[t] = (int)cell.dimension(t + 1);
+	  gridPosition[d] = cell.min(t + 1) / blockSize[d];
+	  ++t;
+	}
+
+	final Map<Long, DataBlock<?>> blocks = new HashMap<>();
+	for (int channel = 0; channel < numChannels; ++channel) {
+	  final long channelBlock = channels[channel] / blockSize[channelDimension];
+	  if (!blocks.containsKey(channelBlock)) {
+		gridPosition[channelDimension] = channelBlock;
+		blocks.put(channelBlock, reader.readBlock(dataset, attributes, gridPosition));
+	  }
+	  final DataBlock<?> block = blocks.get(channelBlock);
+	  if (block == null)
+		continue;
+
+	  final int[] size = block.getSize();
+	  final int[] strides = new int[n];
+	  strides[0] = 1;
+	  for (int d = 1; d < n; ++d)
+		strides[d] = strides[d - 1] * size[d - 1];
+	  for (int t = 0; t < cellSize.length; ++t)
+		if (size[spatialDimensions[t]] < cellSize[t])
+		  throw new IOException(String.format("Block %s of `%s' is smaller than the cell %s", Arrays.toString(size), dataset, Arrays.toString(cellSize)));
+
+	  /* copy line by line along the fastest spatial dimension */
+	  final int channelOffset = (int)(channels[channel] - channelBlock * blockSize[channelDimension]) * strides[channelDimension];
+	  final int lineStride = strides[spatialDimensions[0]];
+	  final int[] position = new int[cellSize.length];
+	  int targetPosition = channel;
+	  while (true) {
+		int sourcePosition = channelOffset;
+		for (int t = 1; t < position.length; ++t)
+		  sourcePosition += position[t] * strides[spatialDimensions[t]];
+		copyStrided(block.getData(), sourcePosition, lineStride, target, targetPosition, numChannels, cellSize[0]);
+		targetPosition += cellSize[0] * numChannels;
+
+		int t = 1;
+		for (; t < position.length; ++t) {
+		  if (++position[t] < cellSize[t])
+			break;
+		  position[t] = 0;
+		}
+		if (t >= position.length)
+		  break;
+	  }
+	}
+  }
+
+  private static void copyStrided(
+		  final Object source,
+		  final int sourcePosition,
+		  final int sourceStride,
+		  final Object target,
+		  final int targetPosition,
+		  final int targetStride,
+		  final int length) {
+
+	if (source instanceof byte[] && target instanceof byte[]) {
+	  final byte[] s = (byte[])source;
+	  final byte[] t = (byte[])target;
+	  for (int i = 0, si = sourcePosition, ti = targetPosition; i < length; ++i, si += sourceStride, ti += targetStride)
+		t[ti] = s[si];
+	} else if (source instanceof short[] && target instanceof short[]) {
+	  final short[] s = (short[])source;
+	  final short[] t = (short[])target;
+	  for (int i = 0, si = sourcePosition, ti = targetPosition; i < length; ++i, si += sourceStride, ti += targetStride)
+		t[ti] = s[si];
+	} else if (source instanceof int[] && target instanceof int[]) {
+	  final int[] s = (int[])source;
+	  final int[] t = (int[])target;
+	  for (int i = 0, si = sourcePosition, ti = targetPosition; i < length; ++i, si += sourceStride, ti += targetStride)
+		t[ti] = s[si];
+	} else if (source instanceof long[] && target instanceof long[]) {
+	  final long[] s = (long[])source;
+	  final long[] t = (long[])target;
+	  for (int i = 0, si = sourcePosition, ti = targetPosition; i < length; ++i, si += sourceStride, ti += targetStride)
+		t[ti] = s[si];
+	} else if (source instanceof float[] && target instanceof float[]) {
+	  final float[] s = (float[])source;
+	  final float[] t = (float[])target;
+	  for (int i = 0, si = sourcePosition, ti = targetPosition; i < length; ++i, si += sourceStride, ti += targetStride)
+		t[ti] = s[si];
+	} else if (source instanceof double[] && target instanceof double[]) {
+	  final double[] s = (double[])source;
+	  final double[] t = (double[])target;
+	  for (int i = 0, si = sourcePosition, ti = targetPosition; i < length; ++i, si += sourceStride, ti += targetStride)
+		t[ti] = s[si];
+	} else
+	  throw new IllegalArgumentException(String.format(
+			  "Cannot copy %s into %s",
+			  source == null ? null : source.getClass().getSimpleName(),
+			  target == null ? null : target.getClass().getSimpleName()));
+  }
+
+  /**
+   * @param source           data with a channel dimension
+   * @param channelDimension channel dimension of {@code source}
+   * @param channels         channels of {@code source}, in the order in which they are interleaved
+   * @param name             shown in the cache budget
+   * @return interleaved image with dimensions {@code [channels.length, spatial dimensions of source...]}; cells span all
+   * channels and use the spatial block size of {@code source} if it is a cell image
+   */
+  public static <D extends NativeType<D> & RealType<D>> CachedCellImg<D, ?> interleave(
+		  final RandomAccessibleInterval<D> source,
+		  final int channelDimension,
+		  final long[] channels,
+		  final String name) {
+
+	final int n = source.numDimensions();
+	final long[] dimensions = new long[n];
+	final int[] cellDimensions = new int[n];
+	final int[] sourceBlockSize = spatialBlockSize(source);
+	dimensions[0] = channels.length;
+	cellDimensions[0] = channels.length;
+	for (int d = 0, t = 1; d < n; ++d) {
+	  if (d == channelDimension)
+		continue;
+	  dimensions[t] = source.dimension(d);
+	  cellDimensions[t] = sourceBlockSize[d];
+	  ++t;
+	}
+	LOG.debug("Interleaving channels {} of dimension {}: dimensions={} cell dimensions={}", channels, channelDimension, dimensions, cellDimensions);
+
+	return cachedCellImg(
+			new CellGrid(dimensions, cellDimensions),
+			Util.getTypeFromInterval(source).createVariable(),
+			new InterleavedChannelLoader<>(source, channelDimension, channels),
+			name);
+  }
+
+  /**
+   * @param reader           container
+   * @param dataset          dataset with a channel dimension
+   * @param channelDimension channel dimension of {@code dataset}
+   * @param channels         channels of {@code dataset}, in the order in which they are interleaved
+   * @param name             shown in the cache budget
+   * @return interleaved image with dimensions {@code [channels.length, spatial dimensions of dataset...]}; cells span
+   * all channels and use the spatial block size of {@code dataset}
+   * @throws IOException if the attributes of {@code dataset} cannot be read
+   */
+  public static <D extends NativeType<D> & RealType<D>> CachedCellImg<D, ?> interleave(
+		  final N5Reader reader,
+		  final String dataset,
+		  final int channelDimension,
+		  final long[] channels,
+		  final String name) throws IOException {
+
+	final DatasetAttributes attributes = reader.getDatasetAttributes(dataset);
+	final long[] datasetDimensions = attributes.getDimensions();
+	final int[] blockSize = attributes.getBlockSize();
+	final int n = datasetDimensions.length;
+	final long[] dimensions = new long[n];
+	final int[] cellDimensions = new int[n];
+	dimensions[0] = channels.length;
+	cellDimensions[0] = channels.length;
+	for (int d = 0, t = 1; d < n; ++d) {
+	  if (d == channelDimension)
+		continue;
+	  dimensions[t] = datasetDimensions[d];
+	  cellDimensions[t] = blockSize[d];
+	  ++t;
+	}
+	LOG.debug("Interleaving channels {} of dimension {} of `{}': dimensions={} cell dimensions={}", channels, channelDimension, dataset, dimensions, cellDimensions);
+
+	/* object stores start reading the blocks of all channels as soon as the first one is requested */
+	final AsyncBlockReader asyncReader = AsyncBlockReader.forObjectStore(reader);
+	return cachedCellImg(
+			new CellGrid(dimensions, cellDimensions),
+			N5Utils.<D>type(attributes.getDataType()),
+			new InterleavedChannelLoader<>(asyncReader == null ? reader : asyncReader, dataset, attributes, channelDimension, channels),
+			name);
+  }
+
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private static <D extends NativeType<D> & RealType<D>> CachedCellImg<D, ?> cachedCellImg(
+		  final CellGrid grid,
+		  final D type,
+		  final InterleavedChannelLoader<D> loader,
+		  final String name) {
+
+	final double bytesPerElement = type.getBitsPerPixel() / 8.0;
+	final Cache<Long, Cell> cache = AccountedCache.register(
+			"Interleaved channels: " + name,
+			new SoftRefLoaderCache<Long, Cell>().withLoader((LoadedCellCacheLoader)LoadedCellCacheLoader.get(grid, loader, type, AccessFlags.setOf(AccessFlags.VOLATILE))),
+			cell -> (long)Math.ceil(cell.size() * bytesPerElement),
+			RELOAD_COST,
+			CacheBudget.getGlobal());
+	return new CachedCellImg(grid, type, cache, ArrayDataAccessFactory.get(type, AccessFlags.setOf(AccessFlags.VOLATILE)));
+  }
+
+  /**
+   * Interleave {@code dataset} with a single {@link InterleavedChannelLoader}; the viewer data is a volatile view of the
+   * interleaved data.
+   *
+   * @throws IOException if the attributes of {@code dataset} cannot be read
+   */
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  public static <D extends NativeType<D> & RealType<D>, T extends Volatile<D> & NativeType<T>> ImagesWithTransform<D, T> interleave(
+		  final N5Reader reader,
+		  final String dataset,
+		  final AffineTransform3D transform,
+		  final int channelDimension,
+		  final long[] channels,
+		  final SharedQueue queue,
+		  final int priority,
+		  final String name) throws IOException {
+
+	final CachedCellImg<D, ?> data = interleave(reader, dataset, channelDimension, channels, name);
+	final TmpVolatileHelpers.RaiWithInvalidate<T> vdata = TmpVolatileHelpers.createVolatileCachedCellImgWithInvalidate(
+			(CachedCellImg)data,
+			queue,
+			new CacheHints(LoadingStrategy.VOLATILE, priority, true));
+	return new ImagesWithTransform<>(data, vdata.getRai(), transform, data.getCache(), vdata.getInvalidate());
+  }
+
+  /**
+   * @param interleaved image with channels in its first dimension
+   * @param extension   value outside of {@code interleaved}
+   * @return all channels of a voxel as {@link RealComposite}
+   */
+  public static <T extends RealType<T>> RandomAccessible<RealComposite<T>> collapseChannels(
+		  final RandomAccessibleInterval<T> interleaved,
+		  final T extension) {
+
+	final int lastDim = interleaved.numDimensions() - 1;
+	final RandomAccessibleInterval<T> channelsLast = lastDim == 0 ? interleaved : Views.moveAxis(interleaved, 0, lastDim);
+	return Views.collapseReal(Views.extendValue(channelsLast, extension), (int)interleaved.dimension(0));
+  }
+
+  /**
+   * @param interleaved image with channels in its first dimension
+   * @param channel     index into the interleaved channels
+   * @return single channel that shares the cells of {@code interleaved}
+   */
+  public static <T> RandomAccessibleInterval<T> channel(final RandomAccessibleInterval<T> interleaved, final int channel) {
+
+	return Views.hyperSlice(interleaved, 0, interleaved.min(0) + channel);
+  }
+
+  /**
+   * @param interleaved image with channels in its first dimension
+   * @return spatial extent of {@code interleaved}
+   */
+  public static Interval spatialInterval(final Interval interleaved) {
+
+	final int n = interleaved.numDimensions();
+	final long[] min = Arrays.copyOfRange(Intervals.minAsLongArray(interleaved), 1, n);
+	final long[] max = Arrays.copyOfRange(Intervals.maxAsLongArray(interleaved), 1, n);
+	return new FinalInterval(min, max);
+  }
+
+  private static int[] spatialBlockSize(final RandomAccessibleInterval<?> source) {
+
+	final int[] blockSize = new int[source.numDimensions()];
+	if (source instanceof AbstractCellImg<?, ?, ?, ?>)
+	  ((AbstractCellImg<?, ?, ?, ?>)source).getCellGrid().cellDimensions(blockSize);
+	else
+	  Arrays.fill(blockSize, DEFAULT_BLOCK_SIZE);
+	return blockSize;
+  }
+}
@@ -1,6 +1,7 @@
 package org.janelia.saalfeldlab.paintera.data.n5;
 
 import bdv.util.volatiles.SharedQueue;
+import bdv.util.volatiles.VolatileTypeMatcher;
 import bdv.viewer.Interpolation;
 import com.google.gson.annotations.Expose;
 import mpicbg.spim.data.sequence.VoxelDimensions;
@@ -8,7 +9,6 @@ import net.imglib2.Interval;
 import net.imglib2.RandomAccessible;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.RealRandomAccessible;
-import net.imglib2.Volatile;
 import net.imglib2.cache.Invalidate;
 import net.imglib2.converter.Converter;
 import net.imglib2.converter.Converters;
@@ -23,18 +23,18 @@ import net.imglib2.realtransform.AffineTransform3D;
 import net.imglib2.type.NativeType;
 import net.imglib2.type.numeric.RealType;
 import net.imglib2.type.volatiles.AbstractVolatileRealType;
-import net.imglib2.util.Intervals;
 import net.imglib2.util.Util;
 import net.imglib2.view.Views;
 import net.imglib2.view.composite.CompositeIntervalView;
 import net.imglib2.view.composite.RealComposite;
+import org.janelia.saalfeldlab.n5.DatasetAttributes;
 import org.janelia.saalfeldlab.n5.N5Reader;
 import org.janelia.saalfeldlab.n5.N5Writer;
+import org.janelia.saalfeldlab.n5.imglib2.N5Utils;
 import org.janelia.saalfeldlab.paintera.data.ChannelDataSource;
 import org.janelia.saalfeldlab.paintera.data.RandomAccessibleIntervalDataSource;
 import org.janelia.saalfeldlab.paintera.state.metadata.MetadataState;
 import org.janelia.saalfeldlab.util.n5.ImagesWithTransform;
-import org.janelia.saalfeldlab.util.n5.N5Data;
 import org.janelia.saalfeldlab.util.n5.N5Helpers;
 import org.janelia.saalfeldlab.util.n5.N5Types;
 import org.slf4j.Logger;
@@ -42,12 +42,12 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.lang.invoke.MethodHandles;
+import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.IntFunction;
 import java.util.function.Predicate;
-import java.util.stream.Collectors;
 import java.util.stream.LongStream;
 import java.util.stream.Stream;
 
@@ -88,13 +88,8 @@ public class N5ChannelDataSource<
 
   private final Converter<RealComposite<T>, VolatileWithSet<RealComposite<T>>> viewerConverter = (source, target) -> {
 	target.setT(source);
-	boolean isValid = true;
-	int numChannels = (int)this.numChannels();
-	// TODO exchange this with only check for first index if block size == num channels
-	for (int i = 0; i < numChannels && isValid; ++i) {
-	  isValid &= source.get(i).isValid();
-	}
-	target.setValid(isValid);
+	// all channels of a voxel share a cell and are either all valid or all invalid
+	target.setValid(source.get(0).isValid());
   };
 
   /**
@@ -121,26 +116,31 @@ public class N5ChannelDataSource<
 		  final long[] channels) throws
 		  IOException, DataTypeNotSupported {
 
-	final ImagesWithTransform<D, T>[] data = getData(
-			meta.getReader(),
-			meta.getDataset(),
-			transform,
-			queue,
-			priority);
-	final RandomAccessibleIntervalDataSource.DataWithInvalidate<D, T> dataWithInvalidate = RandomAccessibleIntervalDataSource.asDataWithInvalidate(data);
+	final Levels levels = levels(meta.getReader(), meta.getDataset(), transform);
+	this.channels = channels == null ? range((int)levels.firstLevelAttributes().getDimensions()[channelDimension]) : channels;
+	this.numChannels = this.channels.length;
+	final ImagesWithTransform<D, T>[] interleaved = new ImagesWithTransform[levels.datasets.length];
+	for (int level = 0; level < interleaved.length; ++level)
+	  interleaved[level] = InterleavedChannelLoader.interleave(
+			  levels.reader,
+			  levels.datasets[level],
+			  levels.transforms[level],
+			  channelDimension,
+			  this.channels,
+			  queue,
+			  priority,
+			  name + "/s" + level);
+	final RandomAccessibleIntervalDataSource.DataWithInvalidate<D, T> dataWithInvalidate = RandomAccessibleIntervalDataSource.asDataWithInvalidate(interleaved);
 	this.meta = meta;
 	this.channelDimension = channelDimension;
 	this.name = name;
 	this.transforms = dataWithInvalidate.transforms;
 	this.invalidate = dataWithInvalidate.invalidate;
 
-	this.channels = channels == null ? range((int)dataWithInvalidate.data[0].dimension(channelDimension)) : channels;
-	this.numChannels = this.channels.length;
-
-	this.intervals = dataWithInvalidate.data;
+	this.intervals = Stream.of(dataWithInvalidate.data).map(InterleavedChannelLoader::spatialInterval).toArray(Interval[]::new);
 	extension.setValid(true);
-	this.data = collapseDimension(dataWithInvalidate.data, this.channelDimension, this.channels, dataExtension);
-	this.viewerData = collapseDimension(dataWithInvalidate.viewData, this.channelDimension, this.channels, extension);
+	this.data = Stream.of(dataWithInvalidate.data).map(d -> InterleavedChannelLoader.collapseChannels(d, dataExtension)).toArray(RandomAccessible[]::new);
+	this.viewerData = Stream.of(dataWithInvalidate.viewData).map(d -> InterleavedChannelLoader.collapseChannels(d, extension)).toArray(RandomAccessible[]::new);
 
 	this.interpolation = ipol -> new NearestNeighborInterpolatorFactory<>();
 	this.viewerInterpolation = ipol -> Interpolation.NLINEAR.equals(ipol) ? new NLinearInterpolatorFactory<>() : new NearestNeighborInterpolatorFactory<>();
@@ -206,6 +206,7 @@ public class N5ChannelDataSource<
 	);
   }
 
+  @SuppressWarnings("unchecked")
   public static <
 		  D extends NativeType<D> & RealType<D>,
 		  T extends AbstractVolatileRealType<D, T> & NativeType<T>> N5ChannelDataSourceMetadata<D, T> extended(
@@ -220,15 +221,10 @@ public class N5ChannelDataSource<
 		  final Consumer<D> extendData,
 		  final Consumer<T> extendViewer) throws IOException, DataTypeNotSupported {
 
-	final ImagesWithTransform<D, T>[] data = getData(
-			meta.getReader(),
-			meta.getDataset(),
-			meta.getTransform(),
-			queue,
-			priority);
-	D d = Util.getTypeFromInterval(data[0].data).createVariable();
-	T t = Util.getTypeFromInterval(data[0].vdata).createVariable();
-	long numChannels = data[0].data.dimension(channelDimension);
+	final DatasetAttributes attributes = levels(meta.getReader(), meta.getDataset(), meta.getTransform()).firstLevelAttributes();
+	final D d = N5Utils.<D>type(attributes.getDataType());
+	final T t = (T)VolatileTypeMatcher.getVolatileTypeForType(d);
+	final long numChannels = attributes.getDimensions()[channelDimension];
 
 	LOG.debug("Channel dimension {} has {} channels", channelDimension, numChannels);
 	extendData.accept(d);
@@ -285,6 +281,7 @@ public class N5ChannelDataSource<
 			RealType::setZero);
   }
 
+  @SuppressWarnings("unchecked")
   public static <
 		  D extends NativeType<D> & RealType<D>,
 		  T extends AbstractVolatileRealType<D, T> & NativeType<T>> N5ChannelDataSourceMetadata<D, T> extended(
@@ -297,15 +294,10 @@ public class N5ChannelDataSource<
 		  final Consumer<D> extendData,
 		  final Consumer<T> extendViewer) throws IOException, DataTypeNotSupported {
 
-	final ImagesWithTransform<D, T>[] data = getData(
-			meta.getReader(),
-			meta.getDataset(),
-			meta.getTransform(),
-			queue,
-			priority);
-	D d = Util.getTypeFromInterval(data[0].data).createVariable();
-	T t = Util.getTypeFromInterval(data[0].vdata).createVariable();
-	long numChannels = data[0].data.dimension(channelDimension);
+	final DatasetAttributes attributes = levels(meta.getReader(), meta.getDataset(), meta.getTransform()).firstLevelAttributes();
+	final D d = N5Utils.<D>type(attributes.getDataType());
+	final T t = (T)VolatileTypeMatcher.getVolatileTypeForType(d);
+	final long numChannels = attributes.getDimensions()[channelDimension];
 
 	LOG.debug("Channel dimension {} has {} channels", channelDimension, numChannels);
 	extendData.accept(d);
@@ -413,38 +405,56 @@ public class N5ChannelDataSource<
 	return viewerData.length;
   }
 
-  @SuppressWarnings({"unchecked", "rawtypes"})
-  private static <
-		  D extends NativeType<D> & RealType<D>,
-		  T extends Volatile<D> & NativeType<T> & RealType<T>>
-  ImagesWithTransform<D, T>[] getData(
+  /**
+   * Datasets and transforms of all levels, highest resolution first.
+   */
+  private static final class Levels {
+
+	private final N5Reader reader;
+
+	private final String[] datasets;
+
+	private final AffineTransform3D[] transforms;
+
+	private Levels(final N5Reader reader, final String[] datasets, final AffineTransform3D[] transforms) {
+
+	  this.reader = reader;
+	  this.datasets = datasets;
+	  this.transforms = transforms;
+	}
+
+	private DatasetAttributes firstLevelAttributes() throws IOException {
+
+	  return reader.getDatasetAttributes(datasets[0]);
+	}
+  }
+
+  private static Levels levels(
 		  final N5Reader reader,
 		  final String dataset,
-		  final AffineTransform3D transform,
-		  final SharedQueue queue,
-		  final int priority) throws IOException, DataTypeNotSupported {
+		  final AffineTransform3D transform) throws IOException, DataTypeNotSupported {
 
-	if (N5Helpers.isPainteraDataset(reader, dataset)) {
-	  return getData(
-			  reader,
-			  dataset + "/" + N5Helpers.PAINTERA_DATA_DATASET,
-			  transform,
-			  queue,
-			  priority);
-	}
+	if (N5Helpers.isPainteraDataset(reader, dataset))
+	  return levels(reader, dataset + "/" + N5Helpers.PAINTERA_DATA_DATASET, transform);
 	final boolean isMultiscale = N5Helpers.isMultiScale(reader, dataset);
 	final boolean isLabelMultiset = N5Types.isLabelMultisetType(reader, dataset, isMultiscale);
 	if (isLabelMultiset)
 	  throw new DataTypeNotSupported("Label multiset data not supported!");
-
-	return isMultiscale
-			? N5Data.openRawMultiscale(reader, dataset, transform, queue, priority)
-			: new ImagesWithTransform[]{N5Data.openRaw(
-			reader,
-			dataset,
-			transform,
-			queue,
-			priority)};
+	if (!isMultiscale)
+	  return new Levels(reader, new String[]{dataset}, new AffineTransform3D[]{transform});
+
+	final String[] scaleDatasets = N5Helpers.listAndSortScaleDatasets(reader, dataset);
+	final String[] datasets = new String[scaleDatasets.length];
+	final AffineTransform3D[] transforms = new AffineTransform3D[scaleDatasets.length];
+	final double[] initialDownsamplingFactors = N5Helpers.getDownsamplingFactors(reader, Paths.get(dataset, scaleDatasets[0]).toString());
+	for (int level = 0; level < scaleDatasets.length; ++level) {
+	  datasets[level] = Paths.get(dataset, scaleDatasets[level]).toString();
+	  transforms[level] = N5Helpers.considerDownsampling(
+			  transform.copy(),
+			  N5Helpers.getDownsamplingFactors(reader, datasets[level]),
+			  initialDownsamplingFactors);
+	}
+	return new Levels(reader, datasets, transforms);
   }
 
   private static <D extends NativeType<D> & RealType<D>, T extends RealType<D>> RealComposite<D> createExtension(
@@ -502,41 +512,6 @@ public class N5ChannelDataSource<
 	return createExtension(extension.get(0).createVariable(), t, converter, size, extension::get);
   }
 
-  private static <T extends RealType<T>> RandomAccessible<RealComposite<T>>[] collapseDimension(
-		  final RandomAccessibleInterval<T>[] rais,
-		  final int dimension,
-		  final long[] channels,
-		  final T extension
-  ) {
-
-	return Stream.of(rais).map(rai -> collapseDimension(rai, dimension, channels, extension)).toArray(RandomAccessible[]::new);
-  }
-
-  private static <T extends RealType<T>> RandomAccessible<RealComposite<T>> collapseDimension(
-		  final RandomAccessibleInterval<T> rai,
-		  final int dimension,
-		  final long[] channels,
-		  final T extension
-  ) {
-
-	final int lastDim = rai.numDimensions() - 1;
-	final int numChannels = (int)rai.dimension(dimension);
-
-	long[] min = Intervals.minAsLongArray(rai);
-	long[] max = Intervals.maxAsLongArray(rai);
-
-	assert LongStream.of(channels).filter(c -> c > max[dimension] && c < min[dimension]).count() == 0;
-
-	final RandomAccessibleInterval<T> relevantRai = isFullRange(channels, numChannels)
-			? rai
-			: Views.stack(LongStream.of(channels).mapToObj(channel -> Views.hyperSlice(rai, dimension, channel)).collect(Collectors.toList()));
-
-	final RandomAccessible<T> ra = Views.extendValue(lastDim == dimension
-			? relevantRai
-			: Views.moveAxis(relevantRai, dimension, lastDim), extension);
-	return Views.collapseReal(ra, numChannels);
-  }
-
   private static long[] getChannels(final long min, final long max, boolean reverseChannelOrder) {
 
 	if (reverseChannelOrder)
@@ -545,19 +520,6 @@ public class N5ChannelDataSource<
 	  return LongStream.rangeClosed(min, max).toArray();
   }
 
-  private static boolean isFullRange(final long[] channels, final int dim) {
-
-	if (channels.length != dim)
-	  return false;
-
-	for (int n = 0; n < dim; ++n) {
-	  if (channels[n] != n)
-		return false;
-	}
-
-	return true;
-  }
-
   private static long[] range(final int stop) {
 
 	long[] range = new long[stop];
@@ -1,6 +1,7 @@
 package org.janelia.saalfeldlab.paintera.data.n5;
 
 import bdv.util.volatiles.SharedQueue;
+import bdv.util.volatiles.VolatileTypeMatcher;
 import bdv.viewer.Interpolation;
 import com.google.gson.annotations.Expose;
 import mpicbg.spim.data.sequence.VoxelDimensions;
@@ -8,7 +9,6 @@ import net.imglib2.Interval;
 import net.imglib2.RandomAccessible;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.RealRandomAccessible;
-import net.imglib2.Volatile;
 import net.imglib2.cache.Invalidate;
 import net.imglib2.converter.Converter;
 import net.imglib2.converter.Converters;
@@ -23,20 +23,19 @@ import net.imglib2.realtransform.AffineTransform3D;
 import net.imglib2.type.NativeType;
 import net.imglib2.type.numeric.RealType;
 import net.imglib2.type.volatiles.AbstractVolatileRealType;
-import net.imglib2.util.Intervals;
 import net.imglib2.util.Util;
 import net.imglib2.view.Views;
 import net.imglib2.view.composite.CompositeIntervalView;
 import net.imglib2.view.composite.RealComposite;
+import org.janelia.saalfeldlab.n5.DatasetAttributes;
 import org.janelia.saalfeldlab.n5.N5Reader;
 import org.janelia.saalfeldlab.n5.N5Writer;
+import org.janelia.saalfeldlab.n5.imglib2.N5Utils;
 import org.janelia.saalfeldlab.paintera.data.ChannelDataSource;
 import org.janelia.saalfeldlab.paintera.data.RandomAccessibleIntervalDataSource;
 import org.janelia.saalfeldlab.paintera.state.metadata.MetadataState;
 import org.janelia.saalfeldlab.paintera.state.metadata.MultiScaleMetadataState;
-import org.janelia.saalfeldlab.paintera.state.metadata.SingleScaleMetadataState;
 import org.janelia.saalfeldlab.util.n5.ImagesWithTransform;
-import org.janelia.saalfeldlab.util.n5.N5Data;
 import org.janelia.saalfeldlab.util.n5.metadata.N5PainteraDataMultiScaleGroup;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -49,7 +48,6 @@ import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.IntFunction;
 import java.util.function.Predicate;
-import java.util.stream.Collectors;
 import java.util.stream.LongStream;
 import java.util.stream.Stream;
 
@@ -90,13 +88,8 @@ public class N5ChannelDataSourceMetadata<
 
   private final Converter<RealComposite<T>, VolatileWithSet<RealComposite<T>>> viewerConverter = (source, target) -> {
 	target.setT(source);
-	boolean isValid = true;
-	int numChannels = (int)this.numChannels();
-	// TODO exchange this with only check for first index if block size == num channels
-	for (int i = 0; i < numChannels && isValid; ++i) {
-	  isValid &= source.get(i).isValid();
-	}
-	target.setValid(isValid);
+	// all channels of a voxel share a cell and are either all valid or all invalid
+	target.setValid(source.get(0).isValid());
   };
 
   /**
@@ -121,24 +114,31 @@ public class N5ChannelDataSourceMetadata<
 		  final long[] channels) throws
 		  IOException, DataTypeNotSupported {
 
-	final ImagesWithTransform<D, T>[] data = getData(
-			metadataState,
-			queue,
-			priority);
-	final RandomAccessibleIntervalDataSource.DataWithInvalidate<D, T> dataWithInvalidate = RandomAccessibleIntervalDataSource.asDataWithInvalidate(data);
+	final Levels levels = levels(metadataState);
+	this.channels = channels == null ? range((int)levels.firstLevelAttributes().getDimensions()[channelDimension]) : channels;
+	this.numChannels = this.channels.length;
+	final ImagesWithTransform<D, T>[] interleaved = new ImagesWithTransform[levels.datasets.length];
+	for (int level = 0; level < interleaved.length; ++level)
+	  interleaved[level] = InterleavedChannelLoader.interleave(
+			  levels.reader,
+			  levels.datasets[level],
+			  levels.transforms[level],
+			  channelDimension,
+			  this.channels,
+			  queue,
+			  priority,
+			  name + "/s" + level);
+	final RandomAccessibleIntervalDataSource.DataWithInvalidate<D, T> dataWithInvalidate = RandomAccessibleIntervalDataSource.asDataWithInvalidate(interleaved);
 	this.metadataState = metadataState;
 	this.channelDimension = channelDimension;
 	this.name = name;
 	this.transforms = dataWithInvalidate.transforms;
 	this.invalidate = dataWithInvalidate.invalidate;
 
-	this.channels = channels == null ? range((int)dataWithInvalidate.data[0].dimension(channelDimension)) : channels;
-	this.numChannels = this.channels.length;
-
-	this.intervals = dataWithInvalidate.data;
+	this.intervals = Stream.of(dataWithInvalidate.data).map(InterleavedChannelLoader::spatialInterval).toArray(Interval[]::new);
 	extension.setValid(true);
-	this.data = collapseDimension(dataWithInvalidate.data, this.channelDimension, this.channels, dataExtension);
-	this.viewerData = collapseDimension(dataWithInvalidate.viewData, this.channelDimension, this.channels, extension);
+	this.data = Stream.of(dataWithInvalidate.data).map(d -> InterleavedChannelLoader.collapseChannels(d, dataExtension)).toArray(RandomAccessible[]::new);
+	this.viewerData = Stream.of(dataWithInvalidate.viewData).map(d -> InterleavedChannelLoader.collapseChannels(d, extension)).toArray(RandomAccessible[]::new);
 
 	this.interpolation = ipol -> new NearestNeighborInterpolatorFactory<>();
 	this.viewerInterpolation = ipol -> Interpolation.NLINEAR.equals(ipol) ? new NLinearInterpolatorFactory<>() : new NearestNeighborInterpolatorFactory<>();
@@ -204,6 +204,7 @@ public class N5ChannelDataSourceMetadata<
 	);
   }
 
+  @SuppressWarnings("unchecked")
   public static <
 		  D extends NativeType<D> & RealType<D>,
 		  T extends AbstractVolatileRealType<D, T> & NativeType<T>> N5ChannelDataSourceMetadata<D, T> extended(
@@ -218,13 +219,10 @@ public class N5ChannelDataSourceMetadata<
 		  final Consumer<D> extendData,
 		  final Consumer<T> extendViewer) throws IOException, DataTypeNotSupported {
 
-	final ImagesWithTransform<D, T>[] data = getData(
-			metadataState,
-			queue,
-			priority);
-	D d = Util.getTypeFromInterval(data[0].data).createVariable();
-	T t = Util.getTypeFromInterval(data[0].vdata).createVariable();
-	long numChannels = data[0].data.dimension(channelDimension);
+	final DatasetAttributes attributes = levels(metadataState).firstLevelAttributes();
+	final D d = N5Utils.<D>type(attributes.getDataType());
+	final T t = (T)VolatileTypeMatcher.getVolatileTypeForType(d);
+	final long numChannels = attributes.getDimensions()[channelDimension];
 
 	LOG.debug("Channel dimension {} has {} channels", channelDimension, numChannels);
 	extendData.accept(d);
@@ -280,6 +278,7 @@ public class N5ChannelDataSourceMetadata<
 			RealType::setZero);
   }
 
+  @SuppressWarnings("unchecked")
   public static <
 		  D extends NativeType<D> & RealType<D>,
 		  T extends AbstractVolatileRealType<D, T> & NativeType<T>> N5ChannelDataSourceMetadata<D, T> extended(
@@ -292,13 +291,10 @@ public class N5ChannelDataSourceMetadata<
 		  final Consumer<D> extendData,
 		  final Consumer<T> extendViewer) throws IOException, DataTypeNotSupported {
 
-	final ImagesWithTransform<D, T>[] data = getData(
-			metadataState,
-			queue,
-			priority);
-	D d = Util.getTypeFromInterval(data[0].data).createVariable();
-	T t = Util.getTypeFromInterval(data[0].vdata).createVariable();
-	long numChannels = data[0].data.dimension(channelDimension);
+	final DatasetAttributes attributes = levels(metadataState).firstLevelAttributes();
+	final D d = N5Utils.<D>type(attributes.getDataType());
+	final T t = (T)VolatileTypeMatcher.getVolatileTypeForType(d);
+	final long numChannels = attributes.getDimensions()[channelDimension];
 
 	LOG.debug("Channel dimension {} has {} channels", channelDimension, numChannels);
 	extendData.accept(d);
@@ -407,33 +403,46 @@ public class N5ChannelDataSourceMetadata<
 	return viewerData.length;
   }
 
-  @SuppressWarnings({"unchecked", "rawtypes"})
-  private static <
-		  D extends NativeType<D> & RealType<D>,
-		  T extends Volatile<D> & NativeType<T> & RealType<T>>
-  ImagesWithTransform<D, T>[] getData(
-		  final MetadataState metadataState,
-		  final SharedQueue queue,
-		  final int priority) throws IOException, DataTypeNotSupported {
+  /**
+   * Datasets and transforms of all levels, highest resolution first.
+   */
+  private static final class Levels {
 
-	final var metadata = metadataState.getMetadata();
-	final boolean isLabelMultiset = metadataState.isLabelMultiset();
+	private final N5Reader reader;
+
+	private final String[] datasets;
+
+	private final AffineTransform3D[] transforms;
+
+	private Levels(final N5Reader reader, final String[] datasets, final AffineTransform3D[] transforms) {
+
+	  this.reader = reader;
+	  this.datasets = datasets;
+	  this.transforms = transforms;
+	}
+
+	private DatasetAttributes firstLevelAttributes() throws IOException {
+
+	  return reader.getDatasetAttributes(datasets[0]);
+	}
+  }
+
+  private static Levels levels(final MetadataState metadataState) throws DataTypeNotSupported {
 
+	final var metadata = metadataState.getMetadata();
 	if (metadata instanceof N5PainteraDataMultiScaleGroup) {
 	  final var metadataAsPainteraDataGroup = (N5PainteraDataMultiScaleGroup)metadata;
-	  final var dataMetadataState = new MultiScaleMetadataState(metadataState.getN5ContainerState(), metadataAsPainteraDataGroup.getDataGroupMetadata());
-	  return getData(
-			  dataMetadataState,
-			  queue,
-			  priority);
+	  return levels(new MultiScaleMetadataState(metadataState.getN5ContainerState(), metadataAsPainteraDataGroup.getDataGroupMetadata()));
 	}
 
-	if (isLabelMultiset)
+	if (metadataState.isLabelMultiset())
 	  throw new DataTypeNotSupported("Label multiset data not supported!");
 
-	return (metadataState instanceof MultiScaleMetadataState)
-			? N5Data.openRawMultiscale((MultiScaleMetadataState)metadataState, queue, priority)
-			: new ImagesWithTransform[]{N5Data.openRaw((SingleScaleMetadataState)metadataState, queue, priority)};
+	if (metadataState instanceof MultiScaleMetadataState) {
+	  final var multiScaleMetadata = ((MultiScaleMetadataState)metadataState).getMetadata();
+	  return new Levels(metadataState.getReader(), multiScaleMetadata.getPaths(), multiScaleMetadata.spatialTransforms3d());
+	}
+	return new Levels(metadataState.getReader(), new String[]{metadataState.getGroup()}, new AffineTransform3D[]{metadataState.getTransform()});
   }
 
   private static <D extends NativeType<D> & RealType<D>, T extends RealType<D>> RealComposite<D> createExtension(
@@ -491,41 +500,6 @@ public class N5ChannelDataSourceMetadata<
 	return createExtension(extension.get(0).createVariable(), t, converter, size, extension::get);
   }
 
-  private static <T extends RealType<T>> RandomAccessible<RealComposite<T>>[] collapseDimension(
-		  final RandomAccessibleInterval<T>[] rais,
-		  final int dimension,
-		  final long[] channels,
-		  final T extension
-  ) {
-
-	return Stream.of(rais).map(rai -> collapseDimension(rai, dimension, channels, extension)).toArray(RandomAccessible[]::new);
-  }
-
-  private static <T extends RealType<T>> RandomAccessible<RealComposite<T>> collapseDimension(
-		  final RandomAccessibleInterval<T> rai,
-		  final int dimension,
-		  final long[] channels,
-		  final T extension
-  ) {
-
-	final int lastDim = rai.numDimensions() - 1;
-	final int numChannels = (int)rai.dimension(dimension);
-
-	long[] min = Intervals.minAsLongArray(rai);
-	long[] max = Intervals.maxAsLongArray(rai);
-
-	assert LongStream.of(channels).filter(c -> c > max[dimension] && c < min[dimension]).count() == 0;
-
-	final RandomAccessibleInterval<T> relevantRai = isFullRange(channels, numChannels)
-			? rai
-			: Views.stack(LongStream.of(channels).mapToObj(channel -> Views.hyperSlice(rai, dimension, channel)).collect(Collectors.toList()));
-
-	final RandomAccessible<T> ra = Views.extendValue(lastDim == dimension
-			? relevantRai
-			: Views.moveAxis(relevantRai, dimension, lastDim), extension);
-	return Views.collapseReal(ra, numChannels);
-  }
-
   private static long[] getChannels(final long min, final long max, boolean reverseChannelOrder) {
 
 	if (reverseChannelOrder)
@@ -534,19 +508,6 @@ public class N5ChannelDataSourceMetadata<
 	  return LongStream.rangeClosed(min, max).toArray();
   }
 
-  private static boolean isFullRange(final long[] channels, final int dim) {
-
-	if (channels.length != dim)
-	  return false;
-
-	for (int n = 0; n < dim; ++n) {
-	  if (channels[n] != n)
-		return false;
-	}
-
-	return true;
-  }
-
   private static long[] range(final int stop) {
 
 	long[] range = new long[stop];
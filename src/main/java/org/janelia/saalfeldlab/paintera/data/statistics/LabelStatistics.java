@@ -0,0 +1,153 @@
+package org.janelia.saalfeldlab.paintera.data.statistics;
+
+import gnu.trove.iterator.TLongObjectIterator;
+import gnu.trove.list.array.TLongArrayList;
+import gnu.trove.map.TLongObjectMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.Localizable;
+
+import java.util.Arrays;
+
+/**
+ * Voxel count, bounding box, and centroid of a label. Statistics of a label in multiple blocks, or of multiple
+ * fragments of a segment, are combined with {@link #add(LabelStatistics)}.
+ * <p>
+ * Instances returned by {@link SegmentStatisticsService} are shared and must not be modified.
+ */
+public class LabelStatistics {
+
+  private long count = 0;
+
+  private final long[] min;
+
+  private final long[] max;
+
+  /* sum of all voxel positions, for the centroid */
+  private final long[] sum;
+
+  public LabelStatistics(final int numDimensions) {
+
+	this.min = new long[numDimensions];
+	this.max = new long[numDimensions];
+	this.sum = new long[numDimensions];
+	Arrays.fill(min, Long.MAX_VALUE);
+	Arrays.fill(max, Long.MIN_VALUE);
+  }
+
+  /**
+   * @param position voxel position
+   * @param count    number of voxels of this label at {@code position}, greater than one only for label multisets
+   */
+  public void add(final Localizable position, final long count) {
+
+	this.count += count;
+	for (int d = 0; d < min.length; ++d) {
+	  final long p = position.getLongPosition(d);
+	  min[d] = Math.min(min[d], p);
+	  max[d] = Math.max(max[d], p);
+	  sum[d] += p * count;
+	}
+  }
+
+  public void add(final LabelStatistics other) {
+
+	this.count += other.count;
+	for (int d = 0; d < min.length; ++d) {
+	  min[d] = Math.min(min[d], other.min[d]);
+	  max[d] = Math.max(max[d], other.max[d]);
+	  sum[d] += other.sum[d];
+	}
+  }
+
+  public long getCount() {
+
+	return count;
+  }
+
+  public int numDimensions() {
+
+	return min.length;
+  }
+
+  /**
+   * @return bounding box of all voxels, or {@code null} if there are no voxels
+   */
+  public Interval getBoundingBox() {
+
+	return count == 0 ? null : new FinalInterval(min, max);
+  }
+
+  /**
+   * @return mean position of all voxels, or {@code null} if there are no voxels
+   */
+  public double[] getCentroid() {
+
+	if (count == 0)
+	  return null;
+	final double[] centroid = new double[sum.length];
+	Arrays.setAll(centroid, d -> sum[d] / (double)count);
+	return centroid;
+  }
+
+  public LabelStatistics copy() {
+
+	final LabelStatistics copy = new LabelStatistics(min.length);
+	copy.add(this);
+	return copy;
+  }
+
+  /**
+   * Add a voxel of {@code id} to the statistics in {@code statisticsById}.
+   */
+  public static void add(final TLongObjectMap<LabelStatistics> statisticsById, final long id, final Localizable position, final long count) {
+
+	LabelStatistics statistics = statisticsById.get(id);
+	if (statistics == null) {
+	  statistics = new LabelStatistics(position.numDimensions());
+	  statisticsById.put(id, statistics);
+	}
+	statistics.add(position, count);
+  }
+
+  /**
+   * Encode statistics of all labels as {@code 2 + 3 * numDimensions} values per label: id, count, min, max, and sum of
+   * positions.
+   */
+  public static long[] encode(final TLongObjectMap<LabelStatistics> statisticsById, final int numDimensions) {
+
+	final TLongArrayList data = new TLongArrayList(statisticsById.size() * (2 + 3 * numDimensions));
+	for (final TLongObjectIterator<LabelStatistics> it = statisticsById.iterator(); it.hasNext(); ) {
+	  it.advance();
+	  final LabelStatistics statistics = it.value();
+	  data.add(it.key());
+	  data.add(statistics.count);
+	  data.add(statistics.min);
+	  data.add(statistics.max);
+	  data.add(statistics.sum);
+	}
+	return data.toArray();
+  }
+
+  public static TLongObjectMap<LabelStatistics> decode(final long[] data, final int numDimensions) {
+
+	final int stride = 2 + 3 * numDimensions;
+	final TLongObjectMap<LabelStatistics> statisticsById = new TLongObjectHashMap<>();
+	for (int offset = 0; offset + stride <= data.length; offset += stride) {
+	  final LabelStatistics statistics = new LabelStatistics(numDimensions);
+	  statistics.count = data[offset + 1];
+	  System.arraycopy(data, offset + 2, statistics.min, 0, numDimensions);
+	  System.arraycopy(data, offset + 2 + numDimensions, statistics.max, 0, numDimensions);
+	  System.arraycopy(data, offset + 2 + 2 * numDimensions, statistics.sum, 0, numDimensions);
+	  statisticsById.put(data[offset], statistics);
+	}
+	return statisticsById;
+  }
+
+  @Override
+  public String toString() {
+
+	return String.format("{LabelStatistics: count=%d min=%s max=%s}", count, Arrays.toString(min), Arrays.toString(max));
+  }
+}
@@ -0,0 +1,476 @@
+package org.janelia.saalfeldlab.paintera.data.statistics;
+
+import gnu.trove.iterator.TLongIterator;
+import gnu.trove.iterator.TLongObjectIterator;
+import gnu.trove.map.TLongObjectMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import gnu.trove.set.TLongSet;
+import gnu.trove.set.hash.TLongHashSet;
+import net.imglib2.Cursor;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.cache.Invalidate;
+import net.imglib2.cache.img.CachedCellImg;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.type.label.Label;
+import net.imglib2.type.label.LabelMultisetType;
+import net.imglib2.type.numeric.IntegerType;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+import org.janelia.saalfeldlab.n5.N5Reader;
+import org.janelia.saalfeldlab.paintera.cache.NoOpInvalidate;
+import org.janelia.saalfeldlab.paintera.control.assignment.FragmentSegmentAssignmentState;
+import org.janelia.saalfeldlab.paintera.data.mask.persist.PersistCanvas;
+import org.janelia.saalfeldlab.util.NamedThreadFactory;
+import org.janelia.saalfeldlab.util.n5.N5Data;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Voxel count, bounding box, and centroid of each fragment and segment of a label dataset.
+ * <p>
+ * Statistics are collected per block of the finest level and stored in a {@link SegmentStatisticsStore}, so all blocks
+ * are scanned only once per dataset. Only the aggregated statistics of each fragment, the blocks that contain each
+ * fragment, and a bounded number of recently used per-block statistics are held in memory. Segment statistics are
+ * aggregated from fragment statistics through the fragment-segment assignment when requested. Committing the canvas
+ * only updates the statistics of committed blocks, see {@link #update(TLongObjectMap)}.
+ * <p>
+ * Lookups return {@code null} for labels that have not been scanned yet, check {@link #isComplete()}.
+ */
+public class SegmentStatisticsService {
+
+  private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  public static final int DEFAULT_BATCH_SIZE = 1024;
+
+  /**
+   * Number of per-block statistics that are held in memory, all other blocks are read from the store when fragments
+   * that they contain need to be aggregated again.
+   */
+  private static final int NUM_CACHED_BLOCKS = 256;
+
+  private final RandomAccessibleInterval<?> data;
+
+  private final Invalidate<Long> invalidateData;
+
+  private final CellGrid grid;
+
+  private final SegmentStatisticsStore store;
+
+  private final FragmentSegmentAssignmentState assignment;
+
+  private final int numThreads;
+
+  private final int batchSize;
+
+  /* labels in each scanned block, guarded by this */
+  private final TLongObjectMap<long[]> labelsByBlock = new TLongObjectHashMap<>();
+
+  /* statistics of all labels in recently scanned or updated blocks, guarded by this */
+  private final Map<Long, TLongObjectMap<LabelStatistics>> cachedBlocks = new LinkedHashMap<Long, TLongObjectMap<LabelStatistics>>(16, 0.75f, true) {
+
+	@Override
+	protected boolean removeEldestEntry(final Map.Entry<Long, TLongObjectMap<LabelStatistics>> eldest) {
+
+	  return size() > NUM_CACHED_BLOCKS;
+	}
+  };
+
+  /* blocks that contain each label, guarded by this */
+  private final TLongObjectMap<TLongSet> blocksByLabel = new TLongObjectHashMap<>();
+
+  /* statistics of each label over all blocks, guarded by this */
+  private final TLongObjectMap<LabelStatistics> statisticsByFragment = new TLongObjectHashMap<>();
+
+  /* replaced instead of cleared whenever fragments or the assignment change, so that a lookup that aggregated the
+   * previous state cannot put its result into the current map */
+  private volatile Map<Long, LabelStatistics> statisticsBySegment = new ConcurrentHashMap<>();
+
+  private final ExecutorService updateExecutor = Executors.newSingleThreadExecutor(new NamedThreadFactory("segment-statistics-update-%d", true));
+
+  private volatile boolean isComplete = false;
+
+  private volatile boolean isCanceled = false;
+
+  /**
+   * @param data       label data of the finest level. Pixels must be {@link IntegerType} or {@link LabelMultisetType}.
+   * @param store      persisted per-block statistics, with the grid of {@code data}
+   * @param assignment fragment-segment assignment that defines segments
+   * @param numThreads number of threads for scanning blocks
+   * @param batchSize  number of blocks that are scanned in parallel at a time
+   */
+  public SegmentStatisticsService(
+		  final RandomAccessibleInterval<?> data,
+		  final SegmentStatisticsStore store,
+		  final FragmentSegmentAssignmentState assignment,
+		  final int numThreads,
+		  final int batchSize) {
+
+	this(data, new NoOpInvalidate<>(), store, assignment, numThreads, batchSize);
+  }
+
+  /**
+   * @param data           label data of the finest level. Pixels must be {@link IntegerType} or {@link LabelMultisetType}.
+   * @param invalidateData invalidate cached blocks of {@code data} by block index before committed blocks are scanned
+   *                       again
+   * @param store          persisted per-block statistics, with the grid of {@code data}
+   * @param assignment     fragment-segment assignment that defines segments
+   * @param numThreads     number of threads for scanning blocks
+   * @param batchSize      number of blocks that are scanned in parallel at a time
+   */
+  public SegmentStatisticsService(
+		  final RandomAccessibleInterval<?> data,
+		  final Invalidate<Long> invalidateData,
+		  final SegmentStatisticsStore store,
+		  final FragmentSegmentAssignmentState assignment,
+		  final int numThreads,
+		  final int batchSize) {
+
+	this.data = data;
+	this.invalidateData = invalidateData;
+	this.grid = store.getGrid();
+	this.store = store;
+	this.assignment = assignment;
+	this.numThreads = Math.max(numThreads, 1);
+	this.batchSize = Math.max(batchSize, 1);
+	this.assignment.addListener(obs -> invalidateSegmentStatistics());
+  }
+
+  /**
+   * Create a service that scans the label data in {@code dataset}. Blocks are read from {@code reader} directly and not
+   * through the caches of the displayed source, see {@link N5Data#openLabelsWithBoundedCache}.
+   *
+   * @param dataset finest level of the label data
+   * @return service with {@link #DEFAULT_BATCH_SIZE} and half of the available processors
+   * @throws IOException if the label data cannot be opened
+   */
+  public static SegmentStatisticsService fromN5(
+		  final N5Reader reader,
+		  final String dataset,
+		  final SegmentStatisticsStore store,
+		  final FragmentSegmentAssignmentState assignment) throws IOException {
+
+	final int numThreads = Math.max(Runtime.getRuntime().availableProcessors() / 2, 1);
+	final CachedCellImg<?, ?> data = N5Data.openLabelsWithBoundedCache(reader, dataset, 2 * numThreads);
+	return new SegmentStatisticsService(data, data.getCache(), store, assignment, numThreads, DEFAULT_BATCH_SIZE);
+  }
+
+  public SegmentStatisticsStore getStore() {
+
+	return store;
+  }
+
+  /**
+   * Read or compute the statistics of all blocks on a background thread.
+   *
+   * @param onComplete called after the statistics of all blocks are available
+   * @return future that completes once all blocks are scanned, or exceptionally if scanning failed
+   */
+  public CompletableFuture<Void> start(final Runnable onComplete) {
+
+	final CompletableFuture<Void> future = new CompletableFuture<>();
+	final Thread thread = new NamedThreadFactory("segment-statistics-%d", true, Thread.MIN_PRIORITY).newThread(() -> {
+	  try {
+		scan();
+		if (isComplete)
+		  onComplete.run();
+		future.complete(null);
+	  } catch (final Throwable e) {
+		LOG.error("Unable to compute segment statistics", e);
+		future.completeExceptionally(e);
+	  }
+	});
+	thread.start();
+	return future;
+  }
+
+  /**
+   * Stop scanning after the current batch. Statistics of scanned blocks are stored and are not scanned again.
+   */
+  public void cancel() {
+
+	isCanceled = true;
+	updateExecutor.shutdown();
+  }
+
+  public boolean isComplete() {
+
+	return isComplete;
+  }
+
+  /**
+   * @return statistics of {@code fragment}, or {@code null} if it was not found in any block
+   */
+  public synchronized LabelStatistics getFragmentStatistics(final long fragment) {
+
+	return statisticsByFragment.get(fragment);
+  }
+
+  /**
+   * @return statistics of all fragments of {@code segment}, or {@code null} if none of them were found in any block
+   */
+  public LabelStatistics getSegmentStatistics(final long segment) {
+
+	final Map<Long, LabelStatistics> statisticsBySegment = this.statisticsBySegment;
+	final LabelStatistics cached = statisticsBySegment.get(segment);
+	if (cached != null)
+	  return cached;
+
+	LabelStatistics statistics = null;
+	synchronized (this) {
+	  for (final TLongIterator it = assignment.getFragments(segment).iterator(); it.hasNext(); ) {
+		final LabelStatistics fragmentStatistics = statisticsByFragment.get(it.next());
+		if (fragmentStatistics == null)
+		  continue;
+		if (statistics == null)
+		  statistics = new LabelStatistics(fragmentStatistics.numDimensions());
+		statistics.add(fragmentStatistics);
+	  }
+	}
+	/* incomplete statistics are not cached so they are aggregated again once more blocks are scanned */
+	if (statistics != null && isComplete)
+	  statisticsBySegment.put(segment, statistics);
+	return statistics;
+  }
+
+  /**
+   * Update the statistics of blocks that were committed, in the background. Block diffs that carry
+   * {@link PersistCanvas.BlockDiff#getLabelStatistics() statistics} are used as is, all other blocks are scanned again.
+   *
+   * @param blockDiffs block diffs of the finest level, as returned by {@link PersistCanvas#persistCanvas}
+   * @return future that completes once the statistics are updated, or {@code null} if this service was canceled
+   */
+  public Future<?> update(final TLongObjectMap<PersistCanvas.BlockDiff> blockDiffs) {
+
+	if (isCanceled)
+	  return null;
+	final long[] blocks = blockDiffs.keys();
+	final List<TLongObjectMap<LabelStatistics>> precomputed = new ArrayList<>();
+	for (final long block : blocks)
+	  precomputed.add(blockDiffs.get(block).getLabelStatistics());
+
+	return updateExecutor.submit(() -> {
+	  try {
+		for (int i = 0; i < blocks.length; ++i) {
+		  TLongObjectMap<LabelStatistics> statistics = precomputed.get(i);
+		  if (statistics == null) {
+			invalidateData.invalidate(blocks[i]);
+			statistics = computeBlockStatistics(Views.interval(data, blockInterval(grid, blocks[i])));
+			store.write(blocks[i], statistics);
+		  }
+		  replaceBlock(blocks[i], statistics);
+		}
+		LOG.debug("Updated segment statistics for {} blocks", blocks.length);
+	  } catch (final IOException | RuntimeException e) {
+		LOG.error("Unable to update segment statistics for blocks {}", blocks, e);
+	  }
+	});
+  }
+
+  /**
+   * Read or compute the statistics of all blocks on the calling thread.
+   *
+   * @throws IOException if statistics cannot be read or written
+   */
+  public void scan() throws IOException {
+
+	final long numBlocks = Intervals.numElements(grid.getGridDimensions());
+	LOG.info("Collecting segment statistics for {} blocks", numBlocks);
+	final ExecutorService es = Executors.newFixedThreadPool(numThreads, new NamedThreadFactory("segment-statistics-worker-%d", true, Thread.MIN_PRIORITY));
+	try {
+	  for (long start = 0; start < numBlocks; start += batchSize) {
+		if (isCanceled) {
+		  LOG.info("Canceled collecting segment statistics at block {}/{}", start, numBlocks);
+		  return;
+		}
+		final long stop = Math.min(start + batchSize, numBlocks);
+		final List<Callable<Void>> tasks = new ArrayList<>();
+		final long step = Math.max((stop - start + numThreads - 1) / numThreads, 1);
+		for (long taskStart = start; taskStart < stop; taskStart += step) {
+		  final long from = taskStart;
+		  final long to = Math.min(taskStart + step, stop);
+		  tasks.add(() -> {
+			for (long block = from; block < to && !isCanceled; ++block) {
+			  TLongObjectMap<LabelStatistics> statistics = store.read(block);
+			  if (statistics == null) {
+				statistics = computeBlockStatistics(Views.interval(data, blockInterval(grid, block)));
+				store.write(block, statistics);
+			  }
+			  addBlock(block, statistics);
+			}
+			return null;
+		  });
+		}
+		invokeAll(es, tasks);
+	  }
+	} finally {
+	  es.shutdownNow();
+	}
+	isComplete = !isCanceled;
+	invalidateSegmentStatistics();
+	LOG.info("Finished collecting segment statistics for {} blocks", numBlocks);
+  }
+
+  /**
+   * Collect the statistics of all regular labels in {@code block}, consistent with the label-to-block lookup.
+   *
+   * @param block label data with pixels of {@link IntegerType} or {@link LabelMultisetType}
+   */
+  public static TLongObjectMap<LabelStatistics> computeBlockStatistics(final RandomAccessibleInterval<?> block) {
+
+	final TLongObjectMap<LabelStatistics> statisticsById = new TLongObjectHashMap<>();
+	final Cursor<?> cursor = Views.flatIterable(block).localizingCursor();
+	while (cursor.hasNext()) {
+	  final Object pixel = cursor.next();
+	  if (pixel instanceof LabelMultisetType) {
+		for (final LabelMultisetType.Entry<Label> entry : ((LabelMultisetType)pixel).entrySet())
+		  addIfRegular(statisticsById, entry.getElement().id(), cursor, entry.getCount());
+	  } else
+		addIfRegular(statisticsById, ((IntegerType<?>)pixel).getIntegerLong(), cursor, 1);
+	}
+	return statisticsById;
+  }
+
+  private static void addIfRegular(final TLongObjectMap<LabelStatistics> statisticsById, final long id, final Cursor<?> position, final long count) {
+
+	if (id != Label.BACKGROUND && Label.regular(id))
+	  LabelStatistics.add(statisticsById, id, position, count);
+  }
+
+  private void invalidateSegmentStatistics() {
+
+	statisticsBySegment = new ConcurrentHashMap<>();
+  }
+
+  private synchronized void addBlock(final long block, final TLongObjectMap<LabelStatistics> statistics) {
+
+	if (labelsByBlock.containsKey(block)) {
+	  /* updated by a commit while scanning */
+	  return;
+	}
+	labelsByBlock.put(block, statistics.keys());
+	cachedBlocks.put(block, statistics);
+	for (final TLongObjectIterator<LabelStatistics> it = statistics.iterator(); it.hasNext(); ) {
+	  it.advance();
+	  blocksOf(it.key()).add(block);
+	  /* statistics that were returned by lookups must not change */
+	  final LabelStatistics fragmentStatistics = it.value().copy();
+	  final LabelStatistics previous = statisticsByFragment.get(it.key());
+	  if (previous != null)
+		fragmentStatistics.add(previous);
+	  statisticsByFragment.put(it.key(), fragmentStatistics);
+	}
+  }
+
+  private synchronized void replaceBlock(final long block, final TLongObjectMap<LabelStatistics> statistics) throws IOException {
+
+	final long[] previous = labelsByBlock.get(block);
+	final TLongSet removedLabels = new TLongHashSet(previous == null ? new long[0] : previous);
+	removedLabels.removeAll(statistics.keySet());
+	final TLongSet affectedLabels = new TLongHashSet(statistics.keySet());
+	affectedLabels.addAll(removedLabels);
+
+	/* bounding boxes cannot be shrunk incrementally, aggregate affected labels again from their blocks before
+	 * changing any state, so that a block that cannot be read does not leave partial statistics behind */
+	final TLongObjectMap<LabelStatistics> updatedFragments = new TLongObjectHashMap<>();
+	for (final TLongIterator it = affectedLabels.iterator(); it.hasNext(); ) {
+	  final long label = it.next();
+	  final TLongSet blocks = new TLongHashSet(blocksOf(label));
+	  blocks.remove(block);
+	  if (statistics.containsKey(label))
+		blocks.add(block);
+	  if (blocks.isEmpty()) {
+		updatedFragments.put(label, null);
+		continue;
+	  }
+	  final LabelStatistics fragmentStatistics = new LabelStatistics(grid.numDimensions());
+	  for (final TLongIterator blockIt = blocks.iterator(); blockIt.hasNext(); ) {
+		final long other = blockIt.next();
+		fragmentStatistics.add((other == block ? statistics : getBlockStatistics(other)).get(label));
+	  }
+	  updatedFragments.put(label, fragmentStatistics);
+	}
+
+	labelsByBlock.put(block, statistics.keys());
+	cachedBlocks.put(block, statistics);
+	for (final TLongIterator it = removedLabels.iterator(); it.hasNext(); )
+	  blocksOf(it.next()).remove(block);
+	for (final TLongIterator it = statistics.keySet().iterator(); it.hasNext(); )
+	  blocksOf(it.next()).add(block);
+	for (final TLongObjectIterator<LabelStatistics> it = updatedFragments.iterator(); it.hasNext(); ) {
+	  it.advance();
+	  if (it.value() == null) {
+		blocksByLabel.remove(it.key());
+		statisticsByFragment.remove(it.key());
+	  } else
+		statisticsByFragment.put(it.key(), it.value());
+	}
+	invalidateSegmentStatistics();
+  }
+
+  /**
+   * @return statistics of a scanned block from memory if it was used recently, from the store otherwise
+   */
+  private TLongObjectMap<LabelStatistics> getBlockStatistics(final long block) throws IOException {
+
+	TLongObjectMap<LabelStatistics> statistics = cachedBlocks.get(block);
+	if (statistics == null) {
+	  statistics = store.read(block);
+	  if (statistics == null)
+		throw new IOException("Segment statistics of block " + block + " are missing in the store");
+	  cachedBlocks.put(block, statistics);
+	}
+	return statistics;
+  }
+
+  private TLongSet blocksOf(final long label) {
+
+	TLongSet blocks = blocksByLabel.get(label);
+	if (blocks == null) {
+	  blocks = new TLongHashSet();
+	  blocksByLabel.put(label, blocks);
+	}
+	return blocks;
+  }
+
+  private static void invokeAll(final ExecutorService es, final List<Callable<Void>> tasks) throws IOException {
+
+	try {
+	  for (final Future<Void> future : es.invokeAll(tasks))
+		future.get();
+	} catch (final InterruptedException e) {
+	  Thread.currentThread().interrupt();
+	  throw new IOException("Interrupted while collecting segment statistics", e);
+	} catch (final ExecutionException e) {
+	  throw e.getCause() instanceof IOException ? (IOException)e.getCause() : new IOException(e.getCause());
+	}
+  }
+
+  static Interval blockInterval(final CellGrid grid, final long blockIndex) {
+
+	final long[] gridPosition = new long[grid.numDimensions()];
+	final long[] min = new long[grid.numDimensions()];
+	final int[] size = new int[grid.numDimensions()];
+	grid.getCellGridPositionFlat(blockIndex, gridPosition);
+	grid.getCellDimensions(gridPosition, min, size);
+	final long[] max = new long[min.length];
+	for (int d = 0; d < max.length; ++d)
+	  max[d] = min[d] + size[d] - 1;
+	return new FinalInterval(min, max);
+  }
+}
@@ -0,0 +1,105 @@
+package org.janelia.saalfeldlab.paintera.data.statistics;
+
+import gnu.trove.map.TLongObjectMap;
+import net.imglib2.img.cell.CellGrid;
+import org.janelia.saalfeldlab.n5.DataBlock;
+import org.janelia.saalfeldlab.n5.DataType;
+import org.janelia.saalfeldlab.n5.DatasetAttributes;
+import org.janelia.saalfeldlab.n5.LongArrayDataBlock;
+import org.janelia.saalfeldlab.n5.N5Writer;
+import org.janelia.saalfeldlab.util.n5.CompressionDefaults;
+
+import java.io.IOException;
+
+/**
+ * Per-block {@link LabelStatistics} of the finest level of a label dataset, stored in an N5 dataset next to the label
+ * data, e.g. {@code <group>/segment-statistics} for Paintera datasets. The dataset has the same grid as the label
+ * data and each block holds the {@link LabelStatistics#encode encoded} statistics of all labels in the corresponding
+ * label block. Blocks that do not exist have not been computed yet.
+ */
+public class SegmentStatisticsStore {
+
+  public static final String DATASET = "segment-statistics";
+
+  private final N5Writer writer;
+
+  private final String dataset;
+
+  private final CellGrid grid;
+
+  private DatasetAttributes attributes = null;
+
+  /**
+   * @param writer  container
+   * @param dataset dataset that holds the statistics, see {@link #create()}
+   * @param grid    grid of the finest level of the label data
+   */
+  public SegmentStatisticsStore(final N5Writer writer, final String dataset, final CellGrid grid) {
+
+	this.writer = writer;
+	this.dataset = dataset;
+	this.grid = grid;
+  }
+
+  public static boolean exists(final N5Writer writer, final String group) throws IOException {
+
+	return writer.datasetExists(group + "/" + DATASET);
+  }
+
+  public boolean exists() throws IOException {
+
+	return writer.datasetExists(dataset);
+  }
+
+  /**
+   * Create the dataset if it does not exist yet. Statistics can only be written once the dataset exists, so that
+   * collecting statistics, which reads all blocks of the label data, is a deliberate choice.
+   */
+  public synchronized void create() throws IOException {
+
+	if (!writer.datasetExists(dataset)) {
+	  final int[] blockSize = new int[grid.numDimensions()];
+	  grid.cellDimensions(blockSize);
+	  writer.createDataset(dataset, grid.getImgDimensions(), blockSize, DataType.INT64, CompressionDefaults.getGlobal().create());
+	}
+  }
+
+  public CellGrid getGrid() {
+
+	return grid;
+  }
+
+  /**
+   * @return statistics of all labels in block {@code blockIndex}, or {@code null} if they were not stored yet
+   */
+  public TLongObjectMap<LabelStatistics> read(final long blockIndex) throws IOException {
+
+	if (!writer.datasetExists(dataset))
+	  return null;
+	final DataBlock<?> block = writer.readBlock(dataset, getAttributes(), gridPosition(blockIndex));
+	return block == null ? null : LabelStatistics.decode((long[])block.getData(), grid.numDimensions());
+  }
+
+  public void write(final long blockIndex, final TLongObjectMap<LabelStatistics> statisticsById) throws IOException {
+
+	final long[] data = LabelStatistics.encode(statisticsById, grid.numDimensions());
+	writer.writeBlock(dataset, getAttributes(), new LongArrayDataBlock(new int[]{data.length}, gridPosition(blockIndex), data));
+  }
+
+  private synchronized DatasetAttributes getAttributes() throws IOException {
+
+	if (attributes == null) {
+	  if (!writer.datasetExists(dataset))
+		throw new IOException("Segment statistics dataset " + dataset + " does not exist");
+	  attributes = writer.getDatasetAttributes(dataset);
+	}
+	return attributes;
+  }
+
+  private long[] gridPosition(final long blockIndex) {
+
+	final long[] gridPosition = new long[grid.numDimensions()];
+	grid.getCellGridPositionFlat(blockIndex, gridPosition);
+	return gridPosition;
+  }
+}
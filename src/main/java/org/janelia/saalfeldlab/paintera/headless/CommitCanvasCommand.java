@@ -0,0 +1,157 @@
+package org.janelia.saalfeldlab.paintera.headless;
+
+import gnu.trove.list.array.TLongArrayList;
+import gnu.trove.map.TLongObjectMap;
+import net.imglib2.cache.img.CachedCellImg;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.type.numeric.integer.UnsignedLongType;
+import net.imglib2.util.IntervalIndexer;
+import net.imglib2.util.Intervals;
+import org.janelia.saalfeldlab.n5.DataType;
+import org.janelia.saalfeldlab.n5.DatasetAttributes;
+import org.janelia.saalfeldlab.n5.N5FSReader;
+import org.janelia.saalfeldlab.n5.N5FSWriter;
+import org.janelia.saalfeldlab.n5.N5Reader;
+import org.janelia.saalfeldlab.n5.N5Writer;
+import org.janelia.saalfeldlab.n5.imglib2.N5Utils;
+import org.janelia.saalfeldlab.paintera.data.mask.persist.PersistCanvas.BlockDiff;
+import org.janelia.saalfeldlab.paintera.data.n5.CommitCanvasN5;
+import org.janelia.saalfeldlab.paintera.state.metadata.MetadataUtils;
+import org.janelia.saalfeldlab.util.n5.N5Helpers;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Mixin;
+import picocli.CommandLine.Option;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.regex.Pattern;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+/**
+ * Commit a canvas into a label dataset with {@link CommitCanvasN5}, including all lower resolution levels and the label
+ * block lookup. Paintera does not persist the canvas of a project across sessions, so the canvas is read from an N5
+ * dataset of {@link UnsignedLongType} with the same grid as the highest resolution of the label dataset. Voxels that were
+ * not painted are {@link net.imglib2.type.label.Label#INVALID} and only blocks that exist in the canvas dataset are
+ * committed.
+ */
+@Command(name = "commit", showDefaultValues = true, description = "Commit a canvas into a label dataset and update lower resolution levels and the label block lookup.")
+public class CommitCanvasCommand implements Callable<Integer> {
+
+  private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  private static final Pattern BLOCK_COORDINATE = Pattern.compile("\\d{1,18}");
+
+  @Mixin
+  private HeadlessDatasetOptions options;
+
+  @Option(names = {"--canvas-container"}, paramLabel = "CANVAS_CONTAINER",
+		  description = "N5 container that holds the canvas. Defaults to CONTAINER.")
+  private String canvasContainer;
+
+  @Option(names = {"--canvas-dataset"}, paramLabel = "CANVAS_DATASET", required = true,
+		  description = "uint64 dataset that holds the canvas.")
+  private String canvasDataset;
+
+  @Override
+  public Integer call() throws Exception {
+
+	options.applyLogLevel();
+	final N5Writer writer = options.writer();
+	final N5Reader canvasReader = canvasContainer == null ? writer : N5Helpers.n5Reader(canvasContainer);
+
+	final DatasetAttributes canvasAttributes = canvasReader.getDatasetAttributes(canvasDataset);
+	if (canvasAttributes == null || canvasAttributes.getDataType() != DataType.UINT64)
+	  throw new IOException(String.format("Canvas `%s' is not a uint64 dataset.", canvasDataset));
+
+	final CachedCellImg<UnsignedLongType, ?> canvas = N5Utils.open(canvasReader, canvasDataset);
+	final long[] blocks = existingBlocks(canvasReader, canvasDataset, canvasAttributes, options.numThreads());
+	if (blocks.length == 0) {
+	  LOG.info("Canvas `{}' is empty, nothing to commit.", canvasDataset);
+	  return 0;
+	}
+
+	final CommitCanvasN5 commit = new CommitCanvasN5(MetadataUtils.tmpCreateMetadataState(writer, options.dataset));
+	final List<TLongObjectMap<BlockDiff>> blockDiffs = commit.persistCanvas(canvas, blocks);
+	if (commit.supportsLabelBlockLookupUpdate())
+	  commit.updateLabelBlockLookup(blockDiffs);
+	LOG.info("Committed {} blocks of canvas `{}' into `{}'.", blocks.length, canvasDataset, options.dataset);
+	return 0;
+  }
+
+  /**
+   * @return flat indices of all blocks that are stored in {@code dataset}, in ascending order
+   */
+  static long[] existingBlocks(
+		  final N5Reader reader,
+		  final String dataset,
+		  final DatasetAttributes attributes,
+		  final int numThreads) throws Exception {
+
+	final CellGrid grid = N5Helpers.asCellGrid(attributes);
+	final long[] gridDimensions = grid.getGridDimensions();
+	/* exact class: subclasses such as the zarr reader store blocks in a different layout */
+	if (reader.getClass() == N5FSReader.class || reader.getClass() == N5FSWriter.class)
+	  return listBlocks(Paths.get(((N5FSReader)reader).getBasePath(), dataset), gridDimensions);
+
+	/* no way to check for blocks without reading them, but only canvas blocks are read */
+	final ForkJoinPool pool = new ForkJoinPool(numThreads);
+	try {
+	  return pool.submit(() -> LongStream
+			  .range(0, Intervals.numElements(gridDimensions))
+			  .parallel()
+			  .filter(index -> {
+				final long[] gridPosition = new long[gridDimensions.length];
+				IntervalIndexer.indexToPosition(index, gridDimensions, gridPosition);
+				try {
+				  return reader.readBlock(dataset, attributes, gridPosition) != null;
+				} catch (final IOException e) {
+				  throw new UncheckedIOException(e);
+				}
+			  })
+			  .toArray()).get();
+	} finally {
+	  pool.shutdown();
+	}
+  }
+
+  /**
+   * List the block files {@code <dataset>/<x>/<y>/<z>} of a dataset in an N5 container on the file system instead of
+   * reading every block of the grid.
+   */
+  private static long[] listBlocks(final Path datasetPath, final long[] gridDimensions) throws IOException {
+
+	final int numDimensions = gridDimensions.length;
+	final long[] gridPosition = new long[numDimensions];
+	final TLongArrayList blocks = new TLongArrayList();
+	try (final Stream<Path> paths = Files.walk(datasetPath, numDimensions)) {
+	  for (final Path path : (Iterable<Path>)paths::iterator) {
+		final Path relative = datasetPath.relativize(path);
+		if (relative.getNameCount() != numDimensions || !Files.isRegularFile(path))
+		  continue;
+		boolean isBlock = true;
+		for (int d = 0; d < numDimensions && isBlock; ++d) {
+		  final String name = relative.getName(d).toString();
+		  isBlock = BLOCK_COORDINATE.matcher(name).matches();
+		  if (isBlock) {
+			gridPosition[d] = Long.parseLong(name);
+			isBlock = gridPosition[d] < gridDimensions[d];
+		  }
+		}
+		if (isBlock)
+		  blocks.add(IntervalIndexer.positionToIndex(gridPosition, gridDimensions));
+	  }
+	}
+	blocks.sort();
+	return blocks.toArray();
+  }
+}
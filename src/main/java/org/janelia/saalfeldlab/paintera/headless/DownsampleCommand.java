@@ -0,0 +1,113 @@
+package org.janelia.saalfeldlab.paintera.headless;
+
+import net.imglib2.RandomAccessible;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.numeric.IntegerType;
+import net.imglib2.util.IntervalIndexer;
+import net.imglib2.util.Intervals;
+import net.imglib2.util.Util;
+import net.imglib2.view.Views;
+import org.janelia.saalfeldlab.n5.DatasetAttributes;
+import org.janelia.saalfeldlab.n5.N5Writer;
+import org.janelia.saalfeldlab.n5.imglib2.N5Utils;
+import org.janelia.saalfeldlab.paintera.data.mask.MaskedSource;
+import org.janelia.saalfeldlab.util.NamedThreadFactory;
+import org.janelia.saalfeldlab.util.math.ArrayMath;
+import org.janelia.saalfeldlab.util.math.DoubleHasNonIntegralValue;
+import org.janelia.saalfeldlab.util.n5.N5Helpers;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Mixin;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Rebuild all lower resolution levels of a multi-scale label dataset from its highest resolution, one level at a time
+ * and with all blocks of a level in parallel. Labels are downsampled by majority vote with
+ * {@link MaskedSource#downsample(RandomAccessible, RandomAccessibleInterval, int[])}, the same way the canvas is
+ * downsampled while painting. The relative downsampling factors of two consecutive levels must be integers.
+ * <p>
+ * Only {@link IntegerType} labels are supported; label multisets are downsampled by {@code commit}.
+ */
+@Command(name = "downsample", showDefaultValues = true, description = "Rebuild all lower resolution levels of a multi-scale label dataset from its highest resolution.")
+public class DownsampleCommand implements Callable<Integer> {
+
+  private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  @Mixin
+  private HeadlessDatasetOptions options;
+
+  @Override
+  public Integer call() throws Exception {
+
+	options.applyLogLevel();
+	final N5Writer writer = options.writer();
+	final String[] levels = options.levelDatasets(writer);
+	if (levels.length < 2) {
+	  LOG.info("`{}' has a single level, nothing to downsample.", options.dataset);
+	  return 0;
+	}
+	if (HeadlessDatasetOptions.isLabelMultiset(writer, levels[0]))
+	  throw new IOException(String.format("`%s' holds label multisets that cannot be downsampled by majority vote.", options.dataset));
+
+	final ExecutorService es = Executors.newFixedThreadPool(options.numThreads(), new NamedThreadFactory("paintera-downsample-%d", true));
+	try {
+	  for (int level = 1; level < levels.length; ++level) {
+		LOG.info("Downsampling `{}' into `{}'", levels[level - 1], levels[level]);
+		downsample(writer, levels[level - 1], levels[level], es);
+	  }
+	} finally {
+	  es.shutdown();
+	}
+	return 0;
+  }
+
+  private static <T extends IntegerType<T> & NativeType<T>> void downsample(
+		  final N5Writer writer,
+		  final String previousDataset,
+		  final String targetDataset,
+		  final ExecutorService es) throws IOException, DoubleHasNonIntegralValue, InterruptedException, ExecutionException {
+
+	final RandomAccessibleInterval<T> previous = N5Utils.open(writer, previousDataset);
+	final RandomAccessible<T> extendedPrevious = Views.extendBorder(previous);
+	final T type = Util.getTypeFromInterval(previous).createVariable();
+
+	final DatasetAttributes attributes = writer.getDatasetAttributes(targetDataset);
+	final CellGrid grid = N5Helpers.asCellGrid(attributes);
+	final long[] gridDimensions = grid.getGridDimensions();
+	final int[] steps = ArrayMath.asInt3(ArrayMath.divide3(
+			N5Helpers.getDownsamplingFactors(writer, targetDataset),
+			N5Helpers.getDownsamplingFactors(writer, previousDataset)), true);
+
+	final List<Future<?>> futures = new ArrayList<>();
+	for (long index = 0, numBlocks = Intervals.numElements(gridDimensions); index < numBlocks; ++index) {
+	  final long blockIndex = index;
+	  futures.add(es.submit(() -> {
+		final long[] gridPosition = new long[gridDimensions.length];
+		IntervalIndexer.indexToPosition(blockIndex, gridDimensions, gridPosition);
+		final long[] min = new long[gridDimensions.length];
+		final int[] size = new int[gridDimensions.length];
+		grid.getCellDimensions(gridPosition, min, size);
+		final Img<T> block = new ArrayImgFactory<>(type).create(size);
+		MaskedSource.downsample(extendedPrevious, Views.translate(block, min), steps);
+		N5Utils.saveBlock(block, writer, targetDataset, attributes, gridPosition);
+		return null;
+	  }));
+	}
+	for (final Future<?> future : futures)
+	  future.get();
+  }
+}
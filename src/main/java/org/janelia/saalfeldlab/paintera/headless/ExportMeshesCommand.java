@@ -0,0 +1,225 @@
+package org.janelia.saalfeldlab.paintera.headless;
+
+import gnu.trove.iterator.TLongIterator;
+import gnu.trove.set.hash.TLongHashSet;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.type.logic.BoolType;
+import net.imglib2.util.Pair;
+import net.imglib2.util.Util;
+import org.janelia.saalfeldlab.labels.blocks.LabelBlockLookup;
+import org.janelia.saalfeldlab.labels.blocks.LabelBlockLookupKey;
+import org.janelia.saalfeldlab.labels.blocks.n5.IsRelativeToContainer;
+import org.janelia.saalfeldlab.n5.N5Writer;
+import org.janelia.saalfeldlab.paintera.control.assignment.FragmentSegmentAssignmentOnlyLocal;
+import org.janelia.saalfeldlab.paintera.meshes.MeshExporter;
+import org.janelia.saalfeldlab.paintera.meshes.MeshExporterBinary;
+import org.janelia.saalfeldlab.paintera.meshes.MeshExporterObj;
+import org.janelia.saalfeldlab.paintera.meshes.PainteraTriangleMesh;
+import org.janelia.saalfeldlab.paintera.meshes.ShapeKey;
+import org.janelia.saalfeldlab.paintera.meshes.cache.SegmentMaskGenerators;
+import org.janelia.saalfeldlab.paintera.meshes.cache.SegmentMeshCacheLoader;
+import org.janelia.saalfeldlab.paintera.meshes.managed.GetBlockListFor;
+import org.janelia.saalfeldlab.paintera.meshes.managed.GetMeshFor;
+import org.janelia.saalfeldlab.paintera.state.metadata.MetadataUtils;
+import org.janelia.saalfeldlab.util.NamedThreadFactory;
+import org.janelia.saalfeldlab.util.grids.LabelBlockLookupAllBlocks;
+import org.janelia.saalfeldlab.util.math.ArrayMath;
+import org.janelia.saalfeldlab.util.n5.N5Helpers;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Mixin;
+import picocli.CommandLine.Option;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Export meshes of segments with {@link MeshExporter}, one file per segment. Segments are mapped to fragments with the
+ * fragment-segment assignment of Paintera datasets, and the blocks of each fragment are looked up in the label block
+ * lookup of the dataset, or all blocks are considered if the dataset is not a Paintera dataset. Meshes are generated
+ * the same way as in the 3D viewer, without smoothing. Segments are exported in parallel.
+ */
+@Command(name = "export-meshes", showDefaultValues = true, description = "Export meshes of segments of a label dataset.")
+public class ExportMeshesCommand implements Callable<Integer> {
+
+  private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  enum Format {
+	OBJ,
+	BINARY
+  }
+
+  @Mixin
+  private HeadlessDatasetOptions options;
+
+  @Option(names = {"--ids"}, paramLabel = "IDS", required = true, split = ",", description = "Segment ids to export.")
+  private long[] ids;
+
+  @Option(names = {"--level"}, paramLabel = "LEVEL", description = "Level of the label data that meshes are generated at.")
+  private int level = 0;
+
+  @Option(names = {"--output-directory"}, paramLabel = "OUTPUT_DIRECTORY", required = true,
+		  description = "Directory for the mesh files. Files are named after the segment id.")
+  private String outputDirectory;
+
+  @Option(names = {"--format"}, paramLabel = "FORMAT", description = "Mesh file format, one of ${COMPLETION-CANDIDATES}.")
+  private Format format = Format.OBJ;
+
+  @Override
+  public Integer call() throws Exception {
+
+	options.applyLogLevel();
+	final N5Writer writer = options.writer();
+	final String[] levels = options.levelDatasets(writer);
+	if (level < 0 || level >= levels.length)
+	  throw new IOException(String.format("Level %d does not exist for `%s' with %d levels.", level, options.dataset, levels.length));
+
+	final GetBlockListFor<Long> getBlockListFor = getBlockListFor(writer, levels);
+	final GetMeshFor<Long> getMeshFor = getMeshFor(writer, levels);
+
+	final Path outputPath = Paths.get(outputDirectory);
+	Files.createDirectories(outputPath);
+
+	final Queue<Long> failed = new ConcurrentLinkedQueue<>();
+	final ExecutorService es = Executors.newFixedThreadPool(options.numThreads(), new NamedThreadFactory("paintera-export-meshes-%d", true));
+	try {
+	  final List<Future<?>> futures = new ArrayList<>();
+	  for (final long id : ids) {
+		futures.add(es.submit(() -> {
+		  LOG.info("Exporting mesh for segment {}", id);
+		  exporter(failed).exportMesh(getBlockListFor, getMeshFor, id, level, outputPath.resolve(Long.toString(id)).toString());
+		  return null;
+		}));
+	  }
+	  for (final Future<?> future : futures)
+		future.get();
+	} finally {
+	  es.shutdown();
+	}
+
+	if (!failed.isEmpty()) {
+	  LOG.error("Unable to export meshes for segments {}.", failed);
+	  return 1;
+	}
+	LOG.info("Exported {} meshes into {}.", ids.length, outputPath);
+	return 0;
+  }
+
+  /**
+   * @return new exporter for a single segment. Exporters keep track of the number of faces written and cannot be shared.
+   */
+  private MeshExporter<Long> exporter(final Queue<Long> failed) {
+
+	switch (format) {
+	case BINARY:
+	  return new MeshExporterBinary<>() {
+
+		@Override
+		protected void onSaveError(final String path, final Long id, final IOException e) {
+
+		  LOG.error("Unable to write mesh for segment {} into {}", id, path, e);
+		  failed.add(id);
+		}
+	  };
+	case OBJ:
+	default:
+	  return new MeshExporterObj<>() {
+
+		@Override
+		protected void onSaveError(final String path, final Long id, final IOException e) {
+
+		  LOG.error("Unable to write mesh for segment {} into {}", id, path, e);
+		  failed.add(id);
+		}
+	  };
+	}
+  }
+
+  private GetBlockListFor<Long> getBlockListFor(final N5Writer writer, final String[] levels) throws Exception {
+
+	final FragmentSegmentAssignmentOnlyLocal assignment = N5Helpers.assignments(writer, options.dataset);
+	final LabelBlockLookup lookup;
+	if (options.isPainteraDataset(writer)) {
+	  lookup = N5Helpers.getLabelBlockLookup(MetadataUtils.tmpCreateMetadataState(writer, options.dataset));
+	  if (lookup instanceof IsRelativeToContainer)
+		((IsRelativeToContainer)lookup).setRelativeTo(writer, options.dataset);
+	} else {
+	  final long[][] dims = new long[levels.length][];
+	  final int[][] blockSizes = new int[levels.length][];
+	  for (int level = 0; level < levels.length; ++level) {
+		final CellGrid grid = N5Helpers.getGrid(writer, levels[level]);
+		dims[level] = grid.getImgDimensions();
+		blockSizes[level] = new int[grid.numDimensions()];
+		grid.cellDimensions(blockSizes[level]);
+	  }
+	  lookup = new LabelBlockLookupAllBlocks(dims, blockSizes);
+	}
+
+	return (level, segment) -> {
+	  final List<Interval> blocks = new ArrayList<>();
+	  for (final TLongIterator fragment = assignment.getFragments(segment).iterator(); fragment.hasNext(); ) {
+		try {
+		  for (final Interval block : lookup.read(new LabelBlockLookupKey(level, fragment.next())))
+			blocks.add(block);
+		} catch (final IOException e) {
+		  throw new UncheckedIOException(e);
+		}
+	  }
+	  return blocks.toArray(new Interval[0]);
+	};
+  }
+
+  @SuppressWarnings("unchecked")
+  private <T> GetMeshFor<Long> getMeshFor(final N5Writer writer, final String[] levels) throws IOException {
+
+	final FragmentSegmentAssignmentOnlyLocal assignment = N5Helpers.assignments(writer, options.dataset);
+	final RandomAccessibleInterval<T> data = (RandomAccessibleInterval<T>)HeadlessDatasetOptions.openLabels(writer, levels[level]);
+	final double[] initialDownsamplingFactors = N5Helpers.getDownsamplingFactors(writer, levels[0]);
+	final double[] downsamplingFactors = N5Helpers.getDownsamplingFactors(writer, levels[level]);
+	final AffineTransform3D transform = N5Helpers.considerDownsampling(
+			N5Helpers.getTransform(writer, options.volumetricDataGroup(writer)),
+			downsamplingFactors,
+			initialDownsamplingFactors);
+
+	final SegmentMeshCacheLoader<T> loader = new SegmentMeshCacheLoader<>(
+			() -> data,
+			SegmentMaskGenerators.<T, BoolType>create(
+					Util.getTypeFromInterval(data),
+					ArrayMath.divide3(downsamplingFactors, initialDownsamplingFactors)),
+			transform);
+
+	return key -> {
+	  final ShapeKey<TLongHashSet> fragmentsKey = new ShapeKey<>(
+			  assignment.getFragments(key.shapeId()),
+			  key.scaleIndex(),
+			  key.simplificationIterations(),
+			  key.smoothingLambda(),
+			  key.smoothingIterations(),
+			  key.minLabelRatio(),
+			  key.min(),
+			  key.max());
+	  try {
+		final Pair<float[], float[]> verticesAndNormals = loader.get(fragmentsKey);
+		return new PainteraTriangleMesh(verticesAndNormals.getA(), verticesAndNormals.getB());
+	  } catch (final Exception e) {
+		throw new RuntimeException(e);
+	  }
+	};
+  }
+}
@@ -0,0 +1,103 @@
+package org.janelia.saalfeldlab.paintera.headless;
+
+import ch.qos.logback.classic.Level;
+import net.imglib2.RandomAccessibleInterval;
+import org.janelia.saalfeldlab.n5.N5Reader;
+import org.janelia.saalfeldlab.n5.N5Writer;
+import org.janelia.saalfeldlab.n5.imglib2.N5LabelMultisets;
+import org.janelia.saalfeldlab.n5.imglib2.N5Utils;
+import org.janelia.saalfeldlab.paintera.util.logging.LogUtils;
+import org.janelia.saalfeldlab.util.n5.N5Helpers;
+import picocli.CommandLine.Option;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Options that are shared by all headless commands: the label dataset to operate on, the number of threads, and the
+ * log level. The dataset can be a Paintera dataset, a multi-scale group, or a single-scale dataset.
+ */
+public class HeadlessDatasetOptions {
+
+  @Option(names = {"--container"}, paramLabel = "CONTAINER", required = true,
+		  description = "N5 container that holds DATASET.")
+  String container;
+
+  @Option(names = {"--dataset"}, paramLabel = "DATASET", required = true,
+		  description = "Paintera dataset, multi-scale group, or single-scale dataset in CONTAINER.")
+  String dataset;
+
+  @Option(names = {"--num-threads"}, paramLabel = "NUM_THREADS",
+		  description = "Number of threads. Defaults to the number of available processors.")
+  int numThreads = Runtime.getRuntime().availableProcessors();
+
+  @Option(names = {"--log-level"}, paramLabel = "LOG_LEVEL", description = "Set level of root logger. Defaults to INFO.")
+  Level logLevel = Level.INFO;
+
+  @Option(names = {"-h", "--help"}, usageHelp = true, description = "Display this help message.")
+  boolean helpRequested;
+
+  void applyLogLevel() {
+
+	LogUtils.setRootLoggerLevel(logLevel);
+  }
+
+  int numThreads() {
+
+	return Math.max(numThreads, 1);
+  }
+
+  /**
+   * @return writer for {@link #container}. The container must exist.
+   * @throws IOException if the container cannot be opened
+   */
+  N5Writer writer() throws IOException {
+
+	return N5Helpers.n5WriterIfContainerExists(container);
+  }
+
+  boolean isPainteraDataset(final N5Reader reader) throws IOException {
+
+	return N5Helpers.isPainteraDataset(reader, dataset);
+  }
+
+  /**
+   * @return multi-scale group or single-scale dataset that holds the label data
+   */
+  String volumetricDataGroup(final N5Reader reader) throws IOException {
+
+	return N5Helpers.volumetricDataGroup(dataset, isPainteraDataset(reader));
+  }
+
+  /**
+   * @return datasets of all levels, finest first, or just the dataset itself if it is not multi-scale
+   */
+  String[] levelDatasets(final N5Reader reader) throws IOException {
+
+	final String group = volumetricDataGroup(reader);
+	if (!reader.exists(group))
+	  throw new IOException(String.format("`%s' does not exist in `%s'.", group, container));
+	if (!N5Helpers.isMultiScale(reader, group))
+	  return new String[]{group};
+	return Arrays
+			.stream(N5Helpers.listAndSortScaleDatasets(reader, group))
+			.map(scale -> group + "/" + scale)
+			.toArray(String[]::new);
+  }
+
+  static boolean isLabelMultiset(final N5Reader reader, final String levelDataset) throws IOException {
+
+	return N5Helpers.getBooleanAttribute(reader, levelDataset, N5Helpers.IS_LABEL_MULTISET_KEY, false);
+  }
+
+  /**
+   * @return label data at {@code levelDataset} as {@link net.imglib2.type.label.LabelMultisetType} or
+   * {@link net.imglib2.type.numeric.IntegerType}
+   */
+  static RandomAccessibleInterval<?> openLabels(final N5Reader reader, final String levelDataset) throws IOException {
+
+	if (isLabelMultiset(reader, levelDataset))
+	  return N5LabelMultisets.openLabelMultiset(reader, levelDataset);
+	return N5Utils.open(reader, levelDataset);
+  }
+}
@@ -0,0 +1,86 @@
+package org.janelia.saalfeldlab.paintera.headless;
+
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.cell.CellGrid;
+import org.janelia.saalfeldlab.n5.N5FSWriter;
+import org.janelia.saalfeldlab.n5.N5Writer;
+import org.janelia.saalfeldlab.util.grids.LabelBlockLookupIndexBuilder;
+import org.janelia.saalfeldlab.util.grids.LabelBlockLookupSharded;
+import org.janelia.saalfeldlab.util.grids.LabelBlockLookupWithBackgroundIndex;
+import org.janelia.saalfeldlab.util.n5.LabelBlockLookupMigration;
+import org.janelia.saalfeldlab.util.n5.N5Helpers;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Mixin;
+import picocli.CommandLine.Option;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.file.Paths;
+import java.util.concurrent.Callable;
+
+/**
+ * Build the label block lookup of a label dataset from its label data with {@link LabelBlockLookupIndexBuilder}, or
+ * migrate the existing lookup of a Paintera dataset to {@link LabelBlockLookupSharded}.
+ * <p>
+ * The index is stored in {@code <DATASET>/label-to-block-mapping} and is set as the lookup of Paintera datasets once it
+ * is complete. Blocks are merged into an existing index at that location, and levels that were completed by an earlier,
+ * interrupted build are skipped.
+ */
+@Command(name = "label-block-lookup", showDefaultValues = true, description = "Build the label block lookup of a label dataset or migrate it to a sharded lookup.")
+public class LabelBlockLookupCommand implements Callable<Integer> {
+
+  private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  @Mixin
+  private HeadlessDatasetOptions options;
+
+  @Option(names = {"--sharded"},
+		  description = "Migrate the existing label block lookup of a Paintera dataset to a sharded lookup instead of building it from the label data.")
+  private boolean sharded;
+
+  @Option(names = {"--num-shards"}, paramLabel = "NUM_SHARDS", description = "Number of shards per level of a sharded lookup.")
+  private int numShards = LabelBlockLookupSharded.DEFAULT_NUM_SHARDS;
+
+  @Option(names = {"--batch-size"}, paramLabel = "BATCH_SIZE", description = "Number of blocks that are scanned before the index is written.")
+  private int batchSize = LabelBlockLookupIndexBuilder.DEFAULT_BATCH_SIZE;
+
+  @Override
+  public Integer call() throws Exception {
+
+	options.applyLogLevel();
+	final N5Writer writer = options.writer();
+	if (!(writer instanceof N5FSWriter))
+	  throw new IOException(String.format("Label block lookups can only be written into N5 containers on the file system, not `%s'.", options.container));
+	final N5FSWriter fsWriter = (N5FSWriter)writer;
+
+	if (sharded) {
+	  LabelBlockLookupMigration.migrateToSharded(fsWriter, options.dataset, numShards);
+	  return 0;
+	}
+
+	final String[] levels = options.levelDatasets(writer);
+	final RandomAccessibleInterval<?>[] data = new RandomAccessibleInterval<?>[levels.length];
+	final CellGrid[] grids = new CellGrid[levels.length];
+	final long[][] dims = new long[levels.length][];
+	final int[][] blockSizes = new int[levels.length][];
+	for (int level = 0; level < levels.length; ++level) {
+	  data[level] = HeadlessDatasetOptions.openLabels(writer, levels[level]);
+	  grids[level] = N5Helpers.getGrid(writer, levels[level]);
+	  dims[level] = grids[level].getImgDimensions();
+	  blockSizes[level] = new int[grids[level].numDimensions()];
+	  grids[level].cellDimensions(blockSizes[level]);
+	}
+
+	final String root = Paths.get(fsWriter.getBasePath(), options.dataset, N5Helpers.LABEL_TO_BLOCK_MAPPING).toString();
+	final LabelBlockLookupWithBackgroundIndex lookup = new LabelBlockLookupWithBackgroundIndex(root, dims, blockSizes);
+	new LabelBlockLookupIndexBuilder(data, grids, lookup, options.numThreads(), batchSize)
+			.build(level -> LOG.info("Label block lookup for level {} of `{}' is complete.", level, options.dataset));
+
+	if (options.isPainteraDataset(writer))
+	  LabelBlockLookupMigration.setLabelBlockLookup(fsWriter, options.dataset, lookup);
+	LOG.info("Stored label block lookup for `{}' in {}.", options.dataset, root);
+	return 0;
+  }
+}
@@ -0,0 +1,60 @@
+package org.janelia.saalfeldlab.paintera.headless;
+
+import ch.qos.logback.classic.Level;
+import org.janelia.saalfeldlab.paintera.util.logging.LogUtils;
+import picocli.CommandLine;
+import picocli.CommandLine.Command;
+
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+/**
+ * Batch operations on label datasets that run without a display and never initialize JavaFX, e.g. on a compute node:
+ * <ul>
+ *   <li>{@code commit}: {@link CommitCanvasCommand}</li>
+ *   <li>{@code downsample}: {@link DownsampleCommand}</li>
+ *   <li>{@code label-block-lookup}: {@link LabelBlockLookupCommand}</li>
+ *   <li>{@code export-meshes}: {@link ExportMeshesCommand}</li>
+ * </ul>
+ * {@link org.janelia.saalfeldlab.paintera.Paintera#main(String[])} dispatches to {@link #execute(String...)} if the first
+ * argument is one of these commands, and launches the viewer otherwise.
+ */
+@Command(name = "Paintera", showDefaultValues = true,
+		description = "Headless batch operations on label datasets.",
+		subcommands = {
+				CommitCanvasCommand.class,
+				DownsampleCommand.class,
+				LabelBlockLookupCommand.class,
+				ExportMeshesCommand.class})
+public class PainteraHeadless implements Callable<Integer> {
+
+  private static final Set<String> COMMANDS = Set.of("commit", "downsample", "label-block-lookup", "export-meshes");
+
+  /**
+   * @param args command line arguments
+   * @return {@code true} if {@code args} start with a headless command
+   */
+  public static boolean isHeadlessCommand(final String... args) {
+
+	return args.length > 0 && COMMANDS.contains(args[0]);
+  }
+
+  /**
+   * @param args command line arguments, starting with a headless command
+   * @return exit code
+   */
+  public static int execute(final String... args) {
+
+	return new CommandLine(new PainteraHeadless())
+			.registerConverter(Level.class, new LogUtils.Logback.Levels.CmdLineConverter())
+			.setCaseInsensitiveEnumValuesAllowed(true)
+			.execute(args);
+  }
+
+  @Override
+  public Integer call() {
+
+	CommandLine.usage(this, System.out);
+	return 0;
+  }
+}
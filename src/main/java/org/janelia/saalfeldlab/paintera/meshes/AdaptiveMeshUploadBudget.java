@@ -0,0 +1,96 @@
+package org.janelia.saalfeldlab.paintera.meshes;
+
+import org.janelia.saalfeldlab.paintera.config.Viewer3DConfig;
+
+/**
+ * Number of elements (vertices+normals+faces) that {@link MeshViewUpdateQueue} adds to the scene per frame, chosen such
+ * that a frame with a batch of meshes is expected to take about the target frame time longer than an idle frame.
+ * <p>
+ * The cost of a frame is measured from adding the batch until the frame that renders it is done, and the throughput is
+ * smoothed over several frames. The budget stays within the limits of the fixed budget that can be configured in
+ * {@link Viewer3DConfig}.
+ */
+class AdaptiveMeshUploadBudget {
+
+  static final int MIN_BUDGET = Viewer3DConfig.NUM_ELEMENTS_PER_FRAME_MIN_VALUE;
+
+  static final int MAX_BUDGET = Viewer3DConfig.NUM_ELEMENTS_PER_FRAME_MAX_VALUE;
+
+  /**
+   * Weight of the most recent measurement in the exponential moving average of the throughput.
+   */
+  private static final double THROUGHPUT_SMOOTHING_FACTOR = 0.2;
+
+  /**
+   * The budget is never increased by more than this factor from one batch to the next.
+   */
+  private static final double MAX_GROWTH_PER_FRAME = 2.0;
+
+  private long targetFrameTimeNanos;
+
+  private int budget;
+
+  /**
+   * Exponential moving average of the throughput in elements per nanosecond, or {@link Double#NaN} if nothing has been
+   * measured yet.
+   */
+  private double throughputElementsPerNano = Double.NaN;
+
+  AdaptiveMeshUploadBudget(final int initialBudget, final long targetFrameTimeNanos) {
+
+	this.budget = clamp(initialBudget);
+	this.targetFrameTimeNanos = targetFrameTimeNanos;
+  }
+
+  int getBudget() {
+
+	return budget;
+  }
+
+  /**
+   * @return smoothed throughput in elements per second, or {@link Double#NaN} if nothing has been measured yet.
+   */
+  double getThroughputPerSecond() {
+
+	return throughputElementsPerNano * 1e9;
+  }
+
+  /**
+   * @param initialBudget used until the first measurement
+   */
+  void setTarget(final int initialBudget, final long targetFrameTimeNanos) {
+
+	this.targetFrameTimeNanos = targetFrameTimeNanos;
+	this.budget = Double.isNaN(throughputElementsPerNano)
+			? clamp(initialBudget)
+			: clamp(throughputElementsPerNano * targetFrameTimeNanos);
+  }
+
+  /**
+   * @param numElements        number of elements that were added in the measured frame
+   * @param frameCostNanos     time that the frame took longer than an idle frame, including adding the meshes to the
+   *                           scene, synchronizing, uploading, and rendering them
+   * @param budgetWasExhausted {@code true} if more meshes were waiting than fit into the budget
+   */
+  void update(final int numElements, final long frameCostNanos, final boolean budgetWasExhausted) {
+
+	if (numElements <= 0 || frameCostNanos <= 0)
+	  return;
+
+	final double elementsPerNano = (double)numElements / frameCostNanos;
+	throughputElementsPerNano = Double.isNaN(throughputElementsPerNano)
+			? elementsPerNano
+			: THROUGHPUT_SMOOTHING_FACTOR * elementsPerNano + (1.0 - THROUGHPUT_SMOOTHING_FACTOR) * throughputElementsPerNano;
+
+	// Only grow the budget if it was actually the limiting factor, otherwise a series of small batches would
+	// keep the budget low, or an underfull batch would inflate it without evidence.
+	final int newBudget = clamp(Math.min(throughputElementsPerNano * targetFrameTimeNanos, budget * MAX_GROWTH_PER_FRAME));
+	if (budgetWasExhausted || newBudget < budget)
+	  budget = newBudget;
+  }
+
+  private static int clamp(final double budget) {
+
+	return (int)Math.max(MIN_BUDGET, Math.min(MAX_BUDGET, budget));
+  }
+}
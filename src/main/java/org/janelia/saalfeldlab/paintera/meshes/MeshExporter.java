@@ -88,7 +88,7 @@ public abstract class MeshExporter<T> {
 
 		  numberOfFaces += verticesAndNormals.getVertices().length / 3;
 		} catch (final IOException e) {
-		  Exceptions.exceptionAlert("Mesh exporter", "Couldn't write file", e).show();
+		  onSaveError(path, id, e);
 		  break;
 		}
 	  } catch (final RuntimeException e) {
@@ -100,6 +100,15 @@ public abstract class MeshExporter<T> {
 
   }
 
+  /**
+   * Called when the mesh for {@code id} cannot be written to {@code path}. Export of {@code id} stops afterwards. Shows
+   * an exception alert by default; override for headless export.
+   */
+  protected void onSaveError(final String path, final T id, final IOException e) {
+
+	Exceptions.exceptionAlert("Mesh exporter", "Couldn't write file", e).show();
+  }
+
   protected abstract void save(String path, String id, float[] vertices, float[] normals, boolean append) throws IOException;
 
   public static boolean hasFaces(final int numberOfFaces) {
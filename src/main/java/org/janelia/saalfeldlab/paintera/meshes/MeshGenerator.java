@@ -18,6 +18,7 @@ import javafx.scene.paint.Material;
 import javafx.scene.paint.PhongMaterial;
 import javafx.scene.shape.MeshView;
 import javafx.scene.shape.Shape3D;
+import net.imglib2.Interval;
 import net.imglib2.img.cell.CellGrid;
 import net.imglib2.realtransform.AffineTransform3D;
 import net.imglib2.util.Pair;
@@ -25,11 +26,13 @@ import net.imglib2.util.ValuePair;
 import org.fxyz3d.shapes.polygon.PolygonMeshView;
 import org.janelia.saalfeldlab.paintera.meshes.managed.GetBlockListFor;
 import org.janelia.saalfeldlab.paintera.meshes.managed.GetMeshFor;
-import org.janelia.saalfeldlab.util.concurrent.HashPriorityQueueBasedTaskExecutor;
+import org.janelia.saalfeldlab.paintera.viewer3d.OcclusionBuffer;
+import org.janelia.saalfeldlab.util.concurrent.PriorityTaskExecutor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.lang.invoke.MethodHandles;
+import java.util.Collection;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.IntFunction;
@@ -152,7 +155,7 @@ public class MeshGenerator<T> {
 		  final MeshViewUpdateQueue<T> meshViewUpdateQueue,
 		  final IntFunction<AffineTransform3D> unshiftedWorldTransforms,
 		  final ExecutorService managers,
-		  final HashPriorityQueueBasedTaskExecutor<MeshWorkerPriority> workers) {
+		  final PriorityTaskExecutor<MeshWorkerPriority> workers) {
 
 	this(
 			numScaleLevels,
@@ -174,7 +177,7 @@ public class MeshGenerator<T> {
 		  final MeshViewUpdateQueue<T> meshViewUpdateQueue,
 		  final IntFunction<AffineTransform3D> unshiftedWorldTransforms,
 		  final ExecutorService managers,
-		  final HashPriorityQueueBasedTaskExecutor<MeshWorkerPriority> workers,
+		  final PriorityTaskExecutor<MeshWorkerPriority> workers,
 		  final State state) {
 
 	super();
@@ -316,6 +319,33 @@ public class MeshGenerator<T> {
 	updateMeshes();
   }
 
+  /**
+   * @param occlusionBuffer blocks that are occluded in this buffer are scheduled after all other blocks. May be {@code null}.
+   */
+  public void setOcclusionBuffer(final OcclusionBuffer occlusionBuffer) {
+
+	manager.setOcclusionBuffer(occlusionBuffer);
+  }
+
+  /**
+   * @return meshes of this object that can be rasterized into an {@link OcclusionBuffer}
+   */
+  public Collection<PainteraTriangleMesh> getOccluders() {
+
+	return manager.getOccluders();
+  }
+
+  /**
+   * Regenerate only the mesh blocks that intersect {@code changedBlocks} at their scale level.
+   *
+   * @param changedBlocks changed blocks of the source for each scale level
+   */
+  public synchronized void refreshBlocks(final Interval[][] changedBlocks) {
+
+	if (!isInterrupted.get())
+	  manager.refreshBlocks(changedBlocks);
+  }
+
   public synchronized void interrupt() {
 
 	if (isInterrupted.get()) {
@@ -26,8 +26,9 @@ import org.fxyz3d.shapes.polygon.PolygonMeshView;
 import org.janelia.saalfeldlab.fx.util.InvokeOnJavaFXApplicationThread;
 import org.janelia.saalfeldlab.paintera.meshes.managed.GetBlockListFor;
 import org.janelia.saalfeldlab.paintera.meshes.managed.GetMeshFor;
+import org.janelia.saalfeldlab.paintera.viewer3d.OcclusionBuffer;
 import org.janelia.saalfeldlab.util.Sets;
-import org.janelia.saalfeldlab.util.concurrent.HashPriorityQueueBasedTaskExecutor;
+import org.janelia.saalfeldlab.util.concurrent.PriorityTaskExecutor;
 import org.janelia.saalfeldlab.util.grids.Grids;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -46,6 +47,7 @@ import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -131,13 +133,18 @@ public class MeshGeneratorJobManager<T> {
 	final Runnable task;
 	MeshWorkerPriority priority;
 	final long tag;
+	/**
+	 * Regenerates a block whose mesh has already been counted as completed, see {@link #refreshBlocks(Interval[][])}.
+	 */
+	final boolean isRefresh;
 	TaskState state = TaskState.CREATED;
 
-	Task(final Runnable task, final MeshWorkerPriority priority, final long tag) {
+	Task(final Runnable task, final MeshWorkerPriority priority, final long tag, final boolean isRefresh) {
 
 	  this.task = task;
 	  this.priority = priority;
 	  this.tag = tag;
+	  this.isRefresh = isRefresh;
 	}
   }
 
@@ -221,6 +228,15 @@ public class MeshGeneratorJobManager<T> {
 
   private final Map<ShapeKey<T>, Task> tasks = new HashMap<>();
 
+  /**
+   * Meshes of the lowest-resolution blocks in the tree, they approximate the object well enough to occlude other blocks.
+   */
+  private final Map<ShapeKey<T>, PainteraTriangleMesh> occluders = new ConcurrentHashMap<>();
+
+  private int occluderScaleLevel = Integer.MAX_VALUE;
+
+  private volatile OcclusionBuffer occlusionBuffer;
+
   private final ObservableMap<ShapeKey<T>, Pair<MeshView, Node>> meshesAndBlocks;
 
   private final Pair<Group, Group> meshesAndBlocksGroups;
@@ -233,7 +249,7 @@ public class MeshGeneratorJobManager<T> {
 
   private final ExecutorService managers;
 
-  private final HashPriorityQueueBasedTaskExecutor<MeshWorkerPriority> workers;
+  private final PriorityTaskExecutor<MeshWorkerPriority> workers;
 
   private final int numScaleLevels;
 
@@ -268,7 +284,7 @@ public class MeshGeneratorJobManager<T> {
 		  final GetMeshFor<T> getMeshes,
 		  final IntFunction<AffineTransform3D> unshiftedWorldTransforms,
 		  final ExecutorService managers,
-		  final HashPriorityQueueBasedTaskExecutor<MeshWorkerPriority> workers,
+		  final PriorityTaskExecutor<MeshWorkerPriority> workers,
 		  final IndividualMeshProgress meshProgress) {
 
 	this.identifier = identifier;
@@ -322,6 +338,7 @@ public class MeshGeneratorJobManager<T> {
 	{
 	  synchronized (this) {
 		meshesAndBlocks.clear();
+		occluders.clear();
 		interruptTasks(tasks.keySet());
 
 		meshProgress.set(0, 0);
@@ -329,6 +346,100 @@ public class MeshGeneratorJobManager<T> {
 	}));
   }
 
+  /**
+   * @param occlusionBuffer blocks that are occluded in this buffer are scheduled after all other blocks, starting with the
+   *                        next scene update. May be {@code null}.
+   */
+  public void setOcclusionBuffer(final OcclusionBuffer occlusionBuffer) {
+
+	this.occlusionBuffer = occlusionBuffer;
+  }
+
+  /**
+   * @return meshes that can be rasterized into an {@link OcclusionBuffer}
+   */
+  public Collection<PainteraTriangleMesh> getOccluders() {
+
+	return new ArrayList<>(occluders.values());
+  }
+
+  /**
+   * Regenerate the meshes of the blocks in the tree that intersect {@code changedBlocks} at their scale level, e.g. after
+   * painting. Blocks that are in the scene keep their outdated mesh until the new mesh has been generated, which then
+   * replaces it in place. All other blocks in the tree are left untouched.
+   *
+   * @param changedBlocks changed blocks of the source for each scale level
+   */
+  public void refreshBlocks(final Interval[][] changedBlocks) {
+
+	if (isInterrupted.get() || managers.isShutdown())
+	  return;
+
+	managers.submit(withErrorPrinting(() -> refreshBlocksImpl(changedBlocks)));
+  }
+
+  private synchronized void refreshBlocksImpl(final Interval[][] changedBlocks) {
+
+	if (isInterrupted.get())
+	  return;
+
+	final List<ShapeKey<T>> tasksToSubmit = new ArrayList<>();
+	for (final Entry<ShapeKey<T>, StatefulBlockTreeNode<ShapeKey<T>>> entry : blockTree.nodes.entrySet()) {
+	  final ShapeKey<T> key = entry.getKey();
+	  final StatefulBlockTreeNode<ShapeKey<T>> node = entry.getValue();
+	  if (!intersectsAny(key, changedBlocks))
+		continue;
+
+	  final Task task = tasks.get(key);
+	  switch (node.state) {
+	  case PENDING:
+		// tasks that have not started yet will read the updated data
+		if (task != null && task.state == TaskState.RUNNING) {
+		  cancelTask(key);
+		  createTask(key);
+		  tasksToSubmit.add(key);
+		}
+		break;
+	  case RENDERED:
+		// the outdated mesh has not been added to the scene yet, discard it
+		cancelTask(key);
+		meshesAndBlocks.remove(key);
+		node.state = BlockTreeNodeState.PENDING;
+		createTask(key);
+		tasksToSubmit.add(key);
+		break;
+	  case VISIBLE:
+	  case HIDDEN:
+		// the outdated mesh stays in the scene until it is swapped with the new mesh in onMeshGenerated(),
+		// unless the block is about to be replaced by its higher-res children anyway
+		if (blockTree.getChildrenNodes(key).stream().allMatch(child -> child.state == BlockTreeNodeState.PENDING)) {
+		  cancelTask(key);
+		  createTask(key, true);
+		  tasksToSubmit.add(key);
+		}
+		break;
+	  case REPLACED:
+		// not in the scene, the mesh is generated from the updated data if the block is needed again
+		break;
+	  }
+	}
+	LOG.debug("ID {}: refreshing {} blocks", identifier, tasksToSubmit.size());
+	submitTasks(tasksToSubmit);
+  }
+
+  private static boolean intersectsAny(final ShapeKey<?> key, final Interval[][] changedBlocks) {
+
+	if (key.scaleIndex() >= changedBlocks.length)
+	  return false;
+
+	// marching cubes reads one voxel beyond the block
+	final Interval keyInterval = Intervals.expand(key.interval(), 1);
+	for (final Interval changedBlock : changedBlocks[key.scaleIndex()])
+	  if (!Intervals.isEmpty(Intervals.intersect(keyInterval, changedBlock)))
+		return true;
+	return false;
+  }
+
   private synchronized void updateScene() {
 
 	if (isInterrupted.get())
@@ -349,6 +460,7 @@ public class MeshGeneratorJobManager<T> {
 
 	// remove blocks from the scene that are not in the updated tree
 	meshesAndBlocks.keySet().retainAll(blockTree.nodes.keySet());
+	occluders.keySet().retainAll(blockTree.nodes.keySet());
 
 	// stop tasks for blocks that are not in the updated tree
 	final List<ShapeKey<T>> taskKeysToInterrupt = tasks.keySet().stream()
@@ -364,7 +476,7 @@ public class MeshGeneratorJobManager<T> {
 		final Task task = entry.getValue();
 		if (task.state == TaskState.CREATED || task.state == TaskState.SCHEDULED) {
 		  assert blockTree.nodes.containsKey(key) : "Task for the pending block already exists but its new priority is missing: " + key;
-		  task.priority = new MeshWorkerPriority(blockTree.nodes.get(key).distanceFromCamera, key.scaleIndex());
+		  task.priority = createPriority(key, blockTree.nodes.get(key).distanceFromCamera);
 		  if (workers.containsTask(task.task)) {
 			assert task.state == TaskState.SCHEDULED : "Task is in the worker queue but its state is " + task.state + ", expected SCHEDULED: " + key;
 			reprioritizedTasks.put(task.task, task.priority);
@@ -381,8 +493,9 @@ public class MeshGeneratorJobManager<T> {
 	  for (final Entry<ShapeKey<T>, StatefulBlockTreeNode<ShapeKey<T>>> entry : blockTree.nodes.entrySet()) {
 		final ShapeKey<T> key = entry.getKey();
 		final StatefulBlockTreeNode<ShapeKey<T>> treeNode = entry.getValue();
-		if (treeNode.state == BlockTreeNodeState.RENDERED && meshViewUpdateQueue.contains(key)) {
-		  final MeshWorkerPriority newPriority = new MeshWorkerPriority(treeNode.distanceFromCamera, key.scaleIndex());
+		final boolean isRefreshing = tasks.containsKey(key) && tasks.get(key).isRefresh;
+		if ((treeNode.state == BlockTreeNodeState.RENDERED || isRefreshing) && meshViewUpdateQueue.contains(key)) {
+		  final MeshWorkerPriority newPriority = createPriority(key, treeNode.distanceFromCamera);
 		  meshViewUpdateQueue.updatePriority(key, newPriority);
 		} else {
 		  assert !meshViewUpdateQueue.contains(key) : "Block that is in the " + treeNode.state + " state is not supposed to be in the FX queue: " + key;
@@ -391,7 +504,7 @@ public class MeshGeneratorJobManager<T> {
 	}
 
 	// calculate how many tasks are already completed
-	final int numCompletedBlocks = numTotalBlocks - blocksToRender.size() - tasks.size();
+	final int numCompletedBlocks = numTotalBlocks - blocksToRender.size() - (int)tasks.values().stream().filter(task -> !task.isRefresh).count();
 	meshProgress.set(numTotalBlocks, numCompletedBlocks);
 	final int numExistingNonEmptyMeshes = (int)meshesAndBlocks.values().stream().filter(pair -> pair.getA() != null).count();
 	LOG.debug("ID {}: numTasks={}, numCompletedTasks={}, numActualBlocksToRender={}. Number of meshes in the scene: {} ({} of them are non-empty)", identifier,
@@ -423,7 +536,8 @@ public class MeshGeneratorJobManager<T> {
 			});
 
 			node.state = BlockTreeNodeState.REPLACED;
-			assert !tasks.containsKey(key) : "Low-res parent block is being replaced but there is a task for it: " + key;
+			// the low-res parent block may still be refreshing
+			cancelTask(key);
 			meshesAndBlocks.remove(key);
 
 			node.children.forEach(childKey -> tasksToSubmit.addAll(getPendingTasksForChildren(childKey)));
@@ -446,6 +560,11 @@ public class MeshGeneratorJobManager<T> {
 
   private synchronized void createTask(final ShapeKey<T> key) {
 
+	createTask(key, false);
+  }
+
+  private synchronized void createTask(final ShapeKey<T> key, final boolean isRefresh) {
+
 	final long tag = sceneUpdateCounter.get();
 	final Runnable taskRunnable = () ->
 	{
@@ -478,7 +597,7 @@ public class MeshGeneratorJobManager<T> {
 		  if (isTaskCanceled.getAsBoolean()) {
 			// Task has been interrupted
 			if (!workers.isShutdown())
-			  assert !tasks.containsKey(key) || tasks.get(key).tag != tag :
+			  assert tasks.get(key) != task :
 					  "Task has been interrupted but it still exists in the tasks collection of size " + tasks.size() + ": " + key;
 		  } else {
 			// Terminated because of an error
@@ -505,8 +624,8 @@ public class MeshGeneratorJobManager<T> {
 	assert blockTree.nodes.containsKey(key) : "Requested to create task for block but it's not in the tree, key: " + key;
 	final double distanceFromCamera = blockTree.nodes.get(key).distanceFromCamera;
 
-	final MeshWorkerPriority taskPriority = new MeshWorkerPriority(distanceFromCamera, key.scaleIndex());
-	final Task task = new Task(withErrorPrinting(taskRunnable), taskPriority, tag);
+	final MeshWorkerPriority taskPriority = createPriority(key, distanceFromCamera);
+	final Task task = new Task(withErrorPrinting(taskRunnable), taskPriority, tag, isRefresh);
 
 	assert !tasks.containsKey(key) : "Trying to create new task for block but it already exists: " + key;
 	tasks.put(key, task);
@@ -552,6 +671,36 @@ public class MeshGeneratorJobManager<T> {
 			keys.stream().filter(meshesAndBlocks::containsKey).collect(Collectors.toSet());
   }
 
+  private MeshWorkerPriority createPriority(final ShapeKey<T> key, final double distanceFromCamera) {
+
+	final OcclusionBuffer occlusionBuffer = this.occlusionBuffer;
+	final boolean isOccluded = occlusionBuffer != null && occlusionBuffer.isOccluded(
+			blockInterval(key.interval()),
+			unshiftedWorldTransforms.apply(key.scaleIndex()));
+	return new MeshWorkerPriority(distanceFromCamera, key.scaleIndex(), isOccluded);
+  }
+
+  private static RealInterval blockInterval(final Interval keyInterval) {
+
+	final double[] min = new double[3], max = new double[3];
+	Arrays.setAll(min, d -> keyInterval.min(d));
+	Arrays.setAll(max, d -> keyInterval.min(d) + keyInterval.dimension(d));
+	return new FinalRealInterval(min, max);
+  }
+
+  /**
+   * Remove the task for {@code key} and stop it if it is scheduled or running. In contrast to
+   * {@link #interruptTasks(Collection)}, the block may still be in the scene.
+   */
+  private synchronized void cancelTask(final ShapeKey<T> key) {
+
+	final Task task = tasks.remove(key);
+	if (task != null && (task.state == TaskState.SCHEDULED || task.state == TaskState.RUNNING)) {
+	  task.state = TaskState.INTERRUPTED;
+	  workers.removeTask(task.task);
+	}
+  }
+
   private synchronized void handleMeshListChange(final MapChangeListener.Change<? extends ShapeKey<T>, ? extends Pair<MeshView, Node>> change) {
 
 	final ShapeKey<T> key = change.getKey();
@@ -598,7 +747,8 @@ public class MeshGeneratorJobManager<T> {
 
 	assert blockTree.nodes.containsKey(key) : "Mesh for block has been generated but it does not exist in the current block tree: " + key;
 	assert tasks.containsKey(key) : "Mesh for block has been generated but its task does not exist: " + key;
-	assert !meshesAndBlocks.containsKey(key) : "Mesh for block has been generated but it already exists in the current set of generated/visible meshes: " + key;
+	assert !meshesAndBlocks.containsKey(key) || tasks.get(key).isRefresh :
+			"Mesh for block has been generated but it already exists in the current set of generated/visible meshes: " + key;
 	LOG.trace("ID {}: block {} has been generated", identifier, key);
 
 	final boolean nonEmptyMesh = triangleMesh.isNotEmpty();
@@ -607,7 +757,21 @@ public class MeshGeneratorJobManager<T> {
 	final Pair<MeshView, Node> meshAndBlock = new ValuePair<>(mv, blockShape);
 	LOG.trace("Found {}/3 vertices and {}/3 normals", triangleMesh.getVertices(), triangleMesh.getNormals());
 
+	if (nonEmptyMesh && key.scaleIndex() >= occluderScaleLevel)
+	  occluders.put(key, triangleMesh);
+	else
+	  occluders.remove(key);
+
 	final StatefulBlockTreeNode<ShapeKey<T>> treeNode = blockTree.nodes.get(key);
+	if (treeNode.state == BlockTreeNodeState.VISIBLE || treeNode.state == BlockTreeNodeState.HIDDEN) {
+	  // swap the outdated mesh of a refreshed block, the state of the block in the tree does not change
+	  assert tasks.get(key).isRefresh : "Mesh for block has been generated but the block is already in the " + treeNode.state + " state: " + key;
+	  setMeshVisibility(meshAndBlock, treeNode.state == BlockTreeNodeState.VISIBLE);
+	  meshesAndBlocks.remove(key);
+	  meshesAndBlocks.put(key, meshAndBlock);
+	  return;
+	}
+
 	treeNode.state = BlockTreeNodeState.RENDERED;
 
 	if (treeNode.parentKey != null)
@@ -637,7 +801,11 @@ public class MeshGeneratorJobManager<T> {
 	assert meshesAndBlocks.containsKey(key) : "Mesh has been added onto the scene but it does not exist in the current set of generated/visible meshes: " + key;
 	LOG.debug("ID {}: mesh for block {} has been added onto the scene", identifier, key);
 
-	tasks.remove(key);
+	if (tasks.remove(key).isRefresh) {
+	  // the new mesh of a refreshed block has replaced the outdated mesh, no state transitions are necessary
+	  LOG.debug("ID {}: refreshed mesh for block {} has been added onto the scene", identifier, key);
+	  return;
+	}
 	meshProgress.incrementNumCompletedTasks();
 
 	final StatefulBlockTreeNode<ShapeKey<T>> treeNode = blockTree.getNode(key);
@@ -676,7 +844,8 @@ public class MeshGeneratorJobManager<T> {
 		});
 
 		parentTreeNode.state = BlockTreeNodeState.REPLACED;
-		assert !tasks.containsKey(treeNode.parentKey) : "Low-res parent block is being replaced but there is a task for it: " + key;
+		// the low-res parent block may still be refreshing
+		cancelTask(treeNode.parentKey);
 		meshesAndBlocks.remove(treeNode.parentKey);
 
 		// Submit tasks for next-level contained blocks
@@ -705,7 +874,8 @@ public class MeshGeneratorJobManager<T> {
 		// and a set of higher-res blocks needs to be replaced with the single low-res block
 		assert assertSubtreeToBeReplacedWithLowResBlock(key);
 		blockTree.traverseSubtreeSkipRoot(key, (childKey, childNode) -> {
-		  assert !tasks.containsKey(childKey);
+		  // the high-res blocks may still be refreshing
+		  cancelTask(childKey);
 		  meshesAndBlocks.remove(childKey);
 		  blockTree.nodes.remove(childKey);
 		  return true;
@@ -816,6 +986,7 @@ public class MeshGeneratorJobManager<T> {
 	}
 
 	// The complete block tree for the current label id representing the new scene state is now ready
+	occluderScaleLevel = requestedBlockTree.getRootKeys().stream().mapToInt(ShapeKey::scaleIndex).max().orElse(Integer.MAX_VALUE);
 	assert assertBlockTreeStructure(requestedBlockTree) : "Requested block tree to render is not valid";
 
 	// Remove all blocks from the current tree if the mesh generation parameters have changed (block size, smoothing, etc.)
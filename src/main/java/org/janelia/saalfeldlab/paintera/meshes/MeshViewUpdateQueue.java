@@ -9,6 +9,7 @@ import org.janelia.saalfeldlab.util.HashPriorityQueue;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javafx.animation.AnimationTimer;
 import javafx.application.Platform;
 import javafx.scene.Group;
 import javafx.scene.Node;
@@ -21,6 +22,12 @@ import net.imglib2.util.Pair;
  * <p>
  * If a lot of meshes are added at the same time, the application may freeze while they are being uploaded onto the GPU.
  * This class solves it by limiting the number of vertices+normals+faces that can be added to the scene at a time.
+ * <p>
+ * If a target frame time is set, the number of elements per frame is not fixed but adapted to the measured frame
+ * cost: the time spent on adding each batch on the FX thread plus the time that the frame that uploads and renders it
+ * takes longer than an idle frame is measured, and the budget for the next batch is chosen such that its frame is
+ * expected to take about the target frame time longer than an idle frame. The next batch is only added once the frame
+ * of the previous batch was measured.
  */
 public class MeshViewUpdateQueue<T> {
 
@@ -47,8 +54,28 @@ public class MeshViewUpdateQueue<T> {
   private final Map<ShapeKey<T>, MeshViewQueueEntry> keysToEntries = new HashMap<>();
   private final Timer timer = new Timer(true);
 
+  /**
+   * Pulse period of JavaFX, used as the duration of an idle frame until a shorter frame has been measured.
+   */
+  private static final long DEFAULT_PULSE_NANOS = 1_000_000_000L / 60;
+
   private int numElementsPerFrame = Viewer3DConfig.NUM_ELEMENTS_PER_FRAME_DEFAULT_VALUE;
   private long frameDelayMsec = Viewer3DConfig.FRAME_DELAY_MSEC_DEFAULT_VALUE;
+  private long targetFrameTimeMsec = Viewer3DConfig.TARGET_FRAME_TIME_MSEC_DEFAULT_VALUE;
+
+  private final AdaptiveMeshUploadBudget adaptiveBudget = new AdaptiveMeshUploadBudget(
+		  numElementsPerFrame,
+		  targetFrameTimeMsec * 1_000_000);
+
+  /**
+   * Created on the FX application thread when the first batch is added.
+   */
+  private FrameCostTimer frameCostTimer;
+
+  /**
+   * {@code true} while the frame of the last batch has not been measured yet, the next batch is scheduled after that.
+   */
+  private boolean isMeasuringFrame = false;
 
   /**
    * Places a request to add a mesh onto the scene into the queue.
@@ -71,7 +98,7 @@ public class MeshViewUpdateQueue<T> {
 
 	final boolean queueWasEmpty = priorityQueue.isEmpty();
 	priorityQueue.addOrUpdate(priority, key);
-	if (queueWasEmpty)
+	if (queueWasEmpty && !isMeasuringFrame)
 	  scheduleTask();
   }
 
@@ -104,9 +131,64 @@ public class MeshViewUpdateQueue<T> {
 
   public synchronized void update(final int numElementsPerFrame, final long frameDelayMsec) {
 
+	update(numElementsPerFrame, frameDelayMsec, this.targetFrameTimeMsec);
+  }
+
+  /**
+   * @param numElementsPerFrame maximum number of elements per frame, or initial number of elements per frame
+   *                            if {@code targetFrameTimeMsec} is positive
+   * @param frameDelayMsec      delay between two consecutive batches
+   * @param targetFrameTimeMsec time that adding a single batch should take on the FX thread. If positive, the number of
+   *                            elements per frame is adapted to the measured throughput, otherwise {@code numElementsPerFrame}
+   *                            is used as a fixed limit.
+   */
+  public synchronized void update(final int numElementsPerFrame, final long frameDelayMsec, final long targetFrameTimeMsec) {
+
 	this.numElementsPerFrame = numElementsPerFrame;
 	this.frameDelayMsec = frameDelayMsec;
-	LOG.debug("Update mesh update queue limits to numElementsPerFrame={}, frameDelayMsec={}", numElementsPerFrame, frameDelayMsec);
+	this.targetFrameTimeMsec = targetFrameTimeMsec;
+	this.adaptiveBudget.setTarget(numElementsPerFrame, targetFrameTimeMsec * 1_000_000);
+	LOG.debug(
+			"Update mesh update queue limits to numElementsPerFrame={}, frameDelayMsec={}, targetFrameTimeMsec={}",
+			numElementsPerFrame,
+			frameDelayMsec,
+			targetFrameTimeMsec);
+  }
+
+  /**
+   * @return the number of elements (vertices+normals+faces) that will be added to the scene in the next batch at most.
+   */
+  public synchronized int getCurrentNumElementsPerFrame() {
+
+	return isAdaptive() ? adaptiveBudget.getBudget() : numElementsPerFrame;
+  }
+
+  /**
+   * @return smoothed throughput in elements (vertices+normals+faces) per second of frame time, including upload and
+   * rendering, or {@link Double#NaN} if no batch has been measured yet.
+   */
+  public synchronized double getMeasuredThroughput() {
+
+	return adaptiveBudget.getThroughputPerSecond();
+  }
+
+  private boolean isAdaptive() {
+
+	return targetFrameTimeMsec > 0;
+  }
+
+  private synchronized void onFrameMeasured(final int numElements, final long frameCostNanos, final boolean budgetWasExhausted) {
+
+	isMeasuringFrame = false;
+	adaptiveBudget.update(numElements, frameCostNanos, budgetWasExhausted);
+	LOG.trace(
+			"Frame with {} elements took {}ns longer than an idle frame, throughput={} elements/s, next budget={}",
+			numElements,
+			frameCostNanos,
+			adaptiveBudget.getThroughputPerSecond(),
+			adaptiveBudget.getBudget());
+	if (!priorityQueue.isEmpty())
+	  scheduleTask();
   }
 
   private synchronized void scheduleTask() {
@@ -128,8 +210,11 @@ public class MeshViewUpdateQueue<T> {
 
 	final List<MeshViewQueueEntry> entriesToAdd = new ArrayList<>();
 	int numElements = 0;
+	final boolean budgetWasExhausted;
+	final boolean measureFrame;
 
 	synchronized (this) {
+	  final int numElementsPerFrame = getCurrentNumElementsPerFrame();
 	  while (!priorityQueue.isEmpty() && numElements <= numElementsPerFrame && numElements != -1) {
 		final ShapeKey<T> nextKey = priorityQueue.peek();
 		final MeshViewQueueEntry nextQueueEntry = keysToEntries.get(nextKey);
@@ -154,16 +239,68 @@ public class MeshViewUpdateQueue<T> {
 		priorityQueue.poll();
 	  }
 
-	  if (!priorityQueue.isEmpty())
+	  budgetWasExhausted = !priorityQueue.isEmpty();
+	  measureFrame = isMeasuringFrame = isAdaptive() && !entriesToAdd.isEmpty();
+	  if (!priorityQueue.isEmpty() && !measureFrame)
 		scheduleTask();
 	}
 
 	LOG.debug("Adding {} meshes which all together contain {} elements (vertices+normals+faces", entriesToAdd.size(), numElements);
+	final long startNanos = System.nanoTime();
 	for (final MeshViewQueueEntry entryToAdd : entriesToAdd) {
 	  entryToAdd.meshAndBlockGroup.getA().getChildren().add(entryToAdd.meshAndBlockToAdd.getA());
 	  entryToAdd.meshAndBlockGroup.getB().getChildren().add(entryToAdd.meshAndBlockToAdd.getB());
 	  if (entryToAdd.onCompleted != null)
 		entryToAdd.onCompleted.run();
 	}
+	final long insertNanos = System.nanoTime() - startNanos;
+	if (measureFrame) {
+	  if (frameCostTimer == null)
+		frameCostTimer = new FrameCostTimer();
+	  frameCostTimer.measure(numElements, insertNanos, budgetWasExhausted);
+	}
+  }
+
+  /**
+   * Measures the frame that uploads and renders a batch. JavaFX renders changes to the scene graph in the first pulse
+   * after they were made, and the next pulse cannot start before that frame is done. The time between these two pulses
+   * beyond the duration of an idle frame, plus the time of adding the batch to the scene graph, is the cost of the batch.
+   */
+  private final class FrameCostTimer extends AnimationTimer {
+
+	/* shortest time between two pulses measured so far */
+	private long idlePulseNanos = DEFAULT_PULSE_NANOS;
+
+	private long firstPulseNanos;
+
+	private int numPulses;
+
+	private int numElements;
+
+	private long insertNanos;
+
+	private boolean budgetWasExhausted;
+
+	private void measure(final int numElements, final long insertNanos, final boolean budgetWasExhausted) {
+
+	  this.numElements = numElements;
+	  this.insertNanos = insertNanos;
+	  this.budgetWasExhausted = budgetWasExhausted;
+	  this.numPulses = 0;
+	  start();
+	}
+
+	@Override
+	public void handle(final long now) {
+
+	  if (++numPulses == 1) {
+		firstPulseNanos = now;
+		return;
+	  }
+	  stop();
+	  final long frameNanos = now - firstPulseNanos;
+	  idlePulseNanos = Math.min(idlePulseNanos, frameNanos);
+	  onFrameMeasured(numElements, insertNanos + frameNanos - idlePulseNanos, budgetWasExhausted);
+	}
   }
 }
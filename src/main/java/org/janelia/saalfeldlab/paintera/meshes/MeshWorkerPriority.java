@@ -8,11 +8,21 @@ public class MeshWorkerPriority implements Comparable<MeshWorkerPriority> {
 
   public final double distanceFromCamera;
   public final int scaleLevel;
+  /**
+   * Occluded blocks are hidden behind other meshes and come after all blocks that are not occluded.
+   */
+  public final boolean isOccluded;
 
   public MeshWorkerPriority(final double distanceFromCamera, final int scaleLevel) {
 
+	this(distanceFromCamera, scaleLevel, false);
+  }
+
+  public MeshWorkerPriority(final double distanceFromCamera, final int scaleLevel, final boolean isOccluded) {
+
 	this.distanceFromCamera = distanceFromCamera;
 	this.scaleLevel = scaleLevel;
+	this.isOccluded = isOccluded;
   }
 
   @Override
@@ -21,6 +31,8 @@ public class MeshWorkerPriority implements Comparable<MeshWorkerPriority> {
 	// In case the distances are equal, give priority to lower-resolution blocks.
 	if (equals(other))
 	  return 0;
+	else if (isOccluded != other.isOccluded)
+	  return Boolean.compare(isOccluded, other.isOccluded);
 	else if (areDistancesEqual(distanceFromCamera, other.distanceFromCamera))
 	  return -Integer.compare(scaleLevel, other.scaleLevel);
 	else
@@ -35,7 +47,7 @@ public class MeshWorkerPriority implements Comparable<MeshWorkerPriority> {
 
 	if (obj instanceof MeshWorkerPriority) {
 	  final MeshWorkerPriority other = (MeshWorkerPriority)obj;
-	  return scaleLevel == other.scaleLevel && areDistancesEqual(distanceFromCamera, other.distanceFromCamera);
+	  return scaleLevel == other.scaleLevel && isOccluded == other.isOccluded && areDistancesEqual(distanceFromCamera, other.distanceFromCamera);
 	}
 
 	return false;
@@ -44,7 +56,7 @@ public class MeshWorkerPriority implements Comparable<MeshWorkerPriority> {
   @Override
   public String toString() {
 
-	return String.format("[distanceFromCamera=%.2f, scaleLevel=%d]", distanceFromCamera, scaleLevel);
+	return String.format("[distanceFromCamera=%.2f, scaleLevel=%d, isOccluded=%b]", distanceFromCamera, scaleLevel, isOccluded);
   }
 
   private static boolean areDistancesEqual(final double d1, final double d2) {
@@ -1,6 +1,8 @@
 package org.janelia.saalfeldlab.paintera.meshes;
 
 import bdv.util.Affine3DHelpers;
+import gnu.trove.set.TLongSet;
+import gnu.trove.set.hash.TLongHashSet;
 import net.imglib2.FinalRealInterval;
 import net.imglib2.Interval;
 import net.imglib2.img.cell.CellGrid;
@@ -14,27 +16,121 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.BooleanSupplier;
+import java.util.function.IntFunction;
+import java.util.stream.Collectors;
 import java.util.stream.LongStream;
+import java.util.stream.Stream;
 
+/**
+ * Builds the tree of renderer blocks that are visible in the 3D viewer at the desired level of detail.
+ * <p>
+ * An instance of this class keeps the state of the last update, so subsequent updates are cheaper than building the tree
+ * from scratch with {@link #createSceneBlockTree}:
+ * <ul>
+ *   <li>If neither the camera nor the relevant blocks have changed since the last update, the last tree is returned
+ *   as is. This is the common case for scene updates that are triggered by selection changes or mesh refreshes.</li>
+ *   <li>The intervals of the renderer blocks and the indices of their higher-res children do not depend on the camera
+ *   and are cached across updates, so a camera move only re-evaluates frustum culling and level of detail. Blocks that
+ *   were not visited by any of the last {@value #RETAINED_UPDATES} updates are dropped from the cache, so it does not
+ *   grow beyond the blocks around the recent views.</li>
+ *   <li>Traversal can be restricted to the blocks that contain any of the objects in the scene: blocks that do not
+ *   contain any of these objects are not subdivided.</li>
+ *   <li>The nodes of each level of the tree are evaluated in parallel.</li>
+ * </ul>
+ * The tree is not updated incrementally after a camera move: the distance from the camera, which determines the
+ * priority of each block, changes for every node, so every visited node is evaluated again.
+ */
 public class SceneBlockTree {
 
   private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
   private static final double[] levelOfDetailMaxPixels;
 
+  /**
+   * Minimum number of blocks at a level of the tree to evaluate them in parallel.
+   */
+  private static final int MIN_BLOCKS_FOR_PARALLEL_EVALUATION = 256;
+
+  /**
+   * Number of most recent updates whose blocks are kept in the cache.
+   */
+  private static final int RETAINED_UPDATES = 4;
+
   static {
 	levelOfDetailMaxPixels = new double[MeshSettings.Defaults.Values.getMaxLevelOfDetail() - MeshSettings.Defaults.Values.getMinLevelOfDetail() + 1];
 	Arrays.setAll(levelOfDetailMaxPixels, i -> Math.pow(2, levelOfDetailMaxPixels.length - 1 - i));
   }
 
-  private SceneBlockTree() {
+  private static final class CachedBlock {
+
+	final Interval interval;
+
+	/**
+	 * Indices of the intersecting blocks at the next higher resolution, computed on demand.
+	 */
+	volatile long[] children;
+
+	/**
+	 * Most recent update that visited this block.
+	 */
+	volatile long lastUpdate;
+
+	CachedBlock(final Interval interval) {
 
+	  this.interval = interval;
+	}
+  }
+
+  private static final class EvaluatedBlock {
+
+	final BlockTreeFlatKey key;
+	final BlockTreeFlatKey parentKey;
+	final double distanceFromCamera;
+	final long[] children;
+
+	EvaluatedBlock(final BlockTreeFlatKey key, final BlockTreeFlatKey parentKey, final double distanceFromCamera, final long[] children) {
+
+	  this.key = key;
+	  this.parentKey = parentKey;
+	  this.distanceFromCamera = distanceFromCamera;
+	  this.children = children;
+	}
+  }
+
+  private final DataSource<?, ?> source;
+
+  private final double[][] sourceScales;
+
+  private final Map<BlockTreeFlatKey, CachedBlock> blocks = new ConcurrentHashMap<>();
+
+  private CellGrid[] rendererGrids;
+
+  private ViewFrustum lastViewFrustum;
+
+  private double[] lastEyeToWorldTransform;
+
+  private int[] lastTreeParameters;
+
+  private TLongSet[] lastRelevantBlocks;
+
+  private BlockTree<BlockTreeFlatKey, BlockTreeNode<BlockTreeFlatKey>> lastBlockTree;
+
+  private long numUpdates = 0;
+
+  public SceneBlockTree(final DataSource<?, ?> source) {
+
+	this.source = source;
+	this.sourceScales = new double[source.getNumMipmapLevels()][];
+	Arrays.setAll(sourceScales, i -> DataSource.getScale(source, 0, i));
   }
 
   public static BlockTree<BlockTreeFlatKey, BlockTreeNode<BlockTreeFlatKey>> createSceneBlockTree(
@@ -68,7 +164,60 @@ public class SceneBlockTree {
 		  final CellGrid[] rendererGrids,
 		  final BooleanSupplier wasInterrupted) {
 
+	return new SceneBlockTree(source).update(
+			viewFrustum,
+			eyeToWorldTransform,
+			levelOfDetail,
+			coarsestScaleLevel,
+			finestScaleLevel,
+			rendererGrids,
+			null,
+			wasInterrupted
+	);
+  }
+
+  /**
+   * @param getRelevantSourceBlocks source blocks at the given scale level that contain any of the objects in the scene,
+   *                                e.g. from the label block lookup. If {@code null}, all blocks are considered.
+   * @param wasInterrupted          may be queried from any thread
+   * @return the scene block tree, or {@code null} if the update was interrupted. The returned tree is shared with
+   * subsequent updates with the same parameters and must not be modified.
+   */
+  public synchronized BlockTree<BlockTreeFlatKey, BlockTreeNode<BlockTreeFlatKey>> update(
+		  final ViewFrustum viewFrustum,
+		  final AffineTransform3D eyeToWorldTransform,
+		  final int levelOfDetail,
+		  final int coarsestScaleLevel,
+		  final int finestScaleLevel,
+		  final CellGrid[] rendererGrids,
+		  final IntFunction<Interval[]> getRelevantSourceBlocks,
+		  final BooleanSupplier wasInterrupted) {
+
+	if (this.rendererGrids != rendererGrids) {
+	  // block intervals and the tree topology depend on the renderer block size
+	  blocks.clear();
+	  lastBlockTree = null;
+	  this.rendererGrids = rendererGrids;
+	}
+
 	final int numScaleLevels = source.getNumMipmapLevels();
+	final double[] eyeToWorld = eyeToWorldTransform.getRowPackedCopy();
+	final int[] treeParameters = {levelOfDetail, coarsestScaleLevel, finestScaleLevel};
+	final TLongSet[] relevantBlocks = getRelevantSourceBlocks == null
+			? null
+			: getRelevantRendererBlocks(getRelevantSourceBlocks, finestScaleLevel, numScaleLevels - 1);
+
+	if (lastBlockTree != null
+			&& viewFrustum == lastViewFrustum
+			&& Arrays.equals(eyeToWorld, lastEyeToWorldTransform)
+			&& Arrays.equals(treeParameters, lastTreeParameters)
+			&& Arrays.equals(relevantBlocks, lastRelevantBlocks)) {
+	  LOG.debug("Scene block tree parameters have not changed, reusing the last tree");
+	  return lastBlockTree;
+	}
+
+	// only updates that traverse the tree count towards the retention of cached blocks
+	++numUpdates;
 
 	final double maxPixelsInProjectedVoxel = levelOfDetailMaxPixels[
 			Math.max(0, Math.min(levelOfDetail - MeshSettings.Defaults.Values.getMinLevelOfDetail(), levelOfDetailMaxPixels.length - 1))
@@ -91,66 +240,159 @@ public class SceneBlockTree {
 	  minMipmapPixelSize[i] = Arrays.stream(extractedScale).min().getAsDouble();
 	}
 
-	final double[][] sourceScales = new double[numScaleLevels][];
-	Arrays.setAll(sourceScales, i -> DataSource.getScale(source, 0, i));
-
 	final BlockTree<BlockTreeFlatKey, BlockTreeNode<BlockTreeFlatKey>> blockTree = new BlockTree<>();
-	final LinkedHashMap<BlockTreeFlatKey, BlockTreeFlatKey> blockAndParentQueue = new LinkedHashMap<>();
 
 	// start with all blocks at the lowest resolution
 	final int lowestResolutionScaleLevel = numScaleLevels - 1;
 	final CellGrid rendererGridAtLowestResolution = rendererGrids[lowestResolutionScaleLevel];
 	final long numBlocksAtLowestResolution = Intervals.numElements(rendererGridAtLowestResolution.getGridDimensions());
-	LongStream.range(0, numBlocksAtLowestResolution)
-			.forEach(blockIndex -> blockAndParentQueue.put(new BlockTreeFlatKey(lowestResolutionScaleLevel, blockIndex), null));
+	final LongStream rootBlockIndices = relevantBlocks == null
+			? LongStream.range(0, numBlocksAtLowestResolution)
+			: Arrays.stream(relevantBlocks[lowestResolutionScaleLevel].toArray()).sorted();
+	Map<BlockTreeFlatKey, BlockTreeFlatKey> blockAndParentQueue = new LinkedHashMap<>();
+	rootBlockIndices.forEach(blockIndex -> blockAndParentQueue.put(new BlockTreeFlatKey(lowestResolutionScaleLevel, blockIndex), null));
 
+	// the tree is built level by level, the blocks of each level are independent of each other
 	while (!blockAndParentQueue.isEmpty() && !wasInterrupted.getAsBoolean()) {
-	  final Iterator<Map.Entry<BlockTreeFlatKey, BlockTreeFlatKey>> it = blockAndParentQueue.entrySet().iterator();
-	  final Map.Entry<BlockTreeFlatKey, BlockTreeFlatKey> entry = it.next();
-	  it.remove();
-
-	  final BlockTreeFlatKey key = entry.getKey();
-	  final BlockTreeFlatKey parentKey = entry.getValue();
-
-	  final int scaleLevel = key.scaleLevel;
-	  final Interval blockInterval = Grids.getCellInterval(rendererGrids[scaleLevel], key.blockIndex);
-
-	  if (viewFrustumCullingInSourceSpace[scaleLevel].intersects(blockInterval)) {
-		final double distanceFromCamera = viewFrustumCullingInSourceSpace[scaleLevel].distanceFromCamera(blockInterval);
-		final double screenSizeToViewPlaneRatio = viewFrustum.screenSizeToViewPlaneRatio(distanceFromCamera);
-		final double screenPixelSize = screenSizeToViewPlaneRatio * minMipmapPixelSize[scaleLevel];
-		LOG.trace("scaleIndex={}, screenSizeToViewPlaneRatio={}, screenPixelSize={}", scaleLevel, screenSizeToViewPlaneRatio, screenPixelSize);
-
-		final BlockTreeNode<BlockTreeFlatKey> treeNode = new BlockTreeNode<>(parentKey, new HashSet<>(), distanceFromCamera);
-		blockTree.nodes.put(key, treeNode);
-		if (parentKey != null)
-		  blockTree.nodes.get(parentKey).children.add(key);
-
-		// check if needed to subdivide the block
-		if (scaleLevel > coarsestScaleLevel || (scaleLevel > finestScaleLevel && screenPixelSize > maxPixelsInProjectedVoxel)) {
-		  final int nextScaleLevel = scaleLevel - 1;
-		  final CellGrid rendererNextLevelGrid = rendererGrids[nextScaleLevel];
-
-		  final double[] relativeScales = new double[3];
-		  Arrays.setAll(relativeScales, d -> sourceScales[scaleLevel][d] / sourceScales[nextScaleLevel][d]);
-
-		  final double[] nextScaleLevelBlockMin = new double[3], nextScaleLevelBlockMax = new double[3];
-		  for (int d = 0; d < 3; ++d) {
-			nextScaleLevelBlockMin[d] = blockInterval.min(d) * relativeScales[d];
-			nextScaleLevelBlockMax[d] = (blockInterval.max(d) + 1) * relativeScales[d] - 1;
-		  }
-		  final Interval nextLevelBlockInterval = Intervals.smallestContainingInterval(new FinalRealInterval(nextScaleLevelBlockMin, nextScaleLevelBlockMax));
-
-		  // find out what blocks at higher resolution intersect with this block
-		  final long[] intersectingNextLevelBlockIndices = Grids.getIntersectingBlocks(nextLevelBlockInterval, rendererNextLevelGrid);
-		  for (final long intersectingNextLevelBlockIndex : intersectingNextLevelBlockIndices) {
-			final BlockTreeFlatKey childKey = new BlockTreeFlatKey(nextScaleLevel, intersectingNextLevelBlockIndex);
-			blockAndParentQueue.put(childKey, key);
-		  }
+	  final Stream<Map.Entry<BlockTreeFlatKey, BlockTreeFlatKey>> entries = blockAndParentQueue.size() < MIN_BLOCKS_FOR_PARALLEL_EVALUATION
+			  ? blockAndParentQueue.entrySet().stream()
+			  : new ArrayList<>(blockAndParentQueue.entrySet()).parallelStream();
+	  final List<EvaluatedBlock> evaluatedBlocks = entries
+			  .map(entry -> wasInterrupted.getAsBoolean() ? null : evaluateBlock(
+					  entry.getKey(),
+					  entry.getValue(),
+					  viewFrustum,
+					  viewFrustumCullingInSourceSpace,
+					  minMipmapPixelSize,
+					  maxPixelsInProjectedVoxel,
+					  coarsestScaleLevel,
+					  finestScaleLevel,
+					  relevantBlocks))
+			  .filter(Objects::nonNull)
+			  .collect(Collectors.toList());
+
+	  blockAndParentQueue = new LinkedHashMap<>();
+	  for (final EvaluatedBlock evaluatedBlock : evaluatedBlocks) {
+		final BlockTreeNode<BlockTreeFlatKey> treeNode = new BlockTreeNode<>(evaluatedBlock.parentKey, new HashSet<>(), evaluatedBlock.distanceFromCamera);
+		blockTree.nodes.put(evaluatedBlock.key, treeNode);
+		if (evaluatedBlock.parentKey != null)
+		  blockTree.nodes.get(evaluatedBlock.parentKey).children.add(evaluatedBlock.key);
+		if (evaluatedBlock.children != null) {
+		  final int nextScaleLevel = evaluatedBlock.key.scaleLevel - 1;
+		  for (final long childIndex : evaluatedBlock.children)
+			blockAndParentQueue.put(new BlockTreeFlatKey(nextScaleLevel, childIndex), evaluatedBlock.key);
 		}
 	  }
 	}
 
-	return !wasInterrupted.getAsBoolean() ? blockTree : null;
+	if (wasInterrupted.getAsBoolean())
+	  return null;
+
+	final long oldestRetainedUpdate = numUpdates - RETAINED_UPDATES + 1;
+	blocks.values().removeIf(block -> block.lastUpdate < oldestRetainedUpdate);
+
+	lastViewFrustum = viewFrustum;
+	lastEyeToWorldTransform = eyeToWorld;
+	lastTreeParameters = treeParameters;
+	lastRelevantBlocks = relevantBlocks;
+	lastBlockTree = blockTree;
+	return blockTree;
+  }
+
+  /**
+   * @return the evaluated block with the indices of its children if it needs to be subdivided, or {@code null} if the
+   * block is outside of the view frustum
+   */
+  private EvaluatedBlock evaluateBlock(
+		  final BlockTreeFlatKey key,
+		  final BlockTreeFlatKey parentKey,
+		  final ViewFrustum viewFrustum,
+		  final ViewFrustumCulling[] viewFrustumCullingInSourceSpace,
+		  final double[] minMipmapPixelSize,
+		  final double maxPixelsInProjectedVoxel,
+		  final int coarsestScaleLevel,
+		  final int finestScaleLevel,
+		  final TLongSet[] relevantBlocks) {
+
+	final int scaleLevel = key.scaleLevel;
+	final CachedBlock block = getBlock(key);
+
+	if (!viewFrustumCullingInSourceSpace[scaleLevel].intersects(block.interval))
+	  return null;
+
+	final double distanceFromCamera = viewFrustumCullingInSourceSpace[scaleLevel].distanceFromCamera(block.interval);
+	final double screenSizeToViewPlaneRatio = viewFrustum.screenSizeToViewPlaneRatio(distanceFromCamera);
+	final double screenPixelSize = screenSizeToViewPlaneRatio * minMipmapPixelSize[scaleLevel];
+	LOG.trace("scaleIndex={}, screenSizeToViewPlaneRatio={}, screenPixelSize={}", scaleLevel, screenSizeToViewPlaneRatio, screenPixelSize);
+
+	// check if needed to subdivide the block
+	final boolean subdivide = scaleLevel > coarsestScaleLevel || (scaleLevel > finestScaleLevel && screenPixelSize > maxPixelsInProjectedVoxel);
+	// Blocks without any relevant objects are not subdivided, but they are still part of the tree:
+	// the mesh generators use the structure of the tree to detect overhanging low-res parts of their objects.
+	final boolean isRelevant = relevantBlocks == null || relevantBlocks[scaleLevel].contains(key.blockIndex);
+	return new EvaluatedBlock(key, parentKey, distanceFromCamera, subdivide && isRelevant ? getChildren(key, block) : null);
+  }
+
+  private CachedBlock getBlock(final BlockTreeFlatKey key) {
+
+	final CachedBlock block = blocks.computeIfAbsent(key, k -> new CachedBlock(Grids.getCellInterval(rendererGrids[k.scaleLevel], k.blockIndex)));
+	block.lastUpdate = numUpdates;
+	return block;
+  }
+
+  private long[] getChildren(final BlockTreeFlatKey key, final CachedBlock block) {
+
+	long[] children = block.children;
+	if (children == null) {
+	  // find out what blocks at higher resolution intersect with this block
+	  final int nextScaleLevel = key.scaleLevel - 1;
+	  final Interval nextLevelBlockInterval = scaleInterval(block.interval, key.scaleLevel, nextScaleLevel);
+	  children = Grids.getIntersectingBlocks(nextLevelBlockInterval, rendererGrids[nextScaleLevel]);
+	  block.children = children;
+	}
+	return children;
+  }
+
+  /**
+   * Collects the renderer blocks that contain any of the relevant source blocks, at each scale level between
+   * {@code finestScaleLevel} and {@code coarsestScaleLevel}. A block is also relevant if any of its higher-res blocks are
+   * relevant, because small objects may vanish at lower resolutions.
+   */
+  private TLongSet[] getRelevantRendererBlocks(
+		  final IntFunction<Interval[]> getRelevantSourceBlocks,
+		  final int finestScaleLevel,
+		  final int coarsestScaleLevel) {
+
+	final TLongSet[] relevantBlocks = new TLongSet[sourceScales.length];
+	Arrays.setAll(relevantBlocks, i -> new TLongHashSet());
+	for (int scaleLevel = finestScaleLevel; scaleLevel <= coarsestScaleLevel; ++scaleLevel) {
+	  final TLongSet relevantBlocksAtLevel = relevantBlocks[scaleLevel];
+	  final CellGrid rendererGrid = rendererGrids[scaleLevel];
+	  for (final Interval sourceBlock : getRelevantSourceBlocks.apply(scaleLevel))
+		relevantBlocksAtLevel.addAll(Grids.getIntersectingBlocks(sourceBlock, rendererGrid));
+
+	  if (scaleLevel > finestScaleLevel) {
+		final int previousScaleLevel = scaleLevel - 1;
+		relevantBlocks[previousScaleLevel].forEach(blockIndex -> {
+		  final Interval blockInterval = getBlock(new BlockTreeFlatKey(previousScaleLevel, blockIndex)).interval;
+		  relevantBlocksAtLevel.addAll(Grids.getIntersectingBlocks(scaleInterval(blockInterval, previousScaleLevel, scaleLevel), rendererGrid));
+		  return true;
+		});
+	  }
+	}
+	return relevantBlocks;
+  }
+
+  private Interval scaleInterval(final Interval interval, final int fromScaleLevel, final int toScaleLevel) {
+
+	final double[] relativeScales = new double[3];
+	Arrays.setAll(relativeScales, d -> sourceScales[fromScaleLevel][d] / sourceScales[toScaleLevel][d]);
+
+	final double[] min = new double[3], max = new double[3];
+	for (int d = 0; d < 3; ++d) {
+	  min[d] = interval.min(d) * relativeScales[d];
+	  max[d] = (interval.max(d) + 1) * relativeScales[d] - 1;
+	}
+	return Intervals.smallestContainingInterval(new FinalRealInterval(min, max));
   }
 }
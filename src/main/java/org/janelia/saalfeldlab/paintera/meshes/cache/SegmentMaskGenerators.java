@@ -1,6 +1,5 @@
 package org.janelia.saalfeldlab.paintera.meshes.cache;
 
-import bdv.viewer.Source;
 import gnu.trove.iterator.TLongIterator;
 import gnu.trove.set.TLongSet;
 import gnu.trove.set.hash.TLongHashSet;
@@ -29,10 +28,21 @@ public class SegmentMaskGenerators {
 		  final DataSource<T, ?> source,
 		  final int level) {
 
-	final T t = source.getDataType();
+	return create(source.getDataType(), DataSource.getRelativeScales(source, 0, 0, level));
+  }
+
+  /**
+   * @param t              data type
+   * @param relativeScales scales of the level relative to the highest resolution, used for the min label ratio of
+   *                       {@link LabelMultisetType}
+   * @return mask generator for {@code t} or {@code null} if {@code t} is not supported
+   */
+  public static <T, B extends BooleanType<B>> BiFunction<TLongHashSet, Double, Converter<T, B>> create(
+		  final T t,
+		  final double[] relativeScales) {
 
 	if (t instanceof LabelMultisetType)
-	  return new LabelMultisetTypeMaskGenerator(source, level);
+	  return new LabelMultisetTypeMaskGenerator(relativeScales);
 
 	if (t instanceof IntegerType<?>) {
 	  final IntegerTypeMaskGenerator integerTypeMaskGenerator = new IntegerTypeMaskGenerator();
@@ -47,9 +57,8 @@ public class SegmentMaskGenerators {
 
 	private final long numFullResPixels;
 
-	LabelMultisetTypeMaskGenerator(final Source<?> source, final int level) {
+	LabelMultisetTypeMaskGenerator(final double[] scales) {
 
-	  final double[] scales = DataSource.getRelativeScales(source, 0, 0, level);
 	  // check that all scales are integers
 	  assert Arrays.stream(scales).allMatch(scale -> Util.isApproxEqual(scale, Math.round(scale), 1e-7));
 	  numFullResPixels = Arrays.stream(scales).mapToLong(Math::round).reduce(1, Math::multiplyExact);
@@ -0,0 +1,165 @@
+package org.janelia.saalfeldlab.paintera.metrics;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import org.janelia.saalfeldlab.util.NamedThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically appends the change of all metrics of a {@link MetricsRegistry} to a file.
+ * <p>
+ * {@link Format#CSV} writes one row per metric and period ({@code timestamp,name,kind,count,rate,meanMillis,value}),
+ * {@link Format#JSON} writes one JSON object per period and line.
+ */
+public class MetricsLogger implements Closeable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  public enum Format {
+	CSV,
+	JSON
+  }
+
+  private static final String CSV_HEADER = "timestamp,name,kind,count,rate,meanMillis,value";
+
+  private final MetricsRegistry registry;
+
+  private final Format format;
+
+  private final BufferedWriter writer;
+
+  private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("paintera-metrics-logger-%d", true));
+
+  private final Gson gson = new Gson();
+
+  private MetricsSnapshot previous;
+
+  /**
+   * Start logging. The file is created if it does not exist and appended to otherwise.
+   *
+   * @param registry   metrics to log
+   * @param file       log file
+   * @param format     log format
+   * @param periodMsec log interval in milliseconds
+   * @throws IOException if {@code file} cannot be opened
+   */
+  public MetricsLogger(
+		  final MetricsRegistry registry,
+		  final Path file,
+		  final Format format,
+		  final long periodMsec) throws IOException {
+
+	this.registry = registry;
+	this.format = format;
+	if (file.getParent() != null)
+	  Files.createDirectories(file.getParent());
+	final boolean writeHeader = format == Format.CSV && (!Files.exists(file) || Files.size(file) == 0);
+	this.writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+	if (writeHeader) {
+	  writer.write(CSV_HEADER);
+	  writer.newLine();
+	}
+	this.previous = registry.snapshot();
+	LOG.info("Logging metrics to {} every {}ms", file, periodMsec);
+	executor.scheduleAtFixedRate(this::log, periodMsec, periodMsec, TimeUnit.MILLISECONDS);
+  }
+
+  private synchronized void log() {
+
+	final MetricsSnapshot current = registry.snapshot();
+	final List<MetricsSnapshot.Delta> deltas = current.since(previous);
+	previous = current;
+	final String timestamp = Instant.now().toString();
+	try {
+	  if (format == Format.CSV)
+		writeCsv(timestamp, deltas);
+	  else
+		writeJson(timestamp, deltas);
+	  writer.flush();
+	} catch (final IOException e) {
+	  LOG.warn("Unable to write metrics", e);
+	}
+  }
+
+  private void writeCsv(final String timestamp, final List<MetricsSnapshot.Delta> deltas) throws IOException {
+
+	for (final MetricsSnapshot.Delta delta : deltas) {
+	  writer.write(String.format(
+			  Locale.ROOT,
+			  "%s,%s,%s,%d,%.3f,%s,%d",
+			  timestamp,
+			  delta.getName(),
+			  delta.getKind().name().toLowerCase(Locale.ROOT),
+			  delta.getCount(),
+			  delta.getRatePerSecond(),
+			  Double.isNaN(delta.getMeanMillis()) ? "" : String.format(Locale.ROOT, "%.3f", delta.getMeanMillis()),
+			  delta.getValue()));
+	  writer.newLine();
+	}
+  }
+
+  private void writeJson(final String timestamp, final List<MetricsSnapshot.Delta> deltas) throws IOException {
+
+	final JsonObject metrics = new JsonObject();
+	for (final MetricsSnapshot.Delta delta : deltas) {
+	  final JsonObject metric = new JsonObject();
+	  metric.addProperty("kind", delta.getKind().name().toLowerCase(Locale.ROOT));
+	  switch (delta.getKind()) {
+	  case TIMER:
+		metric.addProperty("count", delta.getCount());
+		metric.addProperty("rate", delta.getRatePerSecond());
+		if (!Double.isNaN(delta.getMeanMillis()))
+		  metric.addProperty("meanMillis", delta.getMeanMillis());
+		break;
+	  case COUNTER:
+		metric.addProperty("count", delta.getCount());
+		metric.addProperty("rate", delta.getRatePerSecond());
+		metric.addProperty("value", delta.getValue());
+		break;
+	  case GAUGE:
+		metric.addProperty("value", delta.getValue());
+		break;
+	  }
+	  metrics.add(delta.getName(), metric);
+	}
+	final JsonObject line = new JsonObject();
+	line.addProperty("timestamp", timestamp);
+	line.add("metrics", metrics);
+	writer.write(gson.toJson(line));
+	writer.newLine();
+  }
+
+  /**
+   * Stop logging, write the last interval, and close the file.
+   */
+  @Override
+  public void close() throws IOException {
+
+	executor.shutdown();
+	try {
+	  executor.awaitTermination(1, TimeUnit.SECONDS);
+	} catch (final InterruptedException e) {
+	  Thread.currentThread().interrupt();
+	}
+	synchronized (this) {
+	  log();
+	  writer.close();
+	}
+  }
+}
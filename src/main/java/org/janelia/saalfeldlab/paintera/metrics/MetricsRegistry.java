@@ -0,0 +1,140 @@
+package org.janelia.saalfeldlab.paintera.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Collects performance metrics from the rendering, caching, I/O, and meshing code paths.
+ * <p>
+ * Three kinds of metrics are supported:
+ * <ul>
+ *   <li>{@link Counter counters} count events, e.g. cache hits,</li>
+ *   <li>{@link Timer timers} count events and accumulate their durations, e.g. frame render times,</li>
+ *   <li>gauges sample an instantaneous value on demand, e.g. queue depths.</li>
+ * </ul>
+ * All values are cumulative so that any number of consumers (status bar, log file) can compute their own rates and
+ * averages from two consecutive {@link #snapshot() snapshots}, see {@link MetricsSnapshot#since(MetricsSnapshot)}.
+ * Recording a value is lock-free and cheap enough for the render loop.
+ */
+public class MetricsRegistry {
+
+  private static final MetricsRegistry GLOBAL = new MetricsRegistry();
+
+  public static class Counter {
+
+	private final LongAdder count = new LongAdder();
+
+	private Counter() {
+
+	}
+
+	public void increment() {
+
+	  count.increment();
+	}
+
+	public void add(final long n) {
+
+	  count.add(n);
+	}
+
+	public long getCount() {
+
+	  return count.sum();
+	}
+  }
+
+  public static class Timer {
+
+	private final LongAdder count = new LongAdder();
+
+	private final LongAdder totalNanos = new LongAdder();
+
+	private Timer() {
+
+	}
+
+	public void record(final long nanos) {
+
+	  count.increment();
+	  totalNanos.add(nanos);
+	}
+
+	/**
+	 * @param startNanos value of {@link System#nanoTime()} at the start of the event
+	 */
+	public void recordSince(final long startNanos) {
+
+	  record(System.nanoTime() - startNanos);
+	}
+
+	public long getCount() {
+
+	  return count.sum();
+	}
+
+	public long getTotalNanos() {
+
+	  return totalNanos.sum();
+	}
+  }
+
+  private final Map<String, Counter> counters = new ConcurrentSkipListMap<>();
+
+  private final Map<String, Timer> timers = new ConcurrentSkipListMap<>();
+
+  private final Map<String, LongSupplier> gauges = new ConcurrentSkipListMap<>();
+
+  /**
+   * @return registry shared by all of Paintera
+   */
+  public static MetricsRegistry getGlobal() {
+
+	return GLOBAL;
+  }
+
+  /**
+   * @return counter registered as {@code name}, created if necessary.
+   */
+  public Counter counter(final String name) {
+
+	return counters.computeIfAbsent(name, n -> new Counter());
+  }
+
+  /**
+   * @return timer registered as {@code name}, created if necessary.
+   */
+  public Timer timer(final String name) {
+
+	return timers.computeIfAbsent(name, n -> new Timer());
+  }
+
+  /**
+   * Register (or replace) a gauge. {@code value} is evaluated on every {@link #snapshot()} and must be thread safe.
+   */
+  public void gauge(final String name, final LongSupplier value) {
+
+	gauges.put(name, value);
+  }
+
+  public void removeGauge(final String name) {
+
+	gauges.remove(name);
+  }
+
+  /**
+   * @return current values of all metrics
+   */
+  public MetricsSnapshot snapshot() {
+
+	final List<MetricsSnapshot.Value> values = new ArrayList<>();
+	counters.forEach((name, counter) -> values.add(MetricsSnapshot.Value.counter(name, counter.getCount())));
+	timers.forEach((name, timer) -> values.add(MetricsSnapshot.Value.timer(name, timer.getCount(), timer.getTotalNanos())));
+	gauges.forEach((name, gauge) -> values.add(MetricsSnapshot.Value.gauge(name, gauge.getAsLong())));
+	return new MetricsSnapshot(System.nanoTime(), values);
+  }
+}
@@ -0,0 +1,182 @@
+package org.janelia.saalfeldlab.paintera.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cumulative values of all metrics of a {@link MetricsRegistry} at a point in time.
+ */
+public class MetricsSnapshot {
+
+  public enum Kind {
+	COUNTER,
+	TIMER,
+	GAUGE
+  }
+
+  /**
+   * Cumulative value of a single metric.
+   */
+  public static class Value {
+
+	private final String name;
+
+	private final Kind kind;
+
+	private final long count;
+
+	private final long totalNanos;
+
+	private final long value;
+
+	private Value(final String name, final Kind kind, final long count, final long totalNanos, final long value) {
+
+	  this.name = name;
+	  this.kind = kind;
+	  this.count = count;
+	  this.totalNanos = totalNanos;
+	  this.value = value;
+	}
+
+	static Value counter(final String name, final long count) {
+
+	  return new Value(name, Kind.COUNTER, count, 0, count);
+	}
+
+	static Value timer(final String name, final long count, final long totalNanos) {
+
+	  return new Value(name, Kind.TIMER, count, totalNanos, 0);
+	}
+
+	static Value gauge(final String name, final long value) {
+
+	  return new Value(name, Kind.GAUGE, 0, 0, value);
+	}
+
+	public String getName() {
+
+	  return name;
+	}
+
+	public Kind getKind() {
+
+	  return kind;
+	}
+  }
+
+  /**
+   * Change of a single metric between two snapshots.
+   */
+  public static class Delta {
+
+	private final String name;
+
+	private final Kind kind;
+
+	private final long count;
+
+	private final double ratePerSecond;
+
+	private final double meanMillis;
+
+	private final long value;
+
+	private Delta(final String name, final Kind kind, final long count, final double ratePerSecond, final double meanMillis, final long value) {
+
+	  this.name = name;
+	  this.kind = kind;
+	  this.count = count;
+	  this.ratePerSecond = ratePerSecond;
+	  this.meanMillis = meanMillis;
+	  this.value = value;
+	}
+
+	public String getName() {
+
+	  return name;
+	}
+
+	public Kind getKind() {
+
+	  return kind;
+	}
+
+	/**
+	 * @return number of events in the interval. Always {@code 0} for gauges.
+	 */
+	public long getCount() {
+
+	  return count;
+	}
+
+	/**
+	 * @return number of events per second in the interval. Always {@code 0} for gauges.
+	 */
+	public double getRatePerSecond() {
+
+	  return ratePerSecond;
+	}
+
+	/**
+	 * @return mean duration of the events in the interval for timers, {@code NaN} otherwise or if there were no events.
+	 */
+	public double getMeanMillis() {
+
+	  return meanMillis;
+	}
+
+	/**
+	 * @return current value for gauges, total count for counters, {@code 0} for timers.
+	 */
+	public long getValue() {
+
+	  return value;
+	}
+  }
+
+  private final long nanoTime;
+
+  private final List<Value> values;
+
+  MetricsSnapshot(final long nanoTime, final List<Value> values) {
+
+	this.nanoTime = nanoTime;
+	this.values = Collections.unmodifiableList(values);
+  }
+
+  public long getNanoTime() {
+
+	return nanoTime;
+  }
+
+  public List<Value> getValues() {
+
+	return values;
+  }
+
+  /**
+   * @param previous earlier snapshot of the same registry, or {@code null} to compute the change since start-up.
+   * @return change of all metrics since {@code previous}
+   */
+  public List<Delta> since(final MetricsSnapshot previous) {
+
+	final Map<String, Value> previousValues = new HashMap<>();
+	if (previous != null)
+	  previous.values.forEach(v -> previousValues.put(v.name, v));
+	final double seconds = previous == null ? Double.NaN : (nanoTime - previous.nanoTime) * 1e-9;
+
+	final List<Delta> deltas = new ArrayList<>();
+	for (final Value current : values) {
+	  final Value before = previousValues.get(current.name);
+	  final long count = current.count - (before == null ? 0 : before.count);
+	  final long totalNanos = current.totalNanos - (before == null ? 0 : before.totalNanos);
+	  final double rate = current.kind == Kind.GAUGE || !(seconds > 0) ? 0.0 : count / seconds;
+	  final double mean = current.kind == Kind.TIMER && count > 0 ? totalNanos * 1e-6 / count : Double.NaN;
+	  deltas.add(new Delta(current.name, current.kind, current.kind == Kind.GAUGE ? 0 : count, rate, mean, current.value));
+	}
+	return deltas;
+  }
+}
@@ -1,10 +1,13 @@
 package org.janelia.saalfeldlab.paintera.serialization;
 
+import com.google.gson.Gson;
 import com.google.gson.JsonDeserializationContext;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonSerializationContext;
 
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.Map;
 
 public class SerializationHelpers {
@@ -13,6 +16,12 @@ public class SerializationHelpers {
 
   public static final String DATA_KEY = "data";
 
+  /**
+   * Objects that were deserialized ahead of time, by the json object with class info that they were deserialized from,
+   * see {@link #preload(JsonObject, Object)}.
+   */
+  private static final Map<JsonElement, Object> PRELOADED = Collections.synchronizedMap(new IdentityHashMap<>());
+
   public static <T> JsonElement serializeWithClassInfo(final T object, final JsonSerializationContext context) {
 
 	return serializeWithClassInfo(object, context, TYPE_KEY, DATA_KEY);
@@ -41,11 +50,45 @@ public class SerializationHelpers {
 		  final String typeKey,
 		  final String dataKey) throws ClassNotFoundException {
 
+	final Object preloaded = PRELOADED.get(map);
+	if (preloaded != null)
+	  return (T)preloaded;
+
+	return context.deserialize(map.get(dataKey), classFromClassInfo(map, typeKey));
+  }
+
+  /**
+   * Deserialize {@code map} without a deserialization context, e.g. ahead of time on another thread, see
+   * {@link #preload(JsonObject, Object)}.
+   */
+  static <T> T deserializeFromClassInfo(final JsonObject map, final Gson gson) throws ClassNotFoundException {
+
+	return gson.fromJson(map.get(DATA_KEY), classFromClassInfo(map, TYPE_KEY));
+  }
+
+  /**
+   * Return {@code object} from {@link #deserializeFromClassInfo(JsonObject, JsonDeserializationContext)} for
+   * {@code map} instead of deserializing it again, until {@link #removePreloaded(JsonObject)} is called.
+   *
+   * @param map    json object with class info, compared by identity
+   * @param object deserialized from {@code map}
+   */
+  static void preload(final JsonObject map, final Object object) {
+
+	PRELOADED.put(map, object);
+  }
+
+  static void removePreloaded(final JsonObject map) {
+
+	PRELOADED.remove(map);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> Class<T> classFromClassInfo(final JsonObject map, final String typeKey) throws ClassNotFoundException {
+
 	String clsName = map.get(typeKey).getAsString();
 	clsName = TMP_FQDN_METADATA_MAP.getOrDefault(clsName, clsName);
-
-	final Class<T> clazz = (Class<T>)Class.forName(clsName);
-	return context.deserialize(map.get(dataKey), clazz);
+	return (Class<T>)Class.forName(clsName);
   }
 
   private static final Map<String, String> TMP_FQDN_METADATA_MAP = Map.of(
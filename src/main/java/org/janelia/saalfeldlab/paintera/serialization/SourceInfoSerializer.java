@@ -8,6 +8,7 @@ import com.google.gson.JsonObject;
 import com.google.gson.JsonParseException;
 import com.google.gson.JsonSerializationContext;
 import gnu.trove.iterator.TIntIterator;
+import gnu.trove.list.array.TIntArrayList;
 import gnu.trove.set.hash.TIntHashSet;
 import net.imglib2.exception.IncompatibleTypeException;
 import org.janelia.saalfeldlab.paintera.serialization.sourcestate.SourceStateSerialization;
@@ -16,6 +17,7 @@ import org.janelia.saalfeldlab.paintera.state.LabelSourceState;
 import org.janelia.saalfeldlab.paintera.state.RawSourceState;
 import org.janelia.saalfeldlab.paintera.state.SourceInfo;
 import org.janelia.saalfeldlab.paintera.state.SourceState;
+import org.janelia.saalfeldlab.util.NamedThreadFactory;
 import org.scijava.plugin.Plugin;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -30,12 +32,13 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.function.IntConsumer;
 import java.util.stream.Collectors;
-import java.util.stream.IntStream;
-import java.util.stream.Stream;
 
 @Plugin(type = PainteraSerialization.PainteraSerializer.class)
 public class SourceInfoSerializer implements PainteraSerialization.PainteraSerializer<SourceInfo> {
@@ -54,6 +57,8 @@ public class SourceInfoSerializer implements PainteraSerialization.PainteraSeria
 
   private static final String STATE_TYPE_KEY = "type";
 
+  private static final String BACKEND_KEY = "backend";
+
   private static final String SOURCE_TYPE_KEY = "sourceType";
 
   private static final String SOURCE_KEY = "source";
@@ -98,6 +103,12 @@ public class SourceInfoSerializer implements PainteraSerialization.PainteraSeria
 	return context.serialize(elements);
   }
 
+  /**
+   * Deserialize all source states of {@code serializedSourceInfo} and add them in their serialized order.
+   * The backends of the sources are opened concurrently, see {@link #makeStates(JsonArray, BiConsumer, Consumer, Gson)}.
+   * {@code addState} is called on the calling thread for each state as soon as it and all states before it are
+   * available.
+   */
   public static void populate(
 		  final Consumer<SourceState<?, ?>> addState,
 		  final IntConsumer currentSourceIndex,
@@ -111,14 +122,12 @@ public class SourceInfoSerializer implements PainteraSerialization.PainteraSeria
 		  HasCyclicDependencies,
 		  IOException {
 
-	final SourceState<?, ?>[] states = makeStates(
+	makeStates(
 			serializedSourceInfo.get(SOURCES_KEY).getAsJsonArray(),
 			logSourceForDependencies,
+			addState,
 			gson
 	);
-	Arrays
-			.stream(states)
-			.forEach(addState::accept);
 	currentSourceIndex.accept(serializedSourceInfo.get(CURRENT_SOURCE_INDEX_KEY).getAsInt());
   }
 
@@ -133,6 +142,35 @@ public class SourceInfoSerializer implements PainteraSerialization.PainteraSeria
 		  JsonParseException,
 		  IOException {
 
+	return makeStates(serializedStates, logSourceForDependencies, state -> {
+	}, gson);
+  }
+
+  /**
+   * Deserialize source states in the order of their {@code dependsOn} relations. Opening the backends of the states,
+   * i.e. their containers and metadata, is I/O bound and independent of other states, so all backends are deserialized
+   * concurrently on a bounded thread pool first. The states themselves are constructed on the calling thread, in
+   * topological order, as soon as their backends are available: constructing a state registers listeners on the
+   * viewer and creates JavaFX nodes. Deprecated states are deserialized on the calling thread as a whole.
+   *
+   * @param logSourceForDependencies called with the index of each state as soon as it is deserialized and before any of
+   *                                 its dependents are deserialized
+   * @param onStateReady             called on the calling thread with each state in serialized order, as soon as the
+   *                                 state and all states before it are deserialized
+   */
+  @SuppressWarnings("unchecked")
+  public static SourceState<?, ?>[] makeStates(
+		  final JsonArray serializedStates,
+		  final BiConsumer<Integer, SourceState<?, ?>> logSourceForDependencies,
+		  final Consumer<SourceState<?, ?>> onStateReady,
+		  final Gson gson) throws
+		  ClassNotFoundException,
+		  UndefinedDependency,
+		  HasCyclicDependencies,
+		  IncompatibleTypeException,
+		  JsonParseException,
+		  IOException {
+
 	final int numStates = serializedStates.size();
 	final TIntHashSet[] dependsOn = new TIntHashSet[numStates];
 	LOG.debug("Deserializing {}", serializedStates);
@@ -149,74 +187,162 @@ public class SourceInfoSerializer implements PainteraSerialization.PainteraSeria
 	  dependsOn[i] = new TIntHashSet(depends);
 	}
 
-	if (hasCycles(dependsOn)) {
+	final int[] topologicalOrder = topologicalOrder(dependsOn);
+	if (topologicalOrder == null) {
 	  throw new HasCyclicDependencies(dependsOn);
 	}
 
+	final Class<? extends SourceState<?, ?>>[] classes = new Class[numStates];
+	for (int k = 0; k < numStates; ++k) {
+	  classes[k] = (Class<? extends SourceState<?, ?>>)Class.forName(serializedStates.get(k).getAsJsonObject().get(STATE_TYPE_KEY).getAsString());
+	}
+
 	final SourceState<?, ?>[] sourceStates = new SourceState[numStates];
+	if (numStates == 0) {
+	  return sourceStates;
+	}
 
-	for (int i = 0; i < numStates && Arrays.stream(sourceStates).filter(s -> s == null).count() > 0; ++i) {
-	  for (int k = 0; k < numStates; ++k) {
-		if (sourceStates[k] == null) {
-		  final SourceState<?, ?>[] dependencies = IntStream
-				  .of(dependsOn[k].toArray())
-				  .mapToObj(m -> sourceStates[m])
-				  .toArray(SourceState[]::new);
-		  if (Stream.of(dependencies).noneMatch(Objects::isNull)) {
-			final JsonObject state = serializedStates.get(k).getAsJsonObject();
-			@SuppressWarnings("unchecked") final Class<? extends SourceState<?, ?>> clazz = (Class<? extends SourceState<?, ?>>)Class
-					.forName(state.get(STATE_TYPE_KEY).getAsString());
-			LOG.debug("Deserializing state={}, class={}", state, clazz);
-			if (LabelSourceState.class.equals(clazz)) {
-			  LOG.debug("Trying to de-serialize deprecated LabelSourceState into ConnectomicsLabelState");
-			  sourceStates[k] = gson.fromJson(state.get(STATE_KEY), (Type)clazz);
-			} else if (RawSourceState.class.equals(clazz)) {
-			  LOG.debug("Trying to de-serialize deprecated RawSourceState into ConnectomicsRawState");
-			  sourceStates[k] = gson.fromJson(state.get(STATE_KEY), (Type)clazz);
-			} else if (ChannelSourceState.class.equals(clazz)) {
-			  LOG.debug("Trying to de-serialize deprecated ChannelSourceState into ConnectomicsChannelState");
-			  sourceStates[k] = gson.fromJson(state.get(STATE_KEY), (Type)clazz);
-			} else
-			  sourceStates[k] = gson.fromJson(state.get(STATE_KEY), clazz);
-			logSourceForDependencies.accept(k, sourceStates[k]);
-		  }
-		}
-	  }
+	final JsonObject[] backends = new JsonObject[numStates];
+	for (int k = 0; k < numStates; ++k) {
+	  if (!isDeprecated(classes[k]))
+		backends[k] = backendWithClassInfo(serializedStates.get(k).getAsJsonObject().get(STATE_KEY));
 	}
 
-	if (Arrays.stream(sourceStates).anyMatch(Objects::isNull)) {
-	  throw new RuntimeException("Unable to deserialize all source states");
+	final int numBackends = (int)Arrays.stream(backends).filter(Objects::nonNull).count();
+	final ExecutorService es = Executors.newFixedThreadPool(
+			Math.max(1, Math.min(numBackends, Runtime.getRuntime().availableProcessors())),
+			new NamedThreadFactory("project-loader-%d", true));
+	try {
+	  final CompletableFuture<?>[] preloadedBackends = new CompletableFuture[numStates];
+	  // submitted in topological order, so the backends of the first states are opened first
+	  for (final int k : topologicalOrder) {
+		final JsonObject backend = backends[k];
+		if (backend != null)
+		  preloadedBackends[k] = CompletableFuture.supplyAsync(() -> preloadBackend(backend, k, gson), es);
+	  }
+
+	  int numReady = 0;
+	  for (final int k : topologicalOrder) {
+		final JsonObject backend = backends[k];
+		if (backend != null) {
+		  final Object preloaded = preloadedBackends[k].join();
+		  // if the backend could not be opened, deserialize it again below to report the error
+		  if (preloaded != null)
+			SerializationHelpers.preload(backend, preloaded);
+		}
+		try {
+		  sourceStates[k] = deserializeState(serializedStates, k, classes[k], logSourceForDependencies, gson);
+		} finally {
+		  if (backend != null)
+			SerializationHelpers.removePreloaded(backend);
+		}
+		for (; numReady < numStates && sourceStates[numReady] != null; ++numReady)
+		  onStateReady.accept(sourceStates[numReady]);
+	  }
+	} finally {
+	  es.shutdownNow();
 	}
 
 	return sourceStates;
 
   }
 
-  private static boolean hasCycles(final TIntHashSet[] nodeEdgeMap) {
+  /**
+   * @return the backend of a serialized source state, if it is serialized with class info, {@code null} otherwise
+   */
+  private static JsonObject backendWithClassInfo(final JsonElement state) {
+
+	if (state == null || !state.isJsonObject())
+	  return null;
+	final JsonElement backend = state.getAsJsonObject().get(BACKEND_KEY);
+	if (backend == null || !backend.isJsonObject())
+	  return null;
+	final JsonObject map = backend.getAsJsonObject();
+	return map.has(SerializationHelpers.TYPE_KEY) && map.has(SerializationHelpers.DATA_KEY) ? map : null;
+  }
+
+  /**
+   * @return the deserialized backend, or {@code null} if it could not be deserialized
+   */
+  private static Object preloadBackend(final JsonObject backend, final int k, final Gson gson) {
 
-	final TIntHashSet visitedNodes = new TIntHashSet();
-	for (int node = 0; node < nodeEdgeMap.length; ++node) {
-	  visit(nodeEdgeMap, node, visitedNodes);
+	try {
+	  return SerializationHelpers.deserializeFromClassInfo(backend, gson);
+	} catch (final Exception e) {
+	  LOG.debug("Unable to open backend of source state {} ahead of time", k, e);
+	  return null;
 	}
-	return false;
   }
 
-  private static boolean visit(
-		  final TIntHashSet[] nodeEdgeMap,
-		  final int node,
-		  final TIntHashSet hasVisited) {
+  private static boolean isDeprecated(final Class<?> clazz) {
+
+	return LabelSourceState.class.equals(clazz) || RawSourceState.class.equals(clazz) || ChannelSourceState.class.equals(clazz);
+  }
 
-	if (hasVisited.contains(node)) {
-	  return true;
+  private static SourceState<?, ?> deserializeState(
+		  final JsonArray serializedStates,
+		  final int k,
+		  final Class<? extends SourceState<?, ?>> clazz,
+		  final BiConsumer<Integer, SourceState<?, ?>> logSourceForDependencies,
+		  final Gson gson) {
+
+	final JsonObject state = serializedStates.get(k).getAsJsonObject();
+	LOG.debug("Deserializing state={}, class={}", state, clazz);
+	final SourceState<?, ?> sourceState;
+	if (LabelSourceState.class.equals(clazz)) {
+	  LOG.debug("Trying to de-serialize deprecated LabelSourceState into ConnectomicsLabelState");
+	  sourceState = gson.fromJson(state.get(STATE_KEY), (Type)clazz);
+	} else if (RawSourceState.class.equals(clazz)) {
+	  LOG.debug("Trying to de-serialize deprecated RawSourceState into ConnectomicsRawState");
+	  sourceState = gson.fromJson(state.get(STATE_KEY), (Type)clazz);
+	} else if (ChannelSourceState.class.equals(clazz)) {
+	  LOG.debug("Trying to de-serialize deprecated ChannelSourceState into ConnectomicsChannelState");
+	  sourceState = gson.fromJson(state.get(STATE_KEY), (Type)clazz);
+	} else
+	  sourceState = gson.fromJson(state.get(STATE_KEY), clazz);
+	if (sourceState == null) {
+	  throw new JsonParseException("Unable to deserialize source state " + k + ": " + state);
 	}
-	hasVisited.add(node);
-	for (final TIntIterator it = nodeEdgeMap[node].iterator(); it.hasNext(); ) {
-	  final boolean foundAlreadyVisitedNode = visit(nodeEdgeMap, it.next(), hasVisited);
-	  if (foundAlreadyVisitedNode) {
-		return foundAlreadyVisitedNode;
+	logSourceForDependencies.accept(k, sourceState);
+	return sourceState;
+  }
+
+  /**
+   * @param nodeEdgeMap dependencies of each node
+   * @return all nodes such that each node comes after its dependencies, or {@code null} if there are cyclic dependencies
+   */
+  private static int[] topologicalOrder(final TIntHashSet[] nodeEdgeMap) {
+
+	final int numNodes = nodeEdgeMap.length;
+	final int[] numDependencies = new int[numNodes];
+	final TIntArrayList[] dependents = new TIntArrayList[numNodes];
+	for (int node = 0; node < numNodes; ++node) {
+	  dependents[node] = new TIntArrayList();
+	}
+	for (int node = 0; node < numNodes; ++node) {
+	  numDependencies[node] = nodeEdgeMap[node].size();
+	  for (final TIntIterator it = nodeEdgeMap[node].iterator(); it.hasNext(); ) {
+		dependents[it.next()].add(node);
+	  }
+	}
+
+	final int[] order = new int[numNodes];
+	int numOrdered = 0;
+	for (int node = 0; node < numNodes; ++node) {
+	  if (numDependencies[node] == 0) {
+		order[numOrdered++] = node;
+	  }
+	}
+	for (int i = 0; i < numOrdered; ++i) {
+	  final TIntArrayList nodeDependents = dependents[order[i]];
+	  for (int d = 0; d < nodeDependents.size(); ++d) {
+		final int dependent = nodeDependents.get(d);
+		if (--numDependencies[dependent] == 0) {
+		  order[numOrdered++] = dependent;
+		}
 	  }
 	}
-	return false;
+	return numOrdered == numNodes ? order : null;
   }
 
   @Override
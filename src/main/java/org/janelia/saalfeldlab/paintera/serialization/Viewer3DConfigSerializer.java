@@ -32,6 +32,8 @@ public class Viewer3DConfigSerializer implements PainteraSerialization.PainteraA
 
   private static final String FRAME_DELAY_MSEC_KEY = "frameDelayMsec";
 
+  private static final String TARGET_FRAME_TIME_MSEC_KEY = "targetFrameTimeMsec";
+
   private static final String SCENE_UPDATE_DELAY_MSEC_KEY = "sceneUpdateDelayMsec";
 
   @Override
@@ -56,6 +58,8 @@ public class Viewer3DConfigSerializer implements PainteraSerialization.PainteraA
 	  config.numElementsPerFrameProperty().set(map.get(NUM_ELEMENTS_PER_FRAME_KEY).getAsInt());
 	if (map.has(FRAME_DELAY_MSEC_KEY))
 	  config.frameDelayMsecProperty().set(map.get(FRAME_DELAY_MSEC_KEY).getAsLong());
+	if (map.has(TARGET_FRAME_TIME_MSEC_KEY))
+	  config.targetFrameTimeMsecProperty().set(map.get(TARGET_FRAME_TIME_MSEC_KEY).getAsLong());
 	if (map.has(SCENE_UPDATE_DELAY_MSEC_KEY))
 	  config.sceneUpdateDelayMsecProperty().set(map.get(SCENE_UPDATE_DELAY_MSEC_KEY).getAsLong());
 	return config;
@@ -76,6 +80,7 @@ public class Viewer3DConfigSerializer implements PainteraSerialization.PainteraA
 	map.addProperty(RENDERER_BLOCK_SIZE_KEY, config.rendererBlockSizeProperty().get());
 	map.addProperty(NUM_ELEMENTS_PER_FRAME_KEY, config.numElementsPerFrameProperty().get());
 	map.addProperty(FRAME_DELAY_MSEC_KEY, config.frameDelayMsecProperty().get());
+	map.addProperty(TARGET_FRAME_TIME_MSEC_KEY, config.targetFrameTimeMsecProperty().get());
 	map.addProperty(SCENE_UPDATE_DELAY_MSEC_KEY, config.sceneUpdateDelayMsecProperty().get());
 	return map;
   }
@@ -19,7 +19,7 @@ import org.janelia.saalfeldlab.paintera.state.IntersectingSourceState;
 import org.janelia.saalfeldlab.paintera.state.SourceState;
 import org.janelia.saalfeldlab.paintera.viewer3d.ViewFrustum;
 import org.janelia.saalfeldlab.util.Colors;
-import org.janelia.saalfeldlab.util.concurrent.HashPriorityQueueBasedTaskExecutor;
+import org.janelia.saalfeldlab.util.concurrent.PriorityTaskExecutor;
 import org.scijava.plugin.Plugin;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -56,7 +56,7 @@ public class IntersectingSourceStateDeserializer implements JsonDeserializer<Int
 
   private final ExecutorService manager;
 
-  private final HashPriorityQueueBasedTaskExecutor<MeshWorkerPriority> workers;
+  private final PriorityTaskExecutor<MeshWorkerPriority> workers;
 
   public IntersectingSourceStateDeserializer(
 		  final IntFunction<SourceState<?, ?>> dependsOn,
@@ -66,7 +66,7 @@ public class IntersectingSourceStateDeserializer implements JsonDeserializer<Int
 		  final ObjectProperty<ViewFrustum> viewFrustumProperty,
 		  final ObjectProperty<AffineTransform3D> eyeToWorldTransformProperty,
 		  final ExecutorService manager,
-		  final HashPriorityQueueBasedTaskExecutor<MeshWorkerPriority> workers) {
+		  final PriorityTaskExecutor<MeshWorkerPriority> workers) {
 
 	super();
 	this.dependsOn = dependsOn;
@@ -3,7 +3,6 @@ package org.janelia.saalfeldlab.paintera.state;
 import bdv.util.volatiles.SharedQueue;
 import javafx.beans.binding.Bindings;
 import javafx.beans.binding.ObjectBinding;
-import javafx.beans.property.BooleanProperty;
 import javafx.beans.property.ObjectProperty;
 import javafx.beans.property.SimpleBooleanProperty;
 import javafx.beans.property.SimpleObjectProperty;
@@ -11,14 +10,10 @@ import javafx.beans.value.ObservableValue;
 import javafx.scene.Group;
 import javafx.scene.Node;
 import javafx.scene.paint.Color;
-import net.imglib2.Cursor;
 import net.imglib2.Interval;
-import net.imglib2.Point;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.Volatile;
-import net.imglib2.algorithm.fill.FloodFill;
 import net.imglib2.algorithm.lazy.Lazy;
-import net.imglib2.algorithm.neighborhood.DiamondShape;
 import net.imglib2.cache.CacheLoader;
 import net.imglib2.cache.Invalidate;
 import net.imglib2.cache.img.CachedCellImg;
@@ -27,6 +22,7 @@ import net.imglib2.cache.volatiles.LoadingStrategy;
 import net.imglib2.converter.ARGBColorConverter;
 import net.imglib2.img.basictypeaccess.AccessFlags;
 import net.imglib2.img.basictypeaccess.volatiles.array.VolatileByteArray;
+import net.imglib2.img.cell.CellGrid;
 import net.imglib2.realtransform.AffineTransform3D;
 import net.imglib2.type.BooleanType;
 import net.imglib2.type.logic.BoolType;
@@ -35,8 +31,6 @@ import net.imglib2.type.numeric.integer.UnsignedByteType;
 import net.imglib2.type.volatiles.VolatileUnsignedByteType;
 import net.imglib2.util.Intervals;
 import net.imglib2.util.ValueTriple;
-import net.imglib2.view.IntervalView;
-import net.imglib2.view.Views;
 import org.janelia.saalfeldlab.paintera.PainteraBaseView;
 import org.janelia.saalfeldlab.paintera.cache.InvalidateDelegates;
 import org.janelia.saalfeldlab.paintera.composition.Composite;
@@ -56,17 +50,17 @@ import org.janelia.saalfeldlab.paintera.viewer3d.ViewFrustum;
 import org.janelia.saalfeldlab.util.Colors;
 import org.janelia.saalfeldlab.util.NamedThreadFactory;
 import org.janelia.saalfeldlab.util.TmpVolatileHelpers;
-import org.janelia.saalfeldlab.util.concurrent.HashPriorityQueueBasedTaskExecutor;
+import org.janelia.saalfeldlab.util.concurrent.PriorityTaskExecutor;
+import org.janelia.saalfeldlab.util.grids.SeededComponentFill;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import tmp.net.imglib2.converter.read.ConvertedRandomAccessibleInterval;
 
 import java.lang.invoke.MethodHandles;
 import java.util.Arrays;
-import java.util.HashSet;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.function.BiPredicate;
 import java.util.function.Predicate;
 import java.util.stream.Stream;
 
@@ -78,7 +72,9 @@ public class IntersectingSourceState<K1 extends MeshCacheKey, K2 extends MeshCac
 
   public static final boolean DEFAULT_MESHES_ENABLED = true;
 
-  public static final ExecutorService INTERSECTION_FILL_SERVICE = Executors.newFixedThreadPool(Math.min(3, Runtime.getRuntime().availableProcessors()), new NamedThreadFactory("intersection-floodfill-%s", true));
+  public static final ExecutorService INTERSECTION_FILL_SERVICE = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new NamedThreadFactory("intersection-floodfill-%s", true, Thread.MIN_PRIORITY));
+
+  private static final int NUM_FILL_TASKS = 4 * Runtime.getRuntime().availableProcessors();
 
   private final ObjectProperty<K1> fillSourceMeshCacheKeyProperty = new SimpleObjectProperty<>(null);
 
@@ -145,7 +141,7 @@ public class IntersectingSourceState<K1 extends MeshCacheKey, K2 extends MeshCac
 		  final ObjectProperty<ViewFrustum> viewFrustumProperty,
 		  final ObjectProperty<AffineTransform3D> eyeToWorldTransformProperty,
 		  final ExecutorService manager,
-		  final HashPriorityQueueBasedTaskExecutor<MeshWorkerPriority> workers) {
+		  final PriorityTaskExecutor<MeshWorkerPriority> workers) {
 
 	this(
 			fillSource,
@@ -176,7 +172,7 @@ public class IntersectingSourceState<K1 extends MeshCacheKey, K2 extends MeshCac
 		  final ObjectProperty<ViewFrustum> viewFrustumProperty,
 		  final ObjectProperty<AffineTransform3D> eyeToWorldTransformProperty,
 		  final ExecutorService manager,
-		  final HashPriorityQueueBasedTaskExecutor<MeshWorkerPriority> workers,
+		  final PriorityTaskExecutor<MeshWorkerPriority> workers,
 		  final ObservableValue<K1> fillSourceChangeListener,
 		  final ObservableValue<K2> seedSourceChangeListener,
 		  final GetBlockListFor<K1> fillBlockListFor,
@@ -219,7 +215,7 @@ public class IntersectingSourceState<K1 extends MeshCacheKey, K2 extends MeshCac
 		  final ObjectProperty<ViewFrustum> viewFrustumProperty,
 		  final ObjectProperty<AffineTransform3D> eyeToWorldTransformProperty,
 		  final ExecutorService manager,
-		  final HashPriorityQueueBasedTaskExecutor<MeshWorkerPriority> workers,
+		  final PriorityTaskExecutor<MeshWorkerPriority> workers,
 		  final GetUnionBlockListFor<K1, K2> getUnionBlockListFor) {
 
 	CacheLoader<ShapeKey<IntersectingSourceStateMeshCacheKey<K1, K2>>, PainteraTriangleMesh> loader = getCacheLoader();
@@ -296,6 +292,7 @@ public class IntersectingSourceState<K1 extends MeshCacheKey, K2 extends MeshCac
 	meshManager.getRendererSettings().getBlockSizeProperty().bind(paintera.viewer3D().rendererBlockSizeProperty());
 	meshManager.getRendererSettings().getNumElementsPerFrameProperty().bind(paintera.viewer3D().numElementsPerFrameProperty());
 	meshManager.getRendererSettings().getFrameDelayMsecProperty().bind(paintera.viewer3D().frameDelayMsecProperty());
+	meshManager.getRendererSettings().getTargetFrameTimeMsecProperty().bind(paintera.viewer3D().targetFrameTimeMsecProperty());
 	meshManager.getRendererSettings().getSceneUpdateDelayMsecProperty().bind(paintera.viewer3D().sceneUpdateDelayMsecProperty());
 	meshManager.getColorProperty().bind(colorProperty);
 
@@ -347,6 +344,7 @@ public class IntersectingSourceState<K1 extends MeshCacheKey, K2 extends MeshCac
    * <p>
    * Note: The resultant data source is not a strict intersection. Instead, it takes all seed points from the strict intersection
    * of the two sourcecs, and runs a flood fill algorithm into the fillDataSource, starting at each of the seed points.
+   * The fill is computed for each level as a whole, see {@link SeededComponentFill}.
    *
    * @param seedDataSource First source to intersect against
    * @param fillDataSource Second source to intersect against. Used for intersection Fill
@@ -377,6 +375,7 @@ public class IntersectingSourceState<K1 extends MeshCacheKey, K2 extends MeshCac
 	final RandomAccessibleInterval<VolatileUnsignedByteType>[] vdata = new RandomAccessibleInterval[transforms.length];
 	final Invalidate<Long>[] invalidate = new Invalidate[transforms.length];
 	final Invalidate<Long>[] vinvalidate = new Invalidate[transforms.length];
+	final Invalidate<Long>[] fills = new Invalidate[transforms.length];
 
 	final var fillUpdateListener = new SimpleBooleanProperty(false);
 
@@ -402,12 +401,18 @@ public class IntersectingSourceState<K1 extends MeshCacheKey, K2 extends MeshCac
 
 	  LOG.debug("Making intersect for level={} with block size={}", level, cellDimensions);
 
-	  final BooleanProperty seedPointsUpdated = new SimpleBooleanProperty(false);
-	  final HashSet<Point> seedPoints = new HashSet<>();
-
-	  final CachedCellImg<UnsignedByteType, ?> img = generateLazyImgWithSeedIntersectionDetection(fillDataSource, seedDataSource, level, cellDimensions, seedPointsUpdated, seedPoints);
-
-	  addFillFromSeedsListener(fillDataSource, level, seedPointsUpdated, seedPoints, img, fillUpdateListener);
+	  final int targetLevel = level;
+	  final LevelFill<B> levelFill = new LevelFill<>(
+			  fillDataSource,
+			  seedDataSource,
+			  level,
+			  new CellGrid(Intervals.dimensionsAsLongArray(fillRAI), cellDimensions),
+			  () -> {
+				invalidate[targetLevel].invalidateAll(Long.MAX_VALUE);
+				vinvalidate[targetLevel].invalidateAll(Long.MAX_VALUE);
+				fillUpdateListener.set(true);
+			  });
+	  final CachedCellImg<UnsignedByteType, ?> img = Lazy.generate(fillRAI, cellDimensions, new UnsignedByteType(), AccessFlags.setOf(AccessFlags.VOLATILE), levelFill::fillCell);
 
 	  // TODO cannot use VolatileViews because we need access to cache
 	  final TmpVolatileHelpers.RaiWithInvalidate<VolatileUnsignedByteType> vimg = TmpVolatileHelpers.createVolatileCachedCellImgWithInvalidate(
@@ -417,6 +422,7 @@ public class IntersectingSourceState<K1 extends MeshCacheKey, K2 extends MeshCac
 
 	  data[level] = img;
 	  vdata[level] = vimg.getRai();
+	  fills[level] = levelFill;
 	  invalidate[level] = img.getCache();
 	  vinvalidate[level] = vimg.getInvalidate();
 	  transforms[level] = tf1;
@@ -424,102 +430,100 @@ public class IntersectingSourceState<K1 extends MeshCacheKey, K2 extends MeshCac
 
 	return new ObservableDataSource<>(fillUpdateListener, new RandomAccessibleIntervalDataSource<>(
 			new ValueTriple<>(data, vdata, transforms),
-			new InvalidateDelegates<>(Arrays.asList(new InvalidateDelegates<>(invalidate), new InvalidateDelegates<>(vinvalidate))),
+			new InvalidateDelegates<>(Arrays.asList(new InvalidateDelegates<>(fills), new InvalidateDelegates<>(invalidate), new InvalidateDelegates<>(vinvalidate))),
 			Interpolations.nearestNeighbor(),
 			Interpolations.nearestNeighbor(),
 			name));
   }
 
-  private static <B extends BooleanType<B>> void addFillFromSeedsListener(
-		  final DataSource<B, Volatile<B>> fillSource,
-		  final int level,
-		  final BooleanProperty seedPointsUpdated,
-		  final HashSet<Point> seedPoints,
-		  final RandomAccessibleInterval<UnsignedByteType> img,
-		  final BooleanProperty fillUpdateProp) {
+  /**
+   * Seeded fill of a single level. The fill is computed for the whole level when the first cell is loaded, cells that
+   * are loaded before it is complete stay empty and are invalidated once it is. Invalidating any cell discards the fill,
+   * the connectivity of the whole level may have changed.
+   */
+  private static class LevelFill<B extends BooleanType<B>> implements Invalidate<Long> {
+
+	private final DataSource<B, Volatile<B>> fillDataSource;
 
-	seedPointsUpdated.addListener((obs, oldv, newv) -> {
-	  if (newv) {
-		final Point[] seedPointsCopy;
-		synchronized (seedPoints) {
-		  seedPointsCopy = seedPoints.toArray(Point[]::new);
-		  seedPoints.clear();
-		  seedPointsUpdated.set(false);
-		}
-		INTERSECTION_FILL_SERVICE.submit(() -> {
-		  final var filledFromSeeds = fillFromSeedPoints(fillSource.getDataSource(0, level), img, seedPointsCopy);
-		  fillUpdateProp.set(filledFromSeeds);
+	private final DataSource<B, Volatile<B>> seedDataSource;
+
+	private final int level;
+
+	private final CellGrid grid;
+
+	private final Runnable onFilled;
+
+	private CompletableFuture<SeededComponentFill<B>> fill = null;
+
+	private LevelFill(
+			final DataSource<B, Volatile<B>> fillDataSource,
+			final DataSource<B, Volatile<B>> seedDataSource,
+			final int level,
+			final CellGrid grid,
+			final Runnable onFilled) {
+
+	  this.fillDataSource = fillDataSource;
+	  this.seedDataSource = seedDataSource;
+	  this.level = level;
+	  this.grid = grid;
+	  this.onFilled = onFilled;
+	}
+
+	private synchronized CompletableFuture<SeededComponentFill<B>> getOrStartFill() {
+
+	  if (fill == null) {
+		LOG.debug("Filling intersection at level {} with grid {}", level, grid);
+		final CompletableFuture<SeededComponentFill<B>> started = SeededComponentFill.computeAsync(
+				fillDataSource.getDataSource(0, level),
+				seedDataSource.getDataSource(0, level),
+				grid,
+				INTERSECTION_FILL_SERVICE,
+				NUM_FILL_TASKS);
+		fill = started;
+		started.whenComplete((result, error) -> {
+		  if (error != null)
+			LOG.error("Unable to fill intersection at level {}", level, error);
+		  else if (isCurrent(started))
+			onFilled.run();
 		});
 	  }
-	});
-  }
+	  return fill;
+	}
 
-  private static <B extends BooleanType<B>> CachedCellImg<UnsignedByteType, ?> generateLazyImgWithSeedIntersectionDetection(
-		  DataSource<B, Volatile<B>> fillDataSource, DataSource<B, Volatile<B>> seedDataSource,
-		  int level, int[] cellDimensions,
-		  BooleanProperty seedPointsUpdated, HashSet<Point> seedPoints) {
-
-	final var initFillRAI = fillDataSource.getDataSource(0, level);
-	return Lazy.generate(initFillRAI, cellDimensions, new UnsignedByteType(), AccessFlags.setOf(AccessFlags.VOLATILE), cell -> {
-	  INTERSECTION_FILL_SERVICE.submit(() -> {
-		final var fillRAI = fillDataSource.getDataSource(0, level);
-		final var seedRAI = seedDataSource.getDataSource(0, level);
-		LOG.debug("Updating Intersection Points");
-		final var newIntersectionPoints = detectIntersectionPoints(seedRAI, fillRAI, cell);
-		if (!newIntersectionPoints.isEmpty()) {
-		  synchronized (seedPoints) {
-			seedPoints.addAll(newIntersectionPoints);
-			seedPointsUpdated.set(true);
-		  }
-		}
-	  });
-	});
-  }
+	private synchronized boolean isCurrent(final CompletableFuture<SeededComponentFill<B>> fill) {
 
-  private static <B extends BooleanType<B>> boolean fillFromSeedPoints(RandomAccessibleInterval<B> fillRAI, RandomAccessibleInterval<UnsignedByteType> img, Point[] seedPointsCopy) {
-
-	LOG.debug("Filling from seed points");
-	boolean filledFromSeed = false;
-	for (Point seed : seedPointsCopy) {
-	  if (img.getAt(seed).get() == 0) {
-		LOG.trace("Intersection Floodfill at seed:  {}", seed);
-		FloodFill.fill(
-				fillRAI,
-				img,
-				seed,
-				new UnsignedByteType(1),
-				new DiamondShape(1),
-				(BiPredicate<B, UnsignedByteType>)(source, target) -> source.get() && target.get() == 0
-		);
-		filledFromSeed = true;
-	  }
+	  return this.fill == fill;
 	}
-	return filledFromSeed;
-  }
 
-  private static <B extends BooleanType<B>> HashSet<Point> detectIntersectionPoints(RandomAccessibleInterval<B> seedRAI, RandomAccessibleInterval<B> fillRAI, RandomAccessibleInterval<UnsignedByteType> cell) {
+	private void fillCell(final RandomAccessibleInterval<UnsignedByteType> cell) {
 
-	LOG.trace(
-			"Detecting seed point in cell {} {}",
-			Intervals.minAsLongArray(cell),
-			Intervals.maxAsLongArray(cell)
-	);
-	final IntervalView<B> seedInterval = Views.interval(Views.extendZero(seedRAI), cell);
-	final IntervalView<B> fillInterval = Views.interval(Views.extendZero(fillRAI), cell);
-	final Cursor<B> seedCursor = Views.flatIterable(seedInterval).cursor();
-	final Cursor<B> fillCursor = Views.flatIterable(fillInterval).cursor();
-	final Cursor<UnsignedByteType> targetCursor = Views.flatIterable(cell).localizingCursor();
-
-	final var seedSet = new HashSet<Point>();
-	while (targetCursor.hasNext() && seedCursor.hasNext() && fillCursor.hasNext()) {
-	  final UnsignedByteType targetType = targetCursor.next();
-	  final B seedType = seedCursor.next();
-	  final B fillType = fillCursor.next();
-	  if (targetType.get() == 0 && fillType.get() && seedType.get()) {
-		seedSet.add(targetCursor.positionAsPoint());
-	  }
+	  final CompletableFuture<SeededComponentFill<B>> fill = getOrStartFill();
+	  if (fill.isDone() && !fill.isCompletedExceptionally())
+		fill.join().fill(cell, new UnsignedByteType(1));
+	}
+
+	private synchronized void reset() {
+
+	  fill = null;
+	}
+
+	@Override
+	public void invalidate(final Long key) {
+
+	  reset();
+	}
+
+	@Override
+	public void invalidateIf(final long parallelismThreshold, final Predicate<Long> condition) {
+
+	  reset();
+	}
+
+	@Override
+	public void invalidateAll(final long parallelismThreshold) {
+
+	  reset();
 	}
-	return seedSet;
   }
 
   @Override
@@ -85,7 +85,7 @@ import org.janelia.saalfeldlab.paintera.stream.ModalGoldenAngleSaturatedHighligh
 import org.janelia.saalfeldlab.paintera.stream.ShowOnlySelectedInStreamToggle;
 import org.janelia.saalfeldlab.paintera.viewer3d.ViewFrustum;
 import org.janelia.saalfeldlab.util.Colors;
-import org.janelia.saalfeldlab.util.concurrent.HashPriorityQueueBasedTaskExecutor;
+import org.janelia.saalfeldlab.util.concurrent.PriorityTaskExecutor;
 import org.janelia.saalfeldlab.util.grids.LabelBlockLookupNoBlocks;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -243,7 +243,7 @@ public class LabelSourceState<D extends IntegerType<D>, T extends Volatile<D> &
 		  final ObjectProperty<ViewFrustum> viewFrustumProperty,
 		  final ObjectProperty<AffineTransform3D> eyeToWorldTransformProperty,
 		  final ExecutorService meshManagerExecutors,
-		  final HashPriorityQueueBasedTaskExecutor<MeshWorkerPriority> meshWorkersExecutors) {
+		  final PriorityTaskExecutor<MeshWorkerPriority> meshWorkersExecutors) {
 
 	return simpleSourceFromSingleRAI(
 			data,
@@ -271,7 +271,7 @@ public class LabelSourceState<D extends IntegerType<D>, T extends Volatile<D> &
 		  final ObjectProperty<ViewFrustum> viewFrustumProperty,
 		  final ObjectProperty<AffineTransform3D> eyeToWorldTransformProperty,
 		  final ExecutorService meshManagerExecutors,
-		  final HashPriorityQueueBasedTaskExecutor<MeshWorkerPriority> meshWorkersExecutors) {
+		  final PriorityTaskExecutor<MeshWorkerPriority> meshWorkersExecutors) {
 
 	return simpleSourceFromSingleRAI(
 			data,
@@ -300,7 +300,7 @@ public class LabelSourceState<D extends IntegerType<D>, T extends Volatile<D> &
 		  final ObjectProperty<ViewFrustum> viewFrustumProperty,
 		  final ObjectProperty<AffineTransform3D> eyeToWorldTransformProperty,
 		  final ExecutorService meshManagerExecutors,
-		  final HashPriorityQueueBasedTaskExecutor<MeshWorkerPriority> meshWorkersExecutors) {
+		  final PriorityTaskExecutor<MeshWorkerPriority> meshWorkersExecutors) {
 
 	return simpleSourceFromSingleRAI(
 			data,
@@ -330,7 +330,7 @@ public class LabelSourceState<D extends IntegerType<D>, T extends Volatile<D> &
 		  final ObjectProperty<ViewFrustum> viewFrustumProperty,
 		  final ObjectProperty<AffineTransform3D> eyeToWorldTransformProperty,
 		  final ExecutorService meshManagerExecutors,
-		  final HashPriorityQueueBasedTaskExecutor<MeshWorkerPriority> meshWorkersExecutors) {
+		  final PriorityTaskExecutor<MeshWorkerPriority> meshWorkersExecutors) {
 
 	if (!Views.isZeroMin(data)) {
 	  return simpleSourceFromSingleRAI(
@@ -547,6 +547,7 @@ public class LabelSourceState<D extends IntegerType<D>, T extends Volatile<D> &
 	meshManager.getRendererSettings().getBlockSizeProperty().bind(paintera.viewer3D().rendererBlockSizeProperty());
 	meshManager.getRendererSettings().getNumElementsPerFrameProperty().bind(paintera.viewer3D().numElementsPerFrameProperty());
 	meshManager.getRendererSettings().getFrameDelayMsecProperty().bind(paintera.viewer3D().frameDelayMsecProperty());
+	meshManager.getRendererSettings().getTargetFrameTimeMsecProperty().bind(paintera.viewer3D().targetFrameTimeMsecProperty());
 	meshManager.getRendererSettings().getSceneUpdateDelayMsecProperty().bind(paintera.viewer3D().sceneUpdateDelayMsecProperty());
   }
 
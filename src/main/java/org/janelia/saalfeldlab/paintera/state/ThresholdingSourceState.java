@@ -379,6 +379,7 @@ public class ThresholdingSourceState<D extends RealType<D>, T extends AbstractVo
 	this.meshes.getRendererSettings().getBlockSizeProperty().bind(paintera.viewer3D().rendererBlockSizeProperty());
 	this.meshes.getRendererSettings().getNumElementsPerFrameProperty().bind(paintera.viewer3D().numElementsPerFrameProperty());
 	this.meshes.getRendererSettings().getFrameDelayMsecProperty().bind(paintera.viewer3D().frameDelayMsecProperty());
+	this.meshes.getRendererSettings().getTargetFrameTimeMsecProperty().bind(paintera.viewer3D().targetFrameTimeMsecProperty());
 	this.meshes.getRendererSettings().getSceneUpdateDelayMsecProperty().bind(paintera.viewer3D().sceneUpdateDelayMsecProperty());
 	this.meshes.getColorProperty().bind(this.color);
 
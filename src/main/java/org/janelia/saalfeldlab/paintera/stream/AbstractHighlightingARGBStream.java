@@ -14,8 +14,11 @@
 package org.janelia.saalfeldlab.paintera.stream;
 
 import java.lang.invoke.MethodHandles;
+import java.util.function.Consumer;
 
 import org.janelia.saalfeldlab.fx.ObservableWithListenersList;
+import org.janelia.saalfeldlab.paintera.cache.BudgetedCache;
+import org.janelia.saalfeldlab.paintera.cache.CacheBudget;
 import org.janelia.saalfeldlab.paintera.control.lock.LockedSegments;
 import org.janelia.saalfeldlab.paintera.control.selection.SelectedSegments;
 import org.slf4j.Logger;
@@ -79,14 +82,86 @@ public abstract class AbstractHighlightingARGBStream extends ObservableWithListe
 	this.selectedSegments = selectedSegments;
 	this.lockedSegments = lockedSegments;
 	this.colorFromSegmentId.addListener((obs, oldv, newv) -> stateChanged());
+	CacheBudget.getGlobal().register(this.argbCacheAccounting);
   }
 
-  protected TLongIntHashMap argbCache = new TLongIntHashMap(
-		  Constants.DEFAULT_CAPACITY,
-		  Constants.DEFAULT_LOAD_FACTOR,
-		  Label.TRANSPARENT,
-		  0
-  );
+  /**
+   * Render threads read this map without locking. It is never cleared, but replaced with a fresh map when colors are
+   * reset or evicted, so readers only ever see a map that is not cleared or compacted concurrently. Puts are
+   * synchronized on {@link #argbCacheLock}.
+   */
+  protected volatile TLongIntHashMap argbCache = newArgbCache();
+
+  protected final Object argbCacheLock = new Object();
+
+  /**
+   * Colors are generated deterministically and are cheap to re-create, see {@link BudgetedCache#getReloadCost()}
+   */
+  private static final double ARGB_CACHE_RELOAD_COST = 0.1;
+
+  /**
+   * Size of a single entry of {@link #argbCache}: key, value, and state.
+   */
+  private static final long ARGB_CACHE_BYTES_PER_ENTRY = Long.BYTES + Integer.BYTES + Byte.BYTES;
+
+  private volatile long argbCacheLastAccessTick = CacheBudget.getGlobal().currentTick();
+
+  private final BudgetedCache argbCacheAccounting = new BudgetedCache() {
+
+	private final BudgetedCache.EvictionCandidate evictAll = new BudgetedCache.EvictionCandidate() {
+
+	  @Override
+	  public long getLastAccessTick() {
+
+		return argbCacheLastAccessTick;
+	  }
+
+	  @Override
+	  public long getEstimatedBytes() {
+
+		return estimateArgbCacheBytes();
+	  }
+
+	  @Override
+	  public long evict() {
+
+		final long bytes = getEstimatedBytes();
+		evictArgbCache();
+		return bytes - getEstimatedBytes();
+	  }
+	};
+
+	@Override
+	public String getName() {
+
+	  return "Colors: " + AbstractHighlightingARGBStream.this.getClass().getSimpleName();
+	}
+
+	@Override
+	public long getEstimatedBytes() {
+
+	  return estimateArgbCacheBytes();
+	}
+
+	@Override
+	public long getNumEntries() {
+
+	  return argbCache.size();
+	}
+
+	@Override
+	public double getReloadCost() {
+
+	  return ARGB_CACHE_RELOAD_COST;
+	}
+
+	@Override
+	public void collectEvictionCandidates(final Consumer<EvictionCandidate> candidates) {
+
+	  if (argbCache.size() > explicitlySpecifiedColors.size())
+		candidates.accept(evictAll);
+	}
+  };
 
   //	public void highlight( final TLongHashSet highlights )
   //	{
@@ -238,10 +313,7 @@ public abstract class AbstractHighlightingARGBStream extends ObservableWithListe
   public void clearCache() {
 
 	LOG.debug("Before clearing cache: {}", argbCache);
-	synchronized (argbCache) {
-	  argbCache.clear();
-	  argbCache.putAll(this.explicitlySpecifiedColors);
-	}
+	resetArgbCache();
 	LOG.debug("After clearing cache: {}", argbCache);
 	// TODO is this stateChanged bad here?
 	// stateChanged() probably triggers a re-render, which calls clearCache,
@@ -250,6 +322,53 @@ public abstract class AbstractHighlightingARGBStream extends ObservableWithListe
 	stateChanged();
   }
 
+  private long estimateArgbCacheBytes() {
+
+	return argbCache.capacity() * ARGB_CACHE_BYTES_PER_ENTRY;
+  }
+
+  /**
+   * Release the memory held by cached colors when the {@link CacheBudget} is exceeded. In contrast to
+   * {@link #clearCache()}, this does not notify listeners: the colors are re-generated identically on demand.
+   */
+  private void evictArgbCache() {
+
+	resetArgbCache();
+	LOG.debug("Evicted cached colors");
+  }
+
+  /**
+   * Publish a fresh map that contains only the {@link #explicitlySpecifiedColors}.
+   */
+  private void resetArgbCache() {
+
+	synchronized (argbCacheLock) {
+	  final TLongIntHashMap argbCache = newArgbCache();
+	  argbCache.putAll(this.explicitlySpecifiedColors);
+	  this.argbCache = argbCache;
+	}
+  }
+
+  /**
+   * Mark the cached colors as used for the {@link CacheBudget}. Called on every lookup, so the tick is only written
+   * when it changed.
+   */
+  protected void touchArgbCache() {
+
+	final long tick = CacheBudget.getGlobal().currentTick();
+	if (tick != argbCacheLastAccessTick)
+	  argbCacheLastAccessTick = tick;
+  }
+
+  private static TLongIntHashMap newArgbCache() {
+
+	return new TLongIntHashMap(
+			Constants.DEFAULT_CAPACITY,
+			Constants.DEFAULT_LOAD_FACTOR,
+			Label.TRANSPARENT,
+			0);
+  }
+
   public void setColorFromSegmentId(final boolean fromSegmentId) {
 
 	this.colorFromSegmentId.set(fromSegmentId);
@@ -16,6 +16,7 @@ package org.janelia.saalfeldlab.paintera.stream;
 import org.janelia.saalfeldlab.paintera.control.lock.LockedSegments;
 import org.janelia.saalfeldlab.paintera.control.selection.SelectedSegments;
 
+import gnu.trove.map.hash.TLongIntHashMap;
 import net.imglib2.type.label.Label;
 
 /**
@@ -44,6 +45,7 @@ abstract public class AbstractSaturatedHighlightingARGBStream extends AbstractHi
 
 	final boolean isActiveSegment = isActiveSegment(fragmentId);
 	final long assigned = colorFromSegmentId ? selectedSegments.getAssignment().getSegment(fragmentId) : fragmentId;
+	final TLongIntHashMap argbCache = this.argbCache;
 	if (!argbCache.contains(assigned)) {
 	  double x = getDouble(seed + assigned);
 	  x *= 6.0;
@@ -58,10 +60,11 @@ abstract public class AbstractSaturatedHighlightingARGBStream extends AbstractHi
 
 	  final int argb = argb(r, g, b, alpha);
 
-	  synchronized (argbCache) {
+	  synchronized (argbCacheLock) {
 		argbCache.put(assigned, argb);
 	  }
 	}
+	touchArgbCache();
 
 	int argb = argbCache.get(assigned);
 	if (Label.INVALID == fragmentId) {
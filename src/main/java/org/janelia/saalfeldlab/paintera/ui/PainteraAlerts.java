@@ -45,6 +45,7 @@ import org.janelia.saalfeldlab.fx.ui.NumberField;
 import org.janelia.saalfeldlab.fx.ui.ObjectField;
 import org.janelia.saalfeldlab.fx.util.InvokeOnJavaFXApplicationThread;
 import org.janelia.saalfeldlab.labels.blocks.LabelBlockLookup;
+import org.janelia.saalfeldlab.n5.N5FSWriter;
 import org.janelia.saalfeldlab.n5.N5Reader;
 import org.janelia.saalfeldlab.n5.N5Writer;
 import org.janelia.saalfeldlab.paintera.LockFile;
@@ -56,12 +57,14 @@ import org.janelia.saalfeldlab.paintera.id.IdService;
 import org.janelia.saalfeldlab.paintera.id.N5IdService;
 import org.janelia.saalfeldlab.util.grids.LabelBlockLookupAllBlocks;
 import org.janelia.saalfeldlab.util.grids.LabelBlockLookupNoBlocks;
+import org.janelia.saalfeldlab.util.grids.LabelBlockLookupWithBackgroundIndex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
 import java.lang.invoke.MethodHandles;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
@@ -160,7 +163,9 @@ public class PainteraAlerts {
   }
 
   /**
-   * Get a {@link LabelBlockLookup} that returns all contained blocks ("OK") or no blocks ("CANCEL")
+   * Get a {@link LabelBlockLookup} that returns all contained blocks ("OK") or no blocks ("CANCEL"). If the dataset is
+   * in a writable N5 container on the file system, the lookup for "OK" is a {@link LabelBlockLookupWithBackgroundIndex}
+   * that returns all contained blocks only until the label-to-block index is built in the background.
    *
    * @param source used to determine block sizes for marching cubes
    * @return {@link LabelBlockLookup} that returns all contained blocks ("OK") or no blocks ("CANCEL")
@@ -170,12 +175,16 @@ public class PainteraAlerts {
 		  final String group,
 		  final DataSource<?, ?> source) {
 
+	final boolean canBuildIndex = reader instanceof N5FSWriter;
 	final Alert alert = PainteraAlerts.alert(Alert.AlertType.CONFIRMATION);
 	alert.setHeaderText("Define label-to-block-lookup for on-the-fly mesh generation");
 	final TextArea ta = new TextArea(String.format("Could not deserialize label-to-block-lookup for dataset `%s' in N5 container `%s' " +
 			"that is required for on the fly mesh generation. " +
-			"If you are not interested in 3D meshes, press cancel. Otherwise, press OK. Generating meshes on the fly will be slow " +
-			"as the sparsity of objects can not be utilized.", group, reader));
+			"If you are not interested in 3D meshes, press cancel. Otherwise, press OK. " +
+			(canBuildIndex
+					? "The label-to-block-lookup will be built in the background and stored in `%s'. Until then, generating meshes on the fly will be slow."
+					: "Generating meshes on the fly will be slow as the sparsity of objects can not be utilized."),
+			group, reader, canBuildIndex ? labelBlockIndexRoot((N5FSWriter)reader, group) : null));
 	ta.setEditable(false);
 	ta.setWrapText(true);
 	alert.getDialogPane().setContent(ta);
@@ -189,6 +198,11 @@ public class PainteraAlerts {
 		blockSizes[i] = new int[grids[i].numDimensions()];
 		grids[i].cellDimensions(blockSizes[i]);
 	  }
+	  if (canBuildIndex) {
+		final String root = labelBlockIndexRoot((N5FSWriter)reader, group);
+		LOG.debug("Returning block lookup with background index in {}.", root);
+		return new LabelBlockLookupWithBackgroundIndex(root, dims, blockSizes);
+	  }
 	  LOG.debug("Returning block lookup returning all blocks.");
 	  return new LabelBlockLookupAllBlocks(dims, blockSizes);
 	} else {
@@ -196,6 +210,11 @@ public class PainteraAlerts {
 	}
   }
 
+  private static String labelBlockIndexRoot(final N5FSWriter writer, final String group) {
+
+	return Paths.get(writer.getBasePath(), group, "label-to-block-mapping").toString();
+  }
+
   /**
    * Get a {@link LabelBlockLookup} that returns all contained blocks ("OK") or no blocks ("CANCEL")
    *
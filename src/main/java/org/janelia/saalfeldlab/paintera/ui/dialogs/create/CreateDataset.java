@@ -1,6 +1,7 @@
 package org.janelia.saalfeldlab.paintera.ui.dialogs.create;
 
 import bdv.viewer.Source;
+import javafx.beans.binding.Bindings;
 import javafx.beans.property.DoubleProperty;
 import javafx.beans.property.IntegerProperty;
 import javafx.beans.property.LongProperty;
@@ -12,6 +13,7 @@ import javafx.event.ActionEvent;
 import javafx.scene.Node;
 import javafx.scene.control.Alert;
 import javafx.scene.control.ButtonType;
+import javafx.scene.control.ComboBox;
 import javafx.scene.control.Menu;
 import javafx.scene.control.MenuButton;
 import javafx.scene.control.MenuItem;
@@ -29,6 +31,7 @@ import net.imglib2.realtransform.AffineTransform3D;
 import org.janelia.saalfeldlab.fx.ui.DirectoryField;
 import org.janelia.saalfeldlab.fx.ui.Exceptions;
 import org.janelia.saalfeldlab.fx.ui.NamedNode;
+import org.janelia.saalfeldlab.fx.ui.NumberField;
 import org.janelia.saalfeldlab.fx.ui.ObjectField;
 import org.janelia.saalfeldlab.fx.ui.SpatialField;
 import org.janelia.saalfeldlab.paintera.Paintera;
@@ -38,6 +41,8 @@ import org.janelia.saalfeldlab.paintera.state.metadata.MetadataState;
 import org.janelia.saalfeldlab.paintera.state.metadata.MetadataUtils;
 import org.janelia.saalfeldlab.paintera.state.metadata.N5ContainerState;
 import org.janelia.saalfeldlab.paintera.ui.PainteraAlerts;
+import org.janelia.saalfeldlab.util.n5.CompressionCodec;
+import org.janelia.saalfeldlab.util.n5.CompressionDefaults;
 import org.janelia.saalfeldlab.util.n5.N5Data;
 import org.janelia.saalfeldlab.util.n5.N5Helpers;
 import org.slf4j.Logger;
@@ -134,6 +139,24 @@ public class CreateDataset {
 		  100,
 		  ObjectField.SubmitOn.values());
 
+  private final ComboBox<CompressionCodec> compressionCodec = new ComboBox<>(FXCollections.observableArrayList(CompressionCodec.available()));
+
+  private final NumberField<IntegerProperty> compressionLevel = NumberField.intField(
+		  CompressionDefaults.getGlobal().getLevel(),
+		  l -> true,
+		  ObjectField.SubmitOn.values());
+
+  {
+	compressionCodec.setValue(CompressionDefaults.getGlobal().getCodec());
+	compressionLevel.getTextField().disableProperty().bind(Bindings.createBooleanBinding(
+			() -> compressionCodec.getValue() == null || !compressionCodec.getValue().hasLevel(),
+			compressionCodec.valueProperty()));
+	compressionCodec.valueProperty().addListener((obs, oldv, newv) -> {
+	  if (newv != null)
+		compressionLevel.valueProperty().set(newv.getDefaultLevel());
+	});
+  }
+
   private final TitledPane scaleLevels = new TitledPane("Scale Levels", mipmapLevelsNode);
 
   private final VBox pane = new VBox(
@@ -148,6 +171,7 @@ public class CreateDataset {
 				  resolution.getNode()
 		  ),
 		  NamedNode.nameIt("Offset", NAME_WIDTH, false, NamedNode.bufferNode(new Region()), offset.getNode()),
+		  NamedNode.nameIt("Compression", NAME_WIDTH, false, NamedNode.bufferNode(new Region()), compressionCodec, compressionLevel.getTextField()),
 		  setFromCurrentBox,
 		  scaleLevels
   );
@@ -197,6 +221,10 @@ public class CreateDataset {
 
 				if (name == null || name.equals(""))
 				  throw new IOException("Name not specified!");
+
+				if (compressionCodec.getValue() == null)
+				  throw new IOException("Compression not specified!");
+
 				N5Data.createEmptyLabelDataset(
 						container,
 						dataset,
@@ -205,7 +233,9 @@ public class CreateDataset {
 						resolution.getAs(new double[3]),
 						offset.getAs(new double[3]),
 						mipmapLevels.stream().map(MipMapLevel::downsamplingFactors).toArray(double[][]::new),
-						mipmapLevels.stream().mapToInt(MipMapLevel::maxNumEntries).toArray()
+						mipmapLevels.stream().mapToInt(MipMapLevel::maxNumEntries).toArray(),
+						false,
+						compressionCodec.getValue().create(compressionLevel.valueProperty().get())
 				);
 				final var pathToDataset = Path.of(container, dataset).toFile().getCanonicalPath();
 				final var writer = Paintera.getN5Factory().openWriter(pathToDataset);
@@ -60,7 +60,7 @@ import org.janelia.saalfeldlab.paintera.state.raw.ConnectomicsRawState;
 import org.janelia.saalfeldlab.paintera.state.raw.n5.N5BackendRaw;
 import org.janelia.saalfeldlab.paintera.ui.opendialog.DatasetInfo;
 import org.janelia.saalfeldlab.paintera.viewer3d.ViewFrustum;
-import org.janelia.saalfeldlab.util.concurrent.HashPriorityQueueBasedTaskExecutor;
+import org.janelia.saalfeldlab.util.concurrent.PriorityTaskExecutor;
 import org.janelia.saalfeldlab.util.n5.N5Helpers;
 import org.janelia.saalfeldlab.util.n5.N5ReadOnlyException;
 import org.slf4j.Logger;
@@ -570,7 +570,7 @@ public class GenericBackendDialogN5 implements Closeable {
 		  final ObjectProperty<ViewFrustum> viewFrustumProperty,
 		  final ObjectProperty<AffineTransform3D> eyeToWorldTransformProperty,
 		  final ExecutorService manager,
-		  final HashPriorityQueueBasedTaskExecutor<MeshWorkerPriority> workers,
+		  final PriorityTaskExecutor<MeshWorkerPriority> workers,
 		  final ExecutorService propagationQueue,
 		  final Supplier<String> projectDirectory) throws IOException, ReflectionException {
 
@@ -0,0 +1,197 @@
+package org.janelia.saalfeldlab.paintera.viewer3d;
+
+import net.imglib2.RealInterval;
+import net.imglib2.realtransform.AffineTransform3D;
+
+import java.util.Arrays;
+
+/**
+ * Low-resolution software depth buffer for occlusion culling of mesh blocks on the CPU.
+ * <p>
+ * Occluders are rasterized as triangles in world coordinates. Each pixel stores the depth of the nearest occluder that
+ * covers the pixel center, where the depth of a triangle is the depth of its farthest vertex. A box is occluded if all
+ * pixels that its projection covers are covered by an occluder that is nearer than the nearest corner of the box, or if
+ * its projection is outside of the screen. Boxes that intersect the near plane are never occluded.
+ * <p>
+ * Rasterization is not thread-safe, all occluders have to be added before testing boxes. Testing boxes is thread-safe.
+ */
+public class OcclusionBuffer {
+
+  public static final int DEFAULT_WIDTH = 128;
+
+  private final int width;
+
+  private final int height;
+
+  private final float[] depths;
+
+  private final AffineTransform3D worldToEyeTransform;
+
+  private final double tanHalfFovX;
+
+  private final double tanHalfFovY;
+
+  private final double nearClip;
+
+  private int numOccluderTriangles = 0;
+
+  public OcclusionBuffer(final ViewFrustum viewFrustum, final AffineTransform3D eyeToWorldTransform) {
+
+	this(viewFrustum, eyeToWorldTransform, DEFAULT_WIDTH);
+  }
+
+  /**
+   * @param width width of the buffer, the height follows from the aspect ratio of the view frustum
+   */
+  public OcclusionBuffer(final ViewFrustum viewFrustum, final AffineTransform3D eyeToWorldTransform, final int width) {
+
+	final RealInterval viewPlane = viewFrustum.viewPlaneAtGivenDistance(1.0);
+	this.tanHalfFovX = viewPlane.realMax(0);
+	this.tanHalfFovY = viewPlane.realMax(1);
+	this.nearClip = viewFrustum.getNearFarPlanes().nearPlane.minMin.getDoublePosition(2);
+	this.worldToEyeTransform = eyeToWorldTransform.inverse();
+	this.width = width;
+	this.height = Math.max(1, (int)Math.round(width * tanHalfFovY / tanHalfFovX));
+	this.depths = new float[this.width * this.height];
+	Arrays.fill(depths, Float.POSITIVE_INFINITY);
+  }
+
+  public int getWidth() {
+
+	return width;
+  }
+
+  public int getHeight() {
+
+	return height;
+  }
+
+  public int getNumOccluderTriangles() {
+
+	return numOccluderTriangles;
+  }
+
+  /**
+   * @param vertices triangle vertices in world coordinates, three consecutive vertices per triangle unless
+   *                 {@code indices} are given
+   * @param indices  three vertex indices per triangle, or {@code null}
+   */
+  public void addOccluder(final float[] vertices, final int[] indices) {
+
+	final int numTriangles = indices == null ? vertices.length / 9 : indices.length / 3;
+	final double[] eyeVertices = new double[9];
+	final double[] vertex = new double[3];
+	for (int t = 0; t < numTriangles; ++t) {
+	  for (int v = 0; v < 3; ++v) {
+		final int vertexIndex = indices == null ? 3 * t + v : indices[3 * t + v];
+		vertex[0] = vertices[3 * vertexIndex];
+		vertex[1] = vertices[3 * vertexIndex + 1];
+		vertex[2] = vertices[3 * vertexIndex + 2];
+		worldToEyeTransform.apply(vertex, vertex);
+		System.arraycopy(vertex, 0, eyeVertices, 3 * v, 3);
+	  }
+	  rasterizeTriangle(eyeVertices);
+	}
+  }
+
+  /**
+   * @param box            box in source coordinates
+   * @param sourceToWorld  transform from source to world coordinates
+   * @return {@code true} if the box is hidden behind the occluders
+   */
+  public boolean isOccluded(final RealInterval box, final AffineTransform3D sourceToWorld) {
+
+	if (numOccluderTriangles == 0)
+	  return false;
+
+	double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY, minDepth = Double.POSITIVE_INFINITY;
+	double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+	final double[] corner = new double[3];
+	for (int i = 0; i < 8; ++i) {
+	  corner[0] = (i & 1) == 0 ? box.realMin(0) : box.realMax(0);
+	  corner[1] = (i & 2) == 0 ? box.realMin(1) : box.realMax(1);
+	  corner[2] = (i & 4) == 0 ? box.realMin(2) : box.realMax(2);
+	  sourceToWorld.apply(corner, corner);
+	  worldToEyeTransform.apply(corner, corner);
+	  if (corner[2] <= nearClip)
+		return false;
+	  minDepth = Math.min(minDepth, corner[2]);
+	  final double x = toPixelX(corner[0], corner[2]);
+	  final double y = toPixelY(corner[1], corner[2]);
+	  minX = Math.min(minX, x);
+	  maxX = Math.max(maxX, x);
+	  minY = Math.min(minY, y);
+	  maxY = Math.max(maxY, y);
+	}
+
+	// parts of the box outside of the buffer are not visible, a box that is entirely outside is not visible either
+	final int xStart = Math.max(0, (int)Math.floor(minX));
+	final int xEnd = Math.min(width - 1, (int)Math.floor(maxX));
+	final int yStart = Math.max(0, (int)Math.floor(minY));
+	final int yEnd = Math.min(height - 1, (int)Math.floor(maxY));
+	if (xStart > xEnd || yStart > yEnd)
+	  return true;
+
+	for (int y = yStart; y <= yEnd; ++y)
+	  for (int x = xStart; x <= xEnd; ++x)
+		if (depths[y * width + x] >= minDepth)
+		  return false;
+	return true;
+  }
+
+  private void rasterizeTriangle(final double[] eyeVertices) {
+
+	double depth = 0.0;
+	for (int v = 0; v < 3; ++v) {
+	  // clipping is not worth it for occluders, skip triangles that intersect the near plane
+	  if (eyeVertices[3 * v + 2] <= nearClip)
+		return;
+	  depth = Math.max(depth, eyeVertices[3 * v + 2]);
+	}
+
+	final double x0 = toPixelX(eyeVertices[0], eyeVertices[2]), y0 = toPixelY(eyeVertices[1], eyeVertices[2]);
+	final double x1 = toPixelX(eyeVertices[3], eyeVertices[5]), y1 = toPixelY(eyeVertices[4], eyeVertices[5]);
+	final double x2 = toPixelX(eyeVertices[6], eyeVertices[8]), y2 = toPixelY(eyeVertices[7], eyeVertices[8]);
+
+	final double area = (x1 - x0) * (y2 - y0) - (x2 - x0) * (y1 - y0);
+	if (area == 0.0)
+	  return;
+
+	final int xStart = Math.max(0, (int)Math.ceil(Math.min(x0, Math.min(x1, x2)) - 0.5));
+	final int xEnd = Math.min(width - 1, (int)Math.floor(Math.max(x0, Math.max(x1, x2)) - 0.5));
+	final int yStart = Math.max(0, (int)Math.ceil(Math.min(y0, Math.min(y1, y2)) - 0.5));
+	final int yEnd = Math.min(height - 1, (int)Math.floor(Math.max(y0, Math.max(y1, y2)) - 0.5));
+
+	final float triangleDepth = (float)depth;
+	final double sign = Math.signum(area);
+	boolean covers = false;
+	for (int y = yStart; y <= yEnd; ++y) {
+	  final double py = y + 0.5;
+	  for (int x = xStart; x <= xEnd; ++x) {
+		final double px = x + 0.5;
+		// edge functions, the pixel center is inside if all of them have the same sign as the area
+		final double e0 = ((x1 - x0) * (py - y0) - (y1 - y0) * (px - x0)) * sign;
+		final double e1 = ((x2 - x1) * (py - y1) - (y2 - y1) * (px - x1)) * sign;
+		final double e2 = ((x0 - x2) * (py - y2) - (y0 - y2) * (px - x2)) * sign;
+		if (e0 >= 0 && e1 >= 0 && e2 >= 0) {
+		  final int index = y * width + x;
+		  if (triangleDepth < depths[index])
+			depths[index] = triangleDepth;
+		  covers = true;
+		}
+	  }
+	}
+	if (covers)
+	  ++numOccluderTriangles;
+  }
+
+  private double toPixelX(final double x, final double z) {
+
+	return (x / (z * tanHalfFovX) + 1.0) * 0.5 * width;
+  }
+
+  private double toPixelY(final double y, final double z) {
+
+	return (y / (z * tanHalfFovY) + 1.0) * 0.5 * height;
+  }
+}
@@ -14,17 +14,13 @@ import javafx.beans.property.SimpleObjectProperty;
 import javafx.scene.image.PixelReader;
 import javafx.scene.image.PixelWriter;
 import javafx.scene.transform.Affine;
-import net.imglib2.Cursor;
 import net.imglib2.FinalDimensions;
 import net.imglib2.FinalInterval;
 import net.imglib2.Interval;
-import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.RealPoint;
 import net.imglib2.realtransform.AffineTransform3D;
-import net.imglib2.type.numeric.ARGBType;
 import net.imglib2.util.Intervals;
 import net.imglib2.util.Util;
-import net.imglib2.view.Views;
 import org.janelia.saalfeldlab.fx.ObservableWithListenersList;
 import org.janelia.saalfeldlab.fx.util.InvokeOnJavaFXApplicationThread;
 import org.janelia.saalfeldlab.util.NamedThreadFactory;
@@ -33,6 +29,7 @@ import org.janelia.saalfeldlab.util.fx.Transforms;
 
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -190,17 +187,27 @@ public class OrthoSliceFX extends ObservableWithListenersList {
 	);
 
 	// copy relevant part of the rendered image into the first texture image
-	final PixelReader pixelReader = newv.getImage().getPixelReader();
-	final PixelWriter pixelWriter = texture.originalImage.getPixelWriter();
-	pixelWriter.setPixels(
-			(int)interval.min(0), // dst x
-			(int)interval.min(1), // dst y
-			(int)interval.dimension(0), // w
-			(int)interval.dimension(1),    // h
-			pixelReader, // src
-			(int)interval.min(0), // src x
-			(int)interval.min(1)  // src y
-	);
+	// the renderer re-uses its images for subsequent frames, so they cannot be shared with the texture directly
+	if (newv.getImage() instanceof BufferExposingWritableImage)
+	  texture.originalImage.copyFrom(
+			  (BufferExposingWritableImage)newv.getImage(),
+			  (int)interval.min(0),
+			  (int)interval.min(1),
+			  (int)interval.dimension(0),
+			  (int)interval.dimension(1));
+	else {
+	  final PixelReader pixelReader = newv.getImage().getPixelReader();
+	  final PixelWriter pixelWriter = texture.originalImage.getPixelWriter();
+	  pixelWriter.setPixels(
+			  (int)interval.min(0), // dst x
+			  (int)interval.min(1), // dst y
+			  (int)interval.dimension(0), // w
+			  (int)interval.dimension(1),    // h
+			  pixelReader, // src
+			  (int)interval.min(0), // src x
+			  (int)interval.min(1)  // src y
+	  );
+	}
 
 	if (updateIntervals[newv.getScreenScaleIndex()] == null)
 	  updateIntervals[newv.getScreenScaleIndex()] = interval;
@@ -251,7 +258,11 @@ public class OrthoSliceFX extends ObservableWithListenersList {
 	final BufferExposingWritableImage[] targetImages = {texture.selfIlluminationMapImage, texture.diffuseMapImage};
 	final double[] brightnessFactors = {1 - shading, shading};
 
-	final RandomAccessibleInterval<ARGBType> src = Views.interval(texture.originalImage.asArrayImg(), interval);
+	final int[] src = texture.originalImage.getBuffer();
+	final int width = (int)texture.originalImage.getWidth();
+	final int alphaBits = Util.roundToInt(alpha * 255) << 24;
+	final int minX = (int)interval.min(0);
+	final int maxX = (int)interval.max(0);
 	final var futures = new ArrayList<Future<BufferExposingWritableImage>>();
 
 	for (int j = 0; j < 2; ++j) {
@@ -259,21 +270,18 @@ public class OrthoSliceFX extends ObservableWithListenersList {
 
 	  futures.add(TEXTURE_UPDATOR.submit(() -> {
 		final BufferExposingWritableImage targetImage = targetImages[i];
-		final double brightnessFactor = brightnessFactors[i];
-		final int roundBrightnessFactor = Util.roundToInt(brightnessFactor);
-
-		final RandomAccessibleInterval<ARGBType> dst = Views.interval(targetImage.asArrayImg(), interval);
-		final Cursor<ARGBType> srcCursor = Views.flatIterable(src).cursor();
-		final Cursor<ARGBType> dstCursor = Views.flatIterable(dst).cursor();
-
-		while (dstCursor.hasNext()) {
-		  final int srcArgb = srcCursor.next().get();
-		  final int dstArgb = ARGBType.rgba(
-				  ARGBType.red(srcArgb) * roundBrightnessFactor,
-				  ARGBType.green(srcArgb) * roundBrightnessFactor,
-				  ARGBType.blue(srcArgb) * roundBrightnessFactor,
-				  Util.roundToInt(alpha * 255));
-		  dstCursor.next().set(PixelUtils.NonPretoPre(dstArgb));
+		final int[] dst = targetImage.getBuffer();
+		// the brightness factor is rounded to either 0 (black) or 1 (keep color)
+		final boolean keepColor = Util.roundToInt(brightnessFactors[i]) != 0;
+		final int black = PixelUtils.NonPretoPre(alphaBits);
+
+		for (int y = (int)interval.min(1); y <= interval.max(1); ++y) {
+		  final int rowOffset = y * width;
+		  if (keepColor)
+			for (int index = rowOffset + minX; index <= rowOffset + maxX; ++index)
+			  dst[index] = PixelUtils.NonPretoPre(src[index] & 0x00ffffff | alphaBits);
+		  else
+			Arrays.fill(dst, rowOffset + minX, rowOffset + maxX + 1, black);
 		}
 		return targetImage;
 	  }));
@@ -77,6 +77,8 @@ public class Viewer3DFX extends Pane {
 
   private final LongProperty frameDelayMsec = new SimpleLongProperty();
 
+  private final LongProperty targetFrameTimeMsec = new SimpleLongProperty();
+
   private final LongProperty sceneUpdateDelayMsec = new SimpleLongProperty();
 
   private final ObjectProperty<Color> backgroundFill = new SimpleObjectProperty<>(Color.BLACK);
@@ -195,6 +197,11 @@ public class Viewer3DFX extends Pane {
 	return this.frameDelayMsec;
   }
 
+  public LongProperty targetFrameTimeMsecProperty() {
+
+	return this.targetFrameTimeMsec;
+  }
+
   public LongProperty sceneUpdateDelayMsecProperty() {
 
 	return this.sceneUpdateDelayMsec;
@@ -0,0 +1,346 @@
+package org.janelia.saalfeldlab.util.concurrent;
+
+import org.janelia.saalfeldlab.paintera.metrics.MetricsRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandles;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * @param <P> task priority type
+ *            <p>
+ *            {@link PriorityTaskExecutor} without a global monitor. Queued tasks are kept in a concurrent skip list that is
+ *            ordered by priority and, for equal priorities, by submission order. A concurrent index from task to queue
+ *            entry makes updating the priority of a queued task and removing a task {@code O(log N)} and atomic per task,
+ *            so submitting, re-prioritizing, and polling tasks from many threads does not serialize on a single lock.
+ *            Workers only block when the queue is empty and they have to wait for new tasks.
+ *            <p>
+ *            Every operation that modifies the queue and the index holds the shared read lock of {@link #clearLock},
+ *            so these operations do not block each other. {@link #removeAllTasks()} holds the exclusive write lock to
+ *            clear both at once, so that no task that is submitted concurrently stays in the index without a queue
+ *            entry.
+ *            <p>
+ *            Drop-in replacement for {@link HashPriorityQueueBasedTaskExecutor}.
+ */
+public class ConcurrentPriorityTaskExecutor<P> implements PriorityTaskExecutor<P> {
+
+  private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  private static final class Node<P> {
+
+	final P priority;
+
+	final long sequence;
+
+	final Runnable task;
+
+	/**
+	 * Time of the first submission of {@link #task}, only tracked if metrics are recorded.
+	 */
+	final long submissionNanos;
+
+	Node(final P priority, final long sequence, final Runnable task, final long submissionNanos) {
+
+	  this.priority = priority;
+	  this.sequence = sequence;
+	  this.task = task;
+	  this.submissionNanos = submissionNanos;
+	}
+  }
+
+  private final ConcurrentSkipListSet<Node<P>> queue;
+
+  private final ConcurrentHashMap<Runnable, Node<P>> index = new ConcurrentHashMap<>();
+
+  private final AtomicLong sequence = new AtomicLong();
+
+  private final ReentrantReadWriteLock clearLock = new ReentrantReadWriteLock();
+
+  private final Thread[] workers;
+
+  private final Runnable[] runningTasks;
+
+  /**
+   * Guards {@link #runningTasks} per worker, so interrupting a task cannot hit the next task of the same worker.
+   */
+  private final Object[] runningTaskLocks;
+
+  private final AtomicBoolean isShutdown = new AtomicBoolean(false);
+
+  private final ReentrantLock idleLock = new ReentrantLock();
+
+  private final Condition notEmpty = idleLock.newCondition();
+
+  private final AtomicInteger numIdleWorkers = new AtomicInteger();
+
+  private final MetricsRegistry.Timer waitTimer;
+
+  private final MetricsRegistry.Timer runTimer;
+
+  public ConcurrentPriorityTaskExecutor(
+		  final Comparator<? super P> comparator,
+		  final int numThreads,
+		  final ThreadFactory threadFactory) {
+
+	this(comparator, numThreads, threadFactory, null);
+  }
+
+  /**
+   * @param metricsName if not {@code null}, record the time tasks spend in the queue, the time it takes to run them,
+   *                    and the number of queued tasks as {@code <metricsName>.wait}, {@code <metricsName>.run}, and
+   *                    {@code <metricsName>.queued} in the {@link MetricsRegistry#getGlobal() global metrics registry}.
+   */
+  public ConcurrentPriorityTaskExecutor(
+		  final Comparator<? super P> comparator,
+		  final int numThreads,
+		  final ThreadFactory threadFactory,
+		  final String metricsName) {
+
+	if (metricsName == null) {
+	  waitTimer = null;
+	  runTimer = null;
+	} else {
+	  final MetricsRegistry registry = MetricsRegistry.getGlobal();
+	  waitTimer = registry.timer(metricsName + ".wait");
+	  runTimer = registry.timer(metricsName + ".run");
+	  registry.gauge(metricsName + ".queued", this::getNumQueuedTasks);
+	}
+	final Comparator<Node<P>> byPriority = (n1, n2) -> comparator.compare(n1.priority, n2.priority);
+	queue = new ConcurrentSkipListSet<>(byPriority.thenComparingLong(n -> n.sequence));
+	workers = new Thread[numThreads];
+	runningTasks = new Runnable[numThreads];
+	runningTaskLocks = new Object[numThreads];
+	Arrays.setAll(runningTaskLocks, i -> new Object());
+	Arrays.setAll(workers, i -> threadFactory.newThread(() -> runWorker(i)));
+	Arrays.stream(workers).forEach(Thread::start);
+  }
+
+  @Override
+  public void addOrUpdateTask(final Runnable task, final P priority) {
+
+	addOrUpdateTasks(Collections.singletonMap(task, priority));
+  }
+
+  @Override
+  public void addOrUpdateTasks(final Map<Runnable, P> tasks) {
+
+	if (tasks.isEmpty() || isShutdown.get())
+	  return;
+
+	final long now = waitTimer == null ? 0 : System.nanoTime();
+	clearLock.readLock().lock();
+	try {
+	  for (final Entry<Runnable, P> entry : tasks.entrySet()) {
+		final Runnable task = entry.getKey();
+		final P priority = entry.getValue();
+		index.compute(task, (key, previous) -> {
+		  if (previous != null)
+			queue.remove(previous);
+		  final Node<P> node = new Node<>(priority, sequence.incrementAndGet(), task, previous == null ? now : previous.submissionNanos);
+		  queue.add(node);
+		  return node;
+		});
+	  }
+	} finally {
+	  clearLock.readLock().unlock();
+	}
+	signalIdleWorkers();
+  }
+
+  @Override
+  public void removeTask(final Runnable task) {
+
+	removeTasks(Collections.singleton(task));
+  }
+
+  @Override
+  public void removeTasks(final Set<Runnable> tasks) {
+
+	if (tasks.isEmpty() || isShutdown.get())
+	  return;
+
+	interruptTasks(tasks);
+	clearLock.readLock().lock();
+	try {
+	  for (final Runnable task : tasks) {
+		index.computeIfPresent(task, (key, node) -> {
+		  queue.remove(node);
+		  return null;
+		});
+	  }
+	} finally {
+	  clearLock.readLock().unlock();
+	}
+  }
+
+  @Override
+  public boolean containsTask(final Runnable task) {
+
+	return index.containsKey(task);
+  }
+
+  @Override
+  public P getPriority(final Runnable task) {
+
+	final Node<P> node = index.get(task);
+	return node == null ? null : node.priority;
+  }
+
+  @Override
+  public void removeAllTasks() {
+
+	clearLock.writeLock().lock();
+	try {
+	  index.clear();
+	  queue.clear();
+	} finally {
+	  clearLock.writeLock().unlock();
+	}
+	for (int i = 0; i < workers.length; ++i) {
+	  synchronized (runningTaskLocks[i]) {
+		if (runningTasks[i] != null) {
+		  workers[i].interrupt();
+		  runningTasks[i] = null;
+		}
+	  }
+	}
+  }
+
+  @Override
+  public void shutdown() {
+
+	isShutdown.set(true);
+	removeAllTasks();
+	idleLock.lock();
+	try {
+	  notEmpty.signalAll();
+	} finally {
+	  idleLock.unlock();
+	}
+  }
+
+  @Override
+  public boolean isShutdown() {
+
+	return isShutdown.get();
+  }
+
+  @Override
+  public long getNumQueuedTasks() {
+
+	return index.mappingCount();
+  }
+
+  private void interruptTasks(final Set<Runnable> tasks) {
+
+	for (int i = 0; i < workers.length; ++i) {
+	  synchronized (runningTaskLocks[i]) {
+		if (runningTasks[i] != null && tasks.contains(runningTasks[i])) {
+		  workers[i].interrupt();
+		  runningTasks[i] = null;
+		}
+	  }
+	}
+  }
+
+  private void signalIdleWorkers() {
+
+	if (numIdleWorkers.get() == 0)
+	  return;
+	idleLock.lock();
+	try {
+	  notEmpty.signalAll();
+	} finally {
+	  idleLock.unlock();
+	}
+  }
+
+  private Node<P> take() throws InterruptedException {
+
+	while (!isShutdown.get()) {
+	  final Node<P> node = poll();
+	  if (node != null)
+		return node;
+	  idleLock.lock();
+	  try {
+		// announce waiting before checking the queue, so a concurrent submission either sees this worker or is seen by it
+		numIdleWorkers.incrementAndGet();
+		try {
+		  while (queue.isEmpty() && !isShutdown.get())
+			notEmpty.await();
+		} finally {
+		  numIdleWorkers.decrementAndGet();
+		}
+	  } finally {
+		idleLock.unlock();
+	  }
+	}
+	return null;
+  }
+
+  private Node<P> poll() {
+
+	clearLock.readLock().lock();
+	try {
+	  final Node<P> node = queue.pollFirst();
+	  // the task may have been re-submitted in the meantime, in that case the newer node stays in the index
+	  if (node != null)
+		index.remove(node.task, node);
+	  return node;
+	} finally {
+	  clearLock.readLock().unlock();
+	}
+  }
+
+  private void runWorker(final int workerIndex) {
+
+	while (!isShutdown.get()) {
+	  final Node<P> node;
+	  try {
+		node = take();
+	  } catch (final InterruptedException e) {
+		continue;
+	  }
+	  if (node == null)
+		return;
+
+	  synchronized (runningTaskLocks[workerIndex]) {
+		runningTasks[workerIndex] = node.task;
+	  }
+	  if (waitTimer != null)
+		waitTimer.recordSince(node.submissionNanos);
+
+	  if (!isShutdown.get()) {
+		final long startNanos = System.nanoTime();
+		try {
+		  node.task.run();
+		} catch (final RuntimeException e) {
+		  LOG.error("Task {} failed", node.task, e);
+		}
+		if (runTimer != null)
+		  runTimer.recordSince(startNanos);
+	  }
+
+	  synchronized (runningTaskLocks[workerIndex]) {
+		runningTasks[workerIndex] = null;
+		// Reset the interrupted status in case the task has been interrupted
+		Thread.interrupted();
+	  }
+	}
+  }
+}
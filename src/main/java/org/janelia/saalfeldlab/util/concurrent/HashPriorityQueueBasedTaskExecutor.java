@@ -1,5 +1,6 @@
 package org.janelia.saalfeldlab.util.concurrent;
 
+import org.janelia.saalfeldlab.paintera.metrics.MetricsRegistry;
 import org.janelia.saalfeldlab.util.HashPriorityQueue;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -19,7 +20,7 @@ import java.util.concurrent.atomic.AtomicBoolean;
  * In contrast to using a standard thread pool executor with a {@link java.util.concurrent.PriorityBlockingQueue},
  * this class allows to efficiently change the priority of already submitted tasks.
  */
-public class HashPriorityQueueBasedTaskExecutor<P> {
+public class HashPriorityQueueBasedTaskExecutor<P> implements PriorityTaskExecutor<P> {
 
   private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
@@ -31,11 +32,43 @@ public class HashPriorityQueueBasedTaskExecutor<P> {
 
   private final AtomicBoolean isShutdown = new AtomicBoolean(false);
 
+  /**
+   * Time of submission for all queued tasks, only tracked if metrics are recorded.
+   */
+  private final Map<Runnable, Long> submissionNanos = new HashMap<>();
+
+  private final MetricsRegistry.Timer waitTimer;
+
+  private final MetricsRegistry.Timer runTimer;
+
   public HashPriorityQueueBasedTaskExecutor(
 		  final Comparator<? super P> comparator,
 		  final int numThreads,
 		  final ThreadFactory threadFactory) {
 
+	this(comparator, numThreads, threadFactory, null);
+  }
+
+  /**
+   * @param metricsName if not {@code null}, record the time tasks spend in the queue, the time it takes to run them,
+   *                    and the number of queued tasks as {@code <metricsName>.wait}, {@code <metricsName>.run}, and
+   *                    {@code <metricsName>.queued} in the {@link MetricsRegistry#getGlobal() global metrics registry}.
+   */
+  public HashPriorityQueueBasedTaskExecutor(
+		  final Comparator<? super P> comparator,
+		  final int numThreads,
+		  final ThreadFactory threadFactory,
+		  final String metricsName) {
+
+	if (metricsName == null) {
+	  waitTimer = null;
+	  runTimer = null;
+	} else {
+	  final MetricsRegistry registry = MetricsRegistry.getGlobal();
+	  waitTimer = registry.timer(metricsName + ".wait");
+	  runTimer = registry.timer(metricsName + ".run");
+	  registry.gauge(metricsName + ".queued", this::getNumQueuedTasks);
+	}
 	priorityQueue = new HashPriorityQueue<>(comparator);
 	workers = new Thread[numThreads];
 	runningTasks = new Runnable[numThreads];
@@ -53,8 +86,11 @@ public class HashPriorityQueueBasedTaskExecutor<P> {
 	if (tasks.isEmpty() || isShutdown.get())
 	  return;
 
+	final long now = System.nanoTime();
 	for (final Entry<Runnable, P> entry : tasks.entrySet()) {
 	  priorityQueue.addOrUpdate(entry.getValue(), entry.getKey());
+	  if (waitTimer != null)
+		submissionNanos.putIfAbsent(entry.getKey(), now);
 	}
 	notifyAll();
   }
@@ -71,6 +107,7 @@ public class HashPriorityQueueBasedTaskExecutor<P> {
 
 	interruptTasks(tasks);
 	tasks.forEach(priorityQueue::remove);
+	tasks.forEach(submissionNanos::remove);
   }
 
   public synchronized boolean containsTask(final Runnable task) {
@@ -86,6 +123,7 @@ public class HashPriorityQueueBasedTaskExecutor<P> {
   public synchronized void removeAllTasks() {
 
 	priorityQueue.clear();
+	submissionNanos.clear();
 	Arrays.stream(workers).forEach(Thread::interrupt);
 	Arrays.fill(runningTasks, null);
   }
@@ -101,6 +139,11 @@ public class HashPriorityQueueBasedTaskExecutor<P> {
 	return isShutdown.get();
   }
 
+  public synchronized long getNumQueuedTasks() {
+
+	return priorityQueue.size();
+  }
+
   private synchronized void interruptTasks(final Set<Runnable> tasks) {
 
 	for (int i = 0; i < runningTasks.length; ++i) {
@@ -132,10 +175,17 @@ public class HashPriorityQueueBasedTaskExecutor<P> {
 		}
 		task = priorityQueue.poll();
 		runningTasks[workerIndex] = task;
+		final Long submitted = submissionNanos.remove(task);
+		if (submitted != null)
+		  waitTimer.recordSince(submitted);
 	  }
 
-	  if (!isShutdown.get())
+	  if (!isShutdown.get()) {
+		final long startNanos = System.nanoTime();
 		task.run();
+		if (runTimer != null)
+		  runTimer.recordSince(startNanos);
+	  }
 
 	  // Reset the interrupted status in case the task has been interrupted
 	  Thread.interrupted();
@@ -0,0 +1,37 @@
+package org.janelia.saalfeldlab.util.concurrent;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Runs prioritized tasks on a fixed set of worker threads. Each task is queued at most once: submitting a task that is
+ * already queued updates its priority instead of queueing it again. Removing a task that is currently running interrupts
+ * the worker that runs it.
+ *
+ * @param <P> task priority type
+ */
+public interface PriorityTaskExecutor<P> {
+
+  void addOrUpdateTask(Runnable task, P priority);
+
+  void addOrUpdateTasks(Map<Runnable, P> tasks);
+
+  void removeTask(Runnable task);
+
+  void removeTasks(Set<Runnable> tasks);
+
+  boolean containsTask(Runnable task);
+
+  /**
+   * @return priority of {@code task} or {@code null} if {@code task} is not queued
+   */
+  P getPriority(Runnable task);
+
+  void removeAllTasks();
+
+  void shutdown();
+
+  boolean isShutdown();
+
+  long getNumQueuedTasks();
+}
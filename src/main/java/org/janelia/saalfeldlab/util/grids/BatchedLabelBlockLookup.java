@@ -0,0 +1,24 @@
+package org.janelia.saalfeldlab.util.grids;
+
+import gnu.trove.map.TLongObjectMap;
+import net.imglib2.Interval;
+import org.janelia.saalfeldlab.labels.blocks.LabelBlockLookup;
+
+import java.io.IOException;
+
+/**
+ * {@link LabelBlockLookup} that can apply the block lists of many ids at once, more efficiently than one
+ * {@link LabelBlockLookup#write} per id.
+ */
+public interface BatchedLabelBlockLookup extends LabelBlockLookup {
+
+  /**
+   * Replace the block lists of all ids in {@code intervalsById} at {@code level}. An empty block list removes the id
+   * from the lookup.
+   *
+   * @param level         level of the lookup
+   * @param intervalsById new block lists by label id
+   * @throws IOException if the lookup cannot be written
+   */
+  void write(int level, TLongObjectMap<Interval[]> intervalsById) throws IOException;
+}
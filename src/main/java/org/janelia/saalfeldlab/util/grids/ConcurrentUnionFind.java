@@ -0,0 +1,58 @@
+package org.janelia.saalfeldlab.util.grids;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Lock-free union-find over the ids {@code 0..size-1}. Sets are joined by linking the root with the larger id to the
+ * root with the smaller id, so the root of each set is its smallest id once all joins are done. Paths are halved during
+ * {@link #findRoot(int)}.
+ */
+public class ConcurrentUnionFind {
+
+  private final AtomicIntegerArray parents;
+
+  public ConcurrentUnionFind(final int size) {
+
+	this.parents = new AtomicIntegerArray(size);
+	for (int id = 0; id < size; ++id)
+	  parents.set(id, id);
+  }
+
+  public int size() {
+
+	return parents.length();
+  }
+
+  public int findRoot(final int id) {
+
+	int current = id;
+	while (true) {
+	  final int parent = parents.get(current);
+	  if (parent == current)
+		return current;
+	  final int grandParent = parents.get(parent);
+	  /* parents only ever move closer to the root, so this may fail but never creates a cycle */
+	  if (grandParent != parent)
+		parents.compareAndSet(current, parent, grandParent);
+	  current = parent;
+	}
+  }
+
+  /**
+   * @return root of the joined set
+   */
+  public int join(final int id1, final int id2) {
+
+	while (true) {
+	  final int root1 = findRoot(id1);
+	  final int root2 = findRoot(id2);
+	  if (root1 == root2)
+		return root1;
+	  final int smaller = Math.min(root1, root2);
+	  final int larger = Math.max(root1, root2);
+	  /* fails if another thread linked larger in the meantime, in which case the roots are looked up again */
+	  if (parents.compareAndSet(larger, larger, smaller))
+		return smaller;
+	}
+  }
+}
@@ -0,0 +1,304 @@
+package org.janelia.saalfeldlab.util.grids;
+
+import gnu.trove.iterator.TLongObjectIterator;
+import gnu.trove.map.TLongObjectMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import gnu.trove.set.TLongSet;
+import gnu.trove.set.hash.TLongHashSet;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.type.label.Label;
+import net.imglib2.type.label.LabelMultisetType;
+import net.imglib2.type.numeric.IntegerType;
+import net.imglib2.util.IntervalIndexer;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+import org.janelia.saalfeldlab.paintera.data.DataSource;
+import org.janelia.saalfeldlab.paintera.data.mask.MaskedSource;
+import org.janelia.saalfeldlab.util.NamedThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.IntConsumer;
+
+/**
+ * Builds the index of a {@link LabelBlockLookupWithBackgroundIndex} by scanning all blocks of a label dataset.
+ * <p>
+ * Levels are processed coarsest first so that a usable index becomes available as quickly as possible, and each level
+ * is hot-swapped into the lookup as soon as it completes. Within a level, blocks are scanned in parallel in batches of
+ * {@code batchSize} blocks. After each batch, the label-to-block lists are merged into the index on disk and the
+ * progress is recorded, i.e. an interrupted build resumes with the first unfinished batch.
+ */
+public class LabelBlockLookupIndexBuilder {
+
+  private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  public static final int DEFAULT_BATCH_SIZE = 1024;
+
+  private final RandomAccessibleInterval<?>[] data;
+
+  private final CellGrid[] grids;
+
+  private final LabelBlockLookupWithBackgroundIndex lookup;
+
+  private final int numThreads;
+
+  private final int batchSize;
+
+  private volatile boolean isCanceled = false;
+
+  /**
+   * @param data       label data for all levels, finest first. Pixels must be {@link IntegerType} or
+   *                   {@link LabelMultisetType}.
+   * @param grids      block grids for all levels, finest first
+   * @param lookup     lookup that receives the index
+   * @param numThreads number of threads for scanning blocks
+   * @param batchSize  number of blocks that are scanned before the index and progress are written
+   */
+  public LabelBlockLookupIndexBuilder(
+		  final RandomAccessibleInterval<?>[] data,
+		  final CellGrid[] grids,
+		  final LabelBlockLookupWithBackgroundIndex lookup,
+		  final int numThreads,
+		  final int batchSize) {
+
+	this.data = data;
+	this.grids = grids;
+	this.lookup = lookup;
+	this.numThreads = Math.max(numThreads, 1);
+	this.batchSize = Math.max(batchSize, 1);
+  }
+
+  /**
+   * Create a builder that scans the persisted data of {@code source}, i.e. the underlying source of a
+   * {@link MaskedSource}.
+   *
+   * @param source label source
+   * @param lookup lookup that receives the index
+   * @return builder with {@link #DEFAULT_BATCH_SIZE} and half of the available processors
+   */
+  public static LabelBlockLookupIndexBuilder fromSource(final DataSource<?, ?> source, final LabelBlockLookupWithBackgroundIndex lookup) {
+
+	final DataSource<?, ?> persisted = source instanceof MaskedSource<?, ?> ? ((MaskedSource<?, ?>)source).underlyingSource() : source;
+	final RandomAccessibleInterval<?>[] data = new RandomAccessibleInterval<?>[persisted.getNumMipmapLevels()];
+	for (int level = 0; level < data.length; ++level)
+	  data[level] = persisted.getDataSource(0, level);
+	final int numThreads = Math.max(Runtime.getRuntime().availableProcessors() / 2, 1);
+	return new LabelBlockLookupIndexBuilder(data, persisted.getGrids(), lookup, numThreads, DEFAULT_BATCH_SIZE);
+  }
+
+  /**
+   * Build the index on a background thread.
+   *
+   * @param onLevelComplete called with the level after the index for a level was completed
+   * @return future that completes once all levels are indexed, or exceptionally if the build failed
+   */
+  public CompletableFuture<Void> start(final IntConsumer onLevelComplete) {
+
+	final CompletableFuture<Void> future = new CompletableFuture<>();
+	final Thread thread = new NamedThreadFactory("label-block-index-builder-%d", true, Thread.MIN_PRIORITY).newThread(() -> {
+	  try {
+		build(onLevelComplete);
+		future.complete(null);
+	  } catch (final Throwable e) {
+		LOG.error("Unable to build label block index in {}", lookup.getRoot(), e);
+		future.completeExceptionally(e);
+	  }
+	});
+	thread.start();
+	return future;
+  }
+
+  /**
+   * Stop building after the current batch. Progress up to that batch is kept and can be resumed.
+   */
+  public void cancel() {
+
+	isCanceled = true;
+  }
+
+  /**
+   * Build the index on the calling thread, coarsest level first. Levels that are complete already are skipped.
+   *
+   * @param onLevelComplete called with the level after the index for a level was completed
+   * @throws IOException if the index cannot be written
+   */
+  public void build(final IntConsumer onLevelComplete) throws IOException {
+
+	final ExecutorService es = Executors.newFixedThreadPool(numThreads, new NamedThreadFactory("label-block-index-worker-%d", true, Thread.MIN_PRIORITY));
+	try {
+	  for (int level = data.length - 1; level >= 0 && !isCanceled; --level) {
+		if (lookup.isLevelComplete(level)) {
+		  LOG.debug("Index for level {} in {} is complete already", level, lookup.getRoot());
+		  continue;
+		}
+		if (buildLevel(level, es))
+		  onLevelComplete.accept(level);
+	  }
+	} finally {
+	  es.shutdownNow();
+	}
+  }
+
+  private boolean buildLevel(final int level, final ExecutorService es) throws IOException {
+
+	final CellGrid grid = grids[level];
+	final long[] gridDimensions = grid.getGridDimensions();
+	final long numBlocks = Intervals.numElements(gridDimensions);
+	final long numBatches = (numBlocks + batchSize - 1) / batchSize;
+	final LabelBlockLookupWithBackgroundIndex.Progress progress = lookup.readProgress(level);
+	final long firstBatch = progress.getNumBatches() == numBatches ? progress.getNumProcessedBatches() : 0;
+	LOG.info("Building label block index for level {} in {}: {} blocks, starting at batch {}/{}", level, lookup.getRoot(), numBlocks, firstBatch, numBatches);
+	if (firstBatch == 0)
+	  lookup.resetLevel(level);
+
+	for (long batch = firstBatch; batch < numBatches; ++batch) {
+	  if (isCanceled) {
+		LOG.info("Canceled building label block index for level {} at batch {}/{}", level, batch, numBatches);
+		return false;
+	  }
+	  final long start = batch * batchSize;
+	  final long stop = Math.min(start + batchSize, numBlocks);
+	  final TLongObjectMap<TLongSet> blocksById = scanBlocks(level, start, stop, es);
+	  /* scan stops early when canceled, do not record a partially scanned batch */
+	  if (isCanceled) {
+		LOG.info("Canceled building label block index for level {} at batch {}/{}", level, batch, numBatches);
+		return false;
+	  }
+	  mergeIntoIndex(level, blocksById, es);
+	  lookup.writeProgress(level, new LabelBlockLookupWithBackgroundIndex.Progress(batch + 1, numBatches));
+	}
+	LOG.info("Finished label block index for level {} in {}", level, lookup.getRoot());
+	return true;
+  }
+
+  private TLongObjectMap<TLongSet> scanBlocks(final int level, final long start, final long stop, final ExecutorService es) throws IOException {
+
+	final List<Callable<TLongObjectMap<TLongSet>>> tasks = new ArrayList<>();
+	final long step = Math.max((stop - start + numThreads - 1) / numThreads, 1);
+	for (long taskStart = start; taskStart < stop; taskStart += step) {
+	  final long from = taskStart;
+	  final long to = Math.min(taskStart + step, stop);
+	  tasks.add(() -> {
+		final TLongObjectMap<TLongSet> blocksById = new TLongObjectHashMap<>();
+		final TLongSet ids = new TLongHashSet();
+		for (long blockIndex = from; blockIndex < to && !isCanceled; ++blockIndex) {
+		  ids.clear();
+		  collectIds(Views.interval(data[level], blockInterval(grids[level], blockIndex)), ids);
+		  final long index = blockIndex;
+		  ids.forEach(id -> {
+			TLongSet blocks = blocksById.get(id);
+			if (blocks == null) {
+			  blocks = new TLongHashSet();
+			  blocksById.put(id, blocks);
+			}
+			blocks.add(index);
+			return true;
+		  });
+		}
+		return blocksById;
+	  });
+	}
+
+	final TLongObjectMap<TLongSet> merged = new TLongObjectHashMap<>();
+	for (final TLongObjectMap<TLongSet> blocksById : invokeAll(es, tasks)) {
+	  for (final TLongObjectIterator<TLongSet> it = blocksById.iterator(); it.hasNext(); ) {
+		it.advance();
+		final TLongSet blocks = merged.get(it.key());
+		if (blocks == null)
+		  merged.put(it.key(), it.value());
+		else
+		  blocks.addAll(it.value());
+	  }
+	}
+	return merged;
+  }
+
+  private void mergeIntoIndex(
+		  final int level,
+		  final TLongObjectMap<TLongSet> blocksById,
+		  final ExecutorService es) throws IOException {
+
+	final long[] ids = blocksById.keys();
+	final List<Callable<Void>> tasks = new ArrayList<>();
+	final int step = Math.max((ids.length + numThreads - 1) / numThreads, 1);
+	for (int taskStart = 0; taskStart < ids.length; taskStart += step) {
+	  final int from = taskStart;
+	  final int to = Math.min(taskStart + step, ids.length);
+	  tasks.add(() -> {
+		/* existing entries are from previous batches, from commits, or from this batch if the build was interrupted after
+		 * the index was written but before the progress was recorded. Either way, the union is correct. */
+		for (int i = from; i < to; ++i)
+		  lookup.updateBlocks(level, ids[i], blocksById.get(ids[i]), null);
+		return null;
+	  });
+	}
+	invokeAll(es, tasks);
+  }
+
+  private static <T> List<T> invokeAll(final ExecutorService es, final List<Callable<T>> tasks) throws IOException {
+
+	final List<T> results = new ArrayList<>();
+	try {
+	  for (final Future<T> future : es.invokeAll(tasks))
+		results.add(future.get());
+	} catch (final InterruptedException e) {
+	  Thread.currentThread().interrupt();
+	  throw new IOException("Interrupted while building label block index", e);
+	} catch (final ExecutionException e) {
+	  throw e.getCause() instanceof IOException ? (IOException)e.getCause() : new IOException(e.getCause());
+	}
+	return results;
+  }
+
+  private static void collectIds(final RandomAccessibleInterval<?> block, final TLongSet ids) {
+
+	for (final Object pixel : Views.flatIterable(block)) {
+	  if (pixel instanceof LabelMultisetType) {
+		for (final LabelMultisetType.Entry<Label> entry : ((LabelMultisetType)pixel).entrySet())
+		  addIfRegular(entry.getElement().id(), ids);
+	  } else
+		addIfRegular(((IntegerType<?>)pixel).getIntegerLong(), ids);
+	}
+  }
+
+  private static void addIfRegular(final long id, final TLongSet ids) {
+
+	/* consistent with the label block lookup updates on commit, background is not indexed */
+	if (id != Label.BACKGROUND && Label.regular(id))
+	  ids.add(id);
+  }
+
+  static Interval blockInterval(final CellGrid grid, final long blockIndex) {
+
+	final long[] gridPosition = new long[grid.numDimensions()];
+	final long[] min = new long[grid.numDimensions()];
+	final int[] size = new int[grid.numDimensions()];
+	grid.getCellGridPositionFlat(blockIndex, gridPosition);
+	grid.getCellDimensions(gridPosition, min, size);
+	final long[] max = new long[min.length];
+	for (int d = 0; d < max.length; ++d)
+	  max[d] = min[d] + size[d] - 1;
+	return new FinalInterval(min, max);
+  }
+
+  static long blockIndex(final CellGrid grid, final Interval block) {
+
+	final long[] gridPosition = new long[grid.numDimensions()];
+	for (int d = 0; d < gridPosition.length; ++d)
+	  gridPosition[d] = block.min(d) / grid.cellDimension(d);
+	return IntervalIndexer.positionToIndex(gridPosition, grid.getGridDimensions());
+  }
+}
@@ -0,0 +1,377 @@
+package org.janelia.saalfeldlab.util.grids;
+
+import gnu.trove.iterator.TLongObjectIterator;
+import gnu.trove.map.TIntObjectMap;
+import gnu.trove.map.TLongObjectMap;
+import gnu.trove.map.hash.TIntObjectHashMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import org.janelia.saalfeldlab.labels.blocks.LabelBlockLookup;
+import org.janelia.saalfeldlab.labels.blocks.LabelBlockLookupKey;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link LabelBlockLookup} that hashes label ids into a fixed number of shards per level instead of storing one file per
+ * id like {@link org.janelia.saalfeldlab.labels.blocks.LabelBlockLookupFromFile}. Each shard is a single file
+ * {@code <root>/s<level>/<shard>.shard} with the ids of the shard in ascending order, followed by the offsets into and
+ * the block lists themselves:
+ * <pre>
+ * int magic, int version, int numDimensions, int numIds
+ * long[numIds] ids
+ * long[numIds + 1] offsets (number of blocks before each id)
+ * long[numBlocks * 2 * numDimensions] min and max of each block
+ * </pre>
+ * Shards are memory mapped for reading and looked up by binary search. {@link #write(int, TLongObjectMap)} rewrites
+ * each affected shard exactly once and replaces it atomically, so that readers never see a partially written shard.
+ * The same shards are usually written through another instance than the one that reads them, e.g. when a canvas is
+ * committed, so a mapped shard is only used as long as the file still has the same file key and modification time.
+ * Writes are serialized across all instances with the same root.
+ * <p>
+ * If {@link #root} is relative, it is resolved against the base directory set via {@link #setBaseDirectory(String)},
+ * usually the Paintera dataset.
+ */
+@LabelBlockLookup.LookupType(LabelBlockLookupSharded.LOOKUP_TYPE)
+public class LabelBlockLookupSharded implements BatchedLabelBlockLookup {
+
+  private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  public static final String LOOKUP_TYPE = "SHARDED";
+
+  public static final String DEFAULT_ROOT = "label-to-block-mapping-sharded";
+
+  public static final int DEFAULT_NUM_SHARDS = 256;
+
+  private static final int MAGIC = 0x4c424c53;
+
+  private static final int VERSION = 1;
+
+  private static final int HEADER_SIZE = 4 * Integer.BYTES;
+
+  private static final Interval[] EMPTY = new Interval[0];
+
+  /* shared by all instances with the same root */
+  private static final Map<Path, Object> WRITE_LOCKS = new ConcurrentHashMap<>();
+
+  @LabelBlockLookup.Parameter
+  private final String root;
+
+  @LabelBlockLookup.Parameter
+  private final int numShards;
+
+  private transient String baseDirectory;
+
+  private final transient Map<Path, MappedShard> mappedShards;
+
+  private LabelBlockLookupSharded() {
+
+	this(null, DEFAULT_NUM_SHARDS);
+  }
+
+  /**
+   * @param root      directory that holds the shards, relative to {@link #setBaseDirectory(String) base directory} or
+   *                  absolute
+   * @param numShards number of shards per level. Must not change once the lookup was written.
+   */
+  public LabelBlockLookupSharded(final String root, final int numShards) {
+
+	this.root = root;
+	this.numShards = numShards;
+	this.mappedShards = new ConcurrentHashMap<>();
+  }
+
+  @NotNull
+  @Override
+  public String getType() {
+
+	return LOOKUP_TYPE;
+  }
+
+  public String getRoot() {
+
+	return root;
+  }
+
+  public int getNumShards() {
+
+	return numShards;
+  }
+
+  public void setBaseDirectory(final String baseDirectory) {
+
+	this.baseDirectory = baseDirectory;
+	mappedShards.clear();
+  }
+
+  @NotNull
+  @Override
+  public Interval[] read(final LabelBlockLookupKey key) throws IOException {
+
+	final int level = key.getLevel();
+	final long id = key.getId();
+	final ByteBuffer shard = mapShard(shardPath(level, shardIndex(id, numShards)));
+	if (shard == null)
+	  return EMPTY;
+
+	final int numDimensions = shard.getInt(2 * Integer.BYTES);
+	final int numIds = shard.getInt(3 * Integer.BYTES);
+	final int index = binarySearch(shard, numIds, id);
+	if (index < 0)
+	  return EMPTY;
+
+	final int offsetsStart = HEADER_SIZE + numIds * Long.BYTES;
+	final int blocksStart = offsetsStart + (numIds + 1) * Long.BYTES;
+	final int from = (int)shard.getLong(offsetsStart + index * Long.BYTES);
+	final int to = (int)shard.getLong(offsetsStart + (index + 1) * Long.BYTES);
+	final Interval[] intervals = new Interval[to - from];
+	for (int i = from, k = 0; i < to; ++i, ++k) {
+	  final long[] min = new long[numDimensions];
+	  final long[] max = new long[numDimensions];
+	  final int blockStart = blocksStart + i * 2 * numDimensions * Long.BYTES;
+	  for (int d = 0; d < numDimensions; ++d) {
+		min[d] = shard.getLong(blockStart + d * Long.BYTES);
+		max[d] = shard.getLong(blockStart + (numDimensions + d) * Long.BYTES);
+	  }
+	  intervals[k] = new FinalInterval(min, max);
+	}
+	LOG.trace("level={} id={} -- read {} blocks", level, id, intervals.length);
+	return intervals;
+  }
+
+  @Override
+  public void write(final LabelBlockLookupKey key, final Interval... intervals) throws IOException {
+
+	final TLongObjectMap<Interval[]> intervalsById = new TLongObjectHashMap<>();
+	intervalsById.put(key.getId(), intervals);
+	write(key.getLevel(), intervalsById);
+  }
+
+  @Override
+  public void write(final int level, final TLongObjectMap<Interval[]> intervalsById) throws IOException {
+
+	synchronized (WRITE_LOCKS.computeIfAbsent(rootPath().toAbsolutePath().normalize(), p -> new Object())) {
+	  writeSynchronized(level, intervalsById);
+	}
+  }
+
+  private void writeSynchronized(final int level, final TLongObjectMap<Interval[]> intervalsById) throws IOException {
+
+	final TIntObjectMap<TLongObjectMap<Interval[]>> updatesByShard = new TIntObjectHashMap<>();
+	for (final TLongObjectIterator<Interval[]> it = intervalsById.iterator(); it.hasNext(); ) {
+	  it.advance();
+	  final int shard = shardIndex(it.key(), numShards);
+	  if (!updatesByShard.containsKey(shard))
+		updatesByShard.put(shard, new TLongObjectHashMap<>());
+	  updatesByShard.get(shard).put(it.key(), it.value());
+	}
+
+	for (final int shard : updatesByShard.keys())
+	  rewriteShard(shardPath(level, shard), updatesByShard.get(shard));
+	LOG.debug("level={} -- updated {} ids in {} shards", level, intervalsById.size(), updatesByShard.size());
+  }
+
+  private void rewriteShard(final Path path, final TLongObjectMap<Interval[]> updates) throws IOException {
+
+	final TLongObjectMap<long[]> blocksById = new TLongObjectHashMap<>();
+	int numDimensions = readShard(path, blocksById);
+
+	for (final TLongObjectIterator<Interval[]> it = updates.iterator(); it.hasNext(); ) {
+	  it.advance();
+	  final Interval[] intervals = it.value();
+	  if (intervals == null || intervals.length == 0) {
+		blocksById.remove(it.key());
+		continue;
+	  }
+	  if (numDimensions < 0)
+		numDimensions = intervals[0].numDimensions();
+	  final long[] blocks = new long[intervals.length * 2 * numDimensions];
+	  for (int i = 0; i < intervals.length; ++i) {
+		if (intervals[i].numDimensions() != numDimensions)
+		  throw new IOException(String.format("Expected %d dimensions for block of id %d but got %d", numDimensions, it.key(), intervals[i].numDimensions()));
+		for (int d = 0; d < numDimensions; ++d) {
+		  blocks[i * 2 * numDimensions + d] = intervals[i].min(d);
+		  blocks[i * 2 * numDimensions + numDimensions + d] = intervals[i].max(d);
+		}
+	  }
+	  blocksById.put(it.key(), blocks);
+	}
+
+	mappedShards.remove(path);
+	if (blocksById.isEmpty()) {
+	  Files.deleteIfExists(path);
+	  return;
+	}
+
+	final long[] ids = blocksById.keys();
+	Arrays.sort(ids);
+	long numBlockValues = 0;
+	for (final long[] blocks : blocksById.valueCollection())
+	  numBlockValues += blocks.length;
+	final long size = HEADER_SIZE + (2L * ids.length + 1 + numBlockValues) * Long.BYTES;
+	if (size > Integer.MAX_VALUE)
+	  throw new IOException(String.format("Shard %s would exceed 2GB -- use more shards than %d", path, numShards));
+
+	final ByteBuffer buffer = ByteBuffer.allocate((int)size);
+	buffer.putInt(MAGIC).putInt(VERSION).putInt(numDimensions).putInt(ids.length);
+	for (final long id : ids)
+	  buffer.putLong(id);
+	long offset = 0;
+	buffer.putLong(offset);
+	for (final long id : ids) {
+	  offset += blocksById.get(id).length / (2 * numDimensions);
+	  buffer.putLong(offset);
+	}
+	for (final long id : ids)
+	  for (final long value : blocksById.get(id))
+		buffer.putLong(value);
+	buffer.flip();
+
+	Files.createDirectories(path.getParent());
+	final Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+	try (final FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+	  while (buffer.hasRemaining())
+		channel.write(buffer);
+	}
+	Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * @return number of dimensions of the blocks in the shard, or {@code -1} if the shard does not exist.
+   */
+  private int readShard(final Path path, final TLongObjectMap<long[]> blocksById) throws IOException {
+
+	final ByteBuffer shard = mapShard(path);
+	if (shard == null)
+	  return -1;
+	final int numDimensions = shard.getInt(2 * Integer.BYTES);
+	final int numIds = shard.getInt(3 * Integer.BYTES);
+	final int offsetsStart = HEADER_SIZE + numIds * Long.BYTES;
+	final int blocksStart = offsetsStart + (numIds + 1) * Long.BYTES;
+	for (int index = 0; index < numIds; ++index) {
+	  final int from = (int)shard.getLong(offsetsStart + index * Long.BYTES) * 2 * numDimensions;
+	  final int to = (int)shard.getLong(offsetsStart + (index + 1) * Long.BYTES) * 2 * numDimensions;
+	  final long[] blocks = new long[to - from];
+	  for (int i = from; i < to; ++i)
+		blocks[i - from] = shard.getLong(blocksStart + i * Long.BYTES);
+	  blocksById.put(shard.getLong(HEADER_SIZE + index * Long.BYTES), blocks);
+	}
+	return numDimensions;
+  }
+
+  private ByteBuffer mapShard(final Path path) throws IOException {
+
+	final BasicFileAttributes attributes;
+	try {
+	  attributes = Files.readAttributes(path, BasicFileAttributes.class);
+	} catch (final NoSuchFileException e) {
+	  mappedShards.remove(path);
+	  return null;
+	}
+	if (!attributes.isRegularFile()) {
+	  mappedShards.remove(path);
+	  return null;
+	}
+
+	final MappedShard cached = mappedShards.get(path);
+	if (cached != null && cached.isCurrent(attributes))
+	  return cached.buffer;
+
+	try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+	  final ByteBuffer shard = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+	  if (shard.capacity() < HEADER_SIZE || shard.getInt(0) != MAGIC)
+		throw new IOException("Not a label block lookup shard: " + path);
+	  if (shard.getInt(Integer.BYTES) != VERSION)
+		throw new IOException(String.format("Unsupported version %d for label block lookup shard %s", shard.getInt(Integer.BYTES), path));
+	  // mapping stays valid after the channel is closed
+	  mappedShards.put(path, new MappedShard(shard, attributes));
+	  LOG.trace("Mapped shard {} ({})", path, cached == null ? "new" : "changed");
+	  return shard;
+	}
+  }
+
+  private static int binarySearch(final ByteBuffer shard, final int numIds, final long id) {
+
+	int low = 0;
+	int high = numIds - 1;
+	while (low <= high) {
+	  final int mid = (low + high) >>> 1;
+	  final long midId = shard.getLong(HEADER_SIZE + mid * Long.BYTES);
+	  if (midId < id)
+		low = mid + 1;
+	  else if (midId > id)
+		high = mid - 1;
+	  else
+		return mid;
+	}
+	return -(low + 1);
+  }
+
+  /**
+   * Spread consecutive ids, as typically created by the id service, evenly over all shards.
+   */
+  static int shardIndex(final long id, final int numShards) {
+
+	long hash = id * 0x9E3779B97F4A7C15L;
+	hash ^= hash >>> 32;
+	return (int)Math.floorMod(hash, (long)numShards);
+  }
+
+  private Path shardPath(final int level, final int shard) {
+
+	return rootPath().resolve("s" + level).resolve(shard + ".shard");
+  }
+
+  private Path rootPath() {
+
+	return baseDirectory == null ? Paths.get(root) : Paths.get(baseDirectory).resolve(root);
+  }
+
+  /**
+   * Shards are replaced by atomic moves, so a changed shard has a new file key (inode) where supported, and a new
+   * modification time or size otherwise.
+   */
+  private static final class MappedShard {
+
+	private final ByteBuffer buffer;
+
+	private final Object fileKey;
+
+	private final FileTime lastModifiedTime;
+
+	private final long size;
+
+	private MappedShard(final ByteBuffer buffer, final BasicFileAttributes attributes) {
+
+	  this.buffer = buffer;
+	  this.fileKey = attributes.fileKey();
+	  this.lastModifiedTime = attributes.lastModifiedTime();
+	  this.size = attributes.size();
+	}
+
+	private boolean isCurrent(final BasicFileAttributes attributes) {
+
+	  return Objects.equals(fileKey, attributes.fileKey())
+			  && lastModifiedTime.equals(attributes.lastModifiedTime())
+			  && size == attributes.size();
+	}
+  }
+}
@@ -0,0 +1,380 @@
+package org.janelia.saalfeldlab.util.grids;
+
+import gnu.trove.set.TLongSet;
+import gnu.trove.set.hash.TLongHashSet;
+import net.imglib2.Interval;
+import net.imglib2.img.cell.CellGrid;
+import org.janelia.saalfeldlab.labels.blocks.LabelBlockLookup;
+import org.janelia.saalfeldlab.labels.blocks.LabelBlockLookupKey;
+import org.janelia.saalfeldlab.labels.blocks.LabelBlockLookupFromFile;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * {@link LabelBlockLookup} for datasets without a label-to-block mapping. The mapping is built in the background by
+ * {@link LabelBlockLookupIndexBuilder} and stored in the same {@code label-to-block-mapping/s%d/%d} layout as for
+ * Paintera datasets. Each level is read from the index as soon as the index for that level is complete and falls back
+ * to {@link LabelBlockLookupAllBlocks} until then.
+ * <p>
+ * Progress is stored next to the index in one {@code s<level>.progress} file per level so that the index can be resumed
+ * after Paintera was closed.
+ * <p>
+ * Commits {@link #updateBlocks update} the index of all levels, including levels that are still being built. The builder
+ * only ever adds to existing entries, so a block that was scanned before a commit may at worst stay listed for an id that
+ * the commit removed from it, which costs an unnecessary block for mesh generation but never a missing one. Updates of
+ * the same id are serialized across all instances with the same root, e.g. the instance of a label source and the one of
+ * a headless commit.
+ */
+@LabelBlockLookup.LookupType("BACKGROUND_INDEX")
+public class LabelBlockLookupWithBackgroundIndex implements LabelBlockLookup {
+
+  private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  private static final String PROGRESS_FILE_FORMAT = "s%d.progress";
+
+  private static final int UNKNOWN = 0;
+
+  private static final int INCOMPLETE = 1;
+
+  private static final int COMPLETE = 2;
+
+  private static final int NUM_ID_LOCKS = 64;
+
+  /* shared by all instances with the same root */
+  private static final Map<String, IndexLocks> LOCKS = new ConcurrentHashMap<>();
+
+  @LabelBlockLookup.Parameter
+  private final String root;
+
+  @LabelBlockLookup.Parameter
+  private final long[][] dims;
+
+  @LabelBlockLookup.Parameter
+  private final int[][] blockSizes;
+
+  private transient LabelBlockLookupAllBlocks fallback;
+
+  private transient LabelBlockLookupFromFile index;
+
+  private transient AtomicIntegerArray levelStatus;
+
+  private LabelBlockLookupWithBackgroundIndex() {
+
+	this(null, null, null);
+  }
+
+  /**
+   * @param root       directory that holds the index, e.g. {@code <container>/<group>/label-to-block-mapping}
+   * @param dims       dimensions of all levels, finest first
+   * @param blockSizes block sizes of all levels, finest first
+   */
+  public LabelBlockLookupWithBackgroundIndex(final String root, final long[][] dims, final int[][] blockSizes) {
+
+	this.root = root;
+	this.dims = dims;
+	this.blockSizes = blockSizes;
+  }
+
+  @NotNull
+  @Override
+  public String getType() {
+
+	return "BACKGROUND_INDEX";
+  }
+
+  @NotNull
+  @Override
+  public Interval[] read(final LabelBlockLookupKey key) throws IOException {
+
+	return isLevelComplete(key.getLevel())
+			? getIndex().read(key)
+			: getFallback().read(key);
+  }
+
+  @Override
+  public void write(final LabelBlockLookupKey key, final Interval... intervals) throws IOException {
+
+	if (!isLevelComplete(key.getLevel())) {
+	  LOG.debug("Index for level {} is not complete yet -- not replacing blocks for id {}, use updateBlocks instead", key.getLevel(), key.getId());
+	  return;
+	}
+	final IndexLocks locks = getLocks();
+	locks.level.readLock().lock();
+	try {
+	  synchronized (locks.forId(key.getId())) {
+		getIndex().write(key, intervals);
+	  }
+	} finally {
+	  locks.level.readLock().unlock();
+	}
+  }
+
+  /**
+   * Add blocks to and remove blocks from the index entry of {@code id}, regardless of the progress of {@code level}.
+   *
+   * @param level   level of the index
+   * @param id      label id
+   * @param added   linear indices of blocks in the grid of {@code level} that contain {@code id} now, may be {@code null}
+   * @param removed linear indices of blocks in the grid of {@code level} that do not contain {@code id} anymore, may be
+   *                {@code null}
+   * @throws IOException if the index cannot be read or written
+   */
+  public void updateBlocks(final int level, final long id, final TLongSet added, final TLongSet removed) throws IOException {
+
+	final CellGrid grid = getGrid(level);
+	final LabelBlockLookupKey key = new LabelBlockLookupKey(level, id);
+	final IndexLocks locks = getLocks();
+	locks.level.readLock().lock();
+	try {
+	  synchronized (locks.forId(id)) {
+		final TLongSet blocks = new TLongHashSet();
+		for (final Interval existing : getIndex().read(key))
+		  blocks.add(LabelBlockLookupIndexBuilder.blockIndex(grid, existing));
+		if (removed != null)
+		  blocks.removeAll(removed);
+		if (added != null)
+		  blocks.addAll(added);
+		final long[] sortedBlocks = blocks.toArray();
+		Arrays.sort(sortedBlocks);
+		final Interval[] intervals = new Interval[sortedBlocks.length];
+		for (int i = 0; i < sortedBlocks.length; ++i)
+		  intervals[i] = LabelBlockLookupIndexBuilder.blockInterval(grid, sortedBlocks[i]);
+		getIndex().write(key, intervals);
+	  }
+	} finally {
+	  locks.level.readLock().unlock();
+	}
+  }
+
+  /**
+   * Remove the index of {@code level} before it is built from scratch, e.g. left over from an interrupted build with a
+   * different grid. Creates the root directory, so that commits update the index from now on.
+   *
+   * @param level level of the index
+   * @throws IOException if the index cannot be removed
+   */
+  void resetLevel(final int level) throws IOException {
+
+	final IndexLocks locks = getLocks();
+	locks.level.writeLock().lock();
+	try {
+	  final Path levelDirectory = Paths.get(root, "s" + level);
+	  if (Files.isDirectory(levelDirectory))
+		try (final Stream<Path> paths = Files.walk(levelDirectory)) {
+		  for (final Path path : (Iterable<Path>)paths.sorted(Comparator.reverseOrder())::iterator)
+			Files.delete(path);
+		}
+	  Files.deleteIfExists(progressPath(level));
+	  getLevelStatus().set(level, INCOMPLETE);
+	  Files.createDirectories(Paths.get(root));
+	} finally {
+	  locks.level.writeLock().unlock();
+	}
+  }
+
+  /**
+   * @return {@code true} if a build of the index was started in {@code root}, i.e. commits need to update it.
+   */
+  public static boolean exists(final String root) {
+
+	return Files.isDirectory(Paths.get(root));
+  }
+
+  public String getRoot() {
+
+	return root;
+  }
+
+  public long[][] getDims() {
+
+	return dims;
+  }
+
+  public int[][] getBlockSizes() {
+
+	return blockSizes;
+  }
+
+  public int getNumLevels() {
+
+	return dims.length;
+  }
+
+  /**
+   * @return {@code true} if the index is complete for all levels.
+   */
+  public boolean isComplete() {
+
+	for (int level = 0; level < getNumLevels(); ++level)
+	  if (!isLevelComplete(level))
+		return false;
+	return true;
+  }
+
+  /**
+   * @param level level of the index
+   * @return {@code true} if the index for {@code level} is complete and used for lookups.
+   */
+  public boolean isLevelComplete(final int level) {
+
+	final AtomicIntegerArray status = getLevelStatus();
+	if (status.get(level) == UNKNOWN) {
+	  final Progress progress = readProgress(level);
+	  status.compareAndSet(level, UNKNOWN, progress.isComplete() ? COMPLETE : INCOMPLETE);
+	}
+	return status.get(level) == COMPLETE;
+  }
+
+  /**
+   * @param level level of the index
+   * @return number of processed and total number of batches for {@code level}, zero for both if the index has not
+   * been started for this level.
+   */
+  public Progress readProgress(final int level) {
+
+	final Path path = progressPath(level);
+	if (!Files.isRegularFile(path))
+	  return new Progress(0, 0);
+	try {
+	  final String[] counts = new String(Files.readAllBytes(path), StandardCharsets.UTF_8).trim().split("/");
+	  return new Progress(Long.parseLong(counts[0]), Long.parseLong(counts[1]));
+	} catch (final IOException | RuntimeException e) {
+	  LOG.warn("Unable to read index progress from {} -- starting level {} from scratch", path, level, e);
+	  return new Progress(0, 0);
+	}
+  }
+
+  /**
+   * Record progress for {@code level}. Once {@code progress} is complete, the index will be used for all lookups at
+   * {@code level}.
+   *
+   * @param level    level of the index
+   * @param progress number of processed and total number of batches
+   * @throws IOException if the progress file cannot be written
+   */
+  void writeProgress(final int level, final Progress progress) throws IOException {
+
+	final Path path = progressPath(level);
+	Files.createDirectories(path.getParent());
+	final Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+	Files.write(tmp, progress.toString().getBytes(StandardCharsets.UTF_8));
+	Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	getLevelStatus().set(level, progress.isComplete() ? COMPLETE : INCOMPLETE);
+	LOG.debug("Wrote index progress {} for level {} to {}", progress, level, path);
+  }
+
+  /**
+   * @return lookup that reads and writes the index regardless of its progress, for use by the builder.
+   */
+  LabelBlockLookupFromFile getIndex() {
+
+	synchronized (this) {
+	  if (index == null)
+		index = new LabelBlockLookupFromFile(Paths.get(root, "s%d", "%d").toString());
+	  return index;
+	}
+  }
+
+  private LabelBlockLookupAllBlocks getFallback() {
+
+	synchronized (this) {
+	  if (fallback == null)
+		fallback = new LabelBlockLookupAllBlocks(dims, blockSizes);
+	  return fallback;
+	}
+  }
+
+  private CellGrid getGrid(final int level) {
+
+	return new CellGrid(dims[level], blockSizes[level]);
+  }
+
+  private IndexLocks getLocks() {
+
+	return LOCKS.computeIfAbsent(Paths.get(root).toAbsolutePath().normalize().toString(), r -> new IndexLocks());
+  }
+
+  private AtomicIntegerArray getLevelStatus() {
+
+	synchronized (this) {
+	  if (levelStatus == null)
+		levelStatus = new AtomicIntegerArray(dims.length);
+	  return levelStatus;
+	}
+  }
+
+  private Path progressPath(final int level) {
+
+	return Paths.get(root, String.format(PROGRESS_FILE_FORMAT, level));
+  }
+
+  private static final class IndexLocks {
+
+	/* held exclusively while a level is reset, shared by updates of single ids */
+	private final ReadWriteLock level = new ReentrantReadWriteLock();
+
+	private final Object[] ids = new Object[NUM_ID_LOCKS];
+
+	private IndexLocks() {
+
+	  for (int i = 0; i < ids.length; ++i)
+		ids[i] = new Object();
+	}
+
+	private Object forId(final long id) {
+
+	  return ids[(int)Math.floorMod(id ^ (id >>> 32), (long)NUM_ID_LOCKS)];
+	}
+  }
+
+  public static class Progress {
+
+	private final long numProcessedBatches;
+
+	private final long numBatches;
+
+	public Progress(final long numProcessedBatches, final long numBatches) {
+
+	  this.numProcessedBatches = numProcessedBatches;
+	  this.numBatches = numBatches;
+	}
+
+	public long getNumProcessedBatches() {
+
+	  return numProcessedBatches;
+	}
+
+	public long getNumBatches() {
+
+	  return numBatches;
+	}
+
+	public boolean isComplete() {
+
+	  return numBatches > 0 && numProcessedBatches >= numBatches;
+	}
+
+	@Override
+	public String toString() {
+
+	  return numProcessedBatches + "/" + numBatches;
+	}
+  }
+}
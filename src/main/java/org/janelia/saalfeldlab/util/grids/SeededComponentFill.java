@@ -0,0 +1,379 @@
+package org.janelia.saalfeldlab.util.grids;
+
+import net.imglib2.Cursor;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.type.BooleanType;
+import net.imglib2.type.Type;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.function.IntConsumer;
+
+/**
+ * Connected components (face-connected) of a mask that contain at least one seed, i.e. a flood fill into the mask from
+ * all voxels where both mask and seeds are {@code true}.
+ * <p>
+ * The components are computed in two passes over the blocks of a grid. The first pass labels the components within each
+ * block in parallel. The second pass joins components that touch across block faces through a
+ * {@link ConcurrentUnionFind} over all (block, local id) pairs, again in parallel, and then marks the roots of all
+ * components that contain a seed in a single sweep.
+ * <p>
+ * Local labels are not kept after the first pass, {@link #fill(RandomAccessibleInterval, Type)} labels a block again
+ * when it is needed. Only the labels on the block faces are kept, run-length encoded, and only for blocks that
+ * contain any component.
+ */
+public class SeededComponentFill<B extends BooleanType<B>> {
+
+  private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  /* components of all blocks are ids of a single union-find that is backed by an array */
+  private static final int MAX_NUM_COMPONENTS = Integer.MAX_VALUE - 8;
+
+  private final RandomAccessibleInterval<B> mask;
+
+  private final CellGrid grid;
+
+  /* id of the first component of each block in the union-find */
+  private final int[] offsets;
+
+  private final ConcurrentUnionFind unionFind;
+
+  private final BitSet seededRoots;
+
+  private SeededComponentFill(
+		  final RandomAccessibleInterval<B> mask,
+		  final CellGrid grid,
+		  final int[] offsets,
+		  final ConcurrentUnionFind unionFind,
+		  final BitSet seededRoots) {
+
+	this.mask = mask;
+	this.grid = grid;
+	this.offsets = offsets;
+	this.unionFind = unionFind;
+	this.seededRoots = seededRoots;
+  }
+
+  /**
+   * @param mask     voxels that can be filled, with min at the origin
+   * @param seeds    fill starts at all voxels that are {@code true} in {@code seeds} and {@code mask}
+   * @param grid     blocks that are processed in parallel, over the dimensions of {@code mask}
+   * @param es       executor for the blocks, the calling thread does not block
+   * @param numTasks number of tasks per pass, each task processes a range of blocks
+   * @return future that completes once all passes are done
+   */
+  public static <B extends BooleanType<B>> CompletableFuture<SeededComponentFill<B>> computeAsync(
+		  final RandomAccessibleInterval<B> mask,
+		  final RandomAccessibleInterval<B> seeds,
+		  final CellGrid grid,
+		  final ExecutorService es,
+		  final int numTasks) {
+
+	final int numBlocks = Math.toIntExact(Intervals.numElements(grid.getGridDimensions()));
+	final BlockComponents[] components = new BlockComponents[numBlocks];
+	LOG.debug("Labeling components in {} blocks", numBlocks);
+	return forEachBlock(numBlocks, numTasks, es, block -> components[block] = labelBlock(mask, seeds, grid, block))
+			.thenCompose(labeled -> {
+			  long numComponents = 0;
+			  for (int block = 0; block < numBlocks; ++block)
+				numComponents += components[block].numComponents;
+			  if (numComponents > MAX_NUM_COMPONENTS)
+				throw new IllegalStateException(String.format(
+						"Mask has %d components within %d blocks but at most %d are supported, use a smaller region or larger blocks",
+						numComponents,
+						numBlocks,
+						MAX_NUM_COMPONENTS));
+			  final int[] offsets = new int[numBlocks];
+			  for (int block = 1; block < numBlocks; ++block)
+				offsets[block] = offsets[block - 1] + components[block - 1].numComponents;
+			  LOG.debug("Joining {} components across block faces", numComponents);
+			  final ConcurrentUnionFind unionFind = new ConcurrentUnionFind((int)numComponents);
+			  return forEachBlock(numBlocks, numTasks, es, block -> joinWithNeighbors(grid, components, offsets, unionFind, block))
+					  .thenApply(joined -> new SeededComponentFill<>(mask, grid, offsets, unionFind, markSeededRoots(components, offsets, unionFind)));
+			});
+  }
+
+  public CellGrid getGrid() {
+
+	return grid;
+  }
+
+  /**
+   * Set all voxels of {@code block} that belong to a component with a seed to {@code value}.
+   *
+   * @param block a cell of {@link #getGrid()}
+   */
+  public <T extends Type<T>> void fill(final RandomAccessibleInterval<T> block, final T value) {
+
+	final int blockIndex = (int)LabelBlockLookupIndexBuilder.blockIndex(grid, block);
+	final Interval interval = Grids.getCellInterval(grid, blockIndex);
+	final int[] labels = new int[(int)Intervals.numElements(interval)];
+	final int numComponents = labelComponents(readMask(mask, interval), Intervals.dimensionsAsIntArray(interval), labels);
+	if (numComponents == 0)
+	  return;
+
+	final boolean[] isSeeded = new boolean[numComponents + 1];
+	boolean anySeeded = false;
+	for (int label = 1; label <= numComponents; ++label) {
+	  isSeeded[label] = seededRoots.get(unionFind.findRoot(offsets[blockIndex] + label - 1));
+	  anySeeded |= isSeeded[label];
+	}
+	if (!anySeeded)
+	  return;
+
+	final Cursor<T> cursor = Views.flatIterable(Views.interval(block, interval)).cursor();
+	for (int i = 0; cursor.hasNext(); ++i) {
+	  final T t = cursor.next();
+	  if (isSeeded[labels[i]])
+		t.set(value);
+	}
+  }
+
+  private static CompletableFuture<Void> forEachBlock(final int numBlocks, final int numTasks, final ExecutorService es, final IntConsumer action) {
+
+	final int step = Math.max((numBlocks + numTasks - 1) / Math.max(numTasks, 1), 1);
+	final List<CompletableFuture<Void>> tasks = new ArrayList<>();
+	for (int start = 0; start < numBlocks; start += step) {
+	  final int from = start;
+	  final int to = Math.min(start + step, numBlocks);
+	  tasks.add(CompletableFuture.runAsync(() -> {
+		for (int block = from; block < to; ++block)
+		  action.accept(block);
+	  }, es));
+	}
+	return CompletableFuture.allOf(tasks.toArray(CompletableFuture[]::new));
+  }
+
+  private static <B extends BooleanType<B>> BlockComponents labelBlock(
+		  final RandomAccessibleInterval<B> mask,
+		  final RandomAccessibleInterval<B> seeds,
+		  final CellGrid grid,
+		  final int blockIndex) {
+
+	final Interval interval = Grids.getCellInterval(grid, blockIndex);
+	final int[] size = Intervals.dimensionsAsIntArray(interval);
+	final int[] labels = new int[(int)Intervals.numElements(interval)];
+	final int numComponents = labelComponents(readMask(mask, interval), size, labels);
+	if (numComponents == 0)
+	  return BlockComponents.EMPTY;
+
+	final BitSet seeded = new BitSet(numComponents + 1);
+	final Cursor<B> seedCursor = Views.flatIterable(Views.interval(seeds, interval)).cursor();
+	for (int i = 0; seedCursor.hasNext(); ++i) {
+	  if (seedCursor.next().get() && labels[i] != 0)
+		seeded.set(labels[i]);
+	}
+
+	/* labels on the lower and upper face along each dimension, in flat order of the remaining dimensions */
+	final int n = size.length;
+	final Face[] lowerFaces = new Face[n];
+	final Face[] upperFaces = new Face[n];
+	for (int d = 0; d < n; ++d) {
+	  lowerFaces[d] = new Face();
+	  upperFaces[d] = new Face();
+	}
+	final int[] position = new int[n];
+	for (int i = 0; i < labels.length; ++i) {
+	  for (int d = 0; d < n; ++d) {
+		if (position[d] == 0)
+		  lowerFaces[d].add(labels[i]);
+		if (position[d] == size[d] - 1)
+		  upperFaces[d].add(labels[i]);
+	  }
+	  for (int d = 0; d < n && ++position[d] == size[d]; ++d)
+		position[d] = 0;
+	}
+	for (int d = 0; d < n; ++d) {
+	  lowerFaces[d].trim();
+	  upperFaces[d].trim();
+	}
+	return new BlockComponents(numComponents, seeded, lowerFaces, upperFaces);
+  }
+
+  private static void joinWithNeighbors(
+		  final CellGrid grid,
+		  final BlockComponents[] components,
+		  final int[] offsets,
+		  final ConcurrentUnionFind unionFind,
+		  final int blockIndex) {
+
+	final long[] gridDimensions = grid.getGridDimensions();
+	final long[] gridPosition = new long[grid.numDimensions()];
+	grid.getCellGridPositionFlat(blockIndex, gridPosition);
+	if (components[blockIndex].numComponents == 0)
+	  return;
+	int stride = 1;
+	for (int d = 0; d < gridPosition.length; stride *= gridDimensions[d], ++d) {
+	  if (gridPosition[d] + 1 >= gridDimensions[d])
+		continue;
+	  final int neighborIndex = blockIndex + stride;
+	  if (components[neighborIndex].numComponents == 0)
+		continue;
+	  final Face upper = components[blockIndex].upperFaces[d];
+	  final Face lower = components[neighborIndex].lowerFaces[d];
+	  /* join every pair of overlapping runs, advancing the run that ends first */
+	  for (int i = 0, j = 0; i < upper.numRuns && j < lower.numRuns; ) {
+		if (upper.starts[i] < lower.ends[j] && lower.starts[j] < upper.ends[i])
+		  unionFind.join(offsets[blockIndex] + upper.labels[i] - 1, offsets[neighborIndex] + lower.labels[j] - 1);
+		if (upper.ends[i] <= lower.ends[j])
+		  ++i;
+		else
+		  ++j;
+	  }
+	}
+  }
+
+  private static BitSet markSeededRoots(final BlockComponents[] components, final int[] offsets, final ConcurrentUnionFind unionFind) {
+
+	final BitSet seededRoots = new BitSet(unionFind.size());
+	for (int block = 0; block < components.length; ++block) {
+	  final BitSet seeded = components[block].seeded;
+	  for (int label = seeded.nextSetBit(0); label >= 0; label = seeded.nextSetBit(label + 1))
+		seededRoots.set(unionFind.findRoot(offsets[block] + label - 1));
+	}
+	return seededRoots;
+  }
+
+  private static <B extends BooleanType<B>> boolean[] readMask(final RandomAccessibleInterval<B> mask, final Interval interval) {
+
+	final boolean[] inMask = new boolean[(int)Intervals.numElements(interval)];
+	final Cursor<B> cursor = Views.flatIterable(Views.interval(mask, interval)).cursor();
+	for (int i = 0; cursor.hasNext(); ++i)
+	  inMask[i] = cursor.next().get();
+	return inMask;
+  }
+
+  /**
+   * Label the face-connected components of {@code inMask} with {@code 1..numComponents}, in the order in which they
+   * are first encountered in flat iteration order. Voxels outside the mask are labeled {@code 0}.
+   *
+   * @return number of components
+   */
+  static int labelComponents(final boolean[] inMask, final int[] size, final int[] labels) {
+
+	final int[] strides = new int[size.length];
+	strides[0] = 1;
+	for (int d = 1; d < size.length; ++d)
+	  strides[d] = strides[d - 1] * size[d - 1];
+
+	/* each voxel is queued at most once, so the queue can be shared by all components */
+	final int[] queue = new int[inMask.length];
+	int numComponents = 0;
+	for (int start = 0; start < inMask.length; ++start) {
+	  if (!inMask[start] || labels[start] != 0)
+		continue;
+	  final int label = ++numComponents;
+	  labels[start] = label;
+	  int head = 0;
+	  int tail = 0;
+	  queue[tail++] = start;
+	  while (head < tail) {
+		final int index = queue[head++];
+		for (int d = 0; d < size.length; ++d) {
+		  final int position = index / strides[d] % size[d];
+		  if (position > 0) {
+			final int neighbor = index - strides[d];
+			if (inMask[neighbor] && labels[neighbor] == 0) {
+			  labels[neighbor] = label;
+			  queue[tail++] = neighbor;
+			}
+		  }
+		  if (position + 1 < size[d]) {
+			final int neighbor = index + strides[d];
+			if (inMask[neighbor] && labels[neighbor] == 0) {
+			  labels[neighbor] = label;
+			  queue[tail++] = neighbor;
+			}
+		  }
+		}
+	  }
+	}
+	return numComponents;
+  }
+
+  /**
+   * Labels on a block face in flat order of the remaining dimensions, run-length encoded without background: run
+   * {@code r} covers the face positions from {@code starts[r]} (inclusive) to {@code ends[r]} (exclusive) and has
+   * label {@code labels[r]}.
+   */
+  static final class Face {
+
+	int[] starts = new int[4];
+
+	int[] ends = new int[4];
+
+	int[] labels = new int[4];
+
+	int numRuns = 0;
+
+	private int length = 0;
+
+	/**
+	 * Append the label at the next face position.
+	 */
+	void add(final int label) {
+
+	  if (label != 0) {
+		if (numRuns > 0 && labels[numRuns - 1] == label && ends[numRuns - 1] == length)
+		  ++ends[numRuns - 1];
+		else {
+		  if (numRuns == starts.length) {
+			final int capacity = 2 * numRuns;
+			starts = Arrays.copyOf(starts, capacity);
+			ends = Arrays.copyOf(ends, capacity);
+			labels = Arrays.copyOf(labels, capacity);
+		  }
+		  starts[numRuns] = length;
+		  ends[numRuns] = length + 1;
+		  labels[numRuns] = label;
+		  ++numRuns;
+		}
+	  }
+	  ++length;
+	}
+
+	/**
+	 * Release unused capacity once all positions are added.
+	 */
+	void trim() {
+
+	  starts = Arrays.copyOf(starts, numRuns);
+	  ends = Arrays.copyOf(ends, numRuns);
+	  labels = Arrays.copyOf(labels, numRuns);
+	}
+  }
+
+  private static final class BlockComponents {
+
+	/* blocks without components do not keep any faces */
+	private static final BlockComponents EMPTY = new BlockComponents(0, new BitSet(), null, null);
+
+	private final int numComponents;
+
+	/* local labels of components that contain a seed */
+	private final BitSet seeded;
+
+	private final Face[] lowerFaces;
+
+	private final Face[] upperFaces;
+
+	private BlockComponents(final int numComponents, final BitSet seeded, final Face[] lowerFaces, final Face[] upperFaces) {
+
+	  this.numComponents = numComponents;
+	  this.seeded = seeded;
+	  this.lowerFaces = lowerFaces;
+	  this.upperFaces = upperFaces;
+	}
+  }
+}
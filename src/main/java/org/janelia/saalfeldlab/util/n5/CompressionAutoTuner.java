@@ -0,0 +1,225 @@
+package org.janelia.saalfeldlab.util.n5;
+
+import org.janelia.saalfeldlab.n5.DataBlock;
+import org.janelia.saalfeldlab.n5.DatasetAttributes;
+import org.janelia.saalfeldlab.n5.DefaultBlockReader;
+import org.janelia.saalfeldlab.n5.DefaultBlockWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Compress sample blocks with a set of {@link Candidate candidates} and pick the codec that minimizes the estimated
+ * time to load a block: the time to transfer the compressed block at a given bandwidth plus the time to decode it.
+ * Fast local storage favors cheap codecs ({@link CompressionCodec#LZ4}, {@link CompressionCodec#RAW}), slow network
+ * storage favors strong codecs.
+ */
+public class CompressionAutoTuner {
+
+  private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  public static final int DEFAULT_REPETITIONS = 3;
+
+  /**
+   * Codec and level to evaluate.
+   */
+  public static class Candidate {
+
+	public final CompressionCodec codec;
+
+	public final int level;
+
+	public Candidate(final CompressionCodec codec, final int level) {
+
+	  this.codec = codec;
+	  this.level = codec.clampLevel(level);
+	}
+
+	@Override
+	public String toString() {
+
+	  return codec.hasLevel() ? String.format("%s(%d)", codec.getType(), level) : codec.getType();
+	}
+  }
+
+  /**
+   * Accumulated sizes and timings of a {@link Candidate} over all sample blocks.
+   */
+  public static class Result {
+
+	public final Candidate candidate;
+
+	public final long rawBytes;
+
+	public final long compressedBytes;
+
+	public final long encodeNanos;
+
+	public final long decodeNanos;
+
+	private Result(final Candidate candidate, final long rawBytes, final long compressedBytes, final long encodeNanos, final long decodeNanos) {
+
+	  this.candidate = candidate;
+	  this.rawBytes = rawBytes;
+	  this.compressedBytes = compressedBytes;
+	  this.encodeNanos = encodeNanos;
+	  this.decodeNanos = decodeNanos;
+	}
+
+	public double compressionRatio() {
+
+	  return rawBytes / (double)Math.max(compressedBytes, 1);
+	}
+
+	/**
+	 * @return uncompressed bytes decoded per second
+	 */
+	public double decodeThroughput() {
+
+	  return rawBytes * 1e9 / Math.max(decodeNanos, 1);
+	}
+
+	/**
+	 * @param bandwidth bytes per second that storage delivers
+	 * @return estimated time in seconds to load all sample blocks
+	 */
+	public double loadSeconds(final double bandwidth) {
+
+	  return compressedBytes / bandwidth + decodeNanos * 1e-9;
+	}
+
+	@Override
+	public String toString() {
+
+	  return String.format(
+			  "%-10s ratio=%6.2f compressed=%10d encode=%8.2fms decode=%8.2fms (%7.1f MiB/s)",
+			  candidate,
+			  compressionRatio(),
+			  compressedBytes,
+			  encodeNanos * 1e-6,
+			  decodeNanos * 1e-6,
+			  decodeThroughput() / (1 << 20));
+	}
+  }
+
+  /**
+   * @return a few levels of all {@link CompressionCodec#isAvailable() available} codecs
+   */
+  public static List<Candidate> defaultCandidates() {
+
+	final List<Candidate> candidates = new ArrayList<>();
+	for (final CompressionCodec codec : CompressionCodec.available()) {
+	  switch (codec) {
+	  case GZIP:
+		candidates.add(new Candidate(codec, 1));
+		candidates.add(new Candidate(codec, 6));
+		break;
+	  case ZSTD:
+		candidates.add(new Candidate(codec, 1));
+		candidates.add(new Candidate(codec, 3));
+		candidates.add(new Candidate(codec, 9));
+		break;
+	  case XZ:
+		candidates.add(new Candidate(codec, 1));
+		break;
+	  default:
+		candidates.add(new Candidate(codec, codec.getDefaultLevel()));
+	  }
+	}
+	return candidates;
+  }
+
+  /**
+   * @param attributes  attributes of the dataset that holds {@code blocks}; the compression is ignored
+   * @param blocks      sample blocks
+   * @param candidates  codecs to evaluate
+   * @param repetitions timings are the minimum over this many repetitions
+   * @return one {@link Result} per candidate, in the order of {@code candidates}
+   * @throws IOException if any block cannot be encoded or decoded
+   */
+  public static List<Result> evaluate(
+		  final DatasetAttributes attributes,
+		  final List<? extends DataBlock<?>> blocks,
+		  final List<Candidate> candidates,
+		  final int repetitions) throws IOException {
+
+	final List<Result> results = new ArrayList<>();
+	for (final Candidate candidate : candidates) {
+	  final DatasetAttributes candidateAttributes = new DatasetAttributes(
+			  attributes.getDimensions(),
+			  attributes.getBlockSize(),
+			  attributes.getDataType(),
+			  candidate.codec.create(candidate.level));
+
+	  long rawBytes = 0;
+	  long compressedBytes = 0;
+	  long encodeNanos = Long.MAX_VALUE;
+	  long decodeNanos = Long.MAX_VALUE;
+	  final byte[][] encoded = new byte[blocks.size()][];
+	  for (int repetition = 0; repetition < Math.max(repetitions, 1); ++repetition) {
+		final long encodeStart = System.nanoTime();
+		for (int i = 0; i < encoded.length; ++i)
+		  encoded[i] = encode(candidateAttributes, blocks.get(i));
+		encodeNanos = Math.min(encodeNanos, System.nanoTime() - encodeStart);
+
+		final long decodeStart = System.nanoTime();
+		for (int i = 0; i < encoded.length; ++i)
+		  DefaultBlockReader.readBlock(new ByteArrayInputStream(encoded[i]), candidateAttributes, blocks.get(i).getGridPosition());
+		decodeNanos = Math.min(decodeNanos, System.nanoTime() - decodeStart);
+	  }
+	  for (int i = 0; i < encoded.length; ++i) {
+		rawBytes += blocks.get(i).toByteBuffer().capacity();
+		compressedBytes += encoded[i].length;
+	  }
+	  final Result result = new Result(candidate, rawBytes, compressedBytes, encodeNanos, decodeNanos);
+	  LOG.debug("{}", result);
+	  results.add(result);
+	}
+	return results;
+  }
+
+  /**
+   * @param results   {@link #evaluate(DatasetAttributes, List, List, int) evaluated} candidates
+   * @param bandwidth bytes per second that storage delivers
+   * @return result with the shortest {@link Result#loadSeconds(double) estimated load time}
+   */
+  public static Result choose(final List<Result> results, final double bandwidth) {
+
+	return results
+			.stream()
+			.min(Comparator.comparingDouble((Result r) -> r.loadSeconds(bandwidth)).thenComparingLong(r -> r.compressedBytes))
+			.orElseThrow(() -> new IllegalArgumentException("No results to choose from."));
+  }
+
+  /**
+   * Evaluate {@link #defaultCandidates()} on {@code blocks} and update {@code defaults} with the best choice.
+   *
+   * @return the best choice
+   */
+  public static Result tune(
+		  final CompressionDefaults defaults,
+		  final DatasetAttributes attributes,
+		  final List<? extends DataBlock<?>> blocks) throws IOException {
+
+	final List<Result> results = evaluate(attributes, blocks, defaultCandidates(), DEFAULT_REPETITIONS);
+	final Result best = choose(results, defaults.getBandwidth());
+	LOG.info("Compression for new datasets: {} (evaluated {} on {} blocks)", best, Arrays.toString(results.stream().map(r -> r.candidate).toArray()), blocks.size());
+	defaults.set(best.candidate.codec, best.candidate.level);
+	return best;
+  }
+
+  private static byte[] encode(final DatasetAttributes attributes, final DataBlock<?> block) throws IOException {
+
+	final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+	DefaultBlockWriter.writeBlock(bytes, attributes, block);
+	return bytes.toByteArray();
+  }
+}
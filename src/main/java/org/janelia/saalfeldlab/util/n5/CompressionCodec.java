@@ -0,0 +1,153 @@
+package org.janelia.saalfeldlab.util.n5;
+
+import org.janelia.saalfeldlab.n5.Bzip2Compression;
+import org.janelia.saalfeldlab.n5.Compression;
+import org.janelia.saalfeldlab.n5.GzipCompression;
+import org.janelia.saalfeldlab.n5.Lz4Compression;
+import org.janelia.saalfeldlab.n5.RawCompression;
+import org.janelia.saalfeldlab.n5.XzCompression;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.Arrays;
+import java.util.function.IntFunction;
+
+/**
+ * Block compression codecs that Paintera can write into datasets it creates. {@link #ZSTD} and {@link #BLOSC} are
+ * provided by optional N5 modules and are only {@link #isAvailable() available} if those are on the class path.
+ * <p>
+ * The meaning of the level depends on the codec: the deflate level for {@link #GZIP} ({@code -1} is the zlib default),
+ * the preset for {@link #XZ}, the block size in units of 100k for {@link #BZIP2}, the compression level for
+ * {@link #ZSTD} and {@link #BLOSC}. {@link #RAW} and {@link #LZ4} ignore the level.
+ */
+public enum CompressionCodec {
+
+  RAW("raw", false, 0, 0, 0, level -> new RawCompression()),
+  GZIP("gzip", true, -1, 9, -1, GzipCompression::new),
+  LZ4("lz4", false, 0, 0, 0, level -> new Lz4Compression()),
+  XZ("xz", true, 0, 9, 6, XzCompression::new),
+  BZIP2("bzip2", true, 1, 9, 9, Bzip2Compression::new),
+  ZSTD("zstd", true, 1, 22, 3, level -> reflectively(
+		  "org.janelia.saalfeldlab.n5.zstandard.ZstandardCompression",
+		  new Class<?>[]{int.class},
+		  level)),
+  BLOSC("blosc", true, 0, 9, 5, level -> reflectively(
+		  "org.janelia.saalfeldlab.n5.blosc.BloscCompression",
+		  new Class<?>[]{String.class, int.class, int.class, int.class, int.class},
+		  // lz4 internally, byte shuffle, automatic block size, single thread (blocks are compressed in parallel already)
+		  "lz4", level, 1, 0, 1));
+
+  private final String type;
+
+  private final boolean hasLevel;
+
+  private final int minLevel;
+
+  private final int maxLevel;
+
+  private final int defaultLevel;
+
+  private final IntFunction<Compression> factory;
+
+  CompressionCodec(
+		  final String type,
+		  final boolean hasLevel,
+		  final int minLevel,
+		  final int maxLevel,
+		  final int defaultLevel,
+		  final IntFunction<Compression> factory) {
+
+	this.type = type;
+	this.hasLevel = hasLevel;
+	this.minLevel = minLevel;
+	this.maxLevel = maxLevel;
+	this.defaultLevel = defaultLevel;
+	this.factory = factory;
+  }
+
+  /**
+   * @return the {@code type} of the compression in the N5 dataset attributes
+   */
+  public String getType() {
+
+	return type;
+  }
+
+  public boolean hasLevel() {
+
+	return hasLevel;
+  }
+
+  public int getMinLevel() {
+
+	return minLevel;
+  }
+
+  public int getMaxLevel() {
+
+	return maxLevel;
+  }
+
+  public int getDefaultLevel() {
+
+	return defaultLevel;
+  }
+
+  /**
+   * @return {@code level} clamped to the valid range of this codec
+   */
+  public int clampLevel(final int level) {
+
+	return hasLevel ? Math.min(Math.max(level, minLevel), maxLevel) : defaultLevel;
+  }
+
+  /**
+   * @return {@code true} if {@link #create(int)} can instantiate this codec
+   */
+  public boolean isAvailable() {
+
+	try {
+	  create(defaultLevel);
+	  return true;
+	} catch (final UnsupportedOperationException e) {
+	  return false;
+	}
+  }
+
+  /**
+   * @param level codec specific level, clamped to the valid range
+   * @return new {@link Compression}
+   * @throws UnsupportedOperationException if this codec is not {@link #isAvailable() available}
+   */
+  public Compression create(final int level) {
+
+	return factory.apply(clampLevel(level));
+  }
+
+  /**
+   * @return all codecs that are {@link #isAvailable() available}
+   */
+  public static CompressionCodec[] available() {
+
+	return Arrays.stream(values()).filter(CompressionCodec::isAvailable).toArray(CompressionCodec[]::new);
+  }
+
+  /**
+   * @param type {@code type} of the compression in the N5 dataset attributes
+   * @return codec for {@code type} or {@code null} if Paintera does not know about {@code type}
+   */
+  public static CompressionCodec fromType(final String type) {
+
+	return Arrays.stream(values()).filter(c -> c.type.equalsIgnoreCase(type)).findFirst().orElse(null);
+  }
+
+  private static Compression reflectively(final String className, final Class<?>[] parameterTypes, final Object... parameters) {
+
+	try {
+	  return (Compression)Class.forName(className).getConstructor(parameterTypes).newInstance(parameters);
+	} catch (final ClassNotFoundException | NoSuchMethodException e) {
+	  throw new UnsupportedOperationException(String.format("Compression `%s' is not on the class path.", className), e);
+	} catch (final InstantiationException | IllegalAccessException | InvocationTargetException e) {
+	  throw new UnsupportedOperationException(String.format("Unable to instantiate compression `%s'.", className), e);
+	}
+  }
+}
@@ -0,0 +1,126 @@
+package org.janelia.saalfeldlab.util.n5;
+
+import org.janelia.saalfeldlab.n5.Compression;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandles;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Compression for datasets that Paintera creates, e.g. new label datasets and fragment-segment assignments. Existing
+ * datasets keep the compression that they were created with.
+ * <p>
+ * If {@link #isAutoTune() auto-tuning} is enabled, the codec is updated with the
+ * {@link CompressionAutoTuner#choose(List, double) best choice} for blocks that are committed, which only affects
+ * datasets that are created afterwards.
+ */
+public class CompressionDefaults {
+
+  private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  public static final CompressionCodec DEFAULT_CODEC = CompressionCodec.GZIP;
+
+  /**
+   * Bandwidth of the storage in bytes per second that auto-tuning assumes when it weighs size against decoding time.
+   */
+  public static final double DEFAULT_BANDWIDTH = 200.0 * (1 << 20);
+
+  private static final CompressionDefaults GLOBAL = new CompressionDefaults();
+
+  private volatile CompressionCodec codec = DEFAULT_CODEC;
+
+  private volatile int level = DEFAULT_CODEC.getDefaultLevel();
+
+  private volatile boolean autoTune = false;
+
+  private volatile double bandwidth = DEFAULT_BANDWIDTH;
+
+  private final List<Consumer<CompressionDefaults>> listeners = new CopyOnWriteArrayList<>();
+
+  public static CompressionDefaults getGlobal() {
+
+	return GLOBAL;
+  }
+
+  public CompressionCodec getCodec() {
+
+	return codec;
+  }
+
+  public int getLevel() {
+
+	return level;
+  }
+
+  /**
+   * Set codec and level at once. Falls back to {@link #DEFAULT_CODEC} if {@code codec} is not
+   * {@link CompressionCodec#isAvailable() available}.
+   */
+  public void set(final CompressionCodec codec, final int level) {
+
+	final CompressionCodec effectiveCodec;
+	if (codec == null || !codec.isAvailable()) {
+	  LOG.warn("Compression {} is not available, using {} instead.", codec, DEFAULT_CODEC);
+	  effectiveCodec = DEFAULT_CODEC;
+	} else
+	  effectiveCodec = codec;
+	final int effectiveLevel = effectiveCodec.clampLevel(level);
+	if (effectiveCodec == this.codec && effectiveLevel == this.level)
+	  return;
+	this.codec = effectiveCodec;
+	this.level = effectiveLevel;
+	notifyListeners();
+  }
+
+  public boolean isAutoTune() {
+
+	return autoTune;
+  }
+
+  public void setAutoTune(final boolean autoTune) {
+
+	if (this.autoTune == autoTune)
+	  return;
+	this.autoTune = autoTune;
+	notifyListeners();
+  }
+
+  public double getBandwidth() {
+
+	return bandwidth;
+  }
+
+  public void setBandwidth(final double bandwidth) {
+
+	this.bandwidth = bandwidth;
+  }
+
+  /**
+   * @return new {@link Compression} for the current codec and level
+   */
+  public Compression create() {
+
+	return codec.create(level);
+  }
+
+  /**
+   * @param listener notified whenever codec, level, or auto-tuning change, on the thread that made the change
+   */
+  public void addListener(final Consumer<CompressionDefaults> listener) {
+
+	listeners.add(listener);
+  }
+
+  public void removeListener(final Consumer<CompressionDefaults> listener) {
+
+	listeners.remove(listener);
+  }
+
+  private void notifyListeners() {
+
+	listeners.forEach(l -> l.accept(this));
+  }
+}
@@ -0,0 +1,162 @@
+package org.janelia.saalfeldlab.util.n5;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import gnu.trove.map.TLongObjectMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import gnu.trove.set.TLongSet;
+import gnu.trove.set.hash.TLongHashSet;
+import net.imglib2.Interval;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.util.IntervalIndexer;
+import net.imglib2.util.Intervals;
+import org.janelia.saalfeldlab.labels.blocks.LabelBlockLookup;
+import org.janelia.saalfeldlab.labels.blocks.LabelBlockLookupAdapter;
+import org.janelia.saalfeldlab.labels.blocks.LabelBlockLookupKey;
+import org.janelia.saalfeldlab.labels.blocks.n5.IsRelativeToContainer;
+import org.janelia.saalfeldlab.n5.DataBlock;
+import org.janelia.saalfeldlab.n5.DatasetAttributes;
+import org.janelia.saalfeldlab.n5.N5FSWriter;
+import org.janelia.saalfeldlab.paintera.state.metadata.MetadataUtils;
+import org.janelia.saalfeldlab.util.grids.LabelBlockLookupSharded;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * Migrate the label block lookup of a Paintera dataset, e.g. the one-file-per-id
+ * {@link org.janelia.saalfeldlab.labels.blocks.LabelBlockLookupFromFile}, to {@link LabelBlockLookupSharded}. The ids
+ * of each level are collected from the {@code unique-labels} dataset of the Paintera dataset. The existing lookup is
+ * left on disk; only the {@code labelBlockLookup} attribute of the dataset is replaced, after a backup of its
+ * {@code attributes.json}.
+ */
+public class LabelBlockLookupMigration {
+
+  private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  private static final String LABEL_BLOCK_LOOKUP_KEY = "labelBlockLookup";
+
+  private static final int BATCH_SIZE = 1 << 16;
+
+  private LabelBlockLookupMigration() {
+
+  }
+
+  /**
+   * @param writer    container
+   * @param group     Paintera dataset
+   * @param numShards number of shards per level of the new lookup
+   * @return the new lookup, or the existing lookup if it is sharded already
+   * @throws IOException                   if any n5 operation or writing the new lookup fails
+   * @throws N5Helpers.NotAPainteraDataset if {@code group} is not a Paintera dataset
+   */
+  public static LabelBlockLookupSharded migrateToSharded(
+		  final N5FSWriter writer,
+		  final String group,
+		  final int numShards) throws IOException, N5Helpers.NotAPainteraDataset {
+
+	final LabelBlockLookup existing = N5Helpers.getLabelBlockLookup(MetadataUtils.tmpCreateMetadataState(writer, group));
+	if (existing instanceof LabelBlockLookupSharded) {
+	  LOG.info("Label block lookup for {} is sharded already", group);
+	  return (LabelBlockLookupSharded)existing;
+	}
+	if (existing instanceof IsRelativeToContainer)
+	  ((IsRelativeToContainer)existing).setRelativeTo(writer, group);
+
+	final LabelBlockLookupSharded sharded = new LabelBlockLookupSharded(LabelBlockLookupSharded.DEFAULT_ROOT, numShards);
+	sharded.setBaseDirectory(Paths.get(writer.getBasePath(), group).toString());
+
+	final String uniqueLabelsGroup = Paths.get(group, "unique-labels").toString();
+	final String[] scaleDatasets = N5Helpers.listAndSortScaleDatasets(writer, uniqueLabelsGroup);
+	for (int level = 0; level < scaleDatasets.length; ++level) {
+	  final long[] ids = uniqueIds(writer, Paths.get(uniqueLabelsGroup, scaleDatasets[level]).toString());
+	  LOG.info("Migrating label block lookup for {} ids at level {} of {}", ids.length, level, group);
+	  migrate(existing, sharded, level, ids);
+	}
+
+	setLabelBlockLookup(writer, group, sharded);
+	LOG.info("Migrated label block lookup for {} to {}", group, sharded.getType());
+	return sharded;
+  }
+
+  /**
+   * Replace the {@code labelBlockLookup} attribute of a Paintera dataset, after a backup of its {@code attributes.json}.
+   *
+   * @param writer container
+   * @param group  Paintera dataset
+   * @param lookup new lookup
+   * @throws IOException if the backup or any n5 operation fails
+   */
+  public static void setLabelBlockLookup(
+		  final N5FSWriter writer,
+		  final String group,
+		  final LabelBlockLookup lookup) throws IOException {
+
+	backupAttributes(writer, group);
+	final Gson gson = new GsonBuilder().registerTypeHierarchyAdapter(LabelBlockLookup.class, LabelBlockLookupAdapter.getJsonAdapter()).create();
+	writer.setAttribute(group, LABEL_BLOCK_LOOKUP_KEY, gson.toJsonTree(lookup, LabelBlockLookup.class));
+  }
+
+  /**
+   * Copy the block lists of {@code ids} at {@code level} from {@code from} to {@code to}, in batches.
+   *
+   * @param from  existing lookup
+   * @param to    new lookup
+   * @param level level of the lookup
+   * @param ids   ids to be migrated. Ids without blocks are skipped.
+   * @throws IOException if reading from {@code from} or writing to {@code to} fails
+   */
+  public static void migrate(
+		  final LabelBlockLookup from,
+		  final LabelBlockLookupSharded to,
+		  final int level,
+		  final long[] ids) throws IOException {
+
+	final TLongObjectMap<Interval[]> batch = new TLongObjectHashMap<>();
+	for (final long id : ids) {
+	  final Interval[] intervals = from.read(new LabelBlockLookupKey(level, id));
+	  if (intervals.length > 0)
+		batch.put(id, intervals);
+	  if (batch.size() >= BATCH_SIZE) {
+		to.write(level, batch);
+		batch.clear();
+	  }
+	}
+	if (!batch.isEmpty())
+	  to.write(level, batch);
+  }
+
+  private static long[] uniqueIds(final N5FSWriter writer, final String dataset) throws IOException {
+
+	final DatasetAttributes attributes = writer.getDatasetAttributes(dataset);
+	final CellGrid grid = N5Helpers.asCellGrid(attributes);
+	final long[] gridDimensions = grid.getGridDimensions();
+	final long[] gridPosition = new long[gridDimensions.length];
+	final TLongSet ids = new TLongHashSet();
+	for (long index = 0, numBlocks = Intervals.numElements(gridDimensions); index < numBlocks; ++index) {
+	  IntervalIndexer.indexToPosition(index, gridDimensions, gridPosition);
+	  final DataBlock<?> block = writer.readBlock(dataset, attributes, gridPosition);
+	  if (block != null)
+		ids.addAll((long[])block.getData());
+	}
+	return ids.toArray();
+  }
+
+  private static void backupAttributes(final N5FSWriter writer, final String group) throws IOException {
+
+	final Path attributes = Paths.get(writer.getBasePath(), group, "attributes.json");
+	if (!Files.isRegularFile(attributes))
+	  return;
+	final String suffix = new SimpleDateFormat("'.bkp.'yyyy-MM-dd_HH-mm-ss").format(new Date());
+	final Path backup = attributes.resolveSibling(attributes.getFileName() + suffix);
+	Files.copy(attributes, backup);
+	LOG.info("Backed up {} to {}", attributes, backup);
+  }
+}
@@ -8,7 +8,9 @@ import com.pivovarit.function.ThrowingSupplier;
 import net.imglib2.RandomAccessible;
 import net.imglib2.Volatile;
 import net.imglib2.cache.Cache;
+import net.imglib2.cache.Invalidate;
 import net.imglib2.cache.img.CachedCellImg;
+import net.imglib2.cache.ref.BoundedSoftRefLoaderCache;
 import net.imglib2.cache.ref.SoftRefLoaderCache;
 import net.imglib2.cache.volatiles.CacheHints;
 import net.imglib2.cache.volatiles.LoadingStrategy;
@@ -31,7 +33,7 @@ import net.imglib2.type.label.VolatileLabelMultisetType;
 import net.imglib2.type.numeric.RealType;
 import org.janelia.saalfeldlab.n5.DataType;
 import org.janelia.saalfeldlab.n5.DatasetAttributes;
-import org.janelia.saalfeldlab.n5.GzipCompression;
+import org.janelia.saalfeldlab.n5.Compression;
 import org.janelia.saalfeldlab.n5.N5Reader;
 import org.janelia.saalfeldlab.n5.N5Writer;
 import org.janelia.saalfeldlab.n5.imglib2.N5LabelMultisetCacheLoader;
@@ -39,6 +41,10 @@ import org.janelia.saalfeldlab.n5.imglib2.N5Utils;
 import org.janelia.saalfeldlab.n5.metadata.MultiscaleMetadata;
 import org.janelia.saalfeldlab.n5.metadata.N5SingleScaleMetadata;
 import org.janelia.saalfeldlab.paintera.Paintera;
+import org.janelia.saalfeldlab.paintera.cache.AccountedCache;
+import org.janelia.saalfeldlab.paintera.cache.BudgetedCache;
+import org.janelia.saalfeldlab.paintera.cache.CacheBudget;
+import org.janelia.saalfeldlab.paintera.cache.InvalidateDelegates;
 import org.janelia.saalfeldlab.paintera.cache.WeakRefVolatileCache;
 import org.janelia.saalfeldlab.paintera.data.DataSource;
 import org.janelia.saalfeldlab.paintera.data.n5.N5DataSourceMetadata;
@@ -49,6 +55,7 @@ import org.janelia.saalfeldlab.paintera.state.metadata.SingleScaleMetadataState;
 import org.janelia.saalfeldlab.paintera.ui.opendialog.VolatileHelpers;
 import org.janelia.saalfeldlab.util.NamedThreadFactory;
 import org.janelia.saalfeldlab.util.TmpVolatileHelpers;
+import org.janelia.saalfeldlab.util.n5.universe.AsyncBlockReader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -70,6 +77,11 @@ public class N5Data {
 
   private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
+  /**
+   * Label multiset blocks are read and decompressed from N5, see {@link BudgetedCache#getReloadCost()}
+   */
+  private static final double LABEL_MULTISET_RELOAD_COST = 1.0;
+
   /**
    * @param reader   container
    * @param dataset  dataset
@@ -279,6 +291,21 @@ public class N5Data {
 		  final int priority /* TODO use priority, probably in wrapAsVolatile? */) throws IOException {
 
 	try {
+	  final AsyncBlockReader asyncReader = AsyncBlockReader.forObjectStore(reader);
+	  if (asyncReader != null) {
+		/* start reading blocks as soon as they are enqueued, fetcher threads then only wait for their own block */
+		final CachedCellImg<T, ?> raw = N5Utils.openVolatile(asyncReader, dataset);
+		final DatasetAttributes attributes = asyncReader.getDatasetAttributes(dataset);
+		final TmpVolatileHelpers.RaiWithInvalidate<V> vraw = TmpVolatileHelpers.createVolatileCachedCellImgWithInvalidate(
+				(CachedCellImg)raw,
+				queue,
+				new CacheHints(LoadingStrategy.VOLATILE, priority, true),
+				asyncReader.prefetcher(dataset, attributes, raw.getCellGrid()));
+		final Invalidate<Long> invalidateRaw = new InvalidateDelegates<>(
+				asyncReader.prefetchedInvalidate(dataset, raw.getCellGrid()),
+				raw.getCache());
+		return new ImagesWithTransform<>(raw, vraw.getRai(), transform, invalidateRaw, vraw.getInvalidate());
+	  }
 	  final CachedCellImg<T, ?> raw = N5Utils.openVolatile(reader, dataset);
 	  final TmpVolatileHelpers.RaiWithInvalidate<V> vraw = TmpVolatileHelpers.createVolatileCachedCellImgWithInvalidate(
 			  (CachedCellImg)raw,
@@ -522,14 +549,21 @@ public class N5Data {
 		  final int priority) throws IOException {
 
 	final DatasetAttributes attrs = reader.getDatasetAttributes(dataset);
+	final CellGrid grid = new CellGrid(attrs.getDimensions(), attrs.getBlockSize());
+	final AsyncBlockReader asyncReader = AsyncBlockReader.forObjectStore(reader);
 	final N5LabelMultisetCacheLoader loader = new N5LabelMultisetCacheLoader(
-			reader,
+			asyncReader == null ? reader : asyncReader,
 			dataset,
 			N5LabelMultisetCacheLoader.constantNullReplacement(Label.BACKGROUND));
 	// TODO make cache a parameter?
-	final Cache<Long, Cell<VolatileLabelMultisetArray>> cache = new SoftRefLoaderCache<Long, Cell<VolatileLabelMultisetArray>>().withLoader(loader);
+	final Cache<Long, Cell<VolatileLabelMultisetArray>> cache = AccountedCache.register(
+			"Label multisets: " + dataset,
+			new SoftRefLoaderCache<Long, Cell<VolatileLabelMultisetArray>>().withLoader(loader),
+			N5Data::estimateLabelMultisetCellBytes,
+			LABEL_MULTISET_RELOAD_COST,
+			CacheBudget.getGlobal());
 	final CachedCellImg<LabelMultisetType, VolatileLabelMultisetArray> cachedImg = new CachedCellImg<>(
-			new CellGrid(attrs.getDimensions(), attrs.getBlockSize()),
+			grid,
 			new LabelMultisetType().getEntitiesPerPixel(),
 			cache,
 			new VolatileLabelMultisetArray(0, true, new long[]{Label.INVALID}));
@@ -542,7 +576,9 @@ public class N5Data {
 	final WeakRefVolatileCache<Long, Cell<VolatileLabelMultisetArray>> vcache = WeakRefVolatileCache.fromCache(
 			cachedImg.getCache(),
 			queue,
-			new VolatileHelpers.CreateInvalidVolatileLabelMultisetArray(cachedImg.getCellGrid()));
+			new VolatileHelpers.CreateInvalidVolatileLabelMultisetArray(cachedImg.getCellGrid()),
+			asyncReader == null ? key -> {
+			} : asyncReader.prefetcher(dataset, attrs, grid));
 	final UncheckedVolatileCache<Long, Cell<VolatileLabelMultisetArray>> unchecked = vcache.unchecked();
 
 	final CacheHints cacheHints = new CacheHints(LoadingStrategy.VOLATILE, priority, true);
@@ -555,8 +591,52 @@ public class N5Data {
 			unchecked::get);
 	vimg.setLinkedType(new VolatileLabelMultisetType(vimg));
 
-	return new ImagesWithTransform<>(cachedImg, vimg, transform, cachedImg.getCache(), unchecked);
+	final Invalidate<Long> invalidate = asyncReader == null
+			? cachedImg.getCache()
+			: new InvalidateDelegates<>(asyncReader.prefetchedInvalidate(dataset, grid), cachedImg.getCache());
+	return new ImagesWithTransform<>(cachedImg, vimg, transform, invalidate, unchecked);
+
+  }
+
+  private static long estimateLabelMultisetCellBytes(final Cell<VolatileLabelMultisetArray> cell) {
+
+	final VolatileLabelMultisetArray data = cell.getData();
+	return data.getCurrentStorageArray().length * (long)Integer.BYTES + data.getListDataUsedSizeInBytes();
+  }
+
+  /**
+   * Open label data for a single pass over all blocks, e.g. to collect statistics. Blocks are read from {@code reader}
+   * directly and only the most recently used blocks are held in a private cache, so the pass neither fills nor evicts
+   * the shared caches of the sources that are displayed.
+   *
+   * @param reader             container
+   * @param dataset            dataset
+   * @param maxNumCachedBlocks number of blocks that are held in memory, should be at least the number of threads that
+   *                           access the data concurrently
+   * @return label data with pixels of {@link net.imglib2.type.numeric.IntegerType} or {@link LabelMultisetType}, blocks
+   * that were written after they were read must be invalidated through {@link CachedCellImg#getCache()}
+   * @throws IOException if any N5 operation throws {@link IOException}
+   */
+  public static CachedCellImg<?, ?> openLabelsWithBoundedCache(
+		  final N5Reader reader,
+		  final String dataset,
+		  final int maxNumCachedBlocks) throws IOException {
+
+	if (!N5Types.isLabelMultisetType(reader, dataset))
+	  return N5Utils.openWithBoundedSoftRefCache(reader, dataset, maxNumCachedBlocks);
 
+	final DatasetAttributes attrs = reader.getDatasetAttributes(dataset);
+	final N5LabelMultisetCacheLoader loader = new N5LabelMultisetCacheLoader(
+			reader,
+			dataset,
+			N5LabelMultisetCacheLoader.constantNullReplacement(Label.BACKGROUND));
+	final CachedCellImg<LabelMultisetType, VolatileLabelMultisetArray> img = new CachedCellImg<>(
+			new CellGrid(attrs.getDimensions(), attrs.getBlockSize()),
+			new LabelMultisetType().getEntitiesPerPixel(),
+			new BoundedSoftRefLoaderCache<Long, Cell<VolatileLabelMultisetArray>>(maxNumCachedBlocks).withLoader(loader),
+			new VolatileLabelMultisetArray(0, true, new long[]{Label.INVALID}));
+	img.setLinkedType(new LabelMultisetType(img));
+	return img;
   }
 
   /**
@@ -778,6 +858,46 @@ public class N5Data {
 		  final int[] maxNumEntries,
 		  final boolean ignoreExisiting) throws IOException {
 
+	createEmptyLabelDataset(
+			container,
+			group,
+			dimensions,
+			blockSize,
+			resolution,
+			offset,
+			relativeScaleFactors,
+			maxNumEntries,
+			ignoreExisiting,
+			CompressionDefaults.getGlobal().create());
+  }
+
+  /**
+   * @param container            container
+   * @param group                target group in {@code container}
+   * @param dimensions           size
+   * @param blockSize            chunk size
+   * @param resolution           voxel size
+   * @param offset               in world coordinates
+   * @param relativeScaleFactors relative scale factors for multi-scale data, e.g.
+   *                             {@code [2,2,1], [2,2,2]} will result in absolute factors {@code [1,1,1], [2,2,1], [4,4,2]}.
+   * @param maxNumEntries        limit number of entries in each {@link LabelMultiset} (set to less than or equal to zero for unbounded)
+   * @param ignoreExisiting      overwrite any existing data set
+   * @param compression          compression of label data and unique labels at all scale levels
+   * @throws IOException if any n5 operation throws {@link IOException} or {@code group}
+   *                     already exists and {@code ignorExisting} is {@code false}
+   */
+  public static void createEmptyLabelDataset(
+		  final String container,
+		  final String group,
+		  final long[] dimensions,
+		  final int[] blockSize,
+		  final double[] resolution,
+		  final double[] offset,
+		  final double[][] relativeScaleFactors,
+		  final int[] maxNumEntries,
+		  final boolean ignoreExisiting,
+		  final Compression compression) throws IOException {
+
 	//		{"painteraData":{"type":"label"},
 	// "maxId":191985,
 	// "labelBlockLookup":{"attributes":{},"root":"/home/phil/local/tmp/sample_a_padded_20160501.n5",
@@ -826,8 +946,8 @@ public class N5Data {
 	  final String dataset = String.format(scaleDatasetPattern, scaleLevel);
 	  final String uniqeLabelsDataset = String.format(scaleUniqueLabelsPattern, scaleLevel);
 	  final int maxNum = downscaledLevel < 0 ? -1 : maxNumEntries[downscaledLevel];
-	  n5.createDataset(dataset, scaledDimensions, blockSize, DataType.UINT8, new GzipCompression());
-	  n5.createDataset(uniqeLabelsDataset, scaledDimensions, blockSize, DataType.UINT64, new GzipCompression());
+	  n5.createDataset(dataset, scaledDimensions, blockSize, DataType.UINT8, compression);
+	  n5.createDataset(uniqeLabelsDataset, scaledDimensions, blockSize, DataType.UINT64, compression);
 
 	  // {"maxNumEntries":-1,"compression":{"type":"gzip","level":-1},"downsamplingFactors":[2.0,2.0,1.0],"blockSize":[64,64,64],"dataType":"uint8","dimensions":[625,625,125],
 	  // "isLabelMultiset":true}%
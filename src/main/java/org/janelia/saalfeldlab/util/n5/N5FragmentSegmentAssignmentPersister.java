@@ -6,6 +6,7 @@ import org.janelia.saalfeldlab.paintera.control.assignment.UnableToPersist;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.lang.invoke.MethodHandles;
 
 public class N5FragmentSegmentAssignmentPersister implements FragmentSegmentAssignmentOnlyLocal.Persister {
@@ -44,7 +45,7 @@ public class N5FragmentSegmentAssignmentPersister implements FragmentSegmentAssi
 			  new long[]{keys.length, 2},
 			  new int[]{Math.max(keys.length, 1), 1},
 			  DataType.UINT64,
-			  new GzipCompression()
+			  compression()
 	  );
 	  writer.createDataset(dataset, attrs);
 
@@ -69,4 +70,14 @@ public class N5FragmentSegmentAssignmentPersister implements FragmentSegmentAssi
 	}
   }
 
+  /**
+   * Keep the compression of an existing lookup, fall back to the {@link CompressionDefaults global default} otherwise.
+   */
+  private Compression compression() throws IOException {
+
+	if (writer.datasetExists(dataset))
+	  return writer.getDatasetAttributes(dataset).getCompression();
+	return CompressionDefaults.getGlobal().create();
+  }
+
 }
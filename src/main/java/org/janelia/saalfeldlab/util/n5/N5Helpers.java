@@ -41,6 +41,7 @@ import org.janelia.saalfeldlab.paintera.state.metadata.MetadataState;
 import org.janelia.saalfeldlab.paintera.state.metadata.MetadataUtils;
 import org.janelia.saalfeldlab.paintera.state.raw.n5.Utils;
 import org.janelia.saalfeldlab.util.NamedThreadFactory;
+import org.janelia.saalfeldlab.util.grids.LabelBlockLookupSharded;
 import org.janelia.saalfeldlab.util.n5.metadata.N5PainteraDataMultiScaleMetadata;
 import org.janelia.saalfeldlab.util.n5.metadata.N5PainteraLabelMultiScaleGroup;
 import org.janelia.saalfeldlab.util.n5.metadata.N5PainteraRawMultiScaleGroup;
@@ -937,6 +938,8 @@ public class N5Helpers {
 				.map(obj -> gson.fromJson(obj, LabelBlockLookup.class))
 				.orElseGet(ThrowingSupplier.unchecked(
 						() -> new LabelBlockLookupFromFile(Paths.get(n5fs.basePath(), group, "/", "label-to-block-mapping", "s%d", "%d").toString())));
+		if (lookup instanceof LabelBlockLookupSharded)
+		  ((LabelBlockLookupSharded)lookup).setBaseDirectory(Paths.get(n5fs.basePath(), group).toString());
 		LOG.debug("Got lookup type: {}", lookup.getClass());
 		return lookup;
 	  } else
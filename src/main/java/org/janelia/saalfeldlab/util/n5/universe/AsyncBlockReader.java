@@ -0,0 +1,624 @@
+package org.janelia.saalfeldlab.util.n5.universe;
+
+import net.imglib2.cache.Invalidate;
+import net.imglib2.img.cell.CellGrid;
+import org.janelia.saalfeldlab.n5.DataBlock;
+import org.janelia.saalfeldlab.n5.DatasetAttributes;
+import org.janelia.saalfeldlab.n5.N5Reader;
+import org.janelia.saalfeldlab.n5.googlecloud.N5GoogleCloudStorageReader;
+import org.janelia.saalfeldlab.n5.s3.N5AmazonS3Reader;
+import org.janelia.saalfeldlab.paintera.cache.BudgetedCache;
+import org.janelia.saalfeldlab.paintera.cache.CacheBudget;
+import org.janelia.saalfeldlab.util.NamedThreadFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * {@link N5Reader} that reads blocks with many requests in flight, for object stores like AWS S3 and Google Cloud
+ * Storage where each block read is a request with a long round trip. All other methods are delegated.
+ * <p>
+ * Cache loaders call {@link #readBlock} from the fetcher threads of a {@code SharedQueue} and each fetcher thread waits
+ * only for its own block. Blocks that are enqueued for loading but that were not picked up by a fetcher thread yet can
+ * be {@link #prefetch prefetched}, so the number of requests in flight is limited by {@code maxInFlight} instead of by
+ * the number of fetcher threads. Blocks requested by fetcher threads are read before prefetched blocks, concurrent
+ * requests for the same block share a single read, and requests for adjacent blocks are coalesced into a single request
+ * if the delegate is a {@link BlockBatchReader}.
+ * <p>
+ * Prefetched blocks are bounded by their estimated size and are accounted to the global {@link CacheBudget}. Evicting
+ * a prefetched block that was not read yet also drops its request from the queue.
+ * <p>
+ * {@link #close() Close} the reader when it is not used anymore to stop its threads. Readers that are shared through
+ * {@link #forObjectStore} are never closed.
+ */
+public class AsyncBlockReader implements N5Reader, AutoCloseable {
+
+  public static final int DEFAULT_MAX_IN_FLIGHT = 32;
+
+  public static final int DEFAULT_MAX_BATCH_SIZE = 16;
+
+  public static final long DEFAULT_MAX_PREFETCHED_BYTES = 256L << 20;
+
+  /* prefetched blocks were not used yet and are cheaper to lose than blocks in the data caches */
+  private static final double PREFETCHED_RELOAD_COST = 0.5;
+
+  /* like the reader caches in N5Factory, shared async readers are never released */
+  private static final Map<N5Reader, AsyncBlockReader> OBJECT_STORE_READERS = Collections.synchronizedMap(new IdentityHashMap<>());
+
+  private final N5Reader delegate;
+
+  private final int maxBatchSize;
+
+  private final long maxPrefetchedBytes;
+
+  private final ExecutorService executor;
+
+  /* requests that were not issued yet, requests of fetcher threads first */
+  private final BlockingDeque<Request> queue = new LinkedBlockingDeque<>();
+
+  /* requests that are queued or being read */
+  private final Map<BlockKey, Request> inFlight = new ConcurrentHashMap<>();
+
+  /* prefetched blocks that were not read by a fetcher thread yet, least recently prefetched first, guarded by itself */
+  private final LinkedHashMap<BlockKey, Prefetched> prefetched = new LinkedHashMap<>();
+
+  /* estimated size of all prefetched blocks, guarded by prefetched */
+  private long prefetchedBytes = 0;
+
+  private final BudgetedCache prefetchedAccounting = new BudgetedCache() {
+
+	@Override
+	public String getName() {
+
+	  return "Prefetched blocks: " + delegate.getClass().getSimpleName();
+	}
+
+	@Override
+	public long getEstimatedBytes() {
+
+	  synchronized (prefetched) {
+		return prefetchedBytes;
+	  }
+	}
+
+	@Override
+	public long getNumEntries() {
+
+	  synchronized (prefetched) {
+		return prefetched.size();
+	  }
+	}
+
+	@Override
+	public double getReloadCost() {
+
+	  return PREFETCHED_RELOAD_COST;
+	}
+
+	@Override
+	public void collectEvictionCandidates(final Consumer<EvictionCandidate> candidates) {
+
+	  final List<Prefetched> entries;
+	  synchronized (prefetched) {
+		entries = new ArrayList<>(prefetched.values());
+	  }
+	  entries.forEach(candidates);
+	}
+  };
+
+  /**
+   * @param delegate           reads the blocks
+   * @param maxInFlight        maximum number of concurrent requests to {@code delegate}
+   * @param maxBatchSize       maximum number of adjacent blocks per request if {@code delegate} is a
+   *                           {@link BlockBatchReader}
+   * @param maxPrefetchedBytes maximum estimated size of prefetched blocks that are kept until they are read
+   */
+  public AsyncBlockReader(final N5Reader delegate, final int maxInFlight, final int maxBatchSize, final long maxPrefetchedBytes) {
+
+	this.delegate = delegate;
+	this.maxBatchSize = Math.max(maxBatchSize, 1);
+	this.maxPrefetchedBytes = maxPrefetchedBytes;
+	this.executor = Executors.newFixedThreadPool(Math.max(maxInFlight, 1), new NamedThreadFactory("n5-async-read-%d", true));
+	CacheBudget.getGlobal().register(prefetchedAccounting);
+  }
+
+  public AsyncBlockReader(final N5Reader delegate) {
+
+	this(delegate, DEFAULT_MAX_IN_FLIGHT, DEFAULT_MAX_BATCH_SIZE, DEFAULT_MAX_PREFETCHED_BYTES);
+  }
+
+  public static boolean isObjectStore(final N5Reader reader) {
+
+	return reader instanceof N5AmazonS3Reader || reader instanceof N5GoogleCloudStorageReader || reader instanceof BlockBatchReader;
+  }
+
+  /**
+   * @return async reader that is shared by all datasets of {@code reader}, or {@code null} if {@code reader} is not an
+   * {@link #isObjectStore(N5Reader) object store}
+   */
+  public static AsyncBlockReader forObjectStore(final N5Reader reader) {
+
+	if (reader instanceof AsyncBlockReader)
+	  return (AsyncBlockReader)reader;
+	if (!isObjectStore(reader))
+	  return null;
+	return OBJECT_STORE_READERS.computeIfAbsent(reader, AsyncBlockReader::new);
+  }
+
+  public N5Reader getDelegate() {
+
+	return delegate;
+  }
+
+  /**
+   * Start reading a block, if it is not read already.
+   *
+   * @return future that completes with the block, or with {@code null} if it does not exist
+   */
+  public CompletableFuture<DataBlock<?>> readBlockAsync(final String pathName, final DatasetAttributes datasetAttributes, final long... gridPosition) {
+
+	return request(new BlockKey(pathName, gridPosition), datasetAttributes, false, false).future;
+  }
+
+  /**
+   * Start reading a block in the background and keep it until it is read through {@link #readBlock}.
+   *
+   * @return future that completes with the block, or with {@code null} if it does not exist, and that is canceled if
+   * the block is evicted before it is read
+   */
+  public CompletableFuture<DataBlock<?>> prefetch(final String pathName, final DatasetAttributes datasetAttributes, final long... gridPosition) {
+
+	final BlockKey key = new BlockKey(pathName, gridPosition);
+	final Prefetched entry;
+	synchronized (prefetched) {
+	  final Prefetched existing = prefetched.get(key);
+	  if (existing != null)
+		return existing.request.future;
+	  entry = new Prefetched(request(key, datasetAttributes, false, true), expectedBytes(datasetAttributes));
+	  prefetched.put(key, entry);
+	  prefetchedBytes += entry.bytes;
+	  evictPrefetched();
+	}
+	entry.request.future.thenAccept(block -> {
+	  synchronized (prefetched) {
+		if (prefetched.get(key) == entry) {
+		  final long bytes = estimateBytes(block);
+		  prefetchedBytes += bytes - entry.bytes;
+		  entry.bytes = bytes;
+		  evictPrefetched();
+		}
+	  }
+	});
+	return entry.request.future;
+  }
+
+  /**
+   * @return {@link #prefetch prefetch} for the flat cell indices of {@code grid}, e.g. to prefetch cells when they are
+   * enqueued for loading
+   */
+  public Consumer<Long> prefetcher(final String pathName, final DatasetAttributes datasetAttributes, final CellGrid grid) {
+
+	return cellIndex -> {
+	  final long[] gridPosition = new long[grid.numDimensions()];
+	  grid.getCellGridPositionFlat(cellIndex, gridPosition);
+	  prefetch(pathName, datasetAttributes, gridPosition);
+	};
+  }
+
+  /**
+   * @return invalidate that discards prefetched blocks of {@code pathName} by flat cell index of {@code grid}, and
+   * detaches requests for them that are in flight, so that they are read again after the dataset was modified
+   */
+  public Invalidate<Long> prefetchedInvalidate(final String pathName, final CellGrid grid) {
+
+	return new Invalidate<>() {
+
+	  @Override
+	  public void invalidate(final Long key) {
+
+		invalidateIf(Long.MAX_VALUE, key::equals);
+	  }
+
+	  @Override
+	  public void invalidateIf(final long parallelismThreshold, final Predicate<Long> condition) {
+
+		final long[] gridDimensions = grid.getGridDimensions();
+		invalidateBlocks(key -> key.dataset.equals(pathName) && condition.test(key.cellIndex(gridDimensions)));
+	  }
+
+	  @Override
+	  public void invalidateAll(final long parallelismThreshold) {
+
+		invalidateBlocks(key -> key.dataset.equals(pathName));
+	  }
+	};
+  }
+
+  private void invalidateBlocks(final Predicate<BlockKey> matches) {
+
+	synchronized (prefetched) {
+	  for (final Iterator<Prefetched> it = prefetched.values().iterator(); it.hasNext(); ) {
+		final Prefetched entry = it.next();
+		if (matches.test(entry.request.key)) {
+		  it.remove();
+		  prefetchedBytes -= entry.bytes;
+		}
+	  }
+	}
+	/* requests that were issued before the modification may return stale blocks, later reads must not share them */
+	for (final Request request : inFlight.values()) {
+	  if (matches.test(request.key)) {
+		cancelIfQueued(request);
+		inFlight.remove(request.key, request);
+	  }
+	}
+  }
+
+  /**
+   * Evict the least recently prefetched blocks until their estimated size is within the bound.
+   */
+  private void evictPrefetched() {
+
+	for (final Iterator<Prefetched> it = prefetched.values().iterator(); prefetchedBytes > maxPrefetchedBytes && it.hasNext(); ) {
+	  final Prefetched entry = it.next();
+	  it.remove();
+	  prefetchedBytes -= entry.bytes;
+	  cancelIfQueued(entry.request);
+	}
+  }
+
+  /**
+   * Cancel a request that was only issued by {@link #prefetch} and that is still queued. Requests that are being read
+   * or that were requested by any other caller are kept.
+   */
+  private void cancelIfQueued(final Request request) {
+
+	synchronized (request) {
+	  if (!request.isRequested && queue.remove(request)) {
+		request.isCanceled = true;
+		inFlight.remove(request.key, request);
+		request.future.cancel(false);
+	  }
+	}
+  }
+
+  /**
+   * Stop reading blocks, drop all prefetched blocks, and stop accounting them to the global {@link CacheBudget}. Reads
+   * that are not complete yet, and all reads after closing, fail with an {@link IOException}.
+   */
+  @Override
+  public void close() {
+
+	executor.shutdownNow();
+	CacheBudget.getGlobal().unregister(prefetchedAccounting);
+	synchronized (prefetched) {
+	  prefetched.clear();
+	  prefetchedBytes = 0;
+	}
+	for (Request request = queue.pollFirst(); request != null; request = queue.pollFirst())
+	  request.future.completeExceptionally(new IOException("Reader was closed"));
+  }
+
+  @Override
+  public DataBlock<?> readBlock(final String pathName, final DatasetAttributes datasetAttributes, final long... gridPosition) throws IOException {
+
+	final BlockKey key = new BlockKey(pathName, gridPosition);
+	final Prefetched entry;
+	synchronized (prefetched) {
+	  entry = prefetched.remove(key);
+	  if (entry != null)
+		prefetchedBytes -= entry.bytes;
+	}
+	if (entry != null && entry.request.future.isDone() && !entry.request.future.isCancelled())
+	  return get(entry.request.future);
+	/* shares the read with a prefetch that is still in flight, and reads it before all prefetched blocks if it is still queued */
+	return get(request(key, datasetAttributes, true, false).future);
+  }
+
+  @Override
+  public <T> T getAttribute(final String pathName, final String key, final Class<T> clazz) throws IOException {
+
+	return delegate.getAttribute(pathName, key, clazz);
+  }
+
+  @Override
+  public <T> T getAttribute(final String pathName, final String key, final Type type) throws IOException {
+
+	return delegate.getAttribute(pathName, key, type);
+  }
+
+  @Override
+  public DatasetAttributes getDatasetAttributes(final String pathName) throws IOException {
+
+	return delegate.getDatasetAttributes(pathName);
+  }
+
+  @Override
+  public boolean exists(final String pathName) {
+
+	return delegate.exists(pathName);
+  }
+
+  @Override
+  public String[] list(final String pathName) throws IOException {
+
+	return delegate.list(pathName);
+  }
+
+  @Override
+  public Map<String, Class<?>> listAttributes(final String pathName) throws IOException {
+
+	return delegate.listAttributes(pathName);
+  }
+
+  /**
+   * @param isPrefetch {@code true} if only {@link #prefetch} waits for the block, so that the request may be canceled
+   *                   while it is queued
+   */
+  private Request request(
+		  final BlockKey key,
+		  final DatasetAttributes datasetAttributes,
+		  final boolean isUrgent,
+		  final boolean isPrefetch) {
+
+	while (true) {
+	  final Request created = new Request(key, datasetAttributes);
+	  final Request request = inFlight.computeIfAbsent(key, k -> created);
+	  synchronized (request) {
+		/* canceled after it was looked up, it is not in flight anymore */
+		if (request.isCanceled)
+		  continue;
+		request.isRequested |= !isPrefetch;
+	  }
+	  if (request == created) {
+		request.future.whenComplete((block, error) -> inFlight.remove(key, request));
+		if (isUrgent)
+		  queue.addFirst(request);
+		else
+		  queue.addLast(request);
+		dispatchOrFail(request);
+	  } else if (isUrgent && queue.remove(request)) {
+		queue.addFirst(request);
+		dispatchOrFail(request);
+	  }
+	  return request;
+	}
+  }
+
+  private void dispatchOrFail(final Request request) {
+
+	try {
+	  executor.execute(this::dispatch);
+	} catch (final RejectedExecutionException e) {
+	  queue.remove(request);
+	  request.future.completeExceptionally(new IOException("Reader was closed", e));
+	}
+  }
+
+  private void dispatch() {
+
+	final Request first = queue.pollFirst();
+	if (first == null)
+	  return;
+	final List<Request> batch = new ArrayList<>();
+	batch.add(first);
+	if (delegate instanceof BlockBatchReader)
+	  collectAdjacent(batch);
+	read(batch);
+  }
+
+  /**
+   * Add queued requests for blocks that are adjacent along the first dimension, in increasing order.
+   */
+  private void collectAdjacent(final List<Request> batch) {
+
+	final BlockKey first = batch.get(0).key;
+	for (long offset = -1; batch.size() < maxBatchSize; --offset) {
+	  final Request neighbor = inFlight.get(first.shifted(offset));
+	  if (neighbor == null || !queue.remove(neighbor))
+		break;
+	  batch.add(0, neighbor);
+	}
+	for (long offset = 1; batch.size() < maxBatchSize; ++offset) {
+	  final Request neighbor = inFlight.get(first.shifted(offset));
+	  if (neighbor == null || !queue.remove(neighbor))
+		break;
+	  batch.add(neighbor);
+	}
+  }
+
+  private void read(final List<Request> batch) {
+
+	final Request first = batch.get(0);
+	try {
+	  if (batch.size() == 1) {
+		first.future.complete(delegate.readBlock(first.key.dataset, first.attributes, first.key.gridPosition));
+		return;
+	  }
+	  final List<long[]> gridPositions = new ArrayList<>();
+	  batch.forEach(request -> gridPositions.add(request.key.gridPosition));
+	  final List<DataBlock<?>> blocks = ((BlockBatchReader)delegate).readBlocks(first.key.dataset, first.attributes, gridPositions);
+	  for (int i = 0; i < batch.size(); ++i)
+		batch.get(i).future.complete(blocks.get(i));
+	} catch (final Throwable e) {
+	  batch.forEach(request -> request.future.completeExceptionally(e));
+	}
+  }
+
+  private static DataBlock<?> get(final CompletableFuture<DataBlock<?>> block) throws IOException {
+
+	try {
+	  return block.get();
+	} catch (final InterruptedException e) {
+	  Thread.currentThread().interrupt();
+	  throw new InterruptedIOException("Interrupted while reading block");
+	} catch (final ExecutionException e) {
+	  throw e.getCause() instanceof IOException ? (IOException)e.getCause() : new IOException(e.getCause());
+	}
+  }
+
+  private static long expectedBytes(final DatasetAttributes attributes) {
+
+	final long numElements = DataBlock.getNumElements(attributes.getBlockSize());
+	switch (attributes.getDataType()) {
+	case UINT8:
+	case INT8:
+	  return numElements;
+	case UINT16:
+	case INT16:
+	  return numElements * Short.BYTES;
+	case UINT32:
+	case INT32:
+	case FLOAT32:
+	  return numElements * Integer.BYTES;
+	default:
+	  return numElements * Long.BYTES;
+	}
+  }
+
+  private static long estimateBytes(final DataBlock<?> block) {
+
+	if (block == null)
+	  return 0;
+	final Object data = block.getData();
+	if (data instanceof byte[])
+	  return ((byte[])data).length;
+	if (data instanceof short[])
+	  return ((short[])data).length * (long)Short.BYTES;
+	if (data instanceof int[])
+	  return ((int[])data).length * (long)Integer.BYTES;
+	if (data instanceof float[])
+	  return ((float[])data).length * (long)Float.BYTES;
+	return block.getNumElements() * (long)Long.BYTES;
+  }
+
+  private final class Prefetched implements BudgetedCache.EvictionCandidate {
+
+	private final Request request;
+
+	private final long lastAccessTick = CacheBudget.getGlobal().currentTick();
+
+	/* guarded by prefetched */
+	private long bytes;
+
+	private Prefetched(final Request request, final long bytes) {
+
+	  this.request = request;
+	  this.bytes = bytes;
+	}
+
+	@Override
+	public long getLastAccessTick() {
+
+	  return lastAccessTick;
+	}
+
+	@Override
+	public long getEstimatedBytes() {
+
+	  synchronized (prefetched) {
+		return bytes;
+	  }
+	}
+
+	@Override
+	public long evict() {
+
+	  final long freed;
+	  synchronized (prefetched) {
+		if (!prefetched.remove(request.key, this))
+		  return 0;
+		freed = bytes;
+		prefetchedBytes -= freed;
+	  }
+	  cancelIfQueued(request);
+	  return freed;
+	}
+  }
+
+  private static final class Request {
+
+	private final BlockKey key;
+
+	private final DatasetAttributes attributes;
+
+	private final CompletableFuture<DataBlock<?>> future = new CompletableFuture<>();
+
+	/* guarded by this */
+	private boolean isRequested = false;
+
+	/* guarded by this */
+	private boolean isCanceled = false;
+
+	private Request(final BlockKey key, final DatasetAttributes attributes) {
+
+	  this.key = key;
+	  this.attributes = attributes;
+	}
+  }
+
+  private static final class BlockKey {
+
+	private final String dataset;
+
+	private final long[] gridPosition;
+
+	private final int hashCode;
+
+	private BlockKey(final String dataset, final long[] gridPosition) {
+
+	  this.dataset = dataset;
+	  this.gridPosition = gridPosition.clone();
+	  this.hashCode = 31 * dataset.hashCode() + Arrays.hashCode(gridPosition);
+	}
+
+	private BlockKey shifted(final long offset) {
+
+	  final long[] shiftedPosition = gridPosition.clone();
+	  shiftedPosition[0] += offset;
+	  return new BlockKey(dataset, shiftedPosition);
+	}
+
+	private long cellIndex(final long[] gridDimensions) {
+
+	  long index = 0;
+	  for (int d = gridPosition.length - 1; d >= 0; --d)
+		index = index * gridDimensions[d] + gridPosition[d];
+	  return index;
+	}
+
+	@Override
+	public boolean equals(final Object other) {
+
+	  if (!(other instanceof BlockKey))
+		return false;
+	  final BlockKey that = (BlockKey)other;
+	  return dataset.equals(that.dataset) && Arrays.equals(gridPosition, that.gridPosition);
+	}
+
+	@Override
+	public int hashCode() {
+
+	  return hashCode;
+	}
+  }
+}
@@ -0,0 +1,24 @@
+package org.janelia.saalfeldlab.util.n5.universe;
+
+import org.janelia.saalfeldlab.n5.DataBlock;
+import org.janelia.saalfeldlab.n5.DatasetAttributes;
+import org.janelia.saalfeldlab.n5.N5Reader;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * {@link N5Reader} that can read multiple adjacent blocks of a dataset in a single request, e.g. if adjacent chunks are
+ * stored contiguously and can be fetched with a single range request. {@link AsyncBlockReader} coalesces requests for
+ * adjacent blocks if its delegate implements this interface.
+ */
+public interface BlockBatchReader extends N5Reader {
+
+  /**
+   * @param pathName          dataset
+   * @param datasetAttributes attributes of {@code pathName}
+   * @param gridPositions     grid positions of blocks that are adjacent along the first dimension, in increasing order
+   * @return blocks in the order of {@code gridPositions}, {@code null} for blocks that do not exist
+   */
+  List<DataBlock<?>> readBlocks(String pathName, DatasetAttributes datasetAttributes, List<long[]> gridPositions) throws IOException;
+}
@@ -44,6 +44,10 @@ import org.janelia.saalfeldlab.paintera.config.MultiBoxOverlayConfigNode
 import org.janelia.saalfeldlab.paintera.config.NavigationConfigNode
 import org.janelia.saalfeldlab.paintera.config.OrthoSliceConfig
 import org.janelia.saalfeldlab.paintera.config.OrthoSliceConfigNode
+import org.janelia.saalfeldlab.paintera.config.CacheBudgetConfigNode
+import org.janelia.saalfeldlab.paintera.config.CompressionConfigNode
+import org.janelia.saalfeldlab.paintera.config.MetricsConfigNode
+import org.janelia.saalfeldlab.paintera.config.PredictivePrefetchConfigNode
 import org.janelia.saalfeldlab.paintera.config.ScaleBarOverlayConfigNode
 import org.janelia.saalfeldlab.paintera.config.ScreenScalesConfigNode
 import org.janelia.saalfeldlab.paintera.config.StatusBarConfig
@@ -53,6 +57,7 @@ import org.janelia.saalfeldlab.paintera.control.actions.MenuActionType
 import org.janelia.saalfeldlab.paintera.control.navigation.CoordinateDisplayListener
 import org.janelia.saalfeldlab.paintera.ui.Crosshair
 import org.janelia.saalfeldlab.paintera.ui.FontAwesome
+import org.janelia.saalfeldlab.paintera.ui.MetricsStatusLabel
 import org.janelia.saalfeldlab.paintera.ui.PainteraAlerts
 import org.janelia.saalfeldlab.paintera.ui.source.SourceTabs
 import org.janelia.saalfeldlab.paintera.viewer3d.OrthoSliceFX
@@ -212,6 +217,14 @@ class BorderPaneWithStatusBars(private val paintera: PainteraMainWindow) {
 
     private val screenScaleConfigNode = ScreenScalesConfigNode(painteraProperties.screenScalesConfig)
 
+    private val predictivePrefetchConfigNode = PredictivePrefetchConfigNode(painteraProperties.predictivePrefetchConfig)
+
+    private val cacheBudgetConfigNode = CacheBudgetConfigNode(painteraProperties.cacheBudgetConfig)
+
+    private val compressionConfigNode = CompressionConfigNode(painteraProperties.compressionConfig)
+
+    private val metricsConfigNode = MetricsConfigNode(painteraProperties.metricsConfig)
+
     private val scaleBarConfigNode = ScaleBarOverlayConfigNode(painteraProperties.scaleBarOverlayConfig)
 
     private val bookmarkConfigNode = BookmarkConfigNode(painteraProperties.bookmarkConfig) {
@@ -274,6 +287,10 @@ class BorderPaneWithStatusBars(private val paintera: PainteraMainWindow) {
         LOG.debug("Construction {}", BorderPaneWithStatusBars::class.java.name)
         this.currentFocusHolderWithState = currentFocusHolder(center.orthogonalViews())
         painteraProperties.screenScalesConfig.screenScalesProperty().addListener { _, _, newv -> center.orthogonalViews().setScreenScales(newv.scalesCopy) }
+        painteraProperties.predictivePrefetchConfig.bindOrthogonalViewsToConfig(center.orthogonalViews())
+        painteraProperties.cacheBudgetConfig.bindCacheBudgetToConfig()
+        painteraProperties.compressionConfig.bindCompressionDefaultsToConfig()
+        painteraProperties.metricsConfig.bindLoggerToConfig()
 
         this.currentSourceStatus = Label()
         this.viewerCoordinateStatus = Label()
@@ -307,12 +324,18 @@ class BorderPaneWithStatusBars(private val paintera: PainteraMainWindow) {
         val valueStatusSpacing = Region()
         HBox.setHgrow(valueStatusSpacing, Priority.ALWAYS)
 
+        val metricsStatus = MetricsStatusLabel().apply {
+            visibleProperty().bind(painteraProperties.metricsConfig.showInStatusBarProperty)
+            managedProperty().bind(visibleProperty())
+        }
+
         this.statusBar = HBox(5.0,
             sourceDisplayStatus,
             currentSourceStatus,
             viewerCoordinateStatus,
             worldCoordinateStatus,
             statusValue,
+            metricsStatus,
             valueStatusSpacing,
             Region().also { HBox.setHgrow(it, Priority.ALWAYS) }).apply {
             backgroundProperty().bind(pane.backgroundProperty())
@@ -365,6 +388,10 @@ class BorderPaneWithStatusBars(private val paintera: PainteraMainWindow) {
             this.bookmarkConfigNode,
             this.arbitraryMeshConfigNode,
             this.screenScaleConfigNode.contents,
+            this.predictivePrefetchConfigNode,
+            this.cacheBudgetConfigNode,
+            this.compressionConfigNode,
+            this.metricsConfigNode,
             this.loggingConfigNode.node
         )
         val settings = TitledPane("Settings", settingsContents)
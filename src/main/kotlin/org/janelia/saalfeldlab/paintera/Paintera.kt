@@ -10,6 +10,7 @@ import javafx.stage.Modality
 import javafx.stage.Stage
 import org.janelia.saalfeldlab.fx.ui.Exceptions
 import org.janelia.saalfeldlab.paintera.config.ScreenScalesConfig
+import org.janelia.saalfeldlab.paintera.headless.PainteraHeadless
 import org.janelia.saalfeldlab.paintera.ui.PainteraAlerts
 import org.janelia.saalfeldlab.paintera.util.logging.LogUtils
 import org.janelia.saalfeldlab.util.n5.universe.N5Factory
@@ -123,7 +124,12 @@ class Paintera : Application() {
         private val LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass())
 
         @JvmStatic
-        fun main(args: Array<String>) = launch(Paintera::class.java, *args)
+        fun main(args: Array<String>) {
+            // headless batch commands must not initialize JavaFX
+            if (PainteraHeadless.isHeadlessCommand(*args))
+                exitProcess(PainteraHeadless.execute(*args))
+            launch(Paintera::class.java, *args)
+        }
 
         @JvmStatic
         lateinit var application: Application
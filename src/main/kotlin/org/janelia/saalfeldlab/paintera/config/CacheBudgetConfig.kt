@@ -0,0 +1,31 @@
+package org.janelia.saalfeldlab.paintera.config
+
+import javafx.beans.property.DoubleProperty
+import javafx.beans.property.SimpleDoubleProperty
+import org.janelia.saalfeldlab.fx.extensions.getValue
+import org.janelia.saalfeldlab.fx.extensions.setValue
+import org.janelia.saalfeldlab.paintera.cache.CacheBudget
+
+/**
+ * Fraction of the maximum heap size that is shared by all caches (label data, meshes, colors, canvas).
+ */
+class CacheBudgetConfig {
+
+    val heapFractionProperty: DoubleProperty = SimpleDoubleProperty(HEAP_FRACTION_DEFAULT_VALUE)
+    var heapFraction: Double by heapFractionProperty
+
+    fun bindCacheBudgetToConfig(budget: CacheBudget = CacheBudget.getGlobal()) {
+        heapFractionProperty.addListener { _, _, newv -> budget.heapFraction = newv.toDouble() }
+        budget.heapFraction = heapFraction
+    }
+
+    fun set(that: CacheBudgetConfig) {
+        this.heapFraction = that.heapFraction
+    }
+
+    companion object {
+        const val HEAP_FRACTION_MIN_VALUE = 0.05
+        const val HEAP_FRACTION_MAX_VALUE = 0.9
+        const val HEAP_FRACTION_DEFAULT_VALUE = CacheBudget.DEFAULT_HEAP_FRACTION
+    }
+}
@@ -0,0 +1,91 @@
+package org.janelia.saalfeldlab.paintera.config
+
+import javafx.animation.KeyFrame
+import javafx.animation.Timeline
+import javafx.event.EventHandler
+import javafx.scene.control.Control
+import javafx.scene.control.Label
+import javafx.scene.control.TitledPane
+import javafx.scene.control.Tooltip
+import javafx.scene.layout.GridPane
+import javafx.scene.layout.Priority
+import javafx.scene.layout.VBox
+import javafx.util.Duration
+import org.janelia.saalfeldlab.fx.Labels
+import org.janelia.saalfeldlab.fx.ui.NumericSliderWithField
+import org.janelia.saalfeldlab.paintera.cache.CacheBudget
+
+class CacheBudgetConfigNode(private val budget: CacheBudget = CacheBudget.getGlobal()) : TitledPane("Memory Budget", null) {
+
+    constructor(config: CacheBudgetConfig, budget: CacheBudget = CacheBudget.getGlobal()) : this(budget) {
+        bind(config)
+    }
+
+    private val heapFractionSlider = NumericSliderWithField(
+        CacheBudgetConfig.HEAP_FRACTION_MIN_VALUE,
+        CacheBudgetConfig.HEAP_FRACTION_MAX_VALUE,
+        CacheBudgetConfig.HEAP_FRACTION_DEFAULT_VALUE
+    )
+
+    private val totalLabel = Label()
+
+    private val usageGrid = GridPane()
+
+    /* Only poll the budget while the usage is visible. */
+    private val refresh = Timeline(KeyFrame(Duration.seconds(1.0), EventHandler { updateUsage() })).also { it.cycleCount = Timeline.INDEFINITE }
+
+    init {
+        val grid = GridPane()
+        grid.vgap = 5.0
+        grid.hgap = 5.0
+        usageGrid.hgap = 5.0
+        content = VBox(grid, totalLabel, usageGrid)
+        isExpanded = false
+
+        grid.add(Labels.withTooltip("Heap fraction"), 0, 0)
+        grid.add(heapFractionSlider.slider, 1, 0)
+        grid.add(heapFractionSlider.textField, 2, 0)
+        heapFractionSlider.slider.tooltip = Tooltip("Fraction of the maximum heap size (${formatBytes(Runtime.getRuntime().maxMemory())}) that is shared by all caches.")
+        heapFractionSlider.slider.isShowTickLabels = false
+        heapFractionSlider.slider.isShowTickMarks = true
+        heapFractionSlider.textField.prefWidth = PREF_CELL_WIDTH
+        heapFractionSlider.textField.maxWidth = Control.USE_PREF_SIZE
+        GridPane.setHgrow(heapFractionSlider.slider, Priority.ALWAYS)
+
+        expandedProperty().addListener { _, _, isExpanded ->
+            if (isExpanded) {
+                updateUsage()
+                refresh.play()
+            } else
+                refresh.stop()
+        }
+    }
+
+    fun bind(config: CacheBudgetConfig) {
+        heapFractionSlider.slider.valueProperty().bindBidirectional(config.heapFractionProperty)
+    }
+
+    private fun updateUsage() {
+        val usage = budget.usage
+        totalLabel.text = "Used ${formatBytes(usage.map { it.estimatedBytes }.sum())} of ${formatBytes(budget.budgetBytes)}"
+        usageGrid.children.clear()
+        usage
+            .filter { it.numEntries > 0 }
+            .sortedByDescending { it.estimatedBytes }
+            .forEachIndexed { row, u ->
+                usageGrid.add(Label(u.name), 0, row)
+                usageGrid.add(Label(formatBytes(u.estimatedBytes)), 1, row)
+                usageGrid.add(Label("${u.numEntries} entries"), 2, row)
+            }
+    }
+
+    companion object {
+        private const val PREF_CELL_WIDTH = 60.0
+
+        private fun formatBytes(bytes: Long) = when {
+            bytes >= 1L shl 30 -> "%.1f GiB".format(bytes.toDouble() / (1L shl 30))
+            bytes >= 1L shl 20 -> "%.1f MiB".format(bytes.toDouble() / (1L shl 20))
+            else -> "%.1f KiB".format(bytes.toDouble() / (1L shl 10))
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package org.janelia.saalfeldlab.paintera.config
+
+import javafx.beans.property.BooleanProperty
+import javafx.beans.property.IntegerProperty
+import javafx.beans.property.ObjectProperty
+import javafx.beans.property.SimpleBooleanProperty
+import javafx.beans.property.SimpleIntegerProperty
+import javafx.beans.property.SimpleObjectProperty
+import org.janelia.saalfeldlab.fx.extensions.getValue
+import org.janelia.saalfeldlab.fx.extensions.setValue
+import org.janelia.saalfeldlab.fx.util.InvokeOnJavaFXApplicationThread
+import org.janelia.saalfeldlab.util.n5.CompressionCodec
+import org.janelia.saalfeldlab.util.n5.CompressionDefaults
+
+/**
+ * Compression for datasets that Paintera creates. If [autoTune] is enabled, [codec] and [level] are updated with the
+ * best choice for committed blocks.
+ */
+class CompressionConfig {
+
+    val codecProperty: ObjectProperty<CompressionCodec> = SimpleObjectProperty(CompressionDefaults.DEFAULT_CODEC)
+    var codec: CompressionCodec by codecProperty
+
+    val levelProperty: IntegerProperty = SimpleIntegerProperty(CompressionDefaults.DEFAULT_CODEC.defaultLevel)
+    var level: Int by levelProperty
+
+    val autoTuneProperty: BooleanProperty = SimpleBooleanProperty(false)
+    var autoTune: Boolean by autoTuneProperty
+
+    /* Do not push values back into the defaults while they are being copied from the defaults. */
+    private var isUpdatingFromDefaults = false
+
+    fun bindCompressionDefaultsToConfig(defaults: CompressionDefaults = CompressionDefaults.getGlobal()) {
+        val update = {
+            if (!isUpdatingFromDefaults) {
+                defaults.set(codec, level)
+                defaults.isAutoTune = autoTune
+            }
+        }
+        codecProperty.addListener { _ -> update() }
+        levelProperty.addListener { _ -> update() }
+        autoTuneProperty.addListener { _ -> update() }
+        defaults.addListener {
+            InvokeOnJavaFXApplicationThread.invoke {
+                isUpdatingFromDefaults = true
+                codec = it.codec
+                level = it.level
+                autoTune = it.isAutoTune
+                isUpdatingFromDefaults = false
+            }
+        }
+        update()
+    }
+
+    fun set(that: CompressionConfig) {
+        this.codec = that.codec
+        this.level = that.level
+        this.autoTune = that.autoTune
+    }
+}
@@ -0,0 +1,58 @@
+package org.janelia.saalfeldlab.paintera.config
+
+import javafx.collections.FXCollections
+import javafx.scene.control.CheckBox
+import javafx.scene.control.ComboBox
+import javafx.scene.control.Control
+import javafx.scene.control.TitledPane
+import javafx.scene.control.Tooltip
+import javafx.scene.layout.GridPane
+import org.janelia.saalfeldlab.fx.Labels
+import org.janelia.saalfeldlab.fx.ui.NumberField
+import org.janelia.saalfeldlab.fx.ui.ObjectField
+import org.janelia.saalfeldlab.util.n5.CompressionCodec
+
+class CompressionConfigNode() : TitledPane("Compression", null) {
+
+    constructor(config: CompressionConfig) : this() {
+        bind(config)
+    }
+
+    private val codecChoice = ComboBox(FXCollections.observableArrayList(*CompressionCodec.available()))
+
+    private val levelField = NumberField.intField(CompressionCodec.GZIP.defaultLevel, { true }, *ObjectField.SubmitOn.values())
+
+    private val autoTuneCheckBox = CheckBox("Auto-tune on commit")
+
+    init {
+        val grid = GridPane()
+        grid.vgap = 5.0
+        grid.hgap = 5.0
+        content = grid
+        isExpanded = false
+
+        grid.add(Labels.withTooltip("Codec", "Compression of datasets that are created from now on. Existing datasets are not affected."), 0, 0)
+        grid.add(codecChoice, 1, 0)
+
+        grid.add(Labels.withTooltip("Level", "Codec specific compression level, ignored by raw and lz4."), 0, 1)
+        grid.add(levelField.textField, 1, 1)
+        levelField.textField.prefWidth = PREF_CELL_WIDTH
+        levelField.textField.maxWidth = Control.USE_PREF_SIZE
+
+        grid.add(autoTuneCheckBox, 0, 2, 2, 1)
+        autoTuneCheckBox.tooltip = Tooltip("Pick the codec with the shortest estimated load time (transfer and decoding) for a sample of committed blocks.")
+
+        codecChoice.valueProperty().addListener { _, _, newv -> levelField.textField.isDisable = newv?.hasLevel() != true }
+    }
+
+    fun bind(config: CompressionConfig) {
+        codecChoice.valueProperty().bindBidirectional(config.codecProperty)
+        levelField.valueProperty().bindBidirectional(config.levelProperty)
+        autoTuneCheckBox.selectedProperty().bindBidirectional(config.autoTuneProperty)
+        levelField.textField.isDisable = config.codec.hasLevel().not()
+    }
+
+    companion object {
+        private const val PREF_CELL_WIDTH = 60.0
+    }
+}
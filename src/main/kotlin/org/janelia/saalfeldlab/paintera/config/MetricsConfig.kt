@@ -0,0 +1,89 @@
+package org.janelia.saalfeldlab.paintera.config
+
+import javafx.beans.property.BooleanProperty
+import javafx.beans.property.IntegerProperty
+import javafx.beans.property.ObjectProperty
+import javafx.beans.property.SimpleBooleanProperty
+import javafx.beans.property.SimpleIntegerProperty
+import javafx.beans.property.SimpleObjectProperty
+import javafx.beans.property.SimpleStringProperty
+import javafx.beans.property.StringProperty
+import org.janelia.saalfeldlab.fx.extensions.getValue
+import org.janelia.saalfeldlab.fx.extensions.setValue
+import org.janelia.saalfeldlab.paintera.metrics.MetricsLogger
+import org.janelia.saalfeldlab.paintera.metrics.MetricsRegistry
+import org.slf4j.LoggerFactory
+import java.io.IOException
+import java.lang.invoke.MethodHandles
+import java.nio.file.Paths
+
+/**
+ * Settings for the render, cache, I/O, and meshing metrics: display in the status bar and periodic export to a log file.
+ */
+class MetricsConfig {
+
+    val showInStatusBarProperty: BooleanProperty = SimpleBooleanProperty(false)
+    var showInStatusBar: Boolean by showInStatusBarProperty
+
+    val isLogEnabledProperty: BooleanProperty = SimpleBooleanProperty(false)
+    var isLogEnabled: Boolean by isLogEnabledProperty
+
+    val logFormatProperty: ObjectProperty<MetricsLogger.Format> = SimpleObjectProperty(MetricsLogger.Format.CSV)
+    var logFormat: MetricsLogger.Format by logFormatProperty
+
+    val logFileProperty: StringProperty = SimpleStringProperty(DEFAULT_LOG_FILE)
+    var logFile: String by logFileProperty
+
+    val logIntervalSecondsProperty: IntegerProperty = SimpleIntegerProperty(LOG_INTERVAL_SECONDS_DEFAULT_VALUE)
+    var logIntervalSeconds: Int by logIntervalSecondsProperty
+
+    private var logger: MetricsLogger? = null
+
+    /**
+     * Start and stop the [MetricsLogger] according to this config.
+     */
+    fun bindLoggerToConfig(registry: MetricsRegistry = MetricsRegistry.getGlobal()) {
+        val update = { restartLogger(registry) }
+        isLogEnabledProperty.addListener { _ -> update() }
+        logFormatProperty.addListener { _ -> update() }
+        logFileProperty.addListener { _ -> update() }
+        logIntervalSecondsProperty.addListener { _ -> update() }
+        update()
+    }
+
+    @Synchronized
+    private fun restartLogger(registry: MetricsRegistry) {
+        try {
+            logger?.close()
+        } catch (e: IOException) {
+            LOG.warn("Unable to close metrics log", e)
+        }
+        logger = null
+        if (isLogEnabled) {
+            try {
+                logger = MetricsLogger(registry, Paths.get(logFile), logFormat, logIntervalSeconds.coerceAtLeast(1) * 1000L)
+            } catch (e: IOException) {
+                LOG.warn("Unable to log metrics to {}", logFile, e)
+            }
+        }
+    }
+
+    fun set(that: MetricsConfig) {
+        this.showInStatusBar = that.showInStatusBar
+        this.isLogEnabled = that.isLogEnabled
+        this.logFormat = that.logFormat
+        this.logFile = that.logFile
+        this.logIntervalSeconds = that.logIntervalSeconds
+    }
+
+    companion object {
+        private val LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass())
+
+        @JvmStatic
+        val DEFAULT_LOG_FILE: String = Paths.get(System.getProperty("user.home"), ".paintera", "metrics.csv").toString()
+
+        const val LOG_INTERVAL_SECONDS_MIN_VALUE = 1
+        const val LOG_INTERVAL_SECONDS_MAX_VALUE = 60
+        const val LOG_INTERVAL_SECONDS_DEFAULT_VALUE = 5
+    }
+}
@@ -0,0 +1,81 @@
+package org.janelia.saalfeldlab.paintera.config
+
+import javafx.collections.FXCollections
+import javafx.scene.control.CheckBox
+import javafx.scene.control.ComboBox
+import javafx.scene.control.Control
+import javafx.scene.control.TextField
+import javafx.scene.control.TitledPane
+import javafx.scene.control.Tooltip
+import javafx.scene.layout.GridPane
+import javafx.scene.layout.Priority
+import org.janelia.saalfeldlab.fx.Labels
+import org.janelia.saalfeldlab.fx.ui.NumericSliderWithField
+import org.janelia.saalfeldlab.paintera.metrics.MetricsLogger
+
+class MetricsConfigNode() : TitledPane("Metrics", null) {
+
+    constructor(config: MetricsConfig) : this() {
+        bind(config)
+    }
+
+    private val showInStatusBarCheckBox = CheckBox()
+
+    private val isLogEnabledCheckBox = CheckBox()
+
+    private val logFormatComboBox = ComboBox(FXCollections.observableArrayList(*MetricsLogger.Format.values()))
+
+    private val logFileField = TextField()
+
+    private val logIntervalSlider = NumericSliderWithField(
+        MetricsConfig.LOG_INTERVAL_SECONDS_MIN_VALUE,
+        MetricsConfig.LOG_INTERVAL_SECONDS_MAX_VALUE,
+        MetricsConfig.LOG_INTERVAL_SECONDS_DEFAULT_VALUE
+    )
+
+    init {
+        val grid = GridPane()
+        grid.vgap = 5.0
+        grid.hgap = 5.0
+        content = grid
+        isExpanded = false
+
+        grid.add(Labels.withTooltip("Show in status bar", "Show frame times, cache hit rate, pending fetches, and mesh task latency in the status bar."), 0, 0)
+        grid.add(showInStatusBarCheckBox, 2, 0)
+
+        grid.add(Labels.withTooltip("Log to file"), 0, 1)
+        grid.add(isLogEnabledCheckBox, 2, 1)
+
+        grid.add(Labels.withTooltip("Format"), 0, 2)
+        grid.add(logFormatComboBox, 1, 2, 2, 1)
+
+        grid.add(Labels.withTooltip("File"), 0, 3)
+        grid.add(logFileField, 1, 3, 2, 1)
+        logFileField.tooltip = Tooltip("Metrics are appended to this file. Press enter to apply.")
+
+        grid.add(Labels.withTooltip("Interval (s)"), 0, 4)
+        grid.add(logIntervalSlider.slider, 1, 4)
+        grid.add(logIntervalSlider.textField, 2, 4)
+        logIntervalSlider.slider.tooltip = Tooltip("Log interval in seconds.")
+        logIntervalSlider.slider.isShowTickLabels = false
+        logIntervalSlider.slider.isShowTickMarks = true
+        logIntervalSlider.textField.prefWidth = PREF_CELL_WIDTH
+        logIntervalSlider.textField.maxWidth = Control.USE_PREF_SIZE
+        GridPane.setHgrow(logIntervalSlider.slider, Priority.ALWAYS)
+        GridPane.setHgrow(logFileField, Priority.ALWAYS)
+    }
+
+    fun bind(config: MetricsConfig) {
+        showInStatusBarCheckBox.selectedProperty().bindBidirectional(config.showInStatusBarProperty)
+        isLogEnabledCheckBox.selectedProperty().bindBidirectional(config.isLogEnabledProperty)
+        logFormatComboBox.valueProperty().bindBidirectional(config.logFormatProperty)
+        logIntervalSlider.slider.valueProperty().bindBidirectional(config.logIntervalSecondsProperty)
+        logFileField.text = config.logFile
+        logFileField.setOnAction { config.logFile = logFileField.text }
+        config.logFileProperty.addListener { _, _, file -> logFileField.text = file }
+    }
+
+    companion object {
+        private const val PREF_CELL_WIDTH = 60.0
+    }
+}
@@ -0,0 +1,42 @@
+package org.janelia.saalfeldlab.paintera.config
+
+import javafx.beans.property.IntegerProperty
+import javafx.beans.property.SimpleIntegerProperty
+import org.janelia.saalfeldlab.fx.extensions.getValue
+import org.janelia.saalfeldlab.fx.extensions.setValue
+import org.janelia.saalfeldlab.fx.ortho.OrthogonalViews
+
+/**
+ * Settings for prefetching the data that will be visible next when scrolling through sections or panning.
+ * Set [lookaheadSteps] to 0 to disable predictive prefetching.
+ */
+class PredictivePrefetchConfig {
+
+    val lookaheadStepsProperty: IntegerProperty = SimpleIntegerProperty(LOOKAHEAD_STEPS_DEFAULT_VALUE)
+    var lookaheadSteps: Int by lookaheadStepsProperty
+
+    val maxCellsPerSourceProperty: IntegerProperty = SimpleIntegerProperty(MAX_CELLS_PER_SOURCE_DEFAULT_VALUE)
+    var maxCellsPerSource: Int by maxCellsPerSourceProperty
+
+    fun bindOrthogonalViewsToConfig(views: OrthogonalViews<*>) {
+        val update = { views.setPredictivePrefetch(lookaheadSteps, maxCellsPerSource) }
+        lookaheadStepsProperty.addListener { _ -> update() }
+        maxCellsPerSourceProperty.addListener { _ -> update() }
+        update()
+    }
+
+    fun set(that: PredictivePrefetchConfig) {
+        this.lookaheadSteps = that.lookaheadSteps
+        this.maxCellsPerSource = that.maxCellsPerSource
+    }
+
+    companion object {
+        const val LOOKAHEAD_STEPS_MIN_VALUE = 0
+        const val LOOKAHEAD_STEPS_MAX_VALUE = 16
+        const val LOOKAHEAD_STEPS_DEFAULT_VALUE = 3
+
+        const val MAX_CELLS_PER_SOURCE_MIN_VALUE = 0
+        const val MAX_CELLS_PER_SOURCE_MAX_VALUE = 2048
+        const val MAX_CELLS_PER_SOURCE_DEFAULT_VALUE = 256
+    }
+}
@@ -0,0 +1,63 @@
+package org.janelia.saalfeldlab.paintera.config
+
+import javafx.scene.control.Control
+import javafx.scene.control.TitledPane
+import javafx.scene.control.Tooltip
+import javafx.scene.layout.GridPane
+import javafx.scene.layout.Priority
+import org.janelia.saalfeldlab.fx.Labels
+import org.janelia.saalfeldlab.fx.ui.NumericSliderWithField
+
+class PredictivePrefetchConfigNode() : TitledPane("Predictive Prefetching", null) {
+
+    constructor(config: PredictivePrefetchConfig) : this() {
+        bind(config)
+    }
+
+    private val lookaheadStepsSlider = NumericSliderWithField(
+        PredictivePrefetchConfig.LOOKAHEAD_STEPS_MIN_VALUE,
+        PredictivePrefetchConfig.LOOKAHEAD_STEPS_MAX_VALUE,
+        PredictivePrefetchConfig.LOOKAHEAD_STEPS_DEFAULT_VALUE
+    )
+
+    private val maxCellsPerSourceSlider = NumericSliderWithField(
+        PredictivePrefetchConfig.MAX_CELLS_PER_SOURCE_MIN_VALUE,
+        PredictivePrefetchConfig.MAX_CELLS_PER_SOURCE_MAX_VALUE,
+        PredictivePrefetchConfig.MAX_CELLS_PER_SOURCE_DEFAULT_VALUE
+    )
+
+    init {
+        val grid = GridPane()
+        grid.vgap = 5.0
+        grid.hgap = 5.0
+        content = grid
+        isExpanded = false
+
+        grid.add(Labels.withTooltip("Lookahead"), 0, 0)
+        grid.add(lookaheadStepsSlider.slider, 1, 0)
+        grid.add(lookaheadStepsSlider.textField, 2, 0)
+        lookaheadStepsSlider.slider.tooltip = Tooltip("Number of sections or pan steps to prefetch ahead of the current navigation. Set to 0 to disable.")
+
+        grid.add(Labels.withTooltip("Cells per source"), 0, 1)
+        grid.add(maxCellsPerSourceSlider.slider, 1, 1)
+        grid.add(maxCellsPerSourceSlider.textField, 2, 1)
+        maxCellsPerSourceSlider.slider.tooltip = Tooltip("Maximum number of blocks requested per source and frame for predictive prefetching.")
+
+        listOf(lookaheadStepsSlider, maxCellsPerSourceSlider).forEach {
+            it.slider.isShowTickLabels = false
+            it.slider.isShowTickMarks = true
+            it.textField.prefWidth = PREF_CELL_WIDTH
+            it.textField.maxWidth = Control.USE_PREF_SIZE
+            GridPane.setHgrow(it.slider, Priority.ALWAYS)
+        }
+    }
+
+    fun bind(config: PredictivePrefetchConfig) {
+        lookaheadStepsSlider.slider.valueProperty().bindBidirectional(config.lookaheadStepsProperty)
+        maxCellsPerSourceSlider.slider.valueProperty().bindBidirectional(config.maxCellsPerSourceProperty)
+    }
+
+    companion object {
+        private const val PREF_CELL_WIDTH = 60.0
+    }
+}
@@ -12,6 +12,13 @@ data class PainteraTriangleMesh @JvmOverloads constructor(
     val isEmpty: Boolean = vertices.isEmpty() && normals.isEmpty()
     val isNotEmpty: Boolean = !isEmpty
 
+    /**
+     * Approximate number of bytes held by the arrays of this mesh.
+     */
+    val estimatedBytes: Long
+        get() = (vertices.size + normals.size + (textureCoordinates?.size ?: 0)).toLong() * Float.SIZE_BYTES +
+            (indices?.size ?: 0).toLong() * Int.SIZE_BYTES
+
     companion object {
         @JvmStatic
         fun fromVerticesAndNormals(vertices: FloatArray?, normals: FloatArray?): PainteraTriangleMesh? {
@@ -6,6 +6,9 @@ import net.imglib2.cache.Invalidate
 import net.imglib2.cache.LoaderCache
 import net.imglib2.cache.ref.SoftRefLoaderCache
 import net.imglib2.util.Pair
+import org.janelia.saalfeldlab.paintera.cache.AccountedCache
+import org.janelia.saalfeldlab.paintera.cache.BudgetedCache
+import org.janelia.saalfeldlab.paintera.cache.CacheBudget
 import org.janelia.saalfeldlab.paintera.meshes.PainteraTriangleMesh
 import org.janelia.saalfeldlab.paintera.meshes.ShapeKey
 
@@ -16,8 +19,22 @@ interface GetMeshFor<Key> {
         override fun getMeshFor(key: ShapeKey<Key>) = cache[key]
 
         companion object {
+            /**
+             * Meshes are generated from the label data (marching cubes, smoothing, normals) and are more expensive to
+             * restore than the label blocks they are generated from, see [BudgetedCache.getReloadCost].
+             */
+            private const val MESH_RELOAD_COST = 8.0
+
             @JvmStatic
-            fun <Key> from(cache: Cache<ShapeKey<Key>?, PainteraTriangleMesh?>) = FromCache(cache)
+            fun <Key> from(cache: Cache<ShapeKey<Key>?, PainteraTriangleMesh?>) = FromCache(
+                AccountedCache.register(
+                    "Meshes",
+                    cache,
+                    { mesh -> mesh?.estimatedBytes ?: 0L },
+                    MESH_RELOAD_COST,
+                    CacheBudget.getGlobal()
+                )
+            )
 
             @JvmStatic
             @JvmOverloads
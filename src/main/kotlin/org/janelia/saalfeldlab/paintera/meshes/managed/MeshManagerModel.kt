@@ -14,6 +14,7 @@ class MeshManagerModel {
     val blockSizeProperty = SimpleIntegerProperty(Viewer3DConfig.RENDERER_BLOCK_SIZE_DEFAULT_VALUE)
     val numElementsPerFrameProperty = SimpleIntegerProperty(Viewer3DConfig.NUM_ELEMENTS_PER_FRAME_DEFAULT_VALUE)
     val frameDelayMsecProperty = SimpleLongProperty(Viewer3DConfig.FRAME_DELAY_MSEC_DEFAULT_VALUE)
+    val targetFrameTimeMsecProperty = SimpleLongProperty(Viewer3DConfig.TARGET_FRAME_TIME_MSEC_DEFAULT_VALUE)
     val sceneUpdateDelayMsecProperty = SimpleLongProperty(Viewer3DConfig.SCENE_UPDATE_DELAY_MSEC_DEFAULT_VALUE)
 
 
@@ -22,6 +23,7 @@ class MeshManagerModel {
     var blockSize: Int by blockSizeProperty
     var numElementsPerFrame: Int by numElementsPerFrameProperty
     var frameDelayMsec: Long by frameDelayMsecProperty
+    var targetFrameTimeMsec: Long by targetFrameTimeMsecProperty
     var sceneUpdateDelayMsec: Long by sceneUpdateDelayMsecProperty
 
 
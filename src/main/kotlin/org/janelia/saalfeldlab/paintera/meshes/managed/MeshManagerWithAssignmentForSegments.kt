@@ -39,7 +39,7 @@ import org.janelia.saalfeldlab.paintera.viewer3d.ViewFrustum
 import org.janelia.saalfeldlab.util.Colors
 import org.janelia.saalfeldlab.util.HashWrapper
 import org.janelia.saalfeldlab.util.NamedThreadFactory
-import org.janelia.saalfeldlab.util.concurrent.HashPriorityQueueBasedTaskExecutor
+import org.janelia.saalfeldlab.util.concurrent.PriorityTaskExecutor
 import org.slf4j.LoggerFactory
 import java.lang.invoke.MethodHandles
 import java.util.Arrays
@@ -61,7 +61,7 @@ class MeshManagerWithAssignmentForSegments(
     private val selectedSegments: SelectedSegments,
     private val argbStream: AbstractHighlightingARGBStream,
     val managers: ExecutorService,
-    val workers: HashPriorityQueueBasedTaskExecutor<MeshWorkerPriority>,
+    val workers: PriorityTaskExecutor<MeshWorkerPriority>,
     val meshViewUpdateQueue: MeshViewUpdateQueue<TLongHashSet>,
 ) {
 
@@ -296,9 +296,28 @@ class MeshManagerWithAssignmentForSegments(
         currentTask = task
     }
 
+    /**
+     * Refresh meshes after the label data changed only within [changedBlocks], e.g. after painting on the canvas or
+     * undoing it. Only cached mesh blocks that intersect [changedBlocks] at their scale level are evicted and
+     * regenerated, and the regenerated blocks replace the outdated ones in the scene in place.
+     *
+     * @param changedBlocks changed blocks for each scale level
+     */
+    fun refreshMeshes(changedBlocks: Array<out Array<out Interval>>) {
+        updateExecutors.submit {
+            @Suppress("UNCHECKED_CAST")
+            (getMeshFor as? Invalidate<ShapeKey<TLongHashSet>?>)?.invalidateIf { key -> key != null && changedBlocks.intersects(key) }
+            manager.refreshBlocks(changedBlocks)
+        }
+    }
+
     companion object {
         private val LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass())
 
+        // marching cubes reads one voxel beyond the block
+        private fun Array<out Array<out Interval>>.intersects(key: ShapeKey<*>) = getOrNull(key.scaleIndex())
+            ?.any { block -> (0 until block.numDimensions()).all { block.min(it) <= key.max()[it] + 1 && block.max(it) >= key.min()[it] - 1 } } == true
+
         fun LabelBlockLookup.read(level: Int, id: Long) = read(LabelBlockLookupKey(level, id))
 
         @JvmStatic
@@ -310,7 +329,7 @@ class MeshManagerWithAssignmentForSegments(
             eyeToWorldTransformProperty: ObservableValue<AffineTransform3D>,
             labelBlockLookup: LabelBlockLookup,
             meshManagerExecutors: ExecutorService,
-            meshWorkersExecutors: HashPriorityQueueBasedTaskExecutor<MeshWorkerPriority>,
+            meshWorkersExecutors: PriorityTaskExecutor<MeshWorkerPriority>,
         ): MeshManagerWithAssignmentForSegments {
             LOG.debug("Data source is type {}", dataSource.javaClass)
             val actualLookup = when (dataSource) {
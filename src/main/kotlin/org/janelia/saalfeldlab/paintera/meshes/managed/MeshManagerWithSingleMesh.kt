@@ -20,7 +20,7 @@ import org.janelia.saalfeldlab.paintera.meshes.MeshViewUpdateQueue
 import org.janelia.saalfeldlab.paintera.meshes.MeshWorkerPriority
 import org.janelia.saalfeldlab.paintera.meshes.managed.adaptive.AdaptiveResolutionMeshManager
 import org.janelia.saalfeldlab.paintera.viewer3d.ViewFrustum
-import org.janelia.saalfeldlab.util.concurrent.HashPriorityQueueBasedTaskExecutor
+import org.janelia.saalfeldlab.util.concurrent.PriorityTaskExecutor
 import org.slf4j.LoggerFactory
 import java.lang.invoke.MethodHandles
 import java.util.concurrent.ExecutorService
@@ -36,7 +36,7 @@ class MeshManagerWithSingleMesh<Key>(
     viewFrustumProperty: ObservableValue<ViewFrustum>,
     eyeToWorldTransformProperty: ObservableValue<AffineTransform3D>,
     val managers: ExecutorService,
-    val workers: HashPriorityQueueBasedTaskExecutor<MeshWorkerPriority>,
+    val workers: PriorityTaskExecutor<MeshWorkerPriority>,
     meshViewUpdateQueue: MeshViewUpdateQueue<Key>,
 ) {
 
@@ -9,6 +9,7 @@ import javafx.beans.value.ChangeListener
 import javafx.beans.value.ObservableBooleanValue
 import javafx.beans.value.ObservableValue
 import javafx.scene.Group
+import net.imglib2.Interval
 import net.imglib2.img.cell.CellGrid
 import net.imglib2.realtransform.AffineTransform3D
 import org.janelia.saalfeldlab.fx.util.InvokeOnJavaFXApplicationThread
@@ -25,9 +26,10 @@ import org.janelia.saalfeldlab.paintera.meshes.SceneUpdateHandler
 import org.janelia.saalfeldlab.paintera.meshes.managed.GetBlockListFor
 import org.janelia.saalfeldlab.paintera.meshes.managed.GetMeshFor
 import org.janelia.saalfeldlab.paintera.meshes.managed.MeshManagerModel
+import org.janelia.saalfeldlab.paintera.viewer3d.OcclusionBuffer
 import org.janelia.saalfeldlab.paintera.viewer3d.ViewFrustum
 import org.janelia.saalfeldlab.util.NamedThreadFactory
-import org.janelia.saalfeldlab.util.concurrent.HashPriorityQueueBasedTaskExecutor
+import org.janelia.saalfeldlab.util.concurrent.PriorityTaskExecutor
 import org.janelia.saalfeldlab.util.concurrent.LatestTaskExecutor
 import org.slf4j.LoggerFactory
 import java.lang.invoke.MethodHandles
@@ -38,6 +40,7 @@ import java.util.concurrent.Future
 import java.util.concurrent.RejectedExecutionException
 import java.util.function.BooleanSupplier
 import java.util.function.Consumer
+import java.util.function.IntFunction
 
 /**
  * @author Philipp Hanslovsky
@@ -51,7 +54,7 @@ class AdaptiveResolutionMeshManager<ObjectKey> constructor(
     private val eyeToWorldTransform: ObservableValue<AffineTransform3D>,
     private val viewerEnabled: ObservableBooleanValue,
     private val managers: ExecutorService,
-    private val workers: HashPriorityQueueBasedTaskExecutor<MeshWorkerPriority>,
+    private val workers: PriorityTaskExecutor<MeshWorkerPriority>,
     private val meshViewUpdateQueue: MeshViewUpdateQueue<ObjectKey>
 ) {
 
@@ -94,6 +97,8 @@ class AdaptiveResolutionMeshManager<ObjectKey> constructor(
         )
     )
     private val sceneUpdateParametersProperty: ObjectProperty<SceneUpdateParameters?> = SimpleObjectProperty()
+    // only accessed from the scene update thread
+    private val sceneBlockTrees = mutableMapOf<BlockTreeParametersKey, SceneBlockTree>()
     private var currentSceneUpdateTask: Future<*>? = null
     private var scheduledSceneUpdateTask: Future<*>? = null
 
@@ -116,9 +121,16 @@ class AdaptiveResolutionMeshManager<ObjectKey> constructor(
         rendererSettings.sceneUpdateDelayMsecProperty.addListener { _ -> sceneUpdateHandler.update(rendererSettings.sceneUpdateDelayMsec) }
         eyeToWorldTransform.addListener(sceneUpdateHandler)
         val meshViewUpdateQueueListener =
-            InvalidationListener { meshViewUpdateQueue.update(rendererSettings.numElementsPerFrame, rendererSettings.frameDelayMsec) }
+            InvalidationListener {
+                meshViewUpdateQueue.update(
+                    rendererSettings.numElementsPerFrame,
+                    rendererSettings.frameDelayMsec,
+                    rendererSettings.targetFrameTimeMsec
+                )
+            }
         rendererSettings.numElementsPerFrameProperty.addListener(meshViewUpdateQueueListener)
         rendererSettings.frameDelayMsecProperty.addListener(meshViewUpdateQueueListener)
+        rendererSettings.targetFrameTimeMsecProperty.addListener(meshViewUpdateQueueListener)
     }
 
     @Synchronized
@@ -231,6 +243,18 @@ class AdaptiveResolutionMeshManager<ObjectKey> constructor(
     @Synchronized
     fun getStateFor(key: ObjectKey) = meshes[key]?.state
 
+    /**
+     * Regenerate only the mesh blocks that intersect [changedBlocks] at their scale level and keep all other blocks
+     * in the scene. Blocks that did not contain an object before are added with the next scene update.
+     *
+     * @param changedBlocks changed blocks of the source for each scale level
+     */
+    @Synchronized
+    fun refreshBlocks(changedBlocks: Array<out Array<out Interval>>) {
+        meshes.values.forEach { it.refreshBlocks(changedBlocks) }
+        requestCancelAndUpdate()
+    }
+
     fun requestCancelAndUpdate() = this.cancelAndUpdateRequestService.execute { Platform.runLater { cancelAndUpdate() } }
 
     @Synchronized
@@ -262,7 +286,9 @@ class AdaptiveResolutionMeshManager<ObjectKey> constructor(
         try {
             val blockTreeParametersKeysToMeshGenerators =
                 mutableMapOf<BlockTreeParametersKey, MutableList<MeshGenerator<ObjectKey>>>()
-            val wasInterrupted = BooleanSupplier { Thread.currentThread().isInterrupted }
+            // the scene block tree is evaluated in parallel, check the interrupted status of the scene update thread
+            val sceneUpdateThread = Thread.currentThread()
+            val wasInterrupted = BooleanSupplier { sceneUpdateThread.isInterrupted }
             val sceneUpdateParameters = synchronized(this) {
                 if (wasInterrupted.asBoolean) return
 
@@ -282,30 +308,44 @@ class AdaptiveResolutionMeshManager<ObjectKey> constructor(
                 }
                 sceneUpdateParameters
             }
-            val sceneBlockTrees =
+            val sceneBlockTreesForKeys =
                 mutableMapOf<BlockTreeParametersKey, BlockTree<BlockTreeFlatKey, BlockTreeNode<BlockTreeFlatKey>>?>()
-            for (blockTreeParametersKey in blockTreeParametersKeysToMeshGenerators.keys) {
+            sceneBlockTrees.keys.retainAll(blockTreeParametersKeysToMeshGenerators.keys)
+            for ((blockTreeParametersKey, meshGenerators) in blockTreeParametersKeysToMeshGenerators) {
                 if (wasInterrupted.asBoolean) return
-                sceneBlockTrees[blockTreeParametersKey] = SceneBlockTree.createSceneBlockTree(
-                    source,
-                    sceneUpdateParameters.viewFrustum,
-                    sceneUpdateParameters.eyeToWorldTransform,
-                    blockTreeParametersKey.levelOfDetail,
-                    blockTreeParametersKey.coarsestScaleLevel,
-                    blockTreeParametersKey.finestScaleLevel,
-                    sceneUpdateParameters.rendererGrids,
-                    wasInterrupted
-                )
+                // only traverse blocks that contain any of the objects that share this tree
+                val getRelevantSourceBlocks = IntFunction { level -> meshGenerators.flatMap { getBlockListFor.getBlocksFor(level, it.id).asList() }.toTypedArray() }
+                sceneBlockTreesForKeys[blockTreeParametersKey] = sceneBlockTrees
+                    .getOrPut(blockTreeParametersKey) { SceneBlockTree(source) }
+                    .update(
+                        sceneUpdateParameters.viewFrustum,
+                        sceneUpdateParameters.eyeToWorldTransform,
+                        blockTreeParametersKey.levelOfDetail,
+                        blockTreeParametersKey.coarsestScaleLevel,
+                        blockTreeParametersKey.finestScaleLevel,
+                        sceneUpdateParameters.rendererGrids,
+                        getRelevantSourceBlocks,
+                        wasInterrupted
+                    )
+            }
+            // blocks hidden behind the lowest-resolution meshes of any object are scheduled last
+            val occlusionBuffer = OcclusionBuffer(sceneUpdateParameters.viewFrustum, sceneUpdateParameters.eyeToWorldTransform)
+            for (meshGenerator in blockTreeParametersKeysToMeshGenerators.values.flatten()) {
+                if (wasInterrupted.asBoolean) return
+                meshGenerator.occluders.forEach { occlusionBuffer.addOccluder(it.vertices, it.indices) }
             }
             synchronized(this) {
                 if (wasInterrupted.asBoolean) return
                 for ((blockTreeParametersKey, value) in blockTreeParametersKeysToMeshGenerators) {
                     val sceneBlockTreeForKey =
-                        sceneBlockTrees[blockTreeParametersKey]
-                    for (meshGenerator in value) meshGenerator.update(
-                        sceneBlockTreeForKey,
-                        sceneUpdateParameters.rendererGrids
-                    )
+                        sceneBlockTreesForKeys[blockTreeParametersKey]
+                    for (meshGenerator in value) {
+                        meshGenerator.setOcclusionBuffer(occlusionBuffer)
+                        meshGenerator.update(
+                            sceneBlockTreeForKey,
+                            sceneUpdateParameters.rendererGrids
+                        )
+                    }
                 }
             }
         } finally {
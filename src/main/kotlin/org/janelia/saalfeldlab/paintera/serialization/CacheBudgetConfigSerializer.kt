@@ -0,0 +1,40 @@
+package org.janelia.saalfeldlab.paintera.serialization
+
+import com.google.gson.JsonDeserializationContext
+import com.google.gson.JsonElement
+import com.google.gson.JsonObject
+import com.google.gson.JsonSerializationContext
+import org.janelia.saalfeldlab.paintera.config.CacheBudgetConfig
+import org.scijava.plugin.Plugin
+import java.lang.reflect.Type
+
+@Plugin(type = PainteraSerialization.PainteraAdapter::class)
+class CacheBudgetConfigSerializer : PainteraSerialization.PainteraAdapter<CacheBudgetConfig> {
+    override fun serialize(
+        src: CacheBudgetConfig?,
+        typeOfSrc: Type?,
+        context: JsonSerializationContext
+    ) = JsonObject().also { map ->
+        src?.let { map.addProperty(HEAP_FRACTION_KEY, it.heapFraction) }
+    }
+
+    override fun deserialize(
+        json: JsonElement?,
+        typeOfT: Type?,
+        context: JsonDeserializationContext
+    ): CacheBudgetConfig {
+        val config = CacheBudgetConfig()
+        with(GsonExtensions) {
+            json?.getDoubleProperty(HEAP_FRACTION_KEY)?.let { config.heapFraction = it }
+        }
+        return config
+    }
+
+    override fun getTargetClass() = CacheBudgetConfig::class.java
+
+    override fun isHierarchyAdapter() = false
+
+    companion object {
+        private const val HEAP_FRACTION_KEY = "heapFraction"
+    }
+}
@@ -0,0 +1,49 @@
+package org.janelia.saalfeldlab.paintera.serialization
+
+import com.google.gson.JsonDeserializationContext
+import com.google.gson.JsonElement
+import com.google.gson.JsonObject
+import com.google.gson.JsonSerializationContext
+import org.janelia.saalfeldlab.paintera.config.CompressionConfig
+import org.janelia.saalfeldlab.util.n5.CompressionCodec
+import org.scijava.plugin.Plugin
+import java.lang.reflect.Type
+
+@Plugin(type = PainteraSerialization.PainteraAdapter::class)
+class CompressionConfigSerializer : PainteraSerialization.PainteraAdapter<CompressionConfig> {
+    override fun serialize(
+        src: CompressionConfig?,
+        typeOfSrc: Type?,
+        context: JsonSerializationContext
+    ) = JsonObject().also { map ->
+        src?.let {
+            map.addProperty(CODEC_KEY, it.codec.type)
+            map.addProperty(LEVEL_KEY, it.level)
+            map.addProperty(AUTO_TUNE_KEY, it.autoTune)
+        }
+    }
+
+    override fun deserialize(
+        json: JsonElement?,
+        typeOfT: Type?,
+        context: JsonDeserializationContext
+    ): CompressionConfig {
+        val config = CompressionConfig()
+        with(GsonExtensions) {
+            json?.getStringProperty(CODEC_KEY)?.let { CompressionCodec.fromType(it) }?.takeIf { it.isAvailable }?.let { config.codec = it }
+            json?.getIntProperty(LEVEL_KEY)?.let { config.level = it }
+            json?.getBooleanProperty(AUTO_TUNE_KEY)?.let { config.autoTune = it }
+        }
+        return config
+    }
+
+    override fun getTargetClass() = CompressionConfig::class.java
+
+    override fun isHierarchyAdapter() = false
+
+    companion object {
+        private const val CODEC_KEY = "codec"
+        private const val LEVEL_KEY = "level"
+        private const val AUTO_TUNE_KEY = "autoTune"
+    }
+}
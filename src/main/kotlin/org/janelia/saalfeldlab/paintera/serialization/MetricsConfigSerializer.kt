@@ -0,0 +1,55 @@
+package org.janelia.saalfeldlab.paintera.serialization
+
+import com.google.gson.JsonDeserializationContext
+import com.google.gson.JsonElement
+import com.google.gson.JsonObject
+import com.google.gson.JsonSerializationContext
+import org.janelia.saalfeldlab.paintera.config.MetricsConfig
+import org.janelia.saalfeldlab.paintera.metrics.MetricsLogger
+import org.scijava.plugin.Plugin
+import java.lang.reflect.Type
+
+@Plugin(type = PainteraSerialization.PainteraAdapter::class)
+class MetricsConfigSerializer : PainteraSerialization.PainteraAdapter<MetricsConfig> {
+    override fun serialize(
+        src: MetricsConfig?,
+        typeOfSrc: Type?,
+        context: JsonSerializationContext
+    ) = JsonObject().also { map ->
+        src?.let {
+            map.addProperty(SHOW_IN_STATUS_BAR_KEY, it.showInStatusBar)
+            map.addProperty(IS_LOG_ENABLED_KEY, it.isLogEnabled)
+            map.addProperty(LOG_FORMAT_KEY, it.logFormat.name)
+            map.addProperty(LOG_FILE_KEY, it.logFile)
+            map.addProperty(LOG_INTERVAL_SECONDS_KEY, it.logIntervalSeconds)
+        }
+    }
+
+    override fun deserialize(
+        json: JsonElement?,
+        typeOfT: Type?,
+        context: JsonDeserializationContext
+    ): MetricsConfig {
+        val config = MetricsConfig()
+        with(GsonExtensions) {
+            json?.getBooleanProperty(SHOW_IN_STATUS_BAR_KEY)?.let { config.showInStatusBar = it }
+            json?.getBooleanProperty(IS_LOG_ENABLED_KEY)?.let { config.isLogEnabled = it }
+            json?.getStringProperty(LOG_FORMAT_KEY)?.let { format -> MetricsLogger.Format.values().find { it.name == format } }?.let { config.logFormat = it }
+            json?.getStringProperty(LOG_FILE_KEY)?.let { config.logFile = it }
+            json?.getIntProperty(LOG_INTERVAL_SECONDS_KEY)?.let { config.logIntervalSeconds = it }
+        }
+        return config
+    }
+
+    override fun getTargetClass() = MetricsConfig::class.java
+
+    override fun isHierarchyAdapter() = false
+
+    companion object {
+        private const val SHOW_IN_STATUS_BAR_KEY = "showInStatusBar"
+        private const val IS_LOG_ENABLED_KEY = "isLogEnabled"
+        private const val LOG_FORMAT_KEY = "logFormat"
+        private const val LOG_FILE_KEY = "logFile"
+        private const val LOG_INTERVAL_SECONDS_KEY = "logIntervalSeconds"
+    }
+}
@@ -0,0 +1,45 @@
+package org.janelia.saalfeldlab.paintera.serialization
+
+import com.google.gson.JsonDeserializationContext
+import com.google.gson.JsonElement
+import com.google.gson.JsonObject
+import com.google.gson.JsonSerializationContext
+import org.janelia.saalfeldlab.paintera.config.PredictivePrefetchConfig
+import org.scijava.plugin.Plugin
+import java.lang.reflect.Type
+
+@Plugin(type = PainteraSerialization.PainteraAdapter::class)
+class PredictivePrefetchConfigSerializer : PainteraSerialization.PainteraAdapter<PredictivePrefetchConfig> {
+    override fun serialize(
+        src: PredictivePrefetchConfig?,
+        typeOfSrc: Type?,
+        context: JsonSerializationContext
+    ) = JsonObject().also { map ->
+        src?.let {
+            map.addProperty(LOOKAHEAD_STEPS_KEY, it.lookaheadSteps)
+            map.addProperty(MAX_CELLS_PER_SOURCE_KEY, it.maxCellsPerSource)
+        }
+    }
+
+    override fun deserialize(
+        json: JsonElement?,
+        typeOfT: Type?,
+        context: JsonDeserializationContext
+    ): PredictivePrefetchConfig {
+        val config = PredictivePrefetchConfig()
+        with(GsonExtensions) {
+            json?.getIntProperty(LOOKAHEAD_STEPS_KEY)?.let { config.lookaheadSteps = it }
+            json?.getIntProperty(MAX_CELLS_PER_SOURCE_KEY)?.let { config.maxCellsPerSource = it }
+        }
+        return config
+    }
+
+    override fun getTargetClass() = PredictivePrefetchConfig::class.java
+
+    override fun isHierarchyAdapter() = false
+
+    companion object {
+        private const val LOOKAHEAD_STEPS_KEY = "lookaheadSteps"
+        private const val MAX_CELLS_PER_SOURCE_KEY = "maxCellsPerSource"
+    }
+}
@@ -33,6 +33,18 @@ class Properties : TransformListener<AffineTransform3D> {
     @Expose
     val screenScalesConfig = ScreenScalesConfig()
 
+    @Expose
+    val predictivePrefetchConfig = PredictivePrefetchConfig()
+
+    @Expose
+    val cacheBudgetConfig = CacheBudgetConfig()
+
+    @Expose
+    val compressionConfig = CompressionConfig()
+
+    @Expose
+    val metricsConfig = MetricsConfig()
+
     @Expose
     val scaleBarOverlayConfig = ScaleBarOverlayConfig()
 
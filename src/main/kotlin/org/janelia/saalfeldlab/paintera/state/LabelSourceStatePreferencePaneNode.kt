@@ -343,7 +343,13 @@ class LabelSourceStatePreferencePaneNode(
                         .also { it.add(brushSizeScaleLabel, 0, 1) }
                         .also { it.add(brushSizeScaleField.textField, 1, 1) }
 
-                    val contents = VBox(paintSettingsPane).also { it.padding = Insets.EMPTY }
+                    val historyPane = UndoFromEvents.withUndoRedoButtons(
+                        source.history.events(),
+                        { step -> "P: ${step.label} (${step.cells.size} blocks)" }
+                    )
+                    { Labels.withTooltip("$it") }
+
+                    val contents = VBox(paintSettingsPane, historyPane).also { it.padding = Insets.EMPTY }
 
                     return TitledPanes
                         .createCollapsed(null, contents)
@@ -3,6 +3,7 @@ package org.janelia.saalfeldlab.paintera.state.label
 import org.janelia.saalfeldlab.labels.blocks.LabelBlockLookup
 import org.janelia.saalfeldlab.paintera.control.assignment.FragmentSegmentAssignmentState
 import org.janelia.saalfeldlab.paintera.data.DataSource
+import org.janelia.saalfeldlab.paintera.data.statistics.SegmentStatisticsService
 import org.janelia.saalfeldlab.paintera.id.IdService
 import org.janelia.saalfeldlab.paintera.state.SourceStateBackend
 
@@ -17,4 +18,11 @@ interface ConnectomicsLabelBackend<D, T> : SourceStateBackend<D, T> {
 
     fun createIdService(source: DataSource<D, T>): IdService
 
+    /**
+     * @return service that collects segment statistics from the persisted label data into a
+     * [SegmentStatisticsStore][org.janelia.saalfeldlab.paintera.data.statistics.SegmentStatisticsStore],
+     * or `null` if the backend cannot persist them. The service is not started.
+     */
+    fun createSegmentStatisticsService(source: DataSource<D, T>, assignment: FragmentSegmentAssignmentState): SegmentStatisticsService? = null
+
 }
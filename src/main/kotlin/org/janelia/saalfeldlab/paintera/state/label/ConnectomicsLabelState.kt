@@ -70,6 +70,7 @@ import org.janelia.saalfeldlab.paintera.control.selection.SelectedSegments
 import org.janelia.saalfeldlab.paintera.data.DataSource
 import org.janelia.saalfeldlab.paintera.data.PredicateDataSource
 import org.janelia.saalfeldlab.paintera.data.mask.MaskedSource
+import org.janelia.saalfeldlab.paintera.data.statistics.SegmentStatisticsService
 import org.janelia.saalfeldlab.paintera.meshes.ManagedMeshSettings
 import org.janelia.saalfeldlab.paintera.meshes.MeshWorkerPriority
 import org.janelia.saalfeldlab.paintera.meshes.managed.GetBlockListFor
@@ -96,9 +97,12 @@ import org.janelia.saalfeldlab.paintera.ui.PainteraAlerts
 import org.janelia.saalfeldlab.paintera.viewer3d.ViewFrustum
 import org.janelia.saalfeldlab.util.Colors
 import org.janelia.saalfeldlab.util.HashWrapper
-import org.janelia.saalfeldlab.util.concurrent.HashPriorityQueueBasedTaskExecutor
+import org.janelia.saalfeldlab.util.concurrent.PriorityTaskExecutor
+import org.janelia.saalfeldlab.util.grids.LabelBlockLookupIndexBuilder
+import org.janelia.saalfeldlab.util.grids.LabelBlockLookupWithBackgroundIndex
 import org.scijava.plugin.Plugin
 import org.slf4j.LoggerFactory
+import java.io.IOException
 import java.lang.invoke.MethodHandles
 import java.lang.reflect.Type
 import java.util.concurrent.ExecutorService
@@ -114,7 +118,7 @@ class ConnectomicsLabelState<D : IntegerType<D>, T>(
     viewFrustumProperty: ObjectProperty<ViewFrustum>,
     eyeToWorldTransformProperty: ObjectProperty<AffineTransform3D>,
     meshManagerExecutors: ExecutorService,
-    meshWorkersExecutors: HashPriorityQueueBasedTaskExecutor<MeshWorkerPriority>,
+    meshWorkersExecutors: PriorityTaskExecutor<MeshWorkerPriority>,
     queue: SharedQueue,
     priority: Int,
     name: String,
@@ -143,6 +147,15 @@ class ConnectomicsLabelState<D : IntegerType<D>, T>(
 
     private val labelBlockLookup = labelBlockLookup ?: backend.createLabelBlockLookup(source)
 
+    private var labelBlockIndexBuilder: LabelBlockLookupIndexBuilder? = null
+
+    /**
+     * Voxel count, bounding box, and centroid per segment, `null` if the backend cannot persist statistics or if they
+     * were never collected for this dataset and not requested through [computeSegmentStatistics].
+     */
+    var segmentStatistics: SegmentStatisticsService? = null
+        private set
+
     private val stream = ModalGoldenAngleSaturatedHighlightingARGBStream(selectedSegments, lockedSegments)
 
     private val converter = HighlightingStreamConverter.forType(stream, dataSource.type)
@@ -347,14 +360,24 @@ class ConnectomicsLabelState<D : IntegerType<D>, T>(
         fragmentSegmentAssignment.addListener { requestRepaint(paintera) }
         paintera.viewer3D().meshesGroup().children.add(meshManager.meshesGroup)
         selectedSegments.addListener { meshManager.setMeshesToSelection() }
+        (source as? MaskedSource<*, *>)?.addOnCanvasModifiedListener { modifiedBlocks ->
+            requestRepaint(paintera)
+            meshManager.refreshMeshes(modifiedBlocks)
+        }
+        (source as? MaskedSource<*, *>)?.addOnCanvasCommittedListener { blockDiffs ->
+            segmentStatistics?.update(blockDiffs[0])
+        }
 
         meshManager.viewerEnabledProperty().bind(paintera.viewer3D().meshesEnabledProperty())
         meshManager.rendererSettings.showBlockBoundariesProperty.bind(paintera.viewer3D().showBlockBoundariesProperty())
         meshManager.rendererSettings.blockSizeProperty.bind(paintera.viewer3D().rendererBlockSizeProperty())
         meshManager.rendererSettings.numElementsPerFrameProperty.bind(paintera.viewer3D().numElementsPerFrameProperty())
         meshManager.rendererSettings.frameDelayMsecProperty.bind(paintera.viewer3D().frameDelayMsecProperty())
+        meshManager.rendererSettings.targetFrameTimeMsecProperty.bind(paintera.viewer3D().targetFrameTimeMsecProperty())
         meshManager.rendererSettings.sceneUpdateDelayMsecProperty.bind(paintera.viewer3D().sceneUpdateDelayMsecProperty())
         meshManager.refreshMeshes()
+        startLabelBlockIndexBuilder()
+        startSegmentStatistics(create = false)
 
 
         // TODO make resolution/offset configurable
@@ -366,8 +389,70 @@ class ConnectomicsLabelState<D : IntegerType<D>, T>(
 //		_offsetZ.addListener { _ -> requestRepaint(paintera) }
     }
 
+    private fun startLabelBlockIndexBuilder() {
+        (labelBlockLookup as? LabelBlockLookupWithBackgroundIndex)?.takeUnless { it.isComplete }?.let { lookup ->
+            LOG.info("Building label block index for {} in {}", name, lookup.root)
+            labelBlockIndexBuilder = LabelBlockLookupIndexBuilder.fromSource(source, lookup).also {
+                it.start { level ->
+                    LOG.info("Label block index for {} complete at level {}", name, level)
+                    InvokeOnJavaFXApplicationThread { meshManager.refreshMeshes() }
+                }
+            }
+        }
+    }
+
+    /**
+     * Collect segment statistics after the user confirmed. This reads all blocks of the label data once and creates a
+     * dataset for the statistics next to the label data, from which they are loaded whenever this dataset is opened.
+     *
+     * @return `true` if segment statistics are collected
+     */
+    fun computeSegmentStatistics(): Boolean {
+        if (segmentStatistics == null && confirmComputeSegmentStatistics())
+            startSegmentStatistics(create = true)
+        return segmentStatistics != null
+    }
+
+    private fun confirmComputeSegmentStatistics() = PainteraAlerts.confirmation("_Compute", "_Cancel", true)
+        .also { it.headerText = "Compute segment statistics for $name" }
+        .also {
+            it.dialogPane.content = TextArea(
+                "Segment statistics are computed from all blocks of the label data in the background. " +
+                    "They are stored in a new dataset next to the label data and updated on commit. Proceed?"
+            )
+                .also { it.isEditable = false }
+                .also { it.isWrapText = true }
+        }
+        .showAndWait()
+        .filter { ButtonType.OK == it }
+        .isPresent
+
+    /**
+     * Statistics are only collected automatically if they were collected for this dataset before, scanning all blocks
+     * for the first time must be requested through [computeSegmentStatistics].
+     */
+    private fun startSegmentStatistics(create: Boolean) {
+        if (segmentStatistics != null)
+            return
+        try {
+            val service = backend.createSegmentStatisticsService(source, fragmentSegmentAssignment) ?: return
+            if (!service.store.exists()) {
+                if (!create)
+                    return
+                service.store.create()
+            }
+            segmentStatistics = service.also {
+                it.start { LOG.info("Segment statistics for {} complete", name) }
+            }
+        } catch (e: IOException) {
+            LOG.error("Unable to collect segment statistics for {}", name, e)
+        }
+    }
+
     override fun onRemoval(sourceInfo: SourceInfo) {
         LOG.info("Removed LabelSourceState {}", name)
+        labelBlockIndexBuilder?.cancel()
+        segmentStatistics?.cancel()
         meshManager.removeAllMeshes()
         CommitHandler.showCommitDialog(
             this,
@@ -383,9 +468,15 @@ class ConnectomicsLabelState<D : IntegerType<D>, T>(
             false,
             "_Skip"
         )
+        (source as? MaskedSource<*, *>)?.let {
+            it.closeJournal()
+            it.history.dispose()
+        }
     }
 
     override fun onShutdown(paintera: PainteraBaseView) {
+        labelBlockIndexBuilder?.cancel()
+        segmentStatistics?.cancel()
         CommitHandler.showCommitDialog(
             this,
             paintera.sourceInfo().indexOf(this.dataSource),
@@ -399,6 +490,7 @@ class ConnectomicsLabelState<D : IntegerType<D>, T>(
             false,
             "_Skip"
         )
+        (source as? MaskedSource<*, *>)?.closeJournal()
     }
 
     override fun createKeyAndMouseBindings(): KeyAndMouseBindings {
@@ -609,7 +701,11 @@ class ConnectomicsLabelState<D : IntegerType<D>, T>(
 //		}
 
         // TODO make resolution/offset configurable
-        val metaDataContents = VBox(backendMeta) // , resolutionPane, offsetPane)
+        val computeSegmentStatisticsButton = Button("Compute Segment Statistics").apply {
+            isDisable = segmentStatistics != null
+            onAction = EventHandler { isDisable = computeSegmentStatistics() }
+        }
+        val metaDataContents = VBox(backendMeta, computeSegmentStatisticsButton) // , resolutionPane, offsetPane)
 
         val helpDialog = PainteraAlerts
             .alert(Alert.AlertType.INFORMATION, true).apply {
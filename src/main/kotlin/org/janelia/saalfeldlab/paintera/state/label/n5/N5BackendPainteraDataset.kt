@@ -15,11 +15,14 @@ import org.janelia.saalfeldlab.n5.N5FSWriter
 import org.janelia.saalfeldlab.n5.N5Reader
 import org.janelia.saalfeldlab.n5.N5Writer
 import org.janelia.saalfeldlab.paintera.control.assignment.FragmentSegmentAssignmentOnlyLocal
+import org.janelia.saalfeldlab.paintera.control.assignment.FragmentSegmentAssignmentState
 import org.janelia.saalfeldlab.paintera.control.assignment.FragmentSegmentAssignmentStateWithActionTracker
 import org.janelia.saalfeldlab.paintera.data.DataSource
 import org.janelia.saalfeldlab.paintera.data.mask.Masks
 import org.janelia.saalfeldlab.paintera.data.n5.CommitCanvasN5
 import org.janelia.saalfeldlab.paintera.data.n5.N5DataSourceMetadata
+import org.janelia.saalfeldlab.paintera.data.statistics.SegmentStatisticsService
+import org.janelia.saalfeldlab.paintera.data.statistics.SegmentStatisticsStore
 import org.janelia.saalfeldlab.paintera.id.IdService
 import org.janelia.saalfeldlab.paintera.serialization.GsonExtensions
 import org.janelia.saalfeldlab.paintera.serialization.PainteraSerialization
@@ -89,6 +92,13 @@ class N5BackendPainteraDataset<D, T> constructor(
         } ?: IdService.IdServiceNotProvided()
     }
 
+    override fun createSegmentStatisticsService(source: DataSource<D, T>, assignment: FragmentSegmentAssignmentState): SegmentStatisticsService? {
+        return metadataState.writer.nullable?.let {
+            val store = SegmentStatisticsStore(it, "$dataset/${SegmentStatisticsStore.DATASET}", source.getGrid(0))
+            SegmentStatisticsService.fromN5(it, N5Helpers.getFinestLevelJoinWithGroup(it, "$dataset/data"), store, assignment)
+        }
+    }
+
     companion object {
 
         private val LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass())
@@ -107,7 +117,8 @@ class N5BackendPainteraDataset<D, T> constructor(
             val containerWriter = metadataState.n5ContainerState.writer
             return containerWriter?.let {
                 val tmpDir = Masks.canvasTmpDirDirectorySupplier(projectDirectory)
-                Masks.mask(dataSource, queue, tmpDir.get(), tmpDir, CommitCanvasN5(metadataState), propagationExecutorService)
+                val masked = Masks.mask(dataSource, queue, tmpDir.get(), tmpDir, CommitCanvasN5(metadataState), propagationExecutorService)
+                Masks.withCanvasJournal(masked, projectDirectory, metadataState.n5ContainerState.url, metadataState.dataset)
             } ?: dataSource
         }
 
@@ -97,7 +97,8 @@ class N5BackendSingleScaleDataset<D, T> constructor(
             val dataSource = N5DataSourceMetadata<D, T>(metadataState, name, queue, priority)
             return metadataState.n5ContainerState.writer?.let {
                 val tmpDir = Masks.canvasTmpDirDirectorySupplier(projectDirectory)
-                Masks.mask(dataSource, queue, tmpDir.get(), tmpDir, CommitCanvasN5(metadataState), propagationExecutorService)
+                val masked = Masks.mask(dataSource, queue, tmpDir.get(), tmpDir, CommitCanvasN5(metadataState), propagationExecutorService)
+                Masks.withCanvasJournal(masked, projectDirectory, metadataState.n5ContainerState.url, metadataState.dataset)
             } ?: dataSource
         }
     }
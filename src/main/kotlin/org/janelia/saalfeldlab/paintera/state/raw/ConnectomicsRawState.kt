@@ -49,10 +49,10 @@ class ConnectomicsRawState<D, T>(
 ) : SourceStateWithBackend<D, T>
     where D : RealType<D>, T : AbstractVolatileRealType<D, T> {
 
-    private val converter = ARGBColorConverter.InvertingImp0<T>()
-
     private val source: DataSource<D, T> = backend.createSource(queue, priority, name, resolution, offset)
 
+    private val converter = ARGBColorConverter.createInvertingConverter(source.type)
+
     override fun getDataSource(): DataSource<D, T> = source
 
     override fun converter(): ARGBColorConverter<T> = converter
@@ -0,0 +1,75 @@
+package org.janelia.saalfeldlab.paintera.ui
+
+import javafx.animation.KeyFrame
+import javafx.animation.Timeline
+import javafx.event.EventHandler
+import javafx.scene.control.Label
+import javafx.scene.control.Tooltip
+import javafx.scene.text.Font
+import javafx.util.Duration
+import org.janelia.saalfeldlab.paintera.metrics.MetricsRegistry
+import org.janelia.saalfeldlab.paintera.metrics.MetricsSnapshot
+
+/**
+ * Status bar summary of the [MetricsRegistry], updated every second while visible: mean frame time, volatile cache hit
+ * rate, pending block fetches, block load latency and throughput, and mesh task latency. The tooltip lists all metrics.
+ */
+class MetricsStatusLabel(private val registry: MetricsRegistry = MetricsRegistry.getGlobal()) : Label() {
+
+    private var previous: MetricsSnapshot? = null
+
+    private val refresh = Timeline(KeyFrame(Duration.seconds(1.0), EventHandler { update() })).also { it.cycleCount = Timeline.INDEFINITE }
+
+    private val details = Tooltip().also { it.font = Font.font("Monospaced") }
+
+    init {
+        font = Font.font("Monospaced")
+        tooltip = details
+        visibleProperty().addListener { _, _, isVisible -> if (isVisible) start() else refresh.stop() }
+        if (isVisible) start()
+    }
+
+    private fun start() {
+        previous = registry.snapshot()
+        refresh.play()
+    }
+
+    private fun update() {
+        val current = registry.snapshot()
+        val deltas = current.since(previous).associateBy { it.name }
+        previous = current
+
+        val frames = deltas.values.filter { it.kind == MetricsSnapshot.Kind.TIMER && it.name.startsWith("render.") && !it.name.endsWith(".io") }
+        val hits = deltas["cache.volatile.hit"]?.count ?: 0L
+        val misses = deltas["cache.volatile.miss"]?.count ?: 0L
+        val pending = deltas["fetch.pending"]?.value ?: 0L
+        val load = deltas["fetch.load"]
+        val meshRun = deltas["mesh.worker.run"]
+
+        text = listOf(
+            "frame ${formatMillis(frames.weightedMeanMillis())}",
+            "hit ${if (hits + misses > 0) "%3.0f%%".format(100.0 * hits / (hits + misses)) else "  -"}",
+            "pending %4d".format(pending),
+            "load ${formatMillis(load?.meanMillis ?: Double.NaN)} %4.0f/s".format(load?.ratePerSecond ?: 0.0),
+            "mesh ${formatMillis(meshRun?.meanMillis ?: Double.NaN)}"
+        ).joinToString(" | ")
+
+        details.text = deltas.values.joinToString("\n") {
+            when (it.kind) {
+                MetricsSnapshot.Kind.TIMER -> "%-40s %8.1f/s %s".format(it.name, it.ratePerSecond, formatMillis(it.meanMillis))
+                MetricsSnapshot.Kind.COUNTER -> "%-40s %8.1f/s %d".format(it.name, it.ratePerSecond, it.value)
+                MetricsSnapshot.Kind.GAUGE -> "%-40s %d".format(it.name, it.value)
+            }
+        }
+    }
+
+    companion object {
+
+        private fun List<MetricsSnapshot.Delta>.weightedMeanMillis(): Double {
+            val count = sumOf { it.count }
+            return if (count == 0L) Double.NaN else sumOf { if (it.count > 0) it.meanMillis * it.count else 0.0 } / count
+        }
+
+        private fun formatMillis(millis: Double) = if (millis.isNaN()) "    -  " else "%5.1fms".format(millis)
+    }
+}
@@ -10,9 +10,13 @@ import net.imglib2.cache.Invalidate
 import net.imglib2.cache.img.CachedCellImg
 import net.imglib2.cache.ref.WeakRefVolatileCache
 import net.imglib2.cache.volatiles.CacheHints
+import net.imglib2.cache.volatiles.VolatileCache
 import net.imglib2.img.basictypeaccess.AccessFlags
 import net.imglib2.img.basictypeaccess.volatiles.VolatileArrayDataAccess
+import net.imglib2.img.cell.Cell
 import net.imglib2.type.NativeType
+import java.util.function.Consumer
+import org.janelia.saalfeldlab.paintera.cache.WeakRefVolatileCache as PrefetchingWeakRefVolatileCache
 
 @Deprecated("Use this until cache is exposed in VolatileViews.wrapAsVolatile")
 class TmpVolatileHelpers {
@@ -22,10 +26,12 @@ class TmpVolatileHelpers {
     companion object {
         @Deprecated("Use this until cache is exposed in VolatileViews.wrapAsVolatile", ReplaceWith("VolatileViews.wrapAsVolatile(cachedcellImg, queue, hints)"))
         @JvmStatic
+        @JvmOverloads
         fun <D, T, A> createVolatileCachedCellImgWithInvalidate(
             cachedCellImg: CachedCellImg<D, A>,
             queue: SharedQueue,
             hints: CacheHints,
+            prefetch: Consumer<Long>? = null,
         ): RaiWithInvalidate<T> where D : NativeType<D>, T : NativeType<T>, T : Volatile<D>, A : VolatileArrayDataAccess<A> {
             val dType = cachedCellImg.createLinkedType()
             val tType = VolatileTypeMatcher.getVolatileTypeForType(dType) as T
@@ -38,7 +44,9 @@ class TmpVolatileHelpers {
             val dirty = flags.contains(AccessFlags.DIRTY)
 
             val createInvalid = CreateInvalidVolatileCell.get<T, A>(grid, tType, dirty)
-            val volatileCache = WeakRefVolatileCache(cache, queue, createInvalid)
+            val volatileCache: VolatileCache<Long, Cell<A>> = prefetch
+                ?.let { PrefetchingWeakRefVolatileCache.fromCache(cache, queue, createInvalid, it) }
+                ?: WeakRefVolatileCache(cache, queue, createInvalid)
             val volatileImg = VolatileCachedCellImg(grid, tType, hints, volatileCache)
             return RaiWithInvalidate<T>(volatileImg, volatileCache)
         }
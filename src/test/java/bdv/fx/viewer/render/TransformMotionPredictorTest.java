@@ -0,0 +1,81 @@
+package bdv.fx.viewer.render;
+
+import net.imglib2.realtransform.AffineTransform3D;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+
+public class TransformMotionPredictorTest {
+
+	private static final long MAX_IDLE_NANOS = 1000;
+
+	@Test
+	public void testNoMotion() {
+
+		final TransformMotionPredictor predictor = new TransformMotionPredictor(MAX_IDLE_NANOS);
+		Assert.assertTrue(predictor.predict(3, 0).isEmpty());
+
+		predictor.update(new AffineTransform3D(), 0);
+		Assert.assertTrue(predictor.predict(3, 0).isEmpty());
+
+		// identical transforms do not constitute motion
+		predictor.update(new AffineTransform3D(), 1);
+		Assert.assertTrue(predictor.predict(3, 1).isEmpty());
+	}
+
+	@Test
+	public void testScrollThroughSections() {
+
+		final TransformMotionPredictor predictor = new TransformMotionPredictor(MAX_IDLE_NANOS);
+		final AffineTransform3D transform = new AffineTransform3D();
+		transform.scale(2.0);
+		for (int z = 0; z < 3; ++z) {
+			transform.set(z, 2, 3);
+			predictor.update(transform, z);
+		}
+
+		final List<AffineTransform3D> predicted = predictor.predict(3, 2);
+		Assert.assertEquals(3, predicted.size());
+		for (int step = 0; step < predicted.size(); ++step) {
+			final AffineTransform3D expected = transform.copy();
+			expected.set(2 + step + 1, 2, 3);
+			Assert.assertArrayEquals(expected.getRowPackedCopy(), predicted.get(step).getRowPackedCopy(), 1e-12);
+		}
+
+		// prediction expires when navigation pauses
+		Assert.assertTrue(predictor.predict(3, 2 + MAX_IDLE_NANOS + 1).isEmpty());
+	}
+
+	@Test
+	public void testChangeOfDirection() {
+
+		final TransformMotionPredictor predictor = new TransformMotionPredictor(MAX_IDLE_NANOS);
+		final AffineTransform3D transform = new AffineTransform3D();
+		predictor.update(transform, 0);
+		transform.set(4.0, 0, 3);
+		predictor.update(transform, 1);
+		transform.set(2.0, 0, 3);
+		predictor.update(transform, 2);
+
+		// reversing direction discards the previous motion instead of averaging it out
+		final List<AffineTransform3D> predicted = predictor.predict(1, 2);
+		Assert.assertEquals(1, predicted.size());
+		Assert.assertEquals(0.0, predicted.get(0).get(0, 3), 1e-12);
+	}
+
+	@Test
+	public void testRotationResetsPrediction() {
+
+		final TransformMotionPredictor predictor = new TransformMotionPredictor(MAX_IDLE_NANOS);
+		final AffineTransform3D transform = new AffineTransform3D();
+		predictor.update(transform, 0);
+		transform.set(1.0, 0, 3);
+		predictor.update(transform, 1);
+		Assert.assertEquals(2, predictor.predict(2, 1).size());
+
+		transform.rotate(2, Math.PI / 4);
+		predictor.update(transform, 2);
+		Assert.assertTrue(predictor.predict(2, 2).isEmpty());
+	}
+}
@@ -0,0 +1,79 @@
+package net.imglib2.converter;
+
+import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.volatiles.VolatileUnsignedByteType;
+import net.imglib2.type.volatiles.VolatileUnsignedShortType;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.function.IntFunction;
+
+public class ARGBColorConverterTest {
+
+	@Test
+	public void testUnsignedByteLookupTable() {
+
+		final ARGBColorConverter.InvertingImp0<UnsignedByteType> converter = ARGBColorConverter.createInvertingConverter(new UnsignedByteType());
+		Assert.assertTrue(converter instanceof ARGBColorConverter.InvertingLookupTable);
+		assertSameAsInvertingImp0(converter, 256, UnsignedByteType::new);
+	}
+
+	@Test
+	public void testVolatileUnsignedByteLookupTable() {
+
+		final ARGBColorConverter.InvertingImp0<VolatileUnsignedByteType> converter = ARGBColorConverter.createInvertingConverter(new VolatileUnsignedByteType());
+		Assert.assertTrue(converter instanceof ARGBColorConverter.InvertingLookupTable);
+		assertSameAsInvertingImp0(converter, 256, VolatileUnsignedByteType::new);
+	}
+
+	@Test
+	public void testUnsignedShortLookupTable() {
+
+		final ARGBColorConverter.InvertingImp0<UnsignedShortType> converter = ARGBColorConverter.createInvertingConverter(new UnsignedShortType());
+		Assert.assertTrue(converter instanceof ARGBColorConverter.InvertingLookupTable);
+		assertSameAsInvertingImp0(converter, 65536, UnsignedShortType::new);
+	}
+
+	@Test
+	public void testVolatileUnsignedShortLookupTable() {
+
+		final ARGBColorConverter.InvertingImp0<VolatileUnsignedShortType> converter = ARGBColorConverter.createInvertingConverter(new VolatileUnsignedShortType());
+		Assert.assertTrue(converter instanceof ARGBColorConverter.InvertingLookupTable);
+		assertSameAsInvertingImp0(converter, 65536, VolatileUnsignedShortType::new);
+	}
+
+	private static <R extends RealType<R>> void assertSameAsInvertingImp0(
+			final ARGBColorConverter<R> converter,
+			final int numValues,
+			final IntFunction<R> createValue) {
+
+		final ARGBColorConverter<R> reference = new ARGBColorConverter.InvertingImp0<>();
+		final double[][] minMax = {{0.0, 255.0}, {10.0, 100.0}, {0.0, numValues - 1.0}, {300.0, 200.0}, {5.0, 5.0}};
+		final ARGBType[] colors = {new ARGBType(0xffffffff), new ARGBType(0xff00ff80), new ARGBType(0xff102030)};
+		final double[] alphas = {1.0, 0.5};
+
+		final ARGBType expected = new ARGBType();
+		final ARGBType actual = new ARGBType();
+		for (final double[] mm : minMax)
+			for (final ARGBType color : colors)
+				for (final double alpha : alphas) {
+					// the lookup table has to be updated on every change
+					for (final ARGBColorConverter<R> c : Arrays.asList(converter, reference)) {
+						c.setMin(mm[0]);
+						c.setMax(mm[1]);
+						c.setColor(color);
+						c.alphaProperty().set(alpha);
+					}
+					for (int value = 0; value < numValues; ++value) {
+						final R input = createValue.apply(value);
+						reference.convert(input, expected);
+						converter.convert(input, actual);
+						Assert.assertEquals("value=" + value + " min=" + mm[0] + " max=" + mm[1], expected.get(), actual.get());
+					}
+				}
+	}
+}
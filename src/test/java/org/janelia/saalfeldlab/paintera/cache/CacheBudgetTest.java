@@ -0,0 +1,86 @@
+package org.janelia.saalfeldlab.paintera.cache;
+
+import net.imglib2.cache.ref.SoftRefLoaderCache;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.ExecutionException;
+
+public class CacheBudgetTest {
+
+  @Test
+  public void testNoEvictionWithinBudget() throws ExecutionException {
+
+	final CacheBudget budget = new CacheBudget(1000, 1.0);
+	final AccountedCache<Integer, byte[]> cache = createCache("cache", 1.0, budget);
+	cache.get(300);
+	cache.get(400);
+
+	Assert.assertEquals(700, budget.getEstimatedBytes());
+	Assert.assertEquals(0, budget.enforce());
+	Assert.assertEquals(2, cache.getNumEntries());
+  }
+
+  @Test
+  public void testEvictLeastRecentlyUsed() throws ExecutionException {
+
+	final CacheBudget budget = new CacheBudget(1100, 1.0);
+	final AccountedCache<Integer, byte[]> cache = createCache("cache", 1.0, budget);
+	cache.get(300);
+	budget.tick();
+	cache.get(301);
+	budget.tick();
+	cache.get(302);
+	budget.tick();
+	// access 300 again, 301 is now the least recently used entry
+	cache.get(300);
+	cache.get(303);
+
+	Assert.assertEquals(1206, budget.getEstimatedBytes());
+	Assert.assertEquals(301, budget.enforce());
+	Assert.assertEquals(905, budget.getEstimatedBytes());
+	Assert.assertNull(cache.getIfPresent(301));
+	Assert.assertNotNull(cache.getIfPresent(300));
+  }
+
+  @Test
+  public void testPreferCheapEntries() throws ExecutionException {
+
+	final CacheBudget budget = new CacheBudget(900, 1.0);
+	final AccountedCache<Integer, byte[]> expensive = createCache("expensive", 10.0, budget);
+	final AccountedCache<Integer, byte[]> cheap = createCache("cheap", 1.0, budget);
+	expensive.get(500);
+	budget.tick();
+	cheap.get(500);
+	budget.tick();
+
+	budget.enforce();
+	Assert.assertEquals(1, expensive.getNumEntries());
+	Assert.assertEquals(0, cheap.getNumEntries());
+	Assert.assertEquals(500, budget.getEstimatedBytes());
+  }
+
+  @Test
+  public void testInvalidateUpdatesAccounting() throws ExecutionException {
+
+	final CacheBudget budget = new CacheBudget(1000, 1.0);
+	final AccountedCache<Integer, byte[]> cache = createCache("cache", 1.0, budget);
+	cache.get(100);
+	cache.get(200);
+	cache.invalidate(100);
+	Assert.assertEquals(200, cache.getEstimatedBytes());
+	cache.invalidateAll(Long.MAX_VALUE);
+	Assert.assertEquals(0, cache.getEstimatedBytes());
+	Assert.assertEquals(0, cache.getNumEntries());
+  }
+
+  private static AccountedCache<Integer, byte[]> createCache(final String name, final double reloadCost, final CacheBudget budget) {
+
+	return AccountedCache.register(
+			name,
+			new SoftRefLoaderCache<Integer, byte[]>().withLoader(byte[]::new),
+			bytes -> bytes.length,
+			reloadCost,
+			budget);
+  }
+}
@@ -0,0 +1,101 @@
+package org.janelia.saalfeldlab.paintera.control.selection;
+
+import gnu.trove.set.hash.TLongHashSet;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Random;
+import java.util.Set;
+
+public class PersistentLongSetTest {
+
+  /* one node per level of the trie */
+  private static final int MAX_NODES_PER_CHANGE = 13;
+
+  @Test
+  public void testAgainstHashSet() {
+
+	final Random rng = new Random(1);
+	final TLongHashSet expected = new TLongHashSet();
+	PersistentLongSet set = PersistentLongSet.EMPTY;
+	for (int i = 0; i < 20000; ++i) {
+	  // small range so that ids are added and removed repeatedly, and some ids that differ in the high bits only
+	  final long id = rng.nextBoolean() ? rng.nextInt(2000) : (long)rng.nextInt(4) << 60 | rng.nextInt(8);
+	  final PersistentLongSet previous = set;
+	  if (rng.nextInt(3) == 0) {
+		set = set.remove(id);
+		Assert.assertEquals(expected.remove(id), set != previous);
+	  } else {
+		set = set.add(id);
+		Assert.assertEquals(expected.add(id), set != previous);
+	  }
+	  Assert.assertEquals(expected.size(), set.size());
+	  Assert.assertTrue(set.contains(id) == expected.contains(id));
+	}
+	Assert.assertEquals(expected, new TLongHashSet(set.toArray()));
+	for (long id = -10; id < 2010; ++id)
+	  Assert.assertEquals(expected.contains(id), set.contains(id));
+
+	final PersistentLongSet built = PersistentLongSet.of(expected.toArray());
+	Assert.assertEquals(expected, new TLongHashSet(built.toArray()));
+	for (final long id : expected.toArray())
+	  Assert.assertTrue(built.contains(id));
+  }
+
+  @Test
+  public void testRemovingAllIdsLeavesEmptySet() {
+
+	final long[] ids = new long[1000];
+	for (int i = 0; i < ids.length; ++i)
+	  ids[i] = 3L * i - 500;
+	PersistentLongSet set = PersistentLongSet.of(ids);
+	for (final long id : ids)
+	  set = set.remove(id);
+	Assert.assertTrue(set.isEmpty());
+	Assert.assertEquals(0, set.root.keys.length);
+	Assert.assertEquals(0, set.root.nodes.length);
+  }
+
+  @Test
+  public void testChangesShareUnchangedNodes() {
+
+	for (final int size : new int[]{1000, 1000000}) {
+	  final long[] ids = new long[size];
+	  for (int i = 0; i < size; ++i)
+		ids[i] = i;
+	  final PersistentLongSet set = PersistentLongSet.of(ids);
+	  Assert.assertTrue(numNewNodes(set, set.add(-1)) <= MAX_NODES_PER_CHANGE);
+	  Assert.assertTrue(numNewNodes(set, set.remove(size / 2)) <= MAX_NODES_PER_CHANGE);
+	}
+  }
+
+  /**
+   * @return number of nodes of {@code after} that are not shared with {@code before}, i.e. the nodes that were created
+   * for the change
+   */
+  static int numNewNodes(final PersistentLongSet before, final PersistentLongSet after) {
+
+	final Set<PersistentLongSet.Node> beforeNodes = Collections.newSetFromMap(new IdentityHashMap<>());
+	collect(before.root, beforeNodes);
+	return countNotIn(after.root, beforeNodes);
+  }
+
+  private static void collect(final PersistentLongSet.Node node, final Set<PersistentLongSet.Node> nodes) {
+
+	nodes.add(node);
+	for (final PersistentLongSet.Node child : node.nodes)
+	  collect(child, nodes);
+  }
+
+  private static int countNotIn(final PersistentLongSet.Node node, final Set<PersistentLongSet.Node> nodes) {
+
+	if (nodes.contains(node))
+	  return 0;
+	int count = 1;
+	for (final PersistentLongSet.Node child : node.nodes)
+	  count += countNotIn(child, nodes);
+	return count;
+  }
+}
@@ -0,0 +1,135 @@
+package org.janelia.saalfeldlab.paintera.control.selection;
+
+import gnu.trove.map.hash.TLongLongHashMap;
+import gnu.trove.set.TLongSet;
+import gnu.trove.set.hash.TLongHashSet;
+import org.janelia.saalfeldlab.paintera.control.assignment.FragmentSegmentAssignmentOnlyLocal;
+import org.janelia.saalfeldlab.paintera.control.assignment.action.Merge;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SelectedSegmentsTest {
+
+  private FragmentSegmentAssignmentOnlyLocal assignment;
+
+  private SelectedIds selectedIds;
+
+  private SelectedSegments selectedSegments;
+
+  private FragmentsInSelectedSegments fragmentsInSelectedSegments;
+
+  @Before
+  public void setUp() {
+
+	// fragments 1, 2, 3 belong to segment 10, fragment 4 belongs to segment 20, fragment 5 is not assigned
+	final TLongLongHashMap lut = new TLongLongHashMap(new long[]{1, 2, 3, 4}, new long[]{10, 10, 10, 20});
+	assignment = new FragmentSegmentAssignmentOnlyLocal(() -> lut, FragmentSegmentAssignmentOnlyLocal.doesNotPersist("test"));
+	selectedIds = new SelectedIds();
+	selectedSegments = new SelectedSegments(selectedIds, assignment);
+	fragmentsInSelectedSegments = new FragmentsInSelectedSegments(selectedSegments);
+  }
+
+  @Test
+  public void testIncrementalUpdates() {
+
+	assertSelection(new long[]{}, new long[]{});
+
+	selectedIds.activateAlso(1);
+	assertSelection(new long[]{10}, new long[]{1, 2, 3});
+
+	selectedIds.activateAlso(2, 5);
+	assertSelection(new long[]{10, 5}, new long[]{1, 2, 3, 5});
+
+	// segment 10 remains selected as long as one of its fragments is selected
+	selectedIds.deactivate(1);
+	assertSelection(new long[]{10, 5}, new long[]{1, 2, 3, 5});
+
+	selectedIds.deactivate(2);
+	assertSelection(new long[]{5}, new long[]{5});
+
+	selectedIds.activateAlso(4);
+	assertSelection(new long[]{5, 20}, new long[]{4, 5});
+
+	// no-op changes
+	selectedIds.activateAlso(4);
+	selectedIds.deactivate(3);
+	assertSelection(new long[]{5, 20}, new long[]{4, 5});
+
+	selectedIds.activate(3);
+	assertSelection(new long[]{10}, new long[]{1, 2, 3});
+
+	selectedIds.deactivateAll();
+	assertSelection(new long[]{}, new long[]{});
+  }
+
+  @Test
+  public void testAssignmentChange() {
+
+	selectedIds.activateAlso(4);
+	assertSelection(new long[]{20}, new long[]{4});
+
+	assignment.apply(new Merge(4, 1, 10));
+	assertSelection(new long[]{10}, new long[]{1, 2, 3, 4});
+
+	selectedIds.deactivate(4);
+	assertSelection(new long[]{}, new long[]{});
+  }
+
+  @Test
+  public void testSnapshotsAreNotModified() {
+
+	selectedIds.activateAlso(1);
+	final TLongSet activeIds = selectedIds.getActiveIds();
+	final TLongSet segments = selectedSegments.getSelectedSegments();
+	selectedIds.activateAlso(4);
+	Assert.assertEquals(new TLongHashSet(new long[]{1}), new TLongHashSet(activeIds));
+	Assert.assertEquals(new TLongHashSet(new long[]{10}), new TLongHashSet(segments));
+  }
+
+  @Test
+  public void testSingleIdChangesDoNotCopyTheSelection() {
+
+	for (final int size : new int[]{1000, 1000000}) {
+	  final long[] ids = new long[size];
+	  for (int i = 0; i < size; ++i)
+		ids[i] = 100 + i;
+	  selectedIds.activate(ids);
+
+	  final SelectionSnapshot idsBefore = selectedIds.getSnapshot();
+	  final SelectionSnapshot segmentsBefore = selectedSegments.getSnapshot();
+	  final SelectionSnapshot fragmentsBefore = fragmentsInSelectedSegments.getSnapshot();
+	  // fragment 4 of segment 20
+	  selectedIds.activateAlso(4);
+	  assertSharesUnchangedNodes(idsBefore, selectedIds.getSnapshot());
+	  assertSharesUnchangedNodes(segmentsBefore, selectedSegments.getSnapshot());
+	  assertSharesUnchangedNodes(fragmentsBefore, fragmentsInSelectedSegments.getSnapshot());
+	  Assert.assertTrue(selectedSegments.isSegmentSelected(20));
+	  Assert.assertTrue(fragmentsInSelectedSegments.contains(4));
+
+	  final SelectionSnapshot idsBeforeDeactivate = selectedIds.getSnapshot();
+	  selectedIds.deactivate(100 + size / 2);
+	  assertSharesUnchangedNodes(idsBeforeDeactivate, selectedIds.getSnapshot());
+	  Assert.assertFalse(selectedSegments.isSegmentSelected(100 + size / 2));
+	  Assert.assertFalse(fragmentsInSelectedSegments.contains(100 + size / 2));
+	  Assert.assertEquals(size, fragmentsInSelectedSegments.getFragments().length);
+	}
+  }
+
+  private static void assertSharesUnchangedNodes(final SelectionSnapshot before, final SelectionSnapshot after) {
+
+	Assert.assertTrue(after.isIncrementalUpdateOf(before));
+	// the cost of a single change does not depend on the size of the selection
+	Assert.assertTrue(PersistentLongSetTest.numNewNodes(before.getIds(), after.getIds()) <= 13);
+  }
+
+  private void assertSelection(final long[] expectedSegments, final long[] expectedFragments) {
+
+	Assert.assertEquals(new TLongHashSet(expectedSegments), new TLongHashSet(selectedSegments.getSelectedSegmentsCopyAsArray()));
+	Assert.assertEquals(new TLongHashSet(expectedFragments), new TLongHashSet(fragmentsInSelectedSegments.getFragments()));
+	for (final long segment : expectedSegments)
+	  Assert.assertTrue(selectedSegments.isSegmentSelected(segment));
+	for (final long fragment : expectedFragments)
+	  Assert.assertTrue(fragmentsInSelectedSegments.contains(fragment));
+  }
+}
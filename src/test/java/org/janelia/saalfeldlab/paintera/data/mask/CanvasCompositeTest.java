@@ -0,0 +1,133 @@
+package org.janelia.saalfeldlab.paintera.data.mask;
+
+import gnu.trove.set.TLongSet;
+import gnu.trove.set.hash.TLongHashSet;
+import net.imglib2.RealRandomAccess;
+import net.imglib2.RealRandomAccessible;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.LongArray;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.interpolation.randomaccess.NearestNeighborInterpolatorFactory;
+import net.imglib2.type.label.Label;
+import net.imglib2.type.numeric.integer.UnsignedLongType;
+import net.imglib2.util.IntervalIndexer;
+import net.imglib2.view.RealRandomAccessibleTriple;
+import net.imglib2.view.Views;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CanvasCompositeTest {
+
+  private static final long[] DIMS = {8, 6};
+
+  private static final CellGrid GRID = new CellGrid(DIMS, new int[]{4, 3});
+
+  private static final long BACKGROUND = 1;
+
+  private static final long PAINTED = 2;
+
+  private static final long MASK = 3;
+
+  @Test
+  public void testUntouchedCellsShowBackground() {
+
+	final ArrayImg<UnsignedLongType, LongArray> canvas = canvas();
+	// canvas holds a label in cell 0 but the cell is not marked as touched and must not be read
+	final TLongSet touched = new TLongHashSet();
+	final RealRandomAccessible<UnsignedLongType> composite = composite(canvas, null, touched);
+
+	final RealRandomAccess<UnsignedLongType> access = composite.realRandomAccess();
+	for (long y = 0; y < DIMS[1]; ++y)
+	  for (long x = 0; x < DIMS[0]; ++x) {
+		access.setPosition(new double[]{x, y});
+		Assert.assertEquals(BACKGROUND, access.get().getIntegerLong());
+	  }
+  }
+
+  @Test
+  public void testSameAsPickOne() {
+
+	final ArrayImg<UnsignedLongType, LongArray> canvas = canvas();
+	final ArrayImg<UnsignedLongType, LongArray> mask = ArrayImgs.unsignedLongs(DIMS);
+	mask.forEach(m -> m.set(Label.INVALID));
+	// mask overlaps painted and unpainted cells
+	Views.interval(mask, new long[]{2, 2}, new long[]{5, 3}).forEach(m -> m.set(MASK));
+
+	final TLongSet touched = new TLongHashSet();
+	touched.add(0);
+
+	final RealRandomAccessible<UnsignedLongType> composite = composite(canvas, mask, touched);
+	final RealRandomAccessible<UnsignedLongType> reference = new PickOne<>(
+			new RealRandomAccessibleTriple<>(background(), interpolate(canvas), interpolate(mask)),
+			pac());
+
+	final RealRandomAccess<UnsignedLongType> access = composite.realRandomAccess();
+	final RealRandomAccess<UnsignedLongType> referenceAccess = reference.realRandomAccess();
+	for (double y = -0.25; y < DIMS[1] - 0.5; y += 0.5)
+	  for (double x = -0.25; x < DIMS[0] - 0.5; x += 0.5) {
+		access.setPosition(new double[]{x, y});
+		referenceAccess.setPosition(access);
+		Assert.assertEquals("x=" + x + " y=" + y, referenceAccess.get().getIntegerLong(), access.get().getIntegerLong());
+	  }
+
+	access.setPosition(new double[]{1, 1});
+	Assert.assertEquals(PAINTED, access.get().getIntegerLong());
+	access.setPosition(new double[]{4, 2});
+	Assert.assertEquals(MASK, access.get().getIntegerLong());
+	access.setPosition(new double[]{7, 5});
+	Assert.assertEquals(BACKGROUND, access.get().getIntegerLong());
+  }
+
+  /**
+   * Canvas with {@link #PAINTED} in the first cell and {@link Label#INVALID} everywhere else.
+   */
+  private static ArrayImg<UnsignedLongType, LongArray> canvas() {
+
+	final ArrayImg<UnsignedLongType, LongArray> canvas = ArrayImgs.unsignedLongs(DIMS);
+	final long[] position = new long[2];
+	final long[] cellPosition = new long[2];
+	final long[] storage = canvas.update(null).getCurrentStorageArray();
+	for (int i = 0; i < storage.length; ++i) {
+	  IntervalIndexer.indexToPosition(i, DIMS, position);
+	  GRID.getCellPosition(position, cellPosition);
+	  storage[i] = IntervalIndexer.positionToIndex(cellPosition, GRID.getGridDimensions()) == 0 ? PAINTED : Label.INVALID;
+	}
+	return canvas;
+  }
+
+  private static RealRandomAccessible<UnsignedLongType> composite(
+		  final ArrayImg<UnsignedLongType, LongArray> canvas,
+		  final ArrayImg<UnsignedLongType, LongArray> mask,
+		  final TLongSet touched) {
+
+	return new CanvasComposite<>(
+			background(),
+			Views.extendValue(canvas, new UnsignedLongType(Label.INVALID)),
+			mask == null ? null : interpolate(mask),
+			CanvasComposite.UNSIGNED_LONG,
+			GRID,
+			touched,
+			pac());
+  }
+
+  private static PickOneAllIntegerTypes<UnsignedLongType, UnsignedLongType> pac() {
+
+	return new PickOneAllIntegerTypes<>(
+			Label::regular,
+			(l1, l2) -> l2 != Label.TRANSPARENT && Label.regular(l1),
+			new UnsignedLongType());
+  }
+
+  private static RealRandomAccessible<UnsignedLongType> background() {
+
+	final ArrayImg<UnsignedLongType, LongArray> background = ArrayImgs.unsignedLongs(DIMS);
+	background.forEach(b -> b.set(BACKGROUND));
+	return interpolate(background);
+  }
+
+  private static RealRandomAccessible<UnsignedLongType> interpolate(final ArrayImg<UnsignedLongType, LongArray> img) {
+
+	return Views.interpolate(Views.extendValue(img, new UnsignedLongType(Label.INVALID)), new NearestNeighborInterpolatorFactory<>());
+  }
+}
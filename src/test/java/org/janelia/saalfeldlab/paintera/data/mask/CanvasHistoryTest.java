@@ -0,0 +1,141 @@
+package org.janelia.saalfeldlab.paintera.data.mask;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class CanvasHistoryTest {
+
+  private static final long EMPTY = -1;
+
+  private static final int CELL_SIZE = 8;
+
+  /**
+   * Single-cell canvas, restoring a step swaps its snapshot with the canvas content.
+   */
+  private final long[] canvas = filled(EMPTY);
+
+  private final List<List<CanvasHistory.Step>> restored = new ArrayList<>();
+
+  private boolean isBusy = false;
+
+  private final CanvasHistory history = new CanvasHistory(() -> "test", steps -> {
+	if (isBusy)
+	  return false;
+	restored.add(steps);
+	for (final CanvasHistory.Step step : steps)
+	  for (final CanvasHistory.Cell cell : step.getCells())
+		System.arraycopy(cell.swap(canvas.clone(), EMPTY), 0, canvas, 0, canvas.length);
+	return true;
+  }, Runnable::run);
+
+  @Test
+  public void testUndoRedo() {
+
+	paint(1);
+	paint(2);
+	paint(3);
+	Assert.assertArrayEquals(filled(3), canvas);
+
+	Assert.assertTrue(history.undo());
+	Assert.assertArrayEquals(filled(2), canvas);
+	Assert.assertTrue(history.undo());
+	Assert.assertArrayEquals(filled(1), canvas);
+	Assert.assertTrue(history.undo());
+	Assert.assertArrayEquals(filled(EMPTY), canvas);
+	Assert.assertFalse(history.undo());
+
+	Assert.assertTrue(history.redo());
+	Assert.assertArrayEquals(filled(1), canvas);
+	Assert.assertTrue(history.redo());
+	Assert.assertArrayEquals(filled(2), canvas);
+
+	// painting discards undone steps
+	paint(4);
+	Assert.assertEquals(3, history.events().size());
+	Assert.assertFalse(history.redo());
+	Assert.assertTrue(history.undo());
+	Assert.assertArrayEquals(filled(2), canvas);
+  }
+
+  @Test
+  public void testToggleKeepsHistoryConsistent() {
+
+	paint(1);
+	paint(2);
+	paint(3);
+
+	// undoing the first step undoes all later steps, most recent first
+	history.events().get(0).getValue().set(false);
+	Assert.assertArrayEquals(filled(EMPTY), canvas);
+	Assert.assertEquals(3, restored.get(0).size());
+	Assert.assertEquals(3, restored.get(0).get(0).label);
+	history.events().forEach(e -> Assert.assertFalse(e.getValue().get()));
+
+	// redoing the second step redoes the first step as well
+	history.events().get(1).getValue().set(true);
+	Assert.assertArrayEquals(filled(2), canvas);
+	Assert.assertTrue(history.events().get(0).getValue().get());
+	Assert.assertFalse(history.events().get(2).getValue().get());
+  }
+
+  @Test
+  public void testBusyCanvasRevertsToggle() {
+
+	paint(1);
+	isBusy = true;
+	Assert.assertFalse(history.undo());
+	Assert.assertTrue(history.events().get(0).getValue().get());
+	Assert.assertArrayEquals(filled(1), canvas);
+  }
+
+  @Test
+  public void testBounded() {
+
+	history.setMaxSteps(2);
+	paint(1);
+	paint(2);
+	paint(3);
+	Assert.assertEquals(2, history.events().size());
+	Assert.assertEquals(2, history.events().get(0).getKey().label);
+
+	history.setMaxBytes(0);
+	Assert.assertTrue(history.events().isEmpty());
+	Assert.assertEquals(0, history.getEstimatedBytes());
+  }
+
+  @Test
+  public void testPublishesEvents() {
+
+	final List<Runnable> pending = new ArrayList<>();
+	final CanvasHistory deferred = new CanvasHistory(() -> "deferred", steps -> true, pending::add);
+	deferred.add(new CanvasHistory.Step(1, 0, new ArrayList<>(List.of(new CanvasHistory.Cell(0, 0, CELL_SIZE)))));
+	Assert.assertTrue(deferred.events().isEmpty());
+	Assert.assertEquals(1, deferred.getNumEntries());
+	pending.forEach(Runnable::run);
+	Assert.assertEquals(1, deferred.events().size());
+
+	deferred.dispose();
+	pending.forEach(Runnable::run);
+	Assert.assertTrue(deferred.events().isEmpty());
+	Assert.assertEquals(0, deferred.getNumEntries());
+  }
+
+  private void paint(final long label) {
+
+	final boolean isEmpty = Arrays.stream(canvas).allMatch(v -> v == EMPTY);
+	final CanvasHistory.Cell cell = isEmpty ? new CanvasHistory.Cell(0, 0, canvas.length) : new CanvasHistory.Cell(0, 0, canvas.clone());
+	Arrays.fill(canvas, label);
+	history.add(new CanvasHistory.Step(label, 0, new ArrayList<>(List.of(cell))));
+  }
+
+  private static long[] filled(final long value) {
+
+	final long[] data = new long[CELL_SIZE];
+	Arrays.fill(data, value);
+	return data;
+  }
+}
@@ -0,0 +1,124 @@
+package org.janelia.saalfeldlab.paintera.data.mask;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+public class CanvasJournalTest {
+
+  private Path path;
+
+  @Before
+  public void setUp() throws IOException {
+
+	path = Files.createTempDirectory("canvas-journal-").resolve("journal");
+	path.toFile().deleteOnExit();
+	path.getParent().toFile().deleteOnExit();
+  }
+
+  @Test
+  public void testReplayKeepsLatestEntries() throws IOException, InterruptedException {
+
+	try (final CanvasJournal journal = new CanvasJournal(path)) {
+	  journal.append(List.of(entry(1, 0, 3, 10), entry(1, 1, 0, 11)));
+	  journal.append(List.of(entry(2, 0, 3, 20)));
+	  journal.append(List.of(entry(1, 0, 3, 30)));
+	  journal.flush();
+	}
+
+	final List<CanvasJournal.Entry> replayed = replay();
+	Assert.assertEquals(3, replayed.size());
+	assertEntry(replayed.get(0), 1, 1, 0, 11);
+	assertEntry(replayed.get(1), 2, 0, 3, 20);
+	assertEntry(replayed.get(2), 1, 0, 3, 30);
+
+	// superseded entries were compacted away
+	Assert.assertEquals(3, replay().size());
+  }
+
+  @Test
+  public void testTornTailIsTruncated() throws IOException, InterruptedException {
+
+	try (final CanvasJournal journal = new CanvasJournal(path)) {
+	  journal.append(List.of(entry(1, 0, 0, 1)));
+	  journal.flush();
+	  journal.append(List.of(entry(1, 0, 1, 2)));
+	  journal.flush();
+	}
+
+	final long size = Files.size(path);
+	try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+	  channel.truncate(size - 3);
+	}
+
+	final List<CanvasJournal.Entry> replayed = replay();
+	Assert.assertEquals(1, replayed.size());
+	assertEntry(replayed.get(0), 1, 0, 0, 1);
+
+	try (final CanvasJournal journal = new CanvasJournal(path)) {
+	  journal.append(List.of(entry(1, 0, 2, 3)));
+	  journal.flush();
+	}
+	Assert.assertEquals(2, replay().size());
+  }
+
+  @Test
+  public void testReset() throws IOException, InterruptedException {
+
+	try (final CanvasJournal journal = new CanvasJournal(path)) {
+	  journal.append(List.of(entry(1, 0, 0, 1)));
+	  journal.reset();
+	  journal.append(List.of(entry(1, 0, 1, 2)));
+	  journal.flush();
+	}
+	final List<CanvasJournal.Entry> replayed = replay();
+	Assert.assertEquals(1, replayed.size());
+	assertEntry(replayed.get(0), 1, 0, 1, 2);
+  }
+
+  @Test
+  public void testResetAfterClose() throws IOException {
+
+	final CanvasJournal journal = new CanvasJournal(path);
+	journal.append(List.of(entry(1, 0, 0, 1)));
+	journal.close();
+	Assert.assertEquals(1, replay().size());
+
+	// a commit that finishes after the source was removed still discards the journal
+	journal.reset();
+	Assert.assertEquals(0, replay().size());
+  }
+
+  private List<CanvasJournal.Entry> replay() throws IOException {
+
+	final List<CanvasJournal.Entry> entries = new ArrayList<>();
+	try (final CanvasJournal journal = new CanvasJournal(path)) {
+	  journal.replay(entries::add);
+	}
+	return entries;
+  }
+
+  private static CanvasJournal.Entry entry(final long label, final int level, final long cell, final long value) {
+
+	final long[] data = new long[4 * 4 * 4];
+	for (int i = 0; i < data.length; ++i)
+	  data[i] = i % 2 == 0 ? value : Long.MAX_VALUE;
+	return new CanvasJournal.Entry(label, level, cell, data);
+  }
+
+  private static void assertEntry(final CanvasJournal.Entry entry, final long label, final int level, final long cell, final long value) {
+
+	Assert.assertEquals(label, entry.label);
+	Assert.assertEquals(level, entry.level);
+	Assert.assertEquals(cell, entry.cell);
+	Assert.assertArrayEquals(entry(label, level, cell, value).data, entry.data);
+  }
+}
@@ -0,0 +1,97 @@
+package org.janelia.saalfeldlab.paintera.data.n5;
+
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessible;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.cache.img.CachedCellImg;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.IntArray;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.type.numeric.integer.IntType;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.composite.RealComposite;
+import org.janelia.saalfeldlab.n5.N5FSWriter;
+import org.janelia.saalfeldlab.n5.RawCompression;
+import org.janelia.saalfeldlab.n5.imglib2.N5Utils;
+import org.janelia.saalfeldlab.util.n5.N5TestUtil;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+
+public class InterleavedChannelLoaderTest {
+
+  private static final long[] DIMENSIONS = {5, 4, 3, 4};
+
+  private static final int CHANNEL_DIMENSION = 3;
+
+  @Test
+  public void testInterleave() {
+
+	final ArrayImg<IntType, IntArray> source = source();
+	final long[] channels = {3, 1};
+	final CachedCellImg<IntType, ?> interleaved = InterleavedChannelLoader.interleave(source, CHANNEL_DIMENSION, channels, "test");
+	assertInterleaved(source, channels, interleaved);
+  }
+
+  @Test
+  public void testInterleaveN5() throws IOException {
+
+	final ArrayImg<IntType, IntArray> source = source();
+	final N5FSWriter writer = N5TestUtil.fileSystemWriterAtTmpDir();
+	// blocks at the border are truncated, and the channels are spread over two blocks
+	N5Utils.save(source, writer, "data", new int[]{2, 3, 2, 3}, new RawCompression());
+
+	final long[] channels = {3, 1};
+	final CachedCellImg<IntType, ?> interleaved = InterleavedChannelLoader.interleave(writer, "data", CHANNEL_DIMENSION, channels, "test");
+	assertInterleaved(source, channels, interleaved);
+	final int[] cellDimensions = new int[4];
+	interleaved.getCellGrid().cellDimensions(cellDimensions);
+	Assert.assertArrayEquals(new int[]{2, 2, 3, 2}, cellDimensions);
+  }
+
+  private static ArrayImg<IntType, IntArray> source() {
+
+	final ArrayImg<IntType, IntArray> source = ArrayImgs.ints(DIMENSIONS);
+	int value = 0;
+	for (final IntType t : source)
+	  t.set(value++);
+	return source;
+  }
+
+  private static void assertInterleaved(
+		  final ArrayImg<IntType, IntArray> source,
+		  final long[] channels,
+		  final CachedCellImg<IntType, ?> interleaved) {
+
+	Assert.assertArrayEquals(new long[]{2, 5, 4, 3}, Intervals.dimensionsAsLongArray(interleaved));
+	Assert.assertArrayEquals(new long[]{5, 4, 3}, Intervals.dimensionsAsLongArray(InterleavedChannelLoader.spatialInterval(interleaved)));
+
+	// all channels of a voxel are in the same cell
+	final CellGrid grid = interleaved.getCellGrid();
+	Assert.assertEquals(channels.length, grid.cellDimension(0));
+	Assert.assertEquals(1, grid.gridDimension(0));
+
+	final RandomAccess<IntType> sourceAccess = source.randomAccess();
+	final RandomAccessible<RealComposite<IntType>> collapsed = InterleavedChannelLoader.collapseChannels(interleaved, new IntType(-1));
+	final RandomAccess<RealComposite<IntType>> collapsedAccess = collapsed.randomAccess();
+	for (int z = 0; z < DIMENSIONS[2]; ++z)
+	  for (int y = 0; y < DIMENSIONS[1]; ++y)
+		for (int x = 0; x < DIMENSIONS[0]; ++x) {
+		  collapsedAccess.setPosition(new long[]{x, y, z});
+		  for (int c = 0; c < channels.length; ++c) {
+			sourceAccess.setPosition(new long[]{x, y, z, channels[c]});
+			Assert.assertEquals(sourceAccess.get().get(), collapsedAccess.get().get(c).get());
+			final RandomAccessibleInterval<IntType> channel = InterleavedChannelLoader.channel(interleaved, c);
+			final RandomAccess<IntType> channelAccess = channel.randomAccess();
+			channelAccess.setPosition(new long[]{x, y, z});
+			Assert.assertEquals(sourceAccess.get().get(), channelAccess.get().get());
+		  }
+		}
+
+	collapsedAccess.setPosition(new long[]{-1, 0, 0});
+	Assert.assertEquals(-1, collapsedAccess.get().get(0).get());
+	Assert.assertEquals(-1, collapsedAccess.get().get(1).get());
+  }
+}
@@ -0,0 +1,134 @@
+package org.janelia.saalfeldlab.paintera.data.statistics;
+
+import gnu.trove.map.TLongObjectMap;
+import gnu.trove.map.hash.TLongLongHashMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.LongArray;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.type.numeric.integer.UnsignedLongType;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+import org.janelia.saalfeldlab.n5.N5FSWriter;
+import org.janelia.saalfeldlab.n5.RawCompression;
+import org.janelia.saalfeldlab.n5.imglib2.N5Utils;
+import org.janelia.saalfeldlab.paintera.control.assignment.FragmentSegmentAssignmentOnlyLocal;
+import org.janelia.saalfeldlab.paintera.data.mask.persist.PersistCanvas;
+import org.janelia.saalfeldlab.util.n5.N5Helpers;
+import org.janelia.saalfeldlab.util.n5.N5TestUtil;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+
+public class SegmentStatisticsServiceTest {
+
+  private static final long[] DIMS = {24, 20, 16};
+
+  private static final int[] BLOCK_SIZE = {8, 8, 8};
+
+  private N5FSWriter writer;
+
+  private ArrayImg<UnsignedLongType, LongArray> labels;
+
+  private RandomAccessibleInterval<UnsignedLongType> data;
+
+  private CellGrid grid;
+
+  private FragmentSegmentAssignmentOnlyLocal assignment;
+
+  @Before
+  public void setup() throws Exception {
+
+	writer = N5TestUtil.fileSystemWriterAtTmpDir();
+	labels = ArrayImgs.unsignedLongs(DIMS);
+	// fragments are slabs along x, fragment 0 is background
+	for (final Cursor<UnsignedLongType> c = labels.localizingCursor(); c.hasNext(); ) {
+	  c.fwd();
+	  c.get().set(c.getLongPosition(0) / 5);
+	}
+	N5Utils.save(labels, writer, "volume/s0", BLOCK_SIZE, new RawCompression());
+	data = N5Utils.open(writer, "volume/s0");
+	grid = N5Helpers.getGrid(writer, "volume/s0");
+	// fragments 1 and 2 belong to segment 10
+	final TLongLongHashMap lut = new TLongLongHashMap(new long[]{1, 2}, new long[]{10, 10});
+	assignment = new FragmentSegmentAssignmentOnlyLocal(() -> lut, FragmentSegmentAssignmentOnlyLocal.doesNotPersist("test"));
+  }
+
+  @Test
+  public void testScan() throws Exception {
+
+	final SegmentStatisticsService service = new SegmentStatisticsService(data, store(), assignment, 3, 4);
+	Assert.assertNull(service.getFragmentStatistics(1));
+	service.scan();
+
+	Assert.assertTrue(service.isComplete());
+	Assert.assertNull(service.getFragmentStatistics(0));
+	assertStatistics(service, 1, 5, 9);
+	assertStatistics(service, 4, 20, 23);
+	final LabelStatistics segment = service.getSegmentStatistics(10);
+	Assert.assertEquals(10 * 20 * 16, segment.getCount());
+	Assert.assertArrayEquals(new long[]{5, 0, 0}, Intervals.minAsLongArray(segment.getBoundingBox()));
+	Assert.assertArrayEquals(new long[]{14, 19, 15}, Intervals.maxAsLongArray(segment.getBoundingBox()));
+	Assert.assertArrayEquals(new double[]{9.5, 9.5, 7.5}, segment.getCentroid(), 1e-9);
+  }
+
+  @Test
+  public void testReadFromStore() throws Exception {
+
+	new SegmentStatisticsService(data, store(), assignment, 3, 4).scan();
+	Assert.assertTrue(SegmentStatisticsStore.exists(writer, "volume"));
+
+	// statistics are read from the store and not computed from the (empty) data again
+	final SegmentStatisticsService service = new SegmentStatisticsService(ArrayImgs.unsignedLongs(DIMS), store(), assignment, 3, 4);
+	service.scan();
+	assertStatistics(service, 1, 5, 9);
+	assertStatistics(service, 4, 20, 23);
+  }
+
+  @Test
+  public void testUpdate() throws Exception {
+
+	final SegmentStatisticsService service = new SegmentStatisticsService(labels, store(), assignment, 3, 4);
+	service.scan();
+	final LabelStatistics before = service.getSegmentStatistics(10);
+
+	// relabel fragment 2 to fragment 3, all affected blocks are at grid position 1 along x
+	for (final UnsignedLongType t : Views.interval(labels, new long[]{10, 0, 0}, new long[]{14, 19, 15}))
+	  t.set(3);
+	final TLongObjectMap<PersistCanvas.BlockDiff> blockDiffs = new TLongObjectHashMap<>();
+	final long[] blocks = {1, 4, 7, 10, 13, 16};
+	for (final long block : blocks)
+	  blockDiffs.put(block, new PersistCanvas.BlockDiff());
+	// statistics that were computed while committing are used as is
+	blockDiffs.get(1).setLabelStatistics(SegmentStatisticsService.computeBlockStatistics(
+			Views.interval(labels, SegmentStatisticsService.blockInterval(grid, 1))));
+	service.update(blockDiffs).get();
+
+	assertStatistics(service, 1, 5, 9);
+	assertStatistics(service, 3, 10, 19);
+	Assert.assertNull(service.getFragmentStatistics(2));
+	Assert.assertEquals(10 * 20 * 16, before.getCount());
+	Assert.assertEquals(5 * 20 * 16, service.getSegmentStatistics(10).getCount());
+  }
+
+  private SegmentStatisticsStore store() throws IOException {
+
+	final SegmentStatisticsStore store = new SegmentStatisticsStore(writer, "volume/" + SegmentStatisticsStore.DATASET, grid);
+	store.create();
+	return store;
+  }
+
+  private static void assertStatistics(final SegmentStatisticsService service, final long fragment, final long minX, final long maxX) {
+
+	final LabelStatistics statistics = service.getFragmentStatistics(fragment);
+	Assert.assertEquals((maxX - minX + 1) * DIMS[1] * DIMS[2], statistics.getCount());
+	Assert.assertArrayEquals(new long[]{minX, 0, 0}, Intervals.minAsLongArray(statistics.getBoundingBox()));
+	Assert.assertArrayEquals(new long[]{maxX, DIMS[1] - 1, DIMS[2] - 1}, Intervals.maxAsLongArray(statistics.getBoundingBox()));
+	Assert.assertArrayEquals(new double[]{(minX + maxX) / 2.0, (DIMS[1] - 1) / 2.0, (DIMS[2] - 1) / 2.0}, statistics.getCentroid(), 1e-9);
+  }
+}
@@ -0,0 +1,225 @@
+package org.janelia.saalfeldlab.paintera.headless;
+
+import gnu.trove.set.TLongSet;
+import gnu.trove.set.hash.TLongHashSet;
+import net.imglib2.Cursor;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.LongArray;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.type.label.Label;
+import net.imglib2.type.numeric.integer.UnsignedLongType;
+import net.imglib2.util.IntervalIndexer;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+import org.janelia.saalfeldlab.labels.blocks.LabelBlockLookupKey;
+import org.janelia.saalfeldlab.n5.DataType;
+import org.janelia.saalfeldlab.n5.DatasetAttributes;
+import org.janelia.saalfeldlab.n5.LongArrayDataBlock;
+import org.janelia.saalfeldlab.n5.N5FSWriter;
+import org.janelia.saalfeldlab.n5.RawCompression;
+import org.janelia.saalfeldlab.n5.imglib2.N5Utils;
+import org.janelia.saalfeldlab.util.grids.LabelBlockLookupWithBackgroundIndex;
+import org.janelia.saalfeldlab.util.n5.N5Helpers;
+import org.janelia.saalfeldlab.util.n5.N5TestUtil;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class PainteraHeadlessTest {
+
+  private static final String GROUP = "labels";
+
+  private static final String CANVAS = "canvas";
+
+  private static final long[][] DIMS = {{16, 16, 8}, {8, 8, 4}};
+
+  private static final int[][] BLOCK_SIZES = {{8, 8, 8}, {4, 4, 4}};
+
+  private N5FSWriter writer;
+
+  @Before
+  public void setup() throws IOException {
+
+	writer = N5TestUtil.fileSystemWriterAtTmpDir();
+	writer.createGroup(GROUP);
+	writer.setAttribute(GROUP, N5Helpers.MULTI_SCALE_KEY, true);
+	N5Utils.save(labels(DIMS[0], 4), writer, GROUP + "/s0", BLOCK_SIZES[0], new RawCompression());
+	// s1 is empty and must be filled by downsampling
+	writer.createDataset(GROUP + "/s1", DIMS[1], BLOCK_SIZES[1], DataType.UINT64, new RawCompression());
+	writer.setAttribute(GROUP + "/s1", N5Helpers.DOWNSAMPLING_FACTORS_KEY, new double[]{2.0, 2.0, 2.0});
+  }
+
+  @Test
+  public void testIsHeadlessCommand() {
+
+	Assert.assertTrue(PainteraHeadless.isHeadlessCommand("downsample", "--container", "c"));
+	Assert.assertTrue(PainteraHeadless.isHeadlessCommand("export-meshes"));
+	Assert.assertFalse(PainteraHeadless.isHeadlessCommand());
+	Assert.assertFalse(PainteraHeadless.isHeadlessCommand("/path/to/project"));
+	Assert.assertFalse(PainteraHeadless.isHeadlessCommand("--width", "800"));
+  }
+
+  @Test
+  public void testDownsampleAndBuildLabelBlockLookup() throws IOException {
+
+	Assert.assertEquals(0, PainteraHeadless.execute(
+			"downsample",
+			"--container", writer.getBasePath(),
+			"--dataset", GROUP,
+			"--num-threads", "3"));
+
+	final ArrayImg<UnsignedLongType, LongArray> expected = labels(DIMS[1], 2);
+	final RandomAccessibleInterval<UnsignedLongType> downsampled = N5Utils.open(writer, GROUP + "/s1");
+	Assert.assertArrayEquals(DIMS[1], Intervals.dimensionsAsLongArray(downsampled));
+	final Cursor<UnsignedLongType> expectedCursor = expected.cursor();
+	final Cursor<UnsignedLongType> actualCursor = Views.flatIterable(downsampled).cursor();
+	while (expectedCursor.hasNext())
+	  Assert.assertEquals(expectedCursor.next().getIntegerLong(), actualCursor.next().getIntegerLong());
+
+	Assert.assertEquals(0, PainteraHeadless.execute(
+			"label-block-lookup",
+			"--container", writer.getBasePath(),
+			"--dataset", GROUP,
+			"--num-threads", "2",
+			"--batch-size", "3"));
+
+	final String root = Paths.get(writer.getBasePath(), GROUP, N5Helpers.LABEL_TO_BLOCK_MAPPING).toString();
+	final LabelBlockLookupWithBackgroundIndex lookup = new LabelBlockLookupWithBackgroundIndex(root, DIMS, BLOCK_SIZES);
+	Assert.assertTrue(lookup.isComplete());
+	assertBlocks(lookup, 0, labels(DIMS[0], 4));
+	assertBlocks(lookup, 1, expected);
+  }
+
+  @Test
+  public void testCommit() throws Exception {
+
+	Assert.assertEquals(0, PainteraHeadless.execute(
+			"downsample",
+			"--container", writer.getBasePath(),
+			"--dataset", GROUP));
+	Assert.assertEquals(0, PainteraHeadless.execute(
+			"label-block-lookup",
+			"--container", writer.getBasePath(),
+			"--dataset", GROUP));
+
+	// paint the lower half in z of block (1, 0, 0) with a new id, leave everything else untouched
+	final long newId = 1000;
+	final DatasetAttributes canvasAttributes = new DatasetAttributes(DIMS[0], BLOCK_SIZES[0], DataType.UINT64, new RawCompression());
+	writer.createDataset(CANVAS, canvasAttributes);
+	final long[] canvasBlock = new long[BLOCK_SIZES[0][0] * BLOCK_SIZES[0][1] * BLOCK_SIZES[0][2]];
+	for (int i = 0; i < canvasBlock.length; ++i)
+	  canvasBlock[i] = i < canvasBlock.length / 2 ? newId : Label.INVALID;
+	writer.writeBlock(CANVAS, canvasAttributes, new LongArrayDataBlock(BLOCK_SIZES[0], new long[]{1, 0, 0}, canvasBlock));
+	Assert.assertArrayEquals(new long[]{1}, CommitCanvasCommand.existingBlocks(writer, CANVAS, canvasAttributes, 2));
+
+	Assert.assertEquals(0, PainteraHeadless.execute(
+			"commit",
+			"--container", writer.getBasePath(),
+			"--dataset", GROUP,
+			"--canvas-dataset", CANVAS));
+
+	final ArrayImg<UnsignedLongType, LongArray> expected = labels(DIMS[0], 4);
+	Views.interval(expected, new FinalInterval(new long[]{8, 0, 0}, new long[]{15, 7, 3})).forEach(px -> px.set(newId));
+	final Cursor<UnsignedLongType> expectedCursor = expected.cursor();
+	final Cursor<UnsignedLongType> actualCursor = Views.flatIterable(N5Utils.<UnsignedLongType>open(writer, GROUP + "/s0")).cursor();
+	while (expectedCursor.hasNext())
+	  Assert.assertEquals(expectedCursor.next().getIntegerLong(), actualCursor.next().getIntegerLong());
+
+	// lower resolution levels and the label block index are updated
+	final RandomAccessibleInterval<UnsignedLongType> s1 = N5Utils.open(writer, GROUP + "/s1");
+	Assert.assertEquals(newId, Views.interval(s1, new FinalInterval(new long[]{4, 0, 0}, new long[]{7, 3, 1})).firstElement().getIntegerLong());
+	final String root = Paths.get(writer.getBasePath(), GROUP, N5Helpers.LABEL_TO_BLOCK_MAPPING).toString();
+	final LabelBlockLookupWithBackgroundIndex lookup = new LabelBlockLookupWithBackgroundIndex(root, DIMS, BLOCK_SIZES);
+	assertBlocks(lookup, 0, expected);
+	Assert.assertEquals(1, lookup.read(new LabelBlockLookupKey(0, newId)).length);
+	Assert.assertArrayEquals(new long[]{8, 0, 0}, Intervals.minAsLongArray(lookup.read(new LabelBlockLookupKey(0, newId))[0]));
+	Assert.assertEquals(1, lookup.read(new LabelBlockLookupKey(1, newId)).length);
+  }
+
+  @Test
+  public void testExportMeshes() throws IOException {
+
+	final Path outputDirectory = Files.createTempDirectory("paintera-export-meshes");
+	outputDirectory.toFile().deleteOnExit();
+	Assert.assertEquals(0, PainteraHeadless.execute(
+			"export-meshes",
+			"--container", writer.getBasePath(),
+			"--dataset", GROUP,
+			"--ids", "1,12",
+			"--output-directory", outputDirectory.toString()));
+
+	for (final long id : new long[]{1, 12}) {
+	  final Path mesh = outputDirectory.resolve(id + ".obj");
+	  Assert.assertTrue(Files.isRegularFile(mesh));
+	  final List<String> vertices = Files.readAllLines(mesh).stream().filter(line -> line.startsWith("v ")).collect(Collectors.toList());
+	  Assert.assertFalse(vertices.isEmpty());
+	  // columns of 4 x 4 voxels, the mesh must not extend beyond the column by more than a voxel
+	  final long column = id - 1;
+	  final double[] min = {4 * (column % 10) - 1, 4 * (column / 10) - 1};
+	  for (final String vertex : vertices) {
+		final String[] coordinates = vertex.split(" ");
+		for (int d = 0; d < 2; ++d) {
+		  final double coordinate = Double.parseDouble(coordinates[d + 1]);
+		  Assert.assertTrue(vertex, coordinate >= min[d] && coordinate <= min[d] + 6);
+		}
+	  }
+	}
+  }
+
+  @Test
+  public void testMissingDatasetFails() {
+
+	Assert.assertNotEquals(0, PainteraHeadless.execute(
+			"downsample",
+			"--container", writer.getBasePath(),
+			"--dataset", "does-not-exist"));
+  }
+
+  private static void assertBlocks(
+		  final LabelBlockLookupWithBackgroundIndex lookup,
+		  final int level,
+		  final ArrayImg<UnsignedLongType, LongArray> labels) throws IOException {
+
+	final CellGrid grid = new CellGrid(DIMS[level], BLOCK_SIZES[level]);
+	final long[] position = new long[3];
+	final long[] gridPosition = new long[3];
+	final Cursor<UnsignedLongType> cursor = labels.localizingCursor();
+	while (cursor.hasNext()) {
+	  final long id = cursor.next().getIntegerLong();
+	  cursor.localize(position);
+	  grid.getCellPosition(position, gridPosition);
+	  final long blockIndex = IntervalIndexer.positionToIndex(gridPosition, grid.getGridDimensions());
+	  final TLongSet blocks = new TLongHashSet();
+	  for (final Interval block : lookup.read(new LabelBlockLookupKey(level, id))) {
+		grid.getCellPosition(Intervals.minAsLongArray(block), gridPosition);
+		blocks.add(IntervalIndexer.positionToIndex(gridPosition, grid.getGridDimensions()));
+	  }
+	  Assert.assertTrue("level=" + level + " id=" + id, blocks.contains(blockIndex));
+	}
+  }
+
+  /**
+   * Labels that are constant in columns of {@code columnSize} x {@code columnSize} voxels along z.
+   */
+  private static ArrayImg<UnsignedLongType, LongArray> labels(final long[] dims, final int columnSize) {
+
+	final ArrayImg<UnsignedLongType, LongArray> img = ArrayImgs.unsignedLongs(dims);
+	final Cursor<UnsignedLongType> cursor = img.localizingCursor();
+	while (cursor.hasNext()) {
+	  cursor.fwd();
+	  cursor.get().set(1 + cursor.getLongPosition(0) / columnSize + 10 * (cursor.getLongPosition(1) / columnSize));
+	}
+	return img;
+  }
+}
@@ -0,0 +1,57 @@
+package org.janelia.saalfeldlab.paintera.meshes;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+public class AdaptiveMeshUploadBudgetTest {
+
+  private static final long TARGET_FRAME_TIME_NANOS = 8_000_000;
+
+  @Test
+  public void testConvergesToTargetFrameTime() {
+
+	// 2000 elements per millisecond of frame time, so 16000 elements fit into the target frame time
+	final double elementsPerNano = 2000 / 1e6;
+	final AdaptiveMeshUploadBudget budget = new AdaptiveMeshUploadBudget(AdaptiveMeshUploadBudget.MIN_BUDGET, TARGET_FRAME_TIME_NANOS);
+	final Random rng = new Random(1);
+	for (int frame = 0; frame < 100; ++frame) {
+	  final int numElements = budget.getBudget();
+	  // frame costs vary by up to 20%
+	  final double noise = 0.8 + 0.4 * rng.nextDouble();
+	  budget.update(numElements, (long)(numElements / elementsPerNano * noise), true);
+	}
+	Assert.assertEquals(16000, budget.getBudget(), 0.15 * 16000);
+	Assert.assertEquals(2000 * 1000, budget.getThroughputPerSecond(), 0.15 * 2000 * 1000);
+  }
+
+  @Test
+  public void testStaysWithinLimits() {
+
+	final AdaptiveMeshUploadBudget fast = new AdaptiveMeshUploadBudget(10000, TARGET_FRAME_TIME_NANOS);
+	final AdaptiveMeshUploadBudget slow = new AdaptiveMeshUploadBudget(10000, TARGET_FRAME_TIME_NANOS);
+	for (int frame = 0; frame < 100; ++frame) {
+	  // cheap frames must not grow the budget beyond the configurable maximum
+	  fast.update(fast.getBudget(), 1, true);
+	  Assert.assertTrue(fast.getBudget() <= AdaptiveMeshUploadBudget.MAX_BUDGET);
+	  slow.update(slow.getBudget(), 1_000_000_000, true);
+	}
+	Assert.assertEquals(AdaptiveMeshUploadBudget.MAX_BUDGET, fast.getBudget());
+	Assert.assertEquals(AdaptiveMeshUploadBudget.MIN_BUDGET, slow.getBudget());
+  }
+
+  @Test
+  public void testGrowsOnlyWhenExhausted() {
+
+	final AdaptiveMeshUploadBudget budget = new AdaptiveMeshUploadBudget(10000, TARGET_FRAME_TIME_NANOS);
+	// small, cheap batches that did not use up the budget
+	for (int frame = 0; frame < 10; ++frame)
+	  budget.update(100, 1000, false);
+	Assert.assertEquals(10000, budget.getBudget());
+
+	// a single exhausted frame grows the budget by at most a factor of two
+	budget.update(10000, 1000, true);
+	Assert.assertEquals(20000, budget.getBudget());
+  }
+}
@@ -19,6 +19,8 @@ public class MeshWorkerPriorityTest
 		expected.add(new MeshWorkerPriority(0.8, 5));
 		expected.add(new MeshWorkerPriority(5.1, 1));
 		expected.add(new MeshWorkerPriority(Double.POSITIVE_INFINITY, 0));
+		expected.add(new MeshWorkerPriority(0.0, 2, true));
+		expected.add(new MeshWorkerPriority(0.3, 2, true));
 
 		final List<MeshWorkerPriority> priorities = new ArrayList<>(expected);
 		Collections.shuffle(priorities);
@@ -0,0 +1,273 @@
+package org.janelia.saalfeldlab.paintera.meshes;
+
+import bdv.viewer.Interpolation;
+import javafx.scene.PerspectiveCamera;
+import mpicbg.spim.data.sequence.VoxelDimensions;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.RealRandomAccessible;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.type.numeric.integer.ByteType;
+import org.janelia.saalfeldlab.paintera.data.DataSource;
+import org.janelia.saalfeldlab.paintera.viewer3d.ViewFrustum;
+import org.janelia.saalfeldlab.util.n5.N5Helpers;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.function.IntFunction;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+public class SceneBlockTreeTest
+{
+	/**
+	 * Two scale levels of 64^3 and 32^3 voxels, with renderer blocks of 4^3 voxels: 16^3 blocks at scale level 0 and
+	 * 8^3 blocks at scale level 1, enough for both levels to be evaluated in parallel.
+	 */
+	private static final CellGrid[] RENDERER_GRIDS = {
+			new CellGrid(new long[] {64, 64, 64}, new int[] {4, 4, 4}),
+			new CellGrid(new long[] {32, 32, 32}, new int[] {4, 4, 4})
+	};
+
+	private static final long NUM_BLOCKS_AT_LEVEL_0 = 16 * 16 * 16;
+
+	private static final long NUM_BLOCKS_AT_LEVEL_1 = 8 * 8 * 8;
+
+	private DummyDataSource source;
+
+	private ViewFrustum viewFrustum;
+
+	@Before
+	public void setUp()
+	{
+		// the whole volume is in front of the camera and inside of the view frustum
+		final double[] offset = {-3.2, -3.2, 10.0};
+		source = new DummyDataSource(new AffineTransform3D[] {
+				N5Helpers.fromResolutionAndOffset(new double[] {0.1, 0.1, 0.1}, offset),
+				N5Helpers.fromResolutionAndOffset(new double[] {0.2, 0.2, 0.2}, offset)
+		});
+
+		final PerspectiveCamera camera = new PerspectiveCamera(true);
+		camera.setNearClip(0.1);
+		camera.setFarClip(100.0);
+		camera.setFieldOfView(90);
+		camera.setVerticalFieldOfView(true);
+		viewFrustum = new ViewFrustum(camera, new double[] {800, 800});
+	}
+
+	@Test
+	public void testSubdivideAllBlocks()
+	{
+		final BlockTree<BlockTreeFlatKey, BlockTreeNode<BlockTreeFlatKey>> tree = new SceneBlockTree(source).update(
+				viewFrustum,
+				new AffineTransform3D(),
+				MeshSettings.Defaults.Values.getLevelOfDetail(),
+				0,
+				0,
+				RENDERER_GRIDS,
+				null,
+				() -> false);
+
+		Assert.assertEquals(NUM_BLOCKS_AT_LEVEL_1 + NUM_BLOCKS_AT_LEVEL_0, tree.nodes.size());
+		LongStream.range(0, NUM_BLOCKS_AT_LEVEL_1).forEach(blockIndex -> {
+			final BlockTreeNode<BlockTreeFlatKey> node = tree.nodes.get(new BlockTreeFlatKey(1, blockIndex));
+			Assert.assertNotNull(node);
+			Assert.assertNull(node.parentKey);
+			Assert.assertEquals(8, node.children.size());
+			for (final BlockTreeFlatKey child : node.children)
+				Assert.assertEquals(new BlockTreeFlatKey(1, blockIndex), tree.nodes.get(child).parentKey);
+		});
+		LongStream.range(0, NUM_BLOCKS_AT_LEVEL_0).forEach(blockIndex -> {
+			final BlockTreeNode<BlockTreeFlatKey> node = tree.nodes.get(new BlockTreeFlatKey(0, blockIndex));
+			Assert.assertNotNull(node);
+			Assert.assertNotNull(node.parentKey);
+			Assert.assertTrue(node.children.isEmpty());
+			Assert.assertTrue(node.distanceFromCamera > 0.0);
+		});
+	}
+
+	@Test
+	public void testPruneToRelevantBlocks()
+	{
+		// a single object in the first renderer block at scale level 0
+		final IntFunction<Interval[]> relevantSourceBlocks = scaleLevel -> scaleLevel == 0
+				? new Interval[] {new FinalInterval(new long[] {0, 0, 0}, new long[] {3, 3, 3})}
+				: new Interval[0];
+
+		final BlockTree<BlockTreeFlatKey, BlockTreeNode<BlockTreeFlatKey>> tree = new SceneBlockTree(source).update(
+				viewFrustum,
+				new AffineTransform3D(),
+				MeshSettings.Defaults.Values.getLevelOfDetail(),
+				0,
+				0,
+				RENDERER_GRIDS,
+				relevantSourceBlocks,
+				() -> false);
+
+		// the only relevant block at scale level 1 is subdivided into all of its blocks at scale level 0
+		final BlockTreeFlatKey root = new BlockTreeFlatKey(1, 0);
+		final long[] expectedChildren = {0, 1, 16, 17, 256, 257, 272, 273};
+		Assert.assertEquals(1 + expectedChildren.length, tree.nodes.size());
+		Assert.assertNull(tree.nodes.get(root).parentKey);
+		Assert.assertEquals(
+				Arrays.stream(expectedChildren).mapToObj(blockIndex -> new BlockTreeFlatKey(0, blockIndex)).collect(Collectors.toSet()),
+				tree.nodes.get(root).children);
+	}
+
+	@Test
+	public void testReuseTreeIfNothingChanged()
+	{
+		final SceneBlockTree sceneBlockTree = new SceneBlockTree(source);
+		final BlockTree<BlockTreeFlatKey, BlockTreeNode<BlockTreeFlatKey>> tree = sceneBlockTree.update(
+				viewFrustum,
+				new AffineTransform3D(),
+				MeshSettings.Defaults.Values.getLevelOfDetail(),
+				0,
+				0,
+				RENDERER_GRIDS,
+				null,
+				() -> false);
+
+		Assert.assertSame(tree, sceneBlockTree.update(
+				viewFrustum,
+				new AffineTransform3D(),
+				MeshSettings.Defaults.Values.getLevelOfDetail(),
+				0,
+				0,
+				RENDERER_GRIDS,
+				null,
+				() -> false));
+
+		// moving the camera back keeps all blocks in the tree, but all of them are further away from the camera
+		final AffineTransform3D movedCamera = new AffineTransform3D();
+		movedCamera.setTranslation(0, 0, -1);
+		final BlockTree<BlockTreeFlatKey, BlockTreeNode<BlockTreeFlatKey>> movedTree = sceneBlockTree.update(
+				viewFrustum,
+				movedCamera,
+				MeshSettings.Defaults.Values.getLevelOfDetail(),
+				0,
+				0,
+				RENDERER_GRIDS,
+				null,
+				() -> false);
+
+		Assert.assertNotSame(tree, movedTree);
+		Assert.assertEquals(tree.nodes.keySet(), movedTree.nodes.keySet());
+		for (final Map.Entry<BlockTreeFlatKey, BlockTreeNode<BlockTreeFlatKey>> entry : tree.nodes.entrySet()) {
+			final BlockTreeNode<BlockTreeFlatKey> movedNode = movedTree.nodes.get(entry.getKey());
+			Assert.assertEquals(entry.getValue().parentKey, movedNode.parentKey);
+			Assert.assertEquals(entry.getValue().children, movedNode.children);
+			Assert.assertEquals(entry.getValue().distanceFromCamera + 1.0, movedNode.distanceFromCamera, 1e-9);
+		}
+	}
+
+	@Test
+	public void testInterrupted()
+	{
+		Assert.assertNull(new SceneBlockTree(source).update(
+				viewFrustum,
+				new AffineTransform3D(),
+				MeshSettings.Defaults.Values.getLevelOfDetail(),
+				0,
+				0,
+				RENDERER_GRIDS,
+				null,
+				() -> true));
+	}
+
+	private static class DummyDataSource implements DataSource<ByteType, ByteType>
+	{
+
+		private final AffineTransform3D[] transforms;
+
+		private DummyDataSource(AffineTransform3D[] transforms) {
+			this.transforms = transforms;
+		}
+
+		@Override
+		public RandomAccessibleInterval<ByteType> getDataSource(int t, int level) {
+			return null;
+		}
+
+		@Override
+		public RealRandomAccessible<ByteType> getInterpolatedDataSource(int t, int level, Interpolation method) {
+			return null;
+		}
+
+		@Override
+		public ByteType getDataType() {
+			return null;
+		}
+
+		@Override
+		public boolean isPresent(int i) {
+			return false;
+		}
+
+		@Override
+		public RandomAccessibleInterval<ByteType> getSource(int i, int i1) {
+			return null;
+		}
+
+		@Override
+		public RealRandomAccessible<ByteType> getInterpolatedSource(int i, int i1, Interpolation interpolation) {
+			return null;
+		}
+
+		@Override
+		public void getSourceTransform(int t, int level, AffineTransform3D tf) {
+			tf.set(transforms[level]);
+		}
+
+		@Override
+		public ByteType getType() {
+			return null;
+		}
+
+		@Override
+		public String getName() {
+			return null;
+		}
+
+		@Override
+		public VoxelDimensions getVoxelDimensions() {
+			return null;
+		}
+
+		@Override
+		public int getNumMipmapLevels() {
+			return transforms.length;
+		}
+
+		@Override
+		public void invalidate(Long key) {
+
+		}
+
+		@Override
+		public void invalidateIf(long parallelismThreshold, Predicate<Long> condition) {
+
+		}
+
+		@Override
+		public void invalidateAll(long parallelismThreshold) {
+
+		}
+
+		@Override
+		public void invalidateIf(Predicate<Long> condition) {
+
+		}
+
+		@Override
+		public void invalidateAll() {
+
+		}
+	}
+}
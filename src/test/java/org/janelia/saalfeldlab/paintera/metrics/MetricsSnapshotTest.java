@@ -0,0 +1,59 @@
+package org.janelia.saalfeldlab.paintera.metrics;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+public class MetricsSnapshotTest {
+
+  @Test
+  public void testSince() {
+
+	final MetricsSnapshot before = new MetricsSnapshot(0, Arrays.asList(
+			MetricsSnapshot.Value.counter("counter", 10),
+			MetricsSnapshot.Value.timer("timer", 2, 4_000_000),
+			MetricsSnapshot.Value.gauge("gauge", 3)));
+	final MetricsSnapshot after = new MetricsSnapshot(2_000_000_000L, Arrays.asList(
+			MetricsSnapshot.Value.counter("counter", 30),
+			MetricsSnapshot.Value.timer("timer", 6, 16_000_000),
+			MetricsSnapshot.Value.timer("new-timer", 1, 5_000_000),
+			MetricsSnapshot.Value.gauge("gauge", 7)));
+
+	final Map<String, MetricsSnapshot.Delta> deltas = after.since(before).stream().collect(Collectors.toMap(MetricsSnapshot.Delta::getName, Function.identity()));
+
+	Assert.assertEquals(20, deltas.get("counter").getCount());
+	Assert.assertEquals(10.0, deltas.get("counter").getRatePerSecond(), 1e-9);
+	Assert.assertEquals(30, deltas.get("counter").getValue());
+
+	Assert.assertEquals(4, deltas.get("timer").getCount());
+	Assert.assertEquals(2.0, deltas.get("timer").getRatePerSecond(), 1e-9);
+	Assert.assertEquals(3.0, deltas.get("timer").getMeanMillis(), 1e-9);
+
+	Assert.assertEquals(1, deltas.get("new-timer").getCount());
+	Assert.assertEquals(5.0, deltas.get("new-timer").getMeanMillis(), 1e-9);
+
+	Assert.assertEquals(0, deltas.get("gauge").getCount());
+	Assert.assertEquals(7, deltas.get("gauge").getValue());
+  }
+
+  @Test
+  public void testRegistry() {
+
+	final MetricsRegistry registry = new MetricsRegistry();
+	registry.counter("c").add(3);
+	registry.timer("t").record(2_000_000);
+	registry.gauge("g", () -> 42);
+
+	final List<MetricsSnapshot.Delta> deltas = registry.snapshot().since(null);
+	final Map<String, MetricsSnapshot.Delta> byName = deltas.stream().collect(Collectors.toMap(MetricsSnapshot.Delta::getName, Function.identity()));
+	Assert.assertEquals(3, byName.get("c").getValue());
+	Assert.assertEquals(2.0, byName.get("t").getMeanMillis(), 1e-9);
+	Assert.assertEquals(42, byName.get("g").getValue());
+	Assert.assertEquals(3, registry.counter("c").getCount());
+  }
+}
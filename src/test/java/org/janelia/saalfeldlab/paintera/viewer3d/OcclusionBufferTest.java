@@ -0,0 +1,119 @@
+package org.janelia.saalfeldlab.paintera.viewer3d;
+
+import javafx.scene.PerspectiveCamera;
+import net.imglib2.FinalRealInterval;
+import net.imglib2.RealInterval;
+import net.imglib2.realtransform.AffineTransform3D;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reference scene for occlusion culling: a wall in front of the camera and a stack of blocks that extends from in front
+ * of the wall to far behind it, similar to the surface of a large segment that hides the blocks of the segments behind it.
+ */
+public class OcclusionBufferTest {
+
+  private static final double WALL_DEPTH = 50.0;
+
+  private static final double BLOCK_DEPTH = 10.0;
+
+  private static final double BLOCK_WIDTH = 2.0;
+
+  private final AffineTransform3D eyeToWorldTransform = new AffineTransform3D();
+
+  private final AffineTransform3D sourceToWorldTransform = new AffineTransform3D();
+
+  private ViewFrustum viewFrustum;
+
+  private List<RealInterval> blocks;
+
+  @Before
+  public void setUp() {
+
+	final PerspectiveCamera camera = new PerspectiveCamera(true);
+	camera.setNearClip(0.1);
+	camera.setFarClip(1000.0);
+	camera.setFieldOfView(45);
+	camera.setVerticalFieldOfView(true);
+	viewFrustum = new ViewFrustum(camera, new double[]{800, 600});
+
+	// 4x4x20 blocks from z=10 to z=210 that are all inside of the view frustum
+	blocks = new ArrayList<>();
+	for (int z = 0; z < 20; ++z)
+	  for (int y = -2; y < 2; ++y)
+		for (int x = -2; x < 2; ++x)
+		  blocks.add(new FinalRealInterval(
+				  new double[]{x * BLOCK_WIDTH, y * BLOCK_WIDTH, 10 + z * BLOCK_DEPTH},
+				  new double[]{(x + 1) * BLOCK_WIDTH, (y + 1) * BLOCK_WIDTH, 10 + (z + 1) * BLOCK_DEPTH}));
+  }
+
+  @Test
+  public void testWallOccludesBlocksBehindIt() {
+
+	final OcclusionBuffer occlusionBuffer = new OcclusionBuffer(viewFrustum, eyeToWorldTransform);
+	occlusionBuffer.addOccluder(quad(-100, -100, 100, 100, WALL_DEPTH), null);
+	Assert.assertEquals(2, occlusionBuffer.getNumOccluderTriangles());
+
+	int numOccluded = 0;
+	for (final RealInterval block : blocks) {
+	  final boolean isOccluded = occlusionBuffer.isOccluded(block, sourceToWorldTransform);
+	  Assert.assertEquals("Block " + block, block.realMin(2) > WALL_DEPTH, isOccluded);
+	  if (isOccluded)
+		++numOccluded;
+	}
+
+	// all blocks behind the wall do not need to be meshed before the visible blocks
+	final long numBlocksBehindWall = blocks.stream().filter(block -> block.realMin(2) > WALL_DEPTH).count();
+	Assert.assertEquals(numBlocksBehindWall, numOccluded);
+	Assert.assertTrue("Expected more than half of the blocks to be occluded: " + numOccluded + "/" + blocks.size(), 2 * numOccluded > blocks.size());
+  }
+
+  @Test
+  public void testPartialOccluder() {
+
+	// indexed quad that covers only the left half of the screen
+	final float[] vertices = {
+			-100, -100, (float)WALL_DEPTH,
+			0, -100, (float)WALL_DEPTH,
+			0, 100, (float)WALL_DEPTH,
+			-100, 100, (float)WALL_DEPTH
+	};
+	final int[] indices = {0, 1, 2, 0, 2, 3};
+	final OcclusionBuffer occlusionBuffer = new OcclusionBuffer(viewFrustum, eyeToWorldTransform);
+	occlusionBuffer.addOccluder(vertices, indices);
+
+	final RealInterval behindLeft = new FinalRealInterval(new double[]{-20, -5, 80}, new double[]{-10, 5, 90});
+	final RealInterval behindCenter = new FinalRealInterval(new double[]{-5, -5, 80}, new double[]{5, 5, 90});
+	final RealInterval behindRight = new FinalRealInterval(new double[]{10, -5, 80}, new double[]{20, 5, 90});
+	final RealInterval inFrontLeft = new FinalRealInterval(new double[]{-10, -5, 20}, new double[]{-5, 5, 30});
+	final RealInterval offScreen = new FinalRealInterval(new double[]{500, -5, 20}, new double[]{510, 5, 30});
+	Assert.assertTrue(occlusionBuffer.isOccluded(behindLeft, sourceToWorldTransform));
+	Assert.assertFalse(occlusionBuffer.isOccluded(behindCenter, sourceToWorldTransform));
+	Assert.assertFalse(occlusionBuffer.isOccluded(behindRight, sourceToWorldTransform));
+	Assert.assertFalse(occlusionBuffer.isOccluded(inFrontLeft, sourceToWorldTransform));
+	Assert.assertTrue(occlusionBuffer.isOccluded(offScreen, sourceToWorldTransform));
+  }
+
+  @Test
+  public void testNoOccluders() {
+
+	final OcclusionBuffer occlusionBuffer = new OcclusionBuffer(viewFrustum, eyeToWorldTransform);
+	// occluders that intersect the near plane are ignored
+	occlusionBuffer.addOccluder(quad(-100, -100, 100, 100, 0.0), null);
+	Assert.assertEquals(0, occlusionBuffer.getNumOccluderTriangles());
+	blocks.forEach(block -> Assert.assertFalse(occlusionBuffer.isOccluded(block, sourceToWorldTransform)));
+  }
+
+  private static float[] quad(final float minX, final float minY, final float maxX, final float maxY, final double depth) {
+
+	final float z = (float)depth;
+	return new float[]{
+			minX, minY, z, maxX, minY, z, maxX, maxY, z,
+			minX, minY, z, maxX, maxY, z, minX, maxY, z
+	};
+  }
+}
@@ -0,0 +1,138 @@
+package org.janelia.saalfeldlab.util.concurrent;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class ConcurrentPriorityTaskExecutorTest {
+
+  private final ConcurrentPriorityTaskExecutor<Integer> executor = new ConcurrentPriorityTaskExecutor<>(
+		  Integer::compare,
+		  1,
+		  r -> new Thread(r, "concurrent-priority-task-executor-test"));
+
+  private final List<Integer> result = Collections.synchronizedList(new ArrayList<>());
+
+  @After
+  public void tearDown() {
+
+	executor.shutdown();
+	Assert.assertTrue(executor.isShutdown());
+  }
+
+  @Test
+  public void testOrderDeduplicationAndUpdate() throws InterruptedException {
+
+	final CountDownLatch started = new CountDownLatch(1);
+	final CountDownLatch release = new CountDownLatch(1);
+	executor.addOrUpdateTask(() -> {
+	  started.countDown();
+	  awaitUninterruptibly(release);
+	}, 0);
+	Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+
+	final int numTasks = 10;
+	final CountDownLatch done = new CountDownLatch(numTasks - 1);
+	final List<Runnable> tasks = new ArrayList<>();
+	final Map<Runnable, Integer> priorities = new HashMap<>();
+	for (int i = 0; i < numTasks; ++i) {
+	  final int id = i;
+	  final Runnable task = () -> {
+		result.add(id);
+		done.countDown();
+	  };
+	  tasks.add(task);
+	  priorities.put(task, numTasks - i);
+	}
+	executor.addOrUpdateTasks(priorities);
+	// re-submitting a queued task does not queue it twice
+	executor.addOrUpdateTasks(priorities);
+	Assert.assertEquals(numTasks, executor.getNumQueuedTasks());
+
+	// move the first task to the front and drop the second task
+	executor.addOrUpdateTask(tasks.get(0), -1);
+	Assert.assertEquals(-1, executor.getPriority(tasks.get(0)).intValue());
+	executor.removeTasks(Set.of(tasks.get(1)));
+	Assert.assertFalse(executor.containsTask(tasks.get(1)));
+	Assert.assertNull(executor.getPriority(tasks.get(1)));
+	Assert.assertEquals(numTasks - 1, executor.getNumQueuedTasks());
+
+	release.countDown();
+	Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+
+	Assert.assertEquals(List.of(0, 9, 8, 7, 6, 5, 4, 3, 2), result);
+	Assert.assertEquals(0, executor.getNumQueuedTasks());
+	tasks.forEach(task -> Assert.assertFalse(executor.containsTask(task)));
+  }
+
+  @Test
+  public void testEqualPrioritiesRunInSubmissionOrder() throws InterruptedException {
+
+	final CountDownLatch started = new CountDownLatch(1);
+	final CountDownLatch release = new CountDownLatch(1);
+	executor.addOrUpdateTask(() -> {
+	  started.countDown();
+	  awaitUninterruptibly(release);
+	}, 0);
+	Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+
+	final int numTasks = 5;
+	final CountDownLatch done = new CountDownLatch(numTasks);
+	for (int i = 0; i < numTasks; ++i) {
+	  final int id = i;
+	  executor.addOrUpdateTask(() -> {
+		result.add(id);
+		done.countDown();
+	  }, 1);
+	}
+
+	release.countDown();
+	Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+	Assert.assertEquals(List.of(0, 1, 2, 3, 4), result);
+  }
+
+  @Test
+  public void testRemoveInterruptsRunningTask() throws InterruptedException {
+
+	final CountDownLatch started = new CountDownLatch(1);
+	final CountDownLatch interrupted = new CountDownLatch(1);
+	final Runnable task = () -> {
+	  started.countDown();
+	  try {
+		Thread.sleep(TimeUnit.SECONDS.toMillis(10));
+	  } catch (final InterruptedException e) {
+		interrupted.countDown();
+	  }
+	};
+	executor.addOrUpdateTask(task, 0);
+	Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+	executor.removeTask(task);
+	Assert.assertTrue(interrupted.await(10, TimeUnit.SECONDS));
+
+	// the worker keeps running tasks after an interrupt
+	final CountDownLatch next = new CountDownLatch(1);
+	executor.addOrUpdateTask(next::countDown, 0);
+	Assert.assertTrue(next.await(10, TimeUnit.SECONDS));
+  }
+
+  private static void awaitUninterruptibly(final CountDownLatch latch) {
+
+	while (true) {
+	  try {
+		latch.await();
+		return;
+	  } catch (final InterruptedException e) {
+		// keep waiting
+	  }
+	}
+  }
+}
@@ -0,0 +1,193 @@
+package org.janelia.saalfeldlab.util.grids;
+
+import gnu.trove.map.TLongObjectMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import gnu.trove.set.TLongSet;
+import gnu.trove.set.hash.TLongHashSet;
+import net.imglib2.Cursor;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.LongArray;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.type.numeric.integer.UnsignedLongType;
+import net.imglib2.util.IntervalIndexer;
+import net.imglib2.util.Intervals;
+import org.janelia.saalfeldlab.labels.blocks.LabelBlockLookupKey;
+import org.janelia.saalfeldlab.n5.N5FSWriter;
+import org.janelia.saalfeldlab.n5.RawCompression;
+import org.janelia.saalfeldlab.n5.imglib2.N5Utils;
+import org.janelia.saalfeldlab.util.n5.N5Helpers;
+import org.janelia.saalfeldlab.util.n5.N5TestUtil;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class LabelBlockLookupIndexBuilderTest {
+
+  private static final long[][] DIMS = {{24, 20, 16}, {12, 10, 8}};
+
+  private static final int[][] BLOCK_SIZES = {{8, 8, 8}, {4, 4, 4}};
+
+  private RandomAccessibleInterval<?>[] data;
+
+  private CellGrid[] grids;
+
+  private TLongObjectMap<TLongSet>[] expected;
+
+  private String root;
+
+  @SuppressWarnings("unchecked")
+  @Before
+  public void setup() throws IOException {
+
+	final N5FSWriter writer = N5TestUtil.fileSystemWriterAtTmpDir();
+	data = new RandomAccessibleInterval<?>[DIMS.length];
+	grids = new CellGrid[DIMS.length];
+	expected = new TLongObjectMap[DIMS.length];
+	for (int level = 0; level < DIMS.length; ++level) {
+	  final String dataset = "labels/s" + level;
+	  final ArrayImg<UnsignedLongType, LongArray> labels = labels(DIMS[level], 3 + 3 * level);
+	  N5Utils.save(labels, writer, dataset, BLOCK_SIZES[level], new RawCompression());
+	  data[level] = N5Utils.open(writer, dataset);
+	  grids[level] = N5Helpers.getGrid(writer, dataset);
+	  expected[level] = blocksById(labels, grids[level]);
+	}
+	root = Paths.get(writer.getBasePath(), "labels", "label-to-block-mapping").toString();
+  }
+
+  @Test
+  public void testFallbackBeforeBuild() throws IOException {
+
+	final LabelBlockLookupWithBackgroundIndex lookup = new LabelBlockLookupWithBackgroundIndex(root, DIMS, BLOCK_SIZES);
+	Assert.assertFalse(lookup.isComplete());
+	for (int level = 0; level < DIMS.length; ++level) {
+	  final long numBlocks = Intervals.numElements(grids[level].getGridDimensions());
+	  Assert.assertEquals(numBlocks, lookup.read(new LabelBlockLookupKey(level, 1)).length);
+	}
+  }
+
+  @Test
+  public void testBuildCoarsestLevelFirst() throws IOException {
+
+	final LabelBlockLookupWithBackgroundIndex lookup = new LabelBlockLookupWithBackgroundIndex(root, DIMS, BLOCK_SIZES);
+	final List<Integer> completedLevels = new ArrayList<>();
+	new LabelBlockLookupIndexBuilder(data, grids, lookup, 2, 3).build(completedLevels::add);
+
+	Assert.assertEquals(Arrays.asList(1, 0), completedLevels);
+	Assert.assertTrue(lookup.isComplete());
+	assertIndex(lookup, 0);
+	assertIndex(lookup, 1);
+	// ids that do not exist in the data
+	Assert.assertEquals(0, lookup.read(new LabelBlockLookupKey(0, 1000)).length);
+  }
+
+  @Test
+  public void testResume() throws IOException {
+
+	final LabelBlockLookupWithBackgroundIndex lookup = new LabelBlockLookupWithBackgroundIndex(root, DIMS, BLOCK_SIZES);
+	final LabelBlockLookupIndexBuilder builder = new LabelBlockLookupIndexBuilder(data, grids, lookup, 2, 3);
+	builder.build(level -> builder.cancel());
+
+	Assert.assertTrue(lookup.isLevelComplete(1));
+	Assert.assertFalse(lookup.isLevelComplete(0));
+	assertIndex(lookup, 1);
+
+	// new lookup as if deserialized from a project
+	final LabelBlockLookupWithBackgroundIndex resumedLookup = new LabelBlockLookupWithBackgroundIndex(root, DIMS, BLOCK_SIZES);
+	Assert.assertTrue(resumedLookup.isLevelComplete(1));
+	final List<Integer> completedLevels = new ArrayList<>();
+	new LabelBlockLookupIndexBuilder(data, grids, resumedLookup, 2, 3).build(completedLevels::add);
+
+	Assert.assertEquals(Arrays.asList(0), completedLevels);
+	Assert.assertTrue(resumedLookup.isComplete());
+	assertIndex(resumedLookup, 0);
+	assertIndex(resumedLookup, 1);
+  }
+
+  @Test
+  public void testUpdateBlocks() throws IOException {
+
+	final LabelBlockLookupWithBackgroundIndex lookup = new LabelBlockLookupWithBackgroundIndex(root, DIMS, BLOCK_SIZES);
+	final LabelBlockLookupIndexBuilder builder = new LabelBlockLookupIndexBuilder(data, grids, lookup, 2, 3);
+	builder.build(level -> builder.cancel());
+	Assert.assertFalse(lookup.isLevelComplete(0));
+
+	// commits update incomplete levels, too
+	final LabelBlockLookupKey newId = new LabelBlockLookupKey(0, 1000);
+	lookup.updateBlocks(0, 1000, new TLongHashSet(new long[]{0, 1}), null);
+	lookup.updateBlocks(0, 1000, null, new TLongHashSet(new long[]{1}));
+	Assert.assertEquals(1, lookup.getIndex().read(newId).length);
+	Assert.assertEquals(0, LabelBlockLookupIndexBuilder.blockIndex(grids[0], lookup.getIndex().read(newId)[0]));
+
+	// and complete levels
+	final long existingId = expected[1].keys()[0];
+	final TLongSet expectedBlocks = new TLongHashSet(expected[1].get(existingId));
+	final long removedBlock = expectedBlocks.iterator().next();
+	expectedBlocks.remove(removedBlock);
+	lookup.updateBlocks(1, existingId, null, new TLongHashSet(new long[]{removedBlock}));
+	final TLongSet actualBlocks = new TLongHashSet();
+	for (final Interval block : lookup.read(new LabelBlockLookupKey(1, existingId)))
+	  actualBlocks.add(LabelBlockLookupIndexBuilder.blockIndex(grids[1], block));
+	Assert.assertEquals(expectedBlocks, actualBlocks);
+
+	// a level that is built from scratch does not keep entries of previous builds
+	new LabelBlockLookupIndexBuilder(data, grids, lookup, 2, 3).build(level -> {});
+	Assert.assertTrue(lookup.isLevelComplete(0));
+	assertIndex(lookup, 0);
+	Assert.assertEquals(0, lookup.read(newId).length);
+  }
+
+  private void assertIndex(final LabelBlockLookupWithBackgroundIndex lookup, final int level) throws IOException {
+
+	for (final long id : expected[level].keys()) {
+	  final TLongSet actual = new TLongHashSet();
+	  for (final Interval block : lookup.read(new LabelBlockLookupKey(level, id)))
+		actual.add(LabelBlockLookupIndexBuilder.blockIndex(grids[level], block));
+	  Assert.assertEquals("level=" + level + " id=" + id, expected[level].get(id), actual);
+	}
+  }
+
+  /**
+   * Slabs of constant label along x and y. Label 0 (background) is not indexed.
+   */
+  private static ArrayImg<UnsignedLongType, LongArray> labels(final long[] dims, final int slabSize) {
+
+	final ArrayImg<UnsignedLongType, LongArray> img = ArrayImgs.unsignedLongs(dims);
+	final Cursor<UnsignedLongType> cursor = img.localizingCursor();
+	while (cursor.hasNext()) {
+	  cursor.fwd();
+	  final long x = cursor.getLongPosition(0) / slabSize;
+	  final long y = cursor.getLongPosition(1) / slabSize;
+	  cursor.get().set(x == 0 && y == 0 ? 0 : 1 + x + 10 * y);
+	}
+	return img;
+  }
+
+  private static TLongObjectMap<TLongSet> blocksById(final ArrayImg<UnsignedLongType, LongArray> labels, final CellGrid grid) {
+
+	final TLongObjectMap<TLongSet> blocksById = new TLongObjectHashMap<>();
+	final long[] position = new long[3];
+	final long[] gridPosition = new long[3];
+	final Cursor<UnsignedLongType> cursor = labels.localizingCursor();
+	while (cursor.hasNext()) {
+	  final long id = cursor.next().getIntegerLong();
+	  if (id == 0)
+		continue;
+	  cursor.localize(position);
+	  grid.getCellPosition(position, gridPosition);
+	  final long blockIndex = IntervalIndexer.positionToIndex(gridPosition, grid.getGridDimensions());
+	  if (!blocksById.containsKey(id))
+		blocksById.put(id, new TLongHashSet());
+	  blocksById.get(id).add(blockIndex);
+	}
+	return blocksById;
+  }
+}
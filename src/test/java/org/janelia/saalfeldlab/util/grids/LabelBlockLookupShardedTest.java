@@ -0,0 +1,154 @@
+package org.janelia.saalfeldlab.util.grids;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import gnu.trove.map.TLongObjectMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.util.Intervals;
+import org.janelia.saalfeldlab.labels.blocks.LabelBlockLookup;
+import org.janelia.saalfeldlab.labels.blocks.LabelBlockLookupAdapter;
+import org.janelia.saalfeldlab.labels.blocks.LabelBlockLookupFromFile;
+import org.janelia.saalfeldlab.labels.blocks.LabelBlockLookupKey;
+import org.janelia.saalfeldlab.util.n5.LabelBlockLookupMigration;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+public class LabelBlockLookupShardedTest {
+
+  private Path baseDirectory;
+
+  @Before
+  public void setup() throws IOException {
+
+	baseDirectory = Files.createTempDirectory("label-block-lookup-sharded");
+	baseDirectory.toFile().deleteOnExit();
+  }
+
+  @Test
+  public void testReadWrite() throws IOException {
+
+	final LabelBlockLookupSharded lookup = lookup(4);
+	Assert.assertEquals(0, lookup.read(new LabelBlockLookupKey(0, 1)).length);
+
+	final TLongObjectMap<Interval[]> batch = new TLongObjectHashMap<>();
+	for (long id = 1; id <= 100; ++id)
+	  batch.put(id, blocks(id));
+	lookup.write(0, batch);
+
+	for (long id = 1; id <= 100; ++id) {
+	  assertBlocks(blocks(id), lookup.read(new LabelBlockLookupKey(0, id)));
+	  Assert.assertEquals(0, lookup.read(new LabelBlockLookupKey(1, id)).length);
+	}
+	Assert.assertEquals(0, lookup.read(new LabelBlockLookupKey(0, 101)).length);
+
+	// update one id, remove another, leave all others untouched
+	lookup.write(new LabelBlockLookupKey(0, 3), blocks(7));
+	lookup.write(new LabelBlockLookupKey(0, 4));
+	assertBlocks(blocks(7), lookup.read(new LabelBlockLookupKey(0, 3)));
+	Assert.assertEquals(0, lookup.read(new LabelBlockLookupKey(0, 4)).length);
+	assertBlocks(blocks(5), lookup.read(new LabelBlockLookupKey(0, 5)));
+
+	// shards are persisted and picked up by a new instance
+	final LabelBlockLookupSharded reopened = lookup(4);
+	assertBlocks(blocks(7), reopened.read(new LabelBlockLookupKey(0, 3)));
+	assertBlocks(blocks(100), reopened.read(new LabelBlockLookupKey(0, 100)));
+  }
+
+  @Test
+  public void testReadAfterWriteThroughOtherInstance() throws IOException {
+
+	final LabelBlockLookupSharded reader = lookup(4);
+	final LabelBlockLookupSharded writer = lookup(4);
+	writer.write(new LabelBlockLookupKey(0, 3), blocks(3));
+	assertBlocks(blocks(3), reader.read(new LabelBlockLookupKey(0, 3)));
+
+	// the reader has the shard mapped already, and must pick up the replaced shard
+	writer.write(new LabelBlockLookupKey(0, 3), blocks(4));
+	assertBlocks(blocks(4), reader.read(new LabelBlockLookupKey(0, 3)));
+
+	// writes through the reader must not drop the update either
+	reader.write(new LabelBlockLookupKey(0, 8), blocks(8));
+	assertBlocks(blocks(4), writer.read(new LabelBlockLookupKey(0, 3)));
+	assertBlocks(blocks(8), writer.read(new LabelBlockLookupKey(0, 8)));
+
+	writer.write(new LabelBlockLookupKey(0, 3));
+	writer.write(new LabelBlockLookupKey(0, 8));
+	Assert.assertEquals(0, reader.read(new LabelBlockLookupKey(0, 3)).length);
+  }
+
+  @Test
+  public void testShardIndex() {
+
+	final int numShards = 16;
+	final int[] counts = new int[numShards];
+	for (long id = 0; id < 16 * 1000; ++id)
+	  ++counts[LabelBlockLookupSharded.shardIndex(id, numShards)];
+	for (final int count : counts)
+	  Assert.assertTrue(Arrays.toString(counts), count > 500 && count < 1500);
+  }
+
+  @Test
+  public void testMigrateFromFile() throws IOException {
+
+	final LabelBlockLookupFromFile fromFile = new LabelBlockLookupFromFile(baseDirectory.resolve("label-to-block-mapping").resolve("s%d").resolve("%d").toString());
+	for (long id = 1; id <= 20; ++id)
+	  fromFile.write(new LabelBlockLookupKey(0, id), blocks(id));
+
+	final LabelBlockLookupSharded sharded = lookup(3);
+	LabelBlockLookupMigration.migrate(fromFile, sharded, 0, new long[]{1, 2, 3, 5, 8, 13, 21});
+	for (final long id : new long[]{1, 2, 3, 5, 8, 13})
+	  assertBlocks(blocks(id), sharded.read(new LabelBlockLookupKey(0, id)));
+	Assert.assertEquals(0, sharded.read(new LabelBlockLookupKey(0, 4)).length);
+	Assert.assertEquals(0, sharded.read(new LabelBlockLookupKey(0, 21)).length);
+  }
+
+  @Test
+  public void testSerialization() {
+
+	final Gson gson = new GsonBuilder().registerTypeHierarchyAdapter(LabelBlockLookup.class, LabelBlockLookupAdapter.getJsonAdapter()).create();
+	final LabelBlockLookupSharded lookup = new LabelBlockLookupSharded(LabelBlockLookupSharded.DEFAULT_ROOT, 7);
+	final LabelBlockLookup deserialized = gson.fromJson(gson.toJsonTree(lookup, LabelBlockLookup.class), LabelBlockLookup.class);
+	Assert.assertTrue(deserialized instanceof LabelBlockLookupSharded);
+	Assert.assertEquals(LabelBlockLookupSharded.DEFAULT_ROOT, ((LabelBlockLookupSharded)deserialized).getRoot());
+	Assert.assertEquals(7, ((LabelBlockLookupSharded)deserialized).getNumShards());
+  }
+
+  private LabelBlockLookupSharded lookup(final int numShards) {
+
+	final LabelBlockLookupSharded lookup = new LabelBlockLookupSharded(LabelBlockLookupSharded.DEFAULT_ROOT, numShards);
+	lookup.setBaseDirectory(baseDirectory.toString());
+	return lookup;
+  }
+
+  private static Interval[] blocks(final long id) {
+
+	final Interval[] blocks = new Interval[(int)(id % 5)];
+	for (int i = 0; i < blocks.length; ++i) {
+	  final long[] min = {64 * i, 64 * id, 0};
+	  blocks[i] = new FinalInterval(min, new long[]{min[0] + 63, min[1] + 63, 63});
+	}
+	return blocks;
+  }
+
+  private static void assertBlocks(final Interval[] expected, final Interval[] actual) {
+
+	Assert.assertEquals(asStrings(expected), asStrings(actual));
+  }
+
+  private static Set<String> asStrings(final Interval[] intervals) {
+
+	return Arrays.stream(intervals)
+			.map(i -> Arrays.toString(Intervals.minAsLongArray(i)) + Arrays.toString(Intervals.maxAsLongArray(i)))
+			.collect(Collectors.toSet());
+  }
+}
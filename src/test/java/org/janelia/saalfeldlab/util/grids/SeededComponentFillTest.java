@@ -0,0 +1,120 @@
+package org.janelia.saalfeldlab.util.grids;
+
+import net.imglib2.Cursor;
+import net.imglib2.Point;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.algorithm.fill.FloodFill;
+import net.imglib2.algorithm.neighborhood.DiamondShape;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.ByteArray;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.type.logic.BitType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.view.Views;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BiPredicate;
+
+public class SeededComponentFillTest {
+
+  private static final long[] DIMS = {29, 23, 17};
+
+  private static final ExecutorService ES = Executors.newFixedThreadPool(3);
+
+  @AfterClass
+  public static void shutdown() {
+
+	ES.shutdown();
+  }
+
+  @Test
+  public void testLabelComponents() {
+
+	// 3 x 2 with components {0} and {2, 5}
+	final boolean[] inMask = {true, false, true, false, false, true};
+	final int[] labels = new int[inMask.length];
+	Assert.assertEquals(2, SeededComponentFill.labelComponents(inMask, new int[]{3, 2}, labels));
+	Assert.assertArrayEquals(new int[]{1, 0, 2, 0, 0, 2}, labels);
+  }
+
+  @Test
+  public void testFaceRuns() {
+
+	final SeededComponentFill.Face face = new SeededComponentFill.Face();
+	for (final int label : new int[]{0, 3, 3, 0, 0, 2, 2, 2, 4, 0})
+	  face.add(label);
+	face.trim();
+	Assert.assertEquals(3, face.numRuns);
+	Assert.assertArrayEquals(new int[]{1, 5, 8}, face.starts);
+	Assert.assertArrayEquals(new int[]{3, 8, 9}, face.ends);
+	Assert.assertArrayEquals(new int[]{3, 2, 4}, face.labels);
+  }
+
+  @Test
+  public void testMatchesFloodFill() throws Exception {
+
+	final Random rng = new Random(100);
+	final ArrayImg<BitType, ?> mask = ArrayImgs.bits(DIMS);
+	final ArrayImg<BitType, ?> seeds = ArrayImgs.bits(DIMS);
+	mask.forEach(b -> b.set(rng.nextDouble() < 0.6));
+	seeds.forEach(b -> b.set(rng.nextDouble() < 0.002));
+
+	// blocks that do not divide the dimensions, and a single block
+	for (final int[] blockSize : new int[][]{{8, 8, 8}, {5, 7, 4}, {29, 23, 17}}) {
+	  final CellGrid grid = new CellGrid(DIMS, blockSize);
+	  final SeededComponentFill<BitType> fill = SeededComponentFill.computeAsync(mask, seeds, grid, ES, 5).get();
+	  final ArrayImg<UnsignedByteType, ByteArray> actual = ArrayImgs.unsignedBytes(DIMS);
+	  for (long block = 0; block < grid.getGridDimensions()[0] * grid.getGridDimensions()[1] * grid.getGridDimensions()[2]; ++block)
+		fill.fill(Views.interval(actual, Grids.getCellInterval(grid, block)), new UnsignedByteType(1));
+
+	  final ArrayImg<UnsignedByteType, ByteArray> expected = floodFill(mask, seeds);
+	  Assert.assertArrayEquals(expected.update(null).getCurrentStorageArray(), actual.update(null).getCurrentStorageArray());
+	}
+  }
+
+  @Test
+  public void testComponentAcrossManyBlocks() throws Exception {
+
+	// a path through many blocks that is only seeded at its far end
+	final ArrayImg<BitType, ?> mask = ArrayImgs.bits(DIMS);
+	final ArrayImg<BitType, ?> seeds = ArrayImgs.bits(DIMS);
+	Views.interval(mask, new long[]{0, 0, 0}, new long[]{DIMS[0] - 1, 0, 0}).forEach(BitType::setOne);
+	Views.interval(mask, new long[]{DIMS[0] - 1, 0, 0}, new long[]{DIMS[0] - 1, DIMS[1] - 1, 0}).forEach(BitType::setOne);
+	Views.interval(mask, new long[]{DIMS[0] - 1, DIMS[1] - 1, 0}, new long[]{DIMS[0] - 1, DIMS[1] - 1, DIMS[2] - 1}).forEach(BitType::setOne);
+	seeds.getAt(DIMS[0] - 1, DIMS[1] - 1, DIMS[2] - 1).setOne();
+
+	final CellGrid grid = new CellGrid(DIMS, new int[]{3, 3, 3});
+	final SeededComponentFill<BitType> fill = SeededComponentFill.computeAsync(mask, seeds, grid, ES, 7).get();
+	final ArrayImg<UnsignedByteType, ByteArray> actual = ArrayImgs.unsignedBytes(DIMS);
+	fill.fill(Views.interval(actual, Grids.getCellInterval(grid, 0)), new UnsignedByteType(1));
+	Assert.assertEquals(1, actual.getAt(0, 0, 0).get());
+	Assert.assertEquals(0, actual.getAt(0, 1, 0).get());
+  }
+
+  private static ArrayImg<UnsignedByteType, ByteArray> floodFill(final RandomAccessibleInterval<BitType> mask, final RandomAccessibleInterval<BitType> seeds) {
+
+	final ArrayImg<UnsignedByteType, ByteArray> filled = ArrayImgs.unsignedBytes(DIMS);
+	final Cursor<BitType> seedCursor = Views.flatIterable(seeds).localizingCursor();
+	final Cursor<BitType> maskCursor = Views.flatIterable(mask).cursor();
+	while (seedCursor.hasNext()) {
+	  final boolean isSeed = seedCursor.next().get();
+	  final boolean isInMask = maskCursor.next().get();
+	  if (isSeed && isInMask && filled.getAt(seedCursor).get() == 0) {
+		FloodFill.fill(
+				Views.extendZero(mask),
+				Views.extendValue(filled, new UnsignedByteType(1)),
+				new Point(seedCursor),
+				new UnsignedByteType(1),
+				new DiamondShape(1),
+				(BiPredicate<BitType, UnsignedByteType>)(source, target) -> source.get() && target.get() == 0);
+	  }
+	}
+	return filled;
+  }
+}
@@ -0,0 +1,115 @@
+package org.janelia.saalfeldlab.util.n5;
+
+import org.janelia.saalfeldlab.n5.DataBlock;
+import org.janelia.saalfeldlab.n5.DataType;
+import org.janelia.saalfeldlab.n5.DatasetAttributes;
+import org.janelia.saalfeldlab.n5.DefaultBlockReader;
+import org.janelia.saalfeldlab.n5.DefaultBlockWriter;
+import org.janelia.saalfeldlab.n5.LongArrayDataBlock;
+import org.janelia.saalfeldlab.n5.RawCompression;
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+public class CompressionAutoTunerTest {
+
+  private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  private static final int[] BLOCK_SIZE = {32, 32, 32};
+
+  private static final DatasetAttributes ATTRIBUTES = new DatasetAttributes(
+		  new long[]{64, 64, 32},
+		  BLOCK_SIZE,
+		  DataType.UINT64,
+		  new RawCompression());
+
+  @Test
+  public void testRoundTrip() throws IOException {
+
+	final LongArrayDataBlock block = segmentationBlock(new long[]{1, 0, 0}, 8, new Random(1));
+	for (final CompressionCodec codec : CompressionCodec.available()) {
+	  final DatasetAttributes attributes = new DatasetAttributes(
+			  ATTRIBUTES.getDimensions(),
+			  BLOCK_SIZE,
+			  DataType.UINT64,
+			  codec.create(codec.getDefaultLevel()));
+	  final ByteArrayOutputStream out = new ByteArrayOutputStream();
+	  DefaultBlockWriter.writeBlock(out, attributes, block);
+	  final DataBlock<?> decoded = DefaultBlockReader.readBlock(new ByteArrayInputStream(out.toByteArray()), attributes, block.getGridPosition());
+	  Assert.assertArrayEquals(codec.toString(), block.getData(), (long[])decoded.getData());
+	}
+  }
+
+  @Test
+  public void testChoose() throws IOException {
+
+	final Random rng = new Random(100);
+	final List<DataBlock<?>> blocks = new ArrayList<>();
+	blocks.add(segmentationBlock(new long[]{0, 0, 0}, 16, rng));
+	blocks.add(segmentationBlock(new long[]{1, 0, 0}, 4, rng));
+	blocks.add(noiseBlock(new long[]{0, 1, 0}, rng));
+
+	final List<CompressionAutoTuner.Result> results = CompressionAutoTuner.evaluate(
+			ATTRIBUTES,
+			blocks,
+			CompressionAutoTuner.defaultCandidates(),
+			2);
+	Assert.assertEquals(CompressionAutoTuner.defaultCandidates().size(), results.size());
+	results.forEach(r -> LOG.info("{}", r));
+
+	final long rawBytes = results.get(0).rawBytes;
+	results.forEach(r -> Assert.assertEquals(rawBytes, r.rawBytes));
+
+	final CompressionAutoTuner.Result fastest = results.stream().min(Comparator.comparingLong(r -> r.decodeNanos)).get();
+	final CompressionAutoTuner.Result smallest = results.stream().min(Comparator.comparingLong(r -> r.compressedBytes)).get();
+	Assert.assertSame(fastest, CompressionAutoTuner.choose(results, Double.POSITIVE_INFINITY));
+	Assert.assertSame(smallest, CompressionAutoTuner.choose(results, 1.0));
+	Assert.assertTrue(smallest.compressionRatio() > 1.0);
+  }
+
+  @Test
+  public void testTuneUpdatesDefaults() throws IOException {
+
+	final CompressionDefaults defaults = new CompressionDefaults();
+	defaults.setBandwidth(1.0);
+	final CompressionAutoTuner.Result best = CompressionAutoTuner.tune(
+			defaults,
+			ATTRIBUTES,
+			List.of(segmentationBlock(new long[]{0, 0, 0}, 8, new Random(3))));
+	Assert.assertEquals(best.candidate.codec, defaults.getCodec());
+	Assert.assertEquals(best.candidate.level, defaults.getLevel());
+	Assert.assertNotEquals(CompressionCodec.RAW, defaults.getCodec());
+  }
+
+  /**
+   * Labels that are constant in boxes of {@code segmentSize} voxels, similar to an over-segmentation.
+   */
+  private static LongArrayDataBlock segmentationBlock(final long[] gridPosition, final int segmentSize, final Random rng) {
+
+	final long offset = rng.nextInt(1 << 20);
+	final long[] data = new long[BLOCK_SIZE[0] * BLOCK_SIZE[1] * BLOCK_SIZE[2]];
+	for (int z = 0, i = 0; z < BLOCK_SIZE[2]; ++z)
+	  for (int y = 0; y < BLOCK_SIZE[1]; ++y)
+		for (int x = 0; x < BLOCK_SIZE[0]; ++x, ++i)
+		  data[i] = offset + x / segmentSize + 1000L * (y / segmentSize) + 1000_000L * (z / segmentSize);
+	return new LongArrayDataBlock(BLOCK_SIZE, gridPosition, data);
+  }
+
+  private static LongArrayDataBlock noiseBlock(final long[] gridPosition, final Random rng) {
+
+	final long[] data = new long[BLOCK_SIZE[0] * BLOCK_SIZE[1] * BLOCK_SIZE[2]];
+	for (int i = 0; i < data.length; ++i)
+	  data[i] = rng.nextInt(256);
+	return new LongArrayDataBlock(BLOCK_SIZE, gridPosition, data);
+  }
+}
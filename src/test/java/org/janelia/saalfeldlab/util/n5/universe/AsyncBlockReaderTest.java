@@ -0,0 +1,187 @@
+package org.janelia.saalfeldlab.util.n5.universe;
+
+import net.imglib2.img.cell.CellGrid;
+import org.janelia.saalfeldlab.n5.ByteArrayDataBlock;
+import org.janelia.saalfeldlab.n5.DataBlock;
+import org.janelia.saalfeldlab.n5.DataType;
+import org.janelia.saalfeldlab.n5.DatasetAttributes;
+import org.janelia.saalfeldlab.n5.N5FSWriter;
+import org.janelia.saalfeldlab.n5.RawCompression;
+import org.janelia.saalfeldlab.util.n5.N5TestUtil;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+public class AsyncBlockReaderTest {
+
+  private static final String DATASET = "data";
+
+  private static final long[] DIMS = {40, 10};
+
+  private static final int[] BLOCK_SIZE = {4, 5};
+
+  private static final CellGrid GRID = new CellGrid(DIMS, BLOCK_SIZE);
+
+  /* not written, so reads return null */
+  private static final long[] MISSING_BLOCK = {9, 1};
+
+  private static N5FSWriter writer;
+
+  private static DatasetAttributes attributes;
+
+  @BeforeClass
+  public static void writeBlocks() throws IOException {
+
+	writer = N5TestUtil.fileSystemWriterAtTmpDir();
+	attributes = new DatasetAttributes(DIMS, BLOCK_SIZE, DataType.UINT8, new RawCompression());
+	writer.createDataset(DATASET, attributes);
+	final long[] gridDimensions = GRID.getGridDimensions();
+	for (long y = 0; y < gridDimensions[1]; ++y)
+	  for (long x = 0; x < gridDimensions[0]; ++x) {
+		if (x == MISSING_BLOCK[0] && y == MISSING_BLOCK[1])
+		  continue;
+		final byte[] data = new byte[BLOCK_SIZE[0] * BLOCK_SIZE[1]];
+		for (int i = 0; i < data.length; ++i)
+		  data[i] = (byte)(x + 10 * y + i);
+		writer.writeBlock(DATASET, attributes, new ByteArrayDataBlock(BLOCK_SIZE, new long[]{x, y}, data));
+	  }
+  }
+
+  @Test
+  public void testReadBlocks() throws IOException {
+
+	try (final AsyncBlockReader reader = new AsyncBlockReader(new LatencyN5Reader(writer, 0))) {
+	  final long[] gridDimensions = GRID.getGridDimensions();
+	  for (long y = 0; y < gridDimensions[1]; ++y)
+		for (long x = 0; x < gridDimensions[0]; ++x) {
+		  final DataBlock<?> expected = writer.readBlock(DATASET, attributes, x, y);
+		  final DataBlock<?> actual = reader.readBlock(DATASET, attributes, x, y);
+		  if (expected == null)
+			Assert.assertNull(actual);
+		  else
+			Assert.assertArrayEquals((byte[])expected.getData(), (byte[])actual.getData());
+		}
+	  Assert.assertNull(reader.readBlock(DATASET, attributes, MISSING_BLOCK));
+	}
+  }
+
+  @Test
+  public void testConcurrentReadsShareRequest() throws InterruptedException {
+
+	final LatencyN5Reader latencyReader = new LatencyN5Reader(writer, 0);
+	try (final AsyncBlockReader reader = new AsyncBlockReader(latencyReader)) {
+	  latencyReader.hold();
+	  final List<CompletableFuture<DataBlock<?>>> blocks = new ArrayList<>();
+	  blocks.add(reader.readBlockAsync(DATASET, attributes, 3, 1));
+	  latencyReader.awaitRequests(1);
+	  for (int i = 1; i < 8; ++i)
+		blocks.add(reader.readBlockAsync(DATASET, attributes, 3, 1));
+	  latencyReader.release();
+	  blocks.forEach(CompletableFuture::join);
+	  Assert.assertEquals(1, latencyReader.getNumRequests());
+	}
+  }
+
+  @Test
+  public void testCoalesceAdjacentBlocks() throws InterruptedException {
+
+	final LatencyN5Reader latencyReader = new LatencyN5Reader(writer, 0);
+	// a single request in flight, so all blocks but the first are queued while the first request is held
+	try (final AsyncBlockReader reader = new AsyncBlockReader(latencyReader, 1, 16, AsyncBlockReader.DEFAULT_MAX_PREFETCHED_BYTES)) {
+	  latencyReader.hold();
+	  final List<CompletableFuture<DataBlock<?>>> blocks = new ArrayList<>();
+	  blocks.add(reader.readBlockAsync(DATASET, attributes, 0, 0));
+	  latencyReader.awaitRequests(1);
+	  for (long x = 1; x < GRID.getGridDimensions()[0]; ++x)
+		blocks.add(reader.readBlockAsync(DATASET, attributes, x, 0));
+	  latencyReader.release();
+	  for (int x = 0; x < blocks.size(); ++x)
+		Assert.assertEquals(x, ((byte[])blocks.get(x).join().getData())[0]);
+	  Assert.assertEquals(blocks.size(), latencyReader.getNumBlocks());
+	  Assert.assertEquals(2, latencyReader.getNumRequests());
+	}
+  }
+
+  @Test
+  public void testPrefetch() throws IOException {
+
+	final LatencyN5Reader latencyReader = new LatencyN5Reader(writer, 0);
+	try (final AsyncBlockReader reader = new AsyncBlockReader(latencyReader)) {
+	  reader.prefetch(DATASET, attributes, 5, 0).join();
+	  Assert.assertEquals(1, latencyReader.getNumRequests());
+	  Assert.assertEquals(5, ((byte[])reader.readBlock(DATASET, attributes, 5, 0).getData())[0]);
+	  Assert.assertEquals(1, latencyReader.getNumRequests());
+
+	  // prefetched blocks are only used once, and not at all once they are invalidated
+	  reader.readBlock(DATASET, attributes, 5, 0);
+	  Assert.assertEquals(2, latencyReader.getNumRequests());
+	  reader.prefetch(DATASET, attributes, 5, 0).join();
+	  reader.prefetchedInvalidate(DATASET, GRID).invalidate(5L);
+	  reader.readBlock(DATASET, attributes, 5, 0);
+	  Assert.assertEquals(4, latencyReader.getNumRequests());
+	}
+  }
+
+  @Test
+  public void testPrefetchedBytesAreBounded() throws IOException, InterruptedException {
+
+	final LatencyN5Reader latencyReader = new LatencyN5Reader(writer, 0);
+	// room for two prefetched blocks, and a single request in flight that is held while the other blocks are prefetched
+	try (final AsyncBlockReader reader = new AsyncBlockReader(latencyReader, 1, 16, 2 * BLOCK_SIZE[0] * BLOCK_SIZE[1])) {
+	  latencyReader.hold();
+	  final List<CompletableFuture<DataBlock<?>>> blocks = new ArrayList<>();
+	  blocks.add(reader.prefetch(DATASET, attributes, 0, 0));
+	  latencyReader.awaitRequests(1);
+	  for (long x = 1; x < 8; ++x)
+		blocks.add(reader.prefetch(DATASET, attributes, x, 0));
+	  // the queued requests for all but the last two blocks are dropped when they are evicted
+	  for (int x = 1; x < 6; ++x)
+		Assert.assertTrue(blocks.get(x).isCancelled());
+	  latencyReader.release();
+	  blocks.get(6).join();
+	  blocks.get(7).join();
+	  Assert.assertEquals(3, latencyReader.getNumBlocks());
+
+	  final int numRequests = latencyReader.getNumRequests();
+	  Assert.assertEquals(7, ((byte[])reader.readBlock(DATASET, attributes, 7, 0).getData())[0]);
+	  Assert.assertEquals(numRequests, latencyReader.getNumRequests());
+	  Assert.assertEquals(2, ((byte[])reader.readBlock(DATASET, attributes, 2, 0).getData())[0]);
+	}
+  }
+
+  @Test
+  public void testInvalidateDetachesRequestInFlight() throws IOException, InterruptedException {
+
+	final LatencyN5Reader latencyReader = new LatencyN5Reader(writer, 0);
+	try (final AsyncBlockReader reader = new AsyncBlockReader(latencyReader)) {
+	  latencyReader.hold();
+	  reader.prefetch(DATASET, attributes, 3, 0);
+	  latencyReader.awaitRequests(1);
+	  // the block may have been modified after the prefetch was issued, so it is not shared with the next read
+	  reader.prefetchedInvalidate(DATASET, GRID).invalidate(3L);
+	  latencyReader.release();
+	  reader.readBlock(DATASET, attributes, 3, 0);
+	  Assert.assertEquals(2, latencyReader.getNumRequests());
+	}
+  }
+
+  @Test
+  public void testCloseFailsPendingReads() throws InterruptedException {
+
+	final LatencyN5Reader latencyReader = new LatencyN5Reader(writer, 0);
+	final AsyncBlockReader reader = new AsyncBlockReader(latencyReader, 1, 1, AsyncBlockReader.DEFAULT_MAX_PREFETCHED_BYTES);
+	latencyReader.hold();
+	reader.readBlockAsync(DATASET, attributes, 0, 0);
+	latencyReader.awaitRequests(1);
+	final CompletableFuture<DataBlock<?>> queued = reader.readBlockAsync(DATASET, attributes, 2, 0);
+	reader.close();
+	latencyReader.release();
+	Assert.assertTrue(queued.isCompletedExceptionally());
+	Assert.assertThrows(IOException.class, () -> reader.readBlock(DATASET, attributes, 4, 0));
+  }
+}
@@ -0,0 +1,154 @@
+package org.janelia.saalfeldlab.util.n5.universe;
+
+import org.janelia.saalfeldlab.n5.DataBlock;
+import org.janelia.saalfeldlab.n5.DatasetAttributes;
+import org.janelia.saalfeldlab.n5.N5Reader;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Local stand-in for an object store: reads blocks from another {@link N5Reader}, e.g. on the file system, but every
+ * request takes at least {@code latencyMillis}, like the round trip of an HTTP request to S3. Adjacent blocks can be
+ * read with a single request, like a range request over contiguously stored chunks.
+ * <p>
+ * Tests can {@link #hold()} requests and {@link #awaitRequests wait} for them to start, to order events against the
+ * threads that issue the requests without sleeping.
+ */
+public class LatencyN5Reader implements BlockBatchReader {
+
+  private final N5Reader delegate;
+
+  private final long latencyMillis;
+
+  private final AtomicInteger numRequests = new AtomicInteger();
+
+  private final AtomicInteger numBlocks = new AtomicInteger();
+
+  private volatile CountDownLatch held = new CountDownLatch(0);
+
+  public LatencyN5Reader(final N5Reader delegate, final long latencyMillis) {
+
+	this.delegate = delegate;
+	this.latencyMillis = latencyMillis;
+  }
+
+  public int getNumRequests() {
+
+	return numRequests.get();
+  }
+
+  public int getNumBlocks() {
+
+	return numBlocks.get();
+  }
+
+  /**
+   * Requests that start from now on do not return until {@link #release()}.
+   */
+  public void hold() {
+
+	held = new CountDownLatch(1);
+  }
+
+  /**
+   * Let all requests that are {@link #hold() held} return.
+   */
+  public void release() {
+
+	held.countDown();
+  }
+
+  /**
+   * Wait until at least {@code numRequests} requests have started.
+   *
+   * @throws IllegalStateException if they have not started within a generous timeout
+   */
+  public synchronized void awaitRequests(final int numRequests) throws InterruptedException {
+
+	final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+	while (this.numRequests.get() < numRequests) {
+	  final long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+	  if (remainingMillis <= 0)
+		throw new IllegalStateException("Expected " + numRequests + " requests but got " + this.numRequests.get());
+	  wait(remainingMillis);
+	}
+  }
+
+  @Override
+  public DataBlock<?> readBlock(final String pathName, final DatasetAttributes datasetAttributes, final long... gridPosition) throws IOException {
+
+	request(1);
+	return delegate.readBlock(pathName, datasetAttributes, gridPosition);
+  }
+
+  @Override
+  public List<DataBlock<?>> readBlocks(final String pathName, final DatasetAttributes datasetAttributes, final List<long[]> gridPositions) throws IOException {
+
+	request(gridPositions.size());
+	final List<DataBlock<?>> blocks = new ArrayList<>();
+	for (final long[] gridPosition : gridPositions)
+	  blocks.add(delegate.readBlock(pathName, datasetAttributes, gridPosition));
+	return blocks;
+  }
+
+  @Override
+  public <T> T getAttribute(final String pathName, final String key, final Class<T> clazz) throws IOException {
+
+	return delegate.getAttribute(pathName, key, clazz);
+  }
+
+  @Override
+  public <T> T getAttribute(final String pathName, final String key, final Type type) throws IOException {
+
+	return delegate.getAttribute(pathName, key, type);
+  }
+
+  @Override
+  public DatasetAttributes getDatasetAttributes(final String pathName) throws IOException {
+
+	return delegate.getDatasetAttributes(pathName);
+  }
+
+  @Override
+  public boolean exists(final String pathName) {
+
+	return delegate.exists(pathName);
+  }
+
+  @Override
+  public String[] list(final String pathName) throws IOException {
+
+	return delegate.list(pathName);
+  }
+
+  @Override
+  public Map<String, Class<?>> listAttributes(final String pathName) throws IOException {
+
+	return delegate.listAttributes(pathName);
+  }
+
+  private void request(final int numBlocks) throws InterruptedIOException {
+
+	final CountDownLatch held = this.held;
+	this.numBlocks.addAndGet(numBlocks);
+	synchronized (this) {
+	  numRequests.incrementAndGet();
+	  notifyAll();
+	}
+	try {
+	  held.await();
+	  Thread.sleep(latencyMillis);
+	} catch (final InterruptedException e) {
+	  Thread.currentThread().interrupt();
+	  throw new InterruptedIOException();
+	}
+  }
+}